@@ -0,0 +1,146 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * BaselineComparison compares a run of the benchmarks with the baseline kept in
+ * benchmarks/baseline, both written by JMH with -rf csv. It prints the change of every score
+ * found in both, and exits with status 1 if any changed for the worse by more than the allowed
+ * percentage, 10 unless given. It exits with status 2 if there is no baseline to compare with, or
+ * the baseline holds no scores, so that a missing baseline is never taken for a passing
+ * comparison.
+ * <p>
+ * The primary scores and the allocation per operation from the gc profiler are compared, other
+ * profiler counters vary too much between runs. Scores in ops/ and in /op units are told apart
+ * by their unit, so that lower throughput and higher time or allocation per operation all count
+ * as worse.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar -prof gc -rf csv -rff target/current.csv
+ * java -cp target/benchmarks.jar se.uu.ub.cora.iiif.benchmark.BaselineComparison \
+ *     baseline/benchmarks.csv target/current.csv 10
+ * </pre>
+ */
+public final class BaselineComparison {
+	private static final int NAME_COLUMN = 0;
+	private static final int SCORE_COLUMN = 4;
+	private static final int UNIT_COLUMN = 6;
+	private static final int FIRST_PARAM_COLUMN = 7;
+	private static final String ALLOCATION_PER_OPERATION = "gc.alloc.rate.norm";
+
+	private record Score(double value, String unit) {
+		boolean isHigherBetter() {
+			return unit.startsWith("ops/");
+		}
+	}
+
+	private BaselineComparison() {
+		// only static methods
+	}
+
+	public static void main(String[] args) throws IOException {
+		Path baselineCsv = Path.of(args[0]);
+		if (!Files.exists(baselineCsv)) {
+			System.err.println("No baseline recorded in " + baselineCsv
+					+ ", record one on the reference machine first");
+			System.exit(2);
+		}
+		Map<String, Score> baseline = readScores(baselineCsv);
+		if (baseline.isEmpty()) {
+			System.err.println("The baseline in " + baselineCsv
+					+ " has no scores, record one on the reference machine first");
+			System.exit(2);
+		}
+		Map<String, Score> current = readScores(Path.of(args[1]));
+		double allowedPercent = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+		boolean regressed = false;
+		for (Entry<String, Score> entry : current.entrySet()) {
+			Score baselineScore = baseline.get(entry.getKey());
+			if (baselineScore != null) {
+				regressed |= compare(entry.getKey(), baselineScore, entry.getValue(),
+						allowedPercent);
+			}
+		}
+		System.exit(regressed ? 1 : 0);
+	}
+
+	private static Map<String, Score> readScores(Path csv) throws IOException {
+		List<String> lines = Files.readAllLines(csv);
+		Map<String, Score> scores = new LinkedHashMap<>();
+		for (String line : lines.subList(1, lines.size())) {
+			String[] columns = splitCsv(line);
+			if (isCompared(columns[NAME_COLUMN])) {
+				scores.put(createKey(columns), new Score(Double.parseDouble(columns[SCORE_COLUMN]),
+						columns[UNIT_COLUMN]));
+			}
+		}
+		return scores;
+	}
+
+	private static boolean isCompared(String name) {
+		return !name.contains(":") || name.endsWith(ALLOCATION_PER_OPERATION);
+	}
+
+	private static String[] splitCsv(String line) {
+		List<String> columns = new ArrayList<>();
+		StringBuilder column = new StringBuilder();
+		boolean quoted = false;
+		for (char c : line.toCharArray()) {
+			if (c == '"') {
+				quoted = !quoted;
+			} else if (c == ',' && !quoted) {
+				columns.add(column.toString());
+				column.setLength(0);
+			} else {
+				column.append(c);
+			}
+		}
+		columns.add(column.toString());
+		return columns.toArray(String[]::new);
+	}
+
+	private static String createKey(String[] columns) {
+		StringBuilder key = new StringBuilder(columns[NAME_COLUMN]);
+		for (int i = FIRST_PARAM_COLUMN; i < columns.length; i++) {
+			key.append(' ').append(columns[i]);
+		}
+		return key.toString();
+	}
+
+	private static boolean compare(String name, Score baseline, Score current,
+			double allowedPercent) {
+		double changePercent = (current.value() - baseline.value()) / baseline.value() * 100;
+		double worsePercent = current.isHigherBetter() ? -changePercent : changePercent;
+		boolean regressed = worsePercent > allowedPercent;
+		System.out.println(String.format(Locale.ROOT, "%s %-80s %12.3f -> %12.3f %s (%+.1f %%)",
+				regressed ? "WORSE" : "     ", name, baseline.value(), current.value(),
+				current.unit(), changePercent));
+		return regressed;
+	}
+}
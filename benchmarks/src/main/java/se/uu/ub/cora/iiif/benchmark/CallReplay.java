@@ -0,0 +1,237 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapter;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.IiifImageInstanceProviderImp;
+import se.uu.ub.cora.iiif.async.ThreadPerCallExecutors;
+import se.uu.ub.cora.iiif.benchmark.ReplayImageServer.RecordedResponse;
+import se.uu.ub.cora.iiif.metrics.LatencyHistogram;
+import se.uu.ub.cora.iiif.recording.CallRecordingReader;
+import se.uu.ub.cora.iiif.recording.RecordedCall;
+import se.uu.ub.cora.initialize.SettingsProvider;
+
+/**
+ * CallReplay replays a recording made by the adapter, with iiifCallRecordingFile set, against an
+ * adapter assembled from a settings file, so that a change of settings or code can be measured
+ * with the traffic of production before it is deployed. The image server is stood in for by a
+ * {@link ReplayImageServer} answering each URI as it was answered when recorded, after a delay
+ * drawn from a {@link LatencyDistribution}.
+ * <p>
+ * Calls are started at the times they were recorded, divided by the speed, or as fast as
+ * possible with speed 0, and at most 1024 calls are in flight. The tool prints the throughput,
+ * the latency percentiles, how many calls answered another status than recorded, and how many
+ * calls reached the image server, which is what the caches of the settings save.
+ * <p>
+ * The stand-in answers range requests in full and knows nothing of the ETags of production, so
+ * recorded 206 and 304 responses are usually replayed as 200 and are counted as differences.
+ * <p>
+ * Run with: java -cp target/benchmarks.jar se.uu.ub.cora.iiif.benchmark.CallReplay
+ * &lt;recording&gt; [speed, default 1] [latency, default lognormal:20:0.5] [settings file]
+ */
+public final class CallReplay {
+	private static final int MAX_CALLS_IN_FLIGHT = 1024;
+	private static final int HTTP_OK = 200;
+	private static final int HTTP_PARTIAL_CONTENT = 206;
+	private static final int HTTP_NOT_MODIFIED = 304;
+	private static final int HTTP_SERVICE_UNAVAILABLE = 503;
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+	private final LatencyHistogram latencies = new LatencyHistogram();
+	private final LongAdder matchingStatuses = new LongAdder();
+	private final LongAdder differentStatuses = new LongAdder();
+	private final LongAdder failedCalls = new LongAdder();
+	private final Semaphore callsInFlight = new Semaphore(MAX_CALLS_IN_FLIGHT);
+	private final IiifAdapter iiifAdapter;
+
+	private CallReplay(IiifAdapter iiifAdapter) {
+		this.iiifAdapter = iiifAdapter;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.out.println("usage: CallReplay <recording> [speed] [latency] [settings file]");
+			return;
+		}
+		Path recording = Path.of(args[0]);
+		double speed = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+		String latency = args.length > 2 ? args[2] : "lognormal:20:0.5";
+		Map<String, RecordedResponse> responses = new HashMap<>();
+		Map<String, Long> recordedMicros = new HashMap<>();
+		long calls = summarize(recording, responses, recordedMicros);
+		System.out.printf("%d calls for %d URIs in %s%n", calls, responses.size(), recording);
+		try (ReplayImageServer imageServer = ReplayImageServer.start(responses,
+				LatencyDistribution.parse(latency, recordedMicros))) {
+			SettingsProvider.setSettings(readSettings(args, imageServer.getBaseUrl()));
+			CallReplay replay = new CallReplay(
+					new IiifImageInstanceProviderImp().getIiifAdapter());
+			long nanos = replay.replay(recording, speed);
+			replay.printResults(nanos, imageServer);
+		}
+	}
+
+	private static long summarize(Path recording, Map<String, RecordedResponse> responses,
+			Map<String, Long> recordedMicros) throws IOException {
+		long calls = 0;
+		try (CallRecordingReader reader = CallRecordingReader.open(recording)) {
+			Optional<RecordedCall> next;
+			while ((next = reader.next()).isPresent()) {
+				RecordedCall call = next.get();
+				calls++;
+				responses.merge(call.uri(), toResponse(call), CallReplay::larger);
+				recordedMicros.merge(call.uri(), call.durationMicros(), Math::max);
+			}
+		}
+		return calls;
+	}
+
+	private static RecordedResponse toResponse(RecordedCall call) {
+		int status = call.status();
+		if (status == RecordedCall.FAILED) {
+			status = HTTP_SERVICE_UNAVAILABLE;
+		} else if (status == HTTP_PARTIAL_CONTENT || status == HTTP_NOT_MODIFIED) {
+			status = HTTP_OK;
+		}
+		return new RecordedResponse(status, call.bodyBytes());
+	}
+
+	private static RecordedResponse larger(RecordedResponse first, RecordedResponse second) {
+		return second.bodyBytes() > first.bodyBytes() ? second : first;
+	}
+
+	private static Map<String, String> readSettings(String[] args, String imageServerUrl)
+			throws IOException {
+		Map<String, String> settings = new HashMap<>();
+		if (args.length > 3) {
+			Properties properties = new Properties();
+			try (Reader reader = Files.newBufferedReader(Path.of(args[3]))) {
+				properties.load(reader);
+			}
+			properties.stringPropertyNames()
+					.forEach(name -> settings.put(name, properties.getProperty(name)));
+		}
+		settings.put("imageServerUrl", imageServerUrl);
+		return settings;
+	}
+
+	private long replay(Path recording, double speed) throws IOException, InterruptedException {
+		ExecutorService executor = ThreadPerCallExecutors.newThreadPerCallExecutor();
+		long start = System.nanoTime();
+		try (CallRecordingReader reader = CallRecordingReader.open(recording)) {
+			long firstStartMicros = -1;
+			Optional<RecordedCall> next;
+			while ((next = reader.next()).isPresent()) {
+				RecordedCall call = next.get();
+				if (firstStartMicros < 0) {
+					firstStartMicros = call.startMicros();
+				}
+				if (speed > 0) {
+					awaitStart(start, (call.startMicros() - firstStartMicros) / speed);
+				}
+				callsInFlight.acquire();
+				executor.execute(() -> replayCall(call));
+			}
+		}
+		callsInFlight.acquire(MAX_CALLS_IN_FLIGHT);
+		long nanos = System.nanoTime() - start;
+		executor.shutdown();
+		return nanos;
+	}
+
+	private static void awaitStart(long start, double offsetMicros) {
+		long startAt = start + (long) (offsetMicros * 1000);
+		long now;
+		while ((now = System.nanoTime()) < startAt) {
+			LockSupport.parkNanos(startAt - now);
+		}
+	}
+
+	private void replayCall(RecordedCall call) {
+		long start = System.nanoTime();
+		try {
+			IiifAdapterResponse response = iiifAdapter.callIiifServer(
+					new IiifParameters(call.uri(), call.method(), call.headers()));
+			readBody(response.body());
+			countStatus(call, response.status());
+		} catch (RuntimeException | IOException e) {
+			failedCalls.increment();
+		} finally {
+			latencies.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+			callsInFlight.release();
+		}
+	}
+
+	private void countStatus(RecordedCall call, int status) {
+		if (status == call.status()) {
+			matchingStatuses.increment();
+		} else {
+			differentStatuses.increment();
+		}
+	}
+
+	private static void readBody(InputStream body) throws IOException {
+		if (body != null) {
+			try (body) {
+				body.transferTo(OutputStream.nullOutputStream());
+			}
+		}
+	}
+
+	private void printResults(long nanos, ReplayImageServer imageServer) {
+		long calls = latencies.getCount();
+		long millis = Math.max(1, Duration.ofNanos(nanos).toMillis());
+		System.out.printf("%d calls in %d ms, %d calls/s%n", calls, millis,
+				calls * 1000 / millis);
+		for (double percentile : PERCENTILES) {
+			System.out.printf("p%-5s %10d us%n", formatPercentile(percentile),
+					latencies.getValueAtPercentile(percentile));
+		}
+		System.out.printf("max    %10d us%n", latencies.getMaxMicros());
+		System.out.printf("status as recorded %d, different %d, failed %d%n",
+				matchingStatuses.sum(), differentStatuses.sum(), failedCalls.sum());
+		long serverCalls = imageServer.getRequests();
+		System.out.printf("image server calls %d (%.3f per call, %d bytes), cache effect %.1f%%%n",
+				serverCalls, (double) serverCalls / Math.max(1, calls),
+				imageServer.getBytesSent(),
+				100.0 * (1 - (double) serverCalls / Math.max(1, calls)));
+	}
+
+	private static String formatPercentile(double percentile) {
+		return percentile == Math.rint(percentile) ? String.valueOf((long) percentile)
+				: String.valueOf(percentile);
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.httphandler.HttpHandler;
+import se.uu.ub.cora.iiif.IiifAdapterImp;
+
+/**
+ * IiifAdapterImpBenchmark measures the time and, run with -prof gc, the allocation that
+ * IiifAdapterImp adds to every request, against stub handlers that answer at once.
+ * <p>
+ * The call benchmarks measure a whole call. The step benchmarks measure building the request
+ * URL, copying the request headers onto the handler and constructing the response one at a
+ * time, so that a change in a call can be traced to the step it came from. The steps are
+ * private to IiifAdapterImp, the step benchmarks repeat them the way IiifAdapterImp does and
+ * must be kept in step with it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IiifAdapterImpBenchmark {
+	private static final String IMAGE_SERVER_URL = "http://imageserver.example.org/iiif/3/";
+	private static final byte[] NOT_FOUND_MESSAGE = "Requested identifier could not be found."
+			.getBytes(StandardCharsets.UTF_8);
+	private static final Map<String, String> RESPONSE_HEADERS = Map.of("Content-Type",
+			"image/jpeg", "Content-Length", "4096", "Cache-Control", "max-age=86400");
+
+	@Param({ "someId/full/max/0/default.jpg",
+			"binary:binary:1234567890abcdef-jp2/2048,1024,1024,1024/512,/0/default.jpg" })
+	public String uri;
+
+	@Param({ "0", "8" })
+	public int requestHeaders;
+
+	private IiifAdapterImp foundAdapter;
+	private IiifAdapterImp notFoundAdapter;
+	private IiifParameters iiifParameters;
+	private HttpHandler httpHandler;
+
+	@Setup
+	public void setUp() {
+		foundAdapter = new IiifAdapterImp(IMAGE_SERVER_URL,
+				StubHttpHandlers.createFactory(200, RESPONSE_HEADERS, new byte[4096]));
+		notFoundAdapter = new IiifAdapterImp(IMAGE_SERVER_URL,
+				StubHttpHandlers.createFactory(404, RESPONSE_HEADERS, new byte[0]));
+		iiifParameters = new IiifParameters(uri, "GET", createRequestHeaders());
+		httpHandler = StubHttpHandlers.createFactory(200, RESPONSE_HEADERS, new byte[4096])
+				.factor(IMAGE_SERVER_URL + uri);
+	}
+
+	private Map<String, String> createRequestHeaders() {
+		Map<String, String> headers = new LinkedHashMap<>();
+		for (int i = 0; i < requestHeaders; i++) {
+			headers.put("X-Request-Header-" + i, "someValue" + i);
+		}
+		return headers;
+	}
+
+	@Benchmark
+	public IiifAdapterResponse callFound() {
+		return foundAdapter.callIiifServer(iiifParameters);
+	}
+
+	@Benchmark
+	public IiifAdapterResponse callNotFound() {
+		return notFoundAdapter.callIiifServer(iiifParameters);
+	}
+
+	@Benchmark
+	public String buildRequestUrl() {
+		return IMAGE_SERVER_URL + iiifParameters.uri();
+	}
+
+	@Benchmark
+	public HttpHandler copyRequestHeaders() {
+		for (Entry<String, String> header : iiifParameters.headersMap().entrySet()) {
+			httpHandler.setRequestProperty(header.getKey(), header.getValue());
+		}
+		return httpHandler;
+	}
+
+	@Benchmark
+	public IiifAdapterResponse constructResponse() {
+		return new IiifAdapterResponse(httpHandler.getResponseCode(),
+				httpHandler.getResponseHeaders(), httpHandler.getResponseBinary());
+	}
+
+	@Benchmark
+	public IiifAdapterResponse constructNotFoundResponse() {
+		return new IiifAdapterResponse(404, RESPONSE_HEADERS,
+				new ByteArrayInputStream(NOT_FOUND_MESSAGE));
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LatencyDistribution draws the time the stand-in image server of a replay takes to answer a
+ * request for a URI. Distributions are given as
+ * <ul>
+ * <li>fixed:MILLIS, the same time for every request</li>
+ * <li>uniform:MIN-MAX, evenly spread between two times in milliseconds</li>
+ * <li>lognormal:MEDIAN:SIGMA, with a median in milliseconds and a long tail, which is how the
+ * decode times of image servers usually look</li>
+ * <li>recorded, the longest time recorded for the URI, which is the call that reached the image
+ * server when the calls after it were answered from a cache</li>
+ * </ul>
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+
+	long nextNanos(String uri);
+
+	static LatencyDistribution parse(String specification, Map<String, Long> recordedMicros) {
+		String[] parts = specification.split(":");
+		switch (parts[0]) {
+			case "fixed":
+				return fixed(parseMillis(parts, 1));
+			case "uniform":
+				String[] bounds = parts.length > 1 ? parts[1].split("-") : new String[0];
+				return uniform(parseMillis(bounds, 0), parseMillis(bounds, 1));
+			case "lognormal":
+				return logNormal(parseMillis(parts, 1), Double.parseDouble(parts[2]));
+			case "recorded":
+				return uri -> TimeUnit.MICROSECONDS.toNanos(recordedMicros.getOrDefault(uri, 0L));
+			default:
+				throw new IllegalArgumentException(
+						"Unknown latency distribution: " + specification);
+		}
+	}
+
+	private static long parseMillis(String[] parts, int index) {
+		if (parts.length <= index) {
+			throw new IllegalArgumentException("Latency distribution is missing a value");
+		}
+		return TimeUnit.MILLISECONDS.toNanos(Long.parseLong(parts[index].trim()));
+	}
+
+	static LatencyDistribution fixed(long nanos) {
+		return uri -> nanos;
+	}
+
+	static LatencyDistribution uniform(long minNanos, long maxNanos) {
+		return uri -> minNanos + (long) (ThreadLocalRandom.current().nextDouble()
+				* (maxNanos - minNanos));
+	}
+
+	static LatencyDistribution logNormal(long medianNanos, double sigma) {
+		return uri -> (long) (medianNanos
+				* Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * LoopbackImageServer stands in for the image server in benchmarks. It answers every request
+ * with a body of a fixed size after a fixed delay, as a slow decode would, without holding a
+ * thread per request while it waits.
+ */
+public final class LoopbackImageServer implements AutoCloseable {
+	private final HttpServer server;
+	private final ExecutorService handlerExecutor = Executors.newFixedThreadPool(4);
+	private final ScheduledExecutorService delayer = Executors.newSingleThreadScheduledExecutor();
+	private final Duration responseDelay;
+	private final byte[] body;
+
+	private LoopbackImageServer(Duration responseDelay, int bodyBytes) throws IOException {
+		this.responseDelay = responseDelay;
+		body = new byte[bodyBytes];
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+				4096);
+		server.createContext("/", this::handle);
+		server.setExecutor(handlerExecutor);
+		server.start();
+	}
+
+	public static LoopbackImageServer start(Duration responseDelay, int bodyBytes) {
+		try {
+			return new LoopbackImageServer(responseDelay, bodyBytes);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void handle(HttpExchange exchange) {
+		if (responseDelay.isZero()) {
+			respond(exchange);
+			return;
+		}
+		delayer.schedule(() -> respond(exchange), responseDelay.toNanos(), TimeUnit.NANOSECONDS);
+	}
+
+	private void respond(HttpExchange exchange) {
+		try (exchange; OutputStream out = exchange.getResponseBody()) {
+			exchange.getResponseHeaders().set("Content-Type", "image/jpeg");
+			exchange.sendResponseHeaders(200, body.length);
+			out.write(body);
+		} catch (IOException e) {
+			// the client went away
+		}
+	}
+
+	public String getBaseUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		delayer.shutdownNow();
+		handlerExecutor.shutdownNow();
+	}
+}
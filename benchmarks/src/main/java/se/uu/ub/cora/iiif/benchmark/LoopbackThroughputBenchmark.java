@@ -0,0 +1,104 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapter;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.httphandler.HttpHandlerFactoryImp;
+import se.uu.ub.cora.iiif.IiifAdapterImp;
+import se.uu.ub.cora.iiif.PooledIiifAdapter;
+import se.uu.ub.cora.iiif.http.HttpClientPool;
+import se.uu.ub.cora.iiif.http.PoolSettings;
+
+/**
+ * LoopbackThroughputBenchmark measures requests per second end to end, from callIiifServer to
+ * the last byte of the body, against a {@link LoopbackImageServer} answering at once. It runs
+ * for IiifAdapterImp with the HttpHandler transport and for PooledIiifAdapter, with tile and
+ * full image sized bodies.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class LoopbackThroughputBenchmark {
+	private static final IiifParameters TILE_REQUEST = new IiifParameters(
+			"someId/0,0,512,512/512,/0/default.jpg", "GET", Map.of());
+
+	@Param({ "httpHandler", "pooled" })
+	public String transport;
+
+	@Param({ "16384", "1048576" })
+	public int bodyBytes;
+
+	private LoopbackImageServer imageServer;
+	private IiifAdapter adapter;
+
+	@Setup
+	public void setUp() {
+		imageServer = LoopbackImageServer.start(Duration.ZERO, bodyBytes);
+		adapter = createAdapter();
+	}
+
+	private IiifAdapter createAdapter() {
+		if ("pooled".equals(transport)) {
+			HttpClientPool pool = new HttpClientPool(
+					new PoolSettings(16, Duration.ofSeconds(10), Duration.ofSeconds(60)));
+			return new PooledIiifAdapter(imageServer.getBaseUrl(), pool, Duration.ofSeconds(60));
+		}
+		return new IiifAdapterImp(imageServer.getBaseUrl(), new HttpHandlerFactoryImp());
+	}
+
+	@TearDown
+	public void tearDown() {
+		imageServer.close();
+	}
+
+	@Benchmark
+	public long callAndReadBody() throws IOException {
+		IiifAdapterResponse response = adapter.callIiifServer(TILE_REQUEST);
+		try (InputStream body = response.body()) {
+			return body.transferTo(OutputStream.nullOutputStream());
+		}
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import se.uu.ub.cora.iiif.async.ThreadPerCallExecutors;
+
+/**
+ * ReplayImageServer stands in for the image server when a recording is replayed. It answers each
+ * URI with the status and body size recorded for it, after a delay drawn from a
+ * {@link LatencyDistribution}, without holding a thread per request while it waits. URIs not in
+ * the recording are answered with 200 and a body of a default size, and info.json documents are
+ * valid, so that the caches parsing them work as in production.
+ * <p>
+ * Every URI has an ETag of its own, and a request with an If-None-Match matching it is answered
+ * with 304. Range requests are answered in full.
+ */
+public final class ReplayImageServer implements AutoCloseable {
+	private static final int DEFAULT_BODY_BYTES = 32 * 1024;
+	private static final String INFO_JSON = """
+			{"@context":"http://iiif.io/api/image/3/context.json","id":"%s","type":"ImageService3",\
+			"protocol":"http://iiif.io/api/image","profile":"level2","width":4096,"height":4096,\
+			"tiles":[{"width":512,"scaleFactors":[1,2,4,8]}]}""";
+	private final HttpServer server;
+	private final ExecutorService handlerExecutor = ThreadPerCallExecutors
+			.newThreadPerCallExecutor();
+	private final ScheduledExecutorService delayer = Executors.newSingleThreadScheduledExecutor();
+	private final Map<String, RecordedResponse> responses;
+	private final LatencyDistribution latency;
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder bytesSent = new LongAdder();
+
+	/**
+	 * RecordedResponse is what the image server answered for a URI in the recording.
+	 */
+	public record RecordedResponse(int status, long bodyBytes) {
+	}
+
+	private ReplayImageServer(Map<String, RecordedResponse> responses,
+			LatencyDistribution latency) throws IOException {
+		this.responses = responses;
+		this.latency = latency;
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+				4096);
+		server.createContext("/", this::handle);
+		server.setExecutor(handlerExecutor);
+		server.start();
+	}
+
+	public static ReplayImageServer start(Map<String, RecordedResponse> responses,
+			LatencyDistribution latency) {
+		try {
+			return new ReplayImageServer(responses, latency);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void handle(HttpExchange exchange) {
+		requests.increment();
+		String uri = exchange.getRequestURI().toString().substring(1);
+		long delay = Math.max(0, latency.nextNanos(uri));
+		delayer.schedule(() -> handlerExecutor.execute(() -> respond(exchange, uri)), delay,
+				TimeUnit.NANOSECONDS);
+	}
+
+	private void respond(HttpExchange exchange, String uri) {
+		try (exchange; OutputStream out = exchange.getResponseBody()) {
+			String etag = "\"" + Integer.toHexString(uri.hashCode()) + "\"";
+			exchange.getResponseHeaders().set("ETag", etag);
+			if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				exchange.sendResponseHeaders(304, -1);
+				return;
+			}
+			byte[] body = createBody(uri);
+			RecordedResponse recorded = responses.getOrDefault(uri,
+					new RecordedResponse(200, body.length));
+			exchange.getResponseHeaders().set("Content-Type", contentTypeOf(uri));
+			boolean head = "HEAD".equals(exchange.getRequestMethod());
+			exchange.sendResponseHeaders(recorded.status(), head ? -1 : body.length);
+			if (!head) {
+				out.write(body);
+				bytesSent.add(body.length);
+			}
+		} catch (IOException e) {
+			// the client went away
+		}
+	}
+
+	private byte[] createBody(String uri) {
+		if (uri.endsWith("info.json")) {
+			String id = uri.substring(0, uri.length() - "/info.json".length());
+			return INFO_JSON.formatted(id).getBytes(StandardCharsets.UTF_8);
+		}
+		RecordedResponse recorded = responses.get(uri);
+		long size = recorded == null ? DEFAULT_BODY_BYTES : recorded.bodyBytes();
+		return new byte[(int) Math.min(size, Integer.MAX_VALUE - 8)];
+	}
+
+	private String contentTypeOf(String uri) {
+		if (uri.endsWith(".json")) {
+			return "application/json";
+		}
+		return uri.endsWith(".png") ? "image/png" : "image/jpeg";
+	}
+
+	public String getBaseUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+	}
+
+	/**
+	 * getRequests returns the number of requests the adapter has made to the server.
+	 */
+	public long getRequests() {
+		return requests.sum();
+	}
+
+	/**
+	 * getBytesSent returns the number of body bytes sent to the adapter.
+	 */
+	public long getBytesSent() {
+		return bytesSent.sum();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		delayer.shutdownNow();
+		handlerExecutor.shutdownNow();
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+import se.uu.ub.cora.httphandler.HttpHandler;
+import se.uu.ub.cora.httphandler.HttpHandlerFactory;
+
+/**
+ * StubHttpHandlers creates an in-process {@link HttpHandlerFactory} whose handlers answer every
+ * request at once with a fixed status, headers and body, so that benchmarks of IiifAdapterImp
+ * measure the adapter and not the network.
+ * <p>
+ * The factory and handlers are dynamic proxies, so that the stub does not depend on every method
+ * of the httphandler interfaces. The cost of the proxy dispatch is the same in every benchmark
+ * and in the baseline, so it does not hide a regression in the adapter.
+ */
+public final class StubHttpHandlers {
+
+	private StubHttpHandlers() {
+		// only static methods
+	}
+
+	public static HttpHandlerFactory createFactory(int status, Map<String, String> headers,
+			byte[] body) {
+		HttpHandler handler = createHandler(status, headers, body);
+		return (HttpHandlerFactory) Proxy.newProxyInstance(
+				HttpHandlerFactory.class.getClassLoader(),
+				new Class<?>[] { HttpHandlerFactory.class },
+				(proxy, method, args) -> "factor".equals(method.getName()) ? handler
+						: defaultValue(method));
+	}
+
+	private static HttpHandler createHandler(int status, Map<String, String> headers,
+			byte[] body) {
+		return (HttpHandler) Proxy.newProxyInstance(HttpHandler.class.getClassLoader(),
+				new Class<?>[] { HttpHandler.class }, new StubHandler(status, headers, body));
+	}
+
+	private static Object defaultValue(Method method) {
+		Class<?> returnType = method.getReturnType();
+		if (returnType == int.class) {
+			return 0;
+		}
+		if (returnType == boolean.class) {
+			return false;
+		}
+		return null;
+	}
+
+	private static final class StubHandler implements InvocationHandler {
+		private final Integer status;
+		private final Map<String, String> headers;
+		private final byte[] body;
+		private int requestProperties = 0;
+
+		private StubHandler(int status, Map<String, String> headers, byte[] body) {
+			this.status = status;
+			this.headers = headers;
+			this.body = body;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			return switch (method.getName()) {
+				case "getResponseCode" -> status;
+				case "getResponseHeaders" -> headers;
+				case "getResponseBinary" -> new ByteArrayInputStream(body);
+				case "setRequestProperty" -> countRequestProperty();
+				default -> defaultValue(method);
+			};
+		}
+
+		private Object countRequestProperty() {
+			requestProperties++;
+			return null;
+		}
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.PooledIiifAdapter;
+import se.uu.ub.cora.iiif.http.HttpClientPool;
+import se.uu.ub.cora.iiif.http.PoolSettings;
+
+/**
+ * ThreadUsageComparison shows how many threads are in use while a number of requests to a slow
+ * image server are in flight, when they are made through the blocking callIiifServer, one
+ * thread per request as in a servlet container, and through callIiifServerAsync from a single
+ * thread.
+ * <p>
+ * Run with: java -cp target/benchmarks.jar se.uu.ub.cora.iiif.benchmark.ThreadUsageComparison
+ */
+public final class ThreadUsageComparison {
+	private static final int[] CONCURRENT_REQUESTS = { 16, 64, 256, 1024 };
+	private static final Duration DECODE_TIME = Duration.ofMillis(500);
+	private static final int TILE_BYTES = 32 * 1024;
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	private record Result(int threadsInUse, long millis) {
+	}
+
+	private ThreadUsageComparison() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		try (LoopbackImageServer imageServer = LoopbackImageServer.start(DECODE_TIME,
+				TILE_BYTES)) {
+			runBlocking(imageServer, 16);
+			runAsync(imageServer, 16);
+			System.out.printf("%10s %18s %18s %14s %14s%n", "requests", "blocking threads",
+					"async threads", "blocking ms", "async ms");
+			for (int concurrentRequests : CONCURRENT_REQUESTS) {
+				Result blocking = runBlocking(imageServer, concurrentRequests);
+				Result async = runAsync(imageServer, concurrentRequests);
+				System.out.printf("%10d %18d %18d %14d %14d%n", concurrentRequests,
+						blocking.threadsInUse(), async.threadsInUse(), blocking.millis(),
+						async.millis());
+			}
+		}
+	}
+
+	private static PooledIiifAdapter createAdapter(LoopbackImageServer imageServer,
+			int concurrentRequests) {
+		HttpClientPool pool = new HttpClientPool(new PoolSettings(concurrentRequests,
+				Duration.ofSeconds(10), Duration.ofSeconds(60)));
+		return new PooledIiifAdapter(imageServer.getBaseUrl(), pool, Duration.ofSeconds(60));
+	}
+
+	private static Result runBlocking(LoopbackImageServer imageServer, int concurrentRequests)
+			throws Exception {
+		PooledIiifAdapter adapter = createAdapter(imageServer, concurrentRequests);
+		int threadsBefore = THREADS.getThreadCount();
+		THREADS.resetPeakThreadCount();
+		long start = System.nanoTime();
+		ExecutorService requestThreads = Executors.newFixedThreadPool(concurrentRequests);
+		List<Future<Long>> responses = new ArrayList<>();
+		for (int i = 0; i < concurrentRequests; i++) {
+			IiifParameters parameters = createParameters(i);
+			responses.add(requestThreads
+					.submit(() -> readBody(adapter.callIiifServer(parameters).body())));
+		}
+		for (Future<Long> response : responses) {
+			response.get();
+		}
+		Result result = createResult(threadsBefore, start);
+		requestThreads.shutdown();
+		return result;
+	}
+
+	private static Result runAsync(LoopbackImageServer imageServer, int concurrentRequests)
+			throws IOException {
+		PooledIiifAdapter adapter = createAdapter(imageServer, concurrentRequests);
+		int threadsBefore = THREADS.getThreadCount();
+		THREADS.resetPeakThreadCount();
+		long start = System.nanoTime();
+		List<CompletableFuture<IiifAdapterResponse>> responses = new ArrayList<>();
+		for (int i = 0; i < concurrentRequests; i++) {
+			responses.add(adapter.callIiifServerAsync(createParameters(i)));
+		}
+		for (CompletableFuture<IiifAdapterResponse> response : responses) {
+			readBody(response.join().body());
+		}
+		return createResult(threadsBefore, start);
+	}
+
+	private static IiifParameters createParameters(int tile) {
+		return new IiifParameters("someId/" + tile * 256 + ",0,256,256/max/0/default.jpg", "GET",
+				Map.of());
+	}
+
+	private static long readBody(InputStream body) throws IOException {
+		try (body) {
+			return body.transferTo(OutputStream.nullOutputStream());
+		}
+	}
+
+	private static Result createResult(int threadsBefore, long start) {
+		long millis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+		return new Result(THREADS.getPeakThreadCount() - threadsBefore, millis);
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.benchmark;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se.uu.ub.cora.iiif.uri.IiifUriCanonicalizer;
+import se.uu.ub.cora.iiif.uri.InvalidIiifUriException;
+import se.uu.ub.cora.iiif.uri.SourceImage;
+import se.uu.ub.cora.iiif.uri.SourceImageLookup;
+
+/**
+ * UriCanonicalizationBenchmark measures the time and, run with -prof gc, the allocation of
+ * making image request URIs canonical, as it is done once for every request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UriCanonicalizationBenchmark {
+	private static final SourceImage SOURCE_IMAGE = new SourceImage(6000, 4000, true);
+
+	@Param({ "someId/full/max/0/default.jpg", "someId/full/full/0.0/color.jpg",
+			"someId/2048,1024,1024,1024/512,/0/default.jpg", "someId/full/!800,800/0/default.jpg" })
+	public String uri;
+
+	private IiifUriCanonicalizer syntaxOnly;
+	private IiifUriCanonicalizer knownImage;
+
+	@Setup
+	public void setUp() {
+		syntaxOnly = new IiifUriCanonicalizer(3, SourceImageLookup.NONE);
+		knownImage = new IiifUriCanonicalizer(3, identifier -> Optional.of(SOURCE_IMAGE));
+	}
+
+	@Benchmark
+	public String canonicalizeFromSyntax() {
+		return syntaxOnly.canonicalize(uri);
+	}
+
+	@Benchmark
+	public String canonicalizeKnownImage() {
+		return knownImage.canonicalize(uri);
+	}
+
+	@Benchmark
+	public String rejectInvalidSyntax() {
+		try {
+			return syntaxOnly.canonicalize("someId/full/max/999/default.jpg");
+		} catch (InvalidIiifUriException e) {
+			return e.getMessage();
+		}
+	}
+}
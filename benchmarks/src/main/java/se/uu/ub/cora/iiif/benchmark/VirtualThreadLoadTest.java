@@ -0,0 +1,110 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.httphandler.HttpHandlerFactoryImp;
+import se.uu.ub.cora.iiif.IiifAdapterImp;
+import se.uu.ub.cora.iiif.VirtualThreadIiifAdapter;
+import se.uu.ub.cora.iiif.async.ThreadPerCallExecutors;
+
+/**
+ * VirtualThreadLoadTest makes 10 000 concurrent requests for slow tiles through
+ * {@link IiifAdapterImp} run on virtual threads by {@link VirtualThreadIiifAdapter}, and prints
+ * the throughput and threads in use for a few limits on concurrent image server calls. The
+ * throughput should follow the limit divided by the decode time, while the platform threads in
+ * use stay few. Bodies are read on the threads that complete the calls, as a call holds its
+ * permit until its body is read.
+ * <p>
+ * Run on Java 21 or later with: java -cp target/benchmarks.jar
+ * se.uu.ub.cora.iiif.benchmark.VirtualThreadLoadTest
+ */
+public final class VirtualThreadLoadTest {
+	private static final int TILES = 10_000;
+	private static final int[] MAX_CONCURRENT_CALLS = { 64, 256, 1024 };
+	private static final Duration DECODE_TIME = Duration.ofMillis(200);
+	private static final int TILE_BYTES = 16 * 1024;
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	private VirtualThreadLoadTest() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		System.out.println(
+				"virtual threads: " + ThreadPerCallExecutors.virtualThreadsAreAvailable());
+		try (LoopbackImageServer imageServer = LoopbackImageServer.start(DECODE_TIME,
+				TILE_BYTES)) {
+			System.out.printf("%10s %10s %12s %14s %16s %16s%n", "tiles", "limit", "elapsed ms",
+					"tiles/s", "expected tiles/s", "platform threads");
+			for (int maxConcurrentCalls : MAX_CONCURRENT_CALLS) {
+				run(imageServer, maxConcurrentCalls);
+			}
+		}
+	}
+
+	private static void run(LoopbackImageServer imageServer, int maxConcurrentCalls) {
+		ExecutorService executor = ThreadPerCallExecutors.newThreadPerCallExecutor();
+		VirtualThreadIiifAdapter adapter = new VirtualThreadIiifAdapter(
+				new IiifAdapterImp(imageServer.getBaseUrl(), new HttpHandlerFactoryImp()),
+				executor, maxConcurrentCalls, Duration.ofMinutes(5));
+		int threadsBefore = THREADS.getThreadCount();
+		THREADS.resetPeakThreadCount();
+		long start = System.nanoTime();
+		List<CompletableFuture<Long>> bodies = new ArrayList<>(TILES);
+		for (int i = 0; i < TILES; i++) {
+			bodies.add(adapter.callIiifServerAsync(createParameters(i))
+					.thenApply(response -> readBody(response.body())));
+		}
+		for (CompletableFuture<Long> body : bodies) {
+			body.join();
+		}
+		long millis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+		long expected = maxConcurrentCalls * 1000L / DECODE_TIME.toMillis();
+		System.out.printf("%10d %10d %12d %14d %16d %16d%n", TILES, maxConcurrentCalls, millis,
+				TILES * 1000L / Math.max(1, millis), expected,
+				THREADS.getPeakThreadCount() - threadsBefore);
+		executor.shutdown();
+	}
+
+	private static IiifParameters createParameters(int tile) {
+		return new IiifParameters("someId/" + tile * 256 + ",0,256,256/max/0/default.jpg", "GET",
+				Map.of());
+	}
+
+	private static long readBody(InputStream body) {
+		try (body) {
+			return body.transferTo(OutputStream.nullOutputStream());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
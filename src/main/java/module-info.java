@@ -20,7 +20,20 @@ module se.uu.ub.cora.iiifadapter {
 	requires se.uu.ub.cora.httphandler;
 	requires se.uu.ub.cora.initialize;
 	requires se.uu.ub.cora.binary;
+	requires se.uu.ub.cora.logger;
 	requires java.net.http;
+	requires java.desktop;
+	requires jdk.httpserver;
+
+	exports se.uu.ub.cora.iiif.async;
+	exports se.uu.ub.cora.iiif.batch;
+	exports se.uu.ub.cora.iiif.invalidation;
+	exports se.uu.ub.cora.iiif.metrics;
+	exports se.uu.ub.cora.iiif.peer;
+	exports se.uu.ub.cora.iiif.recording;
+	exports se.uu.ub.cora.iiif.uri;
+
+	uses se.uu.ub.cora.iiif.metrics.MetricsExporter;
 
 	provides se.uu.ub.cora.binary.iiif.IiifInstanceProvider with IiifImageInstanceProviderImp;
 
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import se.uu.ub.cora.binary.BinaryException;
+import se.uu.ub.cora.binary.iiif.IiifAdapter;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.batch.BatchIiifAdapter;
+import se.uu.ub.cora.iiif.batch.BatchResult;
+import se.uu.ub.cora.iiif.batch.TilePyramid;
+import se.uu.ub.cora.iiif.batch.Viewport;
+import se.uu.ub.cora.iiif.invalidation.ImageInvalidator;
+
+/**
+ * BatchingIiifAdapter adds batches to the adapter it decorates. The requests of a batch are made
+ * on threads from an executor, at most max concurrent calls at a time for each batch, through the
+ * decorated adapter, so that prefetched tiles end up in its caches. All batches together make at
+ * most max total concurrent calls at a time, so that many viewers prefetching at once do not
+ * multiply the load on the image server, calls over it wait for one of the others to finish.
+ * <p>
+ * As it is the outermost adapter, it passes on {@link ImageInvalidator#invalidate(String)} to
+ * the decorated adapter, if that keeps anything per image.
+ */
+public class BatchingIiifAdapter implements BatchIiifAdapter, ImageInvalidator {
+	private IiifAdapter iiifAdapter;
+	private ExecutorService executor;
+	private int maxConcurrentCalls;
+	private int maxTotalConcurrentCalls;
+	private final Semaphore callPermits;
+	private final LongAdder batches = new LongAdder();
+	private final LongAdder batchCalls = new LongAdder();
+	private final LongAdder failedBatchCalls = new LongAdder();
+
+	private final class Batch implements Iterator<BatchResult> {
+		private final Function<IiifParameters, BatchResult> call;
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Queue<IiifParameters> notStarted;
+		private final BlockingQueue<BatchResult> completed = new LinkedBlockingQueue<>();
+		private final int size;
+		private int taken = 0;
+		private volatile boolean closed = false;
+
+		private Batch(List<IiifParameters> iiifParameters,
+				Function<IiifParameters, BatchResult> call) {
+			this.call = call;
+			notStarted = new ArrayDeque<>(iiifParameters);
+			size = iiifParameters.size();
+		}
+
+		private void start() {
+			for (int i = 0; i < Math.min(maxConcurrentCalls, size); i++) {
+				startNext();
+			}
+		}
+
+		private void startNext() {
+			IiifParameters next = takeNotStarted();
+			if (next != null) {
+				executor.execute(() -> makeCall(next));
+			}
+		}
+
+		private IiifParameters takeNotStarted() {
+			lock.lock();
+			try {
+				return closed ? null : notStarted.poll();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private void makeCall(IiifParameters iiifParameters) {
+			callPermits.acquireUninterruptibly();
+			try {
+				if (closed) {
+					return;
+				}
+				completed.add(call.apply(iiifParameters));
+			} finally {
+				callPermits.release();
+			}
+			if (closed) {
+				closeCompleted();
+			}
+			startNext();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return taken < size;
+		}
+
+		@Override
+		public BatchResult next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			taken++;
+			try {
+				return completed.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				close();
+				throw BinaryException.withMessage("Interrupted while waiting for batch results");
+			}
+		}
+
+		private void close() {
+			lock.lock();
+			try {
+				closed = true;
+				notStarted.clear();
+			} finally {
+				lock.unlock();
+			}
+			closeCompleted();
+		}
+
+		private void closeCompleted() {
+			BatchResult result = completed.poll();
+			while (result != null) {
+				closeBody(result);
+				result = completed.poll();
+			}
+		}
+
+		private Stream<BatchResult> stream() {
+			Spliterator<BatchResult> spliterator = Spliterators.spliterator(this, size,
+					Spliterator.NONNULL | Spliterator.SIZED);
+			return StreamSupport.stream(spliterator, false).onClose(this::close);
+		}
+	}
+
+	/**
+	 * @param iiifAdapter
+	 *            the adapter the requests of batches, and all other requests, are made through
+	 * @param executor
+	 *            the executor the calls of batches are made on
+	 * @param maxConcurrentCalls
+	 *            the most calls made at a time for one batch
+	 * @param maxTotalConcurrentCalls
+	 *            the most calls made at a time for all batches together
+	 */
+	public BatchingIiifAdapter(IiifAdapter iiifAdapter, ExecutorService executor,
+			int maxConcurrentCalls, int maxTotalConcurrentCalls) {
+		this.iiifAdapter = iiifAdapter;
+		this.executor = executor;
+		this.maxConcurrentCalls = maxConcurrentCalls;
+		this.maxTotalConcurrentCalls = maxTotalConcurrentCalls;
+		callPermits = new Semaphore(maxTotalConcurrentCalls, true);
+	}
+
+	@Override
+	public IiifAdapterResponse callIiifServer(IiifParameters iiifParameters) {
+		return iiifAdapter.callIiifServer(iiifParameters);
+	}
+
+	@Override
+	public void invalidate(String identifier) {
+		if (iiifAdapter instanceof ImageInvalidator invalidator) {
+			invalidator.invalidate(identifier);
+		}
+	}
+
+	@Override
+	public Stream<BatchResult> callIiifServerBatch(List<IiifParameters> iiifParameters) {
+		return startBatch(iiifParameters, this::call);
+	}
+
+	@Override
+	public Stream<BatchResult> prefetch(Viewport viewport) {
+		return startBatch(TilePyramid.tilesWithNextZoomLevelFor(viewport), this::callAndReadBody);
+	}
+
+	private Stream<BatchResult> startBatch(List<IiifParameters> iiifParameters,
+			Function<IiifParameters, BatchResult> call) {
+		batches.increment();
+		Batch batch = new Batch(iiifParameters, call);
+		batch.start();
+		return batch.stream();
+	}
+
+	private BatchResult call(IiifParameters iiifParameters) {
+		batchCalls.increment();
+		try {
+			return BatchResult.withResponse(iiifParameters,
+					iiifAdapter.callIiifServer(iiifParameters));
+		} catch (RuntimeException e) {
+			failedBatchCalls.increment();
+			return BatchResult.withError(iiifParameters, e);
+		}
+	}
+
+	private BatchResult callAndReadBody(IiifParameters iiifParameters) {
+		BatchResult result = call(iiifParameters);
+		if (!result.hasResponse()) {
+			return result;
+		}
+		IiifAdapterResponse response = result.response();
+		try (InputStream body = response.body()) {
+			readToEnd(body);
+		} catch (IOException e) {
+			failedBatchCalls.increment();
+			return BatchResult.withError(iiifParameters, BinaryException.withMessageAndException(
+					"Error while reading prefetched response: " + e.getMessage(), e));
+		}
+		return BatchResult.withResponse(iiifParameters, new IiifAdapterResponse(
+				response.status(), response.headers(), InputStream.nullInputStream()));
+	}
+
+	private void readToEnd(InputStream body) throws IOException {
+		if (body != null) {
+			body.transferTo(OutputStream.nullOutputStream());
+		}
+	}
+
+	private void closeBody(BatchResult result) {
+		if (!result.hasResponse() || result.response().body() == null) {
+			return;
+		}
+		try {
+			result.response().body().close();
+		} catch (IOException e) {
+			// the response was not read
+		}
+	}
+
+	/**
+	 * getBatches returns the number of batches and prefetches started.
+	 */
+	public long getBatches() {
+		return batches.sum();
+	}
+
+	/**
+	 * getBatchCalls returns the number of calls made for batches and prefetches.
+	 */
+	public long getBatchCalls() {
+		return batchCalls.sum();
+	}
+
+	/**
+	 * getFailedBatchCalls returns the number of calls for batches and prefetches that failed.
+	 */
+	public long getFailedBatchCalls() {
+		return failedBatchCalls.sum();
+	}
+
+	IiifAdapter onlyForTestGetIiifAdapter() {
+		return iiifAdapter;
+	}
+
+	int onlyForTestGetMaxConcurrentCalls() {
+		return maxConcurrentCalls;
+	}
+
+	int onlyForTestGetMaxTotalConcurrentCalls() {
+		return maxTotalConcurrentCalls;
+	}
+}
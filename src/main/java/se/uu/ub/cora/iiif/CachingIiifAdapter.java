@@ -0,0 +1,251 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+import se.uu.ub.cora.binary.BinaryException;
+import se.uu.ub.cora.binary.iiif.IiifAdapter;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.cache.BufferedBody;
+import se.uu.ub.cora.iiif.cache.CachedTile;
+import se.uu.ub.cora.iiif.cache.TileCacheKey;
+import se.uu.ub.cora.iiif.cache.TileStore;
+import se.uu.ub.cora.iiif.http.ConditionalRequests;
+import se.uu.ub.cora.iiif.http.Headers;
+
+/**
+ * CachingIiifAdapter answers GET requests from a {@link TileStore} when it can, and otherwise
+ * calls the adapter it decorates and stores successful responses. Only 200 responses to GET
+ * requests are stored, responses that are not found or in error never are.
+ * <p>
+ * Stored responses are used without asking the image server for as long as its Cache-Control
+ * s-maxage or max-age allows, or for the revalidate after duration when it sent neither. After
+ * that they are revalidated with their ETag and Last-Modified validators, and a 304 from the image
+ * server renews the stored response without transferring the body again. Conditional requests from
+ * clients that already have the stored representation are answered with 304.
+ * <p>
+ * Stored responses are returned whole with their Content-Length, so that a range of them can be
+ * sliced by a {@link SlicingIiifAdapter} without calling the image server. Revalidations ask for
+ * the whole representation even when the client asked for a range of it.
+ */
+public class CachingIiifAdapter implements IiifAdapter {
+	private static final int HTTP_OK = 200;
+	private static final int HTTP_NOT_MODIFIED = 304;
+	private static final String CONTENT_LENGTH = "Content-Length";
+	private IiifAdapter iiifAdapter;
+	private TileStore tileStore;
+	private int maxEntryBytes;
+	private Duration revalidateAfter;
+	private Clock clock;
+	private final LongAdder revalidations = new LongAdder();
+	private final LongAdder notModifiedRevalidations = new LongAdder();
+	private final LongAdder notModifiedResponses = new LongAdder();
+
+	public CachingIiifAdapter(IiifAdapter iiifAdapter, TileStore tileStore, int maxEntryBytes,
+			Duration revalidateAfter, Clock clock) {
+		this.iiifAdapter = iiifAdapter;
+		this.tileStore = tileStore;
+		this.maxEntryBytes = maxEntryBytes;
+		this.revalidateAfter = revalidateAfter;
+		this.clock = clock;
+	}
+
+	@Override
+	public IiifAdapterResponse callIiifServer(IiifParameters iiifParameters) {
+		if (!"GET".equals(iiifParameters.method())) {
+			return iiifAdapter.callIiifServer(iiifParameters);
+		}
+		String key = TileCacheKey.from(iiifParameters);
+		Optional<CachedTile> cachedTile = tileStore.get(key);
+		if (cachedTile.isEmpty()) {
+			return callAndStore(key, iiifParameters);
+		}
+		if (isFresh(cachedTile.get())) {
+			return createResponseFromCache(cachedTile.get(), iiifParameters);
+		}
+		return revalidate(key, cachedTile.get(), iiifParameters);
+	}
+
+	private boolean isFresh(CachedTile tile) {
+		Duration lifetime = ConditionalRequests.freshnessLifetime(tile.headers(), revalidateAfter);
+		return clock.millis() - tile.storedAtMillis() < lifetime.toMillis();
+	}
+
+	private IiifAdapterResponse createResponseFromCache(CachedTile tile,
+			IiifParameters iiifParameters) {
+		if (ConditionalRequests.isNotModified(iiifParameters.headersMap(), tile.headers())) {
+			notModifiedResponses.increment();
+			return new IiifAdapterResponse(HTTP_NOT_MODIFIED,
+					ConditionalRequests.createNotModifiedHeaders(tile.headers()),
+					InputStream.nullInputStream());
+		}
+		Map<String, String> headers = new LinkedHashMap<>(tile.headers());
+		if (Headers.find(headers, CONTENT_LENGTH).isEmpty()) {
+			headers.put(CONTENT_LENGTH, String.valueOf(tile.size()));
+		}
+		return new IiifAdapterResponse(HTTP_OK, headers, tile.bodyAsInputStream());
+	}
+
+	private IiifAdapterResponse revalidate(String key, CachedTile tile,
+			IiifParameters iiifParameters) {
+		revalidations.increment();
+		IiifAdapterResponse response = iiifAdapter
+				.callIiifServer(createRevalidation(tile, iiifParameters));
+		if (response.status() == HTTP_NOT_MODIFIED) {
+			return renewStoredTile(key, tile, response, iiifParameters);
+		}
+		tileStore.remove(key);
+		return storeIfCacheable(key, response, iiifParameters);
+	}
+
+	private IiifParameters createRevalidation(CachedTile tile, IiifParameters iiifParameters) {
+		Map<String, String> headers = ConditionalRequests
+				.createRevalidationHeaders(iiifParameters.headersMap(), tile.headers());
+		headers.keySet().removeIf("Range"::equalsIgnoreCase);
+		return new IiifParameters(iiifParameters.uri(), iiifParameters.method(), headers);
+	}
+
+	private IiifAdapterResponse renewStoredTile(String key, CachedTile tile,
+			IiifAdapterResponse notModified, IiifParameters iiifParameters) {
+		notModifiedRevalidations.increment();
+		closeBody(notModified);
+		CachedTile renewedTile = new CachedTile(
+				copyOf(ConditionalRequests.updateStoredHeaders(tile.headers(),
+						notModified.headers())),
+				tile.body(), clock.millis());
+		tileStore.put(key, renewedTile);
+		return createResponseFromCache(renewedTile, iiifParameters);
+	}
+
+	private void closeBody(IiifAdapterResponse response) {
+		if (response.body() == null) {
+			return;
+		}
+		try {
+			response.body().close();
+		} catch (IOException e) {
+			// a 304 response has no body to lose
+		}
+	}
+
+	private IiifAdapterResponse callAndStore(String key, IiifParameters iiifParameters) {
+		IiifAdapterResponse response = iiifAdapter.callIiifServer(iiifParameters);
+		return storeIfCacheable(key, response, iiifParameters);
+	}
+
+	private IiifAdapterResponse storeIfCacheable(String key, IiifAdapterResponse response,
+			IiifParameters iiifParameters) {
+		if (!isCacheable(response)) {
+			return response;
+		}
+		try {
+			return storeIfBodyFitsEntry(key, response, iiifParameters);
+		} catch (IOException e) {
+			throw BinaryException.withMessageAndException(
+					"Error while reading response for cache: " + e.getMessage(), e);
+		}
+	}
+
+	private boolean isCacheable(IiifAdapterResponse response) {
+		return response.status() == HTTP_OK
+				&& !ConditionalRequests.isMarkedNotToBeStored(response.headers())
+				&& !isDeclaredLargerThanEntry(response.headers())
+				&& TileCacheKey.coversVary(response.headers());
+	}
+
+	private boolean isDeclaredLargerThanEntry(Map<String, String> headers) {
+		return readContentLength(headers) > maxEntryBytes;
+	}
+
+	private long readContentLength(Map<String, String> headers) {
+		Optional<String> contentLength = Headers.find(headers, CONTENT_LENGTH);
+		if (contentLength.isEmpty()) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(contentLength.get().trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private IiifAdapterResponse storeIfBodyFitsEntry(String key, IiifAdapterResponse response,
+			IiifParameters iiifParameters) throws IOException {
+		BufferedBody body = BufferedBody.readUpTo(response.body(), maxEntryBytes);
+		if (body.isComplete()) {
+			CachedTile tile = new CachedTile(copyOf(response.headers()),
+					ByteBuffer.wrap(body.getBytes()), clock.millis());
+			tileStore.put(key, tile);
+			return createResponseFromCache(tile, iiifParameters);
+		}
+		return new IiifAdapterResponse(response.status(), response.headers(),
+				body.asInputStream());
+	}
+
+	private Map<String, String> copyOf(Map<String, String> headers) {
+		return Collections.unmodifiableMap(new LinkedHashMap<>(headers));
+	}
+
+	/**
+	 * getRevalidations returns the number of stored responses that have been revalidated with the
+	 * image server.
+	 */
+	public long getRevalidations() {
+		return revalidations.sum();
+	}
+
+	/**
+	 * getNotModifiedRevalidations returns the number of revalidations the image server answered
+	 * with 304, each one a body that did not have to be transferred again.
+	 */
+	public long getNotModifiedRevalidations() {
+		return notModifiedRevalidations.sum();
+	}
+
+	/**
+	 * getNotModifiedResponses returns the number of client requests answered with 304 from a
+	 * stored response.
+	 */
+	public long getNotModifiedResponses() {
+		return notModifiedResponses.sum();
+	}
+
+	IiifAdapter onlyForTestGetIiifAdapter() {
+		return iiifAdapter;
+	}
+
+	TileStore onlyForTestGetTileStore() {
+		return tileStore;
+	}
+
+	Duration onlyForTestGetRevalidateAfter() {
+		return revalidateAfter;
+	}
+}
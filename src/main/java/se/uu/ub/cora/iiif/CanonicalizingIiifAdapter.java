@@ -0,0 +1,97 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapter;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.uri.IiifUriCanonicalizer;
+import se.uu.ub.cora.iiif.uri.InvalidIiifUriException;
+
+/**
+ * CanonicalizingIiifAdapter rewrites request URIs to their canonical form before passing them on
+ * to the adapter it decorates, so that every adapter behind it, caches and coalescing included,
+ * sees equivalent requests as the same request. Image requests with invalid syntax are answered
+ * with 400 without being passed on.
+ */
+public class CanonicalizingIiifAdapter implements IiifAdapter {
+	private static final int HTTP_BAD_REQUEST = 400;
+	private IiifAdapter iiifAdapter;
+	private IiifUriCanonicalizer canonicalizer;
+	private final LongAdder rewrittenRequests = new LongAdder();
+	private final LongAdder rejectedRequests = new LongAdder();
+
+	public CanonicalizingIiifAdapter(IiifAdapter iiifAdapter, IiifUriCanonicalizer canonicalizer) {
+		this.iiifAdapter = iiifAdapter;
+		this.canonicalizer = canonicalizer;
+	}
+
+	@Override
+	public IiifAdapterResponse callIiifServer(IiifParameters iiifParameters) {
+		String canonicalUri;
+		try {
+			canonicalUri = canonicalizer.canonicalize(iiifParameters.uri());
+		} catch (InvalidIiifUriException e) {
+			rejectedRequests.increment();
+			return createBadRequestResponse(e.getMessage());
+		}
+		if (canonicalUri.equals(iiifParameters.uri())) {
+			return iiifAdapter.callIiifServer(iiifParameters);
+		}
+		rewrittenRequests.increment();
+		return iiifAdapter.callIiifServer(new IiifParameters(canonicalUri,
+				iiifParameters.method(), iiifParameters.headersMap()));
+	}
+
+	private IiifAdapterResponse createBadRequestResponse(String message) {
+		Map<String, String> headers = new LinkedHashMap<>();
+		headers.put("Content-Type", "text/plain; charset=UTF-8");
+		return new IiifAdapterResponse(HTTP_BAD_REQUEST, headers,
+				new ByteArrayInputStream(message.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * getRewrittenRequests returns the number of requests passed on with a URI other than the one
+	 * they were made with.
+	 */
+	public long getRewrittenRequests() {
+		return rewrittenRequests.sum();
+	}
+
+	/**
+	 * getRejectedRequests returns the number of requests answered with 400 for invalid syntax.
+	 */
+	public long getRejectedRequests() {
+		return rejectedRequests.sum();
+	}
+
+	IiifAdapter onlyForTestGetIiifAdapter() {
+		return iiifAdapter;
+	}
+
+	IiifUriCanonicalizer onlyForTestGetCanonicalizer() {
+		return canonicalizer;
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapter;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.breaker.CircuitBreaker;
+import se.uu.ub.cora.iiif.breaker.CircuitBreaker.Permit;
+
+/**
+ * CircuitBreakingIiifAdapter passes requests on to the adapter it decorates only while its
+ * {@link CircuitBreaker} lets them through. Requests stopped by an open circuit fail at once with
+ * a {@link se.uu.ub.cora.iiif.breaker.CircuitOpenException}, instead of each waiting for the
+ * failing image server. It is a local rejection, so a {@link RoutingIiifAdapter} tries another
+ * backend and a {@link LimitingIiifAdapter} leaves it out of its latencies, before a
+ * {@link RejectionAnsweringIiifAdapter} answers it with 503 and a Retry-After header.
+ * <p>
+ * Responses with status 500, 502, 503 or 504, and calls that fail, count as failures. Other
+ * responses, 404 included, show that the image server is working.
+ */
+public class CircuitBreakingIiifAdapter implements IiifAdapter {
+	private IiifAdapter iiifAdapter;
+	private CircuitBreaker circuitBreaker;
+
+	public CircuitBreakingIiifAdapter(IiifAdapter iiifAdapter, CircuitBreaker circuitBreaker) {
+		this.iiifAdapter = iiifAdapter;
+		this.circuitBreaker = circuitBreaker;
+	}
+
+	@Override
+	public IiifAdapterResponse callIiifServer(IiifParameters iiifParameters) {
+		Permit permit = circuitBreaker.acquire();
+		return callWithPermit(iiifParameters, permit);
+	}
+
+	private IiifAdapterResponse callWithPermit(IiifParameters iiifParameters, Permit permit) {
+		IiifAdapterResponse response;
+		try {
+			response = iiifAdapter.callIiifServer(iiifParameters);
+		} catch (RuntimeException e) {
+			permit.release(true);
+			throw e;
+		}
+		permit.release(isFailure(response.status()));
+		return response;
+	}
+
+	private boolean isFailure(int status) {
+		return status == 500 || status == 502 || status == 503 || status == 504;
+	}
+
+	/**
+	 * getCircuitBreaker returns the circuit breaker, for its state and counters.
+	 */
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	IiifAdapter onlyForTestGetIiifAdapter() {
+		return iiifAdapter;
+	}
+}
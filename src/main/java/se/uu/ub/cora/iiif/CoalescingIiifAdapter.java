@@ -0,0 +1,207 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import se.uu.ub.cora.binary.BinaryException;
+import se.uu.ub.cora.binary.iiif.IiifAdapter;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.cache.BufferedBody;
+import se.uu.ub.cora.iiif.cache.TileCacheKey;
+import se.uu.ub.cora.iiif.http.Headers;
+
+/**
+ * CoalescingIiifAdapter lets concurrent identical requests share one call to the adapter it
+ * decorates. The first request for a method, normalized URI and relevant headers makes the call,
+ * and requests arriving while it is in flight wait for it and get their own copy of the response,
+ * whatever its status. If the call fails, each waiting request fails with the same cause.
+ * <p>
+ * A body is only read into memory when other requests are waiting for it. Bodies larger than the
+ * shared limit are not kept in memory for the waiting requests, they make their own calls
+ * instead, as they do when the response varies on a header that is not part of the key.
+ */
+public class CoalescingIiifAdapter implements IiifAdapter {
+	private static final List<String> KEY_HEADERS = List.of("If-None-Match", "If-Modified-Since",
+			"Range", "If-Range");
+	private IiifAdapter iiifAdapter;
+	private int maxSharedBodyBytes;
+	private final Map<String, InFlightCall> inFlight;
+	private final LongAdder calls = new LongAdder();
+	private final LongAdder coalescedRequests = new LongAdder();
+
+	private record SharedResponse(int status, Map<String, String> headers, byte[] body) {
+	}
+
+	private static final class InFlightCall {
+		private final CompletableFuture<Optional<SharedResponse>> response;
+		private final AtomicInteger waitingRequests = new AtomicInteger();
+
+		private InFlightCall() {
+			response = new CompletableFuture<>();
+		}
+	}
+
+	public CoalescingIiifAdapter(IiifAdapter iiifAdapter, int maxSharedBodyBytes) {
+		this.iiifAdapter = iiifAdapter;
+		this.maxSharedBodyBytes = maxSharedBodyBytes;
+		inFlight = new ConcurrentHashMap<>();
+	}
+
+	@Override
+	public IiifAdapterResponse callIiifServer(IiifParameters iiifParameters) {
+		if (!isIdempotent(iiifParameters.method())) {
+			return iiifAdapter.callIiifServer(iiifParameters);
+		}
+		String key = createKey(iiifParameters);
+		InFlightCall call = new InFlightCall();
+		InFlightCall existingCall = inFlight.putIfAbsent(key, call);
+		if (existingCall != null) {
+			return waitForCall(existingCall, iiifParameters);
+		}
+		return makeCall(key, call, iiifParameters);
+	}
+
+	private String createKey(IiifParameters iiifParameters) {
+		StringBuilder key = new StringBuilder(iiifParameters.method()).append(' ')
+				.append(TileCacheKey.from(iiifParameters));
+		for (String headerName : KEY_HEADERS) {
+			Headers.find(iiifParameters.headersMap(), headerName).ifPresent(
+					value -> key.append('\n').append(headerName).append(": ").append(value));
+		}
+		return key.toString();
+	}
+
+	private boolean isIdempotent(String method) {
+		return "GET".equals(method) || "HEAD".equals(method);
+	}
+
+	private IiifAdapterResponse waitForCall(InFlightCall call, IiifParameters iiifParameters) {
+		call.waitingRequests.incrementAndGet();
+		Optional<SharedResponse> sharedResponse = joinCall(call.response);
+		if (sharedResponse.isEmpty()) {
+			return iiifAdapter.callIiifServer(iiifParameters);
+		}
+		coalescedRequests.increment();
+		return copyOf(sharedResponse.get());
+	}
+
+	private Optional<SharedResponse> joinCall(CompletableFuture<Optional<SharedResponse>> call) {
+		try {
+			return call.join();
+		} catch (CompletionException e) {
+			throw failedSharedCall(e.getCause());
+		}
+	}
+
+	private BinaryException failedSharedCall(Throwable cause) {
+		Exception exception = cause instanceof Exception e ? e : new RuntimeException(cause);
+		return BinaryException.withMessageAndException(cause.getMessage(), exception);
+	}
+
+	private IiifAdapterResponse copyOf(SharedResponse sharedResponse) {
+		return new IiifAdapterResponse(sharedResponse.status(),
+				new LinkedHashMap<>(sharedResponse.headers()),
+				new ByteArrayInputStream(sharedResponse.body()));
+	}
+
+	private IiifAdapterResponse makeCall(String key, InFlightCall call,
+			IiifParameters iiifParameters) {
+		calls.increment();
+		try {
+			IiifAdapterResponse response = iiifAdapter.callIiifServer(iiifParameters);
+			return shareResponse(key, call, response);
+		} catch (RuntimeException e) {
+			inFlight.remove(key, call);
+			call.response.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	private IiifAdapterResponse shareResponse(String key, InFlightCall call,
+			IiifAdapterResponse response) {
+		inFlight.remove(key, call);
+		if (call.waitingRequests.get() == 0 || !TileCacheKey.coversVary(response.headers())) {
+			call.response.complete(Optional.empty());
+			return response;
+		}
+		BufferedBody body = readBody(response);
+		if (!body.isComplete()) {
+			call.response.complete(Optional.empty());
+			return new IiifAdapterResponse(response.status(), response.headers(),
+					body.asInputStream());
+		}
+		SharedResponse sharedResponse = new SharedResponse(response.status(),
+				new LinkedHashMap<>(response.headers()), body.getBytes());
+		call.response.complete(Optional.of(sharedResponse));
+		return copyOf(sharedResponse);
+	}
+
+	private BufferedBody readBody(IiifAdapterResponse response) {
+		try {
+			return BufferedBody.readUpTo(response.body(), maxSharedBodyBytes);
+		} catch (IOException e) {
+			throw BinaryException.withMessageAndException(
+					"Error while reading response to share: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * getCalls returns the number of calls made to the decorated adapter on behalf of requests
+	 * that could be coalesced.
+	 */
+	public long getCalls() {
+		return calls.sum();
+	}
+
+	/**
+	 * getCoalescedRequests returns the number of requests that were answered by sharing another
+	 * request's call, each one a call the image server did not have to answer.
+	 */
+	public long getCoalescedRequests() {
+		return coalescedRequests.sum();
+	}
+
+	IiifAdapter onlyForTestGetIiifAdapter() {
+		return iiifAdapter;
+	}
+
+	int onlyForTestGetNumberOfWaitingRequests() {
+		int waiting = 0;
+		for (InFlightCall call : inFlight.values()) {
+			waiting += call.waitingRequests.get();
+		}
+		return waiting;
+	}
+
+	int onlyForTestGetMaxSharedBodyBytes() {
+		return maxSharedBodyBytes;
+	}
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.MessageFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import se.uu.ub.cora.binary.BinaryException;
+import se.uu.ub.cora.binary.iiif.IiifAdapter;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.hedge.HedgeBudget;
+import se.uu.ub.cora.iiif.hedge.HedgeSettings;
+import se.uu.ub.cora.iiif.hedge.LatencyWindow;
+
+/**
+ * HedgingIiifAdapter cuts the tail latency caused by the occasional slow call to the image
+ * server. Calls are made on threads from an executor, and when a GET or HEAD call has not been
+ * answered within a percentile of recent call latencies, the same request is also made to the
+ * hedge adapter. The first response is used and the other call is cancelled. The hedged calls
+ * are kept within a {@link HedgeBudget}.
+ * <p>
+ * Every request, hedged or not, fails when no response has arrived within the deadline, if one
+ * is set. A call that answers after the request has given up, which happens as the I/O of a call
+ * does not stop when its thread is interrupted, has its response closed.
+ * <p>
+ * The latency of the first call of every request is recorded, also when it is cancelled as the
+ * hedged call answered first or the deadline passed. A cancelled call is recorded as the time it
+ * ran, which it would have taken at least, so that the percentile follows an image server that
+ * gets slower instead of being drawn from the calls that happened to be fast.
+ */
+public class HedgingIiifAdapter implements IiifAdapter {
+	private static final int LATENCY_WINDOW_SIZE = 1024;
+	private IiifAdapter iiifAdapter;
+	private IiifAdapter hedgeAdapter;
+	private ExecutorService executor;
+	private HedgeSettings settings;
+	private final LatencyWindow latencies;
+	private final HedgeBudget budget;
+	private final LongAdder hedgeWins = new LongAdder();
+	private final LongAdder deadlinesExceeded = new LongAdder();
+
+	private final class Call {
+		private final IiifParameters iiifParameters;
+		private final CompletableFuture<IiifAdapterResponse> response = new CompletableFuture<>();
+		private final List<Future<?>> attempts = new CopyOnWriteArrayList<>();
+		private final AtomicInteger running = new AtomicInteger();
+		private final AtomicBoolean firstAttemptDone = new AtomicBoolean();
+		private long firstAttemptStartNanos;
+
+		private Call(IiifParameters iiifParameters) {
+			this.iiifParameters = iiifParameters;
+		}
+
+		private void start(IiifAdapter adapter, boolean hedge) {
+			running.incrementAndGet();
+			long startNanos = System.nanoTime();
+			if (!hedge) {
+				firstAttemptStartNanos = startNanos;
+			}
+			attempts.add(executor.submit(() -> attempt(adapter, hedge, startNanos)));
+		}
+
+		private void attempt(IiifAdapter adapter, boolean hedge, long startNanos) {
+			IiifAdapterResponse attemptResponse;
+			try {
+				attemptResponse = adapter.callIiifServer(iiifParameters);
+			} catch (RuntimeException e) {
+				if (!hedge) {
+					firstAttemptDone.set(true);
+				}
+				if (running.decrementAndGet() == 0) {
+					response.completeExceptionally(e);
+				}
+				return;
+			}
+			if (!hedge) {
+				recordFirstAttemptLatency(System.nanoTime() - startNanos);
+			}
+			useFirstResponse(attemptResponse, hedge);
+		}
+
+		private void useFirstResponse(IiifAdapterResponse attemptResponse, boolean hedge) {
+			if (!response.complete(attemptResponse)) {
+				closeQuietly(attemptResponse.body());
+			} else if (hedge) {
+				hedgeWins.increment();
+			}
+		}
+
+		private void recordFirstAttemptLatency(long latencyNanos) {
+			if (firstAttemptDone.compareAndSet(false, true)) {
+				latencies.record(latencyNanos);
+			}
+		}
+
+		private void cancelRemainingAttempts() {
+			recordFirstAttemptLatency(System.nanoTime() - firstAttemptStartNanos);
+			response.cancel(false);
+			for (Future<?> attempt : attempts) {
+				attempt.cancel(true);
+			}
+		}
+	}
+
+	public HedgingIiifAdapter(IiifAdapter iiifAdapter, IiifAdapter hedgeAdapter,
+			ExecutorService executor, HedgeSettings settings) {
+		this.iiifAdapter = iiifAdapter;
+		this.hedgeAdapter = hedgeAdapter;
+		this.executor = executor;
+		this.settings = settings;
+		latencies = new LatencyWindow(LATENCY_WINDOW_SIZE, settings.delayPercentile());
+		budget = new HedgeBudget(settings.budgetRatio());
+	}
+
+	@Override
+	public IiifAdapterResponse callIiifServer(IiifParameters iiifParameters) {
+		boolean idempotent = isIdempotent(iiifParameters.method());
+		if (!idempotent && settings.deadline().isZero()) {
+			return iiifAdapter.callIiifServer(iiifParameters);
+		}
+		long startNanos = System.nanoTime();
+		budget.recordRequest();
+		Call call = new Call(iiifParameters);
+		call.start(iiifAdapter, false);
+		if (idempotent) {
+			hedgeIfSlow(call, startNanos);
+		}
+		return awaitResponse(call, startNanos);
+	}
+
+	private boolean isIdempotent(String method) {
+		return "GET".equals(method) || "HEAD".equals(method);
+	}
+
+	private void hedgeIfSlow(Call call, long startNanos) {
+		long delayNanos = getHedgeDelayNanos();
+		if (delayNanos < 0 || isBeyondDeadline(delayNanos)) {
+			return;
+		}
+		if (!isAnsweredWithin(call, delayNanos - (System.nanoTime() - startNanos))
+				&& budget.tryToSpend()) {
+			call.start(hedgeAdapter, true);
+		}
+	}
+
+	private long getHedgeDelayNanos() {
+		long percentileNanos = latencies.getPercentileNanos();
+		if (percentileNanos < 0 || settings.budgetRatio() <= 0) {
+			return -1;
+		}
+		return Math.max(percentileNanos, settings.minDelay().toNanos());
+	}
+
+	private boolean isBeyondDeadline(long delayNanos) {
+		return !settings.deadline().isZero() && delayNanos >= settings.deadline().toNanos();
+	}
+
+	private boolean isAnsweredWithin(Call call, long waitNanos) {
+		try {
+			call.response.get(waitNanos, TimeUnit.NANOSECONDS);
+			return true;
+		} catch (TimeoutException e) {
+			return false;
+		} catch (ExecutionException e) {
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return true;
+		}
+	}
+
+	private IiifAdapterResponse awaitResponse(Call call, long startNanos) {
+		try {
+			return tryToAwaitResponse(call, startNanos);
+		} catch (ExecutionException e) {
+			throw asBinaryException(e.getCause());
+		} catch (TimeoutException e) {
+			deadlinesExceeded.increment();
+			throw errorWhileCallingIiifServer(MessageFormat.format("Deadline of {0} ms exceeded",
+					settings.deadline().toMillis()), call.iiifParameters);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw errorWhileCallingIiifServer("Interrupted while waiting for response",
+					call.iiifParameters);
+		} finally {
+			call.cancelRemainingAttempts();
+		}
+	}
+
+	private IiifAdapterResponse tryToAwaitResponse(Call call, long startNanos)
+			throws InterruptedException, ExecutionException, TimeoutException {
+		if (settings.deadline().isZero()) {
+			return call.response.get();
+		}
+		long remainingNanos = settings.deadline().toNanos() - (System.nanoTime() - startNanos);
+		return call.response.get(remainingNanos, TimeUnit.NANOSECONDS);
+	}
+
+	private BinaryException asBinaryException(Throwable cause) {
+		if (cause instanceof BinaryException binaryException) {
+			return binaryException;
+		}
+		Exception exception = cause instanceof Exception e ? e : new RuntimeException(cause);
+		return BinaryException.withMessageAndException(cause.getMessage(), exception);
+	}
+
+	private BinaryException errorWhileCallingIiifServer(String reason,
+			IiifParameters iiifParameters) {
+		String errorMessage = "{0} using method: {1}, and URI: {2}";
+		return BinaryException.withMessage(MessageFormat.format(errorMessage, reason,
+				iiifParameters.method(), iiifParameters.uri()));
+	}
+
+	private void closeQuietly(InputStream body) {
+		try {
+			body.close();
+		} catch (IOException e) {
+			// the response was not wanted
+		}
+	}
+
+	/**
+	 * getHedges returns the number of hedged calls made.
+	 */
+	public long getHedges() {
+		return budget.getHedges();
+	}
+
+	/**
+	 * getHedgeWins returns the number of hedged calls that answered before the call they hedged.
+	 */
+	public long getHedgeWins() {
+		return hedgeWins.sum();
+	}
+
+	/**
+	 * getDeadlinesExceeded returns the number of requests that failed as no response arrived
+	 * within the deadline.
+	 */
+	public long getDeadlinesExceeded() {
+		return deadlinesExceeded.sum();
+	}
+
+	/**
+	 * getHedgeDelayMillis returns the current delay before a call is hedged, or -1 if calls are
+	 * not hedged yet.
+	 */
+	public long getHedgeDelayMillis() {
+		long delayNanos = getHedgeDelayNanos();
+		return delayNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(delayNanos);
+	}
+
+	IiifAdapter onlyForTestGetIiifAdapter() {
+		return iiifAdapter;
+	}
+
+	IiifAdapter onlyForTestGetHedgeAdapter() {
+		return hedgeAdapter;
+	}
+
+	HedgeSettings onlyForTestGetSettings() {
+		return settings;
+	}
+
+	LatencyWindow onlyForTestGetLatencies() {
+		return latencies;
+	}
+}
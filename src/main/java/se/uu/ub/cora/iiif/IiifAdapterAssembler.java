@@ -0,0 +1,719 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import se.uu.ub.cora.binary.BinaryException;
+import se.uu.ub.cora.binary.iiif.IiifAdapter;
+import se.uu.ub.cora.httphandler.HttpHandlerFactoryImp;
+import se.uu.ub.cora.iiif.async.ThreadPerCallExecutors;
+import se.uu.ub.cora.iiif.backend.ActiveHealthChecker;
+import se.uu.ub.cora.iiif.backend.Backend;
+import se.uu.ub.cora.iiif.backend.BackendSelector;
+import se.uu.ub.cora.iiif.backend.HealthSettings;
+import se.uu.ub.cora.iiif.backend.LeastLoadedSelector;
+import se.uu.ub.cora.iiif.backend.RendezvousSelector;
+import se.uu.ub.cora.iiif.breaker.BreakerSettings;
+import se.uu.ub.cora.iiif.breaker.CircuitBreaker;
+import se.uu.ub.cora.iiif.cache.DiskTileStore;
+import se.uu.ub.cora.iiif.cache.DiskTileStoreSettings;
+import se.uu.ub.cora.iiif.cache.MemoryTileStore;
+import se.uu.ub.cora.iiif.cache.NotFoundCache;
+import se.uu.ub.cora.iiif.hedge.HedgeSettings;
+import se.uu.ub.cora.iiif.http.HttpClientPool;
+import se.uu.ub.cora.iiif.http.MultiplexedClients;
+import se.uu.ub.cora.iiif.http.PoolSettings;
+import se.uu.ub.cora.iiif.info.InfoCache;
+import se.uu.ub.cora.iiif.invalidation.ImageInvalidator;
+import se.uu.ub.cora.iiif.limit.ConcurrencyLimiter;
+import se.uu.ub.cora.iiif.limit.LimitSettings;
+import se.uu.ub.cora.iiif.metrics.MetricsExporter;
+import se.uu.ub.cora.iiif.metrics.ModuleMetrics;
+import se.uu.ub.cora.iiif.metrics.UpstreamMetrics;
+import se.uu.ub.cora.iiif.peer.PeerServer;
+import se.uu.ub.cora.iiif.peer.PeerSettings;
+import se.uu.ub.cora.iiif.recording.CallRecorder;
+import se.uu.ub.cora.iiif.transcode.ImageFormat;
+import se.uu.ub.cora.iiif.transcode.ImageIoTranscoder;
+import se.uu.ub.cora.iiif.transcode.TranscodingExecutors;
+import se.uu.ub.cora.iiif.transcode.TranscodingSettings;
+import se.uu.ub.cora.iiif.uri.IiifUriCanonicalizer;
+import se.uu.ub.cora.iiif.uri.SourceImageLookup;
+import se.uu.ub.cora.iiif.warm.CacheWarmer;
+import se.uu.ub.cora.iiif.warm.LiveCalls;
+import se.uu.ub.cora.iiif.warm.WarmupSettings;
+import se.uu.ub.cora.initialize.SettingsProvider;
+
+/**
+ * IiifAdapterAssembler builds the adapter handed out by {@link IiifImageInstanceProviderImp}
+ * from settings. The adapter calling the image server is decorated, from the inside out, with
+ * the optional features that are enabled.
+ * <p>
+ * Every transport, {@link IiifAdapterImp}, {@link PooledIiifAdapter} and
+ * {@link MultiplexedIiifAdapter}, hands over the body as the stream from the connection to the
+ * image server, so a body is only read as fast as the client reading it, and is never held on the
+ * heap as a whole. Only these decorators read bodies into memory, each up to a limit of its own
+ * after which the rest of the body is streamed: the tile caches up to their largest entry, the
+ * info cache up to its largest document, transcoding up to its largest source, and coalescing up
+ * to its largest shared body, and then only while other requests wait for the same response.
+ */
+class IiifAdapterAssembler {
+	private static final String POOLED_TRANSPORT = "pooled";
+	private static final String MULTIPLEXED_TRANSPORT = "multiplexed";
+	private static final String LEAST_LOADED_SELECTION = "leastLoaded";
+	private final Iterable<MetricsExporter> metricsExporters;
+	private HttpClientPool httpClientPool;
+	private MultiplexedClients multiplexedClients;
+	private UpstreamMetrics upstreamMetrics;
+	private final ModuleMetrics moduleMetrics = new ModuleMetrics();
+	private InfoCache infoCache;
+	private PeerServer peerServer;
+	private LiveCalls liveCalls;
+	private final List<ImageInvalidator> invalidators = new ArrayList<>();
+
+	IiifAdapterAssembler(Iterable<MetricsExporter> metricsExporters) {
+		this.metricsExporters = metricsExporters;
+	}
+
+	IiifAdapter assemble() {
+		IiifAdapter upstream = countLiveCallsIfWarmingEnabled(createUpstream());
+		IiifAdapter coalescing = decorateWithCoalescingIfEnabled(upstream);
+		IiifAdapter notFoundCached = decorateWithNotFoundCacheIfEnabled(coalescing);
+		IiifAdapter diskCached = decorateWithDiskTileCacheIfEnabled(notFoundCached);
+		IiifAdapter peered = decorateWithPeerTierIfEnabled(diskCached);
+		IiifAdapter memoryCached = decorateWithTileCacheIfEnabled(peered);
+		IiifAdapter infoCached = decorateWithInfoCacheIfEnabled(memoryCached);
+		IiifAdapter transcoding = decorateWithTranscodingIfEnabled(infoCached);
+		IiifAdapter sliced = decorateWithRangeRequestsIfEnabled(transcoding);
+		IiifAdapter canonicalizing = decorateWithCanonicalizationIfEnabled(sliced);
+		IiifAdapter warming = decorateWithCacheWarmingIfEnabled(canonicalizing);
+		IiifAdapter recording = decorateWithRecordingIfEnabled(warming);
+		IiifAdapter invalidating = exposeInvalidationIfNeeded(recording);
+		IiifAdapter batching = decorateWithBatchingIfEnabled(invalidating);
+		exportMetricsIfEnabled();
+		servePeersIfEnabled(memoryCached);
+		return batching;
+	}
+
+	private void exportMetricsIfEnabled() {
+		if (!isMetricsEnabled()) {
+			return;
+		}
+		for (MetricsExporter metricsExporter : metricsExporters) {
+			if (upstreamMetrics != null) {
+				metricsExporter.export(upstreamMetrics);
+			}
+			metricsExporter.exportModuleMetrics(moduleMetrics);
+		}
+	}
+
+	private boolean isMetricsEnabled() {
+		boolean exportersFound = metricsExporters.iterator().hasNext();
+		return IiifSettings.getBooleanSettingOrDefault("iiifMetricsEnabled", exportersFound);
+	}
+
+	private IiifAdapter countLiveCallsIfWarmingEnabled(IiifAdapter iiifAdapter) {
+		if (!IiifSettings.getBooleanSettingOrDefault("iiifCacheWarmingEnabled", false)) {
+			return iiifAdapter;
+		}
+		liveCalls = new LiveCalls();
+		return new LiveCallCountingIiifAdapter(iiifAdapter, liveCalls);
+	}
+
+	private IiifAdapter createUpstream() {
+		List<String> imageServerUrls = readImageServerUrls();
+		if (imageServerUrls.size() == 1) {
+			IiifAdapter backendAdapter = answerLocalRejectionsIfNeeded(
+					createBackendAdapter(imageServerUrls.get(0)));
+			return decorateWithHedgingIfEnabled(backendAdapter, () -> backendAdapter);
+		}
+		List<Backend> backends = createBackends(imageServerUrls);
+		IiifAdapter routingAdapter = answerLocalRejectionsIfNeeded(
+				new RoutingIiifAdapter(backends, createBackendSelector()));
+		return decorateWithHedgingIfEnabled(routingAdapter,
+				() -> answerLocalRejectionsIfNeeded(new RoutingIiifAdapter(backends,
+						new LeastLoadedSelector(ThreadLocalRandom::current))));
+	}
+
+	private IiifAdapter answerLocalRejectionsIfNeeded(IiifAdapter iiifAdapter) {
+		if (!IiifSettings.getBooleanSettingOrDefault("iiifConcurrencyLimitEnabled", false)
+				&& !IiifSettings.getBooleanSettingOrDefault("iiifCircuitBreakerEnabled", false)) {
+			return iiifAdapter;
+		}
+		return new RejectionAnsweringIiifAdapter(iiifAdapter);
+	}
+
+	private List<String> readImageServerUrls() {
+		String imageServerUrls = IiifSettings.getSettingOrDefault("imageServerUrls", "");
+		if (imageServerUrls.isBlank()) {
+			return List.of(SettingsProvider.getSetting("imageServerUrl"));
+		}
+		List<String> urls = new ArrayList<>();
+		for (String url : imageServerUrls.split(",")) {
+			if (!url.isBlank()) {
+				urls.add(url.trim());
+			}
+		}
+		return urls;
+	}
+
+	private IiifAdapter createBackendAdapter(String imageServerUrl) {
+		IiifAdapter iiifAdapter = createUpstreamAdapter(imageServerUrl);
+		IiifAdapter measured = decorateWithMetricsIfEnabled(iiifAdapter);
+		IiifAdapter circuitBroken = decorateWithCircuitBreakerIfEnabled(measured);
+		return decorateWithConcurrencyLimitIfEnabled(circuitBroken, imageServerUrl);
+	}
+
+	private IiifAdapter createUpstreamAdapter(String imageServerUrl) {
+		String transport = IiifSettings.getSettingOrDefault("iiifTransport", "");
+		if (MULTIPLEXED_TRANSPORT.equals(transport)) {
+			return createMultiplexedAdapter(imageServerUrl);
+		}
+		if (POOLED_TRANSPORT.equals(transport)) {
+			return createPooledAdapter(imageServerUrl);
+		}
+		HttpHandlerFactoryImp httpHandlerFactory = new HttpHandlerFactoryImp();
+
+		IiifAdapterImp iiifAdapter = new IiifAdapterImp(imageServerUrl, httpHandlerFactory);
+		return decorateWithVirtualThreadsIfEnabled(iiifAdapter);
+	}
+
+	private PooledIiifAdapter createPooledAdapter(String imageServerUrl) {
+		return new PooledIiifAdapter(imageServerUrl, getHttpClientPool(), readResponseTimeout());
+	}
+
+	private Duration readResponseTimeout() {
+		long responseTimeout = IiifSettings
+				.getLongSettingOrDefault("iiifResponseTimeoutInMilliseconds", 60_000);
+		return Duration.ofMillis(responseTimeout);
+	}
+
+	private IiifAdapter createMultiplexedAdapter(String imageServerUrl) {
+		long negotiationTimeout = IiifSettings
+				.getLongSettingOrDefault("iiifH2cNegotiationTimeoutInMilliseconds", 5000);
+		return new MultiplexedIiifAdapter(imageServerUrl, getMultiplexedClients(),
+				createPooledAdapter(imageServerUrl), Duration.ofMillis(negotiationTimeout),
+				readResponseTimeout());
+	}
+
+	private MultiplexedClients getMultiplexedClients() {
+		if (multiplexedClients == null) {
+			int connectionsPerHost = IiifSettings
+					.getIntSettingOrDefault("iiifH2cConnectionsPerHost", 2);
+			long connectTimeout = IiifSettings
+					.getLongSettingOrDefault("iiifConnectTimeoutInMilliseconds", 10_000);
+			multiplexedClients = new MultiplexedClients(connectionsPerHost,
+					Duration.ofMillis(connectTimeout));
+		}
+		return multiplexedClients;
+	}
+
+	private IiifAdapter decorateWithVirtualThreadsIfEnabled(IiifAdapter iiifAdapter) {
+		if (!IiifSettings.getBooleanSettingOrDefault("iiifVirtualThreadsEnabled", false)) {
+			return iiifAdapter;
+		}
+		int maxConcurrentCalls = IiifSettings
+				.getIntSettingOrDefault("iiifMaxConcurrentImageServerCalls", 64);
+		long permitTimeout = IiifSettings
+				.getLongSettingOrDefault("iiifImageServerCallPermitTimeoutInMilliseconds", 30_000);
+		return new VirtualThreadIiifAdapter(iiifAdapter,
+				ThreadPerCallExecutors.newThreadPerCallExecutor(), maxConcurrentCalls,
+				Duration.ofMillis(permitTimeout));
+	}
+
+	private HttpClientPool getHttpClientPool() {
+		if (httpClientPool == null) {
+			httpClientPool = new HttpClientPool(readPoolSettings());
+			registerPoolMetrics(httpClientPool);
+		}
+		return httpClientPool;
+	}
+
+	private void registerPoolMetrics(HttpClientPool pool) {
+		moduleMetrics.register("pool.hosts", () -> pool.getMetrics().hosts());
+		moduleMetrics.register("pool.leased", () -> pool.getMetrics().leased());
+		moduleMetrics.register("pool.leasesGranted", () -> pool.getMetrics().leasesGranted());
+		moduleMetrics.register("pool.leasesWaitedFor",
+				() -> pool.getMetrics().leasesWaitedFor());
+		moduleMetrics.register("pool.leaseTimeouts", () -> pool.getMetrics().leaseTimeouts());
+	}
+
+	private List<Backend> createBackends(List<String> imageServerUrls) {
+		HealthSettings healthSettings = readHealthSettings();
+		List<Backend> backends = new ArrayList<>();
+		for (String imageServerUrl : imageServerUrls) {
+			backends.add(new Backend(imageServerUrl, createBackendAdapter(imageServerUrl),
+					healthSettings));
+		}
+		startActiveHealthChecksIfEnabled(backends, healthSettings);
+		return backends;
+	}
+
+	private HealthSettings readHealthSettings() {
+		int failureThreshold = IiifSettings.getIntSettingOrDefault("iiifBackendFailureThreshold",
+				5);
+		long ejectionTime = IiifSettings
+				.getLongSettingOrDefault("iiifBackendEjectionTimeInSeconds", 30);
+		long checkInterval = IiifSettings
+				.getLongSettingOrDefault("iiifBackendHealthCheckIntervalInSeconds", 10);
+		long checkTimeout = IiifSettings
+				.getLongSettingOrDefault("iiifBackendHealthCheckTimeoutInMilliseconds", 2000);
+		String checkPath = IiifSettings.getSettingOrDefault("iiifBackendHealthCheckPath", "");
+		return new HealthSettings(failureThreshold, Duration.ofSeconds(ejectionTime),
+				Duration.ofSeconds(checkInterval), Duration.ofMillis(checkTimeout), checkPath);
+	}
+
+	private void startActiveHealthChecksIfEnabled(List<Backend> backends,
+			HealthSettings healthSettings) {
+		if (healthSettings.checkInterval().isZero()) {
+			return;
+		}
+		HttpClient httpClient = HttpClient.newBuilder()
+				.connectTimeout(healthSettings.checkTimeout()).build();
+		new ActiveHealthChecker(backends, healthSettings, httpClient).start();
+	}
+
+	private BackendSelector createBackendSelector() {
+		if (LEAST_LOADED_SELECTION
+				.equals(IiifSettings.getSettingOrDefault("iiifBackendSelection", ""))) {
+			return new LeastLoadedSelector(ThreadLocalRandom::current);
+		}
+		return new RendezvousSelector();
+	}
+
+	private IiifAdapter decorateWithHedgingIfEnabled(IiifAdapter iiifAdapter,
+			Supplier<IiifAdapter> hedgeAdapterSupplier) {
+		boolean hedgingEnabled = IiifSettings.getBooleanSettingOrDefault("iiifHedgingEnabled",
+				false);
+		long deadline = IiifSettings.getLongSettingOrDefault("iiifRequestDeadlineInMilliseconds",
+				0);
+		if (!hedgingEnabled && deadline <= 0) {
+			return iiifAdapter;
+		}
+		return new HedgingIiifAdapter(iiifAdapter, hedgeAdapterSupplier.get(),
+				ThreadPerCallExecutors.newThreadPerCallExecutor(),
+				readHedgeSettings(hedgingEnabled, deadline));
+	}
+
+	private HedgeSettings readHedgeSettings(boolean hedgingEnabled, long deadline) {
+		int delayPercentile = IiifSettings.getIntSettingOrDefault("iiifHedgeDelayPercentile", 95);
+		long minDelay = IiifSettings.getLongSettingOrDefault("iiifHedgeMinDelayInMilliseconds",
+				50);
+		int budgetPercent = IiifSettings.getIntSettingOrDefault("iiifHedgeBudgetPercent", 5);
+		double budgetRatio = hedgingEnabled ? budgetPercent / 100.0 : 0;
+		return new HedgeSettings(Duration.ofMillis(Math.max(0, deadline)), delayPercentile,
+				Duration.ofMillis(minDelay), budgetRatio);
+	}
+
+	private PoolSettings readPoolSettings() {
+		int maxConnectionsPerHost = IiifSettings
+				.getIntSettingOrDefault("iiifMaxConnectionsPerHost", 16);
+		long connectTimeout = IiifSettings
+				.getLongSettingOrDefault("iiifConnectTimeoutInMilliseconds", 10_000);
+		long leaseTimeout = IiifSettings
+				.getLongSettingOrDefault("iiifConnectionLeaseTimeoutInMilliseconds", 30_000);
+		return new PoolSettings(maxConnectionsPerHost, Duration.ofMillis(connectTimeout),
+				Duration.ofMillis(leaseTimeout));
+	}
+
+	private IiifAdapter decorateWithMetricsIfEnabled(IiifAdapter iiifAdapter) {
+		if (!isMetricsEnabled()) {
+			return iiifAdapter;
+		}
+		if (upstreamMetrics == null) {
+			upstreamMetrics = new UpstreamMetrics();
+		}
+		return new MeasuringIiifAdapter(iiifAdapter, upstreamMetrics, readThumbnailMaxSize());
+	}
+
+	private int readThumbnailMaxSize() {
+		return IiifSettings.getIntSettingOrDefault("iiifThumbnailMaxSize", 400);
+	}
+
+	private IiifAdapter decorateWithCircuitBreakerIfEnabled(IiifAdapter iiifAdapter) {
+		if (!IiifSettings.getBooleanSettingOrDefault("iiifCircuitBreakerEnabled", false)) {
+			return iiifAdapter;
+		}
+		return new CircuitBreakingIiifAdapter(iiifAdapter,
+				new CircuitBreaker(readBreakerSettings()));
+	}
+
+	private BreakerSettings readBreakerSettings() {
+		int failureRatePercent = IiifSettings
+				.getIntSettingOrDefault("iiifCircuitBreakerFailureRatePercent", 50);
+		int windowSize = IiifSettings.getIntSettingOrDefault("iiifCircuitBreakerWindowSize", 20);
+		int minimumCalls = IiifSettings.getIntSettingOrDefault("iiifCircuitBreakerMinimumCalls",
+				10);
+		long openDuration = IiifSettings
+				.getLongSettingOrDefault("iiifCircuitBreakerOpenTimeInSeconds", 30);
+		int probeCalls = IiifSettings.getIntSettingOrDefault("iiifCircuitBreakerProbeCalls", 3);
+		return new BreakerSettings(failureRatePercent, windowSize, minimumCalls,
+				Duration.ofSeconds(openDuration), probeCalls);
+	}
+
+	private IiifAdapter decorateWithConcurrencyLimitIfEnabled(IiifAdapter iiifAdapter,
+			String imageServerUrl) {
+		if (!IiifSettings.getBooleanSettingOrDefault("iiifConcurrencyLimitEnabled", false)) {
+			return iiifAdapter;
+		}
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(readLimitSettings());
+		registerLimiterMetrics("limiter[" + imageServerUrl + "].", limiter);
+		return new LimitingIiifAdapter(iiifAdapter, limiter, readThumbnailMaxSize());
+	}
+
+	private void registerLimiterMetrics(String prefix, ConcurrencyLimiter limiter) {
+		moduleMetrics.register(prefix + "limit", () -> limiter.getMetrics().limit());
+		moduleMetrics.register(prefix + "inFlight", () -> limiter.getMetrics().inFlight());
+		moduleMetrics.register(prefix + "queued", () -> limiter.getMetrics().queued());
+		moduleMetrics.register(prefix + "accepted", () -> limiter.getMetrics().accepted());
+		moduleMetrics.register(prefix + "rejected", () -> limiter.getMetrics().rejected());
+		moduleMetrics.register(prefix + "shed", () -> limiter.getMetrics().shed());
+		moduleMetrics.register(prefix + "queueTimeouts",
+				() -> limiter.getMetrics().queueTimeouts());
+		moduleMetrics.register(prefix + "averageLatencyMicros",
+				() -> limiter.getMetrics().averageLatencyMicros());
+	}
+
+	private LimitSettings readLimitSettings() {
+		int initialLimit = IiifSettings.getIntSettingOrDefault("iiifConcurrencyLimitInitial", 20);
+		int minLimit = IiifSettings.getIntSettingOrDefault("iiifConcurrencyLimitMin", 2);
+		int maxLimit = IiifSettings.getIntSettingOrDefault("iiifConcurrencyLimitMax", 200);
+		int maxQueueLength = IiifSettings
+				.getIntSettingOrDefault("iiifConcurrencyLimitMaxQueueLength", 100);
+		long maxQueueWait = IiifSettings
+				.getLongSettingOrDefault("iiifConcurrencyLimitMaxQueueWaitInMilliseconds", 5000);
+		return new LimitSettings(initialLimit, minLimit, maxLimit, maxQueueLength,
+				Duration.ofMillis(maxQueueWait));
+	}
+
+	private IiifAdapter decorateWithCoalescingIfEnabled(IiifAdapter iiifAdapter) {
+		if (!IiifSettings.getBooleanSettingOrDefault("iiifRequestCoalescingEnabled", false)) {
+			return iiifAdapter;
+		}
+		int maxSharedBodyBytes = IiifSettings
+				.getIntSettingOrDefault("iiifRequestCoalescingMaxBodyBytes", 4 * 1024 * 1024);
+		CoalescingIiifAdapter coalescingAdapter = new CoalescingIiifAdapter(iiifAdapter,
+				maxSharedBodyBytes);
+		moduleMetrics.register("coalescing.calls", coalescingAdapter::getCalls);
+		moduleMetrics.register("coalescing.coalescedRequests",
+				coalescingAdapter::getCoalescedRequests);
+		return coalescingAdapter;
+	}
+
+	private IiifAdapter decorateWithNotFoundCacheIfEnabled(IiifAdapter iiifAdapter) {
+		int maxEntries = IiifSettings.getIntSettingOrDefault("iiifNotFoundCacheMaxEntries", 0);
+		if (maxEntries <= 0) {
+			return iiifAdapter;
+		}
+		long timeToLive = IiifSettings
+				.getLongSettingOrDefault("iiifNotFoundCacheTimeToLiveInSeconds", 30);
+		NotFoundCache notFoundCache = new NotFoundCache(maxEntries, Duration.ofSeconds(timeToLive),
+				Clock.systemUTC());
+		invalidators.add(notFoundCache::forget);
+		return new NotFoundCachingIiifAdapter(iiifAdapter, notFoundCache);
+	}
+
+	private IiifAdapter decorateWithDiskTileCacheIfEnabled(IiifAdapter iiifAdapter) {
+		String directory = IiifSettings.getSettingOrDefault("iiifDiskTileCacheDirectory", "");
+		if (directory.isBlank()) {
+			return iiifAdapter;
+		}
+		int maxEntryBytes = IiifSettings.getIntSettingOrDefault("iiifDiskTileCacheMaxEntryBytes",
+				16 * 1024 * 1024);
+		long revalidateAfter = IiifSettings
+				.getLongSettingOrDefault("iiifDiskTileCacheRevalidateAfterInSeconds", 3600);
+		DiskTileStore diskTileStore = new DiskTileStore(readDiskTileStoreSettings(directory),
+				Clock.systemUTC());
+		return new CachingIiifAdapter(iiifAdapter, diskTileStore, maxEntryBytes,
+				Duration.ofSeconds(revalidateAfter), Clock.systemUTC());
+	}
+
+	private DiskTileStoreSettings readDiskTileStoreSettings(String directory) {
+		long maxBytes = IiifSettings.getLongSettingOrDefault("iiifDiskTileCacheMaxBytes",
+				10L * 1024 * 1024 * 1024);
+		long maxSegmentBytes = IiifSettings
+				.getLongSettingOrDefault("iiifDiskTileCacheSegmentBytes", 64L * 1024 * 1024);
+		long timeToLive = IiifSettings
+				.getLongSettingOrDefault("iiifDiskTileCacheTimeToLiveInSeconds", 86_400);
+		long compactionInterval = IiifSettings
+				.getLongSettingOrDefault("iiifDiskTileCacheCompactionIntervalInSeconds", 300);
+		return new DiskTileStoreSettings(Path.of(directory), maxBytes, maxSegmentBytes,
+				Duration.ofSeconds(timeToLive), Duration.ofSeconds(compactionInterval));
+	}
+
+	private IiifAdapter decorateWithPeerTierIfEnabled(IiifAdapter iiifAdapter) {
+		String nodes = IiifSettings.getSettingOrDefault("iiifPeerNodes", "");
+		if (nodes.isBlank()) {
+			return iiifAdapter;
+		}
+		PeerSettings peerSettings = readPeerSettings(nodes);
+		peerServer = createPeerServer(peerSettings);
+		return new PeerIiifAdapter(iiifAdapter, createPeerAdapters(peerSettings), peerSettings,
+				peerServer);
+	}
+
+	private PeerSettings readPeerSettings(String nodes) {
+		String self = IiifSettings.getSettingOrDefault("iiifPeerSelf", "").trim();
+		long responseTimeout = IiifSettings
+				.getLongSettingOrDefault("iiifPeerResponseTimeoutInMilliseconds", 10_000);
+		long bypassTime = IiifSettings.getLongSettingOrDefault("iiifPeerBypassTimeInSeconds", 10);
+		String secret = IiifSettings.getSettingOrDefault("iiifPeerSecret", "");
+		return new PeerSettings(readNames(nodes), self, Duration.ofMillis(responseTimeout),
+				Duration.ofSeconds(bypassTime), secret);
+	}
+
+	private PeerServer createPeerServer(PeerSettings peerSettings) {
+		URI self = URI.create(peerSettings.self());
+		int port = IiifSettings.getIntSettingOrDefault("iiifPeerPort", self.getPort());
+		int apiVersion = IiifSettings.getIntSettingOrDefault("iiifImageApiVersion", 3);
+		try {
+			return new PeerServer(new InetSocketAddress(self.getHost(), port),
+					peerSettings.secret(), apiVersion);
+		} catch (IOException | IllegalArgumentException e) {
+			throw createPeerServerException(e);
+		}
+	}
+
+	private BinaryException createPeerServerException(Exception e) {
+		return BinaryException.withMessageAndException(
+				"Could not start peer server: " + e.getMessage(), e);
+	}
+
+	private Map<String, IiifAdapter> createPeerAdapters(PeerSettings peerSettings) {
+		int maxConnectionsPerHost = IiifSettings
+				.getIntSettingOrDefault("iiifPeerMaxConnectionsPerHost", 16);
+		long connectTimeout = IiifSettings
+				.getLongSettingOrDefault("iiifPeerConnectTimeoutInMilliseconds", 200);
+		HttpClientPool peerClientPool = new HttpClientPool(new PoolSettings(maxConnectionsPerHost,
+				Duration.ofMillis(connectTimeout), peerSettings.responseTimeout()));
+		Map<String, IiifAdapter> peerAdapters = new HashMap<>();
+		for (String node : peerSettings.nodes()) {
+			if (!node.equals(peerSettings.self())) {
+				peerAdapters.put(node, new PooledIiifAdapter(node, peerClientPool,
+						peerSettings.responseTimeout()));
+			}
+		}
+		return peerAdapters;
+	}
+
+	private void servePeersIfEnabled(IiifAdapter iiifAdapter) {
+		if (peerServer == null) {
+			return;
+		}
+		try {
+			peerServer.serve(iiifAdapter);
+		} catch (IOException e) {
+			peerServer.close();
+			throw createPeerServerException(e);
+		}
+	}
+
+	private IiifAdapter decorateWithTileCacheIfEnabled(IiifAdapter iiifAdapter) {
+		long maxBytes = IiifSettings.getLongSettingOrDefault("iiifTileCacheMaxBytes", 0);
+		if (maxBytes <= 0) {
+			return iiifAdapter;
+		}
+		int maxEntryBytes = IiifSettings.getIntSettingOrDefault("iiifTileCacheMaxEntryBytes",
+				1024 * 1024);
+		long timeToLive = IiifSettings
+				.getLongSettingOrDefault("iiifTileCacheTimeToLiveInSeconds", 3600);
+		long revalidateAfter = IiifSettings
+				.getLongSettingOrDefault("iiifTileCacheRevalidateAfterInSeconds", 600);
+		MemoryTileStore memoryTileStore = new MemoryTileStore(maxBytes,
+				Duration.ofSeconds(timeToLive), Clock.systemUTC());
+		return new CachingIiifAdapter(iiifAdapter, memoryTileStore, maxEntryBytes,
+				Duration.ofSeconds(revalidateAfter), Clock.systemUTC());
+	}
+
+	private IiifAdapter decorateWithInfoCacheIfEnabled(IiifAdapter iiifAdapter) {
+		int maxEntries = IiifSettings.getIntSettingOrDefault("iiifInfoCacheMaxEntries", 0);
+		if (maxEntries <= 0) {
+			return iiifAdapter;
+		}
+		long timeToLive = IiifSettings
+				.getLongSettingOrDefault("iiifInfoCacheTimeToLiveInSeconds", 300);
+		int maxDocumentBytes = IiifSettings
+				.getIntSettingOrDefault("iiifInfoCacheMaxDocumentBytes", 64 * 1024);
+		String publicBaseUrl = IiifSettings.getSettingOrDefault("iiifInfoPublicBaseUrl", "");
+		infoCache = new InfoCache(maxEntries, Duration.ofSeconds(timeToLive), Clock.systemUTC());
+		invalidators.add(infoCache::invalidate);
+		return new InfoCachingIiifAdapter(iiifAdapter, infoCache, maxDocumentBytes,
+				publicBaseUrl.trim());
+	}
+
+	private IiifAdapter decorateWithTranscodingIfEnabled(IiifAdapter iiifAdapter) {
+		if (!IiifSettings.getBooleanSettingOrDefault("iiifTranscodingEnabled", false)) {
+			return iiifAdapter;
+		}
+		int threads = IiifSettings.getIntSettingOrDefault("iiifTranscodingThreads",
+				Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+		int maxQueueLength = IiifSettings.getIntSettingOrDefault("iiifTranscodingMaxQueueLength",
+				32);
+		long maxBytes = IiifSettings.getLongSettingOrDefault("iiifTranscodingCacheMaxBytes",
+				256L * 1024 * 1024);
+		long timeToLive = IiifSettings
+				.getLongSettingOrDefault("iiifTranscodingCacheTimeToLiveInSeconds", 3600);
+		MemoryTileStore variantStore = new MemoryTileStore(maxBytes,
+				Duration.ofSeconds(timeToLive), Clock.systemUTC());
+		TranscodingIiifAdapter transcodingAdapter = new TranscodingIiifAdapter(iiifAdapter,
+				new ImageIoTranscoder(),
+				TranscodingExecutors.newBoundedExecutor(threads, maxQueueLength), variantStore,
+				readTranscodingSettings(), Clock.systemUTC());
+		moduleMetrics.register("transcoding.transcodings", transcodingAdapter::getTranscodings);
+		moduleMetrics.register("transcoding.skippedTranscodings",
+				transcodingAdapter::getSkippedTranscodings);
+		moduleMetrics.register("transcoding.bytesSaved", transcodingAdapter::getBytesSaved);
+		return transcodingAdapter;
+	}
+
+	private TranscodingSettings readTranscodingSettings() {
+		String upstreamFormats = IiifSettings
+				.getSettingOrDefault("iiifTranscodingUpstreamFormats", "");
+		int maxSourceBytes = IiifSettings.getIntSettingOrDefault("iiifTranscodingMaxSourceBytes",
+				4 * 1024 * 1024);
+		long timeout = IiifSettings
+				.getLongSettingOrDefault("iiifTranscodingTimeoutInMilliseconds", 2000);
+		long revalidateAfter = IiifSettings
+				.getLongSettingOrDefault("iiifTranscodingRevalidateAfterInSeconds", 600);
+		return new TranscodingSettings(readImageFormats(upstreamFormats), maxSourceBytes,
+				Duration.ofMillis(timeout), Duration.ofSeconds(revalidateAfter));
+	}
+
+	private Set<ImageFormat> readImageFormats(String extensions) {
+		Set<ImageFormat> formats = EnumSet.noneOf(ImageFormat.class);
+		for (String extension : extensions.split(",")) {
+			Optional<ImageFormat> format = ImageFormat.fromExtension(extension.trim());
+			format.ifPresent(formats::add);
+		}
+		return formats;
+	}
+
+	private IiifAdapter decorateWithRangeRequestsIfEnabled(IiifAdapter iiifAdapter) {
+		if (!IiifSettings.getBooleanSettingOrDefault("iiifRangeRequestsEnabled", false)) {
+			return iiifAdapter;
+		}
+		return new SlicingIiifAdapter(iiifAdapter);
+	}
+
+	private IiifAdapter decorateWithCanonicalizationIfEnabled(IiifAdapter iiifAdapter) {
+		if (!IiifSettings.getBooleanSettingOrDefault("iiifUriCanonicalizationEnabled", false)) {
+			return iiifAdapter;
+		}
+		int apiVersion = IiifSettings.getIntSettingOrDefault("iiifImageApiVersion", 3);
+		SourceImageLookup sourceImageLookup = infoCache == null ? SourceImageLookup.NONE
+				: infoCache;
+		return new CanonicalizingIiifAdapter(iiifAdapter,
+				new IiifUriCanonicalizer(apiVersion, sourceImageLookup));
+	}
+
+	private IiifAdapter decorateWithRecordingIfEnabled(IiifAdapter iiifAdapter) {
+		String recordingFile = IiifSettings.getSettingOrDefault("iiifCallRecordingFile", "");
+		if (recordingFile.isBlank()) {
+			return iiifAdapter;
+		}
+		long maxBytes = IiifSettings.getLongSettingOrDefault("iiifCallRecordingMaxBytes",
+				1024L * 1024 * 1024);
+		String recordedHeaders = IiifSettings.getSettingOrDefault("iiifCallRecordingHeaders",
+				"Accept,Range,If-Range,If-None-Match,If-Modified-Since");
+		try {
+			CallRecorder callRecorder = CallRecorder.open(Path.of(recordingFile.trim()), maxBytes);
+			callRecorder.closeAtShutdown();
+			return new RecordingIiifAdapter(iiifAdapter, callRecorder, readNames(recordedHeaders));
+		} catch (IOException e) {
+			throw BinaryException.withMessageAndException(
+					"Could not start call recording: " + e.getMessage(), e);
+		}
+	}
+
+	private List<String> readNames(String names) {
+		return Arrays.stream(names.split(",")).map(String::trim).filter(name -> !name.isEmpty())
+				.toList();
+	}
+
+	private IiifAdapter exposeInvalidationIfNeeded(IiifAdapter iiifAdapter) {
+		if (invalidators.isEmpty()) {
+			return iiifAdapter;
+		}
+		return new InvalidatingIiifAdapter(iiifAdapter, invalidators);
+	}
+
+	private IiifAdapter decorateWithBatchingIfEnabled(IiifAdapter iiifAdapter) {
+		if (!IiifSettings.getBooleanSettingOrDefault("iiifBatchEnabled", false)) {
+			return iiifAdapter;
+		}
+		int maxConcurrentCalls = IiifSettings
+				.getIntSettingOrDefault("iiifBatchMaxConcurrentCalls", 8);
+		int maxTotalConcurrentCalls = IiifSettings
+				.getIntSettingOrDefault("iiifBatchMaxTotalConcurrentCalls", 32);
+		return new BatchingIiifAdapter(iiifAdapter,
+				ThreadPerCallExecutors.newThreadPerCallExecutor(), maxConcurrentCalls,
+				maxTotalConcurrentCalls);
+	}
+
+	private IiifAdapter decorateWithCacheWarmingIfEnabled(IiifAdapter iiifAdapter) {
+		if (!IiifSettings.getBooleanSettingOrDefault("iiifCacheWarmingEnabled", false)) {
+			return iiifAdapter;
+		}
+		CacheWarmer cacheWarmer = new CacheWarmer(iiifAdapter, readWarmupSettings(), liveCalls);
+		warmFromAccessLogIfSet(cacheWarmer);
+		return new WarmingIiifAdapter(iiifAdapter, cacheWarmer);
+	}
+
+	private WarmupSettings readWarmupSettings() {
+		int zoomLevels = IiifSettings.getIntSettingOrDefault("iiifCacheWarmingZoomLevels", 2);
+		int thumbnailSize = IiifSettings.getIntSettingOrDefault("iiifCacheWarmingThumbnailSize",
+				readThumbnailMaxSize());
+		int requestsPerSecond = IiifSettings
+				.getIntSettingOrDefault("iiifCacheWarmingRequestsPerSecond", 5);
+		int pauseAtLiveCalls = IiifSettings
+				.getIntSettingOrDefault("iiifCacheWarmingPauseAtLiveCalls", 4);
+		return new WarmupSettings(zoomLevels, thumbnailSize, requestsPerSecond,
+				pauseAtLiveCalls);
+	}
+
+	private void warmFromAccessLogIfSet(CacheWarmer cacheWarmer) {
+		String accessLog = IiifSettings.getSettingOrDefault("iiifCacheWarmingAccessLog", "");
+		if (accessLog.isBlank()) {
+			return;
+		}
+		int maxUris = IiifSettings.getIntSettingOrDefault("iiifCacheWarmingAccessLogMaxUris",
+				1000);
+		long startDelay = IiifSettings
+				.getLongSettingOrDefault("iiifCacheWarmingStartDelayInSeconds", 60);
+		cacheWarmer.warmFromAccessLog(Path.of(accessLog), maxUris,
+				Duration.ofSeconds(startDelay));
+	}
+}
@@ -36,6 +36,7 @@ public class IiifAdapterImp implements IiifAdapter {
 	private static final int HTTP_NOT_FOUND = 404;
 	private HttpHandlerFactory httpHandlerFactory;
 	private String iiifServerUrl;
+	private volatile byte[] notFoundMessage;
 
 	public IiifAdapterImp(String iiifServerUrl, HttpHandlerFactory httpHandlerFactory) {
 		this.iiifServerUrl = iiifServerUrl;
@@ -102,8 +103,14 @@ public class IiifAdapterImp implements IiifAdapter {
 
 	private ByteArrayInputStream tryToCreateNotFoundResponsMessageInBytes()
 			throws UnsupportedEncodingException {
-		return new ByteArrayInputStream(
-				createErrorMessageInBytesUsingEncoding("UTF-8"));
+		return new ByteArrayInputStream(getNotFoundMessage());
+	}
+
+	private byte[] getNotFoundMessage() throws UnsupportedEncodingException {
+		if (notFoundMessage == null) {
+			notFoundMessage = createErrorMessageInBytesUsingEncoding("UTF-8");
+		}
+		return notFoundMessage;
 	}
 
 	byte[] createErrorMessageInBytesUsingEncoding(String encoding) throws UnsupportedEncodingException {
@@ -18,12 +18,25 @@
  */
 package se.uu.ub.cora.iiif;
 
+import java.util.ServiceLoader;
+import java.util.concurrent.locks.ReentrantLock;
+
 import se.uu.ub.cora.binary.iiif.IiifAdapter;
 import se.uu.ub.cora.binary.iiif.IiifInstanceProvider;
-import se.uu.ub.cora.httphandler.HttpHandlerFactoryImp;
-import se.uu.ub.cora.initialize.SettingsProvider;
+import se.uu.ub.cora.iiif.metrics.MetricsExporter;
 
 public class IiifImageInstanceProviderImp implements IiifInstanceProvider {
+	private final ReentrantLock assembleLock = new ReentrantLock();
+	private final Iterable<MetricsExporter> metricsExporters;
+	private IiifAdapter iiifAdapter;
+
+	public IiifImageInstanceProviderImp() {
+		this(ServiceLoader.load(MetricsExporter.class));
+	}
+
+	IiifImageInstanceProviderImp(Iterable<MetricsExporter> metricsExporters) {
+		this.metricsExporters = metricsExporters;
+	}
 
 	@Override
 	public int getOrderToSelectImplementionsBy() {
@@ -32,10 +45,15 @@ public class IiifImageInstanceProviderImp implements IiifInstanceProvider {
 
 	@Override
 	public IiifAdapter getIiifAdapter() {
-		HttpHandlerFactoryImp httpHandlerFactory = new HttpHandlerFactoryImp();
-
-		return new IiifAdapterImp(SettingsProvider.getSetting("imageServerUrl"),
-				httpHandlerFactory);
+		assembleLock.lock();
+		try {
+			if (iiifAdapter == null) {
+				iiifAdapter = new IiifAdapterAssembler(metricsExporters).assemble();
+			}
+			return iiifAdapter;
+		} finally {
+			assembleLock.unlock();
+		}
 	}
 
-}
+}
\ No newline at end of file
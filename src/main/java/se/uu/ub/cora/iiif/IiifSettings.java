@@ -0,0 +1,55 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import se.uu.ub.cora.initialize.SettingsProvider;
+
+/**
+ * IiifSettings reads optional settings for the IIIF adapter from {@link SettingsProvider},
+ * falling back to a default value when a setting is not present.
+ */
+class IiifSettings {
+
+	private IiifSettings() {
+		// only static methods
+	}
+
+	static String getSettingOrDefault(String name, String defaultValue) {
+		try {
+			return SettingsProvider.getSetting(name);
+		} catch (RuntimeException e) {
+			return defaultValue;
+		}
+	}
+
+	static int getIntSettingOrDefault(String name, int defaultValue) {
+		String value = getSettingOrDefault(name, null);
+		return value == null ? defaultValue : Integer.parseInt(value.trim());
+	}
+
+	static long getLongSettingOrDefault(String name, long defaultValue) {
+		String value = getSettingOrDefault(name, null);
+		return value == null ? defaultValue : Long.parseLong(value.trim());
+	}
+
+	static boolean getBooleanSettingOrDefault(String name, boolean defaultValue) {
+		String value = getSettingOrDefault(name, null);
+		return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+import se.uu.ub.cora.binary.BinaryException;
+import se.uu.ub.cora.binary.iiif.IiifAdapter;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.cache.BufferedBody;
+import se.uu.ub.cora.iiif.http.ConditionalRequests;
+import se.uu.ub.cora.iiif.info.InfoCache;
+import se.uu.ub.cora.iiif.info.InfoDocument;
+import se.uu.ub.cora.iiif.info.InvalidImageInfoException;
+import se.uu.ub.cora.iiif.uri.IiifIdentifiers;
+import se.uu.ub.cora.iiif.uri.IiifRequestType;
+
+/**
+ * InfoCachingIiifAdapter answers GET requests for info.json from an {@link InfoCache}, so that a
+ * viewer loading an image does not have to wait for the image server before it can ask for
+ * tiles. A 200 response from the image server is read once into an {@link InfoDocument}, with its
+ * id rewritten to the public base URL when one is set, and every later request is served the
+ * bytes of that document. Conditional requests matching the stored document are answered with
+ * 304. Responses that are not 200, too large or not valid info.json are passed on as they are and
+ * not stored.
+ * <p>
+ * A request with any other method than GET or HEAD for an image removes the stored document for
+ * that image before it is passed on. A change to the binary record of an image in Cora does not
+ * pass through here, so Cora invalidates the image through the
+ * {@link se.uu.ub.cora.iiif.invalidation.ImageInvalidator} of the adapter it is handed.
+ */
+public class InfoCachingIiifAdapter implements IiifAdapter {
+	private static final int HTTP_OK = 200;
+	private static final int HTTP_NOT_MODIFIED = 304;
+	private IiifAdapter iiifAdapter;
+	private InfoCache infoCache;
+	private int maxDocumentBytes;
+	private String publicBaseUrl;
+	private final LongAdder invalidDocuments = new LongAdder();
+
+	public InfoCachingIiifAdapter(IiifAdapter iiifAdapter, InfoCache infoCache,
+			int maxDocumentBytes, String publicBaseUrl) {
+		this.iiifAdapter = iiifAdapter;
+		this.infoCache = infoCache;
+		this.maxDocumentBytes = maxDocumentBytes;
+		this.publicBaseUrl = publicBaseUrl;
+	}
+
+	@Override
+	public IiifAdapterResponse callIiifServer(IiifParameters iiifParameters) {
+		String method = iiifParameters.method();
+		if (!"GET".equals(method) && !"HEAD".equals(method)) {
+			infoCache.invalidate(IiifIdentifiers.fromUri(iiifParameters.uri()));
+			return iiifAdapter.callIiifServer(iiifParameters);
+		}
+		if ("HEAD".equals(method) || !isInfoRequest(iiifParameters)) {
+			return iiifAdapter.callIiifServer(iiifParameters);
+		}
+		String identifier = IiifIdentifiers.fromUri(iiifParameters.uri());
+		Optional<InfoDocument> document = infoCache.get(identifier);
+		if (document.isPresent()) {
+			return respondFromDocument(iiifParameters, document.get());
+		}
+		return callAndStore(iiifParameters, identifier);
+	}
+
+	private boolean isInfoRequest(IiifParameters iiifParameters) {
+		return IiifRequestType.isInfo(iiifParameters.uri());
+	}
+
+	private IiifAdapterResponse respondFromDocument(IiifParameters iiifParameters,
+			InfoDocument document) {
+		if (ConditionalRequests.isNotModified(iiifParameters.headersMap(),
+				document.getHeaders())) {
+			return new IiifAdapterResponse(HTTP_NOT_MODIFIED,
+					ConditionalRequests.createNotModifiedHeaders(document.getHeaders()),
+					new ByteArrayInputStream(new byte[0]));
+		}
+		return document.createResponse();
+	}
+
+	private IiifAdapterResponse callAndStore(IiifParameters iiifParameters, String identifier) {
+		IiifAdapterResponse response = iiifAdapter.callIiifServer(iiifParameters);
+		if (response.status() != HTTP_OK) {
+			return response;
+		}
+		try {
+			return readAndStore(response, identifier, iiifParameters);
+		} catch (IOException e) {
+			throw BinaryException.withMessageAndException(
+					"Error while reading info.json for cache: " + e.getMessage(), e);
+		}
+	}
+
+	private IiifAdapterResponse readAndStore(IiifAdapterResponse response, String identifier,
+			IiifParameters iiifParameters) throws IOException {
+		BufferedBody body = BufferedBody.readUpTo(response.body(), maxDocumentBytes);
+		if (!body.isComplete()) {
+			return new IiifAdapterResponse(response.status(), response.headers(),
+					body.asInputStream());
+		}
+		InfoDocument document;
+		try {
+			document = InfoDocument.from(identifier, body.getBytes(), response.headers(),
+					publicBaseUrl);
+		} catch (InvalidImageInfoException e) {
+			invalidDocuments.increment();
+			return new IiifAdapterResponse(response.status(), response.headers(),
+					body.asInputStream());
+		}
+		infoCache.put(identifier, document);
+		return respondFromDocument(iiifParameters, document);
+	}
+
+	/**
+	 * getInvalidDocuments returns the number of 200 responses to info.json requests that could
+	 * not be read as info.json and were passed on without being stored.
+	 */
+	public long getInvalidDocuments() {
+		return invalidDocuments.sum();
+	}
+
+	public InfoCache getInfoCache() {
+		return infoCache;
+	}
+
+	IiifAdapter onlyForTestGetIiifAdapter() {
+		return iiifAdapter;
+	}
+
+	int onlyForTestGetMaxDocumentBytes() {
+		return maxDocumentBytes;
+	}
+
+	String onlyForTestGetPublicBaseUrl() {
+		return publicBaseUrl;
+	}
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import java.util.List;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapter;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.invalidation.ImageInvalidator;
+
+/**
+ * InvalidatingIiifAdapter makes the caches kept per image below it reachable through
+ * {@link ImageInvalidator}, from the adapter handed out by the provider. Calls are passed on as
+ * they are.
+ */
+public class InvalidatingIiifAdapter implements IiifAdapter, ImageInvalidator {
+	private IiifAdapter iiifAdapter;
+	private List<ImageInvalidator> invalidators;
+
+	public InvalidatingIiifAdapter(IiifAdapter iiifAdapter, List<ImageInvalidator> invalidators) {
+		this.iiifAdapter = iiifAdapter;
+		this.invalidators = List.copyOf(invalidators);
+	}
+
+	@Override
+	public IiifAdapterResponse callIiifServer(IiifParameters iiifParameters) {
+		return iiifAdapter.callIiifServer(iiifParameters);
+	}
+
+	@Override
+	public void invalidate(String identifier) {
+		for (ImageInvalidator invalidator : invalidators) {
+			invalidator.invalidate(identifier);
+		}
+	}
+
+	IiifAdapter onlyForTestGetIiifAdapter() {
+		return iiifAdapter;
+	}
+
+	List<ImageInvalidator> onlyForTestGetInvalidators() {
+		return invalidators;
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapter;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.backend.LocalRejectionException;
+import se.uu.ub.cora.iiif.http.Headers;
+import se.uu.ub.cora.iiif.limit.ConcurrencyLimiter;
+import se.uu.ub.cora.iiif.limit.ConcurrencyLimiter.Permit;
+import se.uu.ub.cora.iiif.limit.LimiterMetrics;
+import se.uu.ub.cora.iiif.limit.RequestPriority;
+import se.uu.ub.cora.iiif.uri.IiifRequestType;
+
+/**
+ * LimitingIiifAdapter passes requests on to the adapter it decorates only as far as its
+ * {@link ConcurrencyLimiter} allows, so that an image server that slows down under load gets
+ * fewer concurrent calls instead of more. Requests the limiter does not let through fail with a
+ * {@link se.uu.ub.cora.iiif.limit.LimitExceededException} without being passed on, which a
+ * {@link RejectionAnsweringIiifAdapter} answers with 503 and a Retry-After header, once a
+ * {@link RoutingIiifAdapter} has had the chance to try another backend.
+ * <p>
+ * Requests are given a priority from their {@link IiifRequestType}, so that info and thumbnail
+ * requests go before tiles, and tiles before whole images. Requests this module makes itself,
+ * such as warm-up requests, can lower their priority with {@link RequestPriority#HEADER}, which
+ * is removed before the request is passed on. Responses with status 429, 502, 503
+ * or 504, and calls that fail, count as signs of an overloaded image server. Calls the adapters
+ * it decorates turn away with a {@link LocalRejectionException}, such as an open circuit, never
+ * reached the image server and are left out of the limit.
+ */
+public class LimitingIiifAdapter implements IiifAdapter {
+	private IiifAdapter iiifAdapter;
+	private ConcurrencyLimiter limiter;
+	private int thumbnailMaxSize;
+
+	public LimitingIiifAdapter(IiifAdapter iiifAdapter, ConcurrencyLimiter limiter,
+			int thumbnailMaxSize) {
+		this.iiifAdapter = iiifAdapter;
+		this.limiter = limiter;
+		this.thumbnailMaxSize = thumbnailMaxSize;
+	}
+
+	@Override
+	public IiifAdapterResponse callIiifServer(IiifParameters iiifParameters) {
+		Permit permit = limiter.acquire(getPriority(iiifParameters));
+		return callWithPermit(withoutPriorityHeader(iiifParameters), permit);
+	}
+
+	private RequestPriority getPriority(IiifParameters iiifParameters) {
+		return RequestPriority.of(
+				IiifRequestType.classify(iiifParameters.uri(), thumbnailMaxSize),
+				iiifParameters.headersMap());
+	}
+
+	private IiifParameters withoutPriorityHeader(IiifParameters iiifParameters) {
+		if (Headers.find(iiifParameters.headersMap(), RequestPriority.HEADER).isEmpty()) {
+			return iiifParameters;
+		}
+		Map<String, String> headers = new LinkedHashMap<>();
+		for (Entry<String, String> header : iiifParameters.headersMap().entrySet()) {
+			if (!RequestPriority.HEADER.equalsIgnoreCase(header.getKey())) {
+				headers.put(header.getKey(), header.getValue());
+			}
+		}
+		return new IiifParameters(iiifParameters.uri(), iiifParameters.method(), headers);
+	}
+
+	private IiifAdapterResponse callWithPermit(IiifParameters iiifParameters, Permit permit) {
+		IiifAdapterResponse response;
+		try {
+			response = iiifAdapter.callIiifServer(iiifParameters);
+		} catch (LocalRejectionException e) {
+			permit.releaseWithoutSample();
+			throw e;
+		} catch (RuntimeException e) {
+			permit.release(true);
+			throw e;
+		}
+		permit.release(isOverloaded(response.status()));
+		return response;
+	}
+
+	private boolean isOverloaded(int status) {
+		return status == 429 || status == 502 || status == 503 || status == 504;
+	}
+
+	/**
+	 * getMetrics returns a snapshot of the state of the limiter.
+	 */
+	public LimiterMetrics getMetrics() {
+		return limiter.getMetrics();
+	}
+
+	IiifAdapter onlyForTestGetIiifAdapter() {
+		return iiifAdapter;
+	}
+
+	ConcurrencyLimiter onlyForTestGetLimiter() {
+		return limiter;
+	}
+
+	int onlyForTestGetThumbnailMaxSize() {
+		return thumbnailMaxSize;
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapter;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.http.Headers;
+import se.uu.ub.cora.iiif.limit.RequestPriority;
+import se.uu.ub.cora.iiif.metrics.MeasuredInputStream;
+import se.uu.ub.cora.iiif.warm.LiveCalls;
+
+/**
+ * LiveCallCountingIiifAdapter counts the calls from users in progress at the image server in its
+ * {@link LiveCalls}, so that cache warm-up can pause while the image server is busy. It decorates
+ * the adapter that calls the image server, below all caches, so that only calls that reach the
+ * image server are counted. A call is counted until the body of its response is read to the end
+ * or closed, as the image server is busy sending it until then.
+ * <p>
+ * Requests marked with {@link RequestPriority#HEADER} are made by this module itself, such as
+ * warm-up requests, and are not counted.
+ */
+public class LiveCallCountingIiifAdapter implements IiifAdapter {
+	private IiifAdapter iiifAdapter;
+	private LiveCalls liveCalls;
+
+	public LiveCallCountingIiifAdapter(IiifAdapter iiifAdapter, LiveCalls liveCalls) {
+		this.iiifAdapter = iiifAdapter;
+		this.liveCalls = liveCalls;
+	}
+
+	@Override
+	public IiifAdapterResponse callIiifServer(IiifParameters iiifParameters) {
+		if (isMadeByThisModule(iiifParameters)) {
+			return iiifAdapter.callIiifServer(iiifParameters);
+		}
+		liveCalls.started();
+		IiifAdapterResponse response;
+		try {
+			response = iiifAdapter.callIiifServer(iiifParameters);
+		} catch (RuntimeException e) {
+			liveCalls.finished();
+			throw e;
+		}
+		return new IiifAdapterResponse(response.status(), response.headers(),
+				new MeasuredInputStream(response.body(), bytesRead -> liveCalls.finished()));
+	}
+
+	private boolean isMadeByThisModule(IiifParameters iiifParameters) {
+		return Headers.find(iiifParameters.headersMap(), RequestPriority.HEADER).isPresent();
+	}
+
+	public LiveCalls getLiveCalls() {
+		return liveCalls;
+	}
+
+	IiifAdapter onlyForTestGetIiifAdapter() {
+		return iiifAdapter;
+	}
+}
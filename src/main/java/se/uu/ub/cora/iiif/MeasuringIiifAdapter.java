@@ -0,0 +1,113 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import java.io.InputStream;
+import java.util.function.LongSupplier;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapter;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.metrics.MeasuredInputStream;
+import se.uu.ub.cora.iiif.metrics.UpstreamMetrics;
+import se.uu.ub.cora.iiif.uri.IiifRequestType;
+
+/**
+ * MeasuringIiifAdapter records every call to the adapter it decorates in {@link UpstreamMetrics}.
+ * The time to headers is taken when the adapter returns the response, and the time to last byte
+ * when the body has been read to its end or closed, which is when the whole response has gone on
+ * to the client.
+ * <p>
+ * The request type is found by scanning the URI in place, and the metrics record without
+ * allocating. What a call does allocate is the stream measuring the body, which keeps what it
+ * needs to record the time to last byte itself, and the response handing it on, as responses
+ * cannot be changed. A response without a body is passed on as it is.
+ */
+public class MeasuringIiifAdapter implements IiifAdapter {
+	private IiifAdapter iiifAdapter;
+	private UpstreamMetrics metrics;
+	private int thumbnailMaxSize;
+	private final LongSupplier nanoTime;
+
+	public MeasuringIiifAdapter(IiifAdapter iiifAdapter, UpstreamMetrics metrics,
+			int thumbnailMaxSize) {
+		this(iiifAdapter, metrics, thumbnailMaxSize, System::nanoTime);
+	}
+
+	MeasuringIiifAdapter(IiifAdapter iiifAdapter, UpstreamMetrics metrics, int thumbnailMaxSize,
+			LongSupplier nanoTime) {
+		this.iiifAdapter = iiifAdapter;
+		this.metrics = metrics;
+		this.thumbnailMaxSize = thumbnailMaxSize;
+		this.nanoTime = nanoTime;
+	}
+
+	@Override
+	public IiifAdapterResponse callIiifServer(IiifParameters iiifParameters) {
+		IiifRequestType type = IiifRequestType.classify(iiifParameters.uri(), thumbnailMaxSize);
+		long startNanos = nanoTime.getAsLong();
+		IiifAdapterResponse response;
+		try {
+			response = iiifAdapter.callIiifServer(iiifParameters);
+		} catch (RuntimeException e) {
+			metrics.recordFailure(type);
+			throw e;
+		}
+		metrics.recordResponse(type, response.status(), nanoTime.getAsLong() - startNanos);
+		return measureBody(type, response, startNanos);
+	}
+
+	private IiifAdapterResponse measureBody(IiifRequestType type, IiifAdapterResponse response,
+			long startNanos) {
+		if (response.body() == null) {
+			metrics.recordBody(type, 0, nanoTime.getAsLong() - startNanos);
+			return response;
+		}
+		return new IiifAdapterResponse(response.status(), response.headers(),
+				new TimedBody(response.body(), type, startNanos));
+	}
+
+	private final class TimedBody extends MeasuredInputStream {
+		private final IiifRequestType type;
+		private final long startNanos;
+
+		private TimedBody(InputStream body, IiifRequestType type, long startNanos) {
+			super(body);
+			this.type = type;
+			this.startNanos = startNanos;
+		}
+
+		@Override
+		protected void bodyDone(long bytesRead) {
+			metrics.recordBody(type, bytesRead, nanoTime.getAsLong() - startNanos);
+		}
+	}
+
+	public UpstreamMetrics getMetrics() {
+		return metrics;
+	}
+
+	IiifAdapter onlyForTestGetIiifAdapter() {
+		return iiifAdapter;
+	}
+
+	int onlyForTestGetThumbnailMaxSize() {
+		return thumbnailMaxSize;
+	}
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import se.uu.ub.cora.binary.BinaryException;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.async.AsyncIiifAdapter;
+import se.uu.ub.cora.iiif.http.MultiplexedClients;
+import se.uu.ub.cora.logger.Logger;
+import se.uu.ub.cora.logger.LoggerProvider;
+
+/**
+ * MultiplexedIiifAdapter calls the image server over HTTP/2 without TLS (h2c) when it supports
+ * it, so that many tile requests share a few connections instead of holding one connection each.
+ * <p>
+ * Whether an image server supports h2c is found out with a probe, a HEAD request for the base
+ * URL of the image server sent by the first call, with a short negotiation timeout as some image
+ * servers, IIPImage among them, hang when asked to upgrade. The probe is cheap for the image
+ * server whatever the first call asks for, so a timeout means that the upgrade hangs and not that
+ * the call was for a large image. The first call waits for the probe and then goes the way it
+ * decided, and calls made while the probe is in progress go to the fallback adapter, normally a
+ * {@link PooledIiifAdapter} for the same image server.
+ * <p>
+ * If the image server answers the probe over HTTP/2, calls are multiplexed, and if it answers over
+ * HTTP/1.1 they go to the fallback adapter. A probe that fails or times out is made again with a
+ * later call, and only after {@value #MAX_FAILED_PROBES} probes in a row have failed do calls go
+ * to the fallback adapter for good. Calls multiplexed over HTTP/2 that time out
+ * {@value #MAX_CONSECUTIVE_TIMEOUTS} times in a row, as when the image server stalls on h2c under
+ * load, also send later calls to the fallback adapter. Decisions are logged.
+ */
+public class MultiplexedIiifAdapter implements AsyncIiifAdapter {
+	static final int MAX_FAILED_PROBES = 3;
+	static final int MAX_CONSECUTIVE_TIMEOUTS = 3;
+	private static final int HTTP_NOT_FOUND = 404;
+	private static final String NOT_FOUND_MESSAGE = "Requested identifier could not be found.";
+	private Logger log = LoggerProvider.getLoggerForClass(MultiplexedIiifAdapter.class);
+	private String iiifServerUrl;
+	private MultiplexedClients multiplexedClients;
+	private AsyncIiifAdapter fallbackAdapter;
+	private Duration negotiationTimeout;
+	private Duration responseTimeout;
+	private final AtomicReference<Negotiation> negotiation = new AtomicReference<>(
+			Negotiation.NOT_STARTED);
+	private final AtomicInteger failedProbes = new AtomicInteger();
+	private final AtomicInteger consecutiveTimeouts = new AtomicInteger();
+	private final LongAdder multiplexedCalls = new LongAdder();
+	private final LongAdder fallbackCalls = new LongAdder();
+
+	private enum Negotiation {
+		NOT_STARTED, IN_PROGRESS, HTTP_2, HTTP_1_1
+	}
+
+	public MultiplexedIiifAdapter(String iiifServerUrl, MultiplexedClients multiplexedClients,
+			AsyncIiifAdapter fallbackAdapter, Duration negotiationTimeout,
+			Duration responseTimeout) {
+		this.iiifServerUrl = iiifServerUrl;
+		this.multiplexedClients = multiplexedClients;
+		this.fallbackAdapter = fallbackAdapter;
+		this.negotiationTimeout = negotiationTimeout;
+		this.responseTimeout = responseTimeout;
+	}
+
+	@Override
+	public IiifAdapterResponse callIiifServer(IiifParameters iiifParameters) {
+		CompletableFuture<IiifAdapterResponse> response = callIiifServerAsync(iiifParameters);
+		try {
+			return response.get();
+		} catch (InterruptedException e) {
+			response.cancel(true);
+			Thread.currentThread().interrupt();
+			throw errorWhileCallingIiifServer(e, iiifParameters);
+		} catch (ExecutionException e) {
+			throw (BinaryException) e.getCause();
+		}
+	}
+
+	@Override
+	public CompletableFuture<IiifAdapterResponse> callIiifServerAsync(
+			IiifParameters iiifParameters) {
+		Negotiation state = negotiation.get();
+		if (state == Negotiation.HTTP_1_1 || state == Negotiation.IN_PROGRESS) {
+			return callFallback(iiifParameters);
+		}
+		try {
+			HttpRequest request = setUpRequest(iiifParameters, responseTimeout);
+			if (state == Negotiation.HTTP_2) {
+				return callMultiplexed(iiifParameters, request);
+			}
+			return probeThenCall(iiifParameters, request);
+		} catch (Exception e) {
+			return CompletableFuture.failedFuture(errorWhileCallingIiifServer(e, iiifParameters));
+		}
+	}
+
+	private CompletableFuture<IiifAdapterResponse> callFallback(IiifParameters iiifParameters) {
+		fallbackCalls.increment();
+		return fallbackAdapter.callIiifServerAsync(iiifParameters);
+	}
+
+	private CompletableFuture<IiifAdapterResponse> probeThenCall(IiifParameters iiifParameters,
+			HttpRequest request) {
+		HttpRequest probe = setUpProbe();
+		if (!negotiation.compareAndSet(Negotiation.NOT_STARTED, Negotiation.IN_PROGRESS)) {
+			return callFallback(iiifParameters);
+		}
+		return send(probe, BodyHandlers.discarding()).handle((probeResponse, exception) -> {
+			if (exception != null) {
+				probeFailed(unwrap(exception));
+			} else {
+				decide(probeResponse.version());
+			}
+			return null;
+		}).thenCompose(decided -> {
+			if (negotiation.get() == Negotiation.HTTP_2) {
+				return callMultiplexed(iiifParameters, request);
+			}
+			return callFallback(iiifParameters);
+		});
+	}
+
+	private HttpRequest setUpProbe() {
+		return HttpRequest.newBuilder(URI.create(iiifServerUrl)).timeout(negotiationTimeout)
+				.method("HEAD", BodyPublishers.noBody()).build();
+	}
+
+	private void probeFailed(Exception exception) {
+		int failed = failedProbes.incrementAndGet();
+		if (failed < MAX_FAILED_PROBES) {
+			negotiation.set(Negotiation.NOT_STARTED);
+			log.logWarnUsingMessage(MessageFormat.format(
+					"Probing {0} for h2c failed ({1}), probing again with a later call",
+					iiifServerUrl, describe(exception)));
+			return;
+		}
+		negotiation.set(Negotiation.HTTP_1_1);
+		log.logWarnUsingMessage(MessageFormat.format(
+				"Negotiating h2c with {0} failed {1} times ({2}), calls are made over pooled "
+						+ "HTTP/1.1",
+				iiifServerUrl, failed, describe(exception)));
+	}
+
+	private String describe(Exception exception) {
+		String message = exception.getMessage();
+		String name = exception.getClass().getSimpleName();
+		return message == null ? name : name + ": " + message;
+	}
+
+	private void decide(HttpClient.Version version) {
+		if (version == HttpClient.Version.HTTP_2) {
+			negotiation.set(Negotiation.HTTP_2);
+			log.logInfoUsingMessage(MessageFormat.format(
+					"{0} supports h2c, calls are multiplexed over HTTP/2", iiifServerUrl));
+			return;
+		}
+		negotiation.set(Negotiation.HTTP_1_1);
+		log.logInfoUsingMessage(MessageFormat.format(
+				"{0} answered without upgrading to h2c, calls are made over pooled HTTP/1.1",
+				iiifServerUrl));
+	}
+
+	private CompletableFuture<IiifAdapterResponse> callMultiplexed(IiifParameters iiifParameters,
+			HttpRequest request) {
+		multiplexedCalls.increment();
+		CompletableFuture<HttpResponse<InputStream>> exchange = send(request,
+				discardingNotFoundBodies());
+		CompletableFuture<IiifAdapterResponse> response = new CompletableFuture<>();
+		exchange.whenComplete((httpResponse, exception) -> {
+			if (exception != null) {
+				Exception cause = unwrap(exception);
+				countTimeout(cause);
+				response.completeExceptionally(errorWhileCallingIiifServer(cause, iiifParameters));
+				return;
+			}
+			consecutiveTimeouts.set(0);
+			completeWithResponse(response, httpResponse);
+		});
+		response.whenComplete((iiifResponse, exception) -> {
+			if (response.isCancelled()) {
+				exchange.cancel(true);
+			}
+		});
+		return response;
+	}
+
+	private void countTimeout(Exception exception) {
+		if (!(exception instanceof HttpTimeoutException)) {
+			return;
+		}
+		int timeouts = consecutiveTimeouts.incrementAndGet();
+		if (timeouts >= MAX_CONSECUTIVE_TIMEOUTS
+				&& negotiation.compareAndSet(Negotiation.HTTP_2, Negotiation.HTTP_1_1)) {
+			log.logWarnUsingMessage(MessageFormat.format(
+					"Calls to {0} over HTTP/2 timed out {1} times in a row, calls are made over "
+							+ "pooled HTTP/1.1",
+					iiifServerUrl, timeouts));
+		}
+	}
+
+	private <T> CompletableFuture<HttpResponse<T>> send(HttpRequest request,
+			BodyHandler<T> bodyHandler) {
+		return multiplexedClients.next().sendAsync(request, bodyHandler);
+	}
+
+	private BodyHandler<InputStream> discardingNotFoundBodies() {
+		return responseInfo -> {
+			if (responseInfo.statusCode() == HTTP_NOT_FOUND) {
+				return BodySubscribers.mapping(BodySubscribers.discarding(),
+						discarded -> InputStream.nullInputStream());
+			}
+			return BodyHandlers.ofInputStream().apply(responseInfo);
+		};
+	}
+
+	private void completeWithResponse(CompletableFuture<IiifAdapterResponse> response,
+			HttpResponse<InputStream> httpResponse) {
+		if (!response.complete(requestResponse(httpResponse))) {
+			closeQuietly(httpResponse.body());
+		}
+	}
+
+	private Exception unwrap(Throwable exception) {
+		Throwable cause = exception instanceof CompletionException ? exception.getCause()
+				: exception;
+		return cause instanceof Exception e ? e : new RuntimeException(cause);
+	}
+
+	private void closeQuietly(InputStream body) {
+		try {
+			body.close();
+		} catch (IOException e) {
+			// the response was not wanted
+		}
+	}
+
+	private HttpRequest setUpRequest(IiifParameters iiifParameters, Duration timeout) {
+		HttpRequest.Builder requestBuilder = HttpRequest
+				.newBuilder(URI.create(iiifServerUrl + iiifParameters.uri())).timeout(timeout)
+				.method(iiifParameters.method(), BodyPublishers.noBody());
+		for (Entry<String, String> header : iiifParameters.headersMap().entrySet()) {
+			setHeaderIfAllowed(requestBuilder, header);
+		}
+		return requestBuilder.build();
+	}
+
+	private void setHeaderIfAllowed(HttpRequest.Builder requestBuilder,
+			Entry<String, String> header) {
+		try {
+			requestBuilder.setHeader(header.getKey(), header.getValue());
+		} catch (IllegalArgumentException e) {
+			// headers such as Host and Connection are managed by the HTTP/2 connection
+		}
+	}
+
+	private IiifAdapterResponse requestResponse(HttpResponse<InputStream> response) {
+		Map<String, String> headers = convertHeaders(response.headers());
+		if (response.statusCode() == HTTP_NOT_FOUND) {
+			return new IiifAdapterResponse(HTTP_NOT_FOUND, headers, new ByteArrayInputStream(
+					NOT_FOUND_MESSAGE.getBytes(StandardCharsets.UTF_8)));
+		}
+		return new IiifAdapterResponse(response.statusCode(), headers, response.body());
+	}
+
+	private Map<String, String> convertHeaders(HttpHeaders httpHeaders) {
+		Map<String, String> headers = new LinkedHashMap<>();
+		for (Entry<String, List<String>> header : httpHeaders.map().entrySet()) {
+			if (!header.getKey().startsWith(":")) {
+				headers.put(header.getKey(), String.join(", ", header.getValue()));
+			}
+		}
+		return headers;
+	}
+
+	private BinaryException errorWhileCallingIiifServer(Exception e,
+			IiifParameters iiifParameters) {
+		String errorMessage = "Error while calling iiifServer using method: {0}, and URI: {1}";
+		return BinaryException.withMessageAndException(
+				MessageFormat.format(errorMessage, iiifParameters.method(), iiifParameters.uri()),
+				e);
+	}
+
+	/**
+	 * getNegotiatedVersion returns the HTTP version decided on for the image server, or empty if
+	 * the negotiation has not finished.
+	 */
+	public Optional<HttpClient.Version> getNegotiatedVersion() {
+		return switch (negotiation.get()) {
+			case HTTP_2 -> Optional.of(HttpClient.Version.HTTP_2);
+			case HTTP_1_1 -> Optional.of(HttpClient.Version.HTTP_1_1);
+			default -> Optional.empty();
+		};
+	}
+
+	/**
+	 * getMultiplexedCalls returns the number of calls made over HTTP/2, the probe not included.
+	 */
+	public long getMultiplexedCalls() {
+		return multiplexedCalls.sum();
+	}
+
+	/**
+	 * getFallbackCalls returns the number of calls passed on to the fallback adapter.
+	 */
+	public long getFallbackCalls() {
+		return fallbackCalls.sum();
+	}
+
+	String onlyForTestGetIiifServerUrl() {
+		return iiifServerUrl;
+	}
+
+	MultiplexedClients onlyForTestGetMultiplexedClients() {
+		return multiplexedClients;
+	}
+
+	AsyncIiifAdapter onlyForTestGetFallbackAdapter() {
+		return fallbackAdapter;
+	}
+
+	Duration onlyForTestGetNegotiationTimeout() {
+		return negotiationTimeout;
+	}
+
+	Duration onlyForTestGetResponseTimeout() {
+		return responseTimeout;
+	}
+}
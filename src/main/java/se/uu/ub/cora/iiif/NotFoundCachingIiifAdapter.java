@@ -0,0 +1,103 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapter;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.cache.CacheStatistics;
+import se.uu.ub.cora.iiif.cache.NotFoundCache;
+import se.uu.ub.cora.iiif.uri.IiifIdentifiers;
+
+/**
+ * NotFoundCachingIiifAdapter answers GET and HEAD requests for identifiers the image server has
+ * recently answered 404 for without calling it again, so that clients probing for identifiers
+ * that do not exist cost one call per identifier instead of one per request.
+ * <p>
+ * A 404 for any request for an identifier, its info.json or an image derived from it, is
+ * remembered for the identifier. Requests with other methods make the adapter forget the
+ * identifier, as they may create the image.
+ */
+public class NotFoundCachingIiifAdapter implements IiifAdapter {
+	private static final int HTTP_NOT_FOUND = 404;
+	private static final byte[] NOT_FOUND_MESSAGE = "Requested identifier could not be found."
+			.getBytes(StandardCharsets.UTF_8);
+	private IiifAdapter iiifAdapter;
+	private NotFoundCache notFoundCache;
+
+	public NotFoundCachingIiifAdapter(IiifAdapter iiifAdapter, NotFoundCache notFoundCache) {
+		this.iiifAdapter = iiifAdapter;
+		this.notFoundCache = notFoundCache;
+	}
+
+	@Override
+	public IiifAdapterResponse callIiifServer(IiifParameters iiifParameters) {
+		String identifier = IiifIdentifiers.fromUri(iiifParameters.uri());
+		if (!isGetOrHead(iiifParameters.method())) {
+			notFoundCache.forget(identifier);
+			return iiifAdapter.callIiifServer(iiifParameters);
+		}
+		if (notFoundCache.isNotFound(identifier)) {
+			return createNotFoundResponse(iiifParameters.method());
+		}
+		return callAndRememberNotFound(identifier, iiifParameters);
+	}
+
+	private boolean isGetOrHead(String method) {
+		return "GET".equals(method) || "HEAD".equals(method);
+	}
+
+	private IiifAdapterResponse createNotFoundResponse(String method) {
+		Map<String, String> headers = new LinkedHashMap<>();
+		headers.put("Content-Type", "text/plain; charset=UTF-8");
+		InputStream body = "HEAD".equals(method) ? InputStream.nullInputStream()
+				: new ByteArrayInputStream(NOT_FOUND_MESSAGE);
+		return new IiifAdapterResponse(HTTP_NOT_FOUND, headers, body);
+	}
+
+	private IiifAdapterResponse callAndRememberNotFound(String identifier,
+			IiifParameters iiifParameters) {
+		IiifAdapterResponse response = iiifAdapter.callIiifServer(iiifParameters);
+		if (response.status() == HTTP_NOT_FOUND) {
+			notFoundCache.remember(identifier);
+		}
+		return response;
+	}
+
+	/**
+	 * getStatistics returns a snapshot of the counters of the not found cache.
+	 */
+	public CacheStatistics getStatistics() {
+		return notFoundCache.getStatistics();
+	}
+
+	IiifAdapter onlyForTestGetIiifAdapter() {
+		return iiifAdapter;
+	}
+
+	NotFoundCache onlyForTestGetNotFoundCache() {
+		return notFoundCache;
+	}
+}
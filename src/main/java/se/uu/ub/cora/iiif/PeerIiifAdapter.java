@@ -0,0 +1,242 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapter;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.cache.TileCacheKey;
+import se.uu.ub.cora.iiif.http.Headers;
+import se.uu.ub.cora.iiif.peer.PeerRing;
+import se.uu.ub.cora.iiif.peer.PeerServer;
+import se.uu.ub.cora.iiif.peer.PeerSettings;
+
+/**
+ * PeerIiifAdapter shares the caches of the nodes in a cluster, so that a tile is fetched from
+ * the image server by one node instead of once per node. Every tile has an owner, chosen by a
+ * {@link PeerRing} over the nodes in the settings. Requests for tiles this node owns go to the
+ * adapter it decorates, while requests for tiles owned by another node are made to the
+ * {@link PeerServer} of that node, which answers from its caches.
+ * <p>
+ * When a call to a peer fails, or the peer answers 502, 503 or 504, the request goes to the
+ * decorated adapter instead. A peer is bypassed for the bypass time of the settings only after
+ * {@link #MAX_CONSECUTIVE_FAILURES} calls to it in a row have failed, so that one slow response,
+ * such as for a large image, does not take a whole node out of the tier. Requests a peer server
+ * does not answer, as told by {@link PeerServer#isServable(String)}, other methods than GET and
+ * HEAD, and requests that came from a peer always go to the decorated adapter.
+ */
+public class PeerIiifAdapter implements IiifAdapter {
+	static final int MAX_CONSECUTIVE_FAILURES = 3;
+	private final IiifAdapter iiifAdapter;
+	private final PeerRing peerRing;
+	private final Map<String, IiifAdapter> peerAdapters;
+	private final PeerSettings settings;
+	private final PeerServer peerServer;
+	private final LongSupplier nanoTime;
+	private final Map<String, Long> bypassedUntilNanos = new ConcurrentHashMap<>();
+	private final Map<String, Integer> consecutiveFailures = new ConcurrentHashMap<>();
+	private final LongAdder ownedCalls = new LongAdder();
+	private final LongAdder peerCalls = new LongAdder();
+	private final LongAdder failedPeerCalls = new LongAdder();
+	private final LongAdder bypassedCalls = new LongAdder();
+
+	/**
+	 * @param iiifAdapter
+	 *            the adapter for tiles owned by this node, and for requests not sent to a peer
+	 * @param peerAdapters
+	 *            the adapters calling the peer servers of the other nodes, by their URLs
+	 * @param settings
+	 *            the nodes of the cluster and how peers are called
+	 * @param peerServer
+	 *            the server answering the other nodes for this node
+	 */
+	public PeerIiifAdapter(IiifAdapter iiifAdapter, Map<String, IiifAdapter> peerAdapters,
+			PeerSettings settings, PeerServer peerServer) {
+		this(iiifAdapter, peerAdapters, settings, peerServer, System::nanoTime);
+	}
+
+	PeerIiifAdapter(IiifAdapter iiifAdapter, Map<String, IiifAdapter> peerAdapters,
+			PeerSettings settings, PeerServer peerServer, LongSupplier nanoTime) {
+		this.iiifAdapter = iiifAdapter;
+		this.peerAdapters = Map.copyOf(peerAdapters);
+		this.settings = settings;
+		this.peerServer = peerServer;
+		this.nanoTime = nanoTime;
+		peerRing = new PeerRing(settings.nodes());
+	}
+
+	@Override
+	public IiifAdapterResponse callIiifServer(IiifParameters iiifParameters) {
+		if (isFromPeer(iiifParameters)) {
+			return iiifAdapter.callIiifServer(withoutPeerHeader(iiifParameters));
+		}
+		if (!isShareable(iiifParameters)) {
+			return iiifAdapter.callIiifServer(iiifParameters);
+		}
+		String owner = peerRing.ownerOf(TileCacheKey.normalizeUri(iiifParameters.uri()));
+		IiifAdapter peerAdapter = peerAdapters.get(owner);
+		if (owner.equals(settings.self()) || peerAdapter == null) {
+			ownedCalls.increment();
+			return iiifAdapter.callIiifServer(iiifParameters);
+		}
+		if (isBypassed(owner)) {
+			bypassedCalls.increment();
+			return iiifAdapter.callIiifServer(iiifParameters);
+		}
+		return callPeer(owner, peerAdapter, iiifParameters);
+	}
+
+	private boolean isFromPeer(IiifParameters iiifParameters) {
+		return Headers.find(iiifParameters.headersMap(), PeerServer.PEER_HEADER).isPresent();
+	}
+
+	private IiifParameters withoutPeerHeader(IiifParameters iiifParameters) {
+		Map<String, String> headers = new LinkedHashMap<>();
+		for (Entry<String, String> header : iiifParameters.headersMap().entrySet()) {
+			if (!PeerServer.PEER_HEADER.equalsIgnoreCase(header.getKey())) {
+				headers.put(header.getKey(), header.getValue());
+			}
+		}
+		return new IiifParameters(iiifParameters.uri(), iiifParameters.method(), headers);
+	}
+
+	private boolean isShareable(IiifParameters iiifParameters) {
+		String method = iiifParameters.method();
+		return ("GET".equals(method) || "HEAD".equals(method))
+				&& PeerServer.isServable(iiifParameters.uri());
+	}
+
+	private boolean isBypassed(String peer) {
+		Long bypassedUntil = bypassedUntilNanos.get(peer);
+		if (bypassedUntil == null) {
+			return false;
+		}
+		if (nanoTime.getAsLong() - bypassedUntil < 0) {
+			return true;
+		}
+		bypassedUntilNanos.remove(peer, bypassedUntil);
+		return false;
+	}
+
+	private IiifAdapterResponse callPeer(String peer, IiifAdapter peerAdapter,
+			IiifParameters iiifParameters) {
+		peerCalls.increment();
+		IiifAdapterResponse response;
+		try {
+			response = peerAdapter.callIiifServer(createPeerRequest(iiifParameters));
+		} catch (RuntimeException e) {
+			return callAfterFailure(peer, iiifParameters);
+		}
+		if (isPeerFailure(response.status())) {
+			closeQuietly(response.body());
+			return callAfterFailure(peer, iiifParameters);
+		}
+		consecutiveFailures.remove(peer);
+		return response;
+	}
+
+	private IiifParameters createPeerRequest(IiifParameters iiifParameters) {
+		Map<String, String> headers = new LinkedHashMap<>();
+		for (String name : PeerServer.FORWARDED_HEADERS) {
+			Headers.find(iiifParameters.headersMap(), name)
+					.ifPresent(value -> headers.put(name, value));
+		}
+		headers.put(PeerServer.PEER_HEADER, settings.secret());
+		return new IiifParameters(iiifParameters.uri(), iiifParameters.method(), headers);
+	}
+
+	private boolean isPeerFailure(int status) {
+		return status == 502 || status == 503 || status == 504;
+	}
+
+	private IiifAdapterResponse callAfterFailure(String peer, IiifParameters iiifParameters) {
+		failedPeerCalls.increment();
+		if (consecutiveFailures.merge(peer, 1, Integer::sum) >= MAX_CONSECUTIVE_FAILURES) {
+			consecutiveFailures.remove(peer);
+			bypassedUntilNanos.put(peer, nanoTime.getAsLong() + settings.bypassTime().toNanos());
+		}
+		return iiifAdapter.callIiifServer(iiifParameters);
+	}
+
+	private void closeQuietly(InputStream body) {
+		if (body == null) {
+			return;
+		}
+		try {
+			body.close();
+		} catch (IOException e) {
+			// the response was not wanted
+		}
+	}
+
+	/**
+	 * getOwnedCalls returns the number of requests for tiles owned by this node.
+	 */
+	public long getOwnedCalls() {
+		return ownedCalls.sum();
+	}
+
+	/**
+	 * getPeerCalls returns the number of requests made to the node owning the tile.
+	 */
+	public long getPeerCalls() {
+		return peerCalls.sum();
+	}
+
+	/**
+	 * getFailedPeerCalls returns the number of requests to peers that failed and were made to
+	 * the decorated adapter instead.
+	 */
+	public long getFailedPeerCalls() {
+		return failedPeerCalls.sum();
+	}
+
+	/**
+	 * getBypassedCalls returns the number of requests for tiles owned by another node that were
+	 * not made to it, as calls to it had failed in a row within the bypass time.
+	 */
+	public long getBypassedCalls() {
+		return bypassedCalls.sum();
+	}
+
+	public PeerSettings getSettings() {
+		return settings;
+	}
+
+	public PeerServer getPeerServer() {
+		return peerServer;
+	}
+
+	IiifAdapter onlyForTestGetIiifAdapter() {
+		return iiifAdapter;
+	}
+
+	Map<String, IiifAdapter> onlyForTestGetPeerAdapters() {
+		return peerAdapters;
+	}
+}
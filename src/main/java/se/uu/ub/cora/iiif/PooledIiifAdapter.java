@@ -0,0 +1,202 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import se.uu.ub.cora.binary.BinaryException;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.async.AsyncIiifAdapter;
+import se.uu.ub.cora.iiif.http.HttpClientPool;
+
+/**
+ * PooledIiifAdapter is an alternative to {@link IiifAdapterImp} that calls the image server
+ * through a shared {@link HttpClientPool}, reusing kept alive connections between requests.
+ * <p>
+ * Calls are made asynchronously and {@link #callIiifServer(IiifParameters)} waits for
+ * {@link #callIiifServerAsync(IiifParameters)}. The image server must start answering within the
+ * response timeout.
+ */
+public class PooledIiifAdapter implements AsyncIiifAdapter {
+	private static final int HTTP_NOT_FOUND = 404;
+	private static final String NOT_FOUND_MESSAGE = "Requested identifier could not be found.";
+	private String iiifServerUrl;
+	private HttpClientPool httpClientPool;
+	private Duration responseTimeout;
+
+	public PooledIiifAdapter(String iiifServerUrl, HttpClientPool httpClientPool,
+			Duration responseTimeout) {
+		this.iiifServerUrl = iiifServerUrl;
+		this.httpClientPool = httpClientPool;
+		this.responseTimeout = responseTimeout;
+	}
+
+	@Override
+	public IiifAdapterResponse callIiifServer(IiifParameters iiifParameters) {
+		CompletableFuture<IiifAdapterResponse> response = callIiifServerAsync(iiifParameters);
+		try {
+			return response.get();
+		} catch (InterruptedException e) {
+			response.cancel(true);
+			Thread.currentThread().interrupt();
+			throw errorWhileCallingIiifServer(e, iiifParameters);
+		} catch (ExecutionException e) {
+			throw (BinaryException) e.getCause();
+		}
+	}
+
+	@Override
+	public CompletableFuture<IiifAdapterResponse> callIiifServerAsync(
+			IiifParameters iiifParameters) {
+		try {
+			return tryToRequestImageAsync(iiifParameters);
+		} catch (Exception e) {
+			return CompletableFuture.failedFuture(errorWhileCallingIiifServer(e, iiifParameters));
+		}
+	}
+
+	private CompletableFuture<IiifAdapterResponse> tryToRequestImageAsync(
+			IiifParameters iiifParameters) {
+		HttpRequest request = setUpRequest(iiifParameters);
+		CompletableFuture<HttpResponse<InputStream>> exchange = httpClientPool
+				.sendAsync(request, status -> status == HTTP_NOT_FOUND);
+		CompletableFuture<IiifAdapterResponse> response = new CompletableFuture<>();
+		exchange.whenComplete((httpResponse, exception) -> completeResponse(response,
+				httpResponse, exception, iiifParameters));
+		response.whenComplete((iiifResponse, exception) -> {
+			if (response.isCancelled()) {
+				exchange.cancel(true);
+			}
+		});
+		return response;
+	}
+
+	private void completeResponse(CompletableFuture<IiifAdapterResponse> response,
+			HttpResponse<InputStream> httpResponse, Throwable exception,
+			IiifParameters iiifParameters) {
+		if (exception != null) {
+			response.completeExceptionally(
+					errorWhileCallingIiifServer(unwrap(exception), iiifParameters));
+			return;
+		}
+		if (!response.complete(requestResponse(httpResponse))) {
+			closeQuietly(httpResponse.body());
+		}
+	}
+
+	private Exception unwrap(Throwable exception) {
+		Throwable cause = exception instanceof CompletionException ? exception.getCause()
+				: exception;
+		return cause instanceof Exception e ? e : new RuntimeException(cause);
+	}
+
+	private void closeQuietly(InputStream body) {
+		try {
+			body.close();
+		} catch (IOException e) {
+			// the response was not wanted
+		}
+	}
+
+	private HttpRequest setUpRequest(IiifParameters iiifParameters) {
+		HttpRequest.Builder requestBuilder = HttpRequest
+				.newBuilder(URI.create(buildRequestUrl(iiifParameters))).timeout(responseTimeout)
+				.method(iiifParameters.method(), BodyPublishers.noBody());
+		setHeaders(requestBuilder, iiifParameters.headersMap());
+		return requestBuilder.build();
+	}
+
+	private String buildRequestUrl(IiifParameters iiifParameters) {
+		return iiifServerUrl + iiifParameters.uri();
+	}
+
+	private void setHeaders(HttpRequest.Builder requestBuilder, Map<String, String> headersMap) {
+		for (Entry<String, String> header : headersMap.entrySet()) {
+			setHeaderIfAllowed(requestBuilder, header);
+		}
+	}
+
+	private void setHeaderIfAllowed(HttpRequest.Builder requestBuilder,
+			Entry<String, String> header) {
+		try {
+			requestBuilder.setHeader(header.getKey(), header.getValue());
+		} catch (IllegalArgumentException e) {
+			// headers such as Host and Connection are managed by the pooled connection
+		}
+	}
+
+	private IiifAdapterResponse requestResponse(HttpResponse<InputStream> response) {
+		Map<String, String> headers = convertHeaders(response.headers());
+		if (response.statusCode() == HTTP_NOT_FOUND) {
+			return returnNotFound(headers);
+		}
+		return new IiifAdapterResponse(response.statusCode(), headers, response.body());
+	}
+
+	private Map<String, String> convertHeaders(HttpHeaders httpHeaders) {
+		Map<String, String> headers = new LinkedHashMap<>();
+		for (Entry<String, List<String>> header : httpHeaders.map().entrySet()) {
+			headers.put(header.getKey(), String.join(", ", header.getValue()));
+		}
+		return headers;
+	}
+
+	private IiifAdapterResponse returnNotFound(Map<String, String> headers) {
+		return new IiifAdapterResponse(HTTP_NOT_FOUND, headers,
+				new ByteArrayInputStream(NOT_FOUND_MESSAGE.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private BinaryException errorWhileCallingIiifServer(Exception e,
+			IiifParameters iiifParameters) {
+		String errorMessage = "Error while calling iiifServer using method: {0}, and URI: {1}";
+		return BinaryException.withMessageAndException(
+				MessageFormat.format(errorMessage, iiifParameters.method(), iiifParameters.uri()),
+				e);
+	}
+
+	String onlyForTestGetIiifServerUrl() {
+		return iiifServerUrl;
+	}
+
+	HttpClientPool onlyForTestGetHttpClientPool() {
+		return httpClientPool;
+	}
+
+	Duration onlyForTestGetResponseTimeout() {
+		return responseTimeout;
+	}
+}
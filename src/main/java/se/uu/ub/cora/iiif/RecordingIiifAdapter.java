@@ -0,0 +1,101 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapter;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.http.Headers;
+import se.uu.ub.cora.iiif.metrics.MeasuredInputStream;
+import se.uu.ub.cora.iiif.recording.CallRecorder;
+import se.uu.ub.cora.iiif.recording.RecordedCall;
+
+/**
+ * RecordingIiifAdapter records every call made to it with a {@link CallRecorder}, so that the
+ * traffic can be replayed later. A call is recorded when its response body has been read or
+ * closed, with the time until then as its duration, or when it throws.
+ * <p>
+ * Only the request headers named in the list it is given are recorded, so that credentials and
+ * cookies never end up in a recording.
+ */
+public class RecordingIiifAdapter implements IiifAdapter {
+	private IiifAdapter iiifAdapter;
+	private CallRecorder callRecorder;
+	private List<String> recordedHeaders;
+
+	public RecordingIiifAdapter(IiifAdapter iiifAdapter, CallRecorder callRecorder,
+			List<String> recordedHeaders) {
+		this.iiifAdapter = iiifAdapter;
+		this.callRecorder = callRecorder;
+		this.recordedHeaders = List.copyOf(recordedHeaders);
+	}
+
+	@Override
+	public IiifAdapterResponse callIiifServer(IiifParameters iiifParameters) {
+		long startMicros = callRecorder.microsSinceStart();
+		IiifAdapterResponse response;
+		try {
+			response = iiifAdapter.callIiifServer(iiifParameters);
+		} catch (RuntimeException e) {
+			record(iiifParameters, startMicros, RecordedCall.FAILED, 0);
+			throw e;
+		}
+		if (response.body() == null) {
+			record(iiifParameters, startMicros, response.status(), 0);
+			return response;
+		}
+		MeasuredInputStream recordedBody = new MeasuredInputStream(response.body(),
+				bytesRead -> record(iiifParameters, startMicros, response.status(), bytesRead));
+		return new IiifAdapterResponse(response.status(), response.headers(), recordedBody);
+	}
+
+	private void record(IiifParameters iiifParameters, long startMicros, int status,
+			long bodyBytes) {
+		long durationMicros = Math.max(0, callRecorder.microsSinceStart() - startMicros);
+		callRecorder.record(new RecordedCall(startMicros, iiifParameters.method(),
+				iiifParameters.uri(), selectRecordedHeaders(iiifParameters.headersMap()), status,
+				bodyBytes, durationMicros));
+	}
+
+	private Map<String, String> selectRecordedHeaders(Map<String, String> headers) {
+		Map<String, String> selected = new LinkedHashMap<>();
+		for (String name : recordedHeaders) {
+			Optional<String> value = Headers.find(headers, name);
+			value.ifPresent(v -> selected.put(name, v));
+		}
+		return selected;
+	}
+
+	public CallRecorder getCallRecorder() {
+		return callRecorder;
+	}
+
+	IiifAdapter onlyForTestGetIiifAdapter() {
+		return iiifAdapter;
+	}
+
+	List<String> onlyForTestGetRecordedHeaders() {
+		return recordedHeaders;
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapter;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.backend.LocalRejectionException;
+
+/**
+ * RejectionAnsweringIiifAdapter answers with 503 and a Retry-After header the requests that the
+ * adapter it decorates turns away with a {@link LocalRejectionException}, before they reach an
+ * image server.
+ * <p>
+ * It sits above the backends and the {@link RoutingIiifAdapter}, so that a rejection can be told
+ * apart from a 503 from an image server for as long as it matters: rejections do not count
+ * against the health of a backend, and a request rejected by one backend is made to another.
+ */
+public class RejectionAnsweringIiifAdapter implements IiifAdapter {
+	private static final int HTTP_SERVICE_UNAVAILABLE = 503;
+	private IiifAdapter iiifAdapter;
+
+	public RejectionAnsweringIiifAdapter(IiifAdapter iiifAdapter) {
+		this.iiifAdapter = iiifAdapter;
+	}
+
+	@Override
+	public IiifAdapterResponse callIiifServer(IiifParameters iiifParameters) {
+		try {
+			return iiifAdapter.callIiifServer(iiifParameters);
+		} catch (LocalRejectionException e) {
+			return createServiceUnavailableResponse(e);
+		}
+	}
+
+	private IiifAdapterResponse createServiceUnavailableResponse(LocalRejectionException e) {
+		Map<String, String> headers = new LinkedHashMap<>();
+		headers.put("Content-Type", "text/plain; charset=UTF-8");
+		headers.put("Retry-After", String.valueOf(e.getRetryAfterSeconds()));
+		return new IiifAdapterResponse(HTTP_SERVICE_UNAVAILABLE, headers,
+				new ByteArrayInputStream(e.getMessage().getBytes(StandardCharsets.UTF_8)));
+	}
+
+	IiifAdapter onlyForTestGetIiifAdapter() {
+		return iiifAdapter;
+	}
+}
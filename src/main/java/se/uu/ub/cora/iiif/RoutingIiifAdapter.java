@@ -0,0 +1,154 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapter;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.backend.Backend;
+import se.uu.ub.cora.iiif.backend.BackendSelector;
+import se.uu.ub.cora.iiif.backend.LocalRejectionException;
+import se.uu.ub.cora.iiif.uri.IiifIdentifiers;
+
+/**
+ * RoutingIiifAdapter spreads requests over several image servers. Each request goes to the
+ * backend its {@link BackendSelector} chooses among the backends currently available, or among
+ * all of them if none is.
+ * <p>
+ * Calls that fail, or are answered with 502, 503 or 504 by the image server, count against the
+ * health of the backend. A GET or HEAD request whose call fails is made once more to another
+ * available backend. A request a backend turns away with a {@link LocalRejectionException} before
+ * it reaches the image server, such as when its concurrency limit is reached or its circuit is
+ * open, does not count against its health, and is made once more to another available backend
+ * whatever its method.
+ */
+public class RoutingIiifAdapter implements IiifAdapter {
+	private List<Backend> backends;
+	private BackendSelector selector;
+	private final LongAdder failovers = new LongAdder();
+	private final LongAdder callsWithoutAvailableBackend = new LongAdder();
+
+	public RoutingIiifAdapter(List<Backend> backends, BackendSelector selector) {
+		this.backends = List.copyOf(backends);
+		this.selector = selector;
+	}
+
+	@Override
+	public IiifAdapterResponse callIiifServer(IiifParameters iiifParameters) {
+		String identifier = IiifIdentifiers.fromUri(iiifParameters.uri());
+		List<Backend> candidates = getAvailableBackends();
+		Backend backend = selector.select(identifier, candidates);
+		try {
+			return callBackend(backend, iiifParameters);
+		} catch (LocalRejectionException e) {
+			if (candidates.size() < 2) {
+				throw e;
+			}
+			return failOver(identifier, candidates, backend, iiifParameters);
+		} catch (RuntimeException e) {
+			if (!isIdempotent(iiifParameters.method()) || candidates.size() < 2) {
+				throw e;
+			}
+			return failOver(identifier, candidates, backend, iiifParameters);
+		}
+	}
+
+	private IiifAdapterResponse failOver(String identifier, List<Backend> candidates,
+			Backend failed, IiifParameters iiifParameters) {
+		failovers.increment();
+		Backend other = selector.select(identifier, without(candidates, failed));
+		return callBackend(other, iiifParameters);
+	}
+
+	private List<Backend> getAvailableBackends() {
+		List<Backend> available = new ArrayList<>(backends.size());
+		for (Backend backend : backends) {
+			if (backend.isAvailable()) {
+				available.add(backend);
+			}
+		}
+		if (available.isEmpty()) {
+			callsWithoutAvailableBackend.increment();
+			return backends;
+		}
+		return available;
+	}
+
+	private IiifAdapterResponse callBackend(Backend backend, IiifParameters iiifParameters) {
+		backend.callStarted();
+		IiifAdapterResponse response;
+		try {
+			response = backend.getIiifAdapter().callIiifServer(iiifParameters);
+		} catch (LocalRejectionException e) {
+			backend.callRejected();
+			throw e;
+		} catch (RuntimeException e) {
+			backend.callFailed();
+			throw e;
+		}
+		if (isBackendFailure(response.status())) {
+			backend.callFailed();
+		} else {
+			backend.callSucceeded();
+		}
+		return response;
+	}
+
+	private boolean isBackendFailure(int status) {
+		return status == 502 || status == 503 || status == 504;
+	}
+
+	private boolean isIdempotent(String method) {
+		return "GET".equals(method) || "HEAD".equals(method);
+	}
+
+	private List<Backend> without(List<Backend> candidates, Backend excluded) {
+		List<Backend> others = new ArrayList<>(candidates);
+		others.remove(excluded);
+		return others;
+	}
+
+	/**
+	 * getFailovers returns the number of requests made again to another backend after a failed
+	 * or rejected call.
+	 */
+	public long getFailovers() {
+		return failovers.sum();
+	}
+
+	/**
+	 * getCallsWithoutAvailableBackend returns the number of requests made while no backend was
+	 * available, which were then spread over all backends.
+	 */
+	public long getCallsWithoutAvailableBackend() {
+		return callsWithoutAvailableBackend.sum();
+	}
+
+	public List<Backend> getBackends() {
+		return backends;
+	}
+
+	BackendSelector onlyForTestGetSelector() {
+		return selector;
+	}
+}
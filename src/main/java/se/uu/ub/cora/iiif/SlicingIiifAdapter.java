@@ -0,0 +1,180 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapter;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.http.ByteRange;
+import se.uu.ub.cora.iiif.http.ByteRanges;
+import se.uu.ub.cora.iiif.http.Headers;
+import se.uu.ub.cora.iiif.http.MultipartRanges;
+import se.uu.ub.cora.iiif.http.RangeInputStream;
+
+/**
+ * SlicingIiifAdapter answers GET requests with a Range header with 206 and only the bytes asked
+ * for, so that an interrupted download of a large image can be resumed without sending the bytes
+ * the client already has. One range is sent as it is, several as a multipart/byteranges body.
+ * <p>
+ * The Range header is passed on to the adapter it decorates. A 206 or 416 from it is returned as
+ * it is, and a 200 with a known length is sliced here, which is what happens when the response
+ * comes from a cache holding the full representation. Range requests that can not be satisfied
+ * are answered with 416.
+ */
+public class SlicingIiifAdapter implements IiifAdapter {
+	private static final int HTTP_OK = 200;
+	private static final int HTTP_PARTIAL_CONTENT = 206;
+	private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+	private static final String CONTENT_LENGTH = "Content-Length";
+	private static final String CONTENT_RANGE = "Content-Range";
+	private static final String CONTENT_TYPE = "Content-Type";
+	private static final String ACCEPT_RANGES = "Accept-Ranges";
+	private IiifAdapter iiifAdapter;
+	private final LongAdder partialResponses = new LongAdder();
+	private final LongAdder unsatisfiableResponses = new LongAdder();
+
+	public SlicingIiifAdapter(IiifAdapter iiifAdapter) {
+		this.iiifAdapter = iiifAdapter;
+	}
+
+	@Override
+	public IiifAdapterResponse callIiifServer(IiifParameters iiifParameters) {
+		IiifAdapterResponse response = iiifAdapter.callIiifServer(iiifParameters);
+		if (!isGetOrHead(iiifParameters.method()) || response.status() != HTTP_OK) {
+			return response;
+		}
+		long length = readContentLength(response.headers());
+		if (length < 0) {
+			return response;
+		}
+		Optional<List<ByteRange>> ranges = "GET".equals(iiifParameters.method())
+				? ByteRanges.select(iiifParameters.headersMap(), response.headers(), length)
+				: Optional.empty();
+		if (ranges.isEmpty()) {
+			return createFullResponse(response);
+		}
+		if (ranges.get().isEmpty()) {
+			return createUnsatisfiableResponse(response, length);
+		}
+		return createPartialResponse(response, length, ranges.get());
+	}
+
+	private boolean isGetOrHead(String method) {
+		return "GET".equals(method) || "HEAD".equals(method);
+	}
+
+	private long readContentLength(Map<String, String> headers) {
+		Optional<String> contentLength = Headers.find(headers, CONTENT_LENGTH);
+		if (contentLength.isEmpty()) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(contentLength.get().trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private IiifAdapterResponse createFullResponse(IiifAdapterResponse response) {
+		Map<String, String> headers = copyWithout(response.headers(), ACCEPT_RANGES);
+		headers.put(ACCEPT_RANGES, "bytes");
+		return new IiifAdapterResponse(HTTP_OK, headers, response.body());
+	}
+
+	private IiifAdapterResponse createUnsatisfiableResponse(IiifAdapterResponse response,
+			long length) {
+		unsatisfiableResponses.increment();
+		closeBody(response.body());
+		Map<String, String> headers = new LinkedHashMap<>();
+		headers.put(ACCEPT_RANGES, "bytes");
+		headers.put(CONTENT_RANGE, "bytes */" + length);
+		headers.put(CONTENT_LENGTH, "0");
+		return new IiifAdapterResponse(HTTP_RANGE_NOT_SATISFIABLE, headers,
+				InputStream.nullInputStream());
+	}
+
+	private void closeBody(InputStream body) {
+		try {
+			body.close();
+		} catch (IOException e) {
+			// no part of the body is sent with a 416
+		}
+	}
+
+	private IiifAdapterResponse createPartialResponse(IiifAdapterResponse response, long length,
+			List<ByteRange> ranges) {
+		partialResponses.increment();
+		Map<String, String> headers = copyWithout(response.headers(), ACCEPT_RANGES,
+				CONTENT_LENGTH, CONTENT_RANGE);
+		headers.put(ACCEPT_RANGES, "bytes");
+		if (ranges.size() == 1) {
+			ByteRange range = ranges.get(0);
+			headers.put(CONTENT_RANGE, range.toContentRange(length));
+			headers.put(CONTENT_LENGTH, String.valueOf(range.length()));
+			return new IiifAdapterResponse(HTTP_PARTIAL_CONTENT, headers,
+					new RangeInputStream(response.body(), range));
+		}
+		MultipartRanges multipart = new MultipartRanges(createBoundary(),
+				Headers.find(response.headers(), CONTENT_TYPE), length, ranges);
+		headers.keySet().removeIf(CONTENT_TYPE::equalsIgnoreCase);
+		headers.put(CONTENT_TYPE, multipart.getContentType());
+		headers.put(CONTENT_LENGTH, String.valueOf(multipart.getContentLength()));
+		return new IiifAdapterResponse(HTTP_PARTIAL_CONTENT, headers,
+				multipart.createBody(response.body()));
+	}
+
+	private String createBoundary() {
+		return "cora-iiif-" + Long.toHexString(ThreadLocalRandom.current().nextLong());
+	}
+
+	private Map<String, String> copyWithout(Map<String, String> headers, String... names) {
+		Map<String, String> copy = new LinkedHashMap<>(headers);
+		for (String name : names) {
+			copy.keySet().removeIf(name::equalsIgnoreCase);
+		}
+		return copy;
+	}
+
+	/**
+	 * getPartialResponses returns the number of 206 responses sliced from full responses.
+	 */
+	public long getPartialResponses() {
+		return partialResponses.sum();
+	}
+
+	/**
+	 * getUnsatisfiableResponses returns the number of range requests answered with 416.
+	 */
+	public long getUnsatisfiableResponses() {
+		return unsatisfiableResponses.sum();
+	}
+
+	IiifAdapter onlyForTestGetIiifAdapter() {
+		return iiifAdapter;
+	}
+}
@@ -0,0 +1,476 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import se.uu.ub.cora.binary.BinaryException;
+import se.uu.ub.cora.binary.iiif.IiifAdapter;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.cache.BufferedBody;
+import se.uu.ub.cora.iiif.cache.CachedTile;
+import se.uu.ub.cora.iiif.cache.TileCacheKey;
+import se.uu.ub.cora.iiif.cache.TileStore;
+import se.uu.ub.cora.iiif.http.ConditionalRequests;
+import se.uu.ub.cora.iiif.http.Headers;
+import se.uu.ub.cora.iiif.transcode.AcceptHeader;
+import se.uu.ub.cora.iiif.transcode.ImageFormat;
+import se.uu.ub.cora.iiif.transcode.ImageTranscoder;
+import se.uu.ub.cora.iiif.transcode.TranscodingSettings;
+
+/**
+ * TranscodingIiifAdapter answers GET requests for JPEG and PNG images with WebP or AVIF when the
+ * client lists one of them in its Accept header, as those are usually much smaller. When the
+ * image server can encode the preferred format itself, the image is asked for from it with that
+ * format in the URI. Otherwise the image is transcoded by an {@link ImageTranscoder}, on the
+ * executor it is given, and the result is kept in a {@link TileStore} of its own under the URI
+ * and the format, so that an image is transcoded once and not for every request. An image that
+ * does not get smaller is kept as it is, so that it is not transcoded again either.
+ * <p>
+ * Transcoding never holds up a request for long. When the executor has no room for one more
+ * image, when the image is larger than the settings allow or when it is not transcoded within
+ * the timeout, the image is sent as it is. A transcoding that times out is still kept when it
+ * finishes, for the requests that follow.
+ * <p>
+ * Kept images follow the same freshness rules as a {@link CachingIiifAdapter}: they are used for
+ * as long as the Cache-Control s-maxage or max-age of their source allows, or for the revalidate
+ * after duration of the settings. After that the source is revalidated with its own ETag and
+ * Last-Modified. A 304 renews the kept image, and a changed source is transcoded again. Sources
+ * marked no-store are transcoded for the request but not kept.
+ * <p>
+ * Responses to requests that could be transcoded carry Vary: Accept, and transcoded images have
+ * an ETag of their own, so that caches between the client and the adapter keep the formats
+ * apart.
+ */
+public class TranscodingIiifAdapter implements IiifAdapter {
+	private static final int HTTP_OK = 200;
+	private static final int HTTP_NOT_MODIFIED = 304;
+	private static final int HTTP_BAD_REQUEST = 400;
+	private static final List<ImageFormat> SOURCE_FORMATS = List.of(ImageFormat.JPEG,
+			ImageFormat.PNG);
+	private static final List<ImageFormat> TARGET_FORMATS = List.of(ImageFormat.AVIF,
+			ImageFormat.WEBP);
+	private static final List<String> SOURCE_REQUEST_HEADERS_TO_REMOVE = List.of("Range",
+			"If-Range", "If-None-Match", "If-Modified-Since");
+	private static final String ACCEPT = "Accept";
+	private static final String CONTENT_LENGTH = "Content-Length";
+	private static final String CONTENT_TYPE = "Content-Type";
+	private static final String ETAG = "ETag";
+	private static final String VARY = "Vary";
+	private static final String SOURCE_LENGTH = "Source-Length";
+	private static final String SOURCE_ETAG = "Source-ETag";
+	private static final String LAST_MODIFIED = "Last-Modified";
+	private IiifAdapter iiifAdapter;
+	private ImageTranscoder transcoder;
+	private ExecutorService executor;
+	private TileStore variantStore;
+	private TranscodingSettings settings;
+	private Clock clock;
+	private final LongAdder transcodings = new LongAdder();
+	private final LongAdder revalidations = new LongAdder();
+	private final LongAdder skippedTranscodings = new LongAdder();
+	private final LongAdder upstreamVariants = new LongAdder();
+	private final LongAdder bytesSaved = new LongAdder();
+
+	public TranscodingIiifAdapter(IiifAdapter iiifAdapter, ImageTranscoder transcoder,
+			ExecutorService executor, TileStore variantStore, TranscodingSettings settings,
+			Clock clock) {
+		this.iiifAdapter = iiifAdapter;
+		this.transcoder = transcoder;
+		this.executor = executor;
+		this.variantStore = variantStore;
+		this.settings = settings;
+		this.clock = clock;
+	}
+
+	@Override
+	public IiifAdapterResponse callIiifServer(IiifParameters iiifParameters) {
+		if (!"GET".equals(iiifParameters.method())
+				|| !isSourceFormat(readFormat(iiifParameters.uri()))) {
+			return iiifAdapter.callIiifServer(iiifParameters);
+		}
+		Optional<ImageFormat> target = chooseTarget(iiifParameters.headersMap());
+		if (target.isEmpty()) {
+			return withVary(iiifAdapter.callIiifServer(iiifParameters));
+		}
+		if (settings.upstreamFormats().contains(target.get())) {
+			return callForUpstreamVariant(iiifParameters, target.get());
+		}
+		return callForTranscodedVariant(iiifParameters, target.get());
+	}
+
+	private Optional<ImageFormat> readFormat(String uri) {
+		int extensionStart = findExtensionStart(uri);
+		if (extensionStart < 0) {
+			return Optional.empty();
+		}
+		return ImageFormat.fromExtension(uri.substring(extensionStart, findPathEnd(uri)));
+	}
+
+	private boolean isSourceFormat(Optional<ImageFormat> format) {
+		return format.isPresent() && SOURCE_FORMATS.contains(format.get());
+	}
+
+	private int findExtensionStart(String uri) {
+		int pathEnd = findPathEnd(uri);
+		int segmentStart = uri.lastIndexOf('/', pathEnd - 1) + 1;
+		int dot = uri.lastIndexOf('.', pathEnd - 1);
+		return dot >= segmentStart ? dot + 1 : -1;
+	}
+
+	private int findPathEnd(String uri) {
+		int queryStart = uri.indexOf('?');
+		return queryStart < 0 ? uri.length() : queryStart;
+	}
+
+	private Optional<ImageFormat> chooseTarget(Map<String, String> requestHeaders) {
+		Optional<String> accept = Headers.find(requestHeaders, ACCEPT);
+		if (accept.isEmpty()) {
+			return Optional.empty();
+		}
+		ImageFormat target = null;
+		double targetQuality = 0;
+		for (ImageFormat format : TARGET_FORMATS) {
+			double quality = AcceptHeader.qualityOf(accept.get(), format.mediaType());
+			if (quality > targetQuality && canProduce(format)) {
+				target = format;
+				targetQuality = quality;
+			}
+		}
+		return Optional.ofNullable(target);
+	}
+
+	private boolean canProduce(ImageFormat format) {
+		return settings.upstreamFormats().contains(format) || transcoder.canEncode(format);
+	}
+
+	private IiifAdapterResponse callForUpstreamVariant(IiifParameters iiifParameters,
+			ImageFormat target) {
+		String variantUri = replaceExtension(iiifParameters.uri(), target);
+		IiifAdapterResponse response = iiifAdapter.callIiifServer(
+				new IiifParameters(variantUri, "GET", iiifParameters.headersMap()));
+		if (response.status() >= HTTP_BAD_REQUEST) {
+			closeBody(response.body());
+			return withVary(iiifAdapter.callIiifServer(iiifParameters));
+		}
+		upstreamVariants.increment();
+		return withVary(response);
+	}
+
+	private String replaceExtension(String uri, ImageFormat format) {
+		return uri.substring(0, findExtensionStart(uri)) + format.extension()
+				+ uri.substring(findPathEnd(uri));
+	}
+
+	private void closeBody(InputStream body) {
+		if (body == null) {
+			return;
+		}
+		try {
+			body.close();
+		} catch (IOException e) {
+			// the body is not wanted
+		}
+	}
+
+	private IiifAdapterResponse callForTranscodedVariant(IiifParameters iiifParameters,
+			ImageFormat target) {
+		String key = TileCacheKey.normalizeUri(iiifParameters.uri()) + "\nVariant: "
+				+ target.extension();
+		Optional<CachedTile> variant = variantStore.get(key);
+		if (variant.isEmpty()) {
+			IiifAdapterResponse response = iiifAdapter
+					.callIiifServer(createSourceRequest(iiifParameters));
+			return transcodeSource(key, response, target, iiifParameters);
+		}
+		if (isFresh(variant.get())) {
+			return createResponseFromVariant(variant.get(), iiifParameters);
+		}
+		return revalidate(key, variant.get(), target, iiifParameters);
+	}
+
+	private boolean isFresh(CachedTile variant) {
+		Duration lifetime = ConditionalRequests.freshnessLifetime(variant.headers(),
+				settings.revalidateAfter());
+		return clock.millis() - variant.storedAtMillis() < lifetime.toMillis();
+	}
+
+	private IiifAdapterResponse revalidate(String key, CachedTile variant, ImageFormat target,
+			IiifParameters iiifParameters) {
+		revalidations.increment();
+		IiifAdapterResponse response = iiifAdapter
+				.callIiifServer(createRevalidation(variant, iiifParameters));
+		if (response.status() == HTTP_NOT_MODIFIED) {
+			return renewVariant(key, variant, response, iiifParameters);
+		}
+		variantStore.remove(key);
+		return transcodeSource(key, response, target, iiifParameters);
+	}
+
+	private IiifParameters createRevalidation(CachedTile variant,
+			IiifParameters iiifParameters) {
+		Map<String, String> sourceValidators = new LinkedHashMap<>();
+		Headers.find(variant.headers(), SOURCE_ETAG)
+				.ifPresent(etag -> sourceValidators.put(ETAG, etag));
+		Headers.find(variant.headers(), LAST_MODIFIED)
+				.ifPresent(lastModified -> sourceValidators.put(LAST_MODIFIED, lastModified));
+		Map<String, String> headers = ConditionalRequests.createRevalidationHeaders(
+				createSourceRequest(iiifParameters).headersMap(), sourceValidators);
+		return new IiifParameters(iiifParameters.uri(), "GET", headers);
+	}
+
+	private IiifAdapterResponse renewVariant(String key, CachedTile variant,
+			IiifAdapterResponse notModified, IiifParameters iiifParameters) {
+		closeBody(notModified.body());
+		Map<String, String> notModifiedHeaders = new LinkedHashMap<>(notModified.headers());
+		removeHeader(notModifiedHeaders, ETAG);
+		removeHeader(notModifiedHeaders, VARY);
+		CachedTile renewed = new CachedTile(
+				Collections.unmodifiableMap(ConditionalRequests
+						.updateStoredHeaders(variant.headers(), notModifiedHeaders)),
+				variant.body(), clock.millis());
+		variantStore.put(key, renewed);
+		return createResponseFromVariant(renewed, iiifParameters);
+	}
+
+	private IiifAdapterResponse transcodeSource(String key, IiifAdapterResponse response,
+			ImageFormat target, IiifParameters iiifParameters) {
+		if (response.status() != HTTP_OK) {
+			return withVary(response);
+		}
+		try {
+			return transcodeIfPossible(key, response, target, iiifParameters);
+		} catch (IOException e) {
+			throw BinaryException.withMessageAndException(
+					"Error while reading image to transcode: " + e.getMessage(), e);
+		}
+	}
+
+	private IiifParameters createSourceRequest(IiifParameters iiifParameters) {
+		Map<String, String> headers = new LinkedHashMap<>(iiifParameters.headersMap());
+		for (String name : SOURCE_REQUEST_HEADERS_TO_REMOVE) {
+			headers.keySet().removeIf(name::equalsIgnoreCase);
+		}
+		return new IiifParameters(iiifParameters.uri(), "GET", headers);
+	}
+
+	private IiifAdapterResponse transcodeIfPossible(String key, IiifAdapterResponse response,
+			ImageFormat target, IiifParameters iiifParameters) throws IOException {
+		BufferedBody source = BufferedBody.readUpTo(response.body(), settings.maxSourceBytes());
+		if (!source.isComplete()) {
+			skippedTranscodings.increment();
+			return createSourceResponse(response, source);
+		}
+		Optional<CachedTile> variant = transcodeOnExecutor(key, response.headers(),
+				source.getBytes(), target);
+		if (variant.isEmpty()) {
+			skippedTranscodings.increment();
+			return createSourceResponse(response, source);
+		}
+		return createResponseFromVariant(variant.get(), iiifParameters);
+	}
+
+	private IiifAdapterResponse createSourceResponse(IiifAdapterResponse response,
+			BufferedBody source) {
+		return withVary(
+				new IiifAdapterResponse(HTTP_OK, response.headers(), source.asInputStream()));
+	}
+
+	private Optional<CachedTile> transcodeOnExecutor(String key, Map<String, String> headers,
+			byte[] source, ImageFormat target) {
+		CompletableFuture<CachedTile> variant;
+		try {
+			variant = CompletableFuture.supplyAsync(
+					() -> transcodeAndStore(key, headers, source, target), executor);
+		} catch (RejectedExecutionException e) {
+			return Optional.empty();
+		}
+		try {
+			return Optional.of(variant.get(settings.timeout().toNanos(), TimeUnit.NANOSECONDS));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return Optional.empty();
+		} catch (ExecutionException | TimeoutException e) {
+			return Optional.empty();
+		}
+	}
+
+	private CachedTile transcodeAndStore(String key, Map<String, String> headers, byte[] source,
+			ImageFormat target) {
+		byte[] transcoded;
+		try {
+			transcoded = transcoder.transcode(source, target);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		transcodings.increment();
+		CachedTile variant = transcoded.length < source.length
+				? createVariant(headers, source.length, transcoded, target)
+				: createVariant(headers, source.length, source, null);
+		if (!ConditionalRequests.isMarkedNotToBeStored(headers)) {
+			variantStore.put(key, variant);
+		}
+		return variant;
+	}
+
+	private CachedTile createVariant(Map<String, String> sourceHeaders, int sourceLength,
+			byte[] body, ImageFormat format) {
+		Map<String, String> headers = new LinkedHashMap<>(sourceHeaders);
+		removeHeader(headers, CONTENT_LENGTH);
+		removeHeader(headers, VARY);
+		if (format != null) {
+			removeHeader(headers, CONTENT_TYPE);
+			headers.put(CONTENT_TYPE, format.mediaType());
+			Headers.find(sourceHeaders, ETAG).ifPresent(etag -> {
+				removeHeader(headers, ETAG);
+				headers.put(ETAG, createVariantEntityTag(etag, format));
+			});
+		}
+		headers.put(CONTENT_LENGTH, String.valueOf(body.length));
+		headers.put(VARY, addAccept(Headers.find(sourceHeaders, VARY)));
+		headers.put(SOURCE_LENGTH, String.valueOf(sourceLength));
+		Headers.find(sourceHeaders, ETAG).ifPresent(etag -> headers.put(SOURCE_ETAG, etag));
+		return new CachedTile(Collections.unmodifiableMap(headers), ByteBuffer.wrap(body),
+				clock.millis());
+	}
+
+	private void removeHeader(Map<String, String> headers, String name) {
+		headers.keySet().removeIf(name::equalsIgnoreCase);
+	}
+
+	private String createVariantEntityTag(String etag, ImageFormat format) {
+		String trimmed = etag.trim();
+		if (trimmed.endsWith("\"")) {
+			return trimmed.substring(0, trimmed.length() - 1) + "." + format.extension() + "\"";
+		}
+		return trimmed + "." + format.extension();
+	}
+
+	private IiifAdapterResponse createResponseFromVariant(CachedTile variant,
+			IiifParameters iiifParameters) {
+		if (ConditionalRequests.isNotModified(iiifParameters.headersMap(), variant.headers())) {
+			return new IiifAdapterResponse(HTTP_NOT_MODIFIED,
+					ConditionalRequests.createNotModifiedHeaders(variant.headers()),
+					InputStream.nullInputStream());
+		}
+		Map<String, String> headers = new LinkedHashMap<>(variant.headers());
+		long sourceLength = Long.parseLong(headers.remove(SOURCE_LENGTH));
+		headers.remove(SOURCE_ETAG);
+		bytesSaved.add(sourceLength - variant.size());
+		return new IiifAdapterResponse(HTTP_OK, headers, variant.bodyAsInputStream());
+	}
+
+	private IiifAdapterResponse withVary(IiifAdapterResponse response) {
+		Map<String, String> headers = new LinkedHashMap<>(response.headers());
+		Optional<String> vary = Headers.find(headers, VARY);
+		removeHeader(headers, VARY);
+		headers.put(VARY, addAccept(vary));
+		return new IiifAdapterResponse(response.status(), headers, response.body());
+	}
+
+	private String addAccept(Optional<String> vary) {
+		if (vary.isEmpty() || vary.get().isBlank()) {
+			return ACCEPT;
+		}
+		for (String name : vary.get().split(",")) {
+			String trimmed = name.trim();
+			if ("*".equals(trimmed) || ACCEPT.equalsIgnoreCase(trimmed)) {
+				return vary.get();
+			}
+		}
+		return vary.get() + ", " + ACCEPT;
+	}
+
+	/**
+	 * getTranscodings returns the number of images that have been transcoded.
+	 */
+	public long getTranscodings() {
+		return transcodings.sum();
+	}
+
+	/**
+	 * getRevalidations returns the number of kept images whose source was revalidated with the
+	 * image server.
+	 */
+	public long getRevalidations() {
+		return revalidations.sum();
+	}
+
+	/**
+	 * getSkippedTranscodings returns the number of images sent as they are, because they were too
+	 * large, could not be transcoded or were not transcoded in time.
+	 */
+	public long getSkippedTranscodings() {
+		return skippedTranscodings.sum();
+	}
+
+	/**
+	 * getUpstreamVariants returns the number of images the image server was asked to send in the
+	 * format the client prefers.
+	 */
+	public long getUpstreamVariants() {
+		return upstreamVariants.sum();
+	}
+
+	/**
+	 * getBytesSaved returns the number of bytes fewer sent because images were sent transcoded,
+	 * summed over every response with a transcoded image.
+	 */
+	public long getBytesSaved() {
+		return bytesSaved.sum();
+	}
+
+	IiifAdapter onlyForTestGetIiifAdapter() {
+		return iiifAdapter;
+	}
+
+	ImageTranscoder onlyForTestGetTranscoder() {
+		return transcoder;
+	}
+
+	ExecutorService onlyForTestGetExecutor() {
+		return executor;
+	}
+
+	TileStore onlyForTestGetVariantStore() {
+		return variantStore;
+	}
+
+	TranscodingSettings onlyForTestGetSettings() {
+		return settings;
+	}
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.MessageFormat;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import se.uu.ub.cora.binary.BinaryException;
+import se.uu.ub.cora.binary.iiif.IiifAdapter;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.async.AsyncIiifAdapter;
+import se.uu.ub.cora.iiif.async.ThreadPerCallExecutors;
+import se.uu.ub.cora.iiif.metrics.MeasuredInputStream;
+
+/**
+ * VirtualThreadIiifAdapter lets a blocking adapter, such as {@link IiifAdapterImp}, be called
+ * asynchronously by running each call from {@link #callIiifServerAsync(IiifParameters)} on its
+ * own thread from an executor, normally one from {@link ThreadPerCallExecutors} using virtual
+ * threads.
+ * <p>
+ * Calls from {@link #callIiifServer(IiifParameters)} are made on the calling thread, as a caller
+ * that blocks gains nothing from handing its call to another thread and waiting for it.
+ * <p>
+ * As threads are then cheap, the number of calls made to the image server at the same time is
+ * limited by a number of permits, so that a burst of requests does not become as many
+ * simultaneous decodes. A call holds its permit until the body of its response has been read to
+ * the end or closed, as the image server is busy with the call until then, and a call that
+ * cannot get a permit within the permit timeout fails.
+ */
+public class VirtualThreadIiifAdapter implements AsyncIiifAdapter {
+	private IiifAdapter iiifAdapter;
+	private ExecutorService executor;
+	private int maxConcurrentCalls;
+	private Duration permitTimeout;
+	private final Semaphore permits;
+	private final LongAdder permitTimeouts = new LongAdder();
+
+	public VirtualThreadIiifAdapter(IiifAdapter iiifAdapter, ExecutorService executor,
+			int maxConcurrentCalls, Duration permitTimeout) {
+		this.iiifAdapter = iiifAdapter;
+		this.executor = executor;
+		this.maxConcurrentCalls = maxConcurrentCalls;
+		this.permitTimeout = permitTimeout;
+		permits = new Semaphore(maxConcurrentCalls, true);
+	}
+
+	@Override
+	public IiifAdapterResponse callIiifServer(IiifParameters iiifParameters) {
+		return callWithPermit(iiifParameters);
+	}
+
+	private IiifAdapterResponse callWithPermit(IiifParameters iiifParameters) {
+		acquirePermit(iiifParameters);
+		IiifAdapterResponse response;
+		try {
+			response = iiifAdapter.callIiifServer(iiifParameters);
+		} catch (RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+		return new IiifAdapterResponse(response.status(), response.headers(),
+				new MeasuredInputStream(response.body(), bytesRead -> permits.release()));
+	}
+
+	private void acquirePermit(IiifParameters iiifParameters) {
+		try {
+			tryToAcquirePermit(iiifParameters);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw errorWhileCallingIiifServer(
+					"Interrupted while waiting for permit to call iiifServer", iiifParameters);
+		}
+	}
+
+	private void tryToAcquirePermit(IiifParameters iiifParameters) throws InterruptedException {
+		if (!permits.tryAcquire(permitTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+			permitTimeouts.increment();
+			throw errorWhileCallingIiifServer(MessageFormat.format(
+					"No permit to call iiifServer within {0} ms, {1} calls in progress",
+					permitTimeout.toMillis(), maxConcurrentCalls), iiifParameters);
+		}
+	}
+
+	private BinaryException errorWhileCallingIiifServer(String reason,
+			IiifParameters iiifParameters) {
+		String errorMessage = "{0} using method: {1}, and URI: {2}";
+		return BinaryException.withMessage(MessageFormat.format(errorMessage, reason,
+				iiifParameters.method(), iiifParameters.uri()));
+	}
+
+	@Override
+	public CompletableFuture<IiifAdapterResponse> callIiifServerAsync(
+			IiifParameters iiifParameters) {
+		CompletableFuture<IiifAdapterResponse> response = new CompletableFuture<>();
+		try {
+			Future<?> call = executor.submit(() -> completeWithCall(response, iiifParameters));
+			response.whenComplete((iiifResponse, exception) -> {
+				if (response.isCancelled()) {
+					call.cancel(true);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			response.completeExceptionally(BinaryException.withMessageAndException(
+					"Could not start call to iiifServer: " + e.getMessage(), e));
+		}
+		return response;
+	}
+
+	private void completeWithCall(CompletableFuture<IiifAdapterResponse> response,
+			IiifParameters iiifParameters) {
+		if (response.isDone()) {
+			return;
+		}
+		try {
+			IiifAdapterResponse iiifResponse = callWithPermit(iiifParameters);
+			if (!response.complete(iiifResponse)) {
+				closeQuietly(iiifResponse.body());
+			}
+		} catch (RuntimeException e) {
+			response.completeExceptionally(e);
+		}
+	}
+
+	private void closeQuietly(InputStream body) {
+		try {
+			body.close();
+		} catch (IOException e) {
+			// the response was not wanted
+		}
+	}
+
+	/**
+	 * getCallsInProgress returns the number of calls currently holding a permit, including calls
+	 * whose response bodies are still being read.
+	 */
+	public int getCallsInProgress() {
+		return maxConcurrentCalls - permits.availablePermits();
+	}
+
+	/**
+	 * getWaitingCalls returns an estimate of the number of calls waiting for a permit.
+	 */
+	public int getWaitingCalls() {
+		return permits.getQueueLength();
+	}
+
+	/**
+	 * getPermitTimeouts returns the number of calls that failed as no permit became available
+	 * within the permit timeout.
+	 */
+	public long getPermitTimeouts() {
+		return permitTimeouts.sum();
+	}
+
+	IiifAdapter onlyForTestGetIiifAdapter() {
+		return iiifAdapter;
+	}
+
+	ExecutorService onlyForTestGetExecutor() {
+		return executor;
+	}
+
+	int onlyForTestGetMaxConcurrentCalls() {
+		return maxConcurrentCalls;
+	}
+
+	Duration onlyForTestGetPermitTimeout() {
+		return permitTimeout;
+	}
+}
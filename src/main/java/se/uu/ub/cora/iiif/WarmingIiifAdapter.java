@@ -0,0 +1,69 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapter;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.uri.IiifIdentifiers;
+import se.uu.ub.cora.iiif.uri.IiifRequestType;
+import se.uu.ub.cora.iiif.warm.CacheWarmer;
+
+/**
+ * WarmingIiifAdapter passes requests on to the adapter it decorates and lets its
+ * {@link CacheWarmer} warm the caches below for images that are being looked at. The first
+ * successful info.json request for an image, which is what a viewer asks for before any tile,
+ * schedules warm-up of that image, so that the tiles of the top zoom levels are cached by the
+ * time the viewer, or the next visitor, asks for them.
+ * <p>
+ * Live traffic, which warm-up pauses for, is counted where calls reach the image server, by a
+ * {@link LiveCallCountingIiifAdapter}, so that requests answered from the caches are not.
+ */
+public class WarmingIiifAdapter implements IiifAdapter {
+	private static final int HTTP_OK = 200;
+	private IiifAdapter iiifAdapter;
+	private CacheWarmer cacheWarmer;
+
+	public WarmingIiifAdapter(IiifAdapter iiifAdapter, CacheWarmer cacheWarmer) {
+		this.iiifAdapter = iiifAdapter;
+		this.cacheWarmer = cacheWarmer;
+	}
+
+	@Override
+	public IiifAdapterResponse callIiifServer(IiifParameters iiifParameters) {
+		IiifAdapterResponse response = iiifAdapter.callIiifServer(iiifParameters);
+		if (response.status() == HTTP_OK && isInfoRequest(iiifParameters)) {
+			cacheWarmer.warmImage(IiifIdentifiers.fromUri(iiifParameters.uri()));
+		}
+		return response;
+	}
+
+	private boolean isInfoRequest(IiifParameters iiifParameters) {
+		return "GET".equals(iiifParameters.method())
+				&& IiifRequestType.isInfo(iiifParameters.uri());
+	}
+
+	public CacheWarmer getCacheWarmer() {
+		return cacheWarmer;
+	}
+
+	IiifAdapter onlyForTestGetIiifAdapter() {
+		return iiifAdapter;
+	}
+}
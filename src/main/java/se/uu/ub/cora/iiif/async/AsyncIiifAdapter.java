@@ -0,0 +1,42 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.async;
+
+import java.util.concurrent.CompletableFuture;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapter;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+
+/**
+ * AsyncIiifAdapter is an {@link IiifAdapter} that can call the image server without holding the
+ * calling thread while the call is made. Callers that can complete their own response later,
+ * such as an asynchronous servlet, can check for this interface and release their thread.
+ */
+public interface AsyncIiifAdapter extends IiifAdapter {
+
+	/**
+	 * callIiifServerAsync returns a future that completes with the response as soon as its
+	 * headers have been received. The body is read from the response as with
+	 * {@link #callIiifServer(IiifParameters)}. The future completes exceptionally with a
+	 * {@link se.uu.ub.cora.binary.BinaryException} if the call fails or times out, and
+	 * cancelling it cancels the call.
+	 */
+	CompletableFuture<IiifAdapterResponse> callIiifServerAsync(IiifParameters iiifParameters);
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.async;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ThreadPerCallExecutors creates executors that start a new thread for each blocking call to the
+ * image server. On a runtime with virtual threads (Java 21 and later) the threads are virtual, so
+ * a call waiting for the image server does not hold a platform thread. On older runtimes a cached
+ * pool of platform daemon threads is used instead.
+ */
+public final class ThreadPerCallExecutors {
+	private static final MethodHandle NEW_VIRTUAL_EXECUTOR = findNewVirtualThreadExecutor();
+
+	private ThreadPerCallExecutors() {
+	}
+
+	private static MethodHandle findNewVirtualThreadExecutor() {
+		try {
+			MethodType returningExecutor = MethodType.methodType(ExecutorService.class);
+			return MethodHandles.publicLookup().findStatic(Executors.class,
+					"newVirtualThreadPerTaskExecutor", returningExecutor);
+		} catch (NoSuchMethodException | IllegalAccessException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * virtualThreadsAreAvailable returns true if executors created by this class use virtual
+	 * threads.
+	 */
+	public static boolean virtualThreadsAreAvailable() {
+		return NEW_VIRTUAL_EXECUTOR != null;
+	}
+
+	public static ExecutorService newThreadPerCallExecutor() {
+		if (virtualThreadsAreAvailable()) {
+			return newVirtualThreadPerTaskExecutor();
+		}
+		return Executors.newCachedThreadPool(new DaemonThreadFactory());
+	}
+
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			return (ExecutorService) NEW_VIRTUAL_EXECUTOR.invokeExact();
+		} catch (Throwable e) {
+			throw new IllegalStateException("Could not create virtual thread executor", e);
+		}
+	}
+
+	private static final class DaemonThreadFactory implements ThreadFactory {
+		private final AtomicInteger threadNumber = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "iiif-call-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.backend;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ActiveHealthChecker requests the check path of each backend at a fixed interval. A backend
+ * that answers with a status below 500 within the check timeout passes, any other outcome takes
+ * it out of use until it passes again.
+ */
+public class ActiveHealthChecker implements AutoCloseable {
+	private static final int HTTP_INTERNAL_SERVER_ERROR = 500;
+	private final List<Backend> backends;
+	private final HealthSettings healthSettings;
+	private final HttpClient httpClient;
+	private final ScheduledExecutorService scheduler = Executors
+			.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "iiif-backend-health-check");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+	public ActiveHealthChecker(List<Backend> backends, HealthSettings healthSettings,
+			HttpClient httpClient) {
+		this.backends = List.copyOf(backends);
+		this.healthSettings = healthSettings;
+		this.httpClient = httpClient;
+	}
+
+	/**
+	 * start schedules checks of all backends at the check interval, the first at once.
+	 */
+	public void start() {
+		long intervalNanos = healthSettings.checkInterval().toNanos();
+		scheduler.scheduleWithFixedDelay(this::checkAllAndWait, 0, intervalNanos,
+				TimeUnit.NANOSECONDS);
+	}
+
+	private void checkAllAndWait() {
+		checkAll().join();
+	}
+
+	/**
+	 * checkAll checks all backends once and returns a future that completes when every check is
+	 * done.
+	 */
+	public CompletableFuture<Void> checkAll() {
+		CompletableFuture<?>[] checks = new CompletableFuture<?>[backends.size()];
+		for (int i = 0; i < checks.length; i++) {
+			checks[i] = check(backends.get(i));
+		}
+		return CompletableFuture.allOf(checks);
+	}
+
+	private CompletableFuture<Void> check(Backend backend) {
+		try {
+			return httpClient.sendAsync(createRequest(backend), BodyHandlers.discarding())
+					.handle((response, exception) -> {
+						backend.setPassingHealthChecks(isHealthy(response, exception));
+						return null;
+					});
+		} catch (IllegalArgumentException e) {
+			backend.setPassingHealthChecks(false);
+			return CompletableFuture.completedFuture(null);
+		}
+	}
+
+	private HttpRequest createRequest(Backend backend) {
+		return HttpRequest.newBuilder(URI.create(backend.getUrl() + healthSettings.checkPath()))
+				.timeout(healthSettings.checkTimeout()).GET().build();
+	}
+
+	private boolean isHealthy(HttpResponse<Void> response, Throwable exception) {
+		return exception == null && response.statusCode() < HTTP_INTERNAL_SERVER_ERROR;
+	}
+
+	@Override
+	public void close() {
+		scheduler.shutdownNow();
+	}
+
+	List<Backend> onlyForTestGetBackends() {
+		return backends;
+	}
+}
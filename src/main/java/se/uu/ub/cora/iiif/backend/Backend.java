@@ -0,0 +1,146 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.backend;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapter;
+
+/**
+ * Backend is one image server among several, together with the adapter that calls it and what is
+ * known about its health and load.
+ * <p>
+ * A backend is taken out of use for the ejection time when a number of calls in a row have
+ * failed, and while active health checks find it unhealthy.
+ */
+public class Backend {
+	private final String url;
+	private final IiifAdapter iiifAdapter;
+	private final HealthSettings healthSettings;
+	private final LongSupplier nanoTime;
+	private final long hashSeed;
+	private final AtomicInteger outstandingCalls = new AtomicInteger();
+	private final AtomicInteger consecutiveFailures = new AtomicInteger();
+	private final LongAdder calls = new LongAdder();
+	private final LongAdder ejections = new LongAdder();
+	private volatile long ejectedUntilNanos;
+	private volatile boolean ejected;
+	private volatile boolean passingHealthChecks = true;
+
+	public Backend(String url, IiifAdapter iiifAdapter, HealthSettings healthSettings) {
+		this(url, iiifAdapter, healthSettings, System::nanoTime);
+	}
+
+	Backend(String url, IiifAdapter iiifAdapter, HealthSettings healthSettings,
+			LongSupplier nanoTime) {
+		this.url = url;
+		this.iiifAdapter = iiifAdapter;
+		this.healthSettings = healthSettings;
+		this.nanoTime = nanoTime;
+		hashSeed = RendezvousSelector.hash(url);
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public IiifAdapter getIiifAdapter() {
+		return iiifAdapter;
+	}
+
+	long getHashSeed() {
+		return hashSeed;
+	}
+
+	/**
+	 * isAvailable returns true if the backend passes its health checks and is not ejected after
+	 * failed calls.
+	 */
+	public boolean isAvailable() {
+		return passingHealthChecks && !isEjected();
+	}
+
+	private boolean isEjected() {
+		return ejected && nanoTime.getAsLong() - ejectedUntilNanos < 0;
+	}
+
+	public void callStarted() {
+		outstandingCalls.incrementAndGet();
+		calls.increment();
+	}
+
+	public void callSucceeded() {
+		outstandingCalls.decrementAndGet();
+		consecutiveFailures.set(0);
+	}
+
+	/**
+	 * callRejected ends a call that was turned away before it reached the image server, which
+	 * says nothing about the health of the backend.
+	 */
+	public void callRejected() {
+		outstandingCalls.decrementAndGet();
+	}
+
+	public void callFailed() {
+		outstandingCalls.decrementAndGet();
+		if (consecutiveFailures.incrementAndGet() >= healthSettings.failureThreshold()) {
+			eject();
+		}
+	}
+
+	private void eject() {
+		consecutiveFailures.set(0);
+		ejectedUntilNanos = nanoTime.getAsLong() + healthSettings.ejectionTime().toNanos();
+		ejected = true;
+		ejections.increment();
+	}
+
+	void setPassingHealthChecks(boolean passing) {
+		passingHealthChecks = passing;
+	}
+
+	/**
+	 * getOutstandingCalls returns the number of calls to the backend currently in progress.
+	 */
+	public int getOutstandingCalls() {
+		return outstandingCalls.get();
+	}
+
+	/**
+	 * getCalls returns the total number of calls made to the backend.
+	 */
+	public long getCalls() {
+		return calls.sum();
+	}
+
+	/**
+	 * getEjections returns the number of times the backend has been taken out of use after
+	 * failed calls.
+	 */
+	public long getEjections() {
+		return ejections.sum();
+	}
+
+	public boolean isPassingHealthChecks() {
+		return passingHealthChecks;
+	}
+}
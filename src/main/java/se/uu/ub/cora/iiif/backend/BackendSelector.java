@@ -0,0 +1,38 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.backend;
+
+import java.util.List;
+
+/**
+ * BackendSelector chooses the backend to call for a request.
+ */
+public interface BackendSelector {
+
+	/**
+	 * select returns one of the candidates for a request for the image with the given
+	 * identifier.
+	 *
+	 * @param identifier
+	 *            the identifier of the requested image
+	 * @param candidates
+	 *            the backends to choose between, never empty
+	 */
+	Backend select(String identifier, List<Backend> candidates);
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.backend;
+
+import java.time.Duration;
+
+/**
+ * HealthSettings holds the settings for passive and active health checking of backends.
+ *
+ * @param failureThreshold
+ *            the number of calls in a row that must fail before a backend is taken out of use
+ * @param ejectionTime
+ *            how long a backend is kept out of use after failing
+ * @param checkInterval
+ *            the time between active health checks, or zero for no active checks
+ * @param checkTimeout
+ *            how long an active health check waits for an answer
+ * @param checkPath
+ *            the path, relative to the backend URL, requested by active health checks
+ */
+public record HealthSettings(int failureThreshold, Duration ejectionTime, Duration checkInterval,
+		Duration checkTimeout, String checkPath) {
+}
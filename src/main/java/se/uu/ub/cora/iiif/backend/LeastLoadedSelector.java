@@ -0,0 +1,62 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.backend;
+
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.random.RandomGenerator;
+
+/**
+ * LeastLoadedSelector chooses by the power of two choices. Two different backends are picked at
+ * random and the one with the fewest outstanding calls is chosen, which spreads load almost as
+ * well as always choosing the least loaded backend, without every request going to the same
+ * backend between updates of the counts.
+ */
+public class LeastLoadedSelector implements BackendSelector {
+	private final Supplier<RandomGenerator> randomSupplier;
+
+	/**
+	 * @param randomSupplier
+	 *            supplies the random generator to use on the calling thread, such as
+	 *            ThreadLocalRandom::current
+	 */
+	public LeastLoadedSelector(Supplier<RandomGenerator> randomSupplier) {
+		this.randomSupplier = randomSupplier;
+	}
+
+	@Override
+	public Backend select(String identifier, List<Backend> candidates) {
+		int size = candidates.size();
+		if (size == 1) {
+			return candidates.get(0);
+		}
+		RandomGenerator random = randomSupplier.get();
+		int first = random.nextInt(size);
+		int second = (first + 1 + random.nextInt(size - 1)) % size;
+		return leastLoadedOf(candidates.get(first), candidates.get(second));
+	}
+
+	private Backend leastLoadedOf(Backend first, Backend second) {
+		return second.getOutstandingCalls() < first.getOutstandingCalls() ? second : first;
+	}
+
+	Supplier<RandomGenerator> onlyForTestGetRandomSupplier() {
+		return randomSupplier;
+	}
+}
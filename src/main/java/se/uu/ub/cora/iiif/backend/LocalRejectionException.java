@@ -0,0 +1,44 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.backend;
+
+/**
+ * LocalRejectionException is thrown when a request to a backend is turned away before it is sent
+ * to the image server, such as by a concurrency limit. The image server never saw the request,
+ * so the rejection says nothing about its health or latency, and the request can be made to
+ * another backend instead. It has no stack trace, as it is an expected answer under load and not
+ * an error.
+ */
+public class LocalRejectionException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+	private final long retryAfterSeconds;
+
+	protected LocalRejectionException(String message, long retryAfterSeconds) {
+		super(message, null, false, false);
+		this.retryAfterSeconds = retryAfterSeconds;
+	}
+
+	/**
+	 * getRetryAfterSeconds returns an estimate of how long it takes before the backend takes
+	 * the request.
+	 */
+	public long getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
+}
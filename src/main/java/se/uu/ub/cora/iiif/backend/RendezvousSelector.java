@@ -0,0 +1,66 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.backend;
+
+import java.util.List;
+
+/**
+ * RendezvousSelector sends all requests for an image to the same backend, so that the image
+ * stays decoded in the cache of that backend. The backend with the highest hash of the image
+ * identifier and its URL is chosen, which means that when a backend is taken out of use only
+ * the images it served move, each to the backend with the next highest hash.
+ */
+public class RendezvousSelector implements BackendSelector {
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	@Override
+	public Backend select(String identifier, List<Backend> candidates) {
+		long identifierHash = hash(identifier);
+		Backend selected = null;
+		long highestScore = 0;
+		for (Backend candidate : candidates) {
+			long score = mix(identifierHash ^ candidate.getHashSeed());
+			if (selected == null || Long.compareUnsigned(score, highestScore) > 0) {
+				selected = candidate;
+				highestScore = score;
+			}
+		}
+		return selected;
+	}
+
+	static long hash(String text) {
+		long hash = FNV_OFFSET_BASIS;
+		for (int i = 0; i < text.length(); i++) {
+			hash ^= text.charAt(i);
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
+
+	private static long mix(long value) {
+		long mixed = value;
+		mixed ^= mixed >>> 33;
+		mixed *= 0xff51afd7ed558ccdL;
+		mixed ^= mixed >>> 33;
+		mixed *= 0xc4ceb9fe1a85ec53L;
+		mixed ^= mixed >>> 33;
+		return mixed;
+	}
+}
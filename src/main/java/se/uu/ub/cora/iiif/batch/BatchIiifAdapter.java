@@ -0,0 +1,51 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.batch;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapter;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+
+/**
+ * BatchIiifAdapter is an {@link IiifAdapter} that can make many requests at once, in parallel up
+ * to a limit. Callers that know which requests come next, such as a viewer about to show a
+ * region, can check for this interface and fetch or prefetch them together.
+ * <p>
+ * Results are streamed in the order the calls complete, and a failed call gives a
+ * {@link BatchResult} with its error instead of failing the batch. Closing the stream before all
+ * results are read stops calls not yet started and closes the bodies of responses not read.
+ */
+public interface BatchIiifAdapter extends IiifAdapter {
+
+	/**
+	 * callIiifServerBatch makes all the requests and streams their results. The bodies of the
+	 * responses are read from the results as with {@link #callIiifServer(IiifParameters)}, and
+	 * must be closed by the caller.
+	 */
+	Stream<BatchResult> callIiifServerBatch(List<IiifParameters> iiifParameters);
+
+	/**
+	 * prefetch requests all tiles of the viewport, and of the same region at the next zoom
+	 * level, so that they are cached when the viewer asks for them. The bodies are read and
+	 * closed by the adapter, and the responses in the results have empty bodies.
+	 */
+	Stream<BatchResult> prefetch(Viewport viewport);
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.batch;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+
+/**
+ * BatchResult is the outcome of one request in a batch, either a response or the error the call
+ * failed with. Responses with an error status, such as 404, are responses and not errors.
+ *
+ * @param iiifParameters
+ *            the request
+ * @param response
+ *            the response, or null if the call failed
+ * @param error
+ *            the error the call failed with, or null if there is a response
+ */
+public record BatchResult(IiifParameters iiifParameters, IiifAdapterResponse response,
+		RuntimeException error) {
+
+	public static BatchResult withResponse(IiifParameters iiifParameters,
+			IiifAdapterResponse response) {
+		return new BatchResult(iiifParameters, response, null);
+	}
+
+	public static BatchResult withError(IiifParameters iiifParameters, RuntimeException error) {
+		return new BatchResult(iiifParameters, null, error);
+	}
+
+	public boolean hasResponse() {
+		return error == null;
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+
+/**
+ * TilePyramid finds the tile requests a deep zoom viewer makes for a {@link Viewport}, with the
+ * same regions and sizes as OpenSeadragon asks for from an IIIF image service, so that prefetched
+ * tiles are the ones found in the cache when the viewer asks for them.
+ */
+public final class TilePyramid {
+
+	private TilePyramid() {
+		// only static methods
+	}
+
+	/**
+	 * tilesFor returns GET requests for the tiles covering the part of the viewport that is
+	 * within the image, row by row from the top left.
+	 */
+	public static List<IiifParameters> tilesFor(Viewport viewport) {
+		int regionSize = viewport.tileSize() * viewport.scaleFactor();
+		int left = Math.max(0, viewport.x());
+		int top = Math.max(0, viewport.y());
+		int right = Math.min(viewport.imageWidth(), viewport.x() + viewport.width());
+		int bottom = Math.min(viewport.imageHeight(), viewport.y() + viewport.height());
+		List<IiifParameters> tiles = new ArrayList<>();
+		if (left >= right || top >= bottom) {
+			return tiles;
+		}
+		for (int row = top / regionSize; row <= (bottom - 1) / regionSize; row++) {
+			for (int column = left / regionSize; column <= (right - 1) / regionSize; column++) {
+				tiles.add(createTileRequest(viewport, regionSize, column, row));
+			}
+		}
+		return tiles;
+	}
+
+	/**
+	 * tilesWithNextZoomLevelFor returns the tiles of the viewport followed by the tiles of the
+	 * same region at the next, more detailed, zoom level, the ones a viewer asks for when the
+	 * user zooms in. At full size it returns only the tiles of the viewport.
+	 */
+	public static List<IiifParameters> tilesWithNextZoomLevelFor(Viewport viewport) {
+		List<IiifParameters> tiles = tilesFor(viewport);
+		Viewport nextZoomLevel = viewport.nextZoomLevel();
+		if (nextZoomLevel != viewport) {
+			tiles.addAll(tilesFor(nextZoomLevel));
+		}
+		return tiles;
+	}
+
+	private static IiifParameters createTileRequest(Viewport viewport, int regionSize, int column,
+			int row) {
+		int regionX = column * regionSize;
+		int regionY = row * regionSize;
+		int regionWidth = Math.min(regionSize, viewport.imageWidth() - regionX);
+		int regionHeight = Math.min(regionSize, viewport.imageHeight() - regionY);
+		int tileWidth = ceilDivide(regionWidth, viewport.scaleFactor());
+		String uri = viewport.identifier() + "/" + regionX + "," + regionY + "," + regionWidth
+				+ "," + regionHeight + "/" + tileWidth + ",/0/default.jpg";
+		return new IiifParameters(uri, "GET", Map.of());
+	}
+
+	private static int ceilDivide(int dividend, int divisor) {
+		return (dividend + divisor - 1) / divisor;
+	}
+}
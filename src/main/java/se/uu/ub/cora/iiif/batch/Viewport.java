@@ -0,0 +1,67 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.batch;
+
+/**
+ * Viewport describes the part of an image a viewer shows, in the way a deep zoom viewer asks for
+ * it: a region of the full size image, seen at a scale factor from a pyramid of square tiles.
+ *
+ * @param identifier
+ *            the identifier of the image
+ * @param imageWidth
+ *            the width of the full size image, in pixels
+ * @param imageHeight
+ *            the height of the full size image, in pixels
+ * @param scaleFactor
+ *            how many full size pixels each pixel of a tile covers, 1 for full size
+ * @param tileSize
+ *            the width and height of the tiles, in pixels of the tile
+ * @param x
+ *            the left edge of the region shown, in full size pixels
+ * @param y
+ *            the top edge of the region shown, in full size pixels
+ * @param width
+ *            the width of the region shown, in full size pixels
+ * @param height
+ *            the height of the region shown, in full size pixels
+ */
+public record Viewport(String identifier, int imageWidth, int imageHeight, int scaleFactor,
+		int tileSize, int x, int y, int width, int height) {
+
+	public Viewport {
+		if (scaleFactor < 1) {
+			throw new IllegalArgumentException("scaleFactor must be at least 1");
+		}
+		if (tileSize < 1) {
+			throw new IllegalArgumentException("tileSize must be at least 1");
+		}
+	}
+
+	/**
+	 * nextZoomLevel returns the same region seen at the next, more detailed, zoom level, which
+	 * has half the scale factor. At full size it returns this viewport.
+	 */
+	public Viewport nextZoomLevel() {
+		if (scaleFactor == 1) {
+			return this;
+		}
+		return new Viewport(identifier, imageWidth, imageHeight, scaleFactor / 2, tileSize, x, y,
+				width, height);
+	}
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.breaker;
+
+import java.time.Duration;
+
+/**
+ * BreakerSettings holds the settings for a {@link CircuitBreaker}.
+ *
+ * @param failureRatePercent
+ *            the percentage of failed calls in the window that opens the circuit
+ * @param windowSize
+ *            the number of most recent calls the failure rate is computed over
+ * @param minimumCalls
+ *            the number of calls that must be in the window before the circuit can open
+ * @param openDuration
+ *            how long the circuit stays open before probe calls are let through
+ * @param probeCalls
+ *            the number of probe calls that must succeed before the circuit closes again
+ */
+public record BreakerSettings(int failureRatePercent, int windowSize, int minimumCalls,
+		Duration openDuration, int probeCalls) {
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.breaker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * CircuitBreaker stops calls to an image server that is failing, so that requests are answered
+ * at once instead of each waiting for its own failure.
+ * <p>
+ * The circuit is closed as long as the share of failed calls among the most recent calls is
+ * below the failure rate. When it is reached the circuit opens and no calls are let through for
+ * the open duration. After that the circuit is half open and lets a few probe calls through, one
+ * at a time. If they all succeed the circuit closes, if one fails it opens again.
+ * <p>
+ * Calls that were let through before the circuit changed state are not counted when they end,
+ * so that a slow failure from before the circuit opened cannot count as a failed probe.
+ */
+public class CircuitBreaker {
+	private final BreakerSettings settings;
+	private final LongSupplier nanoTime;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final boolean[] window;
+	private State state = State.CLOSED;
+	private int generation = 0;
+	private int windowCalls = 0;
+	private int windowNext = 0;
+	private int windowFailures = 0;
+	private long openedAtNanos;
+	private boolean probeInProgress = false;
+	private int succeededProbes = 0;
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder opened = new LongAdder();
+
+	/**
+	 * State is the state of the circuit.
+	 */
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	/**
+	 * Permit is a call let through the circuit. It must be released exactly once when the call is
+	 * done.
+	 */
+	public final class Permit {
+		private final int grantedInGeneration;
+
+		private Permit(int grantedInGeneration) {
+			this.grantedInGeneration = grantedInGeneration;
+		}
+
+		/**
+		 * release ends the call and counts its outcome.
+		 *
+		 * @param failed
+		 *            true if the call failed in a way that shows the image server is not working
+		 */
+		public void release(boolean failed) {
+			releasePermit(grantedInGeneration, failed);
+		}
+	}
+
+	public CircuitBreaker(BreakerSettings settings) {
+		this(settings, System::nanoTime);
+	}
+
+	CircuitBreaker(BreakerSettings settings, LongSupplier nanoTime) {
+		this.settings = settings;
+		this.nanoTime = nanoTime;
+		window = new boolean[settings.windowSize()];
+	}
+
+	/**
+	 * acquire returns a permit for a call if the circuit lets it through.
+	 *
+	 * @throws CircuitOpenException
+	 *             if the circuit is open, or half open with a probe call in progress
+	 */
+	public Permit acquire() {
+		lock.lock();
+		try {
+			halfOpenIfOpenDurationHasPassed();
+			if (state == State.OPEN || (state == State.HALF_OPEN && probeInProgress)) {
+				rejected.increment();
+				throw new CircuitOpenException("The image server is failing, calls are stopped",
+						getRetryAfterSecondsWhileLocked());
+			}
+			if (state == State.HALF_OPEN) {
+				probeInProgress = true;
+			}
+			return new Permit(generation);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void halfOpenIfOpenDurationHasPassed() {
+		if (state == State.OPEN && timeOpenNanos() >= settings.openDuration().toNanos()) {
+			changeState(State.HALF_OPEN);
+			probeInProgress = false;
+			succeededProbes = 0;
+		}
+	}
+
+	private long timeOpenNanos() {
+		return nanoTime.getAsLong() - openedAtNanos;
+	}
+
+	private void changeState(State newState) {
+		state = newState;
+		generation++;
+	}
+
+	private long getRetryAfterSecondsWhileLocked() {
+		if (state != State.OPEN) {
+			return 1;
+		}
+		long remainingNanos = settings.openDuration().toNanos() - timeOpenNanos();
+		return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remainingNanos + 999_999_999));
+	}
+
+	private void releasePermit(int grantedInGeneration, boolean failed) {
+		lock.lock();
+		try {
+			if (grantedInGeneration != generation) {
+				return;
+			}
+			if (state == State.HALF_OPEN) {
+				countProbe(failed);
+			} else {
+				countInWindow(failed);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void countProbe(boolean failed) {
+		probeInProgress = false;
+		if (failed) {
+			open();
+			return;
+		}
+		succeededProbes++;
+		if (succeededProbes >= settings.probeCalls()) {
+			close();
+		}
+	}
+
+	private void countInWindow(boolean failed) {
+		if (windowCalls == window.length) {
+			windowFailures -= window[windowNext] ? 1 : 0;
+		} else {
+			windowCalls++;
+		}
+		window[windowNext] = failed;
+		windowFailures += failed ? 1 : 0;
+		windowNext = (windowNext + 1) % window.length;
+		if (failureRateIsReached()) {
+			open();
+		}
+	}
+
+	private boolean failureRateIsReached() {
+		return windowCalls >= settings.minimumCalls()
+				&& windowFailures * 100 >= settings.failureRatePercent() * windowCalls;
+	}
+
+	private void open() {
+		changeState(State.OPEN);
+		openedAtNanos = nanoTime.getAsLong();
+		opened.increment();
+	}
+
+	private void close() {
+		changeState(State.CLOSED);
+		windowCalls = 0;
+		windowNext = 0;
+		windowFailures = 0;
+	}
+
+	/**
+	 * getState returns the current state of the circuit.
+	 */
+	public State getState() {
+		lock.lock();
+		try {
+			halfOpenIfOpenDurationHasPassed();
+			return state;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * getRejectedCalls returns the number of calls not let through the circuit.
+	 */
+	public long getRejectedCalls() {
+		return rejected.sum();
+	}
+
+	/**
+	 * getTimesOpened returns the number of times the circuit has opened.
+	 */
+	public long getTimesOpened() {
+		return opened.sum();
+	}
+
+	public BreakerSettings getSettings() {
+		return settings;
+	}
+}
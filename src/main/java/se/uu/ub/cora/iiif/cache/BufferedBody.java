@@ -0,0 +1,75 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+
+/**
+ * BufferedBody reads a response body into memory, but only up to a limit. A body larger than the
+ * limit can still be read in full from {@link #asInputStream()}, which continues with the part
+ * that was not buffered.
+ */
+public final class BufferedBody {
+	private final byte[] bytes;
+	private final InputStream remainder;
+
+	private BufferedBody(byte[] bytes, InputStream remainder) {
+		this.bytes = bytes;
+		this.remainder = remainder;
+	}
+
+	public static BufferedBody readUpTo(InputStream body, int limit) throws IOException {
+		byte[] bytes = body.readNBytes(limit);
+		if (bytes.length < limit) {
+			body.close();
+			return new BufferedBody(bytes, null);
+		}
+		return readPastLimit(body, bytes);
+	}
+
+	private static BufferedBody readPastLimit(InputStream body, byte[] bytes) throws IOException {
+		int next = body.read();
+		if (next == -1) {
+			body.close();
+			return new BufferedBody(bytes, null);
+		}
+		InputStream remainder = new SequenceInputStream(
+				new ByteArrayInputStream(new byte[] { (byte) next }), body);
+		return new BufferedBody(bytes, remainder);
+	}
+
+	public boolean isComplete() {
+		return remainder == null;
+	}
+
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	public InputStream asInputStream() {
+		ByteArrayInputStream buffered = new ByteArrayInputStream(bytes);
+		if (isComplete()) {
+			return buffered;
+		}
+		return new SequenceInputStream(buffered, remainder);
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.cache;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * ByteBufferInputStream reads from a buffer without copying it, so that a cached body can be
+ * handed to several clients at the same time, each with its own position.
+ */
+class ByteBufferInputStream extends InputStream {
+	private final ByteBuffer buffer;
+
+	ByteBufferInputStream(ByteBuffer buffer) {
+		this.buffer = buffer;
+	}
+
+	@Override
+	public int read() {
+		if (!buffer.hasRemaining()) {
+			return -1;
+		}
+		return buffer.get() & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] bytes, int offset, int length) {
+		if (length == 0) {
+			return 0;
+		}
+		if (!buffer.hasRemaining()) {
+			return -1;
+		}
+		int toRead = Math.min(length, buffer.remaining());
+		buffer.get(bytes, offset, toRead);
+		return toRead;
+	}
+
+	@Override
+	public long skip(long n) {
+		int toSkip = (int) Math.max(0, Math.min(n, buffer.remaining()));
+		buffer.position(buffer.position() + toSkip);
+		return toSkip;
+	}
+
+	@Override
+	public int available() {
+		return buffer.remaining();
+	}
+}
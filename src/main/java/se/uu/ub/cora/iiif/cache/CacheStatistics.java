@@ -0,0 +1,37 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.cache;
+
+/**
+ * CacheStatistics is a snapshot of the counters of a {@link TileStore}.
+ *
+ * @param hits
+ *            the number of lookups answered from the store
+ * @param misses
+ *            the number of lookups not found or expired in the store
+ * @param evictions
+ *            the number of tiles removed to stay within the size budget
+ * @param entries
+ *            the number of tiles currently stored
+ * @param bytes
+ *            the number of body bytes currently stored
+ */
+public record CacheStatistics(long hits, long misses, long evictions, long entries,
+		long bytes) {
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.cache;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * CachedTile is a successful response from the image server kept in a {@link TileStore}.
+ *
+ * @param headers
+ *            the response headers
+ * @param body
+ *            the response body, from position to limit
+ * @param storedAtMillis
+ *            the time the response was stored, in milliseconds since the epoch
+ */
+public record CachedTile(Map<String, String> headers, ByteBuffer body, long storedAtMillis) {
+
+	public int size() {
+		return body.remaining();
+	}
+
+	public InputStream bodyAsInputStream() {
+		return new ByteBufferInputStream(body.duplicate());
+	}
+}
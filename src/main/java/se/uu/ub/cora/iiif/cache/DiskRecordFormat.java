@@ -0,0 +1,153 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+/**
+ * DiskRecordFormat encodes and decodes the records appended to the segment files of a
+ * {@link DiskTileStore}.
+ * <p>
+ * A record is a fixed size header followed by the key, the response headers and the body. The
+ * header holds a magic number, the three lengths, the time the tile was stored and a CRC32 of
+ * everything after the header. A record that was only partly written when the process died fails
+ * the length or checksum validation, which is how the end of the valid data in a segment is
+ * found.
+ * <p>
+ * A tombstone records that a key was removed. It has its own magic number and only a key.
+ */
+final class DiskRecordFormat {
+	static final int MAGIC = 0x49494946;
+	static final int TOMBSTONE_MAGIC = 0x49494954;
+	static final int HEADER_SIZE = 28;
+
+	record DecodedRecord(String key, Map<String, String> headers, long storedAtMillis,
+			int bodyOffset, int bodyLength, int recordLength, boolean tombstone) {
+	}
+
+	private DiskRecordFormat() {
+		// only static methods
+	}
+
+	static ByteBuffer[] encode(String key, Map<String, String> headers, ByteBuffer body,
+			long storedAtMillis) {
+		return encode(MAGIC, key, ByteBuffer.wrap(serializeHeaders(headers)), body.duplicate(),
+				storedAtMillis);
+	}
+
+	static ByteBuffer[] encodeTombstone(String key, long removedAtMillis) {
+		return encode(TOMBSTONE_MAGIC, key, ByteBuffer.allocate(0), ByteBuffer.allocate(0),
+				removedAtMillis);
+	}
+
+	private static ByteBuffer[] encode(int magic, String key, ByteBuffer headerBytes,
+			ByteBuffer bodyBytes, long storedAtMillis) {
+		ByteBuffer keyBytes = ByteBuffer.wrap(key.getBytes(StandardCharsets.UTF_8));
+		int crc = checksum(keyBytes.duplicate(), headerBytes.duplicate(), bodyBytes.duplicate());
+		ByteBuffer recordHeader = ByteBuffer.allocate(HEADER_SIZE);
+		recordHeader.putInt(magic).putInt(keyBytes.remaining()).putInt(headerBytes.remaining())
+				.putInt(bodyBytes.remaining()).putLong(storedAtMillis).putInt(crc).flip();
+		return new ByteBuffer[] { recordHeader, keyBytes, headerBytes, bodyBytes };
+	}
+
+	static int recordLength(ByteBuffer[] encoded) {
+		int length = 0;
+		for (ByteBuffer buffer : encoded) {
+			length += buffer.remaining();
+		}
+		return length;
+	}
+
+	private static byte[] serializeHeaders(Map<String, String> headers) {
+		StringBuilder serialized = new StringBuilder();
+		for (Entry<String, String> header : headers.entrySet()) {
+			if (header.getKey() != null && header.getValue() != null) {
+				serialized.append(header.getKey()).append(": ").append(header.getValue())
+						.append('\n');
+			}
+		}
+		return serialized.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static int checksum(ByteBuffer... buffers) {
+		CRC32 crc = new CRC32();
+		for (ByteBuffer buffer : buffers) {
+			crc.update(buffer);
+		}
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * decodeAt returns the record starting at the offset, or an empty optional if there is no
+	 * complete and valid record there.
+	 */
+	static Optional<DecodedRecord> decodeAt(ByteBuffer segment, int offset) {
+		if (segment.limit() - offset < HEADER_SIZE || !isMagic(segment.getInt(offset))) {
+			return Optional.empty();
+		}
+		int keyLength = segment.getInt(offset + 4);
+		int headersLength = segment.getInt(offset + 8);
+		int bodyLength = segment.getInt(offset + 12);
+		long payloadLength = (long) keyLength + headersLength + bodyLength;
+		if (keyLength < 0 || headersLength < 0 || bodyLength < 0
+				|| payloadLength > segment.limit() - offset - HEADER_SIZE) {
+			return Optional.empty();
+		}
+		int payloadOffset = offset + HEADER_SIZE;
+		ByteBuffer payload = segment.slice(payloadOffset, (int) payloadLength);
+		if (checksum(payload) != segment.getInt(offset + 24)) {
+			return Optional.empty();
+		}
+		String key = readString(segment, payloadOffset, keyLength);
+		Map<String, String> headers = parseHeaders(
+				readString(segment, payloadOffset + keyLength, headersLength));
+		return Optional.of(new DecodedRecord(key, headers, segment.getLong(offset + 16),
+				payloadOffset + keyLength + headersLength, bodyLength,
+				HEADER_SIZE + (int) payloadLength,
+				segment.getInt(offset) == TOMBSTONE_MAGIC));
+	}
+
+	private static boolean isMagic(int magic) {
+		return magic == MAGIC || magic == TOMBSTONE_MAGIC;
+	}
+
+	private static String readString(ByteBuffer segment, int offset, int length) {
+		byte[] bytes = new byte[length];
+		segment.get(offset, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static Map<String, String> parseHeaders(String serialized) {
+		Map<String, String> headers = new LinkedHashMap<>();
+		for (String line : serialized.split("\n")) {
+			int separator = line.indexOf(": ");
+			if (separator > 0) {
+				headers.put(line.substring(0, separator), line.substring(separator + 2));
+			}
+		}
+		return Collections.unmodifiableMap(headers);
+	}
+}
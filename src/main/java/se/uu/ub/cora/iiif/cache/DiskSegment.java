@@ -0,0 +1,179 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * DiskSegment is one append only segment file of a {@link DiskTileStore}. Reads are served from
+ * a read only memory mapping of the file, which is extended in steps of at least
+ * {@value #REMAP_STEP_BYTES} bytes as the segment grows. Records appended since the mapping was
+ * last extended are read from the file into the heap until the next step.
+ * <p>
+ * Offsets are ints, so a segment can not grow beyond {@value #MAX_SIZE} bytes.
+ */
+class DiskSegment {
+	static final long MAX_SIZE = Integer.MAX_VALUE;
+	static final long REMAP_STEP_BYTES = 4L * 1024 * 1024;
+	private final int id;
+	private final Path path;
+	private final FileChannel channel;
+	private final ReentrantLock mappingLock = new ReentrantLock();
+	private final AtomicLong liveBytes = new AtomicLong();
+	private volatile long size;
+	private volatile MappedByteBuffer mapped;
+
+	private DiskSegment(int id, Path path, FileChannel channel, long size) {
+		this.id = id;
+		this.path = path;
+		this.channel = channel;
+		this.size = size;
+	}
+
+	static DiskSegment open(int id, Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		return new DiskSegment(id, path, channel, channel.size());
+	}
+
+	int id() {
+		return id;
+	}
+
+	long size() {
+		return size;
+	}
+
+	/**
+	 * append writes the buffers at the end of the segment and returns the offset they were
+	 * written at. Appends must not be made concurrently.
+	 */
+	int append(ByteBuffer[] buffers) throws IOException {
+		long offset = size;
+		long toWrite = DiskRecordFormat.recordLength(buffers);
+		if (offset + toWrite > MAX_SIZE) {
+			throw new IOException(
+					"Segment " + path + " can not grow beyond " + MAX_SIZE + " bytes");
+		}
+		channel.position(offset);
+		long written = 0;
+		while (written < toWrite) {
+			written += channel.write(buffers);
+		}
+		size = offset + written;
+		return (int) offset;
+	}
+
+	/**
+	 * mapWholeSegment returns a mapping of the segment, or of its first {@value #MAX_SIZE} bytes
+	 * if the file is larger than that.
+	 */
+	ByteBuffer mapWholeSegment() throws IOException {
+		long mappableSize = mappableSize();
+		return ensureMappedUpTo(mappableSize).duplicate().limit((int) mappableSize);
+	}
+
+	private long mappableSize() {
+		return Math.min(size, MAX_SIZE);
+	}
+
+	ByteBuffer read(int offset, int length) throws IOException {
+		MappedByteBuffer current = mapped;
+		long end = (long) offset + length;
+		if (current != null && current.capacity() < end
+				&& size - current.capacity() < REMAP_STEP_BYTES) {
+			return readFromFile(offset, length);
+		}
+		return ensureMappedUpTo(end).slice(offset, length);
+	}
+
+	private ByteBuffer readFromFile(int offset, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, (long) offset + buffer.position()) < 0) {
+				throw new IOException("Segment " + path + " ended before offset " + offset
+						+ " and length " + length);
+			}
+		}
+		return buffer.flip().asReadOnlyBuffer();
+	}
+
+	private MappedByteBuffer ensureMappedUpTo(long end) throws IOException {
+		MappedByteBuffer current = mapped;
+		if (current != null && current.capacity() >= end) {
+			return current;
+		}
+		mappingLock.lock();
+		try {
+			return remapIfNeeded(end);
+		} finally {
+			mappingLock.unlock();
+		}
+	}
+
+	private MappedByteBuffer remapIfNeeded(long end) throws IOException {
+		if (mapped == null || mapped.capacity() < end) {
+			mapped = channel.map(MapMode.READ_ONLY, 0, mappableSize());
+		}
+		return mapped;
+	}
+
+	void truncate(long validSize) throws IOException {
+		channel.truncate(validSize);
+		size = validSize;
+		mapped = null;
+	}
+
+	void addLiveBytes(long bytes) {
+		liveBytes.addAndGet(bytes);
+	}
+
+	long liveBytes() {
+		return liveBytes.get();
+	}
+
+	void force() throws IOException {
+		if (channel.isOpen()) {
+			channel.force(false);
+		}
+	}
+
+	void closeAndDelete() throws IOException {
+		close();
+		Files.deleteIfExists(path);
+	}
+
+	void close() throws IOException {
+		channel.close();
+	}
+
+	int onlyForTestGetMappedBytes() {
+		MappedByteBuffer current = mapped;
+		return current == null ? 0 : current.capacity();
+	}
+}
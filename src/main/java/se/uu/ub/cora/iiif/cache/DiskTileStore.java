@@ -0,0 +1,517 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import se.uu.ub.cora.binary.BinaryException;
+import se.uu.ub.cora.iiif.cache.DiskRecordFormat.DecodedRecord;
+import se.uu.ub.cora.logger.Logger;
+import se.uu.ub.cora.logger.LoggerProvider;
+
+/**
+ * DiskTileStore keeps tiles in append only segment files in a directory, so that they survive
+ * restarts of the application.
+ * <p>
+ * Each put appends one checksummed record to the active segment, and a new segment is started
+ * when the active one is full. A remove appends a tombstone record, so that the tile stays
+ * removed after a restart. The index from key to record is held in memory and rebuilt by
+ * scanning the segments in the background when the store is opened; a record torn by a crash
+ * fails its checksum and is cut off. Until the scan is done every get is a miss and puts are
+ * dropped, so that opening a large store does not hold up the first requests. Bodies are read
+ * from read only memory mappings of the segments, see {@link DiskSegment}.
+ * <p>
+ * When the segments together exceed the capacity, the oldest segment is dropped. A background
+ * compaction rewrites the live records of segments that are mostly replaced or expired, and then
+ * deletes them. Reads take no lock, so a read can meet a segment that was just dropped or
+ * compacted; it is then retried through the index, and is a miss if the tile is gone. The disk
+ * is a cache, so a read or write that fails is logged and taken as a miss or not stored, it never
+ * fails the call.
+ */
+public class DiskTileStore implements TileStore, AutoCloseable {
+	private static final String SEGMENT_SUFFIX = ".seg";
+	private static final Pattern SEGMENT_FILE_NAME = Pattern.compile("\\d{1,9}\\.seg");
+	private static final double COMPACT_WHEN_LIVE_BELOW = 0.5;
+	private final Path directory;
+	private final long maxBytes;
+	private final long maxSegmentBytes;
+	private final long timeToLiveMillis;
+	private final Clock clock;
+	private final ReentrantLock appendLock = new ReentrantLock();
+	private final ConcurrentSkipListMap<Integer, DiskSegment> segments;
+	private final Map<String, DiskEntry> index = new ConcurrentHashMap<>();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final Set<String> removedWhileOpening = ConcurrentHashMap.newKeySet();
+	private final ScheduledExecutorService compactor;
+	private final Future<?> opening;
+	private Logger log = LoggerProvider.getLoggerForClass(DiskTileStore.class);
+	private volatile boolean open;
+	private DiskSegment activeSegment;
+
+	record DiskEntry(int segmentId, int bodyOffset, int bodyLength, int recordLength,
+			Map<String, String> headers, long storedAtMillis) {
+	}
+
+	public DiskTileStore(DiskTileStoreSettings settings, Clock clock) {
+		this(settings, clock, Executors.newSingleThreadScheduledExecutor(
+				DiskTileStore::createCompactorThread));
+	}
+
+	DiskTileStore(DiskTileStoreSettings settings, Clock clock,
+			ScheduledExecutorService compactor) {
+		this.directory = settings.directory();
+		this.maxBytes = settings.maxBytes();
+		this.maxSegmentBytes = settings.maxSegmentBytes();
+		this.timeToLiveMillis = settings.timeToLive().toMillis();
+		this.clock = clock;
+		this.compactor = compactor;
+		segments = new ConcurrentSkipListMap<>();
+		tryToCreateDirectory();
+		opening = compactor.submit(this::openSegments);
+		scheduleCompaction(settings.compactionInterval());
+	}
+
+	private static Thread createCompactorThread(Runnable runnable) {
+		Thread thread = new Thread(runnable, "iiif-disk-tile-cache-compactor");
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	private void tryToCreateDirectory() {
+		try {
+			Files.createDirectories(directory);
+		} catch (IOException e) {
+			throw BinaryException.withMessageAndException(
+					"Could not open disk tile cache in " + directory + ": " + e.getMessage(), e);
+		}
+	}
+
+	private void openSegments() {
+		appendLock.lock();
+		try {
+			openExistingSegments();
+			activeSegment = segments.isEmpty() ? startNewSegment()
+					: segments.lastEntry().getValue();
+			open = true;
+			removeKeysRemovedWhileOpening();
+		} catch (IOException | RuntimeException e) {
+			log.logErrorUsingMessageAndException("Could not open disk tile cache in " + directory
+					+ ", it stays empty: " + e.getMessage(), e);
+		} finally {
+			appendLock.unlock();
+		}
+	}
+
+	private void removeKeysRemovedWhileOpening() throws IOException {
+		for (String key : removedWhileOpening) {
+			removeAndWriteTombstone(key);
+		}
+		removedWhileOpening.clear();
+	}
+
+	private void openExistingSegments() throws IOException {
+		for (Path segmentPath : listSegmentFiles()) {
+			String fileName = segmentPath.getFileName().toString();
+			if (!SEGMENT_FILE_NAME.matcher(fileName).matches()) {
+				log.logWarnUsingMessage("Skipping " + fileName + " in disk tile cache in "
+						+ directory + ", its name is not a segment number");
+				continue;
+			}
+			int id = Integer.parseInt(fileName.replace(SEGMENT_SUFFIX, ""));
+			DiskSegment segment = DiskSegment.open(id, segmentPath);
+			segments.put(id, segment);
+			indexRecordsIn(segment);
+		}
+	}
+
+	private List<Path> listSegmentFiles() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+					.sorted().toList();
+		}
+	}
+
+	private void indexRecordsIn(DiskSegment segment) throws IOException {
+		ByteBuffer contents = segment.mapWholeSegment();
+		int offset = 0;
+		Optional<DecodedRecord> decoded = DiskRecordFormat.decodeAt(contents, offset);
+		while (decoded.isPresent()) {
+			DecodedRecord diskRecord = decoded.get();
+			indexRecord(segment, diskRecord);
+			offset += diskRecord.recordLength();
+			decoded = DiskRecordFormat.decodeAt(contents, offset);
+		}
+		if (offset < segment.size()) {
+			segment.truncate(offset);
+		}
+	}
+
+	private void indexRecord(DiskSegment segment, DecodedRecord diskRecord) {
+		if (diskRecord.tombstone()) {
+			subtractLiveBytes(index.remove(diskRecord.key()));
+		} else {
+			addToIndex(diskRecord.key(), new DiskEntry(segment.id(), diskRecord.bodyOffset(),
+					diskRecord.bodyLength(), diskRecord.recordLength(), diskRecord.headers(),
+					diskRecord.storedAtMillis()));
+		}
+	}
+
+	private void addToIndex(String key, DiskEntry entry) {
+		segments.get(entry.segmentId()).addLiveBytes(entry.recordLength());
+		DiskEntry replaced = index.put(key, entry);
+		subtractLiveBytes(replaced);
+	}
+
+	private void subtractLiveBytes(DiskEntry entry) {
+		if (entry != null) {
+			DiskSegment segment = segments.get(entry.segmentId());
+			if (segment != null) {
+				segment.addLiveBytes(-entry.recordLength());
+			}
+		}
+	}
+
+	private DiskSegment startNewSegment() throws IOException {
+		int id = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+		DiskSegment segment = DiskSegment.open(id,
+				directory.resolve(String.format("%08d%s", id, SEGMENT_SUFFIX)));
+		segments.put(id, segment);
+		return segment;
+	}
+
+	private void scheduleCompaction(Duration interval) {
+		compactor.scheduleWithFixedDelay(this::compact, interval.toMillis(), interval.toMillis(),
+				TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public Optional<CachedTile> get(String key) {
+		Optional<CachedTile> tile = readTile(key);
+		if (tile.isPresent()) {
+			hits.increment();
+		} else {
+			misses.increment();
+		}
+		return tile;
+	}
+
+	private Optional<CachedTile> readTile(String key) {
+		if (!open) {
+			return Optional.empty();
+		}
+		DiskEntry entry = index.get(key);
+		if (entry == null) {
+			return Optional.empty();
+		}
+		if (isExpired(entry)) {
+			removeEntry(key, entry);
+			return Optional.empty();
+		}
+		DiskSegment segment = segments.get(entry.segmentId());
+		if (segment == null) {
+			return readTileMovedByCompaction(key, entry);
+		}
+		try {
+			return Optional.of(new CachedTile(entry.headers(),
+					segment.read(entry.bodyOffset(), entry.bodyLength()),
+					entry.storedAtMillis()));
+		} catch (IOException e) {
+			return readTileAfterFailedRead(key, entry, e);
+		}
+	}
+
+	private Optional<CachedTile> readTileAfterFailedRead(String key, DiskEntry entry,
+			IOException e) {
+		if (!segments.containsKey(entry.segmentId())) {
+			return readTileMovedByCompaction(key, entry);
+		}
+		log.logWarnUsingMessage("Could not read from disk tile cache in " + directory
+				+ ", taken as a miss: " + e.getMessage());
+		return Optional.empty();
+	}
+
+	private Optional<CachedTile> readTileMovedByCompaction(String key, DiskEntry entry) {
+		if (index.get(key) == entry) {
+			return Optional.empty();
+		}
+		return readTile(key);
+	}
+
+	private boolean isExpired(DiskEntry entry) {
+		return clock.millis() - entry.storedAtMillis() >= timeToLiveMillis;
+	}
+
+	@Override
+	public void put(String key, CachedTile tile) {
+		if (!open) {
+			return;
+		}
+		ByteBuffer[] encoded = DiskRecordFormat.encode(key, tile.headers(), tile.body(),
+				tile.storedAtMillis());
+		if (DiskRecordFormat.recordLength(encoded) > maxSegmentBytes) {
+			return;
+		}
+		appendLock.lock();
+		try {
+			appendAndIndex(key, tile, encoded);
+			dropOldestSegmentsWhileOverCapacity();
+		} catch (IOException e) {
+			log.logWarnUsingMessage("Could not write to disk tile cache in " + directory
+					+ ", the tile is not stored: " + e.getMessage());
+		} finally {
+			appendLock.unlock();
+		}
+	}
+
+	private void appendAndIndex(String key, CachedTile tile, ByteBuffer[] encoded)
+			throws IOException {
+		addToIndex(key, append(tile, encoded));
+	}
+
+	private DiskEntry append(CachedTile tile, ByteBuffer[] encoded) throws IOException {
+		int recordLength = DiskRecordFormat.recordLength(encoded);
+		rollSegmentIfFull(recordLength);
+		int recordOffset = activeSegment.append(encoded);
+		int bodyOffset = recordOffset + recordLength - tile.size();
+		return new DiskEntry(activeSegment.id(), bodyOffset, tile.size(), recordLength,
+				tile.headers(), tile.storedAtMillis());
+	}
+
+	private void appendTombstone(String key) throws IOException {
+		ByteBuffer[] encoded = DiskRecordFormat.encodeTombstone(key, clock.millis());
+		rollSegmentIfFull(DiskRecordFormat.recordLength(encoded));
+		activeSegment.append(encoded);
+	}
+
+	private void rollSegmentIfFull(int recordLength) throws IOException {
+		if (activeSegment.size() + recordLength > maxSegmentBytes) {
+			activeSegment.force();
+			activeSegment = startNewSegment();
+		}
+	}
+
+	private void dropOldestSegmentsWhileOverCapacity() throws IOException {
+		while (totalSegmentBytes() > maxBytes && segments.size() > 1) {
+			DiskSegment oldest = segments.firstEntry().getValue();
+			evictions.add(removeIndexEntriesIn(oldest.id()));
+			segments.remove(oldest.id());
+			oldest.closeAndDelete();
+		}
+	}
+
+	private long totalSegmentBytes() {
+		long total = 0;
+		for (DiskSegment segment : segments.values()) {
+			total += segment.size();
+		}
+		return total;
+	}
+
+	private int removeIndexEntriesIn(int segmentId) {
+		int removed = 0;
+		for (Entry<String, DiskEntry> entry : index.entrySet()) {
+			if (entry.getValue().segmentId() == segmentId
+					&& index.remove(entry.getKey(), entry.getValue())) {
+				removed++;
+			}
+		}
+		return removed;
+	}
+
+	@Override
+	public void remove(String key) {
+		if (!open) {
+			removedWhileOpening.add(key);
+			if (!open) {
+				return;
+			}
+		}
+		appendLock.lock();
+		try {
+			removeAndWriteTombstone(key);
+		} catch (IOException e) {
+			log.logWarnUsingMessage("Could not write to disk tile cache in " + directory
+					+ ", the removal of the tile is not kept over a restart: " + e.getMessage());
+		} finally {
+			appendLock.unlock();
+		}
+	}
+
+	private void removeAndWriteTombstone(String key) throws IOException {
+		DiskEntry entry = index.remove(key);
+		if (entry != null) {
+			subtractLiveBytes(entry);
+			appendTombstone(key);
+		}
+	}
+
+	private void removeEntry(String key, DiskEntry entry) {
+		if (index.remove(key, entry)) {
+			subtractLiveBytes(entry);
+		}
+	}
+
+	/**
+	 * compact rewrites the live records of sealed segments where less than half of the content
+	 * is still live, and deletes those segments.
+	 */
+	public void compact() {
+		if (!open) {
+			return;
+		}
+		appendLock.lock();
+		try {
+			tryToCompact();
+		} catch (IOException e) {
+			throw BinaryException.withMessageAndException(
+					"Could not compact disk tile cache: " + e.getMessage(), e);
+		} finally {
+			appendLock.unlock();
+		}
+	}
+
+	private void tryToCompact() throws IOException {
+		for (DiskSegment segment : new ArrayList<>(segments.values())) {
+			if (segment != activeSegment && isMostlyDead(segment)) {
+				compactSegment(segment);
+			}
+		}
+	}
+
+	private boolean isMostlyDead(DiskSegment segment) {
+		return segment.liveBytes() < segment.size() * COMPACT_WHEN_LIVE_BELOW;
+	}
+
+	private void compactSegment(DiskSegment segment) throws IOException {
+		ByteBuffer contents = segment.mapWholeSegment();
+		int offset = 0;
+		Optional<DecodedRecord> decoded = DiskRecordFormat.decodeAt(contents, offset);
+		while (decoded.isPresent()) {
+			compactRecord(segment, decoded.get());
+			offset += decoded.get().recordLength();
+			decoded = DiskRecordFormat.decodeAt(contents, offset);
+		}
+		segments.remove(segment.id());
+		segment.closeAndDelete();
+	}
+
+	private void compactRecord(DiskSegment segment, DecodedRecord diskRecord)
+			throws IOException {
+		if (diskRecord.tombstone()) {
+			keepTombstoneIfStillNeeded(segment, diskRecord.key());
+			return;
+		}
+		DiskEntry entry = index.get(diskRecord.key());
+		if (entry != null && entry.segmentId() == segment.id()
+				&& entry.bodyOffset() == diskRecord.bodyOffset()) {
+			moveOrDropEntry(diskRecord.key(), entry, segment);
+		}
+	}
+
+	private void keepTombstoneIfStillNeeded(DiskSegment segment, String key)
+			throws IOException {
+		boolean olderSegmentsRemain = segments.firstKey() < segment.id();
+		if (olderSegmentsRemain && !index.containsKey(key)) {
+			appendTombstone(key);
+		}
+	}
+
+	private void moveOrDropEntry(String key, DiskEntry entry, DiskSegment segment)
+			throws IOException {
+		if (isExpired(entry)) {
+			removeEntry(key, entry);
+			return;
+		}
+		CachedTile tile = new CachedTile(entry.headers(),
+				segment.read(entry.bodyOffset(), entry.bodyLength()), entry.storedAtMillis());
+		ByteBuffer[] encoded = DiskRecordFormat.encode(key, tile.headers(), tile.body(),
+				tile.storedAtMillis());
+		DiskEntry moved = append(tile, encoded);
+		if (index.replace(key, entry, moved)) {
+			segments.get(moved.segmentId()).addLiveBytes(moved.recordLength());
+		} else {
+			appendTombstone(key);
+		}
+	}
+
+	@Override
+	public CacheStatistics getStatistics() {
+		long bytes = 0;
+		for (DiskEntry entry : index.values()) {
+			bytes += entry.bodyLength();
+		}
+		return new CacheStatistics(hits.sum(), misses.sum(), evictions.sum(), index.size(),
+				bytes);
+	}
+
+	@Override
+	public void close() {
+		compactor.shutdownNow();
+		appendLock.lock();
+		try {
+			for (DiskSegment segment : segments.values()) {
+				segment.force();
+				segment.close();
+			}
+		} catch (IOException e) {
+			throw BinaryException.withMessageAndException(
+					"Could not close disk tile cache: " + e.getMessage(), e);
+		} finally {
+			appendLock.unlock();
+		}
+	}
+
+	void onlyForTestAwaitOpen() throws InterruptedException, ExecutionException,
+			TimeoutException {
+		opening.get(10, TimeUnit.SECONDS);
+	}
+
+	int onlyForTestGetNumberOfSegments() {
+		return segments.size();
+	}
+
+	long onlyForTestGetTotalSegmentBytes() {
+		return totalSegmentBytes();
+	}
+}
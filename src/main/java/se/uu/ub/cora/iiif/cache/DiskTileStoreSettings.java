@@ -0,0 +1,53 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.cache;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * DiskTileStoreSettings configures a {@link DiskTileStore}.
+ *
+ * @param directory
+ *            the directory the segment files are kept in
+ * @param maxBytes
+ *            the capacity of the store, the total size of all segment files
+ * @param maxSegmentBytes
+ *            the size at which a new segment file is started, at most 1 GiB
+ * @param timeToLive
+ *            how long a tile is served from the store after it was stored
+ * @param compactionInterval
+ *            the time between background compactions
+ */
+public record DiskTileStoreSettings(Path directory, long maxBytes, long maxSegmentBytes,
+		Duration timeToLive, Duration compactionInterval) {
+	private static final long MAX_SEGMENT_BYTES = 1024L * 1024 * 1024;
+
+	public DiskTileStoreSettings {
+		if (maxSegmentBytes <= 0) {
+			throw new IllegalArgumentException("maxSegmentBytes must be positive");
+		}
+		if (maxSegmentBytes > MAX_SEGMENT_BYTES) {
+			throw new IllegalArgumentException("maxSegmentBytes can be at most 1 GiB");
+		}
+		if (compactionInterval.isNegative() || compactionInterval.isZero()) {
+			throw new IllegalArgumentException("compactionInterval must be positive");
+		}
+	}
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.cache;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * MemoryTileStore keeps tiles on the heap within a budget of body bytes, evicting with a
+ * segmented LRU policy.
+ * <p>
+ * New tiles enter a probation segment and are promoted to a protected segment when they are
+ * requested again. Evictions are taken from the least recently used end of the probation segment
+ * first, so that a burst of tiles requested only once (a user panning over a large image) does
+ * not push out the thumbnails and low zoom levels that are requested over and over.
+ */
+public class MemoryTileStore implements TileStore {
+	private static final int PROTECTED_PERCENT = 80;
+	private final long maxBytes;
+	private final long maxProtectedBytes;
+	private final long timeToLiveMillis;
+	private final Clock clock;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final LinkedHashMap<String, CachedTile> probation = new LinkedHashMap<>();
+	private final LinkedHashMap<String, CachedTile> protectedTiles = new LinkedHashMap<>();
+	private long probationBytes = 0;
+	private long protectedBytes = 0;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	public MemoryTileStore(long maxBytes, Duration timeToLive, Clock clock) {
+		this.maxBytes = maxBytes;
+		this.maxProtectedBytes = maxBytes * PROTECTED_PERCENT / 100;
+		this.timeToLiveMillis = timeToLive.toMillis();
+		this.clock = clock;
+	}
+
+	@Override
+	public Optional<CachedTile> get(String key) {
+		lock.lock();
+		try {
+			return countHitOrMiss(findAndPromote(key));
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private Optional<CachedTile> countHitOrMiss(Optional<CachedTile> tile) {
+		if (tile.isPresent()) {
+			hits.increment();
+		} else {
+			misses.increment();
+		}
+		return tile;
+	}
+
+	private Optional<CachedTile> findAndPromote(String key) {
+		CachedTile tile = protectedTiles.get(key);
+		if (tile == null) {
+			tile = probation.get(key);
+		}
+		if (tile == null) {
+			return Optional.empty();
+		}
+		if (isExpired(tile)) {
+			removeFromSegments(key);
+			return Optional.empty();
+		}
+		moveToMostRecentlyUsedInProtected(key, tile);
+		return Optional.of(tile);
+	}
+
+	private boolean isExpired(CachedTile tile) {
+		return clock.millis() - tile.storedAtMillis() >= timeToLiveMillis;
+	}
+
+	private void moveToMostRecentlyUsedInProtected(String key, CachedTile tile) {
+		removeFromSegments(key);
+		protectedTiles.put(key, tile);
+		protectedBytes += tile.size();
+		demoteFromProtectedWhileOverBudget();
+	}
+
+	private void demoteFromProtectedWhileOverBudget() {
+		Iterator<Entry<String, CachedTile>> iterator = protectedTiles.entrySet().iterator();
+		while (protectedBytes > maxProtectedBytes && iterator.hasNext()) {
+			Entry<String, CachedTile> leastRecentlyUsed = iterator.next();
+			iterator.remove();
+			protectedBytes -= leastRecentlyUsed.getValue().size();
+			probation.put(leastRecentlyUsed.getKey(), leastRecentlyUsed.getValue());
+			probationBytes += leastRecentlyUsed.getValue().size();
+		}
+	}
+
+	@Override
+	public void put(String key, CachedTile tile) {
+		if (tile.size() > maxBytes) {
+			return;
+		}
+		lock.lock();
+		try {
+			removeFromSegments(key);
+			probation.put(key, tile);
+			probationBytes += tile.size();
+			evictWhileOverBudget();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void evictWhileOverBudget() {
+		while (probationBytes + protectedBytes > maxBytes) {
+			if (!probation.isEmpty()) {
+				probationBytes -= evictLeastRecentlyUsed(probation);
+			} else {
+				protectedBytes -= evictLeastRecentlyUsed(protectedTiles);
+			}
+		}
+	}
+
+	private long evictLeastRecentlyUsed(LinkedHashMap<String, CachedTile> segment) {
+		Iterator<CachedTile> iterator = segment.values().iterator();
+		CachedTile evicted = iterator.next();
+		iterator.remove();
+		evictions.increment();
+		return evicted.size();
+	}
+
+	@Override
+	public void remove(String key) {
+		lock.lock();
+		try {
+			removeFromSegments(key);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void removeFromSegments(String key) {
+		CachedTile removed = probation.remove(key);
+		if (removed != null) {
+			probationBytes -= removed.size();
+		}
+		removed = protectedTiles.remove(key);
+		if (removed != null) {
+			protectedBytes -= removed.size();
+		}
+	}
+
+	@Override
+	public CacheStatistics getStatistics() {
+		lock.lock();
+		try {
+			return new CacheStatistics(hits.sum(), misses.sum(), evictions.sum(),
+					probation.size() + (long) protectedTiles.size(),
+					probationBytes + protectedBytes);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	boolean onlyForTestIsInProtectedSegment(String key) {
+		lock.lock();
+		try {
+			return protectedTiles.containsKey(key);
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.cache;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * NotFoundCache remembers identifiers the image server has answered 404 for, for a short time
+ * to live. It keeps at most max entries, forgetting the identifier remembered longest ago first.
+ */
+public class NotFoundCache {
+	private final int maxEntries;
+	private final long timeToLiveMillis;
+	private final Clock clock;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final LinkedHashMap<String, Long> rememberedAtMillis = new LinkedHashMap<>();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	public NotFoundCache(int maxEntries, Duration timeToLive, Clock clock) {
+		this.maxEntries = maxEntries;
+		this.timeToLiveMillis = timeToLive.toMillis();
+		this.clock = clock;
+	}
+
+	/**
+	 * isNotFound returns true if the identifier is remembered as not found and has not expired.
+	 */
+	public boolean isNotFound(String identifier) {
+		lock.lock();
+		try {
+			boolean notFound = isRememberedAndNotExpired(identifier);
+			countHitOrMiss(notFound);
+			return notFound;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private boolean isRememberedAndNotExpired(String identifier) {
+		Long storedAt = rememberedAtMillis.get(identifier);
+		if (storedAt == null) {
+			return false;
+		}
+		if (clock.millis() - storedAt >= timeToLiveMillis) {
+			rememberedAtMillis.remove(identifier);
+			return false;
+		}
+		return true;
+	}
+
+	private void countHitOrMiss(boolean notFound) {
+		if (notFound) {
+			hits.increment();
+		} else {
+			misses.increment();
+		}
+	}
+
+	public void remember(String identifier) {
+		lock.lock();
+		try {
+			rememberedAtMillis.remove(identifier);
+			rememberedAtMillis.put(identifier, clock.millis());
+			evictWhileOverMaxEntries();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void evictWhileOverMaxEntries() {
+		Iterator<Long> iterator = rememberedAtMillis.values().iterator();
+		while (rememberedAtMillis.size() > maxEntries) {
+			iterator.next();
+			iterator.remove();
+			evictions.increment();
+		}
+	}
+
+	public void forget(String identifier) {
+		lock.lock();
+		try {
+			rememberedAtMillis.remove(identifier);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * getStatistics returns a snapshot of the counters, with the remembered identifiers as
+	 * entries and no bytes.
+	 */
+	public CacheStatistics getStatistics() {
+		lock.lock();
+		try {
+			return new CacheStatistics(hits.sum(), misses.sum(), evictions.sum(),
+					rememberedAtMillis.size(), 0);
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.cache;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.http.Headers;
+import se.uu.ub.cora.iiif.transcode.AcceptHeader;
+import se.uu.ub.cora.iiif.transcode.ImageFormat;
+import se.uu.ub.cora.iiif.uri.IiifRequestType;
+
+/**
+ * TileCacheKey creates the key a response is cached under, from the normalized request URI and
+ * the request headers that change what the image server answers.
+ * <p>
+ * The headers are reduced to what the answer is negotiated from, so that the many ways browsers
+ * and their versions write them share one entry. For image requests Accept is reduced to the
+ * image formats it names, most wanted first, as wildcards never choose another format than the
+ * one in the URI, and Accept-Encoding to the content coding that would be chosen from it, where
+ * identity is the same as no Accept-Encoding at all. Accept of info.json requests is kept as
+ * sent, as it chooses between JSON profiles.
+ */
+public final class TileCacheKey {
+	private static final String ACCEPT = "Accept";
+	private static final String ACCEPT_ENCODING = "Accept-Encoding";
+	private static final List<String> CACHE_RELEVANT_HEADERS = List.of(ACCEPT, ACCEPT_ENCODING);
+	private static final List<String> CONTENT_CODINGS = List.of("br", "gzip");
+	private static final String IDENTITY = "identity";
+
+	private TileCacheKey() {
+		// only static methods
+	}
+
+	public static String from(IiifParameters iiifParameters) {
+		String uri = normalizeUri(iiifParameters.uri());
+		StringBuilder key = new StringBuilder(uri);
+		Map<String, String> headers = iiifParameters.headersMap();
+		Headers.find(headers, ACCEPT).map(accept -> negotiatedAccept(uri, accept))
+				.ifPresent(accept -> appendHeader(key, ACCEPT, accept));
+		Headers.find(headers, ACCEPT_ENCODING).map(TileCacheKey::negotiatedCoding)
+				.ifPresent(coding -> appendHeader(key, ACCEPT_ENCODING, coding));
+		return key.toString();
+	}
+
+	private static void appendHeader(StringBuilder key, String name, String value) {
+		if (!value.isEmpty()) {
+			key.append('\n').append(name).append(": ").append(value);
+		}
+	}
+
+	private static String negotiatedAccept(String uri, String accept) {
+		if (IiifRequestType.isInfo(uri)) {
+			return accept.trim();
+		}
+		List<ImageFormat> accepted = new ArrayList<>();
+		for (ImageFormat format : ImageFormat.values()) {
+			if (AcceptHeader.qualityOf(accept, format.mediaType()) > 0) {
+				accepted.add(format);
+			}
+		}
+		accepted.sort(Comparator.comparingDouble(
+				(ImageFormat format) -> AcceptHeader.qualityOf(accept, format.mediaType()))
+				.reversed());
+		return accepted.stream().map(ImageFormat::mediaType).collect(Collectors.joining(","));
+	}
+
+	private static String negotiatedCoding(String acceptEncoding) {
+		String chosen = IDENTITY;
+		double chosenQuality = 0;
+		for (String coding : CONTENT_CODINGS) {
+			double quality = AcceptHeader.qualityOf(acceptEncoding, coding);
+			if (quality > chosenQuality) {
+				chosen = coding;
+				chosenQuality = quality;
+			}
+		}
+		return IDENTITY.equals(chosen) ? "" : chosen;
+	}
+
+	/**
+	 * coversVary answers whether every request header named in the Vary header of a response is
+	 * part of the key, so that the response can be given to other requests with the same key. A
+	 * response without Vary is always covered, one that varies on "*" never is.
+	 */
+	public static boolean coversVary(Map<String, String> responseHeaders) {
+		Optional<String> vary = Headers.find(responseHeaders, "Vary");
+		if (vary.isEmpty()) {
+			return true;
+		}
+		for (String headerName : vary.get().split(",")) {
+			if (!isCacheRelevant(headerName.trim())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isCacheRelevant(String headerName) {
+		if (headerName.isEmpty()) {
+			return true;
+		}
+		for (String relevant : CACHE_RELEVANT_HEADERS) {
+			if (relevant.equalsIgnoreCase(headerName)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * normalizeUri returns the URI without a leading slash and with repeated slashes collapsed,
+	 * the same instance if there were none.
+	 */
+	public static String normalizeUri(String uri) {
+		if (!needsNormalizing(uri)) {
+			return uri;
+		}
+		StringBuilder normalized = new StringBuilder(uri.length());
+		char previous = '/';
+		for (int i = 0; i < uri.length(); i++) {
+			char current = uri.charAt(i);
+			if (current != '/' || previous != '/') {
+				normalized.append(current);
+			}
+			previous = current;
+		}
+		return normalized.toString();
+	}
+
+	private static boolean needsNormalizing(String uri) {
+		return uri.startsWith("/") || uri.contains("//");
+	}
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.cache;
+
+import java.util.Optional;
+
+/**
+ * TileStore keeps successful responses from the image server, so that they can be answered
+ * without calling the image server again.
+ */
+public interface TileStore {
+
+	/**
+	 * get returns the tile stored for the key, if there is one that has not expired.
+	 */
+	Optional<CachedTile> get(String key);
+
+	/**
+	 * put stores the tile for the key, replacing any tile already stored for it. A store may
+	 * choose not to keep the tile, for instance if it is larger than the store allows.
+	 */
+	void put(String key, CachedTile tile);
+
+	void remove(String key);
+
+	CacheStatistics getStatistics();
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.hedge;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HedgeBudget caps the hedged calls to a share of recent requests, so that hedging never adds more
+ * than that share of load on the image server, also when it is slow for everyone.
+ * <p>
+ * The budget is a bucket of tokens that every request adds the budget ratio of a token to, and
+ * that every hedge takes a whole token from. The bucket holds at most {@value #MAX_SAVED_HEDGES}
+ * tokens, so a long calm period does not save up hedges that a slowdown then spends all at once.
+ * Tokens are counted in millionths, so that adding up the ratio is exact.
+ */
+public class HedgeBudget {
+	static final int MAX_SAVED_HEDGES = 10;
+	private static final long TOKEN = 1_000_000;
+	private final long tokensPerRequest;
+	private final AtomicLong tokens = new AtomicLong();
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong hedges = new AtomicLong();
+
+	public HedgeBudget(double budgetRatio) {
+		tokensPerRequest = Math.round(budgetRatio * TOKEN);
+	}
+
+	public void recordRequest() {
+		requests.incrementAndGet();
+		tokens.updateAndGet(
+				current -> Math.min(current + tokensPerRequest, MAX_SAVED_HEDGES * TOKEN));
+	}
+
+	/**
+	 * tryToSpend returns true and counts a hedge if one more hedge keeps within the budget.
+	 */
+	public boolean tryToSpend() {
+		long current = tokens.get();
+		while (current >= TOKEN) {
+			if (tokens.compareAndSet(current, current - TOKEN)) {
+				hedges.incrementAndGet();
+				return true;
+			}
+			current = tokens.get();
+		}
+		return false;
+	}
+
+	public long getRequests() {
+		return requests.get();
+	}
+
+	public long getHedges() {
+		return hedges.get();
+	}
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.hedge;
+
+import java.time.Duration;
+
+/**
+ * HedgeSettings holds the settings for hedged calls and call deadlines.
+ *
+ * @param deadline
+ *            the longest time a request waits for a response, or zero for no deadline
+ * @param delayPercentile
+ *            the percentile of recent call latencies after which a hedged call is made
+ * @param minDelay
+ *            the shortest time to wait before a hedged call is made
+ * @param budgetRatio
+ *            the largest share of requests that may be hedged, zero for no hedging
+ */
+public record HedgeSettings(Duration deadline, double delayPercentile, Duration minDelay,
+		double budgetRatio) {
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.hedge;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * LatencyWindow keeps the latencies of the most recent calls and a percentile of them. The
+ * percentile is recomputed every {@value #RECOMPUTE_EVERY} samples, not on every read, so that
+ * reading it costs nothing on the request path.
+ */
+public class LatencyWindow {
+	static final int RECOMPUTE_EVERY = 32;
+	static final int MIN_SAMPLES = 32;
+	private static final long UNKNOWN = -1;
+	private final long[] samples;
+	private final double percentile;
+	private final ReentrantLock lock = new ReentrantLock();
+	private long count;
+	private volatile long percentileNanos = UNKNOWN;
+
+	public LatencyWindow(int size, double percentile) {
+		samples = new long[size];
+		this.percentile = percentile;
+	}
+
+	public void record(long latencyNanos) {
+		lock.lock();
+		try {
+			samples[(int) (count % samples.length)] = latencyNanos;
+			count++;
+			if (count >= MIN_SAMPLES && count % RECOMPUTE_EVERY == 0) {
+				percentileNanos = computePercentile();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private long computePercentile() {
+		int filled = (int) Math.min(count, samples.length);
+		long[] sorted = Arrays.copyOf(samples, filled);
+		Arrays.sort(sorted);
+		int index = (int) Math.ceil(percentile / 100 * filled) - 1;
+		return sorted[Math.max(0, Math.min(filled - 1, index))];
+	}
+
+	/**
+	 * getPercentileNanos returns the latency percentile, or -1 until enough calls have been
+	 * recorded.
+	 */
+	public long getPercentileNanos() {
+		return percentileNanos;
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.http;
+
+/**
+ * ByteRange is a satisfiable range of bytes in a representation, from the first to the last byte,
+ * both included, as in Content-Range.
+ */
+public record ByteRange(long first, long last) {
+
+	public ByteRange {
+		if (first < 0 || last < first) {
+			throw new IllegalArgumentException("first must be at least 0 and last at least first");
+		}
+	}
+
+	public long length() {
+		return last - first + 1;
+	}
+
+	/**
+	 * toContentRange returns the value of a Content-Range header for this range of a
+	 * representation of the given length.
+	 */
+	public String toContentRange(long length) {
+		return "bytes " + first + "-" + last + "/" + length;
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.http;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * ByteRanges decides which bytes of a representation a request with a Range header asks for. The
+ * Range header is ignored, and the full representation sent, when it is not a valid bytes range,
+ * when it lists more ranges than are worth sending as parts, when the length of the
+ * representation is not known or when an If-Range validator does not match the representation.
+ * <p>
+ * The ranges selected are sorted and ranges that overlap or touch are merged, so that the body
+ * can be read once from start to end whatever order the client asked for.
+ */
+public final class ByteRanges {
+	static final int MAX_RANGES = 16;
+	private static final String BYTES_UNIT = "bytes=";
+
+	private ByteRanges() {
+		// only static methods
+	}
+
+	/**
+	 * select returns the ranges of the representation described by the response headers that the
+	 * request asks for.
+	 *
+	 * @param requestHeaders
+	 *            the headers of the request, with its Range and If-Range
+	 * @param responseHeaders
+	 *            the headers of the response, with the ETag and Last-Modified If-Range is
+	 *            compared with
+	 * @param length
+	 *            the length of the representation in bytes, or -1 if it is not known
+	 * @return empty if the full representation should be sent, an empty list if none of the
+	 *         requested ranges can be satisfied, otherwise the ranges to send
+	 */
+	public static Optional<List<ByteRange>> select(Map<String, String> requestHeaders,
+			Map<String, String> responseHeaders, long length) {
+		Optional<String> range = Headers.find(requestHeaders, "Range");
+		if (range.isEmpty() || length < 0 || !isIfRangeMatching(requestHeaders, responseHeaders)) {
+			return Optional.empty();
+		}
+		try {
+			return parse(range.get().trim(), length);
+		} catch (NumberFormatException e) {
+			return Optional.empty();
+		}
+	}
+
+	private static boolean isIfRangeMatching(Map<String, String> requestHeaders,
+			Map<String, String> responseHeaders) {
+		Optional<String> ifRange = Headers.find(requestHeaders, "If-Range");
+		if (ifRange.isEmpty()) {
+			return true;
+		}
+		String validator = ifRange.get().trim();
+		if (validator.startsWith("\"") || validator.startsWith("W/")) {
+			return isStrongMatch(validator, Headers.find(responseHeaders, "ETag"));
+		}
+		Optional<String> lastModified = Headers.find(responseHeaders, "Last-Modified");
+		return lastModified.isPresent() && lastModified.get().trim().equals(validator);
+	}
+
+	private static boolean isStrongMatch(String entityTag, Optional<String> etag) {
+		return !entityTag.startsWith("W/") && etag.isPresent()
+				&& etag.get().trim().equals(entityTag);
+	}
+
+	private static Optional<List<ByteRange>> parse(String range, long length) {
+		if (!range.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length())) {
+			return Optional.empty();
+		}
+		String[] specs = range.substring(BYTES_UNIT.length()).split(",");
+		if (specs.length > MAX_RANGES) {
+			return Optional.empty();
+		}
+		List<ByteRange> ranges = new ArrayList<>();
+		boolean specFound = false;
+		for (String spec : specs) {
+			String trimmed = spec.trim();
+			if (!trimmed.isEmpty()) {
+				specFound = true;
+				parseSpec(trimmed, length).ifPresent(ranges::add);
+			}
+		}
+		return specFound ? Optional.of(mergeRanges(ranges)) : Optional.empty();
+	}
+
+	private static Optional<ByteRange> parseSpec(String spec, long length) {
+		int dash = spec.indexOf('-');
+		if (dash < 0) {
+			throw new NumberFormatException("no dash in range " + spec);
+		}
+		if (dash == 0) {
+			return toSuffixRange(parseNumber(spec.substring(1)), length);
+		}
+		long first = parseNumber(spec.substring(0, dash));
+		String lastPart = spec.substring(dash + 1);
+		long last = lastPart.isEmpty() ? Long.MAX_VALUE : parseNumber(lastPart);
+		if (last < first) {
+			throw new NumberFormatException("last before first in range " + spec);
+		}
+		if (first >= length) {
+			return Optional.empty();
+		}
+		return Optional.of(new ByteRange(first, Math.min(last, length - 1)));
+	}
+
+	private static Optional<ByteRange> toSuffixRange(long suffixLength, long length) {
+		if (suffixLength == 0 || length == 0) {
+			return Optional.empty();
+		}
+		return Optional.of(new ByteRange(Math.max(0, length - suffixLength), length - 1));
+	}
+
+	private static long parseNumber(String number) {
+		String trimmed = number.trim();
+		if (trimmed.isEmpty() || !trimmed.chars().allMatch(c -> c >= '0' && c <= '9')) {
+			throw new NumberFormatException("not a byte position: " + number);
+		}
+		return Long.parseLong(trimmed);
+	}
+
+	private static List<ByteRange> mergeRanges(List<ByteRange> ranges) {
+		ranges.sort(Comparator.comparingLong(ByteRange::first));
+		List<ByteRange> merged = new ArrayList<>();
+		for (ByteRange byteRange : ranges) {
+			int lastIndex = merged.size() - 1;
+			if (lastIndex >= 0 && byteRange.first() <= merged.get(lastIndex).last() + 1) {
+				ByteRange previous = merged.get(lastIndex);
+				merged.set(lastIndex, new ByteRange(previous.first(),
+						Math.max(previous.last(), byteRange.last())));
+			} else {
+				merged.add(byteRange);
+			}
+		}
+		return merged;
+	}
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.http;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+
+/**
+ * ConditionalRequests holds the rules for validators (ETag and Last-Modified) in requests and
+ * responses: when a stored response is fresh, how to revalidate it with the image server and
+ * when a client already has the representation it asks for.
+ */
+public final class ConditionalRequests {
+	private static final String ETAG = "ETag";
+	private static final String LAST_MODIFIED = "Last-Modified";
+	private static final String IF_NONE_MATCH = "If-None-Match";
+	private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+	private static final String CACHE_CONTROL = "Cache-Control";
+	private static final List<String> CONDITIONAL_HEADERS = List.of(IF_NONE_MATCH,
+			IF_MODIFIED_SINCE, "If-Match", "If-Unmodified-Since", "If-Range");
+	private static final List<String> NOT_MODIFIED_HEADERS = List.of(ETAG, LAST_MODIFIED,
+			CACHE_CONTROL, "Expires", "Vary", "Content-Location", "Date");
+
+	private ConditionalRequests() {
+		// only static methods
+	}
+
+	/**
+	 * isNotModified returns true if the conditional headers of a request show that the client
+	 * already has the representation described by the response headers. If-None-Match is used
+	 * when present, If-Modified-Since only when it is not.
+	 */
+	public static boolean isNotModified(Map<String, String> requestHeaders,
+			Map<String, String> responseHeaders) {
+		Optional<String> ifNoneMatch = Headers.find(requestHeaders, IF_NONE_MATCH);
+		if (ifNoneMatch.isPresent()) {
+			return matchesAnyEntityTag(ifNoneMatch.get(), Headers.find(responseHeaders, ETAG));
+		}
+		Optional<String> ifModifiedSince = Headers.find(requestHeaders, IF_MODIFIED_SINCE);
+		Optional<String> lastModified = Headers.find(responseHeaders, LAST_MODIFIED);
+		return ifModifiedSince.isPresent() && lastModified.isPresent()
+				&& isNotModifiedSince(lastModified.get(), ifModifiedSince.get());
+	}
+
+	private static boolean matchesAnyEntityTag(String ifNoneMatch, Optional<String> etag) {
+		if (etag.isEmpty()) {
+			return false;
+		}
+		if ("*".equals(ifNoneMatch.trim())) {
+			return true;
+		}
+		String opaqueTag = stripWeakness(etag.get());
+		for (String candidate : ifNoneMatch.split(",")) {
+			if (stripWeakness(candidate).equals(opaqueTag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String stripWeakness(String entityTag) {
+		String trimmed = entityTag.trim();
+		return trimmed.startsWith("W/") ? trimmed.substring(2) : trimmed;
+	}
+
+	private static boolean isNotModifiedSince(String lastModified, String ifModifiedSince) {
+		Optional<ZonedDateTime> modified = parseHttpDate(lastModified);
+		Optional<ZonedDateTime> since = parseHttpDate(ifModifiedSince);
+		return modified.isPresent() && since.isPresent()
+				&& !modified.get().isAfter(since.get());
+	}
+
+	private static Optional<ZonedDateTime> parseHttpDate(String httpDate) {
+		try {
+			return Optional
+					.of(ZonedDateTime.parse(httpDate.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+		} catch (DateTimeParseException e) {
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * freshnessLifetime returns for how long a stored response may be used without revalidation.
+	 * The caches are shared, so s-maxage from Cache-Control is used before max-age, and the
+	 * default lifetime when the image server sent neither. Responses marked no-cache must always
+	 * be revalidated. Directive names are matched case-insensitively.
+	 */
+	public static Duration freshnessLifetime(Map<String, String> responseHeaders,
+			Duration defaultLifetime) {
+		Map<String, String> directives = readCacheControl(responseHeaders);
+		if (directives.containsKey("no-cache")) {
+			return Duration.ZERO;
+		}
+		if (directives.containsKey("s-maxage")) {
+			return parseSeconds(directives.get("s-maxage"), defaultLifetime);
+		}
+		if (directives.containsKey("max-age")) {
+			return parseSeconds(directives.get("max-age"), defaultLifetime);
+		}
+		return defaultLifetime;
+	}
+
+	/**
+	 * isMarkedNotToBeStored returns true if the Cache-Control of a response forbids storing it in
+	 * a shared cache: no-store, private, which is meant for the cache of one client only, and
+	 * no-cache when the response has no validator to revalidate it with.
+	 */
+	public static boolean isMarkedNotToBeStored(Map<String, String> responseHeaders) {
+		Map<String, String> directives = readCacheControl(responseHeaders);
+		return directives.containsKey("no-store") || directives.containsKey("private")
+				|| (directives.containsKey("no-cache") && !hasValidator(responseHeaders));
+	}
+
+	private static boolean hasValidator(Map<String, String> responseHeaders) {
+		return Headers.find(responseHeaders, ETAG).isPresent()
+				|| Headers.find(responseHeaders, LAST_MODIFIED).isPresent();
+	}
+
+	private static Map<String, String> readCacheControl(Map<String, String> headers) {
+		Map<String, String> directives = new LinkedHashMap<>();
+		Optional<String> cacheControl = Headers.find(headers, CACHE_CONTROL);
+		if (cacheControl.isPresent()) {
+			for (String directive : cacheControl.get().split(",")) {
+				addDirective(directives, directive.trim());
+			}
+		}
+		return directives;
+	}
+
+	private static void addDirective(Map<String, String> directives, String directive) {
+		int separator = directive.indexOf('=');
+		if (separator < 0) {
+			directives.putIfAbsent(directive.toLowerCase(Locale.ROOT), "");
+			return;
+		}
+		String name = directive.substring(0, separator).trim().toLowerCase(Locale.ROOT);
+		String value = directive.substring(separator + 1).trim().replace("\"", "");
+		directives.putIfAbsent(name, value);
+	}
+
+	private static Duration parseSeconds(String seconds, Duration defaultLifetime) {
+		try {
+			return Duration.ofSeconds(Long.parseLong(seconds));
+		} catch (NumberFormatException e) {
+			return defaultLifetime;
+		}
+	}
+
+	/**
+	 * createRevalidationHeaders returns the request headers with the client's own conditional
+	 * headers replaced by the validators of the stored response.
+	 */
+	public static Map<String, String> createRevalidationHeaders(
+			Map<String, String> requestHeaders, Map<String, String> storedHeaders) {
+		Map<String, String> headers = new LinkedHashMap<>();
+		for (Entry<String, String> header : requestHeaders.entrySet()) {
+			if (!isConditionalHeader(header.getKey())) {
+				headers.put(header.getKey(), header.getValue());
+			}
+		}
+		Headers.find(storedHeaders, ETAG).ifPresent(etag -> headers.put(IF_NONE_MATCH, etag));
+		Headers.find(storedHeaders, LAST_MODIFIED)
+				.ifPresent(lastModified -> headers.put(IF_MODIFIED_SINCE, lastModified));
+		return headers;
+	}
+
+	private static boolean isConditionalHeader(String name) {
+		for (String conditionalHeader : CONDITIONAL_HEADERS) {
+			if (conditionalHeader.equalsIgnoreCase(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * createNotModifiedHeaders returns the headers of the stored response that belong in a 304
+	 * response.
+	 */
+	public static Map<String, String> createNotModifiedHeaders(
+			Map<String, String> storedHeaders) {
+		Map<String, String> headers = new LinkedHashMap<>();
+		for (String name : NOT_MODIFIED_HEADERS) {
+			Headers.find(storedHeaders, name).ifPresent(value -> headers.put(name, value));
+		}
+		return headers;
+	}
+
+	/**
+	 * updateStoredHeaders returns the stored headers updated with the validator and freshness
+	 * headers of a 304 response to a revalidation.
+	 */
+	public static Map<String, String> updateStoredHeaders(Map<String, String> storedHeaders,
+			Map<String, String> notModifiedHeaders) {
+		Map<String, String> headers = new LinkedHashMap<>(storedHeaders);
+		for (String name : NOT_MODIFIED_HEADERS) {
+			Optional<String> value = Headers.find(notModifiedHeaders, name);
+			if (value.isPresent()) {
+				headers.keySet().removeIf(name::equalsIgnoreCase);
+				headers.put(name, value.get());
+			}
+		}
+		return headers;
+	}
+}
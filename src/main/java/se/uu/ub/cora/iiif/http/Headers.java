@@ -0,0 +1,50 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.http;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+
+/**
+ * Headers finds header values in header maps where the case of the header names is not known.
+ */
+public final class Headers {
+
+	private Headers() {
+		// only static methods
+	}
+
+	public static Optional<String> find(Map<String, String> headers, String name) {
+		String value = headers.get(name);
+		if (value != null) {
+			return Optional.of(value);
+		}
+		return findIgnoringCase(headers, name);
+	}
+
+	private static Optional<String> findIgnoringCase(Map<String, String> headers, String name) {
+		for (Entry<String, String> header : headers.entrySet()) {
+			if (header.getKey().equalsIgnoreCase(name)) {
+				return Optional.ofNullable(header.getValue());
+			}
+		}
+		return Optional.empty();
+	}
+}
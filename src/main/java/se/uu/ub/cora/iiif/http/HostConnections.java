@@ -0,0 +1,161 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.http;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * HostConnections limits the number of simultaneous exchanges with one host. Leases are handed
+ * out in the order they were asked for, and a lease that is not available is waited for as a
+ * future, so that waiting does not have to hold a thread.
+ */
+class HostConnections {
+	private final int maxConnections;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Queue<CompletableFuture<Void>> waiting = new ArrayDeque<>();
+	private int available;
+	private final LongAdder leasesGranted = new LongAdder();
+	private final LongAdder leasesWaitedFor = new LongAdder();
+	private final LongAdder leaseTimeouts = new LongAdder();
+
+	HostConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+		available = maxConnections;
+	}
+
+	/**
+	 * leaseAsync returns a future that completes when a lease is granted, or exceptionally with a
+	 * {@link TimeoutException} if none was within the timeout. Cancelling the future gives up the
+	 * place in the queue.
+	 */
+	CompletableFuture<Void> leaseAsync(Duration timeout) {
+		lock.lock();
+		try {
+			if (available > 0 && waiting.isEmpty()) {
+				available--;
+				leasesGranted.increment();
+				return CompletableFuture.completedFuture(null);
+			}
+			return waitForLease(timeout);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private CompletableFuture<Void> waitForLease(Duration timeout) {
+		leasesWaitedFor.increment();
+		CompletableFuture<Void> lease = new CompletableFuture<>();
+		waiting.add(lease);
+		lease.whenComplete((granted, exception) -> {
+			if (exception != null) {
+				stopWaiting(lease, exception);
+			}
+		});
+		lease.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS);
+		return lease;
+	}
+
+	private void stopWaiting(CompletableFuture<Void> lease, Throwable exception) {
+		if (exception instanceof TimeoutException) {
+			leaseTimeouts.increment();
+		}
+		lock.lock();
+		try {
+			waiting.remove(lease);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * release hands the lease over to the first one waiting for it that has not timed out or been
+	 * cancelled. The lease is handed over outside the lock, as what the waiting one does next runs
+	 * on the releasing thread.
+	 */
+	void release() {
+		CompletableFuture<Void> next = pollWaitingOrMakeAvailable();
+		while (next != null) {
+			if (next.complete(null)) {
+				leasesGranted.increment();
+				return;
+			}
+			next = pollWaitingOrMakeAvailable();
+		}
+	}
+
+	private CompletableFuture<Void> pollWaitingOrMakeAvailable() {
+		lock.lock();
+		try {
+			CompletableFuture<Void> next = waiting.poll();
+			if (next == null) {
+				available++;
+			}
+			return next;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	int leased() {
+		lock.lock();
+		try {
+			return maxConnections - available;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	int waiting() {
+		lock.lock();
+		try {
+			return countStillWaiting();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private int countStillWaiting() {
+		int stillWaiting = 0;
+		for (CompletableFuture<Void> lease : waiting) {
+			if (!lease.isDone()) {
+				stillWaiting++;
+			}
+		}
+		return stillWaiting;
+	}
+
+	long leasesGranted() {
+		return leasesGranted.sum();
+	}
+
+	long leasesWaitedFor() {
+		return leasesWaitedFor.sum();
+	}
+
+	long leaseTimeouts() {
+		return leaseTimeouts.sum();
+	}
+}
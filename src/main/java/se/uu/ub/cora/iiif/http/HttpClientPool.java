@@ -0,0 +1,264 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.text.MessageFormat;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.IntPredicate;
+
+import se.uu.ub.cora.binary.BinaryException;
+
+/**
+ * HttpClientPool sends requests through one shared {@link HttpClient}, so that connections to the
+ * image server are kept alive and reused between requests instead of being opened for each tile.
+ * <p>
+ * The HttpClient keeps idle HTTP/1.1 connections open, and a HTTP/1.1 connection serves one
+ * exchange at a time. By limiting the number of simultaneous exchanges per host the pool also
+ * bounds the number of open connections to each host. A connection is leased until the response
+ * body has been read to the end or closed.
+ * <p>
+ * Requests are sent asynchronously, waiting for a lease as well as for the response, and
+ * {@link #send(HttpRequest)} only waits for {@link #sendAsync(HttpRequest)} to complete.
+ * Cancelling a pending response gives up the lease, or the exchange if it has started.
+ * <p>
+ * HTTP/1.1 is used as calls to IIPImage hang when HTTP/2 is negotiated.
+ */
+public class HttpClientPool {
+	private static final IntPredicate KEEP_ALL_BODIES = status -> false;
+	private final HttpClient httpClient;
+	private final PoolSettings poolSettings;
+	private final Map<String, HostConnections> hosts = new ConcurrentHashMap<>();
+
+	public HttpClientPool(PoolSettings poolSettings) {
+		this.poolSettings = poolSettings;
+		httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+				.connectTimeout(poolSettings.connectTimeout()).build();
+	}
+
+	public HttpResponse<InputStream> send(HttpRequest request) {
+		CompletableFuture<HttpResponse<InputStream>> response = sendAsync(request);
+		try {
+			return response.get();
+		} catch (InterruptedException e) {
+			response.cancel(true);
+			Thread.currentThread().interrupt();
+			throw BinaryException.withMessageAndException("Interrupted while calling host", e);
+		} catch (ExecutionException e) {
+			throw asBinaryException(e.getCause());
+		}
+	}
+
+	private BinaryException asBinaryException(Throwable cause) {
+		if (cause instanceof BinaryException binaryException) {
+			return binaryException;
+		}
+		return exchangeFailed(cause);
+	}
+
+	public CompletableFuture<HttpResponse<InputStream>> sendAsync(HttpRequest request) {
+		return sendAsync(request, KEEP_ALL_BODIES);
+	}
+
+	/**
+	 * sendAsync sends the request once a connection to its host can be leased. Bodies of
+	 * responses with a status matching discardBodyOfStatus are read and discarded without
+	 * blocking, so that their connection is released and can be reused before the response
+	 * completes, and the response gets an empty body.
+	 * <p>
+	 * The returned future completes exceptionally with a {@link BinaryException} if no connection
+	 * could be leased within the lease timeout or the exchange fails.
+	 */
+	public CompletableFuture<HttpResponse<InputStream>> sendAsync(HttpRequest request,
+			IntPredicate discardBodyOfStatus) {
+		String host = hostKey(request.uri());
+		HostConnections hostConnections = hosts.computeIfAbsent(host,
+				key -> new HostConnections(poolSettings.maxConnectionsPerHost()));
+		return new PendingExchange(request, host, hostConnections, discardBodyOfStatus).start();
+	}
+
+	private String hostKey(URI uri) {
+		return uri.getScheme() + "://" + uri.getAuthority();
+	}
+
+	private final class PendingExchange {
+		private final HttpRequest request;
+		private final String host;
+		private final HostConnections hostConnections;
+		private final IntPredicate discardBodyOfStatus;
+		private final CompletableFuture<HttpResponse<InputStream>> response;
+		private CompletableFuture<Void> lease;
+		private volatile CompletableFuture<HttpResponse<InputStream>> exchange;
+
+		PendingExchange(HttpRequest request, String host, HostConnections hostConnections,
+				IntPredicate discardBodyOfStatus) {
+			this.request = request;
+			this.host = host;
+			this.hostConnections = hostConnections;
+			this.discardBodyOfStatus = discardBodyOfStatus;
+			response = new CompletableFuture<>();
+		}
+
+		CompletableFuture<HttpResponse<InputStream>> start() {
+			lease = hostConnections.leaseAsync(poolSettings.leaseTimeout());
+			lease.whenComplete(this::leaseCompleted);
+			response.whenComplete((httpResponse, exception) -> cancelIfCancelled());
+			return response;
+		}
+
+		private void leaseCompleted(Void granted, Throwable exception) {
+			if (exception != null) {
+				response.completeExceptionally(leaseFailed(host, unwrap(exception)));
+				return;
+			}
+			if (response.isDone()) {
+				hostConnections.release();
+				return;
+			}
+			exchange = httpClient.sendAsync(request,
+					leasedBodyHandler(hostConnections, discardBodyOfStatus));
+			exchange.whenComplete(this::exchangeCompleted);
+			cancelIfCancelled();
+		}
+
+		private void exchangeCompleted(HttpResponse<InputStream> httpResponse,
+				Throwable exception) {
+			if (exception != null) {
+				hostConnections.release();
+				response.completeExceptionally(exchangeFailed(unwrap(exception)));
+				return;
+			}
+			if (!response.complete(httpResponse)) {
+				closeQuietly(httpResponse.body());
+			}
+		}
+
+		private void cancelIfCancelled() {
+			if (!response.isCancelled()) {
+				return;
+			}
+			lease.cancel(false);
+			CompletableFuture<HttpResponse<InputStream>> startedExchange = exchange;
+			if (startedExchange != null) {
+				startedExchange.cancel(true);
+			}
+		}
+	}
+
+	private Throwable unwrap(Throwable exception) {
+		if (exception instanceof CompletionException && exception.getCause() != null) {
+			return exception.getCause();
+		}
+		return exception;
+	}
+
+	private Exception toException(Throwable cause) {
+		return cause instanceof Exception exception ? exception : new RuntimeException(cause);
+	}
+
+	private BinaryException exchangeFailed(Throwable cause) {
+		return BinaryException.withMessageAndException(cause.getMessage(), toException(cause));
+	}
+
+	private BinaryException leaseFailed(String host, Throwable cause) {
+		if (cause instanceof TimeoutException) {
+			return noConnectionAvailable(host);
+		}
+		if (cause instanceof CancellationException cancellation) {
+			return BinaryException.withMessageAndException("Cancelled while waiting for connection",
+					cancellation);
+		}
+		return exchangeFailed(cause);
+	}
+
+	private BinaryException noConnectionAvailable(String host) {
+		String message = "No connection to {0} available within {1} ms";
+		return BinaryException.withMessage(
+				MessageFormat.format(message, host, poolSettings.leaseTimeout().toMillis()));
+	}
+
+	private BodyHandler<InputStream> leasedBodyHandler(HostConnections hostConnections,
+			IntPredicate discardBodyOfStatus) {
+		return responseInfo -> {
+			if (discardBodyOfStatus.test(responseInfo.statusCode())) {
+				return BodySubscribers.mapping(BodySubscribers.discarding(),
+						discarded -> releaseWithEmptyBody(hostConnections));
+			}
+			return BodySubscribers.mapping(BodyHandlers.ofInputStream().apply(responseInfo),
+					body -> new LeasedInputStream(body, hostConnections));
+		};
+	}
+
+	private InputStream releaseWithEmptyBody(HostConnections hostConnections) {
+		hostConnections.release();
+		return InputStream.nullInputStream();
+	}
+
+	private void closeQuietly(InputStream body) {
+		try {
+			body.close();
+		} catch (IOException e) {
+			// the response was not wanted
+		}
+	}
+
+	public PoolMetrics getMetrics() {
+		int leased = 0;
+		long granted = 0;
+		long waited = 0;
+		long timeouts = 0;
+		for (HostConnections hostConnections : hosts.values()) {
+			leased += hostConnections.leased();
+			granted += hostConnections.leasesGranted();
+			waited += hostConnections.leasesWaitedFor();
+			timeouts += hostConnections.leaseTimeouts();
+		}
+		return new PoolMetrics(hosts.size(), leased, granted, waited, timeouts);
+	}
+
+	public PoolSettings getPoolSettings() {
+		return poolSettings;
+	}
+
+	int onlyForTestGetNumberOfWaitingLeases() {
+		int waiting = 0;
+		for (HostConnections hostConnections : hosts.values()) {
+			waiting += hostConnections.waiting();
+		}
+		return waiting;
+	}
+
+	HttpClient onlyForTestGetHttpClient() {
+		return httpClient;
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * LeasedInputStream gives the connection lease back to its host when the body has been read to
+ * the end or is closed, whichever happens first.
+ */
+class LeasedInputStream extends FilterInputStream {
+	private final HostConnections hostConnections;
+	private final AtomicBoolean released = new AtomicBoolean(false);
+
+	LeasedInputStream(InputStream body, HostConnections hostConnections) {
+		super(body);
+		this.hostConnections = hostConnections;
+	}
+
+	@Override
+	public int read() throws IOException {
+		return releaseIfEndOfStream(super.read());
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+		return releaseIfEndOfStream(super.read(buffer, offset, length));
+	}
+
+	private int releaseIfEndOfStream(int result) {
+		if (result == -1) {
+			release();
+		}
+		return result;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			super.close();
+		} finally {
+			release();
+		}
+	}
+
+	void release() {
+		if (released.compareAndSet(false, true)) {
+			hostConnections.release();
+		}
+	}
+}
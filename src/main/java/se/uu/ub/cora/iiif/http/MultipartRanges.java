@@ -0,0 +1,111 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * MultipartRanges describes a multipart/byteranges body holding several ranges of one
+ * representation, each part with its own Content-Range. The ranges must be sorted and must not
+ * overlap, as {@link ByteRanges} selects them, so that the body of the representation is read
+ * once from start to end. The length of the multipart body is known before it is read.
+ */
+public final class MultipartRanges {
+	private static final String CRLF = "\r\n";
+	private final String boundary;
+	private final List<ByteRange> ranges;
+	private final List<byte[]> partHeaders = new ArrayList<>();
+	private final byte[] closingBoundary;
+
+	public MultipartRanges(String boundary, Optional<String> partContentType, long length,
+			List<ByteRange> ranges) {
+		this.boundary = boundary;
+		this.ranges = List.copyOf(ranges);
+		for (ByteRange range : ranges) {
+			partHeaders.add(createPartHeader(partContentType, length, range));
+		}
+		closingBoundary = toBytes(CRLF + "--" + boundary + "--" + CRLF);
+	}
+
+	private byte[] createPartHeader(Optional<String> partContentType, long length,
+			ByteRange range) {
+		StringBuilder header = new StringBuilder();
+		if (!partHeaders.isEmpty()) {
+			header.append(CRLF);
+		}
+		header.append("--").append(boundary).append(CRLF);
+		partContentType.ifPresent(
+				contentType -> header.append("Content-Type: ").append(contentType).append(CRLF));
+		header.append("Content-Range: ").append(range.toContentRange(length)).append(CRLF)
+				.append(CRLF);
+		return toBytes(header.toString());
+	}
+
+	private static byte[] toBytes(String text) {
+		return text.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	public String getContentType() {
+		return "multipart/byteranges; boundary=" + boundary;
+	}
+
+	public long getContentLength() {
+		long contentLength = closingBoundary.length;
+		for (int i = 0; i < ranges.size(); i++) {
+			contentLength += partHeaders.get(i).length + ranges.get(i).length();
+		}
+		return contentLength;
+	}
+
+	/**
+	 * createBody returns the multipart body, reading the parts from the body of the full
+	 * representation as it is read. Closing the multipart body closes the body of the
+	 * representation.
+	 */
+	public InputStream createBody(InputStream body) {
+		List<InputStream> parts = new ArrayList<>();
+		long position = 0;
+		for (int i = 0; i < ranges.size(); i++) {
+			ByteRange range = ranges.get(i);
+			parts.add(new ByteArrayInputStream(partHeaders.get(i)));
+			parts.add(new RangeInputStream(body, range.first() - position, range.length(), false));
+			position = range.last() + 1;
+		}
+		parts.add(new ByteArrayInputStream(closingBoundary));
+		return new FilterInputStream(new SequenceInputStream(Collections.enumeration(parts))) {
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					body.close();
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.http;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MultiplexedClients holds a few {@link HttpClient}s using HTTP/2. A HttpClient multiplexes all
+ * its exchanges with a host over one HTTP/2 connection, so each client is one connection per
+ * host, and handing out the clients in turn spreads the streams over that many connections.
+ * <p>
+ * For http URLs the clients upgrade to HTTP/2 without TLS (h2c) with an Upgrade header on the
+ * first request of a connection, and stay with HTTP/1.1 if the host does not accept it.
+ */
+public class MultiplexedClients {
+	private final List<HttpClient> httpClients = new ArrayList<>();
+	private final AtomicInteger nextClient = new AtomicInteger();
+
+	public MultiplexedClients(int connectionsPerHost, Duration connectTimeout) {
+		if (connectionsPerHost < 1) {
+			throw new IllegalArgumentException("connectionsPerHost must be at least 1");
+		}
+		for (int i = 0; i < connectionsPerHost; i++) {
+			httpClients.add(HttpClient.newBuilder().version(HttpClient.Version.HTTP_2)
+					.connectTimeout(connectTimeout).build());
+		}
+	}
+
+	/**
+	 * next returns the client to send the next request with.
+	 */
+	public HttpClient next() {
+		return httpClients.get(Math.floorMod(nextClient.getAndIncrement(), httpClients.size()));
+	}
+
+	public int getConnectionsPerHost() {
+		return httpClients.size();
+	}
+}
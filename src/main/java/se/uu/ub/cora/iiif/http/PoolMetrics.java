@@ -0,0 +1,37 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.http;
+
+/**
+ * PoolMetrics is a snapshot of the state of a {@link HttpClientPool}.
+ *
+ * @param hosts
+ *            the number of hosts the pool has connected to
+ * @param leased
+ *            the number of connections currently in use
+ * @param leasesGranted
+ *            the total number of requests that have been given a connection
+ * @param leasesWaitedFor
+ *            the number of requests that had to wait for a free connection
+ * @param leaseTimeouts
+ *            the number of requests that gave up waiting for a free connection
+ */
+public record PoolMetrics(int hosts, int leased, long leasesGranted, long leasesWaitedFor,
+		long leaseTimeouts) {
+}
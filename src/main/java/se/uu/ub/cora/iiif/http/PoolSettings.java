@@ -0,0 +1,41 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.http;
+
+import java.time.Duration;
+
+/**
+ * PoolSettings configures a {@link HttpClientPool}.
+ *
+ * @param maxConnectionsPerHost
+ *            the maximum number of simultaneous connections (and thereby requests) to one host
+ * @param connectTimeout
+ *            the time allowed to establish a new connection
+ * @param leaseTimeout
+ *            the time a request may wait for a free connection before it fails
+ */
+public record PoolSettings(int maxConnectionsPerHost, Duration connectTimeout,
+		Duration leaseTimeout) {
+
+	public PoolSettings {
+		if (maxConnectionsPerHost < 1) {
+			throw new IllegalArgumentException("maxConnectionsPerHost must be at least 1");
+		}
+	}
+}
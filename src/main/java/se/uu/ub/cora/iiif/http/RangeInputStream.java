@@ -0,0 +1,126 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.http;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * RangeInputStream reads one {@link ByteRange} of a body. The bytes before the range are skipped
+ * on the first read, not when the stream is created, and the body is not read past the end of
+ * the range. A body that ends before the range does is an error, as the length of the range has
+ * already been promised to the client.
+ */
+public class RangeInputStream extends FilterInputStream {
+	private final boolean closesBody;
+	private long bytesToSkip;
+	private long remaining;
+
+	public RangeInputStream(InputStream body, ByteRange range) {
+		this(body, range.first(), range.length(), true);
+	}
+
+	RangeInputStream(InputStream body, long bytesToSkip, long length, boolean closesBody) {
+		super(body);
+		this.bytesToSkip = bytesToSkip;
+		this.remaining = length;
+		this.closesBody = closesBody;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!skipToRange()) {
+			return -1;
+		}
+		int value = super.read();
+		if (value == -1) {
+			throw endedBeforeRange();
+		}
+		remaining--;
+		return value;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+		if (length == 0) {
+			return 0;
+		}
+		if (!skipToRange()) {
+			return -1;
+		}
+		int read = super.read(buffer, offset, (int) Math.min(length, remaining));
+		if (read == -1) {
+			throw endedBeforeRange();
+		}
+		remaining -= read;
+		return read;
+	}
+
+	private boolean skipToRange() throws IOException {
+		if (bytesToSkip > 0) {
+			skipBytesBeforeRange();
+		}
+		return remaining > 0;
+	}
+
+	private void skipBytesBeforeRange() throws IOException {
+		try {
+			in.skipNBytes(bytesToSkip);
+			bytesToSkip = 0;
+		} catch (EOFException e) {
+			throw endedBeforeRange();
+		}
+	}
+
+	private EOFException endedBeforeRange() {
+		return new EOFException("Body ended before the end of the requested range");
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		if (!skipToRange()) {
+			return 0;
+		}
+		long skipped = super.skip(Math.min(n, remaining));
+		remaining -= skipped;
+		return skipped;
+	}
+
+	@Override
+	public int available() throws IOException {
+		if (bytesToSkip > 0) {
+			return 0;
+		}
+		return (int) Math.min(super.available(), remaining);
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closesBody) {
+			super.close();
+		}
+	}
+}
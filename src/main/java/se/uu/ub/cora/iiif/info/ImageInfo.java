@@ -0,0 +1,42 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.info;
+
+import java.util.List;
+
+/**
+ * ImageInfo holds the parts of an image's info.json that the adapter makes use of, the full size
+ * of the image, the tiles and sizes the image server offers, its compliance profile and whether
+ * the image is offered in color.
+ */
+public record ImageInfo(int width, int height, List<TileSize> tiles, List<ImageSize> sizes,
+		String profile, boolean color) {
+
+	public ImageInfo {
+		if (width < 1 || height < 1) {
+			throw new IllegalArgumentException("width and height must be at least 1");
+		}
+		tiles = List.copyOf(tiles);
+		sizes = List.copyOf(sizes);
+	}
+
+	public ImageInfo(int width, int height, List<TileSize> tiles) {
+		this(width, height, tiles, List.of(), "", false);
+	}
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.info;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ImageInfoParser reads an {@link ImageInfo} from an info.json document of version 2 or 3 of the
+ * IIIF Image API. Only the size of the image, its tiles and sizes, its profile and whether it is
+ * offered in color are read, everything else in the document is skipped. The parser also notes
+ * where the id of the document is, so that it can be rewritten without parsing the document
+ * again.
+ */
+public final class ImageInfoParser {
+	private static final String COLOR = "color";
+	private final String json;
+	private int position = 0;
+	private int depth = 0;
+	private int idStart = -1;
+	private int idEnd = -1;
+
+	ImageInfoParser(String json) {
+		this.json = json;
+	}
+
+	/**
+	 * parse returns the image info in the given info.json document.
+	 *
+	 * @throws InvalidImageInfoException
+	 *             if the document is not JSON or has no width and height
+	 */
+	public static ImageInfo parse(String json) {
+		return new ImageInfoParser(json).readImageInfo();
+	}
+
+	ImageInfo readImageInfo() {
+		Object document = readDocument();
+		if (!(document instanceof Map<?, ?> info)) {
+			throw new InvalidImageInfoException("info.json is not a JSON object");
+		}
+		return toImageInfo(info);
+	}
+
+	/**
+	 * getIdStart returns the position of the first character of the value of the top level id or
+	 * {@literal @}id of the document read, or -1 if it has none.
+	 */
+	int getIdStart() {
+		return idStart;
+	}
+
+	/**
+	 * getIdEnd returns the position just after the last character of the value of the top level
+	 * id or {@literal @}id of the document read, or -1 if it has none.
+	 */
+	int getIdEnd() {
+		return idEnd;
+	}
+
+	private static ImageInfo toImageInfo(Map<?, ?> info) {
+		int width = readSize(info, "width");
+		int height = readSize(info, "height");
+		return new ImageInfo(width, height, readTiles(info), readSizes(info), readProfile(info),
+				isOfferedInColor(info));
+	}
+
+	private static int readSize(Map<?, ?> object, String name) {
+		if (object.get(name) instanceof Number number && number.intValue() > 0) {
+			return number.intValue();
+		}
+		throw new InvalidImageInfoException("info.json has no valid " + name);
+	}
+
+	private static List<TileSize> readTiles(Map<?, ?> info) {
+		List<TileSize> tiles = new ArrayList<>();
+		if (info.get("tiles") instanceof List<?> tileList) {
+			for (Object tile : tileList) {
+				if (tile instanceof Map<?, ?> tileObject) {
+					tiles.add(toTileSize(tileObject));
+				}
+			}
+		}
+		return tiles;
+	}
+
+	private static TileSize toTileSize(Map<?, ?> tile) {
+		int width = readSize(tile, "width");
+		int height = tile.containsKey("height") ? readSize(tile, "height") : width;
+		List<Integer> scaleFactors = new ArrayList<>();
+		if (tile.get("scaleFactors") instanceof List<?> factors) {
+			for (Object factor : factors) {
+				if (factor instanceof Number number && number.intValue() > 0) {
+					scaleFactors.add(number.intValue());
+				}
+			}
+		}
+		return new TileSize(width, height, scaleFactors);
+	}
+
+	private static List<ImageSize> readSizes(Map<?, ?> info) {
+		List<ImageSize> sizes = new ArrayList<>();
+		if (info.get("sizes") instanceof List<?> sizeList) {
+			for (Object size : sizeList) {
+				if (size instanceof Map<?, ?> sizeObject) {
+					sizes.add(new ImageSize(readSize(sizeObject, "width"),
+							readSize(sizeObject, "height")));
+				}
+			}
+		}
+		return sizes;
+	}
+
+	private static String readProfile(Map<?, ?> info) {
+		Object profile = info.get("profile");
+		if (profile instanceof List<?> profileList && !profileList.isEmpty()) {
+			profile = profileList.get(0);
+		}
+		return profile instanceof String profileName ? profileName : "";
+	}
+
+	private static boolean isOfferedInColor(Map<?, ?> info) {
+		if (containsColor(info.get("extraQualities"))) {
+			return true;
+		}
+		if (info.get("profile") instanceof List<?> profileList) {
+			for (Object profilePart : profileList) {
+				if (profilePart instanceof Map<?, ?> profileObject
+						&& containsColor(profileObject.get("qualities"))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static boolean containsColor(Object qualities) {
+		return qualities instanceof List<?> qualityList && qualityList.contains(COLOR);
+	}
+
+	private Object readDocument() {
+		Object value = readValue();
+		skipWhitespace();
+		if (position != json.length()) {
+			throw invalid("unexpected content after the document");
+		}
+		return value;
+	}
+
+	private Object readValue() {
+		skipWhitespace();
+		if (position >= json.length()) {
+			throw invalid("unexpected end of document");
+		}
+		char c = json.charAt(position);
+		return switch (c) {
+			case '{' -> readObject();
+			case '[' -> readArray();
+			case '"' -> readString();
+			case 't' -> readLiteral("true", Boolean.TRUE);
+			case 'f' -> readLiteral("false", Boolean.FALSE);
+			case 'n' -> readLiteral("null", null);
+			default -> readNumber();
+		};
+	}
+
+	private Map<String, Object> readObject() {
+		Map<String, Object> object = new LinkedHashMap<>();
+		position++;
+		depth++;
+		skipWhitespace();
+		if (tryConsume('}')) {
+			depth--;
+			return object;
+		}
+		do {
+			skipWhitespace();
+			if (!isAt('"')) {
+				throw invalid("expected a name");
+			}
+			String name = readString();
+			skipWhitespace();
+			expect(':');
+			object.put(name, readMemberValue(name));
+			skipWhitespace();
+		} while (tryConsume(','));
+		expect('}');
+		depth--;
+		return object;
+	}
+
+	private Object readMemberValue(String name) {
+		skipWhitespace();
+		if (depth == 1 && isAt('"') && ("id".equals(name) || "@id".equals(name))) {
+			int start = position + 1;
+			Object value = readString();
+			idStart = start;
+			idEnd = position - 1;
+			return value;
+		}
+		return readValue();
+	}
+
+	private List<Object> readArray() {
+		List<Object> array = new ArrayList<>();
+		position++;
+		skipWhitespace();
+		if (tryConsume(']')) {
+			return array;
+		}
+		do {
+			array.add(readValue());
+			skipWhitespace();
+		} while (tryConsume(','));
+		expect(']');
+		return array;
+	}
+
+	private String readString() {
+		StringBuilder value = new StringBuilder();
+		position++;
+		while (position < json.length()) {
+			char c = json.charAt(position++);
+			if (c == '"') {
+				return value.toString();
+			}
+			value.append(c == '\\' ? readEscaped() : c);
+		}
+		throw invalid("unterminated string");
+	}
+
+	private char readEscaped() {
+		if (position >= json.length()) {
+			throw invalid("unterminated string");
+		}
+		char c = json.charAt(position++);
+		return switch (c) {
+			case 'b' -> '\b';
+			case 'f' -> '\f';
+			case 'n' -> '\n';
+			case 'r' -> '\r';
+			case 't' -> '\t';
+			case 'u' -> readUnicodeEscape();
+			default -> c;
+		};
+	}
+
+	private char readUnicodeEscape() {
+		if (position + 4 > json.length()) {
+			throw invalid("unterminated string");
+		}
+		try {
+			char c = (char) Integer.parseInt(json.substring(position, position + 4), 16);
+			position += 4;
+			return c;
+		} catch (NumberFormatException e) {
+			throw invalid("invalid unicode escape");
+		}
+	}
+
+	private Object readLiteral(String literal, Object value) {
+		if (!json.startsWith(literal, position)) {
+			throw invalid("unexpected character");
+		}
+		position += literal.length();
+		return value;
+	}
+
+	private Number readNumber() {
+		int start = position;
+		while (position < json.length() && isNumberCharacter(json.charAt(position))) {
+			position++;
+		}
+		try {
+			return Double.valueOf(json.substring(start, position));
+		} catch (NumberFormatException e) {
+			throw invalid("unexpected character");
+		}
+	}
+
+	private boolean isNumberCharacter(char c) {
+		return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e'
+				|| c == 'E';
+	}
+
+	private void skipWhitespace() {
+		while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+			position++;
+		}
+	}
+
+	private boolean isAt(char c) {
+		return position < json.length() && json.charAt(position) == c;
+	}
+
+	private boolean tryConsume(char c) {
+		if (isAt(c)) {
+			position++;
+			return true;
+		}
+		return false;
+	}
+
+	private void expect(char c) {
+		if (!tryConsume(c)) {
+			throw invalid("expected '" + c + "'");
+		}
+	}
+
+	private InvalidImageInfoException invalid(String problem) {
+		return new InvalidImageInfoException(
+				"info.json is not valid JSON, " + problem + " at position " + position);
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.info;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import se.uu.ub.cora.iiif.cache.CacheStatistics;
+import se.uu.ub.cora.iiif.uri.SourceImage;
+import se.uu.ub.cora.iiif.uri.SourceImageLookup;
+
+/**
+ * InfoCache keeps the {@link InfoDocument} of images by identifier, for a time to live. It keeps
+ * at most max entries, forgetting the document stored longest ago first.
+ * <p>
+ * As a {@link SourceImageLookup} it tells the canonicalizer the size of the images it has
+ * documents for, without calling the image server. Lookups are not counted as hits or misses.
+ */
+public class InfoCache implements SourceImageLookup {
+	private final int maxEntries;
+	private final long timeToLiveMillis;
+	private final Clock clock;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private long bytes = 0;
+
+	private record Entry(InfoDocument document, long storedAtMillis) {
+	}
+
+	public InfoCache(int maxEntries, Duration timeToLive, Clock clock) {
+		this.maxEntries = maxEntries;
+		this.timeToLiveMillis = timeToLive.toMillis();
+		this.clock = clock;
+	}
+
+	/**
+	 * get returns the document stored for the identifier, if there is one that has not expired.
+	 */
+	public Optional<InfoDocument> get(String identifier) {
+		lock.lock();
+		try {
+			Optional<InfoDocument> document = getIfNotExpired(identifier);
+			if (document.isPresent()) {
+				hits.increment();
+			} else {
+				misses.increment();
+			}
+			return document;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private Optional<InfoDocument> getIfNotExpired(String identifier) {
+		Entry entry = entries.get(identifier);
+		if (entry == null) {
+			return Optional.empty();
+		}
+		if (clock.millis() - entry.storedAtMillis >= timeToLiveMillis) {
+			remove(identifier);
+			return Optional.empty();
+		}
+		return Optional.of(entry.document);
+	}
+
+	@Override
+	public Optional<SourceImage> lookup(String identifier) {
+		lock.lock();
+		try {
+			return getIfNotExpired(identifier).map(InfoDocument::toSourceImage);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void put(String identifier, InfoDocument document) {
+		lock.lock();
+		try {
+			remove(identifier);
+			entries.put(identifier, new Entry(document, clock.millis()));
+			bytes += document.getBodyLength();
+			evictWhileOverMaxEntries();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void evictWhileOverMaxEntries() {
+		Iterator<Entry> iterator = entries.values().iterator();
+		while (entries.size() > maxEntries) {
+			bytes -= iterator.next().document.getBodyLength();
+			iterator.remove();
+			evictions.increment();
+		}
+	}
+
+	/**
+	 * invalidate removes the document stored for the identifier, so that the next request for it
+	 * reads it from the image server again.
+	 */
+	public void invalidate(String identifier) {
+		lock.lock();
+		try {
+			remove(identifier);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void remove(String identifier) {
+		Entry removed = entries.remove(identifier);
+		if (removed != null) {
+			bytes -= removed.document.getBodyLength();
+		}
+	}
+
+	/**
+	 * getStatistics returns a snapshot of the counters, with the stored documents as entries.
+	 */
+	public CacheStatistics getStatistics() {
+		lock.lock();
+		try {
+			return new CacheStatistics(hits.sum(), misses.sum(), evictions.sum(), entries.size(),
+					bytes);
+		} finally {
+			lock.unlock();
+		}
+	}
+}
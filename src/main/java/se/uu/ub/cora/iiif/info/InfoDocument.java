@@ -0,0 +1,122 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.info;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.iiif.uri.SourceImage;
+
+/**
+ * InfoDocument is an info.json response read once and kept ready to be served again, the parsed
+ * {@link ImageInfo} together with the bytes and headers of the response. When a public base URL
+ * is given, the id of the document is rewritten to the public base URL followed by the
+ * identifier as the document is read, so that serving it is only a matter of handing out the
+ * bytes.
+ */
+public final class InfoDocument {
+	private static final int HTTP_OK = 200;
+	private static final String CONTENT_LENGTH = "Content-Length";
+	private final ImageInfo imageInfo;
+	private final byte[] body;
+	private final Map<String, String> headers;
+
+	private InfoDocument(ImageInfo imageInfo, byte[] body, Map<String, String> headers) {
+		this.imageInfo = imageInfo;
+		this.body = body;
+		this.headers = headers;
+	}
+
+	/**
+	 * from reads an info.json response body into an InfoDocument.
+	 *
+	 * @param identifier
+	 *            the identifier of the image the document describes
+	 * @param body
+	 *            the response body, as sent by the image server
+	 * @param headers
+	 *            the response headers, as sent by the image server
+	 * @param publicBaseUrl
+	 *            the base URL the id is rewritten to, or an empty string to keep the id as sent
+	 * @throws InvalidImageInfoException
+	 *             if the body is not a valid info.json document
+	 */
+	public static InfoDocument from(String identifier, byte[] body, Map<String, String> headers,
+			String publicBaseUrl) {
+		String json = new String(body, StandardCharsets.UTF_8);
+		ImageInfoParser parser = new ImageInfoParser(json);
+		ImageInfo imageInfo = parser.readImageInfo();
+		if (publicBaseUrl.isEmpty() || parser.getIdStart() == -1) {
+			return new InfoDocument(imageInfo, body, copyOf(headers, body.length));
+		}
+		String rewritten = json.substring(0, parser.getIdStart())
+				+ escape(publicBaseUrl + identifier) + json.substring(parser.getIdEnd());
+		byte[] rewrittenBody = rewritten.getBytes(StandardCharsets.UTF_8);
+		return new InfoDocument(imageInfo, rewrittenBody, copyOf(headers, rewrittenBody.length));
+	}
+
+	private static Map<String, String> copyOf(Map<String, String> headers, int bodyLength) {
+		Map<String, String> copy = new LinkedHashMap<>(headers);
+		if (copy.keySet().removeIf(CONTENT_LENGTH::equalsIgnoreCase)) {
+			copy.put(CONTENT_LENGTH, String.valueOf(bodyLength));
+		}
+		return Collections.unmodifiableMap(copy);
+	}
+
+	private static String escape(String value) {
+		StringBuilder escaped = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				escaped.append('\\');
+			}
+			escaped.append(c);
+		}
+		return escaped.toString();
+	}
+
+	/**
+	 * createResponse returns a new 200 response with the document, reading from the bytes kept in
+	 * the document without copying them.
+	 */
+	public IiifAdapterResponse createResponse() {
+		return new IiifAdapterResponse(HTTP_OK, new LinkedHashMap<>(headers),
+				new ByteArrayInputStream(body));
+	}
+
+	public ImageInfo getImageInfo() {
+		return imageInfo;
+	}
+
+	public Map<String, String> getHeaders() {
+		return headers;
+	}
+
+	public int getBodyLength() {
+		return body.length;
+	}
+
+	public SourceImage toSourceImage() {
+		return new SourceImage(imageInfo.width(), imageInfo.height(), imageInfo.color());
+	}
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.info;
+
+import java.util.List;
+
+/**
+ * TileSize is one entry in the tiles of an image's info.json, the size of the tiles and the
+ * scale factors they are offered at.
+ */
+public record TileSize(int width, int height, List<Integer> scaleFactors) {
+
+	public TileSize {
+		if (width < 1 || height < 1) {
+			throw new IllegalArgumentException("width and height must be at least 1");
+		}
+		scaleFactors = List.copyOf(scaleFactors);
+	}
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.invalidation;
+
+/**
+ * ImageInvalidator drops what is kept about an image, so that the next request for it is
+ * answered from the image server again. The IiifAdapter returned by the IiifInstanceProvider of
+ * this module implements it when it keeps anything per image, such as parsed info.json documents
+ * or images not found. Callers that change an image, such as when its binary record changes,
+ * can check for this interface and invalidate the identifier of the image.
+ * <p>
+ * Only what is kept in this process is dropped. Other instances sharing the image server keep
+ * theirs until it expires, or until they are told about the change themselves.
+ */
+public interface ImageInvalidator {
+
+	/**
+	 * invalidate drops what is kept for the image with the identifier. Identifiers not known are
+	 * ignored.
+	 */
+	void invalidate(String identifier);
+}
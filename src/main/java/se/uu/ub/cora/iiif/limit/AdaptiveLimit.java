@@ -0,0 +1,95 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.limit;
+
+/**
+ * AdaptiveLimit is an additive increase, multiplicative decrease limit driven by the latency of
+ * calls. A call slower than {@value #LATENCY_TOLERANCE} times the long term average latency of
+ * calls of its {@link RequestPriority}, or one that shows the image server is overloaded, lowers
+ * the limit by a factor of {@value #BACKOFF_RATIO}. Other calls raise it by one when at least half
+ * of the limit is in use.
+ * <p>
+ * Each priority keeps its own average, as a whole image at full size takes far longer than a
+ * thumbnail without the image server being any busier. Calls that show the image server is
+ * overloaded are often answered at once, and are left out of the averages so that they do not
+ * make ordinary calls look slow.
+ * <p>
+ * AdaptiveLimit is not thread safe, it is guarded by its {@link ConcurrencyLimiter}.
+ */
+class AdaptiveLimit {
+	static final double LATENCY_TOLERANCE = 2.0;
+	static final double BACKOFF_RATIO = 0.9;
+	private static final double AVERAGE_WEIGHT = 0.05;
+	private final int minLimit;
+	private final int maxLimit;
+	private int limit;
+	private double averageLatencyNanos;
+	private final double[] averageLatencyNanosByPriority = new double[RequestPriority
+			.values().length];
+
+	AdaptiveLimit(int initialLimit, int minLimit, int maxLimit) {
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+	}
+
+	int getLimit() {
+		return limit;
+	}
+
+	long getAverageLatencyNanos() {
+		return (long) averageLatencyNanos;
+	}
+
+	long getAverageLatencyNanos(RequestPriority priority) {
+		return (long) averageLatencyNanosByPriority[priority.ordinal()];
+	}
+
+	void onSample(RequestPriority priority, long latencyNanos, int inFlight,
+			boolean overloaded) {
+		if (overloaded) {
+			lowerLimit();
+			return;
+		}
+		int index = priority.ordinal();
+		if (isSlow(averageLatencyNanosByPriority[index], latencyNanos)) {
+			lowerLimit();
+		} else if (inFlight * 2 >= limit) {
+			limit = Math.min(maxLimit, limit + 1);
+		}
+		averageLatencyNanosByPriority[index] = updateAverage(
+				averageLatencyNanosByPriority[index], latencyNanos);
+		averageLatencyNanos = updateAverage(averageLatencyNanos, latencyNanos);
+	}
+
+	private void lowerLimit() {
+		limit = Math.max(minLimit, (int) (limit * BACKOFF_RATIO));
+	}
+
+	private boolean isSlow(double average, long latencyNanos) {
+		return average > 0 && latencyNanos > average * LATENCY_TOLERANCE;
+	}
+
+	private double updateAverage(double average, long latencyNanos) {
+		if (average == 0) {
+			return latencyNanos;
+		}
+		return average + (latencyNanos - average) * AVERAGE_WEIGHT;
+	}
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.limit;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * ConcurrencyLimiter limits the number of concurrent calls to the image server to an
+ * {@link AdaptiveLimit} that follows the observed latency of the calls.
+ * <p>
+ * Requests over the limit wait in a bounded queue and are let through in {@link RequestPriority}
+ * order as calls finish. When the queue is full a request is rejected at once, unless a request
+ * of lower priority is waiting, in which case that request is shed to make room. Rejected, shed
+ * and timed out requests get a {@link LimitExceededException}.
+ */
+public class ConcurrencyLimiter {
+	private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+	private static final long MAX_RETRY_AFTER_SECONDS = 60;
+	private final LimitSettings settings;
+	private final LongSupplier nanoTime;
+	private final AdaptiveLimit limit;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Map<RequestPriority, ArrayDeque<Waiter>> queues = new EnumMap<>(
+			RequestPriority.class);
+	private int inFlight;
+	private int queued;
+	private final LongAdder accepted = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder shed = new LongAdder();
+	private final LongAdder queueTimeouts = new LongAdder();
+
+	private final class Waiter {
+		private final Condition condition = lock.newCondition();
+		private boolean granted;
+		private boolean dropped;
+	}
+
+	/**
+	 * Permit is a granted call. It must be released exactly once when the call is done.
+	 */
+	public final class Permit {
+		private final RequestPriority priority;
+		private final long grantedAtNanos;
+
+		private Permit(RequestPriority priority, long grantedAtNanos) {
+			this.priority = priority;
+			this.grantedAtNanos = grantedAtNanos;
+		}
+
+		/**
+		 * release ends the call and feeds its latency to the limit.
+		 *
+		 * @param overloaded
+		 *            true if the call failed in a way that shows the image server is overloaded
+		 */
+		public void release(boolean overloaded) {
+			releasePermit(priority, nanoTime.getAsLong() - grantedAtNanos, overloaded);
+		}
+
+		/**
+		 * releaseWithoutSample ends a call that never reached the image server, without feeding
+		 * anything to the limit.
+		 */
+		public void releaseWithoutSample() {
+			releasePermitWithoutSample();
+		}
+	}
+
+	public ConcurrencyLimiter(LimitSettings settings) {
+		this(settings, System::nanoTime);
+	}
+
+	ConcurrencyLimiter(LimitSettings settings, LongSupplier nanoTime) {
+		this.settings = settings;
+		this.nanoTime = nanoTime;
+		limit = new AdaptiveLimit(settings.initialLimit(), settings.minLimit(),
+				settings.maxLimit());
+		for (RequestPriority priority : RequestPriority.values()) {
+			queues.put(priority, new ArrayDeque<>());
+		}
+	}
+
+	/**
+	 * acquire returns a permit for a call, waiting in the queue if the limit is reached.
+	 *
+	 * @throws LimitExceededException
+	 *             if the request is rejected, shed or waits too long
+	 */
+	public Permit acquire(RequestPriority priority) {
+		lock.lock();
+		try {
+			if (queued == 0 && inFlight < limit.getLimit()) {
+				return grant(priority);
+			}
+			return waitInQueue(priority);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private Permit grant(RequestPriority priority) {
+		inFlight++;
+		accepted.increment();
+		return new Permit(priority, nanoTime.getAsLong());
+	}
+
+	private Permit waitInQueue(RequestPriority priority) {
+		if (queued >= settings.maxQueueLength() && !shedWaiterWithLowerPriorityThan(priority)) {
+			rejected.increment();
+			throw limitExceeded("Too many requests waiting for the image server");
+		}
+		Waiter waiter = new Waiter();
+		queues.get(priority).addLast(waiter);
+		queued++;
+		awaitTurn(waiter);
+		if (waiter.granted) {
+			accepted.increment();
+			return new Permit(priority, nanoTime.getAsLong());
+		}
+		return leaveQueue(priority, waiter);
+	}
+
+	private boolean shedWaiterWithLowerPriorityThan(RequestPriority priority) {
+		RequestPriority[] priorities = RequestPriority.values();
+		for (int i = priorities.length - 1; i > priority.ordinal(); i--) {
+			Waiter newest = queues.get(priorities[i]).pollLast();
+			if (newest != null) {
+				queued--;
+				newest.dropped = true;
+				newest.condition.signal();
+				shed.increment();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void awaitTurn(Waiter waiter) {
+		long remainingNanos = settings.maxQueueWait().toNanos();
+		try {
+			while (!waiter.granted && !waiter.dropped && remainingNanos > 0) {
+				remainingNanos = waiter.condition.awaitNanos(remainingNanos);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private Permit leaveQueue(RequestPriority priority, Waiter waiter) {
+		if (waiter.dropped) {
+			throw limitExceeded("Request shed for requests of higher priority");
+		}
+		queues.get(priority).remove(waiter);
+		queued--;
+		if (Thread.currentThread().isInterrupted()) {
+			throw limitExceeded("Interrupted while waiting for the image server");
+		}
+		queueTimeouts.increment();
+		throw limitExceeded("Waited too long for the image server");
+	}
+
+	private LimitExceededException limitExceeded(String message) {
+		return new LimitExceededException(message, estimateRetryAfterSeconds());
+	}
+
+	private long estimateRetryAfterSeconds() {
+		long waitNanos = limit.getAverageLatencyNanos() * (queued + 1) / limit.getLimit();
+		long seconds = (waitNanos + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND;
+		return Math.max(1, Math.min(MAX_RETRY_AFTER_SECONDS, seconds));
+	}
+
+	private void releasePermit(RequestPriority priority, long latencyNanos,
+			boolean overloaded) {
+		lock.lock();
+		try {
+			limit.onSample(priority, latencyNanos, inFlight, overloaded);
+			inFlight--;
+			grantWaitersWithinLimit();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void releasePermitWithoutSample() {
+		lock.lock();
+		try {
+			inFlight--;
+			grantWaitersWithinLimit();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void grantWaitersWithinLimit() {
+		while (queued > 0 && inFlight < limit.getLimit()) {
+			Waiter waiter = pollHighestPriorityWaiter();
+			queued--;
+			inFlight++;
+			waiter.granted = true;
+			waiter.condition.signal();
+		}
+	}
+
+	private Waiter pollHighestPriorityWaiter() {
+		for (ArrayDeque<Waiter> queue : queues.values()) {
+			Waiter waiter = queue.pollFirst();
+			if (waiter != null) {
+				return waiter;
+			}
+		}
+		throw new IllegalStateException("No waiter in queues with " + queued + " queued");
+	}
+
+	public LimiterMetrics getMetrics() {
+		lock.lock();
+		try {
+			return new LimiterMetrics(limit.getLimit(), inFlight, queued, accepted.sum(),
+					rejected.sum(), shed.sum(), queueTimeouts.sum(),
+					TimeUnit.NANOSECONDS.toMicros(limit.getAverageLatencyNanos()));
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public LimitSettings getSettings() {
+		return settings;
+	}
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.limit;
+
+import java.time.Duration;
+
+/**
+ * LimitSettings holds the settings for a {@link ConcurrencyLimiter}.
+ *
+ * @param initialLimit
+ *            the number of concurrent calls allowed before any latency has been observed
+ * @param minLimit
+ *            the lowest the limit is lowered to
+ * @param maxLimit
+ *            the highest the limit is raised to
+ * @param maxQueueLength
+ *            the number of requests that can wait for a call, requests beyond that are rejected
+ * @param maxQueueWait
+ *            the longest time a request waits for a call before it is rejected
+ */
+public record LimitSettings(int initialLimit, int minLimit, int maxLimit, int maxQueueLength,
+		Duration maxQueueWait) {
+}
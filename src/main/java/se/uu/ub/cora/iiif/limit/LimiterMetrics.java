@@ -0,0 +1,43 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.limit;
+
+/**
+ * LimiterMetrics is a snapshot of the state of a {@link ConcurrencyLimiter}.
+ *
+ * @param limit
+ *            the current number of concurrent calls allowed
+ * @param inFlight
+ *            the number of calls currently in progress
+ * @param queued
+ *            the number of requests currently waiting for a call
+ * @param accepted
+ *            the total number of requests that have been allowed a call
+ * @param rejected
+ *            the number of requests rejected as the queue was full
+ * @param shed
+ *            the number of waiting requests dropped to make room for requests of higher priority
+ * @param queueTimeouts
+ *            the number of requests that waited longer than the longest queue wait
+ * @param averageLatencyMicros
+ *            the long term average latency of calls, in microseconds
+ */
+public record LimiterMetrics(int limit, int inFlight, int queued, long accepted, long rejected,
+		long shed, long queueTimeouts, long averageLatencyMicros) {
+}
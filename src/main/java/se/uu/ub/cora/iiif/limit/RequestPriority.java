@@ -0,0 +1,78 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.limit;
+
+import java.util.Map;
+import java.util.Optional;
+
+import se.uu.ub.cora.iiif.http.Headers;
+import se.uu.ub.cora.iiif.uri.IiifRequestType;
+
+/**
+ * RequestPriority orders requests waiting for a {@link ConcurrencyLimiter}. Waiting requests are
+ * let through in priority order, and when the queue is full a request of higher priority takes
+ * the place of one of lower priority.
+ */
+public enum RequestPriority {
+	HIGH, NORMAL, LOW;
+
+	/**
+	 * HEADER marks the priority of requests this module makes itself, such as warm-up requests,
+	 * which must give way to requests from users of the same type. It is read and removed before
+	 * the request is made to the image server.
+	 */
+	public static final String HEADER = "X-Cora-Iiif-Priority";
+
+	/**
+	 * of returns the priority of a request type. Info and thumbnail requests are cheap for the
+	 * image server and are what a user looks at first, so they go before tiles, and tiles go
+	 * before whole images at full size.
+	 */
+	public static RequestPriority of(IiifRequestType requestType) {
+		return switch (requestType) {
+			case INFO, THUMBNAIL -> HIGH;
+			case TILE -> NORMAL;
+			case FULL_IMAGE, OTHER -> LOW;
+		};
+	}
+
+	/**
+	 * of returns the priority of a request type, lowered to the priority in {@link #HEADER} if the
+	 * headers mark the request with a lower one. A marked priority never raises the priority of
+	 * a request, so a client sending the header can only put itself last.
+	 */
+	public static RequestPriority of(IiifRequestType requestType, Map<String, String> headers) {
+		RequestPriority priority = of(requestType);
+		Optional<RequestPriority> marked = markedIn(headers);
+		if (marked.isPresent() && marked.get().ordinal() > priority.ordinal()) {
+			return marked.get();
+		}
+		return priority;
+	}
+
+	private static Optional<RequestPriority> markedIn(Map<String, String> headers) {
+		Optional<String> value = Headers.find(headers, HEADER);
+		for (RequestPriority priority : values()) {
+			if (value.isPresent() && priority.name().equalsIgnoreCase(value.get().trim())) {
+				return Optional.of(priority);
+			}
+		}
+		return Optional.empty();
+	}
+}
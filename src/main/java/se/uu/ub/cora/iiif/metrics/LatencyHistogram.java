@@ -0,0 +1,124 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram counts latencies in microseconds in buckets with a fixed relative precision,
+ * in the manner of an HDR histogram. Values below 32 have buckets of their own, and every power of
+ * two above that is split into 32 buckets, which keeps the error of a reported value below about
+ * 3 %. Values above about 50 days are counted as that.
+ * <p>
+ * Recording does not lock or allocate, so it can be done on every call to the image server.
+ * Reading iterates over the buckets, and is meant for exporters reading now and then.
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 41;
+	static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+	private static final int BUCKETS = SUB_BUCKETS
+			+ (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder totalMicros = new LongAdder();
+	private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * record counts one latency.
+	 *
+	 * @param micros
+	 *            the latency in microseconds, negative values are counted as 0
+	 */
+	public void record(long micros) {
+		long value = Math.min(Math.max(micros, 0), MAX_VALUE);
+		counts.incrementAndGet(bucketIndex(value));
+		totalMicros.add(value);
+		maxMicros.accumulate(value);
+	}
+
+	static int bucketIndex(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+		return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+	}
+
+	static long highestValueInBucket(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		long lowestValue = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+		return lowestValue + (1L << shift) - 1;
+	}
+
+	/**
+	 * getCount returns the number of latencies recorded.
+	 */
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			count += counts.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * getTotalMicros returns the sum of all latencies recorded, in microseconds.
+	 */
+	public long getTotalMicros() {
+		return totalMicros.sum();
+	}
+
+	/**
+	 * getMaxMicros returns the largest latency recorded, in microseconds.
+	 */
+	public long getMaxMicros() {
+		return maxMicros.get();
+	}
+
+	/**
+	 * getValueAtPercentile returns the latency, in microseconds, that the given percentage of the
+	 * recorded latencies are at or below, or 0 if none are recorded.
+	 *
+	 * @param percentile
+	 *            a percentile between 0 and 100
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long count = getCount();
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(highestValueInBucket(i), getMaxMicros());
+			}
+		}
+		return getMaxMicros();
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * MeasuredInputStream counts the bytes read from a response body, and calls its listener once,
+ * when the end of the body is read or the stream is closed, whichever comes first. A subclass
+ * can instead be its own listener by overriding {@link #bodyDone(long)}, which saves creating a
+ * listener for every body.
+ */
+public class MeasuredInputStream extends FilterInputStream {
+	private final BodyListener listener;
+	private long bytesRead = 0;
+	private boolean reported = false;
+
+	/**
+	 * BodyListener is told how many bytes were read from a body once it is done with.
+	 */
+	public interface BodyListener {
+		void bodyDone(long bytesRead);
+	}
+
+	public MeasuredInputStream(InputStream body, BodyListener listener) {
+		super(body);
+		this.listener = listener;
+	}
+
+	/**
+	 * MeasuredInputStream creates a stream without a listener, for a subclass that overrides
+	 * {@link #bodyDone(long)}.
+	 */
+	protected MeasuredInputStream(InputStream body) {
+		this(body, null);
+	}
+
+	@Override
+	public int read() throws IOException {
+		int read = super.read();
+		if (read == -1) {
+			reportOnce();
+		} else {
+			bytesRead++;
+		}
+		return read;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+		int read = super.read(buffer, offset, length);
+		if (read == -1) {
+			reportOnce();
+		} else {
+			bytesRead += read;
+		}
+		return read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		bytesRead += skipped;
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			super.close();
+		} finally {
+			reportOnce();
+		}
+	}
+
+	private void reportOnce() {
+		if (!reported) {
+			reported = true;
+			bodyDone(bytesRead);
+		}
+	}
+
+	/**
+	 * bodyDone is called once the body is done with, and tells the listener.
+	 */
+	protected void bodyDone(long bytesRead) {
+		listener.bodyDone(bytesRead);
+	}
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.metrics;
+
+/**
+ * MetricsExporter makes the {@link UpstreamMetrics} and {@link ModuleMetrics} available to a
+ * monitoring system. Implementations are found with {@link java.util.ServiceLoader}, in the same
+ * way as the IiifInstanceProvider of this module is found, and collecting metrics is turned on
+ * when at least one is found.
+ */
+public interface MetricsExporter {
+
+	/**
+	 * export is called once, when the adapter is assembled, with the metrics for all calls to
+	 * the image servers. The exporter reads them whenever it needs to, for instance when it is
+	 * scraped or on a schedule of its own.
+	 */
+	void export(UpstreamMetrics metrics);
+
+	/**
+	 * exportModuleMetrics is called once, when the adapter is assembled, with the readings of
+	 * the parts of this module that are turned on, such as the concurrency limiters, the
+	 * connection pool, request coalescing and transcoding. Exporters that only export the
+	 * metrics of the calls to the image servers need not implement it.
+	 */
+	default void exportModuleMetrics(ModuleMetrics metrics) {
+		// only the metrics of the calls to the image servers are exported by default
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+/**
+ * ModuleMetrics holds readings of the parts of this module that are turned on, such as the
+ * concurrency limiter, the connection pool, request coalescing and transcoding, by name. A
+ * reading is taken when it is read, so an exporter can read them whenever it needs to.
+ * <p>
+ * Names are dotted and start with the part they belong to, such as coalescing.coalescedRequests.
+ * Parts that exist once for every image server have the URL of the image server in brackets
+ * after the name of the part, such as limiter[http://iiif1/].inFlight.
+ */
+public class ModuleMetrics {
+	private final Map<String, LongSupplier> readings = new ConcurrentSkipListMap<>();
+
+	/**
+	 * register adds a reading under the name. A name registered again is read from the last
+	 * reading registered for it.
+	 */
+	public void register(String name, LongSupplier reading) {
+		readings.put(name, reading);
+	}
+
+	/**
+	 * getNames returns the names of all readings, in alphabetical order.
+	 */
+	public List<String> getNames() {
+		return List.copyOf(readings.keySet());
+	}
+
+	/**
+	 * read returns the current value of the reading with the name, if there is one.
+	 */
+	public Optional<Long> read(String name) {
+		LongSupplier reading = readings.get(name);
+		if (reading == null) {
+			return Optional.empty();
+		}
+		return Optional.of(reading.getAsLong());
+	}
+
+	/**
+	 * readAll returns the current values of all readings, by name in alphabetical order.
+	 */
+	public Map<String, Long> readAll() {
+		Map<String, Long> values = new LinkedHashMap<>();
+		for (Entry<String, LongSupplier> reading : readings.entrySet()) {
+			values.put(reading.getKey(), reading.getValue().getAsLong());
+		}
+		return values;
+	}
+}
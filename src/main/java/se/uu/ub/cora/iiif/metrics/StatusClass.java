@@ -0,0 +1,38 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.metrics;
+
+/**
+ * StatusClass is the class of an HTTP status code, given by its first digit.
+ */
+public enum StatusClass {
+	INFORMATIONAL, SUCCESSFUL, REDIRECTION, CLIENT_ERROR, SERVER_ERROR;
+
+	/**
+	 * of returns the class of the status code. Codes outside 100 to 599 are counted as server
+	 * errors, as they can only come from a broken image server.
+	 */
+	public static StatusClass of(int status) {
+		int firstDigit = status / 100;
+		if (firstDigit < 1 || firstDigit > 5) {
+			return SERVER_ERROR;
+		}
+		return values()[firstDigit - 1];
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import se.uu.ub.cora.iiif.uri.IiifRequestType;
+
+/**
+ * UpstreamMetrics holds the measurements of calls to the image servers, split by the
+ * {@link IiifRequestType} of the request.
+ * <p>
+ * For every type it keeps the time until the status and headers arrived, the time until the last
+ * byte of the body was read, the number of body bytes, the number of responses in each
+ * {@link StatusClass}, and the number of calls that failed without a response. All counters are
+ * created up front, so recording does not allocate.
+ */
+public class UpstreamMetrics {
+	private static final IiifRequestType[] TYPES = IiifRequestType.values();
+	private static final StatusClass[] STATUS_CLASSES = StatusClass.values();
+	private final LatencyHistogram[] timeToHeaders = new LatencyHistogram[TYPES.length];
+	private final LatencyHistogram[] timeToLastByte = new LatencyHistogram[TYPES.length];
+	private final LongAdder[] bytes = new LongAdder[TYPES.length];
+	private final LongAdder[] failures = new LongAdder[TYPES.length];
+	private final LongAdder[][] responses = new LongAdder[TYPES.length][STATUS_CLASSES.length];
+
+	public UpstreamMetrics() {
+		for (int i = 0; i < TYPES.length; i++) {
+			timeToHeaders[i] = new LatencyHistogram();
+			timeToLastByte[i] = new LatencyHistogram();
+			bytes[i] = new LongAdder();
+			failures[i] = new LongAdder();
+			for (int j = 0; j < STATUS_CLASSES.length; j++) {
+				responses[i][j] = new LongAdder();
+			}
+		}
+	}
+
+	/**
+	 * recordResponse counts a response whose status and headers arrived after the given time.
+	 */
+	public void recordResponse(IiifRequestType type, int status, long timeToHeadersNanos) {
+		timeToHeaders[type.ordinal()].record(toMicros(timeToHeadersNanos));
+		responses[type.ordinal()][StatusClass.of(status).ordinal()].increment();
+	}
+
+	private long toMicros(long nanos) {
+		return TimeUnit.NANOSECONDS.toMicros(nanos);
+	}
+
+	/**
+	 * recordBody counts a response body that was read to its end, or closed, after the given
+	 * time from the start of the call.
+	 */
+	public void recordBody(IiifRequestType type, long bodyBytes, long timeToLastByteNanos) {
+		timeToLastByte[type.ordinal()].record(toMicros(timeToLastByteNanos));
+		bytes[type.ordinal()].add(bodyBytes);
+	}
+
+	/**
+	 * recordFailure counts a call that failed without a response.
+	 */
+	public void recordFailure(IiifRequestType type) {
+		failures[type.ordinal()].increment();
+	}
+
+	public LatencyHistogram getTimeToHeaders(IiifRequestType type) {
+		return timeToHeaders[type.ordinal()];
+	}
+
+	public LatencyHistogram getTimeToLastByte(IiifRequestType type) {
+		return timeToLastByte[type.ordinal()];
+	}
+
+	public long getBytes(IiifRequestType type) {
+		return bytes[type.ordinal()].sum();
+	}
+
+	public long getResponses(IiifRequestType type, StatusClass statusClass) {
+		return responses[type.ordinal()][statusClass.ordinal()].sum();
+	}
+
+	public long getFailures(IiifRequestType type) {
+		return failures[type.ordinal()].sum();
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.peer;
+
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * PeerRing decides which node of a cluster owns a tile, using consistent hashing. Every node is
+ * placed at a number of points on a ring of 64 bit hashes, and a tile is owned by the node at the
+ * first point at or after the hash of its key. All nodes configured with the same node list agree
+ * on the owners, and when a node is added or removed only the tiles owned by that node move.
+ */
+public class PeerRing {
+	private static final int POINTS_PER_NODE = 160;
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+	private final List<String> nodes;
+	private final TreeMap<Long, String> ring = new TreeMap<>();
+
+	public PeerRing(List<String> nodes) {
+		if (nodes.isEmpty()) {
+			throw new IllegalArgumentException("nodes must not be empty");
+		}
+		this.nodes = List.copyOf(nodes);
+		for (String node : this.nodes) {
+			for (int point = 0; point < POINTS_PER_NODE; point++) {
+				ring.putIfAbsent(hash(node + "#" + point), node);
+			}
+		}
+	}
+
+	/**
+	 * ownerOf returns the node that owns the tile with the given key.
+	 */
+	public String ownerOf(String key) {
+		Entry<Long, String> point = ring.ceilingEntry(hash(key));
+		return point != null ? point.getValue() : ring.firstEntry().getValue();
+	}
+
+	public List<String> getNodes() {
+		return nodes;
+	}
+
+	static long hash(String text) {
+		long hash = FNV_OFFSET_BASIS;
+		for (int i = 0; i < text.length(); i++) {
+			hash ^= text.charAt(i);
+			hash *= FNV_PRIME;
+		}
+		return mix(hash);
+	}
+
+	private static long mix(long value) {
+		long mixed = value;
+		mixed ^= mixed >>> 33;
+		mixed *= 0xff51afd7ed558ccdL;
+		mixed ^= mixed >>> 33;
+		mixed *= 0xc4ceb9fe1a85ec53L;
+		mixed ^= mixed >>> 33;
+		return mixed;
+	}
+}
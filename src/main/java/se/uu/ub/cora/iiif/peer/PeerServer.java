@@ -0,0 +1,305 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.peer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapter;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.async.ThreadPerCallExecutors;
+import se.uu.ub.cora.iiif.http.Headers;
+import se.uu.ub.cora.iiif.uri.IiifRequestType;
+import se.uu.ub.cora.iiif.uri.IiifUriCanonicalizer;
+import se.uu.ub.cora.iiif.uri.InvalidIiifUriException;
+import se.uu.ub.cora.iiif.uri.SourceImageLookup;
+
+/**
+ * PeerServer answers requests for tiles from the other nodes of the cluster, through the adapter
+ * holding the caches of this node. It listens on an address of its own, meant for the internal
+ * network between the nodes only, and starts listening when {@link #serve(IiifAdapter)} is
+ * called, once the adapter it serves has been assembled.
+ * <p>
+ * A request is only answered if its {@link #PEER_HEADER} holds the secret shared by the nodes,
+ * others are answered 403. Only GET and HEAD of image requests valid for the IIIF Image API
+ * version of the server, as told by {@link #isServable(String)} and an
+ * {@link IiifUriCanonicalizer}, are answered, others are answered 405 or 400. Only the request
+ * headers in {@link #FORWARDED_HEADERS} are passed on, together with {@link #PEER_HEADER} so that
+ * a request from a peer is never sent on to another peer.
+ */
+public class PeerServer implements AutoCloseable {
+	/**
+	 * PEER_HEADER marks a request as coming from a peer. Requests to a peer server carry the
+	 * shared secret in it.
+	 */
+	public static final String PEER_HEADER = "X-Cora-Iiif-Peer";
+	/**
+	 * FORWARDED_HEADERS are the request headers sent on to the owner of a tile.
+	 */
+	public static final List<String> FORWARDED_HEADERS = List.of("Accept", "Range", "If-Range",
+			"If-None-Match", "If-Modified-Since");
+	private static final int HTTP_NO_CONTENT = 204;
+	private static final int HTTP_NOT_MODIFIED = 304;
+	private static final int HTTP_BAD_REQUEST = 400;
+	private static final int HTTP_FORBIDDEN = 403;
+	private static final int HTTP_METHOD_NOT_ALLOWED = 405;
+	private static final int HTTP_BAD_GATEWAY = 502;
+	private static final Set<String> UNCOPIED_RESPONSE_HEADERS = Set.of("content-length",
+			"transfer-encoding", "connection", "keep-alive", "date");
+	private final InetSocketAddress address;
+	private final byte[] secret;
+	private final IiifUriCanonicalizer uriValidator;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final LongAdder servedRequests = new LongAdder();
+	private final LongAdder failedRequests = new LongAdder();
+	private final LongAdder rejectedRequests = new LongAdder();
+	private IiifAdapter iiifAdapter;
+	private boolean started = false;
+
+	/**
+	 * @param address
+	 *            the address to listen on, only the address of this node on the internal network
+	 * @param secret
+	 *            the secret shared by the nodes
+	 * @param apiVersion
+	 *            the IIIF Image API version, 2 or 3, image requests are validated for
+	 * @throws IOException
+	 *             if the server can not be created
+	 */
+	public PeerServer(InetSocketAddress address, String secret, int apiVersion)
+			throws IOException {
+		this.address = address;
+		this.secret = secret.getBytes(StandardCharsets.UTF_8);
+		uriValidator = new IiifUriCanonicalizer(apiVersion, SourceImageLookup.NONE);
+		server = HttpServer.create();
+		executor = ThreadPerCallExecutors.newThreadPerCallExecutor();
+		server.createContext("/", this::handle);
+		server.setExecutor(executor);
+	}
+
+	/**
+	 * isServable returns true if a request with the given URI is one a peer server answers, an
+	 * image request without a query.
+	 */
+	public static boolean isServable(String uri) {
+		if (uri.indexOf('?') != -1) {
+			return false;
+		}
+		IiifRequestType type = IiifRequestType.classify(uri, 0);
+		return type != IiifRequestType.INFO && type != IiifRequestType.OTHER;
+	}
+
+	/**
+	 * serve starts listening on the address of the server, answering requests through the given
+	 * adapter.
+	 *
+	 * @throws IOException
+	 *             if the address can not be listened on
+	 */
+	public void serve(IiifAdapter iiifAdapter) throws IOException {
+		if (address.isUnresolved()) {
+			throw new UnknownHostException(address.getHostString());
+		}
+		this.iiifAdapter = iiifAdapter;
+		server.bind(address, 0);
+		server.start();
+		started = true;
+	}
+
+	private void handle(HttpExchange exchange) {
+		try (exchange) {
+			respond(exchange);
+		} catch (IOException e) {
+			// the peer went away
+		}
+	}
+
+	private void respond(HttpExchange exchange) throws IOException {
+		if (!hasSecret(exchange)) {
+			rejectedRequests.increment();
+			exchange.sendResponseHeaders(HTTP_FORBIDDEN, -1);
+			return;
+		}
+		String method = exchange.getRequestMethod();
+		if (!"GET".equals(method) && !"HEAD".equals(method)) {
+			rejectedRequests.increment();
+			exchange.sendResponseHeaders(HTTP_METHOD_NOT_ALLOWED, -1);
+			return;
+		}
+		String uri = readUri(exchange);
+		if (!isValidImageRequest(uri)) {
+			rejectedRequests.increment();
+			exchange.sendResponseHeaders(HTTP_BAD_REQUEST, -1);
+			return;
+		}
+		IiifAdapterResponse response;
+		try {
+			response = iiifAdapter.callIiifServer(createParameters(exchange, uri));
+		} catch (RuntimeException e) {
+			failedRequests.increment();
+			exchange.sendResponseHeaders(HTTP_BAD_GATEWAY, -1);
+			return;
+		}
+		servedRequests.increment();
+		writeResponse(exchange, response);
+	}
+
+	private boolean hasSecret(HttpExchange exchange) {
+		String value = exchange.getRequestHeaders().getFirst(PEER_HEADER);
+		return value != null
+				&& MessageDigest.isEqual(value.getBytes(StandardCharsets.UTF_8), secret);
+	}
+
+	private String readUri(HttpExchange exchange) {
+		String uri = exchange.getRequestURI().getRawPath().substring(1);
+		String query = exchange.getRequestURI().getRawQuery();
+		return query == null ? uri : uri + "?" + query;
+	}
+
+	private boolean isValidImageRequest(String uri) {
+		if (!isServable(uri)) {
+			return false;
+		}
+		try {
+			uriValidator.canonicalize(uri);
+			return true;
+		} catch (InvalidIiifUriException e) {
+			return false;
+		}
+	}
+
+	private IiifParameters createParameters(HttpExchange exchange, String uri) {
+		Map<String, String> headers = new LinkedHashMap<>();
+		for (String name : FORWARDED_HEADERS) {
+			String value = exchange.getRequestHeaders().getFirst(name);
+			if (value != null) {
+				headers.put(name, value);
+			}
+		}
+		headers.put(PEER_HEADER, "1");
+		return new IiifParameters(uri, exchange.getRequestMethod(), headers);
+	}
+
+	private void writeResponse(HttpExchange exchange, IiifAdapterResponse response)
+			throws IOException {
+		try (InputStream body = response.body()) {
+			copyHeaders(exchange, response.headers());
+			if (hasNoBody(exchange, response.status()) || body == null) {
+				exchange.sendResponseHeaders(response.status(), -1);
+				return;
+			}
+			exchange.sendResponseHeaders(response.status(), readContentLength(response));
+			try (OutputStream out = exchange.getResponseBody()) {
+				body.transferTo(out);
+			}
+		}
+	}
+
+	private void copyHeaders(HttpExchange exchange, Map<String, String> headers) {
+		for (Entry<String, String> header : headers.entrySet()) {
+			if (!UNCOPIED_RESPONSE_HEADERS.contains(header.getKey().toLowerCase(Locale.ROOT))) {
+				exchange.getResponseHeaders().set(header.getKey(), header.getValue());
+			}
+		}
+	}
+
+	private boolean hasNoBody(HttpExchange exchange, int status) {
+		return "HEAD".equals(exchange.getRequestMethod()) || status == HTTP_NO_CONTENT
+				|| status == HTTP_NOT_MODIFIED;
+	}
+
+	private long readContentLength(IiifAdapterResponse response) {
+		return Headers.find(response.headers(), "Content-Length").map(this::parseContentLength)
+				.orElse(0L);
+	}
+
+	private long parseContentLength(String value) {
+		try {
+			long contentLength = Long.parseLong(value.trim());
+			return contentLength > 0 ? contentLength : -1;
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * getAddress returns the address the server listens on, once it is serving.
+	 */
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * getServedRequests returns the number of requests from peers that have been answered
+	 * through the adapter.
+	 */
+	public long getServedRequests() {
+		return servedRequests.sum();
+	}
+
+	/**
+	 * getFailedRequests returns the number of requests from peers that failed in the adapter and
+	 * were answered with 502.
+	 */
+	public long getFailedRequests() {
+		return failedRequests.sum();
+	}
+
+	/**
+	 * getRejectedRequests returns the number of requests without the shared secret, or not for a
+	 * valid image request, that were not passed on to the adapter.
+	 */
+	public long getRejectedRequests() {
+		return rejectedRequests.sum();
+	}
+
+	@Override
+	public void close() {
+		if (started) {
+			server.stop(0);
+		}
+		executor.shutdownNow();
+	}
+
+	IiifAdapter onlyForTestGetIiifAdapter() {
+		return iiifAdapter;
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.peer;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * PeerSettings configures the peer cache tier.
+ *
+ * @param nodes
+ *            the base URLs, ending with a slash, of the peer servers of all nodes in the cluster,
+ *            the same list on every node
+ * @param self
+ *            the base URL of this node, one of the nodes
+ * @param responseTimeout
+ *            how long to wait for the owner of a tile to start answering, including the time the
+ *            owner takes to fetch a tile it has not cached from the image server, so longer than
+ *            the slowest image server responses but for a few in a hundred
+ * @param bypassTime
+ *            how long to go straight to the image server, instead of to a peer, after calls to
+ *            that peer have failed
+ * @param secret
+ *            the secret shared by the nodes, that a peer server only answers requests carrying
+ */
+public record PeerSettings(List<String> nodes, String self, Duration responseTimeout,
+		Duration bypassTime, String secret) {
+
+	public PeerSettings {
+		nodes = List.copyOf(nodes);
+		if (!nodes.contains(self)) {
+			throw new IllegalArgumentException("self must be one of the nodes");
+		}
+		if (responseTimeout.isNegative() || responseTimeout.isZero()) {
+			throw new IllegalArgumentException("responseTimeout must be positive");
+		}
+		if (bypassTime.isNegative()) {
+			throw new IllegalArgumentException("bypassTime must not be negative");
+		}
+		if (secret == null || secret.isBlank()) {
+			throw new IllegalArgumentException("secret must not be blank");
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "PeerSettings[nodes=" + nodes + ", self=" + self + ", responseTimeout="
+				+ responseTimeout + ", bypassTime=" + bypassTime + "]";
+	}
+}
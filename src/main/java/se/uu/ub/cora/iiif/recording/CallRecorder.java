@@ -0,0 +1,300 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.recording;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import se.uu.ub.cora.logger.Logger;
+import se.uu.ub.cora.logger.LoggerProvider;
+
+/**
+ * CallRecorder writes calls to the adapter to a compact binary recording, in the format described
+ * by {@link CallRecordingFormat}, so that production traffic can be replayed when the adapter is
+ * tuned. A recording of a call takes some 20 bytes plus its URI.
+ * <p>
+ * Recording a call only puts it on a queue, so that the threads answering requests never wait for
+ * one another or for the file. A flusher thread takes the calls off the queue, encodes them and
+ * writes them to a buffer, which it flushes to the file every second, so a crash loses at most
+ * the last second of the recording, also when no calls follow. Calls recorded while the queue is
+ * full are dropped and counted. Recording stops when the file has reached its maximum size, or
+ * if writing to it fails, and calls after that are only counted. Recording never makes a call
+ * fail.
+ * <p>
+ * A recording already in the file when a recording is started is kept, it is moved aside to the
+ * file named by {@link #previousRecordingOf(Path)}, replacing the one there.
+ */
+public class CallRecorder implements AutoCloseable {
+	private static final int BUFFER_BYTES = 64 * 1024;
+	private static final long FLUSH_INTERVAL_MILLIS = 1000;
+	private static final long WRITE_INTERVAL_MILLIS = 100;
+	static final int QUEUE_CAPACITY = 10_000;
+	private Logger log = LoggerProvider.getLoggerForClass(CallRecorder.class);
+	private final String name;
+	private final OutputStream out;
+	private final long maxBytes;
+	private final LongSupplier nanoTime;
+	private final long startNanos;
+	private final ScheduledExecutorService flusher;
+	private final BlockingQueue<RecordedCall> queue;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Map<String, Integer> dictionary = new HashMap<>();
+	private final ByteArrayOutputStream encodedCall = new ByteArrayOutputStream();
+	private final LongAdder recordedCalls = new LongAdder();
+	private final LongAdder droppedCalls = new LongAdder();
+	private long bytesWritten;
+	private long previousStartMicros = 0;
+	private boolean unflushed = false;
+	private volatile boolean stopped = false;
+	private volatile boolean closed = false;
+
+	/**
+	 * open creates the file and starts a recording in it. A file already there is moved aside to
+	 * the file named by {@link #previousRecordingOf(Path)}, unless it is empty.
+	 *
+	 * @throws IOException
+	 *             if the file can not be moved aside or created
+	 */
+	public static CallRecorder open(Path file, long maxBytes) throws IOException {
+		moveAsideIfNotEmpty(file);
+		OutputStream out = new BufferedOutputStream(Files.newOutputStream(file,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE), BUFFER_BYTES);
+		return new CallRecorder(file.toString(), out, maxBytes, QUEUE_CAPACITY, Clock.systemUTC(),
+				System::nanoTime,
+				Executors.newSingleThreadScheduledExecutor(CallRecorder::createFlusherThread));
+	}
+
+	private static void moveAsideIfNotEmpty(Path file) throws IOException {
+		if (Files.exists(file) && Files.size(file) > 0) {
+			Files.move(file, previousRecordingOf(file), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * previousRecordingOf returns the file the recording in the file is moved to when a new
+	 * recording is started in it, the name of the file followed by ".1".
+	 */
+	public static Path previousRecordingOf(Path file) {
+		return file.resolveSibling(file.getFileName() + ".1");
+	}
+
+	private static Thread createFlusherThread(Runnable runnable) {
+		Thread thread = new Thread(runnable, "iiif-call-recording-flusher");
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	CallRecorder(String name, OutputStream out, long maxBytes, int queueCapacity, Clock clock,
+			LongSupplier nanoTime, ScheduledExecutorService flusher) throws IOException {
+		this.name = name;
+		this.out = out;
+		this.maxBytes = maxBytes;
+		queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.nanoTime = nanoTime;
+		this.flusher = flusher;
+		startNanos = nanoTime.getAsLong();
+		writeRecordingHeader(clock.millis());
+		flusher.scheduleWithFixedDelay(this::writeQueuedCalls, WRITE_INTERVAL_MILLIS,
+				WRITE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+		flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS,
+				TimeUnit.MILLISECONDS);
+	}
+
+	private void writeRecordingHeader(long startEpochMillis) throws IOException {
+		DataOutputStream header = new DataOutputStream(out);
+		header.write(CallRecordingFormat.MAGIC);
+		header.writeByte(CallRecordingFormat.VERSION);
+		header.writeLong(startEpochMillis);
+		header.flush();
+		bytesWritten = header.size();
+	}
+
+	/**
+	 * microsSinceStart returns the time since the recording started in microseconds, the clock
+	 * the start and duration of calls are measured with.
+	 */
+	public long microsSinceStart() {
+		return TimeUnit.NANOSECONDS.toMicros(nanoTime.getAsLong() - startNanos);
+	}
+
+	/**
+	 * record queues the call to be written to the recording, unless recording has stopped or the
+	 * queue is full.
+	 */
+	public void record(RecordedCall call) {
+		if (closed || stopped || !queue.offer(call)) {
+			droppedCalls.increment();
+		}
+	}
+
+	void writeQueuedCalls() {
+		lock.lock();
+		try {
+			RecordedCall call;
+			while ((call = queue.poll()) != null) {
+				writeCallUnlessStopped(call);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void writeCallUnlessStopped(RecordedCall call) {
+		if (stopped || bytesWritten >= maxBytes) {
+			droppedCalls.increment();
+			return;
+		}
+		writeCall(call);
+	}
+
+	private void writeCall(RecordedCall call) {
+		try {
+			encodedCall.reset();
+			encode(call);
+			encodedCall.writeTo(out);
+			bytesWritten += encodedCall.size();
+			recordedCalls.increment();
+			unflushed = true;
+		} catch (IOException e) {
+			droppedCalls.increment();
+			stopAfterFailure(e);
+		}
+	}
+
+	private void stopAfterFailure(IOException e) {
+		stopped = true;
+		log.logErrorUsingMessage("Recording calls to " + name + " failed, recording stopped: "
+				+ e.getMessage());
+	}
+
+	private void encode(RecordedCall call) throws IOException {
+		CallRecordingFormat.writeNumber(encodedCall,
+				CallRecordingFormat.zigzag(call.startMicros() - previousStartMicros));
+		previousStartMicros = call.startMicros();
+		writeString(call.method());
+		CallRecordingFormat.writeLiteral(encodedCall, call.uri());
+		CallRecordingFormat.writeNumber(encodedCall, call.headers().size());
+		for (Entry<String, String> header : call.headers().entrySet()) {
+			writeString(header.getKey());
+			writeString(header.getValue());
+		}
+		CallRecordingFormat.writeNumber(encodedCall, call.status());
+		CallRecordingFormat.writeNumber(encodedCall, call.bodyBytes());
+		CallRecordingFormat.writeNumber(encodedCall, call.durationMicros());
+	}
+
+	private void writeString(String value) throws IOException {
+		Integer index = dictionary.get(value);
+		if (index != null) {
+			CallRecordingFormat.writeNumber(encodedCall, index + 1L);
+			return;
+		}
+		CallRecordingFormat.writeNumber(encodedCall, 0);
+		CallRecordingFormat.writeLiteral(encodedCall, value);
+		if (dictionary.size() < CallRecordingFormat.MAX_DICTIONARY_SIZE) {
+			dictionary.put(value, dictionary.size());
+		}
+	}
+
+	void flush() {
+		writeQueuedCalls();
+		lock.lock();
+		try {
+			if (!stopped && unflushed) {
+				out.flush();
+				unflushed = false;
+			}
+		} catch (IOException e) {
+			stopAfterFailure(e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * getRecordedCalls returns the number of calls written to the recording.
+	 */
+	public long getRecordedCalls() {
+		return recordedCalls.sum();
+	}
+
+	/**
+	 * getDroppedCalls returns the number of calls not written because the queue was full, the
+	 * recording had reached its maximum size or writing to it had failed.
+	 */
+	public long getDroppedCalls() {
+		return droppedCalls.sum();
+	}
+
+	/**
+	 * closeAtShutdown makes the recording be closed when the JVM shuts down, so that the calls
+	 * still in its buffer are written to the file.
+	 */
+	public void closeAtShutdown() {
+		Runtime.getRuntime().addShutdownHook(
+				new Thread(this::closeLoggingFailure, "iiif-call-recording-closer"));
+	}
+
+	private void closeLoggingFailure() {
+		try {
+			close();
+		} catch (IOException e) {
+			log.logErrorUsingMessage("Closing the recording of calls to " + name + " failed: "
+					+ e.getMessage());
+		}
+	}
+
+	/**
+	 * close writes the queued calls, then flushes and closes the recording. Calls recorded after
+	 * it are dropped.
+	 */
+	@Override
+	public void close() throws IOException {
+		flusher.shutdownNow();
+		closed = true;
+		writeQueuedCalls();
+		lock.lock();
+		try {
+			stopped = true;
+			out.close();
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.recording;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * CallRecordingFormat holds the constants and the variable length encoding shared by
+ * {@link CallRecorder} and {@link CallRecordingReader}.
+ * <p>
+ * A recording starts with a magic number, a version and the time the recording started in
+ * milliseconds since the epoch, as a big endian long. Each call follows as
+ * <ul>
+ * <li>the start of the call, as the zigzag encoded difference in microseconds from the start of
+ * the call before it</li>
+ * <li>the method, as a string</li>
+ * <li>the URI, as a literal</li>
+ * <li>the number of headers, followed by the name and value of each header, as strings</li>
+ * <li>the status, the number of body bytes and the duration in microseconds</li>
+ * </ul>
+ * Numbers are unsigned LEB128 variable length integers. A literal is its length in UTF-8 bytes
+ * followed by the bytes. A string is a number, 0 for a literal that follows and that is added to
+ * the dictionary of the recording unless it is full, or an index into the dictionary plus one.
+ * Methods, header names and most header values repeat from call to call, so they are written in
+ * full once and then take a byte or two each.
+ */
+final class CallRecordingFormat {
+	static final byte[] MAGIC = { 'C', 'I', 'I', 'R' };
+	static final int VERSION = 1;
+	static final int MAX_DICTIONARY_SIZE = 4096;
+	static final int MAX_LITERAL_BYTES = 64 * 1024;
+
+	private CallRecordingFormat() {
+		// only static methods
+	}
+
+	static void writeNumber(OutputStream out, long value) throws IOException {
+		long remaining = value;
+		while ((remaining & ~0x7FL) != 0) {
+			out.write((int) ((remaining & 0x7F) | 0x80));
+			remaining >>>= 7;
+		}
+		out.write((int) remaining);
+	}
+
+	static long readNumber(InputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int next = in.read();
+			if (next == -1) {
+				throw new EOFException();
+			}
+			value |= (long) (next & 0x7F) << shift;
+			if ((next & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Number in recording is longer than 64 bits");
+	}
+
+	static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	static long unzigzag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	static void writeLiteral(OutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeNumber(out, bytes.length);
+		out.write(bytes);
+	}
+
+	static String readLiteral(InputStream in) throws IOException {
+		long length = readNumber(in);
+		if (length > MAX_LITERAL_BYTES) {
+			throw new IOException("Literal in recording is longer than " + MAX_LITERAL_BYTES
+					+ " bytes");
+		}
+		byte[] bytes = in.readNBytes((int) length);
+		if (bytes.length < length) {
+			throw new EOFException();
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.recording;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * CallRecordingReader reads the calls in a recording written by a {@link CallRecorder}, one at a
+ * time and in the order they were recorded, which is the order they finished in.
+ * <p>
+ * The last call in a recording that was cut short, because the process died before its buffer
+ * was written in full, is taken as the end of the recording.
+ */
+public final class CallRecordingReader implements AutoCloseable {
+	private final DataInputStream in;
+	private final long startEpochMillis;
+	private final List<String> dictionary = new ArrayList<>();
+	private long previousStartMicros = 0;
+
+	/**
+	 * open opens the recording in the file.
+	 *
+	 * @throws IOException
+	 *             if the file can not be read or is not a recording of a version this reader can
+	 *             read
+	 */
+	public static CallRecordingReader open(Path file) throws IOException {
+		InputStream in = new BufferedInputStream(Files.newInputStream(file));
+		try {
+			return new CallRecordingReader(in);
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * isRecording returns true if the file starts as a recording written by a
+	 * {@link CallRecorder} does.
+	 *
+	 * @throws IOException
+	 *             if the file can not be read
+	 */
+	public static boolean isRecording(Path file) throws IOException {
+		try (InputStream in = Files.newInputStream(file)) {
+			return Arrays.equals(in.readNBytes(CallRecordingFormat.MAGIC.length),
+					CallRecordingFormat.MAGIC);
+		}
+	}
+
+	CallRecordingReader(InputStream in) throws IOException {
+		this.in = new DataInputStream(in.markSupported() ? in : new BufferedInputStream(in));
+		startEpochMillis = readRecordingHeader();
+	}
+
+	private long readRecordingHeader() throws IOException {
+		byte[] magic = in.readNBytes(CallRecordingFormat.MAGIC.length);
+		if (!Arrays.equals(magic, CallRecordingFormat.MAGIC)) {
+			throw new IOException("Not a call recording");
+		}
+		int version = in.read();
+		if (version != CallRecordingFormat.VERSION) {
+			throw new IOException("Call recording version " + version + " is not supported");
+		}
+		return in.readLong();
+	}
+
+	/**
+	 * getStartEpochMillis returns the time the recording started, in milliseconds since the
+	 * epoch.
+	 */
+	public long getStartEpochMillis() {
+		return startEpochMillis;
+	}
+
+	/**
+	 * next returns the next call in the recording, or an empty optional at the end of it.
+	 *
+	 * @throws IOException
+	 *             if the recording can not be read or is not valid
+	 */
+	public Optional<RecordedCall> next() throws IOException {
+		in.mark(1);
+		if (in.read() == -1) {
+			return Optional.empty();
+		}
+		in.reset();
+		try {
+			return Optional.of(readCall());
+		} catch (EOFException e) {
+			return Optional.empty();
+		}
+	}
+
+	private RecordedCall readCall() throws IOException {
+		long startMicros = previousStartMicros
+				+ CallRecordingFormat.unzigzag(CallRecordingFormat.readNumber(in));
+		previousStartMicros = startMicros;
+		String method = readString();
+		String uri = CallRecordingFormat.readLiteral(in);
+		long headerCount = CallRecordingFormat.readNumber(in);
+		Map<String, String> headers = new LinkedHashMap<>();
+		for (long i = 0; i < headerCount; i++) {
+			headers.put(readString(), readString());
+		}
+		int status = (int) CallRecordingFormat.readNumber(in);
+		long bodyBytes = CallRecordingFormat.readNumber(in);
+		long durationMicros = CallRecordingFormat.readNumber(in);
+		try {
+			return new RecordedCall(startMicros, method, uri, headers, status, bodyBytes,
+					durationMicros);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Call in recording is not valid: " + e.getMessage(), e);
+		}
+	}
+
+	private String readString() throws IOException {
+		long reference = CallRecordingFormat.readNumber(in);
+		if (reference == 0) {
+			String value = CallRecordingFormat.readLiteral(in);
+			if (dictionary.size() < CallRecordingFormat.MAX_DICTIONARY_SIZE) {
+				dictionary.add(value);
+			}
+			return value;
+		}
+		if (reference > dictionary.size()) {
+			throw new IOException("Call recording refers to string " + reference
+					+ " not yet defined");
+		}
+		return dictionary.get((int) (reference - 1));
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.recording;
+
+import java.util.Map;
+
+/**
+ * RecordedCall is a call to the adapter as kept in a recording made by a {@link CallRecorder}.
+ *
+ * @param startMicros
+ *            when the call started, in microseconds since the recording started
+ * @param method
+ *            the HTTP method of the call
+ * @param uri
+ *            the URI of the call, relative to the image server
+ * @param headers
+ *            the request headers that were recorded
+ * @param status
+ *            the status of the response, or {@link #FAILED} if the call threw
+ * @param bodyBytes
+ *            the number of bytes read from the response body
+ * @param durationMicros
+ *            the time from the start of the call until the body was read or closed, in
+ *            microseconds
+ */
+public record RecordedCall(long startMicros, String method, String uri,
+		Map<String, String> headers, int status, long bodyBytes, long durationMicros) {
+
+	/**
+	 * FAILED is the status recorded for calls that threw instead of returning a response.
+	 */
+	public static final int FAILED = 0;
+
+	public RecordedCall {
+		if (startMicros < 0 || status < 0 || bodyBytes < 0 || durationMicros < 0) {
+			throw new IllegalArgumentException(
+					"startMicros, status, bodyBytes and durationMicros must not be negative");
+		}
+		headers = Map.copyOf(headers);
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.transcode;
+
+import java.util.Locale;
+
+/**
+ * AcceptHeader reads how much a client wants a media type from the Accept header it sent.
+ * <p>
+ * Only media types that are listed by name count, wildcards such as image/* and *&#47;* do not.
+ * Browsers that can show WebP or AVIF list them by name, and a client that only accepts anything
+ * has not said that it can show an image in a format it did not ask for in the URI.
+ */
+public final class AcceptHeader {
+	private static final double NOT_ACCEPTED = 0;
+	private static final double DEFAULT_QUALITY = 1;
+
+	private AcceptHeader() {
+		// only static methods
+	}
+
+	/**
+	 * qualityOf returns the quality value the Accept header gives the media type, from 0 to 1,
+	 * or 0 if the media type is not listed by name.
+	 */
+	public static double qualityOf(String accept, String mediaType) {
+		for (String range : accept.split(",")) {
+			String[] parts = range.split(";");
+			if (parts[0].trim().equalsIgnoreCase(mediaType)) {
+				return readQuality(parts);
+			}
+		}
+		return NOT_ACCEPTED;
+	}
+
+	private static double readQuality(String[] parts) {
+		for (int i = 1; i < parts.length; i++) {
+			String parameter = parts[i].trim().toLowerCase(Locale.ROOT);
+			if (parameter.startsWith("q=")) {
+				return parseQuality(parameter.substring(2));
+			}
+		}
+		return DEFAULT_QUALITY;
+	}
+
+	private static double parseQuality(String quality) {
+		try {
+			double value = Double.parseDouble(quality.trim());
+			return value >= 0 && value <= 1 ? value : NOT_ACCEPTED;
+		} catch (NumberFormatException e) {
+			return NOT_ACCEPTED;
+		}
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.transcode;
+
+import java.util.Optional;
+
+/**
+ * ImageFormat is an image format that can be asked for in a IIIF image request, by its extension
+ * in the URI, and in an Accept header, by its media type.
+ */
+public enum ImageFormat {
+	JPEG("jpg", "image/jpeg"), PNG("png", "image/png"), WEBP("webp", "image/webp"),
+	AVIF("avif", "image/avif");
+
+	private final String extension;
+	private final String mediaType;
+
+	ImageFormat(String extension, String mediaType) {
+		this.extension = extension;
+		this.mediaType = mediaType;
+	}
+
+	public String extension() {
+		return extension;
+	}
+
+	public String mediaType() {
+		return mediaType;
+	}
+
+	public static Optional<ImageFormat> fromExtension(String extension) {
+		for (ImageFormat format : values()) {
+			if (format.extension.equalsIgnoreCase(extension)) {
+				return Optional.of(format);
+			}
+		}
+		return Optional.empty();
+	}
+}
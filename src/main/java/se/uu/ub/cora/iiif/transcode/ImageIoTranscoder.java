@@ -0,0 +1,93 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.transcode;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * ImageIoTranscoder transcodes images with the readers and writers registered with
+ * {@link ImageIO}. The JDK has writers for JPEG and PNG but not for WebP or AVIF, those are
+ * encoded only when an ImageIO plugin writing them is installed. The formats that can be encoded
+ * are looked up once, when the transcoder is created.
+ * <p>
+ * Images are decoded and encoded in memory, never through the temporary files ImageIO otherwise
+ * uses as cache.
+ */
+public class ImageIoTranscoder implements ImageTranscoder {
+	private final Set<ImageFormat> encodableFormats = EnumSet.noneOf(ImageFormat.class);
+
+	public ImageIoTranscoder() {
+		for (ImageFormat format : ImageFormat.values()) {
+			if (ImageIO.getImageWritersByMIMEType(format.mediaType()).hasNext()) {
+				encodableFormats.add(format);
+			}
+		}
+	}
+
+	@Override
+	public boolean canEncode(ImageFormat format) {
+		return encodableFormats.contains(format);
+	}
+
+	@Override
+	public byte[] transcode(byte[] source, ImageFormat format) throws IOException {
+		BufferedImage image = decode(source);
+		Iterator<ImageWriter> writers = ImageIO.getImageWritersByMIMEType(format.mediaType());
+		if (!writers.hasNext()) {
+			throw new IOException("No image writer found for " + format.mediaType());
+		}
+		return encode(image, writers.next(), source.length);
+	}
+
+	private BufferedImage decode(byte[] source) throws IOException {
+		ImageInputStream input = new MemoryCacheImageInputStream(
+				new ByteArrayInputStream(source));
+		BufferedImage image = ImageIO.read(input);
+		if (image == null) {
+			throw new IOException("Source is not an image that can be decoded");
+		}
+		return image;
+	}
+
+	private byte[] encode(BufferedImage image, ImageWriter writer, int expectedSize)
+			throws IOException {
+		ByteArrayOutputStream encoded = new ByteArrayOutputStream(expectedSize);
+		try (ImageOutputStream output = new MemoryCacheImageOutputStream(encoded)) {
+			writer.setOutput(output);
+			writer.write(null, new IIOImage(image, null, null), writer.getDefaultWriteParam());
+		} finally {
+			writer.dispose();
+		}
+		return encoded.toByteArray();
+	}
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.transcode;
+
+import java.io.IOException;
+
+/**
+ * ImageTranscoder encodes an image, read from the bytes of an image in another format, in a
+ * format of its choosing.
+ */
+public interface ImageTranscoder {
+
+	/**
+	 * canEncode returns true if images can be transcoded to the format.
+	 */
+	boolean canEncode(ImageFormat format);
+
+	/**
+	 * transcode returns the image in the source bytes encoded in the format.
+	 *
+	 * @throws IOException
+	 *             if the source can not be decoded or the image can not be encoded
+	 */
+	byte[] transcode(byte[] source, ImageFormat format) throws IOException;
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.transcode;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TranscodingExecutors creates the executor images are transcoded on. Transcoding is CPU heavy,
+ * so it runs on a fixed number of threads with a bounded queue, and a task that does not fit in
+ * the queue is rejected with a RejectedExecutionException instead of waiting. A request whose
+ * image can not be transcoded in time is answered with the image as it is, so a busy pool slows
+ * down no request thread.
+ */
+public final class TranscodingExecutors {
+
+	private TranscodingExecutors() {
+	}
+
+	public static ExecutorService newBoundedExecutor(int threads, int maxQueueLength) {
+		if (threads < 1 || maxQueueLength < 1) {
+			throw new IllegalArgumentException("threads and maxQueueLength must be at least 1");
+		}
+		return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(maxQueueLength), new DaemonThreadFactory(),
+				new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	private static final class DaemonThreadFactory implements ThreadFactory {
+		private final AtomicInteger threadNumber = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable,
+					"iiif-transcoder-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.transcode;
+
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * TranscodingSettings holds the settings for serving images in formats the client prefers over
+ * the format in the URI.
+ *
+ * @param upstreamFormats
+ *            the formats the image server can encode itself, asked for from it instead of being
+ *            transcoded
+ * @param maxSourceBytes
+ *            the size of the largest image that is transcoded, larger images are sent as they are
+ * @param timeout
+ *            how long a request waits for its image to be transcoded before the image is sent as
+ *            it is
+ * @param revalidateAfter
+ *            for how long a transcoded image is used before its source is revalidated, when the
+ *            image server sent neither s-maxage nor max-age for it
+ */
+public record TranscodingSettings(Set<ImageFormat> upstreamFormats, int maxSourceBytes,
+		Duration timeout, Duration revalidateAfter) {
+
+	public TranscodingSettings {
+		upstreamFormats = Set.copyOf(upstreamFormats);
+		if (maxSourceBytes < 1) {
+			throw new IllegalArgumentException("maxSourceBytes must be at least 1");
+		}
+		if (timeout.isNegative() || timeout.isZero()) {
+			throw new IllegalArgumentException("timeout must be more than 0");
+		}
+		if (revalidateAfter.isNegative()) {
+			throw new IllegalArgumentException("revalidateAfter must not be negative");
+		}
+	}
+}
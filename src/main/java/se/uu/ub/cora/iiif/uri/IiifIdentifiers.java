@@ -0,0 +1,54 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.uri;
+
+/**
+ * IiifIdentifiers finds the image identifier in request URIs.
+ */
+public final class IiifIdentifiers {
+	private static final String INFO_JSON = "/info.json";
+	private static final int IMAGE_REQUEST_SEGMENTS = 4;
+
+	private IiifIdentifiers() {
+		// only static methods
+	}
+
+	/**
+	 * fromUri returns the identifier of the image an info or image request URI is for, or the
+	 * path of the URI if it is neither.
+	 */
+	public static String fromUri(String uri) {
+		String path = removeQueryAndLeadingSlash(uri);
+		if (path.endsWith(INFO_JSON)) {
+			return path.substring(0, path.length() - INFO_JSON.length());
+		}
+		int identifierEnd = path.length();
+		for (int i = 0; i < IMAGE_REQUEST_SEGMENTS && identifierEnd > 0; i++) {
+			identifierEnd = path.lastIndexOf('/', identifierEnd - 1);
+		}
+		return identifierEnd > 0 ? path.substring(0, identifierEnd) : path;
+	}
+
+	private static String removeQueryAndLeadingSlash(String uri) {
+		int queryStart = uri.indexOf('?');
+		int end = queryStart == -1 ? uri.length() : queryStart;
+		int start = uri.startsWith("/") ? 1 : 0;
+		return uri.substring(start, end);
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.uri;
+
+/**
+ * IiifNumbers parses and normalizes the numbers in image request parameters in place, without
+ * creating substrings.
+ */
+final class IiifNumbers {
+	static final int INVALID = -1;
+
+	private IiifNumbers() {
+		// only static methods
+	}
+
+	/**
+	 * parseInt returns the non negative integer between from and to, or {@link #INVALID} if the
+	 * characters are not only digits or the number is too large for an int.
+	 */
+	static int parseInt(String text, int from, int to) {
+		if (from >= to) {
+			return INVALID;
+		}
+		long value = 0;
+		for (int i = from; i < to; i++) {
+			int digit = text.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return INVALID;
+			}
+			value = value * 10 + digit;
+			if (value > Integer.MAX_VALUE) {
+				return INVALID;
+			}
+		}
+		return (int) value;
+	}
+
+	/**
+	 * parseDecimal returns the non negative decimal number between from and to, written as digits
+	 * with an optional fraction, or {@link #INVALID} if it is not.
+	 */
+	static double parseDecimal(String text, int from, int to) {
+		int dot = indexOf(text, '.', from, to);
+		int integerEnd = dot == INVALID ? to : dot;
+		int integerPart = parseInt(text, from, integerEnd);
+		if (integerPart == INVALID) {
+			return INVALID;
+		}
+		if (dot == INVALID) {
+			return integerPart;
+		}
+		return addFraction(text, integerPart, dot + 1, to);
+	}
+
+	private static double addFraction(String text, int integerPart, int from, int to) {
+		if (from >= to) {
+			return INVALID;
+		}
+		double fraction = 0;
+		double scale = 1;
+		for (int i = from; i < to; i++) {
+			int digit = text.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return INVALID;
+			}
+			scale /= 10;
+			fraction += digit * scale;
+		}
+		return integerPart + fraction;
+	}
+
+	/**
+	 * appendDecimal appends a valid decimal number without leading zeros in the integer part and
+	 * without trailing zeros in the fraction, so that 0.0, 00 and 0 are all written as 0.
+	 */
+	static void appendDecimal(StringBuilder out, String text, int from, int to) {
+		int dot = indexOf(text, '.', from, to);
+		int integerEnd = dot == INVALID ? to : dot;
+		appendWithoutLeadingZeros(out, text, from, integerEnd);
+		if (dot != INVALID) {
+			appendFractionWithoutTrailingZeros(out, text, dot + 1, to);
+		}
+	}
+
+	private static void appendWithoutLeadingZeros(StringBuilder out, String text, int from,
+			int to) {
+		int start = from;
+		while (start < to - 1 && text.charAt(start) == '0') {
+			start++;
+		}
+		out.append(text, start, to);
+	}
+
+	private static void appendFractionWithoutTrailingZeros(StringBuilder out, String text,
+			int from, int to) {
+		int end = to;
+		while (end > from && text.charAt(end - 1) == '0') {
+			end--;
+		}
+		if (end > from) {
+			out.append('.').append(text, from, end);
+		}
+	}
+
+	static int indexOf(String text, char character, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (text.charAt(i) == character) {
+				return i;
+			}
+		}
+		return INVALID;
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.uri;
+
+/**
+ * IiifRequestType tells what kind of work a request URI asks the image server for, as far as
+ * can be seen from the URI alone.
+ */
+public enum IiifRequestType {
+	/**
+	 * A request for an info.json document.
+	 */
+	INFO,
+	/**
+	 * An image request for a size no larger than the thumbnail size in either dimension.
+	 */
+	THUMBNAIL,
+	/**
+	 * An image request for a part of an image, as made by deep zoom viewers.
+	 */
+	TILE,
+	/**
+	 * An image request for the whole image at a size larger than a thumbnail, typically a full
+	 * resolution download.
+	 */
+	FULL_IMAGE,
+	/**
+	 * Any other request, such as a request for the image server's base URI.
+	 */
+	OTHER;
+
+	private static final String INFO_JSON = "info.json";
+
+	/**
+	 * classify returns the type of the request with the given URI. The URI is scanned in place,
+	 * without being split or copied, as it is classified on every call to the image server.
+	 *
+	 * @param uri
+	 *            the request URI, relative to the image server
+	 * @param thumbnailMaxSize
+	 *            the largest width and height, in pixels, of a thumbnail
+	 */
+	public static IiifRequestType classify(String uri, int thumbnailMaxSize) {
+		int pathEnd = findPathEnd(uri);
+		if (endsWithInfoJson(uri, pathEnd)) {
+			return INFO;
+		}
+		int qualityStart = uri.lastIndexOf('/', skipTrailingSlashes(uri, pathEnd) - 1);
+		int rotationStart = lastIndexOf(uri, qualityStart);
+		int sizeStart = lastIndexOf(uri, rotationStart);
+		int regionStart = lastIndexOf(uri, sizeStart);
+		if (regionStart < 0) {
+			return OTHER;
+		}
+		return classifyImageRequest(uri, regionStart + 1, sizeStart, sizeStart + 1,
+				rotationStart, thumbnailMaxSize);
+	}
+
+	/**
+	 * isInfo returns true if the request with the given URI is for an info.json document, the
+	 * same as classify returning INFO but without looking at the rest of the URI.
+	 */
+	public static boolean isInfo(String uri) {
+		return endsWithInfoJson(uri, findPathEnd(uri));
+	}
+
+	private static int findPathEnd(String uri) {
+		int queryStart = uri.indexOf('?');
+		return queryStart == -1 ? uri.length() : queryStart;
+	}
+
+	private static boolean endsWithInfoJson(String uri, int pathEnd) {
+		return uri.startsWith(INFO_JSON, pathEnd - INFO_JSON.length());
+	}
+
+	private static int skipTrailingSlashes(String uri, int pathEnd) {
+		int end = pathEnd;
+		while (end > 0 && uri.charAt(end - 1) == '/') {
+			end--;
+		}
+		return end;
+	}
+
+	private static int lastIndexOf(String uri, int slash) {
+		if (slash <= 0) {
+			return -1;
+		}
+		return uri.lastIndexOf('/', slash - 1);
+	}
+
+	private static IiifRequestType classifyImageRequest(String uri, int regionFrom, int regionTo,
+			int sizeFrom, int sizeTo, int thumbnailMaxSize) {
+		if (isThumbnailSize(uri, sizeFrom, sizeTo, thumbnailMaxSize)) {
+			return THUMBNAIL;
+		}
+		if (isRegion(uri, regionFrom, regionTo, "full")
+				|| isRegion(uri, regionFrom, regionTo, "square")) {
+			return FULL_IMAGE;
+		}
+		return TILE;
+	}
+
+	private static boolean isRegion(String uri, int from, int to, String region) {
+		return to - from == region.length() && uri.startsWith(region, from);
+	}
+
+	private static boolean isThumbnailSize(String uri, int from, int to, int thumbnailMaxSize) {
+		int start = skipSizePrefixes(uri, from, to);
+		int comma = IiifNumbers.indexOf(uri, ',', start, to);
+		if (comma == IiifNumbers.INVALID) {
+			return false;
+		}
+		int width = parseOptionalDimension(uri, start, comma);
+		int height = parseOptionalDimension(uri, comma + 1, to);
+		boolean anyGiven = width > 0 || height > 0;
+		return anyGiven && width != IiifNumbers.INVALID && height != IiifNumbers.INVALID
+				&& width <= thumbnailMaxSize && height <= thumbnailMaxSize;
+	}
+
+	private static int skipSizePrefixes(String uri, int from, int to) {
+		int start = from;
+		if (start < to && uri.charAt(start) == '^') {
+			start++;
+		}
+		if (start < to && uri.charAt(start) == '!') {
+			start++;
+		}
+		return start;
+	}
+
+	private static int parseOptionalDimension(String uri, int from, int to) {
+		if (from == to) {
+			return 0;
+		}
+		return IiifNumbers.parseInt(uri, from, to);
+	}
+}
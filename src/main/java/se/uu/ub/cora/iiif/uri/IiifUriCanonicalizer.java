@@ -0,0 +1,503 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.uri;
+
+import java.util.Optional;
+
+import se.uu.ub.cora.iiif.cache.TileCacheKey;
+
+/**
+ * IiifUriCanonicalizer rewrites IIIF image request URIs of the form
+ * {identifier}/{region}/{size}/{rotation}/{quality}.{format} to their canonical form, as
+ * described in section 4.7 of the IIIF Image API 2.1 and 3.0, so that requests for the same image
+ * are made, cached and coalesced as one. A region covering the whole image is written as full,
+ * sizes are written in the form the API version prefers, rotations without needless zeros, and
+ * color as default for images in color. Only the image request parameters are rewritten; the
+ * identifier and anything before it, such as a leading slash, are passed on as the caller sent
+ * them, and URIs that are not image requests, such as info.json, are not rewritten at all. Cache
+ * and coalescing keys normalize the rest with {@link TileCacheKey#normalizeUri(String)}.
+ * <p>
+ * With a {@link SourceImage} from the {@link SourceImageLookup}, percent regions are written as
+ * the pixel regions they cover, rounded to whole pixels, so that they share a key with requests
+ * for the same pixels. Without one, only what follows from the syntax is rewritten, as the full
+ * size of the image is needed to know which regions and sizes are the same.
+ * <p>
+ * Image requests with a syntax the image server would reject throw an
+ * {@link InvalidIiifUriException}, so that they never have to reach it.
+ */
+public final class IiifUriCanonicalizer {
+	private static final int UNKNOWN = -1;
+	private static final int INVALID = IiifNumbers.INVALID;
+	private static final String INFO_JSON = "/info.json";
+	private final int apiVersion;
+	private final SourceImageLookup sourceImageLookup;
+
+	public IiifUriCanonicalizer(int apiVersion, SourceImageLookup sourceImageLookup) {
+		if (apiVersion != 2 && apiVersion != 3) {
+			throw new IllegalArgumentException(
+					"IIIF Image API version must be 2 or 3, was: " + apiVersion);
+		}
+		this.apiVersion = apiVersion;
+		this.sourceImageLookup = sourceImageLookup;
+	}
+
+	private static final class ImageRequest {
+		private final String uri;
+		private final SourceImage source;
+		private final StringBuilder out;
+		private int regionWidth = UNKNOWN;
+		private int regionHeight = UNKNOWN;
+
+		ImageRequest(String uri, SourceImage source) {
+			this.uri = uri;
+			this.source = source;
+			out = new StringBuilder(uri.length() + 8);
+		}
+
+		boolean isRegionKnown() {
+			return regionWidth != UNKNOWN;
+		}
+
+		void setRegion(int width, int height) {
+			regionWidth = width;
+			regionHeight = height;
+		}
+	}
+
+	/**
+	 * canonicalize returns the canonical form of the URI, which is the same instance as the URI
+	 * if it already was canonical.
+	 *
+	 * @throws InvalidIiifUriException
+	 *             if the URI is an image request with invalid syntax
+	 */
+	public String canonicalize(String uri) {
+		if (uri.indexOf('?') != -1 || uri.endsWith(INFO_JSON)) {
+			return uri;
+		}
+		int qualitySlash = uri.lastIndexOf('/');
+		int rotationSlash = previousSlash(uri, qualitySlash);
+		int sizeSlash = previousSlash(uri, rotationSlash);
+		int regionSlash = previousSlash(uri, sizeSlash);
+		if (regionSlash <= 0) {
+			return uri;
+		}
+		ImageRequest request = new ImageRequest(uri, lookupSourceImage(uri, regionSlash));
+		request.out.append(uri, 0, regionSlash + 1);
+		appendRegion(request, regionSlash + 1, sizeSlash);
+		request.out.append('/');
+		appendSize(request, sizeSlash + 1, rotationSlash);
+		request.out.append('/');
+		appendRotation(request, rotationSlash + 1, qualitySlash);
+		request.out.append('/');
+		appendQualityAndFormat(request, qualitySlash + 1, uri.length());
+		return uri.contentEquals(request.out) ? uri : request.out.toString();
+	}
+
+	private int previousSlash(String uri, int slash) {
+		return slash <= 0 ? INVALID : uri.lastIndexOf('/', slash - 1);
+	}
+
+	private SourceImage lookupSourceImage(String uri, int regionSlash) {
+		if (sourceImageLookup == SourceImageLookup.NONE) {
+			return null;
+		}
+		int identifierEnd = regionSlash;
+		while (identifierEnd > 0 && uri.charAt(identifierEnd - 1) == '/') {
+			identifierEnd--;
+		}
+		String identifier = TileCacheKey.normalizeUri(uri.substring(0, identifierEnd));
+		Optional<SourceImage> sourceImage = sourceImageLookup.lookup(identifier);
+		return sourceImage.orElse(null);
+	}
+
+	private void appendRegion(ImageRequest request, int from, int to) {
+		if (matches(request.uri, from, to, "full")) {
+			appendFullRegion(request);
+		} else if (matches(request.uri, from, to, "square")) {
+			appendSquareRegion(request);
+		} else if (startsWith(request.uri, from, to, "pct:")) {
+			appendPercentRegion(request, from, to);
+		} else {
+			appendPixelRegion(request, from, to);
+		}
+	}
+
+	private void appendFullRegion(ImageRequest request) {
+		if (request.source != null) {
+			request.setRegion(request.source.width(), request.source.height());
+		}
+		request.out.append("full");
+	}
+
+	private void appendSquareRegion(ImageRequest request) {
+		SourceImage source = request.source;
+		if (source != null) {
+			int side = Math.min(source.width(), source.height());
+			request.setRegion(side, side);
+			if (source.width() == source.height()) {
+				request.out.append("full");
+				return;
+			}
+		}
+		request.out.append("square");
+	}
+
+	private void appendPercentRegion(ImageRequest request, int from, int to) {
+		String uri = request.uri;
+		int start = from + "pct:".length();
+		int firstComma = nextComma(request, start, from, to);
+		int secondComma = nextComma(request, firstComma + 1, from, to);
+		int thirdComma = nextComma(request, secondComma + 1, from, to);
+		ensureNoMoreCommas(request, thirdComma + 1, from, to);
+		double x = parseRegionDecimal(request, start, firstComma, from, to);
+		double y = parseRegionDecimal(request, firstComma + 1, secondComma, from, to);
+		double width = parseRegionDecimal(request, secondComma + 1, thirdComma, from, to);
+		double height = parseRegionDecimal(request, thirdComma + 1, to, from, to);
+		ensureRegionHasArea(request, width > 0 && height > 0, from, to);
+		if (x == 0 && y == 0 && width >= 100 && height >= 100) {
+			appendFullRegion(request);
+			return;
+		}
+		SourceImage source = request.source;
+		if (source != null) {
+			appendPixelRegionWithinSource(request, percentOf(source.width(), x),
+					percentOf(source.height(), y), Math.max(1, percentOf(source.width(), width)),
+					Math.max(1, percentOf(source.height(), height)));
+			return;
+		}
+		request.out.append("pct:");
+		IiifNumbers.appendDecimal(request.out, uri, start, firstComma);
+		request.out.append(',');
+		IiifNumbers.appendDecimal(request.out, uri, firstComma + 1, secondComma);
+		request.out.append(',');
+		IiifNumbers.appendDecimal(request.out, uri, secondComma + 1, thirdComma);
+		request.out.append(',');
+		IiifNumbers.appendDecimal(request.out, uri, thirdComma + 1, to);
+	}
+
+	private int percentOf(int length, double percent) {
+		return (int) Math.round(length * percent / 100);
+	}
+
+	private double parseRegionDecimal(ImageRequest request, int numberFrom, int numberTo,
+			int from, int to) {
+		double value = IiifNumbers.parseDecimal(request.uri, numberFrom, numberTo);
+		if (value == INVALID) {
+			throw invalid("region", request, from, to);
+		}
+		return value;
+	}
+
+	private void appendPixelRegion(ImageRequest request, int from, int to) {
+		int firstComma = nextComma(request, from, from, to);
+		int secondComma = nextComma(request, firstComma + 1, from, to);
+		int thirdComma = nextComma(request, secondComma + 1, from, to);
+		ensureNoMoreCommas(request, thirdComma + 1, from, to);
+		int x = parseRegionInt(request, from, firstComma, from, to);
+		int y = parseRegionInt(request, firstComma + 1, secondComma, from, to);
+		int width = parseRegionInt(request, secondComma + 1, thirdComma, from, to);
+		int height = parseRegionInt(request, thirdComma + 1, to, from, to);
+		ensureRegionHasArea(request, width > 0 && height > 0, from, to);
+		if (request.source != null) {
+			appendPixelRegionWithinSource(request, x, y, width, height);
+			return;
+		}
+		appendPixelRegion(request.out, x, y, width, height);
+	}
+
+	private int parseRegionInt(ImageRequest request, int numberFrom, int numberTo, int from,
+			int to) {
+		int value = IiifNumbers.parseInt(request.uri, numberFrom, numberTo);
+		if (value == INVALID) {
+			throw invalid("region", request, from, to);
+		}
+		return value;
+	}
+
+	private void ensureRegionHasArea(ImageRequest request, boolean hasArea, int from, int to) {
+		if (!hasArea) {
+			throw new InvalidIiifUriException("Region must have a width and height above zero: "
+					+ request.uri.substring(from, to));
+		}
+	}
+
+	private void appendPixelRegionWithinSource(ImageRequest request, int x, int y, int width,
+			int height) {
+		SourceImage source = request.source;
+		if (x >= source.width() || y >= source.height()) {
+			throw new InvalidIiifUriException("Region is outside the image: " + x + "," + y);
+		}
+		int croppedWidth = Math.min(width, source.width() - x);
+		int croppedHeight = Math.min(height, source.height() - y);
+		if (x == 0 && y == 0 && croppedWidth == source.width()
+				&& croppedHeight == source.height()) {
+			appendFullRegion(request);
+			return;
+		}
+		request.setRegion(croppedWidth, croppedHeight);
+		appendPixelRegion(request.out, x, y, croppedWidth, croppedHeight);
+	}
+
+	private void appendPixelRegion(StringBuilder out, int x, int y, int width, int height) {
+		out.append(x).append(',').append(y).append(',').append(width).append(',').append(height);
+	}
+
+	private void appendSize(ImageRequest request, int from, int to) {
+		boolean upscale = from < to && request.uri.charAt(from) == '^';
+		if (upscale && apiVersion == 2) {
+			throw new InvalidIiifUriException(
+					"Upscaling with ^ is not part of IIIF Image API 2: "
+							+ request.uri.substring(from, to));
+		}
+		int start = upscale ? from + 1 : from;
+		if (matches(request.uri, start, to, "max") || matches(request.uri, start, to, "full")) {
+			appendMaxSize(request, upscale);
+		} else if (startsWith(request.uri, start, to, "pct:")) {
+			appendPercentSize(request, upscale, start + "pct:".length(), from, to);
+		} else if (startsWith(request.uri, start, to, "!")) {
+			appendBestFitSize(request, upscale, start + 1, from, to);
+		} else {
+			appendWidthHeightSize(request, upscale, start, from, to);
+		}
+	}
+
+	private void appendMaxSize(ImageRequest request, boolean upscale) {
+		if (upscale) {
+			request.out.append('^');
+		}
+		request.out.append(apiVersion == 3 ? "max" : "full");
+	}
+
+	private void appendPercentSize(ImageRequest request, boolean upscale, int start, int from,
+			int to) {
+		double percent = IiifNumbers.parseDecimal(request.uri, start, to);
+		if (percent == INVALID || percent == 0) {
+			throw invalid("size", request, from, to);
+		}
+		if (percent > 100 && !upscale && apiVersion == 3) {
+			throw sizeRequiresUpscaling(request.uri.substring(from, to));
+		}
+		if (request.isRegionKnown()) {
+			appendComputedSize(request, upscale, scale(request.regionWidth, percent / 100),
+					scale(request.regionHeight, percent / 100), true);
+			return;
+		}
+		appendUpscale(request, upscale);
+		request.out.append("pct:");
+		IiifNumbers.appendDecimal(request.out, request.uri, start, to);
+	}
+
+	private void appendBestFitSize(ImageRequest request, boolean upscale, int start, int from,
+			int to) {
+		int comma = nextComma(request, start, from, to);
+		int width = IiifNumbers.parseInt(request.uri, start, comma);
+		int height = IiifNumbers.parseInt(request.uri, comma + 1, to);
+		if (width <= 0 || height <= 0) {
+			throw invalid("size", request, from, to);
+		}
+		if (request.isRegionKnown()) {
+			double factor = Math.min((double) width / request.regionWidth,
+					(double) height / request.regionHeight);
+			if (!upscale && apiVersion == 3) {
+				factor = Math.min(factor, 1);
+			}
+			appendComputedSize(request, upscale, scale(request.regionWidth, factor),
+					scale(request.regionHeight, factor), true);
+			return;
+		}
+		appendUpscale(request, upscale);
+		request.out.append('!').append(width).append(',').append(height);
+	}
+
+	private void appendWidthHeightSize(ImageRequest request, boolean upscale, int start,
+			int from, int to) {
+		int comma = nextComma(request, start, from, to);
+		int width = parseOptionalSize(request, start, comma, from, to);
+		int height = parseOptionalSize(request, comma + 1, to, from, to);
+		if (width == UNKNOWN && height == UNKNOWN) {
+			throw invalid("size", request, from, to);
+		}
+		if (request.isRegionKnown()) {
+			appendComputedWidthHeightSize(request, upscale, width, height);
+			return;
+		}
+		appendUpscale(request, upscale);
+		appendOptionalSize(request.out, width);
+		request.out.append(',');
+		appendOptionalSize(request.out, height);
+	}
+
+	private int parseOptionalSize(ImageRequest request, int numberFrom, int numberTo, int from,
+			int to) {
+		if (numberFrom == numberTo) {
+			return UNKNOWN;
+		}
+		int value = IiifNumbers.parseInt(request.uri, numberFrom, numberTo);
+		if (value <= 0) {
+			throw invalid("size", request, from, to);
+		}
+		return value;
+	}
+
+	private void appendOptionalSize(StringBuilder out, int value) {
+		if (value != UNKNOWN) {
+			out.append(value);
+		}
+	}
+
+	private void appendComputedWidthHeightSize(ImageRequest request, boolean upscale, int width,
+			int height) {
+		if (width == UNKNOWN) {
+			double factor = (double) height / request.regionHeight;
+			appendComputedSize(request, upscale, scale(request.regionWidth, factor), height,
+					true);
+			return;
+		}
+		int heightKeepingAspectRatio = scale(request.regionHeight,
+				(double) width / request.regionWidth);
+		if (height == UNKNOWN) {
+			appendComputedSize(request, upscale, width, heightKeepingAspectRatio, true);
+		} else {
+			appendComputedSize(request, upscale, width, height,
+					height == heightKeepingAspectRatio);
+		}
+	}
+
+	private int scale(int length, double factor) {
+		return (int) Math.max(1, Math.round(length * factor));
+	}
+
+	private void appendComputedSize(ImageRequest request, boolean upscale, int width,
+			int height, boolean keepsAspectRatio) {
+		boolean larger = width > request.regionWidth || height > request.regionHeight;
+		if (larger && !upscale && apiVersion == 3) {
+			throw sizeRequiresUpscaling(width + "," + height);
+		}
+		if (width == request.regionWidth && height == request.regionHeight) {
+			appendMaxSize(request, false);
+		} else if (apiVersion == 3) {
+			appendUpscale(request, larger);
+			request.out.append(width).append(',').append(height);
+		} else {
+			request.out.append(width).append(',');
+			if (!keepsAspectRatio) {
+				request.out.append(height);
+			}
+		}
+	}
+
+	private void appendUpscale(ImageRequest request, boolean upscale) {
+		if (upscale) {
+			request.out.append('^');
+		}
+	}
+
+	private InvalidIiifUriException sizeRequiresUpscaling(String size) {
+		return new InvalidIiifUriException(
+				"Size larger than the region must start with ^: " + size);
+	}
+
+	private void appendRotation(ImageRequest request, int from, int to) {
+		boolean mirror = from < to && request.uri.charAt(from) == '!';
+		int start = mirror ? from + 1 : from;
+		double degrees = IiifNumbers.parseDecimal(request.uri, start, to);
+		if (degrees == INVALID || degrees > 360) {
+			throw invalid("rotation", request, from, to);
+		}
+		if (mirror) {
+			request.out.append('!');
+		}
+		if (degrees == 360) {
+			request.out.append('0');
+			return;
+		}
+		IiifNumbers.appendDecimal(request.out, request.uri, start, to);
+	}
+
+	private void appendQualityAndFormat(ImageRequest request, int from, int to) {
+		int dot = request.uri.lastIndexOf('.', to - 1);
+		if (dot < from || !isWord(request.uri, from, dot) || !isWord(request.uri, dot + 1, to)) {
+			throw invalid("quality and format", request, from, to);
+		}
+		if (isColorImage(request) && matches(request.uri, from, dot, "color")) {
+			request.out.append("default");
+		} else {
+			request.out.append(request.uri, from, dot);
+		}
+		request.out.append(request.uri, dot, to);
+	}
+
+	private boolean isColorImage(ImageRequest request) {
+		return request.source != null && request.source.color();
+	}
+
+	private boolean isWord(String uri, int from, int to) {
+		if (from >= to) {
+			return false;
+		}
+		for (int i = from; i < to; i++) {
+			char character = uri.charAt(i);
+			if (!isLowerCaseLetterOrDigit(character)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean isLowerCaseLetterOrDigit(char character) {
+		return (character >= 'a' && character <= 'z') || (character >= '0' && character <= '9');
+	}
+
+	private int nextComma(ImageRequest request, int start, int from, int to) {
+		int comma = IiifNumbers.indexOf(request.uri, ',', start, to);
+		if (comma == INVALID) {
+			throw invalid("region or size", request, from, to);
+		}
+		return comma;
+	}
+
+	private void ensureNoMoreCommas(ImageRequest request, int start, int from, int to) {
+		if (IiifNumbers.indexOf(request.uri, ',', start, to) != INVALID) {
+			throw invalid("region", request, from, to);
+		}
+	}
+
+	private boolean matches(String uri, int from, int to, String literal) {
+		return to - from == literal.length() && uri.startsWith(literal, from);
+	}
+
+	private boolean startsWith(String uri, int from, int to, String prefix) {
+		return to - from > prefix.length() && uri.startsWith(prefix, from);
+	}
+
+	private InvalidIiifUriException invalid(String parameter, ImageRequest request, int from,
+			int to) {
+		return new InvalidIiifUriException(
+				"Invalid " + parameter + " in image request: " + request.uri.substring(from, to));
+	}
+
+	int onlyForTestGetApiVersion() {
+		return apiVersion;
+	}
+
+	SourceImageLookup onlyForTestGetSourceImageLookup() {
+		return sourceImageLookup;
+	}
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.warm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapter;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.info.ImageInfo;
+import se.uu.ub.cora.iiif.info.ImageInfoParser;
+import se.uu.ub.cora.iiif.limit.RequestPriority;
+
+/**
+ * CacheWarmer makes requests through the adapter it is given, in the background, so that the
+ * caches in that adapter hold the responses before a user asks for them. An image is warmed by
+ * reading its info.json and requesting what its {@link WarmupPlan} lists, and after a restart the
+ * hottest URIs of an access log can be requested again.
+ * <p>
+ * Warm-up must never compete with live traffic. Calls are made one at a time on a single thread,
+ * no faster than the rate in the settings, and warm-up pauses while the number of
+ * {@link LiveCalls} in progress at the image server is at the pause level. Every warm-up request
+ * is marked with {@link RequestPriority#LOW} in {@link RequestPriority#HEADER}, so that a
+ * concurrency limiter lets requests from users go first, and so that warm-up calls are not
+ * counted as live calls.
+ * <p>
+ * At most {@value #MAX_PENDING_IMAGES} images wait to be warmed. Images asked for beyond that are
+ * not warmed, and are counted as skipped, and can be scheduled again later.
+ */
+public class CacheWarmer implements AutoCloseable {
+	private static final int HTTP_OK = 200;
+	private static final int MAX_REMEMBERED_IMAGES = 10_000;
+	static final int MAX_PENDING_IMAGES = 100;
+	private static final long PAUSE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+	private static final Map<String, String> WARMUP_HEADERS = Map.of(RequestPriority.HEADER,
+			RequestPriority.LOW.name());
+	private final IiifAdapter iiifAdapter;
+	private final WarmupSettings settings;
+	private final LiveCalls liveCalls;
+	private final ScheduledExecutorService scheduler;
+	private final LongSupplier nanoTime;
+	private final Sleeper sleeper;
+	private final long callIntervalNanos;
+	private final AtomicInteger pendingImages = new AtomicInteger();
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Map<String, Boolean> rememberedImages = new LinkedHashMap<>() {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Entry<String, Boolean> eldest) {
+			return size() > MAX_REMEMBERED_IMAGES;
+		}
+	};
+	private final LongAdder imagesWarmed = new LongAdder();
+	private final LongAdder warmupCalls = new LongAdder();
+	private final LongAdder failedWarmups = new LongAdder();
+	private final LongAdder pauses = new LongAdder();
+	private final LongAdder skippedImages = new LongAdder();
+	private long nextCallNanos;
+
+	@FunctionalInterface
+	interface Sleeper {
+		void sleep(long nanos) throws InterruptedException;
+	}
+
+	public CacheWarmer(IiifAdapter iiifAdapter, WarmupSettings settings, LiveCalls liveCalls) {
+		this(iiifAdapter, settings, liveCalls,
+				Executors.newSingleThreadScheduledExecutor(runnable -> {
+					Thread thread = new Thread(runnable, "iiif-cache-warmer");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				}), System::nanoTime, TimeUnit.NANOSECONDS::sleep);
+	}
+
+	CacheWarmer(IiifAdapter iiifAdapter, WarmupSettings settings, LiveCalls liveCalls,
+			ScheduledExecutorService scheduler, LongSupplier nanoTime, Sleeper sleeper) {
+		this.iiifAdapter = iiifAdapter;
+		this.settings = settings;
+		this.liveCalls = liveCalls;
+		this.scheduler = scheduler;
+		this.nanoTime = nanoTime;
+		this.sleeper = sleeper;
+		callIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / settings.requestsPerSecond());
+		nextCallNanos = nanoTime.getAsLong();
+	}
+
+	/**
+	 * warmImage schedules warm-up of the image with the given identifier, unless it has already
+	 * been scheduled. The most recently scheduled images are remembered, so that an image is
+	 * warmed once and not every time its info.json is requested. An image is not scheduled while
+	 * {@value #MAX_PENDING_IMAGES} images are waiting to be warmed.
+	 *
+	 * @return true if warm-up of the image was scheduled, false if it had been before or too
+	 *         many images are waiting
+	 */
+	public boolean warmImage(String identifier) {
+		lock.lock();
+		try {
+			if (rememberedImages.containsKey(identifier)) {
+				return false;
+			}
+			if (pendingImages.get() >= MAX_PENDING_IMAGES) {
+				skippedImages.increment();
+				return false;
+			}
+			rememberedImages.put(identifier, Boolean.TRUE);
+			pendingImages.incrementAndGet();
+		} finally {
+			lock.unlock();
+		}
+		scheduler.execute(() -> runWarmup(() -> warmPendingImage(identifier)));
+		return true;
+	}
+
+	private void warmPendingImage(String identifier) throws InterruptedException {
+		try {
+			warmImageNow(identifier);
+		} finally {
+			pendingImages.decrementAndGet();
+		}
+	}
+
+	/**
+	 * warmFromAccessLog schedules, after the given delay, a warm-up of the hottest URIs in the
+	 * access log, read as {@link HotUris} reads it. The delay lets live traffic resume after a
+	 * restart before warm-up starts.
+	 */
+	public void warmFromAccessLog(Path accessLog, int maxUris, Duration delay) {
+		scheduler.schedule(() -> runWarmup(() -> warmUrisNow(accessLog, maxUris)),
+				delay.toNanos(), TimeUnit.NANOSECONDS);
+	}
+
+	private void runWarmup(WarmupTask task) {
+		try {
+			task.run();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@FunctionalInterface
+	private interface WarmupTask {
+		void run() throws InterruptedException;
+	}
+
+	private void warmImageNow(String identifier) throws InterruptedException {
+		ImageInfo imageInfo = readImageInfo(identifier);
+		if (imageInfo == null) {
+			return;
+		}
+		for (IiifParameters request : WarmupPlan.requestsFor(identifier, imageInfo, settings)) {
+			call(request);
+		}
+		imagesWarmed.increment();
+	}
+
+	private ImageInfo readImageInfo(String identifier) throws InterruptedException {
+		awaitTurn();
+		warmupCalls.increment();
+		try {
+			IiifAdapterResponse response = iiifAdapter.callIiifServer(
+					new IiifParameters(identifier + "/info.json", "GET", WARMUP_HEADERS));
+			try (InputStream body = response.body()) {
+				if (response.status() != HTTP_OK) {
+					failedWarmups.increment();
+					return null;
+				}
+				String json = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+				return ImageInfoParser.parse(json);
+			}
+		} catch (RuntimeException | IOException e) {
+			failedWarmups.increment();
+			return null;
+		}
+	}
+
+	private void warmUrisNow(Path accessLog, int maxUris) throws InterruptedException {
+		List<String> uris;
+		try {
+			uris = HotUris.readHottest(accessLog, maxUris);
+		} catch (UncheckedIOException e) {
+			failedWarmups.increment();
+			return;
+		}
+		for (String uri : uris) {
+			call(new IiifParameters(uri, "GET", Map.of()));
+		}
+	}
+
+	private void call(IiifParameters request) throws InterruptedException {
+		awaitTurn();
+		warmupCalls.increment();
+		try {
+			IiifAdapterResponse response = iiifAdapter.callIiifServer(markedAsWarmup(request));
+			try (InputStream body = response.body()) {
+				body.transferTo(OutputStream.nullOutputStream());
+			}
+			if (response.status() != HTTP_OK) {
+				failedWarmups.increment();
+			}
+		} catch (RuntimeException | IOException e) {
+			failedWarmups.increment();
+		}
+	}
+
+	private IiifParameters markedAsWarmup(IiifParameters request) {
+		Map<String, String> headers = new LinkedHashMap<>(request.headersMap());
+		headers.putAll(WARMUP_HEADERS);
+		return new IiifParameters(request.uri(), request.method(), headers);
+	}
+
+	private void awaitTurn() throws InterruptedException {
+		while (liveCalls.inProgress() >= settings.pauseAtLiveCalls()) {
+			pauses.increment();
+			sleeper.sleep(PAUSE_NANOS);
+		}
+		long now = nanoTime.getAsLong();
+		if (now < nextCallNanos) {
+			sleeper.sleep(nextCallNanos - now);
+		}
+		nextCallNanos = Math.max(now, nextCallNanos) + callIntervalNanos;
+	}
+
+	/**
+	 * getImagesWarmed returns the number of images that have been warmed.
+	 */
+	public long getImagesWarmed() {
+		return imagesWarmed.sum();
+	}
+
+	/**
+	 * getWarmupCalls returns the number of calls made to warm the caches.
+	 */
+	public long getWarmupCalls() {
+		return warmupCalls.sum();
+	}
+
+	/**
+	 * getFailedWarmups returns the number of warm-up calls that failed or did not answer 200, and
+	 * of access logs that could not be read.
+	 */
+	public long getFailedWarmups() {
+		return failedWarmups.sum();
+	}
+
+	/**
+	 * getPauses returns the number of times warm-up has waited for live traffic to calm down.
+	 */
+	public long getPauses() {
+		return pauses.sum();
+	}
+
+	/**
+	 * getSkippedImages returns the number of images not warmed as too many images were waiting
+	 * to be warmed.
+	 */
+	public long getSkippedImages() {
+		return skippedImages.sum();
+	}
+
+	public WarmupSettings getSettings() {
+		return settings;
+	}
+
+	public LiveCalls getLiveCalls() {
+		return liveCalls;
+	}
+
+	@Override
+	public void close() {
+		scheduler.shutdownNow();
+	}
+
+	int onlyForTestGetPendingImages() {
+		return pendingImages.get();
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.warm;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+
+import se.uu.ub.cora.iiif.recording.CallRecorder;
+import se.uu.ub.cora.iiif.recording.CallRecordingReader;
+import se.uu.ub.cora.iiif.recording.RecordedCall;
+
+/**
+ * HotUris finds the most requested URIs in an access log, to warm the caches with after a
+ * restart. Each line in the log is either a request URI on its own or a line in the Common Log
+ * Format, from which the URI of GET requests is taken. URIs are relative to the image server, a
+ * leading slash is removed. Empty lines and lines starting with # are skipped.
+ * <p>
+ * A recording written by a {@link CallRecorder} can be used as the access log as well, the URIs
+ * of its GET calls are read from it and from the recording moved aside when it was started, so
+ * that the calls before a restart are counted as well.
+ */
+public final class HotUris {
+	private static final String GET_REQUEST_LINE_START = "\"GET ";
+
+	private HotUris() {
+		// only static methods
+	}
+
+	/**
+	 * readHottest returns the most requested URIs in the access log file, the most requested
+	 * first.
+	 *
+	 * @throws UncheckedIOException
+	 *             if the file can not be read
+	 */
+	public static List<String> readHottest(Path accessLog, int maxUris) {
+		try {
+			if (CallRecordingReader.isRecording(accessLog)) {
+				return readHottestFromRecording(accessLog, maxUris);
+			}
+			try (BufferedReader reader = Files.newBufferedReader(accessLog,
+					StandardCharsets.UTF_8)) {
+				return readHottest(reader, maxUris);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static List<String> readHottestFromRecording(Path recording, int maxUris)
+			throws IOException {
+		Map<String, long[]> counts = new LinkedHashMap<>();
+		Path previousRecording = CallRecorder.previousRecordingOf(recording);
+		if (Files.exists(previousRecording) && CallRecordingReader.isRecording(previousRecording)) {
+			countGetCalls(previousRecording, counts);
+		}
+		countGetCalls(recording, counts);
+		return hottest(counts, maxUris);
+	}
+
+	private static void countGetCalls(Path recording, Map<String, long[]> counts)
+			throws IOException {
+		try (CallRecordingReader reader = CallRecordingReader.open(recording)) {
+			Optional<RecordedCall> call;
+			while ((call = reader.next()).isPresent()) {
+				if ("GET".equals(call.get().method())) {
+					String uri = removeLeadingSlash(call.get().uri());
+					counts.computeIfAbsent(uri, key -> new long[1])[0]++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * readHottest returns the most requested URIs in the access log read from the reader, the
+	 * most requested first. URIs requested equally often come in the order they first appear in
+	 * the log.
+	 */
+	public static List<String> readHottest(BufferedReader reader, int maxUris) throws IOException {
+		Map<String, long[]> counts = new LinkedHashMap<>();
+		String line;
+		while ((line = reader.readLine()) != null) {
+			String uri = readUri(line.strip());
+			if (!uri.isEmpty()) {
+				counts.computeIfAbsent(uri, key -> new long[1])[0]++;
+			}
+		}
+		return hottest(counts, maxUris);
+	}
+
+	private static String readUri(String line) {
+		if (line.isEmpty() || line.startsWith("#")) {
+			return "";
+		}
+		if (line.indexOf('"') != -1) {
+			return readUriFromCommonLogFormat(line);
+		}
+		return removeLeadingSlash(line.split("\\s+", 2)[0]);
+	}
+
+	private static String readUriFromCommonLogFormat(String line) {
+		int requestLineStart = line.indexOf(GET_REQUEST_LINE_START);
+		if (requestLineStart == -1) {
+			return "";
+		}
+		int uriStart = requestLineStart + GET_REQUEST_LINE_START.length();
+		int uriEnd = line.indexOf(' ', uriStart);
+		int requestLineEnd = line.indexOf('"', uriStart);
+		if (uriEnd == -1 || (requestLineEnd != -1 && requestLineEnd < uriEnd)) {
+			uriEnd = requestLineEnd == -1 ? line.length() : requestLineEnd;
+		}
+		return removeLeadingSlash(line.substring(uriStart, uriEnd));
+	}
+
+	private static String removeLeadingSlash(String uri) {
+		return uri.startsWith("/") ? uri.substring(1) : uri;
+	}
+
+	private static List<String> hottest(Map<String, long[]> counts, int maxUris) {
+		List<Entry<String, long[]>> entries = new ArrayList<>(counts.entrySet());
+		entries.sort((first, second) -> Long.compare(second.getValue()[0], first.getValue()[0]));
+		List<String> uris = new ArrayList<>();
+		for (int i = 0; i < Math.min(maxUris, entries.size()); i++) {
+			uris.add(entries.get(i).getKey());
+		}
+		return uris;
+	}
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.warm;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * LiveCalls counts the calls from users that are in progress at the image server, so that a
+ * {@link CacheWarmer} can pause while the image server is busy. A call is in progress from when
+ * it is made until the body of its response is closed. Calls answered from a cache never reach
+ * the image server and are not counted.
+ */
+public class LiveCalls {
+	private final AtomicInteger inProgress = new AtomicInteger();
+
+	/**
+	 * started is called when a call from a user is made to the image server.
+	 */
+	public void started() {
+		inProgress.incrementAndGet();
+	}
+
+	/**
+	 * finished is called when a call from a user has failed, or the body of its response has
+	 * been closed.
+	 */
+	public void finished() {
+		inProgress.decrementAndGet();
+	}
+
+	/**
+	 * inProgress returns the number of calls from users in progress.
+	 */
+	public int inProgress() {
+		return inProgress.get();
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.warm;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.batch.TilePyramid;
+import se.uu.ub.cora.iiif.batch.Viewport;
+import se.uu.ub.cora.iiif.info.ImageInfo;
+import se.uu.ub.cora.iiif.info.TileSize;
+
+/**
+ * WarmupPlan finds the requests that warm the caches for an image, a thumbnail and every tile of
+ * the top zoom levels of its tile pyramid. The top levels are the ones with the largest scale
+ * factors, they have the fewest tiles and are what a viewer shows first.
+ */
+public final class WarmupPlan {
+
+	private WarmupPlan() {
+		// only static methods
+	}
+
+	/**
+	 * requestsFor returns GET requests for the thumbnail and the tiles of the top zoom levels of
+	 * the image, the thumbnail first and then level by level from the top. Tiles are taken from
+	 * the first tile size in the image info, an image without tiles gets only a thumbnail.
+	 */
+	public static List<IiifParameters> requestsFor(String identifier, ImageInfo imageInfo,
+			WarmupSettings settings) {
+		List<IiifParameters> requests = new ArrayList<>();
+		if (settings.thumbnailSize() > 0) {
+			requests.add(new IiifParameters(
+					identifier + "/full/" + settings.thumbnailSize() + ",/0/default.jpg", "GET",
+					Map.of()));
+		}
+		if (!imageInfo.tiles().isEmpty()) {
+			addTopZoomLevels(requests, identifier, imageInfo, settings.zoomLevels());
+		}
+		return requests;
+	}
+
+	private static void addTopZoomLevels(List<IiifParameters> requests, String identifier,
+			ImageInfo imageInfo, int zoomLevels) {
+		TileSize tileSize = imageInfo.tiles().get(0);
+		List<Integer> scaleFactors = tileSize.scaleFactors().stream().distinct()
+				.sorted(Comparator.reverseOrder()).limit(zoomLevels).toList();
+		for (int scaleFactor : scaleFactors) {
+			Viewport wholeImage = new Viewport(identifier, imageInfo.width(), imageInfo.height(),
+					scaleFactor, tileSize.width(), 0, 0, imageInfo.width(), imageInfo.height());
+			requests.addAll(TilePyramid.tilesFor(wholeImage));
+		}
+	}
+}
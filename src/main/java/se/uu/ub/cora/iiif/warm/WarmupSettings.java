@@ -0,0 +1,47 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.warm;
+
+/**
+ * WarmupSettings holds the settings for warming the tile caches.
+ *
+ * @param zoomLevels
+ *            the number of zoom levels, from the top of the tile pyramid, to warm for an image
+ * @param thumbnailSize
+ *            the width of the thumbnail to warm for an image, or zero for no thumbnail
+ * @param requestsPerSecond
+ *            the highest rate of warm-up calls
+ * @param pauseAtLiveCalls
+ *            the number of live calls in progress at which warm-up pauses
+ */
+public record WarmupSettings(int zoomLevels, int thumbnailSize, double requestsPerSecond,
+		int pauseAtLiveCalls) {
+
+	public WarmupSettings {
+		if (zoomLevels < 0 || thumbnailSize < 0) {
+			throw new IllegalArgumentException("zoomLevels and thumbnailSize must not be negative");
+		}
+		if (!(requestsPerSecond > 0)) {
+			throw new IllegalArgumentException("requestsPerSecond must be more than 0");
+		}
+		if (pauseAtLiveCalls < 1) {
+			throw new IllegalArgumentException("pauseAtLiveCalls must be at least 1");
+		}
+	}
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.binary.BinaryException;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.async.ThreadPerCallExecutors;
+import se.uu.ub.cora.iiif.batch.BatchIiifAdapter;
+import se.uu.ub.cora.iiif.batch.BatchResult;
+import se.uu.ub.cora.iiif.batch.Viewport;
+import se.uu.ub.cora.iiif.spies.IiifAdapterSpy;
+
+public class BatchingIiifAdapterTest {
+	private IiifAdapterSpy iiifAdapterSpy;
+	private ExecutorService executor;
+	private BatchingIiifAdapter adapter;
+	private List<ClosableBody> bodies;
+
+	private static final class ClosableBody extends ByteArrayInputStream {
+		private volatile boolean closed = false;
+
+		private ClosableBody(String body) {
+			super(body.getBytes(StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+
+	@BeforeMethod
+	private void beforeMethod() {
+		iiifAdapterSpy = new IiifAdapterSpy();
+		bodies = new CopyOnWriteArrayList<>();
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				this::createResponseWithClosableBody);
+		executor = ThreadPerCallExecutors.newThreadPerCallExecutor();
+		adapter = new BatchingIiifAdapter(iiifAdapterSpy, executor, 2, 8);
+	}
+
+	private IiifAdapterResponse createResponseWithClosableBody() {
+		ClosableBody body = new ClosableBody("someBody");
+		bodies.add(body);
+		return new IiifAdapterResponse(200, new HashMap<>(), body);
+	}
+
+	@AfterMethod
+	private void afterMethod() {
+		executor.shutdownNow();
+	}
+
+	private List<IiifParameters> createRequests(String... identifiers) {
+		List<IiifParameters> requests = new ArrayList<>();
+		for (String identifier : identifiers) {
+			requests.add(new IiifParameters(identifier + "/info.json", "GET", Map.of()));
+		}
+		return requests;
+	}
+
+	private List<String> uris(List<BatchResult> results) {
+		return results.stream().map(result -> result.iiifParameters().uri()).toList();
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		assertTrue(adapter instanceof BatchIiifAdapter);
+		assertSame(adapter.onlyForTestGetIiifAdapter(), iiifAdapterSpy);
+		assertEquals(adapter.onlyForTestGetMaxConcurrentCalls(), 2);
+		assertEquals(adapter.onlyForTestGetMaxTotalConcurrentCalls(), 8);
+	}
+
+	@Test
+	public void testCallIsPassedOn() throws Exception {
+		IiifParameters iiifParameters = createRequests("someId").get(0);
+
+		IiifAdapterResponse response = adapter.callIiifServer(iiifParameters);
+
+		iiifAdapterSpy.MCR.assertParameters("callIiifServer", 0, iiifParameters);
+		iiifAdapterSpy.MCR.assertReturn("callIiifServer", 0, response);
+	}
+
+	@Test
+	public void testInvalidateIsPassedOnToInvalidatingAdapter() throws Exception {
+		List<String> invalidated = new ArrayList<>();
+		adapter = new BatchingIiifAdapter(
+				new InvalidatingIiifAdapter(iiifAdapterSpy, List.of(invalidated::add)), executor,
+				2, 8);
+
+		adapter.invalidate("someId");
+
+		assertEquals(invalidated, List.of("someId"));
+	}
+
+	@Test
+	public void testInvalidateWithNothingToInvalidateIsIgnored() throws Exception {
+		adapter.invalidate("someId");
+
+		iiifAdapterSpy.MCR.assertMethodNotCalled("callIiifServer");
+	}
+
+	@Test
+	public void testBatchReturnsAllResults() throws Exception {
+		List<IiifParameters> requests = createRequests("id1", "id2", "id3", "id4", "id5");
+
+		List<BatchResult> results = adapter.callIiifServerBatch(requests).toList();
+
+		assertEquals(results.size(), 5);
+		assertEquals(uris(results).stream().sorted().toList(),
+				requests.stream().map(IiifParameters::uri).toList());
+		for (BatchResult result : results) {
+			assertTrue(result.hasResponse());
+			assertEquals(new String(result.response().body().readAllBytes()), "someBody");
+		}
+		assertEquals(adapter.getBatches(), 1);
+		assertEquals(adapter.getBatchCalls(), 5);
+	}
+
+	@Test
+	public void testEmptyBatch() throws Exception {
+		assertEquals(adapter.callIiifServerBatch(List.of()).count(), 0);
+	}
+
+	@Test
+	public void testFailedCallGivesErrorResult() throws Exception {
+		BinaryException failure = BinaryException.withMessage("someFailure");
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer", () -> {
+			if (iiifAdapterSpy.MCR.getNumberOfCallsToMethod("callIiifServer") == 1) {
+				throw failure;
+			}
+			return IiifAdapterSpy.createResponse(200, "someBody");
+		});
+		adapter = new BatchingIiifAdapter(iiifAdapterSpy, executor, 1, 8);
+
+		List<BatchResult> results = adapter
+				.callIiifServerBatch(createRequests("id1", "id2", "id3")).toList();
+
+		assertFalse(results.get(0).hasResponse());
+		assertSame(results.get(0).error(), failure);
+		assertNull(results.get(0).response());
+		assertTrue(results.get(1).hasResponse());
+		assertTrue(results.get(2).hasResponse());
+		assertEquals(adapter.getFailedBatchCalls(), 1);
+	}
+
+	@Test
+	public void testResultsInCompletionOrder() throws Exception {
+		CountDownLatch releaseSlowCall = new CountDownLatch(1);
+		adapter = new BatchingIiifAdapter(iiifParameters -> {
+			if (iiifParameters.uri().startsWith("slowId")) {
+				awaitQuietly(releaseSlowCall);
+			}
+			return IiifAdapterSpy.createResponse(200, "someBody");
+		}, executor, 2, 8);
+		List<String> order = new ArrayList<>();
+
+		try (Stream<BatchResult> results = adapter
+				.callIiifServerBatch(createRequests("slowId", "id2"))) {
+			results.forEach(result -> {
+				order.add(result.iiifParameters().uri());
+				releaseSlowCall.countDown();
+			});
+		}
+
+		assertEquals(order, List.of("id2/info.json", "slowId/info.json"));
+	}
+
+	private void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Test
+	public void testConcurrentCallsAreCapped() throws Exception {
+		AtomicInteger inProgress = new AtomicInteger();
+		AtomicInteger maxInProgress = new AtomicInteger();
+		adapter = new BatchingIiifAdapter(iiifParameters -> {
+			maxInProgress.accumulateAndGet(inProgress.incrementAndGet(), Math::max);
+			sleepQuietly(50);
+			inProgress.decrementAndGet();
+			return IiifAdapterSpy.createResponse(200, "someBody");
+		}, executor, 2, 8);
+
+		List<BatchResult> results = adapter.callIiifServerBatch(
+				createRequests("id1", "id2", "id3", "id4", "id5", "id6")).toList();
+
+		assertEquals(results.size(), 6);
+		assertEquals(maxInProgress.get(), 2);
+	}
+
+	@Test
+	public void testConcurrentCallsOfAllBatchesAreCapped() throws Exception {
+		AtomicInteger inProgress = new AtomicInteger();
+		AtomicInteger maxInProgress = new AtomicInteger();
+		adapter = new BatchingIiifAdapter(iiifParameters -> {
+			maxInProgress.accumulateAndGet(inProgress.incrementAndGet(), Math::max);
+			sleepQuietly(50);
+			inProgress.decrementAndGet();
+			return IiifAdapterSpy.createResponse(200, "someBody");
+		}, executor, 2, 3);
+
+		try (Stream<BatchResult> first = adapter
+				.callIiifServerBatch(createRequests("id1", "id2", "id3", "id4"));
+				Stream<BatchResult> second = adapter
+						.callIiifServerBatch(createRequests("id5", "id6", "id7", "id8"))) {
+			assertEquals(first.toList().size() + second.toList().size(), 8);
+		}
+
+		assertEquals(maxInProgress.get(), 3);
+	}
+
+	private void sleepQuietly(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Test
+	public void testClosingStreamStopsBatchAndClosesUnreadBodies() throws Exception {
+		adapter = new BatchingIiifAdapter(iiifAdapterSpy, executor, 1, 8);
+		Stream<BatchResult> results = adapter
+				.callIiifServerBatch(createRequests("id1", "id2", "id3", "id4"));
+		BatchResult first = results.iterator().next();
+
+		results.close();
+
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		int calls = iiifAdapterSpy.MCR.getNumberOfCallsToMethod("callIiifServer");
+		assertTrue(calls < 4, "calls made: " + calls);
+		assertFalse(((ClosableBody) first.response().body()).closed);
+		for (ClosableBody body : bodies) {
+			assertTrue(body == first.response().body() || body.closed);
+		}
+	}
+
+	@Test
+	public void testPrefetchReadsAndClosesBodies() throws Exception {
+		Viewport viewport = new Viewport("someId", 2000, 1000, 1, 512, 0, 0, 1024, 512);
+
+		List<BatchResult> results = adapter.prefetch(viewport).toList();
+
+		assertEquals(uris(results).stream().sorted().toList(),
+				List.of("someId/0,0,512,512/512,/0/default.jpg",
+						"someId/512,0,512,512/512,/0/default.jpg"));
+		for (BatchResult result : results) {
+			assertEquals(result.response().status(), 200);
+			assertEquals(result.response().body().read(), -1);
+		}
+		for (ClosableBody body : bodies) {
+			assertTrue(body.closed);
+			assertEquals(body.available(), 0);
+		}
+	}
+
+	@Test
+	public void testPrefetchIncludesNextZoomLevel() throws Exception {
+		Viewport viewport = new Viewport("someId", 2000, 1000, 2, 512, 0, 0, 1024, 1000);
+
+		List<BatchResult> results = adapter.prefetch(viewport).toList();
+
+		assertEquals(uris(results).stream().sorted().toList(),
+				List.of("someId/0,0,1024,1000/512,/0/default.jpg",
+						"someId/0,0,512,512/512,/0/default.jpg",
+						"someId/0,512,512,488/512,/0/default.jpg",
+						"someId/512,0,512,512/512,/0/default.jpg",
+						"someId/512,512,512,488/512,/0/default.jpg"));
+	}
+
+	@Test
+	public void testPrefetchFailureReadingBody() throws Exception {
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> new IiifAdapterResponse(200, new HashMap<>(), new InputStream() {
+					@Override
+					public int read() throws java.io.IOException {
+						throw new java.io.IOException("someReadError");
+					}
+				}));
+		Viewport viewport = new Viewport("someId", 500, 500, 1, 512, 0, 0, 500, 500);
+
+		BatchResult result = adapter.prefetch(viewport).toList().get(0);
+
+		assertEquals(result.error().getMessage(),
+				"Error while reading prefetched response: someReadError");
+		assertEquals(adapter.getFailedBatchCalls(), 1);
+	}
+}
@@ -0,0 +1,410 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.cache.CacheStatistics;
+import se.uu.ub.cora.iiif.cache.MemoryTileStore;
+import se.uu.ub.cora.iiif.http.HttpClientPool;
+import se.uu.ub.cora.iiif.http.PoolSettings;
+import se.uu.ub.cora.iiif.spies.IiifAdapterSpy;
+import se.uu.ub.cora.iiif.spies.SettableClock;
+import se.uu.ub.cora.iiif.standin.ImageServerStandIn;
+import se.uu.ub.cora.iiif.standin.ImageServerStandIn.Response;
+
+public class CachingIiifAdapterTest {
+	private static final String THUMBNAIL_URI = "someId/full/263,/0/default.jpg";
+	private IiifAdapterSpy iiifAdapterSpy;
+	private MemoryTileStore tileStore;
+	private CachingIiifAdapter adapter;
+	private IiifParameters getThumbnail;
+	private SettableClock clock;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		iiifAdapterSpy = new IiifAdapterSpy();
+		clock = new SettableClock(Instant.parse("2026-01-01T00:00:00Z"));
+		tileStore = new MemoryTileStore(10_000, Duration.ofMinutes(5), clock);
+		adapter = new CachingIiifAdapter(iiifAdapterSpy, tileStore, 100, Duration.ofMinutes(1),
+				clock);
+		getThumbnail = new IiifParameters(THUMBNAIL_URI, "GET", Map.of());
+	}
+
+	@Test
+	public void testMissCallsDecoratedAdapter() throws Exception {
+		IiifAdapterResponse response = adapter.callIiifServer(getThumbnail);
+
+		iiifAdapterSpy.MCR.assertParameters("callIiifServer", 0, getThumbnail);
+		assertEquals(response.status(), 200);
+		assertEquals(readBody(response.body()), "someBody");
+		assertEquals(tileStore.getStatistics(), new CacheStatistics(0, 1, 0, 1, 8));
+	}
+
+	private String readBody(InputStream body) throws IOException {
+		return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testHitDoesNotCallDecoratedAdapter() throws Exception {
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> new IiifAdapterResponse(200, Map.of("Content-Type", "image/jpeg"),
+						new ByteArrayInputStream("someBody".getBytes())));
+		adapter.callIiifServer(getThumbnail);
+
+		IiifAdapterResponse first = adapter.callIiifServer(getThumbnail);
+		IiifAdapterResponse second = adapter.callIiifServer(getThumbnail);
+
+		iiifAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", 1);
+		assertEquals(first.status(), 200);
+		assertEquals(first.headers().get("Content-Type"), "image/jpeg");
+		assertEquals(readBody(first.body()), "someBody");
+		assertEquals(readBody(second.body()), "someBody");
+		assertEquals(tileStore.getStatistics().hits(), 2);
+	}
+
+	@Test
+	public void testNotFoundIsNeverCached() throws Exception {
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> IiifAdapterSpy.createResponse(404, "not found"));
+
+		IiifAdapterResponse response = adapter.callIiifServer(getThumbnail);
+		adapter.callIiifServer(getThumbnail);
+
+		assertEquals(response.status(), 404);
+		iiifAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", 2);
+		assertEquals(tileStore.getStatistics().entries(), 0);
+	}
+
+	@Test
+	public void testErrorIsNeverCached() throws Exception {
+		IiifAdapterResponse errorResponse = IiifAdapterSpy.createResponse(500, "error");
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer", () -> errorResponse);
+
+		IiifAdapterResponse response = adapter.callIiifServer(getThumbnail);
+
+		assertSame(response, errorResponse);
+		assertEquals(tileStore.getStatistics().entries(), 0);
+	}
+
+	@Test
+	public void testOnlyGetIsCached() throws Exception {
+		IiifParameters head = new IiifParameters(THUMBNAIL_URI, "HEAD", Map.of());
+
+		adapter.callIiifServer(head);
+		adapter.callIiifServer(head);
+
+		iiifAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", 2);
+		assertEquals(tileStore.getStatistics(), new CacheStatistics(0, 0, 0, 0, 0));
+	}
+
+	@Test
+	public void testNoStoreIsNotCached() throws Exception {
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer", () -> {
+			IiifAdapterResponse response = IiifAdapterSpy.createResponse(200, "someBody");
+			response.headers().put("Cache-Control", "private, no-store");
+			return response;
+		});
+
+		adapter.callIiifServer(getThumbnail);
+
+		assertEquals(tileStore.getStatistics().entries(), 0);
+	}
+
+	@Test
+	public void testBodyLargerThanEntryIsPassedThroughInFull() throws Exception {
+		String largeBody = "x".repeat(250);
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> IiifAdapterSpy.createResponse(200, largeBody));
+
+		IiifAdapterResponse response = adapter.callIiifServer(getThumbnail);
+
+		assertEquals(readBody(response.body()), largeBody);
+		assertEquals(tileStore.getStatistics().entries(), 0);
+	}
+
+	@Test
+	public void testDeclaredLargerThanEntryIsNotRead() throws Exception {
+		Map<String, String> headers = new HashMap<>();
+		headers.put("content-length", "5000");
+		IiifAdapterResponse largeResponse = new IiifAdapterResponse(200, headers,
+				new ByteArrayInputStream(new byte[5000]));
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer", () -> largeResponse);
+
+		IiifAdapterResponse response = adapter.callIiifServer(getThumbnail);
+
+		assertSame(response, largeResponse);
+		assertEquals(largeResponse.body().available(), 5000);
+	}
+
+	@Test
+	public void testMalformedContentLengthIsReadUpToEntry() throws Exception {
+		returnResponseWithHeaders(200, "someBody", "Content-Length", "eight");
+
+		IiifAdapterResponse response = adapter.callIiifServer(getThumbnail);
+
+		assertEquals(readBody(response.body()), "someBody");
+		assertEquals(tileStore.getStatistics().entries(), 1);
+	}
+
+	@Test
+	public void testVaryOnHeaderNotInKeyIsNotCached() throws Exception {
+		returnResponseWithHeaders(200, "someBody", "Vary", "Accept, User-Agent");
+
+		adapter.callIiifServer(getThumbnail);
+		adapter.callIiifServer(getThumbnail);
+
+		iiifAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", 2);
+		assertEquals(tileStore.getStatistics().entries(), 0);
+	}
+
+	@Test
+	public void testVaryOnAcceptEncodingIsCachedPerEncoding() throws Exception {
+		returnResponseWithHeaders(200, "someBody", "Vary", "Accept-Encoding");
+
+		adapter.callIiifServer(new IiifParameters(THUMBNAIL_URI, "GET",
+				Map.of("Accept-Encoding", "gzip")));
+		adapter.callIiifServer(new IiifParameters(THUMBNAIL_URI, "GET",
+				Map.of("Accept-Encoding", "identity")));
+		adapter.callIiifServer(new IiifParameters(THUMBNAIL_URI, "GET",
+				Map.of("Accept-Encoding", "gzip")));
+
+		iiifAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", 2);
+		assertEquals(tileStore.getStatistics().entries(), 2);
+	}
+
+	@Test
+	public void testDifferentAcceptHeadersAreCachedSeparately() throws Exception {
+		adapter.callIiifServer(new IiifParameters("someId/info.json", "GET",
+				Map.of("Accept", "application/json")));
+		adapter.callIiifServer(new IiifParameters("someId/info.json", "GET",
+				Map.of("Accept", "application/ld+json")));
+
+		iiifAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", 2);
+		assertEquals(tileStore.getStatistics().entries(), 2);
+	}
+
+	@Test
+	public void testOnlyForTest() throws Exception {
+		assertSame(adapter.onlyForTestGetIiifAdapter(), iiifAdapterSpy);
+		assertSame(adapter.onlyForTestGetTileStore(), tileStore);
+	}
+
+	private void returnResponseWithHeaders(int status, String body, String... headers) {
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer", () -> {
+			IiifAdapterResponse response = IiifAdapterSpy.createResponse(status, body);
+			for (int i = 0; i < headers.length; i += 2) {
+				response.headers().put(headers[i], headers[i + 1]);
+			}
+			return response;
+		});
+	}
+
+	@Test
+	public void testFreshTileIsNotRevalidated() throws Exception {
+		returnResponseWithHeaders(200, "someBody", "ETag", "\"v1\"");
+		adapter.callIiifServer(getThumbnail);
+		clock.advance(Duration.ofSeconds(59));
+
+		adapter.callIiifServer(getThumbnail);
+
+		iiifAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", 1);
+		assertEquals(adapter.getRevalidations(), 0);
+	}
+
+	@Test
+	public void testStaleTileIsRevalidatedWithValidators() throws Exception {
+		returnResponseWithHeaders(200, "someBody", "ETag", "\"v1\"", "Last-Modified",
+				"Thu, 01 Jan 2026 00:00:00 GMT");
+		adapter.callIiifServer(new IiifParameters(THUMBNAIL_URI, "GET",
+				Map.of("Accept", "image/jpeg")));
+		clock.advance(Duration.ofMinutes(1));
+		returnResponseWithHeaders(304, "", "ETag", "\"v1\"");
+
+		IiifAdapterResponse response = adapter.callIiifServer(new IiifParameters(THUMBNAIL_URI,
+				"GET", Map.of("Accept", "image/jpeg", "If-None-Match", "\"v0\"")));
+
+		IiifParameters revalidation = (IiifParameters) iiifAdapterSpy.MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("callIiifServer", 1,
+						"iiifParameters");
+		assertEquals(revalidation.headersMap(), Map.of("Accept", "image/jpeg", "If-None-Match",
+				"\"v1\"", "If-Modified-Since", "Thu, 01 Jan 2026 00:00:00 GMT"));
+		assertEquals(response.status(), 200);
+		assertEquals(readBody(response.body()), "someBody");
+		assertEquals(adapter.getRevalidations(), 1);
+		assertEquals(adapter.getNotModifiedRevalidations(), 1);
+	}
+
+	@Test
+	public void testNotModifiedRevalidationRenewsTile() throws Exception {
+		returnResponseWithHeaders(200, "someBody", "ETag", "\"v1\"");
+		adapter.callIiifServer(getThumbnail);
+		clock.advance(Duration.ofMinutes(1));
+		returnResponseWithHeaders(304, "", "ETag", "\"v1\"", "Cache-Control", "max-age=120");
+		adapter.callIiifServer(getThumbnail);
+		clock.advance(Duration.ofSeconds(119));
+
+		IiifAdapterResponse response = adapter.callIiifServer(getThumbnail);
+
+		iiifAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", 2);
+		assertEquals(readBody(response.body()), "someBody");
+		assertEquals(response.headers().get("Cache-Control"), "max-age=120");
+	}
+
+	@Test
+	public void testModifiedRevalidationReplacesTile() throws Exception {
+		returnResponseWithHeaders(200, "someBody", "ETag", "\"v1\"");
+		adapter.callIiifServer(getThumbnail);
+		clock.advance(Duration.ofMinutes(1));
+		returnResponseWithHeaders(200, "someNewBody", "ETag", "\"v2\"");
+
+		IiifAdapterResponse response = adapter.callIiifServer(getThumbnail);
+		IiifAdapterResponse cachedResponse = adapter.callIiifServer(getThumbnail);
+
+		assertEquals(readBody(response.body()), "someNewBody");
+		assertEquals(readBody(cachedResponse.body()), "someNewBody");
+		assertEquals(cachedResponse.headers().get("ETag"), "\"v2\"");
+		assertEquals(adapter.getNotModifiedRevalidations(), 0);
+	}
+
+	@Test
+	public void testTileIsRemovedWhenRevalidationIsNotFound() throws Exception {
+		adapter.callIiifServer(getThumbnail);
+		clock.advance(Duration.ofMinutes(1));
+		returnResponseWithHeaders(404, "not found");
+
+		IiifAdapterResponse response = adapter.callIiifServer(getThumbnail);
+
+		assertEquals(response.status(), 404);
+		assertEquals(tileStore.getStatistics().entries(), 0);
+	}
+
+	@Test
+	public void testNoCacheIsAlwaysRevalidated() throws Exception {
+		returnResponseWithHeaders(200, "someBody", "ETag", "\"v1\"", "Cache-Control",
+				"no-cache");
+		adapter.callIiifServer(getThumbnail);
+
+		adapter.callIiifServer(getThumbnail);
+
+		assertEquals(adapter.getRevalidations(), 1);
+	}
+
+	@Test
+	public void testClientWithStoredRepresentationGetsNotModified() throws Exception {
+		returnResponseWithHeaders(200, "someBody", "ETag", "\"v1\"", "Content-Type",
+				"image/jpeg");
+		adapter.callIiifServer(getThumbnail);
+
+		IiifAdapterResponse response = adapter.callIiifServer(
+				new IiifParameters(THUMBNAIL_URI, "GET", Map.of("If-None-Match", "\"v1\"")));
+
+		assertEquals(response.status(), 304);
+		assertEquals(response.headers(), Map.of("ETag", "\"v1\""));
+		assertEquals(response.body().read(), -1);
+		assertEquals(adapter.getNotModifiedResponses(), 1);
+		iiifAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", 1);
+	}
+
+	@Test
+	public void testClientWithOtherRepresentationGetsTile() throws Exception {
+		returnResponseWithHeaders(200, "someBody", "ETag", "\"v1\"");
+		adapter.callIiifServer(getThumbnail);
+
+		IiifAdapterResponse response = adapter.callIiifServer(
+				new IiifParameters(THUMBNAIL_URI, "GET", Map.of("If-None-Match", "\"v0\"")));
+
+		assertEquals(response.status(), 200);
+		assertEquals(readBody(response.body()), "someBody");
+	}
+
+	@Test
+	public void testCachedResponseHasContentLength() throws Exception {
+		adapter.callIiifServer(getThumbnail);
+
+		IiifAdapterResponse response = adapter.callIiifServer(getThumbnail);
+
+		assertEquals(response.headers().get("Content-Length"), "8");
+	}
+
+	@Test
+	public void testRevalidationAsksForWholeRepresentation() throws Exception {
+		returnResponseWithHeaders(200, "someBody", "ETag", "\"v1\"");
+		adapter.callIiifServer(getThumbnail);
+		clock.advance(Duration.ofMinutes(1));
+		returnResponseWithHeaders(304, "", "ETag", "\"v1\"");
+
+		IiifAdapterResponse response = adapter.callIiifServer(new IiifParameters(THUMBNAIL_URI,
+				"GET", Map.of("Range", "bytes=4-", "If-Range", "\"v1\"")));
+
+		IiifParameters revalidation = (IiifParameters) iiifAdapterSpy.MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("callIiifServer", 1,
+						"iiifParameters");
+		assertEquals(revalidation.headersMap(), Map.of("If-None-Match", "\"v1\""));
+		assertEquals(response.status(), 200);
+		assertEquals(readBody(response.body()), "someBody");
+	}
+
+	@Test
+	public void testRevalidationAgainstImageServer() throws Exception {
+		try (ImageServerStandIn imageServer = ImageServerStandIn.start(request -> {
+			if ("\"v1\"".equals(request.header("If-None-Match"))) {
+				return new Response(304, Map.of("ETag", "\"v1\""), 0, null);
+			}
+			return Response.withBody(200, Map.of("ETag", "\"v1\""), new byte[5000]);
+		})) {
+			PooledIiifAdapter pooledAdapter = new PooledIiifAdapter(imageServer.getBaseUrl(),
+					new HttpClientPool(
+							new PoolSettings(2, Duration.ofSeconds(5), Duration.ofSeconds(5))),
+					Duration.ofSeconds(5));
+			adapter = new CachingIiifAdapter(pooledAdapter, new MemoryTileStore(100_000,
+					Duration.ofMinutes(5), clock), 10_000, Duration.ofMinutes(1), clock);
+			adapter.callIiifServer(getThumbnail);
+			clock.advance(Duration.ofMinutes(2));
+
+			IiifAdapterResponse response = adapter.callIiifServer(getThumbnail);
+
+			assertEquals(response.body().readAllBytes().length, 5000);
+			assertEquals(imageServer.getRequests().size(), 2);
+			assertEquals(imageServer.getBodyBytesWritten(), 5000);
+			assertTrue(adapter.getNotModifiedRevalidations() == 1);
+		}
+	}
+
+	@Test
+	public void testOnlyForTestRevalidateAfter() throws Exception {
+		assertEquals(adapter.onlyForTestGetRevalidateAfter(), Duration.ofMinutes(1));
+	}
+}
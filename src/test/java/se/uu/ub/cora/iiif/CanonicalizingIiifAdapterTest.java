@@ -0,0 +1,99 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.spies.IiifAdapterSpy;
+import se.uu.ub.cora.iiif.uri.IiifUriCanonicalizer;
+import se.uu.ub.cora.iiif.uri.SourceImageLookup;
+
+public class CanonicalizingIiifAdapterTest {
+	private IiifAdapterSpy iiifAdapterSpy;
+	private IiifUriCanonicalizer canonicalizer;
+	private CanonicalizingIiifAdapter adapter;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		iiifAdapterSpy = new IiifAdapterSpy();
+		canonicalizer = new IiifUriCanonicalizer(3, SourceImageLookup.NONE);
+		adapter = new CanonicalizingIiifAdapter(iiifAdapterSpy, canonicalizer);
+	}
+
+	@Test
+	public void testCanonicalRequestIsPassedOnAsIs() throws Exception {
+		IiifParameters parameters = new IiifParameters("someId/full/max/0/default.jpg", "GET",
+				Map.of());
+
+		IiifAdapterResponse response = adapter.callIiifServer(parameters);
+
+		iiifAdapterSpy.MCR.assertParameters("callIiifServer", 0, parameters);
+		iiifAdapterSpy.MCR.assertReturn("callIiifServer", 0, response);
+		assertEquals(adapter.getRewrittenRequests(), 0);
+	}
+
+	@Test
+	public void testRequestIsPassedOnInCanonicalForm() throws Exception {
+		Map<String, String> headers = Map.of("Accept", "image/jpeg");
+
+		adapter.callIiifServer(
+				new IiifParameters("someId/full/full/0.0/default.jpg", "HEAD", headers));
+
+		iiifAdapterSpy.MCR.assertParameters("callIiifServer", 0, new IiifParameters(
+				"someId/full/max/0/default.jpg", "HEAD", headers));
+		assertEquals(adapter.getRewrittenRequests(), 1);
+	}
+
+	@Test
+	public void testPrefixIsPassedOnAsSent() throws Exception {
+		adapter.callIiifServer(
+				new IiifParameters("/someId//full/full/0/default.jpg", "GET", Map.of()));
+
+		iiifAdapterSpy.MCR.assertParameters("callIiifServer", 0,
+				new IiifParameters("/someId//full/max/0/default.jpg", "GET", Map.of()));
+	}
+
+	@Test
+	public void testInvalidRequestIsAnsweredWithBadRequest() throws Exception {
+		IiifAdapterResponse response = adapter.callIiifServer(
+				new IiifParameters("someId/full/max/999/default.jpg", "GET", Map.of()));
+
+		iiifAdapterSpy.MCR.assertMethodNotCalled("callIiifServer");
+		assertEquals(response.status(), 400);
+		assertEquals(response.headers().get("Content-Type"), "text/plain; charset=UTF-8");
+		assertEquals(new String(response.body().readAllBytes(), StandardCharsets.UTF_8),
+				"Invalid rotation in image request: 999");
+		assertEquals(adapter.getRejectedRequests(), 1);
+	}
+
+	@Test
+	public void testOnlyForTest() throws Exception {
+		assertSame(adapter.onlyForTestGetIiifAdapter(), iiifAdapterSpy);
+		assertSame(adapter.onlyForTestGetCanonicalizer(), canonicalizer);
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+import java.time.Duration;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.binary.BinaryException;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.breaker.BreakerSettings;
+import se.uu.ub.cora.iiif.breaker.CircuitBreaker;
+import se.uu.ub.cora.iiif.breaker.CircuitBreaker.State;
+import se.uu.ub.cora.iiif.breaker.CircuitOpenException;
+import se.uu.ub.cora.iiif.spies.IiifAdapterSpy;
+
+public class CircuitBreakingIiifAdapterTest {
+	private IiifAdapterSpy iiifAdapterSpy;
+	private CircuitBreaker circuitBreaker;
+	private CircuitBreakingIiifAdapter adapter;
+	private IiifParameters iiifParameters;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		iiifAdapterSpy = new IiifAdapterSpy();
+		circuitBreaker = new CircuitBreaker(
+				new BreakerSettings(50, 4, 2, Duration.ofSeconds(30), 1));
+		adapter = new CircuitBreakingIiifAdapter(iiifAdapterSpy, circuitBreaker);
+		iiifParameters = new IiifParameters("someId/full/max/0/default.jpg", "GET", Map.of());
+	}
+
+	private void respondWithStatus(int status) {
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> IiifAdapterSpy.createResponse(status, "someBody"));
+	}
+
+	private void callTimes(int times) {
+		for (int i = 0; i < times; i++) {
+			adapter.callIiifServer(iiifParameters);
+		}
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		assertSame(adapter.onlyForTestGetIiifAdapter(), iiifAdapterSpy);
+		assertSame(adapter.getCircuitBreaker(), circuitBreaker);
+	}
+
+	@Test
+	public void testCallIsPassedOn() throws Exception {
+		IiifAdapterResponse response = adapter.callIiifServer(iiifParameters);
+
+		iiifAdapterSpy.MCR.assertParameters("callIiifServer", 0, iiifParameters);
+		iiifAdapterSpy.MCR.assertReturn("callIiifServer", 0, response);
+	}
+
+	@Test
+	public void testServerErrorsOpenCircuit() throws Exception {
+		respondWithStatus(502);
+
+		callTimes(2);
+
+		assertEquals(circuitBreaker.getState(), State.OPEN);
+	}
+
+	@Test
+	public void testNotFoundDoesNotOpenCircuit() throws Exception {
+		respondWithStatus(404);
+
+		callTimes(4);
+
+		assertEquals(circuitBreaker.getState(), State.CLOSED);
+	}
+
+	@Test
+	public void testFailedCallsOpenCircuit() throws Exception {
+		BinaryException failure = BinaryException.withMessage("someFailure");
+		iiifAdapterSpy.MRV.setAlwaysThrowException("callIiifServer", failure);
+
+		for (int i = 0; i < 2; i++) {
+			try {
+				adapter.callIiifServer(iiifParameters);
+				fail("It should throw an exception");
+			} catch (BinaryException e) {
+				assertSame(e, failure);
+			}
+		}
+
+		assertEquals(circuitBreaker.getState(), State.OPEN);
+	}
+
+	@Test
+	public void testOpenCircuitRejectsCall() throws Exception {
+		respondWithStatus(500);
+		callTimes(2);
+
+		try {
+			adapter.callIiifServer(iiifParameters);
+			fail("It should throw an exception");
+		} catch (CircuitOpenException e) {
+			assertEquals(e.getMessage(), "The image server is failing, calls are stopped");
+			assertEquals(e.getRetryAfterSeconds(), 30);
+		}
+		iiifAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", 2);
+		assertEquals(circuitBreaker.getRejectedCalls(), 1);
+	}
+}
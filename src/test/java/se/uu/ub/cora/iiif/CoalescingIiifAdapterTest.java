@@ -0,0 +1,292 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.binary.BinaryException;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.spies.IiifAdapterSpy;
+
+public class CoalescingIiifAdapterTest {
+	private static final int REQUESTS = 8;
+	private IiifAdapterSpy iiifAdapterSpy;
+	private CoalescingIiifAdapter adapter;
+	private IiifParameters getTile;
+	private ExecutorService executor;
+	private CountDownLatch callStarted;
+	private CountDownLatch releaseCall;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		iiifAdapterSpy = new IiifAdapterSpy();
+		adapter = new CoalescingIiifAdapter(iiifAdapterSpy, 100);
+		getTile = new IiifParameters("someId/0,0,512,512/512,/0/default.jpg", "GET", Map.of());
+		executor = Executors.newFixedThreadPool(REQUESTS);
+		callStarted = new CountDownLatch(1);
+		releaseCall = new CountDownLatch(1);
+	}
+
+	@AfterMethod
+	private void afterMethod() {
+		releaseCall.countDown();
+		executor.shutdownNow();
+	}
+
+	private void blockFirstCallUntilReleased(Supplier<IiifAdapterResponse> responseSupplier) {
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer", () -> {
+			if (callStarted.getCount() > 0) {
+				callStarted.countDown();
+				awaitRelease();
+			}
+			return responseSupplier.get();
+		});
+	}
+
+	private void awaitRelease() {
+		try {
+			releaseCall.await(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private List<Future<IiifAdapterResponse>> callConcurrently(IiifParameters iiifParameters)
+			throws InterruptedException {
+		List<Future<IiifAdapterResponse>> responses = new ArrayList<>();
+		responses.add(executor.submit(() -> adapter.callIiifServer(iiifParameters)));
+		assertTrue(callStarted.await(10, TimeUnit.SECONDS));
+		for (int i = 1; i < REQUESTS; i++) {
+			responses.add(executor.submit(() -> adapter.callIiifServer(iiifParameters)));
+		}
+		waitUntilNumberOfWaitingRequestsIs(REQUESTS - 1);
+		releaseCall.countDown();
+		return responses;
+	}
+
+	private void waitUntilNumberOfWaitingRequestsIs(int expected) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (adapter.onlyForTestGetNumberOfWaitingRequests() < expected) {
+			if (System.nanoTime() > deadline) {
+				fail("Requests never started waiting for the shared call");
+			}
+			Thread.sleep(1);
+		}
+	}
+
+	private String readBody(InputStream body) throws IOException {
+		return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		assertSame(adapter.onlyForTestGetIiifAdapter(), iiifAdapterSpy);
+		assertEquals(adapter.onlyForTestGetMaxSharedBodyBytes(), 100);
+	}
+
+	@Test
+	public void testSingleCallIsPassedOn() throws Exception {
+		IiifAdapterResponse response = adapter.callIiifServer(getTile);
+
+		iiifAdapterSpy.MCR.assertParameters("callIiifServer", 0, getTile);
+		assertEquals(response.status(), 200);
+		assertEquals(readBody(response.body()), "someBody");
+		assertEquals(adapter.getCalls(), 1);
+		assertEquals(adapter.getCoalescedRequests(), 0);
+	}
+
+	@Test
+	public void testResponseIsNotBufferedWhenNoRequestWaits() throws Exception {
+		IiifAdapterResponse upstreamResponse = IiifAdapterSpy.createResponse(200, "someBody");
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> upstreamResponse);
+
+		IiifAdapterResponse response = adapter.callIiifServer(getTile);
+
+		assertSame(response, upstreamResponse);
+		assertEquals(upstreamResponse.body().available(), "someBody".length());
+	}
+
+	@Test
+	public void testConcurrentIdenticalRequestsShareOneCall() throws Exception {
+		blockFirstCallUntilReleased(() -> IiifAdapterSpy.createResponse(200, "someBody"));
+
+		List<Future<IiifAdapterResponse>> responses = callConcurrently(getTile);
+
+		for (Future<IiifAdapterResponse> response : responses) {
+			IiifAdapterResponse iiifResponse = response.get(10, TimeUnit.SECONDS);
+			assertEquals(iiifResponse.status(), 200);
+			assertEquals(readBody(iiifResponse.body()), "someBody");
+		}
+		iiifAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", 1);
+		assertEquals(adapter.getCalls(), 1);
+		assertEquals(adapter.getCoalescedRequests(), REQUESTS - 1);
+	}
+
+	@Test
+	public void testNotFoundIsSharedWithWaitingRequests() throws Exception {
+		blockFirstCallUntilReleased(() -> IiifAdapterSpy.createResponse(404,
+				"Requested identifier could not be found."));
+
+		List<Future<IiifAdapterResponse>> responses = callConcurrently(getTile);
+
+		for (Future<IiifAdapterResponse> response : responses) {
+			IiifAdapterResponse iiifResponse = response.get(10, TimeUnit.SECONDS);
+			assertEquals(iiifResponse.status(), 404);
+			assertEquals(readBody(iiifResponse.body()),
+					"Requested identifier could not be found.");
+		}
+		iiifAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", 1);
+	}
+
+	@Test
+	public void testFailedCallFailsEveryWaitingRequest() throws Exception {
+		blockFirstCallUntilReleased(() -> {
+			throw BinaryException.withMessage("someError");
+		});
+
+		List<Future<IiifAdapterResponse>> responses = callConcurrently(getTile);
+
+		for (Future<IiifAdapterResponse> response : responses) {
+			assertFailsWithMessage(response, "someError");
+		}
+		iiifAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", 1);
+	}
+
+	private void assertFailsWithMessage(Future<IiifAdapterResponse> response, String message)
+			throws Exception {
+		try {
+			response.get(10, TimeUnit.SECONDS);
+			fail("Expected the request to fail");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof BinaryException);
+			assertEquals(e.getCause().getMessage(), message);
+		}
+	}
+
+	@Test
+	public void testCallIsNotSharedAfterItHasCompleted() throws Exception {
+		adapter.callIiifServer(getTile);
+		adapter.callIiifServer(getTile);
+
+		iiifAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", 2);
+		assertEquals(adapter.onlyForTestGetNumberOfWaitingRequests(), 0);
+	}
+
+	@Test
+	public void testBodyLargerThanLimitIsNotShared() throws Exception {
+		String largeBody = "x".repeat(101);
+		blockFirstCallUntilReleased(() -> IiifAdapterSpy.createResponse(200, largeBody));
+
+		List<Future<IiifAdapterResponse>> responses = callConcurrently(getTile);
+
+		for (Future<IiifAdapterResponse> response : responses) {
+			assertEquals(readBody(response.get(10, TimeUnit.SECONDS).body()), largeBody);
+		}
+		iiifAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", REQUESTS);
+		assertEquals(adapter.getCoalescedRequests(), 0);
+	}
+
+	@Test
+	public void testResponseVaryingOnHeaderNotInKeyIsNotShared() throws Exception {
+		blockFirstCallUntilReleased(() -> {
+			IiifAdapterResponse response = IiifAdapterSpy.createResponse(200, "someBody");
+			response.headers().put("Vary", "User-Agent");
+			return response;
+		});
+
+		List<Future<IiifAdapterResponse>> responses = callConcurrently(getTile);
+
+		for (Future<IiifAdapterResponse> response : responses) {
+			assertEquals(readBody(response.get(10, TimeUnit.SECONDS).body()), "someBody");
+		}
+		iiifAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", REQUESTS);
+		assertEquals(adapter.getCoalescedRequests(), 0);
+	}
+
+	@Test
+	public void testDifferentAcceptEncodingsAreNotShared() throws Exception {
+		adapter.callIiifServer(new IiifParameters(getTile.uri(), "GET",
+				Map.of("Accept-Encoding", "gzip")));
+		adapter.callIiifServer(getTile);
+
+		assertEquals(adapter.getCalls(), 2);
+	}
+
+	@Test
+	public void testDifferentAcceptHeadersAreNotShared() throws Exception {
+		adapter.callIiifServer(new IiifParameters(getTile.uri(), "GET",
+				Map.of("Accept", "image/webp")));
+		adapter.callIiifServer(getTile);
+
+		assertEquals(adapter.getCalls(), 2);
+	}
+
+	@Test
+	public void testNonIdempotentMethodsAreNotCoalesced() throws Exception {
+		IiifParameters post = new IiifParameters(getTile.uri(), "POST", Map.of());
+
+		adapter.callIiifServer(post);
+
+		iiifAdapterSpy.MCR.assertParameters("callIiifServer", 0, post);
+		assertEquals(adapter.getCalls(), 0);
+	}
+
+	@Test
+	public void testConditionalRequestsAreNotSharedWithPlainRequests() throws Exception {
+		adapter.callIiifServer(new IiifParameters(getTile.uri(), "GET",
+				Map.of("If-None-Match", "\"v1\"")));
+		adapter.callIiifServer(getTile);
+
+		assertEquals(adapter.getCalls(), 2);
+	}
+
+	@Test
+	public void testDifferentRangesAreNotShared() throws Exception {
+		adapter.callIiifServer(new IiifParameters(getTile.uri(), "GET",
+				Map.of("Range", "bytes=0-9")));
+		adapter.callIiifServer(new IiifParameters(getTile.uri(), "GET",
+				Map.of("Range", "bytes=10-")));
+		adapter.callIiifServer(getTile);
+
+		assertEquals(adapter.getCalls(), 3);
+	}
+}
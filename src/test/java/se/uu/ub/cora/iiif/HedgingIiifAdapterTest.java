@@ -0,0 +1,350 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.binary.BinaryException;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.async.ThreadPerCallExecutors;
+import se.uu.ub.cora.iiif.hedge.HedgeSettings;
+import se.uu.ub.cora.iiif.hedge.LatencyWindow;
+import se.uu.ub.cora.iiif.spies.IiifAdapterSpy;
+
+public class HedgingIiifAdapterTest {
+	private static final long ONE_MILLISECOND = 1_000_000;
+	private IiifAdapterSpy iiifAdapterSpy;
+	private IiifAdapterSpy hedgeAdapterSpy;
+	private ExecutorService executor;
+	private HedgeSettings settings;
+	private HedgingIiifAdapter adapter;
+	private CountDownLatch releaseSlowCalls;
+	private List<Thread> callingThreads;
+	private CountDownLatch slowCallInterrupted;
+	private IiifParameters iiifParameters;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		iiifAdapterSpy = new IiifAdapterSpy();
+		hedgeAdapterSpy = new IiifAdapterSpy();
+		hedgeAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> IiifAdapterSpy.createResponse(200, "hedgedBody"));
+		executor = ThreadPerCallExecutors.newThreadPerCallExecutor();
+		releaseSlowCalls = new CountDownLatch(1);
+		callingThreads = new CopyOnWriteArrayList<>();
+		slowCallInterrupted = new CountDownLatch(1);
+		iiifParameters = new IiifParameters("someId/full/max/0/default.jpg", "GET", Map.of());
+		settings = new HedgeSettings(Duration.ZERO, 95, Duration.ofMillis(20), 1);
+		adapter = new HedgingIiifAdapter(iiifAdapterSpy, hedgeAdapterSpy, executor, settings);
+	}
+
+	@AfterMethod
+	private void afterMethod() {
+		releaseSlowCalls.countDown();
+		executor.shutdownNow();
+	}
+
+	private void makeCallsSlow() {
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer", () -> {
+			callingThreads.add(Thread.currentThread());
+			awaitRelease();
+			return IiifAdapterSpy.createResponse(200, "someBody");
+		});
+	}
+
+	private void awaitRelease() {
+		try {
+			releaseSlowCalls.await(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			slowCallInterrupted.countDown();
+		}
+	}
+
+	private void releaseSlowCallsAfter(long millis) {
+		new Thread(() -> {
+			sleep(millis);
+			releaseSlowCalls.countDown();
+		}).start();
+	}
+
+	private void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void awaitAttemptsToFinish() throws InterruptedException {
+		executor.shutdown();
+		executor.awaitTermination(5, TimeUnit.SECONDS);
+	}
+
+	private void recordLatencies(long nanos) {
+		recordLatencies(32, nanos);
+	}
+
+	private void recordLatencies(int count, long nanos) {
+		LatencyWindow latencies = adapter.onlyForTestGetLatencies();
+		for (int i = 0; i < count; i++) {
+			latencies.record(nanos);
+		}
+	}
+
+	private String readBody(IiifAdapterResponse response) throws Exception {
+		return new String(response.body().readAllBytes(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		assertSame(adapter.onlyForTestGetIiifAdapter(), iiifAdapterSpy);
+		assertSame(adapter.onlyForTestGetHedgeAdapter(), hedgeAdapterSpy);
+		assertSame(adapter.onlyForTestGetSettings(), settings);
+	}
+
+	@Test
+	public void testCallIsMadeOnExecutorThread() throws Exception {
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer", () -> {
+			callingThreads.add(Thread.currentThread());
+			return IiifAdapterSpy.createResponse(200, "someBody");
+		});
+
+		IiifAdapterResponse response = adapter.callIiifServer(iiifParameters);
+
+		iiifAdapterSpy.MCR.assertParameters("callIiifServer", 0, iiifParameters);
+		assertEquals(readBody(response), "someBody");
+		assertNotSame(callingThreads.get(0), Thread.currentThread());
+	}
+
+	@Test
+	public void testHedgeDelayIsKnownAfterCalls() throws Exception {
+		assertEquals(adapter.getHedgeDelayMillis(), -1);
+
+		for (int i = 0; i < 32; i++) {
+			adapter.callIiifServer(iiifParameters);
+		}
+
+		assertEquals(adapter.getHedgeDelayMillis(), 20);
+		hedgeAdapterSpy.MCR.assertMethodNotCalled("callIiifServer");
+	}
+
+	@Test
+	public void testHedgeDelayFollowsPercentile() throws Exception {
+		recordLatencies(70 * ONE_MILLISECOND);
+
+		assertEquals(adapter.getHedgeDelayMillis(), 70);
+	}
+
+	@Test
+	public void testSlowCallIsNotHedgedBeforeLatenciesAreKnown() throws Exception {
+		makeCallsSlow();
+		releaseSlowCallsAfter(100);
+
+		IiifAdapterResponse response = adapter.callIiifServer(iiifParameters);
+
+		assertEquals(readBody(response), "someBody");
+		hedgeAdapterSpy.MCR.assertMethodNotCalled("callIiifServer");
+	}
+
+	@Test
+	public void testSlowCallIsHedged() throws Exception {
+		recordLatencies(ONE_MILLISECOND);
+		makeCallsSlow();
+
+		IiifAdapterResponse response = adapter.callIiifServer(iiifParameters);
+
+		assertEquals(readBody(response), "hedgedBody");
+		hedgeAdapterSpy.MCR.assertParameters("callIiifServer", 0, iiifParameters);
+		awaitAttemptsToFinish();
+		assertEquals(adapter.getHedges(), 1);
+		assertEquals(adapter.getHedgeWins(), 1);
+	}
+
+	@Test
+	public void testLosingCallIsCancelled() throws Exception {
+		recordLatencies(ONE_MILLISECOND);
+		makeCallsSlow();
+
+		adapter.callIiifServer(iiifParameters);
+
+		assertTrue(slowCallInterrupted.await(5, TimeUnit.SECONDS));
+		assertEquals(releaseSlowCalls.getCount(), 1);
+	}
+
+	@Test
+	public void testLatencyOfCallLosingToHedgeIsRecorded() throws Exception {
+		settings = new HedgeSettings(Duration.ZERO, 100, Duration.ofMillis(20), 1);
+		adapter = new HedgingIiifAdapter(iiifAdapterSpy, hedgeAdapterSpy, executor, settings);
+		recordLatencies(ONE_MILLISECOND);
+		recordLatencies(31, ONE_MILLISECOND);
+		makeCallsSlow();
+
+		adapter.callIiifServer(iiifParameters);
+
+		assertTrue(adapter.onlyForTestGetLatencies().getPercentileNanos() >= 20
+				* ONE_MILLISECOND);
+	}
+
+	@Test
+	public void testFastCallIsNotHedged() throws Exception {
+		recordLatencies(ONE_MILLISECOND);
+
+		IiifAdapterResponse response = adapter.callIiifServer(iiifParameters);
+
+		assertEquals(readBody(response), "someBody");
+		hedgeAdapterSpy.MCR.assertMethodNotCalled("callIiifServer");
+		assertEquals(adapter.getHedges(), 0);
+	}
+
+	@Test
+	public void testHedgesAreKeptWithinBudget() throws Exception {
+		settings = new HedgeSettings(Duration.ZERO, 95, Duration.ofMillis(20), 0.05);
+		adapter = new HedgingIiifAdapter(iiifAdapterSpy, hedgeAdapterSpy, executor, settings);
+		for (int i = 0; i < 32; i++) {
+			adapter.callIiifServer(iiifParameters);
+		}
+		makeCallsSlow();
+
+		adapter.callIiifServer(iiifParameters);
+		releaseSlowCallsAfter(100);
+		IiifAdapterResponse response = adapter.callIiifServer(iiifParameters);
+
+		assertEquals(readBody(response), "someBody");
+		assertEquals(adapter.getHedges(), 1);
+		hedgeAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", 1);
+	}
+
+	@Test
+	public void testNonIdempotentCallIsMadeDirectly() throws Exception {
+		recordLatencies(ONE_MILLISECOND);
+		makeCallsSlow();
+		releaseSlowCallsAfter(100);
+		IiifParameters post = new IiifParameters("someId", "POST", Map.of());
+
+		IiifAdapterResponse response = adapter.callIiifServer(post);
+
+		assertEquals(readBody(response), "someBody");
+		hedgeAdapterSpy.MCR.assertMethodNotCalled("callIiifServer");
+		assertSame(callingThreads.get(0), Thread.currentThread());
+	}
+
+	@Test
+	public void testDeadlineExceeded() throws Exception {
+		settings = new HedgeSettings(Duration.ofMillis(50), 95, Duration.ofMillis(20), 0);
+		adapter = new HedgingIiifAdapter(iiifAdapterSpy, hedgeAdapterSpy, executor, settings);
+		makeCallsSlow();
+		IiifParameters post = new IiifParameters("someId", "POST", Map.of());
+
+		try {
+			adapter.callIiifServer(post);
+			fail("It should throw an exception");
+		} catch (BinaryException e) {
+			assertEquals(e.getMessage(),
+					"Deadline of 50 ms exceeded using method: POST, and URI: someId");
+		}
+		assertEquals(adapter.getDeadlinesExceeded(), 1);
+	}
+
+	@Test
+	public void testResponseArrivingAfterDeadlineIsClosed() throws Exception {
+		settings = new HedgeSettings(Duration.ofMillis(50), 95, Duration.ofMillis(20), 0);
+		adapter = new HedgingIiifAdapter(iiifAdapterSpy, hedgeAdapterSpy, executor, settings);
+		CountDownLatch lateBodyClosed = new CountDownLatch(1);
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer", () -> {
+			awaitRelease();
+			return new IiifAdapterResponse(200, Map.of(),
+					new ByteArrayInputStream("lateBody".getBytes(StandardCharsets.UTF_8)) {
+						@Override
+						public void close() {
+							lateBodyClosed.countDown();
+						}
+					});
+		});
+
+		try {
+			adapter.callIiifServer(iiifParameters);
+			fail("It should throw an exception");
+		} catch (BinaryException e) {
+			assertTrue(lateBodyClosed.await(5, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	public void testLatencyOfCallPastDeadlineIsRecorded() throws Exception {
+		settings = new HedgeSettings(Duration.ofMillis(50), 100, Duration.ofMillis(20), 0);
+		adapter = new HedgingIiifAdapter(iiifAdapterSpy, hedgeAdapterSpy, executor, settings);
+		recordLatencies(31, ONE_MILLISECOND);
+		makeCallsSlow();
+
+		try {
+			adapter.callIiifServer(iiifParameters);
+			fail("It should throw an exception");
+		} catch (BinaryException e) {
+			assertTrue(adapter.onlyForTestGetLatencies().getPercentileNanos() >= 50
+					* ONE_MILLISECOND);
+		}
+	}
+
+	@Test
+	public void testHedgeNotMadeWhenDelayIsBeyondDeadline() throws Exception {
+		settings = new HedgeSettings(Duration.ofMillis(50), 95, Duration.ofMillis(60), 1);
+		adapter = new HedgingIiifAdapter(iiifAdapterSpy, hedgeAdapterSpy, executor, settings);
+		recordLatencies(ONE_MILLISECOND);
+		makeCallsSlow();
+
+		try {
+			adapter.callIiifServer(iiifParameters);
+			fail("It should throw an exception");
+		} catch (BinaryException e) {
+			hedgeAdapterSpy.MCR.assertMethodNotCalled("callIiifServer");
+		}
+	}
+
+	@Test
+	public void testFailureIsPassedOn() throws Exception {
+		BinaryException failure = BinaryException.withMessage("someFailure");
+		iiifAdapterSpy.MRV.setAlwaysThrowException("callIiifServer", failure);
+
+		try {
+			adapter.callIiifServer(iiifParameters);
+			fail("It should throw an exception");
+		} catch (BinaryException e) {
+			assertSame(e, failure);
+		}
+	}
+}
@@ -94,6 +94,31 @@ public class IiiFAdapterTest {
 		adapter.MCR.assertParameters("createErrorMessageInBytesUsingEncoding", 0, "UTF-8");
 	}
 
+	@Test
+	public void testRequestImage_ResponseStatusNotFound_MessageIsCreatedOnce() throws Exception {
+		httpHandler.MRV.setDefaultReturnValuesSupplier("getResponseCode", () -> 404);
+		IiifAdapterImpOnlyForTest adapter = new IiifAdapterImpOnlyForTest(IIIF_SERVER_URL,
+				httpHandlerFactory);
+
+		adapter.callIiifServer(iiifImageParameters);
+		adapter.callIiifServer(iiifImageParameters);
+
+		adapter.MCR.assertNumberOfCallsToMethod("createErrorMessageInBytesUsingEncoding", 1);
+	}
+
+	@Test
+	public void testRequestImage_ResponseStatusNotFound_EachResponseHasItsOwnBody()
+			throws Exception {
+		httpHandler.MRV.setDefaultReturnValuesSupplier("getResponseCode", () -> 404);
+		String errorMessage = "Requested identifier could not be found.";
+
+		IiifAdapterResponse first = adapter.callIiifServer(iiifImageParameters);
+		assertBody(first.body(), errorMessage);
+		IiifAdapterResponse second = adapter.callIiifServer(iiifImageParameters);
+
+		assertBody(second.body(), errorMessage);
+	}
+
 	@Test
 	public void testRequestImage_ResponseStatusNotFound_UnsupportedEncoding() throws Exception {
 		httpHandler.MRV.setDefaultReturnValuesSupplier("getResponseCode", () -> 404);
@@ -19,18 +19,55 @@
 package se.uu.ub.cora.iiif;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
+import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import se.uu.ub.cora.binary.BinaryException;
 import se.uu.ub.cora.binary.iiif.IiifAdapter;
 import se.uu.ub.cora.binary.iiif.IiifInstanceProvider;
 import se.uu.ub.cora.httphandler.HttpHandlerFactory;
 import se.uu.ub.cora.iiif.IiifAdapterImp;
 import se.uu.ub.cora.iiif.IiifImageInstanceProviderImp;
+import se.uu.ub.cora.iiif.backend.Backend;
+import se.uu.ub.cora.iiif.backend.LeastLoadedSelector;
+import se.uu.ub.cora.iiif.backend.RendezvousSelector;
+import se.uu.ub.cora.iiif.breaker.BreakerSettings;
+import se.uu.ub.cora.iiif.cache.DiskTileStore;
+import se.uu.ub.cora.iiif.cache.MemoryTileStore;
+import se.uu.ub.cora.iiif.hedge.HedgeSettings;
+import se.uu.ub.cora.iiif.http.HttpClientPool;
+import se.uu.ub.cora.iiif.info.InfoCache;
+import se.uu.ub.cora.iiif.info.InfoDocument;
+import se.uu.ub.cora.iiif.invalidation.ImageInvalidator;
+import se.uu.ub.cora.iiif.limit.LimitSettings;
+import se.uu.ub.cora.iiif.metrics.ModuleMetrics;
+import se.uu.ub.cora.iiif.peer.PeerSettings;
+import se.uu.ub.cora.iiif.spies.MetricsExporterSpy;
+import se.uu.ub.cora.iiif.transcode.ImageFormat;
+import se.uu.ub.cora.iiif.transcode.ImageIoTranscoder;
+import se.uu.ub.cora.iiif.transcode.TranscodingSettings;
+import se.uu.ub.cora.iiif.uri.IiifUriCanonicalizer;
+import se.uu.ub.cora.iiif.warm.CacheWarmer;
+import se.uu.ub.cora.iiif.warm.WarmupSettings;
 import se.uu.ub.cora.initialize.SettingsProvider;
 import se.uu.ub.cora.logger.LoggerProvider;
 import se.uu.ub.cora.logger.spies.LoggerFactorySpy;
@@ -39,14 +76,39 @@ public class IiifImageInstanceProviderTest {
 	private IiifInstanceProvider provider;
 
 	private LoggerFactorySpy loggerFactory;
+	private List<Path> temporaryPaths;
 
 	@BeforeMethod
 	private void beforeMethod() {
 		setExternalProviders();
+		temporaryPaths = new ArrayList<>();
 
 		provider = new IiifImageInstanceProviderImp();
 	}
 
+	@AfterMethod
+	private void afterMethod() throws IOException {
+		for (Path temporaryPath : temporaryPaths) {
+			try (Stream<Path> paths = Files.walk(temporaryPath)) {
+				for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+					Files.delete(path);
+				}
+			}
+		}
+	}
+
+	private Path createTemporaryDirectory() throws IOException {
+		Path directory = Files.createTempDirectory("iiifProviderTest");
+		temporaryPaths.add(directory);
+		return directory;
+	}
+
+	private Path createTemporaryFile(String suffix) throws IOException {
+		Path file = Files.createTempFile("iiifProviderTest", suffix);
+		temporaryPaths.add(file);
+		return file;
+	}
+
 	private void setExternalProviders() {
 		loggerFactory = new LoggerFactorySpy();
 		LoggerProvider.setLoggerFactory(loggerFactory);
@@ -74,4 +136,710 @@ public class IiifImageInstanceProviderTest {
 		assertEquals(iiifImageAdapter.onlyForTestGetIiifServerUrl(), "someUrl");
 	}
 
+	@Test
+	public void getIiifImageAdapter_pooledTransport() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl", "iiifTransport",
+				"pooled", "iiifMaxConnectionsPerHost", "5"));
+
+		PooledIiifAdapter iiifImageAdapter = (PooledIiifAdapter) provider.getIiifAdapter();
+
+		assertEquals(iiifImageAdapter.onlyForTestGetIiifServerUrl(), "someUrl");
+		HttpClientPool pool = iiifImageAdapter.onlyForTestGetHttpClientPool();
+		assertEquals(pool.getPoolSettings().maxConnectionsPerHost(), 5);
+		assertEquals(pool.getPoolSettings().connectTimeout(), Duration.ofSeconds(10));
+		assertEquals(pool.getPoolSettings().leaseTimeout(), Duration.ofSeconds(30));
+	}
+
+	@Test
+	public void getIiifImageAdapter_pooledTransportSharesPool() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrls", "url1,url2,url3",
+				"iiifBackendHealthCheckIntervalInSeconds", "0", "iiifTransport", "pooled",
+				"iiifMaxConnectionsPerHost", "5"));
+
+		RoutingIiifAdapter routingAdapter = (RoutingIiifAdapter) provider.getIiifAdapter();
+
+		List<HttpClientPool> pools = new ArrayList<>();
+		for (Backend backend : routingAdapter.getBackends()) {
+			pools.add(((PooledIiifAdapter) backend.getIiifAdapter())
+					.onlyForTestGetHttpClientPool());
+		}
+		assertEquals(pools.size(), 3);
+		assertSame(pools.get(1), pools.get(0));
+		assertSame(pools.get(2), pools.get(0));
+		assertEquals(pools.get(0).getPoolSettings().maxConnectionsPerHost(), 5);
+	}
+
+	@Test
+	public void getIiifImageAdapter_multiplexedTransportFallbacksSharePool() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrls", "url1,url2",
+				"iiifBackendHealthCheckIntervalInSeconds", "0", "iiifTransport", "multiplexed"));
+
+		RoutingIiifAdapter routingAdapter = (RoutingIiifAdapter) provider.getIiifAdapter();
+
+		MultiplexedIiifAdapter first = (MultiplexedIiifAdapter) routingAdapter.getBackends()
+				.get(0).getIiifAdapter();
+		MultiplexedIiifAdapter second = (MultiplexedIiifAdapter) routingAdapter.getBackends()
+				.get(1).getIiifAdapter();
+		PooledIiifAdapter firstFallback = (PooledIiifAdapter) first
+				.onlyForTestGetFallbackAdapter();
+		PooledIiifAdapter secondFallback = (PooledIiifAdapter) second
+				.onlyForTestGetFallbackAdapter();
+		assertEquals(firstFallback.onlyForTestGetIiifServerUrl(), "url1");
+		assertEquals(secondFallback.onlyForTestGetIiifServerUrl(), "url2");
+		assertSame(firstFallback.onlyForTestGetHttpClientPool(),
+				secondFallback.onlyForTestGetHttpClientPool());
+	}
+
+	@Test
+	public void getIiifImageAdapter_multiplexedTransport() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl", "iiifTransport",
+				"multiplexed", "iiifH2cConnectionsPerHost", "3",
+				"iiifH2cNegotiationTimeoutInMilliseconds", "1500"));
+
+		MultiplexedIiifAdapter multiplexedAdapter = (MultiplexedIiifAdapter) provider
+				.getIiifAdapter();
+
+		assertEquals(multiplexedAdapter.onlyForTestGetIiifServerUrl(), "someUrl");
+		assertEquals(multiplexedAdapter.onlyForTestGetMultiplexedClients().getConnectionsPerHost(),
+				3);
+		assertEquals(multiplexedAdapter.onlyForTestGetNegotiationTimeout(),
+				Duration.ofMillis(1500));
+		assertEquals(multiplexedAdapter.onlyForTestGetResponseTimeout(), Duration.ofSeconds(60));
+		PooledIiifAdapter fallbackAdapter = (PooledIiifAdapter) multiplexedAdapter
+				.onlyForTestGetFallbackAdapter();
+		assertEquals(fallbackAdapter.onlyForTestGetIiifServerUrl(), "someUrl");
+	}
+
+	@Test
+	public void getIiifImageAdapter_multiplexedTransportWithDefaults() throws Exception {
+		SettingsProvider.setSettings(
+				Map.of("imageServerUrl", "someUrl", "iiifTransport", "multiplexed"));
+
+		MultiplexedIiifAdapter multiplexedAdapter = (MultiplexedIiifAdapter) provider
+				.getIiifAdapter();
+
+		assertEquals(multiplexedAdapter.onlyForTestGetMultiplexedClients().getConnectionsPerHost(),
+				2);
+		assertEquals(multiplexedAdapter.onlyForTestGetNegotiationTimeout(),
+				Duration.ofSeconds(5));
+	}
+
+	@Test
+	public void getIiifImageAdapter_tileCacheEnabled() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl",
+				"iiifTileCacheMaxBytes", "1000000"));
+
+		CachingIiifAdapter cachingAdapter = (CachingIiifAdapter) provider.getIiifAdapter();
+
+		IiifAdapterImp iiifImageAdapter = (IiifAdapterImp) cachingAdapter
+				.onlyForTestGetIiifAdapter();
+		assertEquals(iiifImageAdapter.onlyForTestGetIiifServerUrl(), "someUrl");
+		assertTrue(cachingAdapter.onlyForTestGetTileStore() instanceof MemoryTileStore);
+	}
+
+	@Test
+	public void getIiifImageAdapter_tileCacheIsShared() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl",
+				"iiifTileCacheMaxBytes", "1000000"));
+
+		CachingIiifAdapter first = (CachingIiifAdapter) provider.getIiifAdapter();
+		CachingIiifAdapter second = (CachingIiifAdapter) provider.getIiifAdapter();
+
+		assertSame(first.onlyForTestGetTileStore(), second.onlyForTestGetTileStore());
+	}
+
+	@Test
+	public void getIiifImageAdapter_diskTileCacheEnabled() throws Exception {
+		Path directory = createTemporaryDirectory();
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl",
+				"iiifTileCacheMaxBytes", "1000000", "iiifDiskTileCacheDirectory",
+				directory.toString()));
+
+		CachingIiifAdapter memoryCached = (CachingIiifAdapter) provider.getIiifAdapter();
+		CachingIiifAdapter diskCached = (CachingIiifAdapter) memoryCached
+				.onlyForTestGetIiifAdapter();
+
+		DiskTileStore diskTileStore = (DiskTileStore) diskCached.onlyForTestGetTileStore();
+		assertTrue(diskCached.onlyForTestGetIiifAdapter() instanceof IiifAdapterImp);
+		diskTileStore.close();
+	}
+
+	@Test
+	public void getIiifImageAdapter_peerTierEnabled() throws Exception {
+		String self = "http://127.0.0.1:" + findFreePort() + "/";
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl",
+				"iiifTileCacheMaxBytes", "1000000", "iiifPeerNodes",
+				self + ", http://node1:8091/", "iiifPeerSelf", self,
+				"iiifPeerResponseTimeoutInMilliseconds", "300", "iiifPeerBypassTimeInSeconds",
+				"5", "iiifPeerSecret", "someSecret"));
+
+		CachingIiifAdapter memoryCached = (CachingIiifAdapter) provider.getIiifAdapter();
+		PeerIiifAdapter peerAdapter = (PeerIiifAdapter) memoryCached.onlyForTestGetIiifAdapter();
+
+		assertTrue(peerAdapter.onlyForTestGetIiifAdapter() instanceof IiifAdapterImp);
+		assertEquals(peerAdapter.getSettings(), new PeerSettings(
+				List.of(self, "http://node1:8091/"), self, Duration.ofMillis(300),
+				Duration.ofSeconds(5), "someSecret"));
+		PooledIiifAdapter peer = (PooledIiifAdapter) peerAdapter.onlyForTestGetPeerAdapters()
+				.get("http://node1:8091/");
+		assertEquals(peerAdapter.onlyForTestGetPeerAdapters().size(), 1);
+		assertEquals(peer.onlyForTestGetIiifServerUrl(), "http://node1:8091/");
+		assertEquals(peer.onlyForTestGetResponseTimeout(), Duration.ofMillis(300));
+		assertEquals(peerAdapter.getPeerServer().getPort(), URI.create(self).getPort());
+		assertEquals(peerAdapter.getPeerServer().getAddress().getAddress(),
+				InetAddress.getByName("127.0.0.1"));
+		peerAdapter.getPeerServer().close();
+	}
+
+	private int findFreePort() throws IOException {
+		try (ServerSocket serverSocket = new ServerSocket(0)) {
+			return serverSocket.getLocalPort();
+		}
+	}
+
+	@Test
+	public void getIiifImageAdapter_peerTierWithDefaults() throws Exception {
+		int port = findFreePort();
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl", "iiifPeerNodes",
+				"http://127.0.0.1:8091/,http://node1:8091/", "iiifPeerSelf",
+				"http://127.0.0.1:8091/", "iiifPeerPort", String.valueOf(port), "iiifPeerSecret",
+				"someSecret"));
+
+		PeerIiifAdapter peerAdapter = (PeerIiifAdapter) provider.getIiifAdapter();
+
+		assertEquals(peerAdapter.getSettings().responseTimeout(), Duration.ofSeconds(10));
+		assertEquals(peerAdapter.getSettings().bypassTime(), Duration.ofSeconds(10));
+		assertEquals(peerAdapter.getPeerServer().getPort(), port);
+		peerAdapter.getPeerServer().close();
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "self must be one of the nodes")
+	public void getIiifImageAdapter_peerSelfNotANode() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl", "iiifPeerNodes",
+				"http://node0:8091/,http://node1:8091/"));
+
+		provider.getIiifAdapter();
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "secret must not be blank")
+	public void getIiifImageAdapter_peerSecretNotSet() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl", "iiifPeerNodes",
+				"http://node0:8091/,http://node1:8091/", "iiifPeerSelf", "http://node0:8091/"));
+
+		provider.getIiifAdapter();
+	}
+
+	@Test(expectedExceptions = BinaryException.class, expectedExceptionsMessageRegExp = ""
+			+ "Could not start peer server: .*")
+	public void getIiifImageAdapter_peerServerCanNotStart() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl", "iiifPeerNodes",
+				"http://node0/,http://node1/", "iiifPeerSelf", "http://node0/", "iiifPeerSecret",
+				"someSecret"));
+
+		provider.getIiifAdapter();
+	}
+
+	@Test(expectedExceptions = BinaryException.class, expectedExceptionsMessageRegExp = ""
+			+ "Could not start peer server: doesNotExist.invalid")
+	public void getIiifImageAdapter_peerSelfCanNotBeResolved() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl", "iiifPeerNodes",
+				"http://doesNotExist.invalid:8091/,http://node1:8091/", "iiifPeerSelf",
+				"http://doesNotExist.invalid:8091/", "iiifPeerSecret", "someSecret"));
+
+		provider.getIiifAdapter();
+	}
+
+	@Test
+	public void getIiifImageAdapter_virtualThreadsEnabled() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl",
+				"iiifVirtualThreadsEnabled", "true", "iiifMaxConcurrentImageServerCalls", "8",
+				"iiifImageServerCallPermitTimeoutInMilliseconds", "500"));
+
+		VirtualThreadIiifAdapter virtualThreadAdapter = (VirtualThreadIiifAdapter) provider
+				.getIiifAdapter();
+
+		assertEquals(virtualThreadAdapter.onlyForTestGetMaxConcurrentCalls(), 8);
+		assertEquals(virtualThreadAdapter.onlyForTestGetPermitTimeout(), Duration.ofMillis(500));
+		assertTrue(virtualThreadAdapter.onlyForTestGetIiifAdapter() instanceof IiifAdapterImp);
+	}
+
+	@Test
+	public void getIiifImageAdapter_virtualThreadsEnabledDefaults() throws Exception {
+		SettingsProvider.setSettings(
+				Map.of("imageServerUrl", "someUrl", "iiifVirtualThreadsEnabled", "true"));
+
+		VirtualThreadIiifAdapter virtualThreadAdapter = (VirtualThreadIiifAdapter) provider
+				.getIiifAdapter();
+
+		assertEquals(virtualThreadAdapter.onlyForTestGetMaxConcurrentCalls(), 64);
+		assertEquals(virtualThreadAdapter.onlyForTestGetPermitTimeout(), Duration.ofSeconds(30));
+	}
+
+	@Test
+	public void getIiifImageAdapter_concurrencyLimitEnabled() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl",
+				"iiifConcurrencyLimitEnabled", "true", "iiifConcurrencyLimitInitial", "5",
+				"iiifConcurrencyLimitMaxQueueWaitInMilliseconds", "100", "iiifThumbnailMaxSize",
+				"256"));
+
+		RejectionAnsweringIiifAdapter answeringAdapter = (RejectionAnsweringIiifAdapter) provider
+				.getIiifAdapter();
+
+		LimitingIiifAdapter limitingAdapter = (LimitingIiifAdapter) answeringAdapter
+				.onlyForTestGetIiifAdapter();
+		LimitSettings settings = limitingAdapter.onlyForTestGetLimiter().getSettings();
+		assertEquals(settings, new LimitSettings(5, 2, 200, 100, Duration.ofMillis(100)));
+		assertEquals(limitingAdapter.onlyForTestGetThumbnailMaxSize(), 256);
+		assertTrue(limitingAdapter.onlyForTestGetIiifAdapter() instanceof IiifAdapterImp);
+	}
+
+	@Test
+	public void getIiifImageAdapter_severalImageServers() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrls", "url1, url2,,url3",
+				"iiifBackendHealthCheckIntervalInSeconds", "0", "iiifConcurrencyLimitEnabled",
+				"true"));
+
+		RejectionAnsweringIiifAdapter answeringAdapter = (RejectionAnsweringIiifAdapter) provider
+				.getIiifAdapter();
+
+		RoutingIiifAdapter routingAdapter = (RoutingIiifAdapter) answeringAdapter
+				.onlyForTestGetIiifAdapter();
+		List<Backend> backends = routingAdapter.getBackends();
+		assertEquals(backends.size(), 3);
+		assertEquals(backends.get(1).getUrl(), "url2");
+		LimitingIiifAdapter limitingAdapter = (LimitingIiifAdapter) backends.get(1)
+				.getIiifAdapter();
+		IiifAdapterImp iiifAdapter = (IiifAdapterImp) limitingAdapter.onlyForTestGetIiifAdapter();
+		assertEquals(iiifAdapter.onlyForTestGetIiifServerUrl(), "url2");
+		assertTrue(routingAdapter.onlyForTestGetSelector() instanceof RendezvousSelector);
+	}
+
+	@Test
+	public void getIiifImageAdapter_severalImageServersLeastLoaded() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrls", "url1,url2",
+				"iiifBackendSelection", "leastLoaded", "iiifTransport", "pooled"));
+
+		RoutingIiifAdapter routingAdapter = (RoutingIiifAdapter) provider.getIiifAdapter();
+
+		assertTrue(routingAdapter.onlyForTestGetSelector() instanceof LeastLoadedSelector);
+		PooledIiifAdapter first = (PooledIiifAdapter) routingAdapter.getBackends().get(0)
+				.getIiifAdapter();
+		PooledIiifAdapter second = (PooledIiifAdapter) routingAdapter.getBackends().get(1)
+				.getIiifAdapter();
+		assertSame(first.onlyForTestGetHttpClientPool(), second.onlyForTestGetHttpClientPool());
+	}
+
+	@Test
+	public void getIiifImageAdapter_hedgingEnabled() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl", "iiifHedgingEnabled",
+				"true", "iiifRequestDeadlineInMilliseconds", "3000", "iiifHedgeBudgetPercent",
+				"10"));
+
+		HedgingIiifAdapter hedgingAdapter = (HedgingIiifAdapter) provider.getIiifAdapter();
+
+		assertEquals(hedgingAdapter.onlyForTestGetSettings(),
+				new HedgeSettings(Duration.ofSeconds(3), 95, Duration.ofMillis(50), 0.1));
+		assertTrue(hedgingAdapter.onlyForTestGetIiifAdapter() instanceof IiifAdapterImp);
+		assertSame(hedgingAdapter.onlyForTestGetHedgeAdapter(),
+				hedgingAdapter.onlyForTestGetIiifAdapter());
+	}
+
+	@Test
+	public void getIiifImageAdapter_deadlineWithoutHedging() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl",
+				"iiifRequestDeadlineInMilliseconds", "3000"));
+
+		HedgingIiifAdapter hedgingAdapter = (HedgingIiifAdapter) provider.getIiifAdapter();
+
+		assertEquals(hedgingAdapter.onlyForTestGetSettings(),
+				new HedgeSettings(Duration.ofSeconds(3), 95, Duration.ofMillis(50), 0));
+	}
+
+	@Test
+	public void getIiifImageAdapter_hedgingOverSeveralImageServers() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrls", "url1,url2",
+				"iiifBackendHealthCheckIntervalInSeconds", "0", "iiifHedgingEnabled", "true"));
+
+		HedgingIiifAdapter hedgingAdapter = (HedgingIiifAdapter) provider.getIiifAdapter();
+
+		RoutingIiifAdapter routingAdapter = (RoutingIiifAdapter) hedgingAdapter
+				.onlyForTestGetIiifAdapter();
+		RoutingIiifAdapter hedgeAdapter = (RoutingIiifAdapter) hedgingAdapter
+				.onlyForTestGetHedgeAdapter();
+		assertEquals(hedgeAdapter.getBackends(), routingAdapter.getBackends());
+		assertTrue(hedgeAdapter.onlyForTestGetSelector() instanceof LeastLoadedSelector);
+	}
+
+	@Test
+	public void getIiifImageAdapter_hedgingOverLimitedImageServers() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrls", "url1,url2",
+				"iiifBackendHealthCheckIntervalInSeconds", "0", "iiifHedgingEnabled", "true",
+				"iiifConcurrencyLimitEnabled", "true"));
+
+		HedgingIiifAdapter hedgingAdapter = (HedgingIiifAdapter) provider.getIiifAdapter();
+
+		RejectionAnsweringIiifAdapter answering = (RejectionAnsweringIiifAdapter) hedgingAdapter
+				.onlyForTestGetIiifAdapter();
+		assertTrue(answering.onlyForTestGetIiifAdapter() instanceof RoutingIiifAdapter);
+		RejectionAnsweringIiifAdapter hedge = (RejectionAnsweringIiifAdapter) hedgingAdapter
+				.onlyForTestGetHedgeAdapter();
+		assertTrue(hedge.onlyForTestGetIiifAdapter() instanceof RoutingIiifAdapter);
+	}
+
+	@Test
+	public void getIiifImageAdapter_circuitBreakerEnabled() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl",
+				"iiifCircuitBreakerEnabled", "true", "iiifCircuitBreakerOpenTimeInSeconds", "5",
+				"iiifConcurrencyLimitEnabled", "true"));
+
+		RejectionAnsweringIiifAdapter answeringAdapter = (RejectionAnsweringIiifAdapter) provider
+				.getIiifAdapter();
+
+		LimitingIiifAdapter limitingAdapter = (LimitingIiifAdapter) answeringAdapter
+				.onlyForTestGetIiifAdapter();
+		CircuitBreakingIiifAdapter breakingAdapter = (CircuitBreakingIiifAdapter) limitingAdapter
+				.onlyForTestGetIiifAdapter();
+		assertEquals(breakingAdapter.getCircuitBreaker().getSettings(),
+				new BreakerSettings(50, 20, 10, Duration.ofSeconds(5), 3));
+		assertTrue(breakingAdapter.onlyForTestGetIiifAdapter() instanceof IiifAdapterImp);
+	}
+
+	@Test
+	public void getIiifImageAdapter_circuitBreakerWithoutConcurrencyLimit() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl",
+				"iiifCircuitBreakerEnabled", "true"));
+
+		RejectionAnsweringIiifAdapter answeringAdapter = (RejectionAnsweringIiifAdapter) provider
+				.getIiifAdapter();
+
+		assertTrue(answeringAdapter
+				.onlyForTestGetIiifAdapter() instanceof CircuitBreakingIiifAdapter);
+	}
+
+	@Test
+	public void getIiifImageAdapter_notFoundCacheEnabled() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl",
+				"iiifNotFoundCacheMaxEntries", "1000", "iiifTileCacheMaxBytes", "1000000"));
+
+		InvalidatingIiifAdapter invalidatingAdapter = (InvalidatingIiifAdapter) provider
+				.getIiifAdapter();
+		assertEquals(invalidatingAdapter.onlyForTestGetInvalidators().size(), 1);
+		CachingIiifAdapter cachingAdapter = (CachingIiifAdapter) invalidatingAdapter
+				.onlyForTestGetIiifAdapter();
+
+		NotFoundCachingIiifAdapter notFoundAdapter = (NotFoundCachingIiifAdapter) cachingAdapter
+				.onlyForTestGetIiifAdapter();
+		assertTrue(notFoundAdapter.onlyForTestGetIiifAdapter() instanceof IiifAdapterImp);
+	}
+
+	@Test
+	public void getIiifImageAdapter_rangeRequestsEnabled() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl",
+				"iiifRangeRequestsEnabled", "true", "iiifTileCacheMaxBytes", "1000000"));
+
+		SlicingIiifAdapter slicingAdapter = (SlicingIiifAdapter) provider.getIiifAdapter();
+
+		assertTrue(slicingAdapter.onlyForTestGetIiifAdapter() instanceof CachingIiifAdapter);
+	}
+
+	@Test
+	public void getIiifImageAdapter_transcodingEnabled() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl",
+				"iiifTranscodingEnabled", "true", "iiifTranscodingUpstreamFormats", "webp, x",
+				"iiifTranscodingMaxSourceBytes", "1000", "iiifTranscodingTimeoutInMilliseconds",
+				"300", "iiifRangeRequestsEnabled", "true", "iiifTileCacheMaxBytes", "1000000"));
+
+		SlicingIiifAdapter slicingAdapter = (SlicingIiifAdapter) provider.getIiifAdapter();
+
+		TranscodingIiifAdapter transcodingAdapter = (TranscodingIiifAdapter) slicingAdapter
+				.onlyForTestGetIiifAdapter();
+		assertTrue(transcodingAdapter.onlyForTestGetIiifAdapter() instanceof CachingIiifAdapter);
+		assertTrue(transcodingAdapter.onlyForTestGetTranscoder() instanceof ImageIoTranscoder);
+		assertTrue(transcodingAdapter.onlyForTestGetVariantStore() instanceof MemoryTileStore);
+		TranscodingSettings settings = transcodingAdapter.onlyForTestGetSettings();
+		assertEquals(settings.upstreamFormats(), Set.of(ImageFormat.WEBP));
+		assertEquals(settings.maxSourceBytes(), 1000);
+		assertEquals(settings.timeout(), Duration.ofMillis(300));
+	}
+
+	@Test
+	public void getIiifImageAdapter_transcodingEnabledWithDefaults() throws Exception {
+		SettingsProvider.setSettings(
+				Map.of("imageServerUrl", "someUrl", "iiifTranscodingEnabled", "true"));
+
+		TranscodingIiifAdapter transcodingAdapter = (TranscodingIiifAdapter) provider
+				.getIiifAdapter();
+
+		TranscodingSettings settings = transcodingAdapter.onlyForTestGetSettings();
+		assertEquals(settings.upstreamFormats(), Set.of());
+		assertEquals(settings.maxSourceBytes(), 4 * 1024 * 1024);
+		assertEquals(settings.timeout(), Duration.ofSeconds(2));
+		assertEquals(settings.revalidateAfter(), Duration.ofSeconds(600));
+	}
+
+	@Test
+	public void getIiifImageAdapter_callRecordingEnabled() throws Exception {
+		Path recordingFile = createTemporaryFile(".rec");
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl",
+				"iiifCallRecordingFile", recordingFile.toString(), "iiifCallRecordingHeaders",
+				"Accept, ,X-Forwarded-For", "iiifBatchEnabled", "true"));
+
+		BatchingIiifAdapter batchingAdapter = (BatchingIiifAdapter) provider.getIiifAdapter();
+
+		RecordingIiifAdapter recordingAdapter = (RecordingIiifAdapter) batchingAdapter
+				.onlyForTestGetIiifAdapter();
+		assertTrue(recordingAdapter.onlyForTestGetIiifAdapter() instanceof IiifAdapterImp);
+		assertEquals(recordingAdapter.onlyForTestGetRecordedHeaders(),
+				List.of("Accept", "X-Forwarded-For"));
+		recordingAdapter.getCallRecorder().close();
+	}
+
+	@Test
+	public void getIiifImageAdapter_callRecordingWithDefaultHeaders() throws Exception {
+		Path recordingFile = createTemporaryFile(".rec");
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl",
+				"iiifCallRecordingFile", recordingFile.toString()));
+
+		RecordingIiifAdapter recordingAdapter = (RecordingIiifAdapter) provider.getIiifAdapter();
+
+		assertEquals(recordingAdapter.onlyForTestGetRecordedHeaders(), List.of("Accept",
+				"Range", "If-Range", "If-None-Match", "If-Modified-Since"));
+		recordingAdapter.getCallRecorder().close();
+	}
+
+	@Test(expectedExceptions = BinaryException.class, expectedExceptionsMessageRegExp = ""
+			+ "Could not start call recording: .*")
+	public void getIiifImageAdapter_callRecordingFileCanNotBeCreated() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl",
+				"iiifCallRecordingFile", "/doesNotExist/calls.rec"));
+
+		provider.getIiifAdapter();
+	}
+
+	@Test
+	public void getIiifImageAdapter_batchEnabled() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl", "iiifBatchEnabled",
+				"true", "iiifBatchMaxConcurrentCalls", "4", "iiifBatchMaxTotalConcurrentCalls",
+				"16", "iiifTileCacheMaxBytes", "1000000"));
+
+		BatchingIiifAdapter batchingAdapter = (BatchingIiifAdapter) provider.getIiifAdapter();
+
+		assertEquals(batchingAdapter.onlyForTestGetMaxConcurrentCalls(), 4);
+		assertEquals(batchingAdapter.onlyForTestGetMaxTotalConcurrentCalls(), 16);
+		assertTrue(batchingAdapter.onlyForTestGetIiifAdapter() instanceof CachingIiifAdapter);
+	}
+
+	@Test
+	public void getIiifImageAdapter_batchEnabledWithDefaultConcurrency() throws Exception {
+		SettingsProvider.setSettings(
+				Map.of("imageServerUrl", "someUrl", "iiifBatchEnabled", "true"));
+
+		BatchingIiifAdapter batchingAdapter = (BatchingIiifAdapter) provider.getIiifAdapter();
+
+		assertEquals(batchingAdapter.onlyForTestGetMaxConcurrentCalls(), 8);
+		assertEquals(batchingAdapter.onlyForTestGetMaxTotalConcurrentCalls(), 32);
+		assertTrue(batchingAdapter.onlyForTestGetIiifAdapter() instanceof IiifAdapterImp);
+	}
+
+	@Test
+	public void getIiifImageAdapter_cacheWarmingEnabled() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl",
+				"iiifCacheWarmingEnabled", "true", "iiifCacheWarmingZoomLevels", "3",
+				"iiifCacheWarmingRequestsPerSecond", "2", "iiifTileCacheMaxBytes", "1000000"));
+
+		WarmingIiifAdapter warmingAdapter = (WarmingIiifAdapter) provider.getIiifAdapter();
+
+		CacheWarmer cacheWarmer = warmingAdapter.getCacheWarmer();
+		assertEquals(cacheWarmer.getSettings(), new WarmupSettings(3, 400, 2, 4));
+		CachingIiifAdapter cachingAdapter = (CachingIiifAdapter) warmingAdapter
+				.onlyForTestGetIiifAdapter();
+		LiveCallCountingIiifAdapter countingAdapter = (LiveCallCountingIiifAdapter) cachingAdapter
+				.onlyForTestGetIiifAdapter();
+		assertTrue(countingAdapter.onlyForTestGetIiifAdapter() instanceof IiifAdapterImp);
+		assertSame(countingAdapter.getLiveCalls(), cacheWarmer.getLiveCalls());
+		cacheWarmer.close();
+	}
+
+	@Test
+	public void getIiifImageAdapter_cacheWarmingBelowBatching() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl",
+				"iiifCacheWarmingEnabled", "true", "iiifCacheWarmingThumbnailSize", "0",
+				"iiifCacheWarmingAccessLog", "/doesNotExist/accessLog.log",
+				"iiifBatchEnabled", "true"));
+
+		BatchingIiifAdapter batchingAdapter = (BatchingIiifAdapter) provider.getIiifAdapter();
+
+		WarmingIiifAdapter warmingAdapter = (WarmingIiifAdapter) batchingAdapter
+				.onlyForTestGetIiifAdapter();
+		CacheWarmer cacheWarmer = warmingAdapter.getCacheWarmer();
+		assertEquals(cacheWarmer.getSettings().thumbnailSize(), 0);
+		assertEquals(cacheWarmer.getFailedWarmups(), 0);
+		cacheWarmer.close();
+	}
+
+	@Test
+	public void getIiifImageAdapter_infoCacheEnabled() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl",
+				"iiifInfoCacheMaxEntries", "1000", "iiifInfoPublicBaseUrl",
+				"https://example.org/iiif/", "iiifTileCacheMaxBytes", "1000000"));
+
+		InvalidatingIiifAdapter invalidatingAdapter = (InvalidatingIiifAdapter) provider
+				.getIiifAdapter();
+		InfoCachingIiifAdapter infoAdapter = (InfoCachingIiifAdapter) invalidatingAdapter
+				.onlyForTestGetIiifAdapter();
+
+		assertEquals(infoAdapter.onlyForTestGetMaxDocumentBytes(), 64 * 1024);
+		assertEquals(infoAdapter.onlyForTestGetPublicBaseUrl(), "https://example.org/iiif/");
+		assertTrue(infoAdapter.onlyForTestGetIiifAdapter() instanceof CachingIiifAdapter);
+	}
+
+	@Test
+	public void getIiifImageAdapter_infoCacheIsLookupForCanonicalization() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl",
+				"iiifInfoCacheMaxEntries", "1000", "iiifUriCanonicalizationEnabled", "true"));
+
+		InvalidatingIiifAdapter outerAdapter = (InvalidatingIiifAdapter) provider.getIiifAdapter();
+		CanonicalizingIiifAdapter canonicalizingAdapter = (CanonicalizingIiifAdapter) outerAdapter
+				.onlyForTestGetIiifAdapter();
+
+		InfoCachingIiifAdapter infoAdapter = (InfoCachingIiifAdapter) canonicalizingAdapter
+				.onlyForTestGetIiifAdapter();
+		infoAdapter.getInfoCache().put("someId", InfoDocument.from("someId",
+				"{\"width\":300,\"height\":200}".getBytes(), Map.of(), ""));
+		IiifUriCanonicalizer canonicalizer = canonicalizingAdapter.onlyForTestGetCanonicalizer();
+		assertEquals(canonicalizer.canonicalize("someId/0,0,300,200/max/0/default.jpg"),
+				"someId/full/max/0/default.jpg");
+		assertEquals(infoAdapter.onlyForTestGetPublicBaseUrl(), "");
+	}
+
+	@Test
+	public void getIiifImageAdapter_invalidationReachesInfoAndNotFoundCaches() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl",
+				"iiifInfoCacheMaxEntries", "1000", "iiifNotFoundCacheMaxEntries", "1000",
+				"iiifBatchEnabled", "true"));
+
+		ImageInvalidator invalidator = (ImageInvalidator) provider.getIiifAdapter();
+
+		BatchingIiifAdapter batchingAdapter = (BatchingIiifAdapter) invalidator;
+		InvalidatingIiifAdapter invalidatingAdapter = (InvalidatingIiifAdapter) batchingAdapter
+				.onlyForTestGetIiifAdapter();
+		InfoCachingIiifAdapter infoAdapter = (InfoCachingIiifAdapter) invalidatingAdapter
+				.onlyForTestGetIiifAdapter();
+		InfoCache infoCache = infoAdapter.getInfoCache();
+		infoCache.put("someId", InfoDocument.from("someId",
+				"{\"width\":300,\"height\":200}".getBytes(), Map.of(), ""));
+
+		invalidator.invalidate("someId");
+
+		assertTrue(infoCache.lookup("someId").isEmpty());
+		assertEquals(invalidatingAdapter.onlyForTestGetInvalidators().size(), 2);
+	}
+
+	@Test
+	public void getIiifImageAdapter_metricsEnabled() throws Exception {
+		SettingsProvider.setSettings(
+				Map.of("imageServerUrl", "someUrl", "iiifMetricsEnabled", "true"));
+
+		MeasuringIiifAdapter measuringAdapter = (MeasuringIiifAdapter) provider.getIiifAdapter();
+
+		assertTrue(measuringAdapter.onlyForTestGetIiifAdapter() instanceof IiifAdapterImp);
+		assertEquals(measuringAdapter.onlyForTestGetThumbnailMaxSize(), 400);
+	}
+
+	@Test
+	public void getIiifImageAdapter_metricsAreExported() throws Exception {
+		MetricsExporterSpy exporter = new MetricsExporterSpy();
+		provider = new IiifImageInstanceProviderImp(List.of(exporter));
+
+		MeasuringIiifAdapter measuringAdapter = (MeasuringIiifAdapter) provider.getIiifAdapter();
+
+		exporter.MCR.assertParameters("export", 0, measuringAdapter.getMetrics());
+		exporter.MCR.assertNumberOfCallsToMethod("exportModuleMetrics", 1);
+	}
+
+	@Test
+	public void getIiifImageAdapter_moduleMetricsAreExported() throws Exception {
+		MetricsExporterSpy exporter = new MetricsExporterSpy();
+		provider = new IiifImageInstanceProviderImp(List.of(exporter));
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl", "iiifTransport",
+				"pooled", "iiifConcurrencyLimitEnabled", "true", "iiifConcurrencyLimitInitial",
+				"7", "iiifRequestCoalescingEnabled", "true", "iiifTranscodingEnabled", "true"));
+
+		provider.getIiifAdapter();
+
+		ModuleMetrics metrics = (ModuleMetrics) exporter.MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("exportModuleMetrics", 0,
+						"metrics");
+		assertEquals(metrics.getNames(),
+				List.of("coalescing.calls", "coalescing.coalescedRequests",
+						"limiter[someUrl].accepted", "limiter[someUrl].averageLatencyMicros",
+						"limiter[someUrl].inFlight", "limiter[someUrl].limit",
+						"limiter[someUrl].queueTimeouts", "limiter[someUrl].queued",
+						"limiter[someUrl].rejected", "limiter[someUrl].shed", "pool.hosts",
+						"pool.leaseTimeouts", "pool.leased", "pool.leasesGranted",
+						"pool.leasesWaitedFor", "transcoding.bytesSaved",
+						"transcoding.skippedTranscodings", "transcoding.transcodings"));
+		assertEquals(metrics.read("limiter[someUrl].limit"), Optional.of(7L));
+		assertEquals(metrics.read("coalescing.coalescedRequests"), Optional.of(0L));
+	}
+
+	@Test
+	public void getIiifImageAdapter_metricsAreSharedBetweenImageServers() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrls", "url1,url2",
+				"iiifBackendHealthCheckIntervalInSeconds", "0", "iiifMetricsEnabled", "true"));
+
+		RoutingIiifAdapter routingAdapter = (RoutingIiifAdapter) provider.getIiifAdapter();
+
+		MeasuringIiifAdapter first = (MeasuringIiifAdapter) routingAdapter.getBackends().get(0)
+				.getIiifAdapter();
+		MeasuringIiifAdapter second = (MeasuringIiifAdapter) routingAdapter.getBackends().get(1)
+				.getIiifAdapter();
+		assertSame(first.getMetrics(), second.getMetrics());
+	}
+
+	@Test
+	public void getIiifImageAdapter_metricsTurnedOffWithExporter() throws Exception {
+		MetricsExporterSpy exporter = new MetricsExporterSpy();
+		provider = new IiifImageInstanceProviderImp(List.of(exporter));
+		SettingsProvider.setSettings(
+				Map.of("imageServerUrl", "someUrl", "iiifMetricsEnabled", "false"));
+
+		assertTrue(provider.getIiifAdapter() instanceof IiifAdapterImp);
+		exporter.MCR.assertMethodNotCalled("export");
+		exporter.MCR.assertMethodNotCalled("exportModuleMetrics");
+	}
+
+	@Test
+	public void getIiifImageAdapter_requestCoalescingEnabled() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl",
+				"iiifRequestCoalescingEnabled", "true", "iiifRequestCoalescingMaxBodyBytes",
+				"1000"));
+
+		CoalescingIiifAdapter coalescingAdapter = (CoalescingIiifAdapter) provider
+				.getIiifAdapter();
+
+		assertEquals(coalescingAdapter.onlyForTestGetMaxSharedBodyBytes(), 1000);
+		assertTrue(coalescingAdapter.onlyForTestGetIiifAdapter() instanceof IiifAdapterImp);
+	}
+
+	@Test
+	public void getIiifImageAdapter_adapterIsAssembledOnce() throws Exception {
+		assertSame(provider.getIiifAdapter(), provider.getIiifAdapter());
+	}
+
+	@Test
+	public void getIiifImageAdapter_uriCanonicalizationEnabled() throws Exception {
+		SettingsProvider.setSettings(Map.of("imageServerUrl", "someUrl",
+				"iiifUriCanonicalizationEnabled", "true", "iiifImageApiVersion", "2",
+				"iiifTileCacheMaxBytes", "1000000"));
+
+		CanonicalizingIiifAdapter canonicalizingAdapter = (CanonicalizingIiifAdapter) provider
+				.getIiifAdapter();
+
+		assertEquals(canonicalizingAdapter.onlyForTestGetCanonicalizer()
+				.canonicalize("someId/full/max/0/default.jpg"), "someId/full/full/0/default.jpg");
+		assertTrue(canonicalizingAdapter.onlyForTestGetIiifAdapter() instanceof CachingIiifAdapter);
+	}
 }
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.binary.BinaryException;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.info.InfoCache;
+import se.uu.ub.cora.iiif.spies.IiifAdapterSpy;
+import se.uu.ub.cora.iiif.spies.SettableClock;
+
+public class InfoCachingIiifAdapterTest {
+	private static final String INFO_JSON = "{\"id\":\"http://internal/someId\",\"width\":300,"
+			+ "\"height\":200}";
+	private static final String PUBLIC_INFO_JSON = "{\"id\":\"https://example.org/iiif/someId\","
+			+ "\"width\":300,\"height\":200}";
+	private static final IiifParameters INFO_REQUEST = new IiifParameters("someId/info.json",
+			"GET", Map.of());
+	private IiifAdapterSpy iiifAdapterSpy;
+	private InfoCache infoCache;
+	private InfoCachingIiifAdapter adapter;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		iiifAdapterSpy = new IiifAdapterSpy();
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> createResponse(200, INFO_JSON));
+		infoCache = new InfoCache(100, Duration.ofSeconds(300),
+				new SettableClock(Instant.parse("2026-01-01T00:00:00Z")));
+		adapter = new InfoCachingIiifAdapter(iiifAdapterSpy, infoCache, 1024,
+				"https://example.org/iiif/");
+	}
+
+	private IiifAdapterResponse createResponse(int status, String body) {
+		IiifAdapterResponse response = IiifAdapterSpy.createResponse(status, body);
+		response.headers().put("Content-Type", "application/ld+json");
+		response.headers().put("ETag", "\"someTag\"");
+		return response;
+	}
+
+	private String readBody(IiifAdapterResponse response) throws Exception {
+		return new String(response.body().readAllBytes(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		assertSame(adapter.onlyForTestGetIiifAdapter(), iiifAdapterSpy);
+		assertSame(adapter.getInfoCache(), infoCache);
+		assertEquals(adapter.onlyForTestGetMaxDocumentBytes(), 1024);
+		assertEquals(adapter.onlyForTestGetPublicBaseUrl(), "https://example.org/iiif/");
+	}
+
+	@Test
+	public void testImageRequestIsPassedOn() throws Exception {
+		IiifParameters iiifParameters = new IiifParameters("someId/full/max/0/default.jpg",
+				"GET", Map.of());
+
+		IiifAdapterResponse response = adapter.callIiifServer(iiifParameters);
+
+		iiifAdapterSpy.MCR.assertParameters("callIiifServer", 0, iiifParameters);
+		iiifAdapterSpy.MCR.assertReturn("callIiifServer", 0, response);
+		assertEquals(infoCache.getStatistics().entries(), 0);
+	}
+
+	@Test
+	public void testInfoIsStoredAndRewritten() throws Exception {
+		IiifAdapterResponse response = adapter.callIiifServer(INFO_REQUEST);
+
+		iiifAdapterSpy.MCR.assertParameters("callIiifServer", 0, INFO_REQUEST);
+		assertEquals(response.status(), 200);
+		assertEquals(readBody(response), PUBLIC_INFO_JSON);
+		assertEquals(response.headers().get("Content-Type"), "application/ld+json");
+		assertTrue(infoCache.get("someId").isPresent());
+	}
+
+	@Test
+	public void testStoredInfoIsServedWithoutCallingImageServer() throws Exception {
+		adapter.callIiifServer(INFO_REQUEST);
+
+		IiifAdapterResponse response = adapter
+				.callIiifServer(new IiifParameters("/someId/info.json", "GET", Map.of()));
+
+		iiifAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", 1);
+		assertEquals(readBody(response), PUBLIC_INFO_JSON);
+	}
+
+	@Test
+	public void testConditionalRequestMatchingStoredInfo() throws Exception {
+		adapter.callIiifServer(INFO_REQUEST);
+
+		IiifAdapterResponse response = adapter.callIiifServer(new IiifParameters(
+				"someId/info.json", "GET", Map.of("If-None-Match", "\"someTag\"")));
+
+		assertEquals(response.status(), 304);
+		assertEquals(response.headers(), Map.of("ETag", "\"someTag\""));
+		assertEquals(readBody(response), "");
+	}
+
+	@Test
+	public void testConditionalRequestNotMatchingStoredInfo() throws Exception {
+		adapter.callIiifServer(INFO_REQUEST);
+
+		IiifAdapterResponse response = adapter.callIiifServer(new IiifParameters(
+				"someId/info.json", "GET", Map.of("If-None-Match", "\"otherTag\"")));
+
+		assertEquals(response.status(), 200);
+		assertEquals(readBody(response), PUBLIC_INFO_JSON);
+	}
+
+	@Test
+	public void testHeadIsPassedOn() throws Exception {
+		IiifParameters iiifParameters = new IiifParameters("someId/info.json", "HEAD", Map.of());
+
+		IiifAdapterResponse response = adapter.callIiifServer(iiifParameters);
+
+		iiifAdapterSpy.MCR.assertReturn("callIiifServer", 0, response);
+		assertEquals(infoCache.getStatistics().entries(), 0);
+	}
+
+	@Test
+	public void testNotFoundIsPassedOnAndNotStored() throws Exception {
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> createResponse(404, "not found"));
+
+		IiifAdapterResponse response = adapter.callIiifServer(INFO_REQUEST);
+
+		iiifAdapterSpy.MCR.assertReturn("callIiifServer", 0, response);
+		assertEquals(infoCache.getStatistics().entries(), 0);
+	}
+
+	@Test
+	public void testInvalidInfoIsPassedOnAndNotStored() throws Exception {
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> createResponse(200, "<html>"));
+
+		IiifAdapterResponse response = adapter.callIiifServer(INFO_REQUEST);
+
+		assertEquals(response.status(), 200);
+		assertEquals(readBody(response), "<html>");
+		assertEquals(infoCache.getStatistics().entries(), 0);
+		assertEquals(adapter.getInvalidDocuments(), 1);
+	}
+
+	@Test
+	public void testTooLargeInfoIsPassedOnAndNotStored() throws Exception {
+		adapter = new InfoCachingIiifAdapter(iiifAdapterSpy, infoCache, 10, "");
+
+		IiifAdapterResponse response = adapter.callIiifServer(INFO_REQUEST);
+
+		assertEquals(readBody(response), INFO_JSON);
+		assertEquals(infoCache.getStatistics().entries(), 0);
+		assertEquals(adapter.getInvalidDocuments(), 0);
+	}
+
+	@Test
+	public void testWithoutPublicBaseUrlIdIsKept() throws Exception {
+		adapter = new InfoCachingIiifAdapter(iiifAdapterSpy, infoCache, 1024, "");
+
+		IiifAdapterResponse response = adapter.callIiifServer(INFO_REQUEST);
+
+		assertEquals(readBody(response), INFO_JSON);
+	}
+
+	@Test
+	public void testOtherMethodsInvalidateStoredInfo() throws Exception {
+		adapter.callIiifServer(INFO_REQUEST);
+		IiifParameters iiifParameters = new IiifParameters("someId/full/max/0/default.jpg",
+				"DELETE", Map.of());
+
+		IiifAdapterResponse response = adapter.callIiifServer(iiifParameters);
+
+		iiifAdapterSpy.MCR.assertParameters("callIiifServer", 1, iiifParameters);
+		iiifAdapterSpy.MCR.assertReturn("callIiifServer", 1, response);
+		assertTrue(infoCache.get("someId").isEmpty());
+	}
+
+	@Test
+	public void testErrorReadingInfo() throws Exception {
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> new IiifAdapterResponse(200, new HashMap<>(), new InputStream() {
+					@Override
+					public int read() throws IOException {
+						throw new IOException("someReadError");
+					}
+				}));
+
+		try {
+			adapter.callIiifServer(INFO_REQUEST);
+			fail("It should throw an exception");
+		} catch (BinaryException e) {
+			assertEquals(e.getMessage(), "Error while reading info.json for cache: someReadError");
+		}
+	}
+}
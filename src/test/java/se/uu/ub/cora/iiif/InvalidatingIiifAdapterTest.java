@@ -0,0 +1,78 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.invalidation.ImageInvalidator;
+import se.uu.ub.cora.iiif.spies.IiifAdapterSpy;
+
+public class InvalidatingIiifAdapterTest {
+	private IiifAdapterSpy iiifAdapterSpy;
+	private List<String> invalidatedInFirst;
+	private List<String> invalidatedInSecond;
+	private InvalidatingIiifAdapter adapter;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		iiifAdapterSpy = new IiifAdapterSpy();
+		invalidatedInFirst = new ArrayList<>();
+		invalidatedInSecond = new ArrayList<>();
+		adapter = new InvalidatingIiifAdapter(iiifAdapterSpy,
+				List.of(invalidatedInFirst::add, invalidatedInSecond::add));
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		assertSame(adapter.onlyForTestGetIiifAdapter(), iiifAdapterSpy);
+		assertEquals(adapter.onlyForTestGetInvalidators().size(), 2);
+	}
+
+	@Test
+	public void testCallIsPassedOn() throws Exception {
+		IiifParameters getTile = new IiifParameters("someId/0,0,512,512/512,/0/default.jpg",
+				"GET", Map.of());
+
+		IiifAdapterResponse response = adapter.callIiifServer(getTile);
+
+		iiifAdapterSpy.MCR.assertParameters("callIiifServer", 0, getTile);
+		iiifAdapterSpy.MCR.assertReturn("callIiifServer", 0, response);
+	}
+
+	@Test
+	public void testInvalidateReachesAllInvalidators() throws Exception {
+		ImageInvalidator invalidator = adapter;
+
+		invalidator.invalidate("someId");
+
+		assertEquals(invalidatedInFirst, List.of("someId"));
+		assertEquals(invalidatedInSecond, List.of("someId"));
+		iiifAdapterSpy.MCR.assertMethodNotCalled("callIiifServer");
+	}
+}
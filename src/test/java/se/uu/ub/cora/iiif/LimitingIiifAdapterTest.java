@@ -0,0 +1,201 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.binary.BinaryException;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.backend.LocalRejectionException;
+import se.uu.ub.cora.iiif.limit.ConcurrencyLimiter;
+import se.uu.ub.cora.iiif.limit.ConcurrencyLimiter.Permit;
+import se.uu.ub.cora.iiif.limit.LimitExceededException;
+import se.uu.ub.cora.iiif.limit.LimitSettings;
+import se.uu.ub.cora.iiif.limit.RequestPriority;
+import se.uu.ub.cora.iiif.spies.IiifAdapterSpy;
+
+public class LimitingIiifAdapterTest {
+	private IiifAdapterSpy iiifAdapterSpy;
+	private ConcurrencyLimiter limiter;
+	private LimitingIiifAdapter adapter;
+	private IiifParameters getTile;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		iiifAdapterSpy = new IiifAdapterSpy();
+		limiter = new ConcurrencyLimiter(
+				new LimitSettings(10, 1, 20, 0, Duration.ofMillis(10)));
+		adapter = new LimitingIiifAdapter(iiifAdapterSpy, limiter, 400);
+		getTile = new IiifParameters("someId/0,0,512,512/512,/0/default.jpg", "GET", Map.of());
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		assertSame(adapter.onlyForTestGetIiifAdapter(), iiifAdapterSpy);
+		assertSame(adapter.onlyForTestGetLimiter(), limiter);
+		assertEquals(adapter.onlyForTestGetThumbnailMaxSize(), 400);
+	}
+
+	@Test
+	public void testCallIsPassedOnWithinLimit() throws Exception {
+		IiifAdapterResponse response = adapter.callIiifServer(getTile);
+
+		iiifAdapterSpy.MCR.assertParameters("callIiifServer", 0, getTile);
+		iiifAdapterSpy.MCR.assertReturn("callIiifServer", 0, response);
+		assertEquals(adapter.getMetrics().accepted(), 1);
+		assertEquals(adapter.getMetrics().inFlight(), 0);
+	}
+
+	@Test
+	public void testPriorityComesFromRequestType() throws Exception {
+		List<RequestPriority> priorities = recordPriorities();
+
+		adapter.callIiifServer(getTile);
+		adapter.callIiifServer(new IiifParameters("someId/info.json", "GET", Map.of()));
+
+		assertEquals(priorities, List.of(RequestPriority.NORMAL, RequestPriority.HIGH));
+	}
+
+	private List<RequestPriority> recordPriorities() {
+		List<RequestPriority> priorities = new ArrayList<>();
+		limiter = new ConcurrencyLimiter(new LimitSettings(10, 1, 20, 0, Duration.ofMillis(10))) {
+			@Override
+			public Permit acquire(RequestPriority priority) {
+				priorities.add(priority);
+				return super.acquire(priority);
+			}
+		};
+		adapter = new LimitingIiifAdapter(iiifAdapterSpy, limiter, 400);
+		return priorities;
+	}
+
+	@Test
+	public void testMarkedPriorityLowersPriorityAndIsRemoved() throws Exception {
+		List<RequestPriority> priorities = recordPriorities();
+		IiifParameters warmupInfo = new IiifParameters("someId/info.json", "GET",
+				Map.of("Accept", "application/json", "x-cora-iiif-priority", "LOW"));
+
+		adapter.callIiifServer(warmupInfo);
+
+		assertEquals(priorities, List.of(RequestPriority.LOW));
+		IiifParameters passedOn = (IiifParameters) iiifAdapterSpy.MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("callIiifServer", 0,
+						"iiifParameters");
+		assertEquals(passedOn.headersMap(), Map.of("Accept", "application/json"));
+		assertEquals(passedOn.uri(), "someId/info.json");
+	}
+
+	@Test
+	public void testMarkedPriorityNeverRaisesPriority() throws Exception {
+		List<RequestPriority> priorities = recordPriorities();
+
+		adapter.callIiifServer(new IiifParameters(getTile.uri(), "GET",
+				Map.of(RequestPriority.HEADER, "HIGH")));
+		adapter.callIiifServer(new IiifParameters(getTile.uri(), "GET",
+				Map.of(RequestPriority.HEADER, "unknown")));
+
+		assertEquals(priorities, List.of(RequestPriority.NORMAL, RequestPriority.NORMAL));
+	}
+
+	@Test
+	public void testRejectedWhenLimitIsReached() throws Exception {
+		fillLimit();
+
+		try {
+			adapter.callIiifServer(getTile);
+			fail("It should throw an exception");
+		} catch (LimitExceededException e) {
+			assertEquals(e.getMessage(), "Too many requests waiting for the image server");
+			assertEquals(e.getRetryAfterSeconds(), 1);
+		}
+		iiifAdapterSpy.MCR.assertMethodNotCalled("callIiifServer");
+		assertEquals(adapter.getMetrics().rejected(), 1);
+	}
+
+	private void fillLimit() {
+		for (int i = 0; i < 10; i++) {
+			limiter.acquire(RequestPriority.NORMAL);
+		}
+	}
+
+	@Test
+	public void testOverloadedResponseLowersLimit() throws Exception {
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> IiifAdapterSpy.createResponse(503, "busy"));
+
+		IiifAdapterResponse response = adapter.callIiifServer(getTile);
+
+		assertEquals(response.status(), 503);
+		assertEquals(adapter.getMetrics().limit(), 9);
+	}
+
+	@Test
+	public void testNotFoundDoesNotLowerLimit() throws Exception {
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> IiifAdapterSpy.createResponse(404, "missing"));
+
+		adapter.callIiifServer(getTile);
+
+		assertEquals(adapter.getMetrics().limit(), 10);
+	}
+
+	@Test
+	public void testFailedCallLowersLimitAndIsRethrown() throws Exception {
+		BinaryException failure = BinaryException.withMessage("someFailure");
+		iiifAdapterSpy.MRV.setAlwaysThrowException("callIiifServer", failure);
+
+		try {
+			adapter.callIiifServer(getTile);
+			fail("It should throw an exception");
+		} catch (BinaryException e) {
+			assertSame(e, failure);
+		}
+		assertEquals(adapter.getMetrics().limit(), 9);
+		assertEquals(adapter.getMetrics().inFlight(), 0);
+	}
+
+	@Test
+	public void testLocalRejectionIsLeftOutOfLimit() throws Exception {
+		LocalRejectionException rejection = new LocalRejectionException("someRejection", 1) {
+			private static final long serialVersionUID = 1L;
+		};
+		iiifAdapterSpy.MRV.setAlwaysThrowException("callIiifServer", rejection);
+
+		try {
+			adapter.callIiifServer(getTile);
+			fail("It should throw an exception");
+		} catch (LocalRejectionException e) {
+			assertSame(e, rejection);
+		}
+		assertEquals(adapter.getMetrics().limit(), 10);
+		assertEquals(adapter.getMetrics().inFlight(), 0);
+		assertEquals(adapter.getMetrics().averageLatencyMicros(), 0);
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+import java.io.InputStream;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.binary.BinaryException;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.limit.RequestPriority;
+import se.uu.ub.cora.iiif.spies.IiifAdapterSpy;
+import se.uu.ub.cora.iiif.warm.LiveCalls;
+
+public class LiveCallCountingIiifAdapterTest {
+	private IiifAdapterSpy iiifAdapterSpy;
+	private LiveCalls liveCalls;
+	private LiveCallCountingIiifAdapter adapter;
+	private IiifParameters getTile;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		iiifAdapterSpy = new IiifAdapterSpy();
+		liveCalls = new LiveCalls();
+		adapter = new LiveCallCountingIiifAdapter(iiifAdapterSpy, liveCalls);
+		getTile = new IiifParameters("someId/0,0,512,512/512,/0/default.jpg", "GET", Map.of());
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		assertSame(adapter.onlyForTestGetIiifAdapter(), iiifAdapterSpy);
+		assertSame(adapter.getLiveCalls(), liveCalls);
+	}
+
+	@Test
+	public void testCallIsPassedOn() throws Exception {
+		IiifAdapterResponse response = adapter.callIiifServer(getTile);
+
+		iiifAdapterSpy.MCR.assertParameters("callIiifServer", 0, getTile);
+		assertEquals(response.status(), 200);
+		assertEquals(new String(response.body().readAllBytes()), "someBody");
+	}
+
+	@Test
+	public void testCallIsInProgressUntilBodyIsClosed() throws Exception {
+		IiifAdapterResponse response = adapter.callIiifServer(getTile);
+
+		assertEquals(liveCalls.inProgress(), 1);
+		try (InputStream body = response.body()) {
+			body.read();
+			assertEquals(liveCalls.inProgress(), 1);
+		}
+		assertEquals(liveCalls.inProgress(), 0);
+	}
+
+	@Test
+	public void testBodyClosedTwiceFinishesCallOnce() throws Exception {
+		IiifAdapterResponse response = adapter.callIiifServer(getTile);
+
+		response.body().close();
+		response.body().close();
+
+		assertEquals(liveCalls.inProgress(), 0);
+	}
+
+	@Test
+	public void testFailedCallIsFinished() throws Exception {
+		BinaryException error = BinaryException.withMessage("someError");
+		iiifAdapterSpy.MRV.setAlwaysThrowException("callIiifServer", error);
+
+		try {
+			adapter.callIiifServer(getTile);
+			fail("It should throw an exception");
+		} catch (BinaryException e) {
+			assertSame(e, error);
+		}
+
+		assertEquals(liveCalls.inProgress(), 0);
+	}
+
+	@Test
+	public void testCallMarkedWithPriorityIsNotCounted() throws Exception {
+		IiifParameters warmup = new IiifParameters(getTile.uri(), "GET",
+				Map.of(RequestPriority.HEADER, "LOW"));
+
+		IiifAdapterResponse response = adapter.callIiifServer(warmup);
+
+		iiifAdapterSpy.MCR.assertReturn("callIiifServer", 0, response);
+		assertEquals(liveCalls.inProgress(), 0);
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.binary.BinaryException;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.metrics.StatusClass;
+import se.uu.ub.cora.iiif.metrics.UpstreamMetrics;
+import se.uu.ub.cora.iiif.spies.IiifAdapterSpy;
+import se.uu.ub.cora.iiif.uri.IiifRequestType;
+
+public class MeasuringIiifAdapterTest {
+	private static final String TILE_URI = "someId/0,0,512,512/512,/0/default.jpg";
+	private IiifAdapterSpy iiifAdapterSpy;
+	private UpstreamMetrics metrics;
+	private AtomicLong nanoTime;
+	private MeasuringIiifAdapter adapter;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		iiifAdapterSpy = new IiifAdapterSpy();
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer", () -> {
+			nanoTime.addAndGet(3_000_000);
+			return IiifAdapterSpy.createResponse(200, "someBody");
+		});
+		metrics = new UpstreamMetrics();
+		nanoTime = new AtomicLong();
+		adapter = new MeasuringIiifAdapter(iiifAdapterSpy, metrics, 400, nanoTime::get);
+	}
+
+	private IiifParameters createParameters(String uri) {
+		return new IiifParameters(uri, "GET", Map.of());
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		assertSame(adapter.onlyForTestGetIiifAdapter(), iiifAdapterSpy);
+		assertSame(adapter.getMetrics(), metrics);
+		assertEquals(adapter.onlyForTestGetThumbnailMaxSize(), 400);
+	}
+
+	@Test
+	public void testCallIsPassedOn() throws Exception {
+		IiifParameters parameters = createParameters(TILE_URI);
+
+		IiifAdapterResponse response = adapter.callIiifServer(parameters);
+
+		iiifAdapterSpy.MCR.assertParameters("callIiifServer", 0, parameters);
+		IiifAdapterResponse spyResponse = (IiifAdapterResponse) iiifAdapterSpy.MCR
+				.getReturnValue("callIiifServer", 0);
+		assertEquals(response.status(), spyResponse.status());
+		assertSame(response.headers(), spyResponse.headers());
+	}
+
+	@Test
+	public void testTimeToHeadersIsRecordedForRequestType() throws Exception {
+		adapter.callIiifServer(createParameters(TILE_URI));
+
+		assertEquals(metrics.getTimeToHeaders(IiifRequestType.TILE).getTotalMicros(), 3000);
+		assertEquals(metrics.getResponses(IiifRequestType.TILE, StatusClass.SUCCESSFUL), 1);
+		assertEquals(metrics.getTimeToLastByte(IiifRequestType.TILE).getCount(), 0);
+	}
+
+	@Test
+	public void testTimeToLastByteIsRecordedWhenBodyIsRead() throws Exception {
+		IiifAdapterResponse response = adapter
+				.callIiifServer(createParameters("someId/info.json"));
+		nanoTime.addAndGet(5_000_000);
+
+		assertEquals(new String(response.body().readAllBytes()), "someBody");
+
+		assertEquals(metrics.getTimeToLastByte(IiifRequestType.INFO).getTotalMicros(), 8000);
+		assertEquals(metrics.getBytes(IiifRequestType.INFO), 8);
+	}
+
+	@Test
+	public void testResponseWithoutBody() throws Exception {
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> new IiifAdapterResponse(304, new HashMap<>(), null));
+
+		IiifAdapterResponse response = adapter.callIiifServer(createParameters(TILE_URI));
+
+		assertEquals(response.status(), 304);
+		assertEquals(metrics.getResponses(IiifRequestType.TILE, StatusClass.REDIRECTION), 1);
+		assertEquals(metrics.getTimeToLastByte(IiifRequestType.TILE).getCount(), 1);
+	}
+
+	@Test
+	public void testFailureIsRecorded() throws Exception {
+		BinaryException failure = BinaryException.withMessage("someFailure");
+		iiifAdapterSpy.MRV.setAlwaysThrowException("callIiifServer", failure);
+
+		try {
+			adapter.callIiifServer(createParameters("someId/full/max/0/default.jpg"));
+			fail("It should throw an exception");
+		} catch (BinaryException e) {
+			assertSame(e, failure);
+		}
+		assertEquals(metrics.getFailures(IiifRequestType.FULL_IMAGE), 1);
+		assertEquals(metrics.getTimeToHeaders(IiifRequestType.FULL_IMAGE).getCount(), 0);
+	}
+}
@@ -0,0 +1,406 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.binary.BinaryException;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.http.HttpClientPool;
+import se.uu.ub.cora.iiif.http.MultiplexedClients;
+import se.uu.ub.cora.iiif.http.PoolSettings;
+import se.uu.ub.cora.iiif.standin.H2cServerStandIn;
+import se.uu.ub.cora.iiif.standin.ImageServerStandIn;
+import se.uu.ub.cora.iiif.standin.ImageServerStandIn.Handler;
+import se.uu.ub.cora.iiif.standin.ImageServerStandIn.Request;
+import se.uu.ub.cora.iiif.standin.ImageServerStandIn.Response;
+import se.uu.ub.cora.logger.LoggerProvider;
+import se.uu.ub.cora.logger.spies.LoggerFactorySpy;
+import se.uu.ub.cora.logger.spies.LoggerSpy;
+
+public class MultiplexedIiifAdapterTest {
+	private static final String SOME_URI = "someId/full/263,/0/default.jpg";
+	private static final Handler IMAGE_HANDLER = request -> Response.withBody(200,
+			Map.of("Content-Type", "image/jpeg"),
+			("image for " + request.path()).getBytes(StandardCharsets.UTF_8));
+	private LoggerFactorySpy loggerFactory;
+	private H2cServerStandIn h2cServer;
+	private ImageServerStandIn http11Server;
+	private MultiplexedIiifAdapter adapter;
+	private CountDownLatch releaseUpgrades;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		loggerFactory = new LoggerFactorySpy();
+		LoggerProvider.setLoggerFactory(loggerFactory);
+		releaseUpgrades = new CountDownLatch(1);
+	}
+
+	@AfterMethod
+	private void afterMethod() {
+		releaseUpgrades.countDown();
+		if (h2cServer != null) {
+			h2cServer.close();
+		}
+		if (http11Server != null) {
+			http11Server.close();
+		}
+	}
+
+	private void startH2cServer(Handler handler, int connectionsPerHost) {
+		startH2cServer(handler, connectionsPerHost, Duration.ofSeconds(5));
+	}
+
+	private void startH2cServer(Handler handler, int connectionsPerHost,
+			Duration responseTimeout) {
+		h2cServer = H2cServerStandIn.start(handler);
+		adapter = createAdapter(h2cServer.getBaseUrl(), connectionsPerHost,
+				Duration.ofSeconds(5), responseTimeout);
+	}
+
+	private void startHttp11Server(Handler handler, Duration negotiationTimeout) {
+		http11Server = ImageServerStandIn.start(handler);
+		adapter = createAdapter(http11Server.getBaseUrl(), 1, negotiationTimeout,
+				Duration.ofSeconds(5));
+	}
+
+	private MultiplexedIiifAdapter createAdapter(String baseUrl, int connectionsPerHost,
+			Duration negotiationTimeout, Duration responseTimeout) {
+		PooledIiifAdapter pooledAdapter = new PooledIiifAdapter(baseUrl,
+				new HttpClientPool(new PoolSettings(4, Duration.ofSeconds(5),
+						Duration.ofSeconds(5))),
+				Duration.ofSeconds(5));
+		return new MultiplexedIiifAdapter(baseUrl,
+				new MultiplexedClients(connectionsPerHost, Duration.ofSeconds(5)), pooledAdapter,
+				negotiationTimeout, responseTimeout);
+	}
+
+	private IiifAdapterResponse get(String uri) {
+		return adapter.callIiifServer(new IiifParameters(uri, "GET", Map.of()));
+	}
+
+	private String readBody(InputStream body) throws IOException {
+		try (body) {
+			return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private LoggerSpy getLogger() {
+		return (LoggerSpy) loggerFactory.MCR.getReturnValue("factorForClass", 0);
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		startH2cServer(IMAGE_HANDLER, 2);
+
+		assertEquals(adapter.onlyForTestGetIiifServerUrl(), h2cServer.getBaseUrl());
+		assertEquals(adapter.onlyForTestGetMultiplexedClients().getConnectionsPerHost(), 2);
+		assertTrue(adapter.onlyForTestGetFallbackAdapter() instanceof PooledIiifAdapter);
+		assertEquals(adapter.onlyForTestGetNegotiationTimeout(), Duration.ofSeconds(5));
+		assertEquals(adapter.onlyForTestGetResponseTimeout(), Duration.ofSeconds(5));
+		assertEquals(adapter.getNegotiatedVersion(), Optional.empty());
+		loggerFactory.MCR.assertParameters("factorForClass", 0, MultiplexedIiifAdapter.class);
+	}
+
+	@Test
+	public void testH2cIsNegotiatedWithProbeBeforeFirstCall() throws Exception {
+		startH2cServer(IMAGE_HANDLER, 1);
+
+		IiifAdapterResponse response = adapter.callIiifServer(
+				new IiifParameters(SOME_URI, "GET", Map.of("someHeader", "someValue")));
+
+		assertEquals(response.status(), 200);
+		assertEquals(response.headers().get("content-type"), "image/jpeg");
+		assertNull(response.headers().get(":status"));
+		assertEquals(readBody(response.body()), "image for /" + SOME_URI);
+		Request probe = h2cServer.getRequests().get(0);
+		assertEquals(probe.method(), "HEAD");
+		assertEquals(probe.path(), "/");
+		assertEquals(h2cServer.getRequests().get(1).header("someHeader"), "someValue");
+		assertEquals(adapter.getNegotiatedVersion(), Optional.of(HttpClient.Version.HTTP_2));
+		assertEquals(adapter.getMultiplexedCalls(), 1);
+		getLogger().MCR.assertParameters("logInfoUsingMessage", 0, h2cServer.getBaseUrl()
+				+ " supports h2c, calls are multiplexed over HTTP/2");
+	}
+
+	@Test
+	public void testCallsAreMultiplexedOverOneConnection() throws Exception {
+		CountDownLatch allArrived = new CountDownLatch(8);
+		startH2cServer(request -> {
+			if (request.path().contains("tile")) {
+				allArrived.countDown();
+				allArrived.await(5, TimeUnit.SECONDS);
+			}
+			return IMAGE_HANDLER.handle(request);
+		}, 1);
+		readBody(get(SOME_URI).body());
+		List<CompletableFuture<IiifAdapterResponse>> responses = new ArrayList<>();
+
+		for (int i = 0; i < 8; i++) {
+			responses.add(adapter.callIiifServerAsync(
+					new IiifParameters("tile" + i, "GET", Map.of())));
+		}
+
+		for (int i = 0; i < 8; i++) {
+			assertEquals(readBody(responses.get(i).get(5, TimeUnit.SECONDS).body()),
+					"image for /tile" + i);
+		}
+		assertEquals(h2cServer.getConnectionsAccepted(), 1);
+		assertEquals(h2cServer.getMaxConcurrentStreams(), 8);
+		assertEquals(adapter.getMultiplexedCalls(), 9);
+		assertEquals(adapter.getFallbackCalls(), 0);
+	}
+
+	@Test
+	public void testCallsAreSpreadOverConnectionsPerHost() throws Exception {
+		startH2cServer(IMAGE_HANDLER, 2);
+
+		for (int i = 0; i < 6; i++) {
+			readBody(get(SOME_URI).body());
+		}
+
+		assertEquals(h2cServer.getConnectionsAccepted(), 2);
+		assertEquals(h2cServer.getRequests().size(), 7);
+	}
+
+	@Test
+	public void testNotFoundOverH2c() throws Exception {
+		startH2cServer(request -> Response.withBody(404, "upstream not found"), 1);
+
+		IiifAdapterResponse response = get(SOME_URI);
+
+		assertEquals(response.status(), 404);
+		assertEquals(readBody(response.body()), "Requested identifier could not be found.");
+	}
+
+	@Test
+	public void testHeadOverH2c() throws Exception {
+		startH2cServer(IMAGE_HANDLER, 1);
+
+		IiifAdapterResponse response = adapter
+				.callIiifServer(new IiifParameters(SOME_URI, "HEAD", Map.of()));
+
+		assertEquals(response.status(), 200);
+		assertEquals(response.body().read(), -1);
+		assertEquals(adapter.getNegotiatedVersion(), Optional.of(HttpClient.Version.HTTP_2));
+	}
+
+	@Test
+	public void testFailedMultiplexedCall() throws Exception {
+		startH2cServer(IMAGE_HANDLER, 1);
+		readBody(get(SOME_URI).body());
+		h2cServer.close();
+
+		try {
+			get(SOME_URI);
+			fail("It should throw an exception");
+		} catch (BinaryException e) {
+			assertEquals(e.getMessage(),
+					"Error while calling iiifServer using method: GET, and URI: " + SOME_URI);
+		}
+		assertEquals(adapter.getNegotiatedVersion(), Optional.of(HttpClient.Version.HTTP_2));
+	}
+
+	@Test
+	public void testServerWithoutH2cGetsPooledHttp11() throws Exception {
+		startHttp11Server(IMAGE_HANDLER, Duration.ofSeconds(5));
+
+		IiifAdapterResponse first = get(SOME_URI);
+		IiifAdapterResponse second = get(SOME_URI);
+
+		assertEquals(readBody(first.body()), "image for /" + SOME_URI);
+		assertEquals(readBody(second.body()), "image for /" + SOME_URI);
+		List<Request> requests = http11Server.getRequests();
+		assertEquals(requests.get(0).method(), "HEAD");
+		assertEquals(requests.get(0).header("Upgrade"), "h2c");
+		assertNull(requests.get(1).header("Upgrade"));
+		assertNull(requests.get(2).header("Upgrade"));
+		assertEquals(adapter.getNegotiatedVersion(), Optional.of(HttpClient.Version.HTTP_1_1));
+		assertEquals(adapter.getFallbackCalls(), 2);
+		getLogger().MCR.assertParameters("logInfoUsingMessage", 0, http11Server.getBaseUrl()
+				+ " answered without upgrading to h2c, calls are made over pooled HTTP/1.1");
+	}
+
+	private Handler hangingOnUpgrade() {
+		return request -> {
+			if (request.header("Upgrade") != null) {
+				releaseUpgrades.await(10, TimeUnit.SECONDS);
+			}
+			return IMAGE_HANDLER.handle(request);
+		};
+	}
+
+	@Test
+	public void testHangingProbeIsMadeAgainWithLaterCall() throws Exception {
+		startHttp11Server(hangingOnUpgrade(), Duration.ofMillis(200));
+
+		IiifAdapterResponse response = get(SOME_URI);
+
+		assertEquals(response.status(), 200);
+		assertEquals(readBody(response.body()), "image for /" + SOME_URI);
+		assertEquals(adapter.getNegotiatedVersion(), Optional.empty());
+		assertEquals(adapter.getFallbackCalls(), 1);
+		String warning = (String) getLogger().MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("logWarnUsingMessage", 0,
+						"message");
+		assertTrue(warning.startsWith("Probing " + http11Server.getBaseUrl()
+				+ " for h2c failed (HttpTimeoutException"));
+		assertTrue(warning.endsWith("), probing again with a later call"));
+	}
+
+	@Test
+	public void testRepeatedlyHangingProbeFallsBackToPooledHttp11() throws Exception {
+		startHttp11Server(hangingOnUpgrade(), Duration.ofMillis(200));
+
+		for (int i = 0; i < MultiplexedIiifAdapter.MAX_FAILED_PROBES; i++) {
+			readBody(get(SOME_URI).body());
+		}
+		readBody(get(SOME_URI).body());
+
+		assertEquals(adapter.getNegotiatedVersion(), Optional.of(HttpClient.Version.HTTP_1_1));
+		assertEquals(adapter.getFallbackCalls(), 4);
+		assertEquals(countUpgradeRequests(), MultiplexedIiifAdapter.MAX_FAILED_PROBES);
+		String warning = (String) getLogger().MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("logWarnUsingMessage", 2,
+						"message");
+		assertTrue(warning.startsWith("Negotiating h2c with " + http11Server.getBaseUrl()
+				+ " failed 3 times (HttpTimeoutException"));
+		assertTrue(warning.endsWith("), calls are made over pooled HTTP/1.1"));
+	}
+
+	private long countUpgradeRequests() {
+		return http11Server.getRequests().stream()
+				.filter(request -> request.header("Upgrade") != null).count();
+	}
+
+	@Test
+	public void testRepeatedTimeoutsOverH2cFallBackToPooledHttp11() throws Exception {
+		startH2cServer(request -> {
+			if (request.path().contains("stalling")) {
+				releaseUpgrades.await(10, TimeUnit.SECONDS);
+			}
+			return IMAGE_HANDLER.handle(request);
+		}, 1, Duration.ofMillis(200));
+		readBody(get(SOME_URI).body());
+
+		for (int i = 0; i < MultiplexedIiifAdapter.MAX_CONSECUTIVE_TIMEOUTS; i++) {
+			assertEquals(adapter.getNegotiatedVersion(),
+					Optional.of(HttpClient.Version.HTTP_2));
+			callExpectingFailure("stalling" + i);
+		}
+
+		assertEquals(adapter.getNegotiatedVersion(), Optional.of(HttpClient.Version.HTTP_1_1));
+		getLogger().MCR.assertParameters("logWarnUsingMessage", 0, "Calls to "
+				+ h2cServer.getBaseUrl()
+				+ " over HTTP/2 timed out 3 times in a row, calls are made over pooled HTTP/1.1");
+	}
+
+	private void callExpectingFailure(String uri) {
+		try {
+			get(uri);
+			fail("It should throw an exception");
+		} catch (BinaryException e) {
+			// timed out
+		}
+	}
+
+	@Test
+	public void testSuccessfulCallOverH2cResetsTimeouts() throws Exception {
+		startH2cServer(request -> {
+			if (request.path().contains("stalling")) {
+				releaseUpgrades.await(10, TimeUnit.SECONDS);
+			}
+			return IMAGE_HANDLER.handle(request);
+		}, 1, Duration.ofMillis(200));
+		readBody(get(SOME_URI).body());
+
+		for (int i = 0; i < MultiplexedIiifAdapter.MAX_CONSECUTIVE_TIMEOUTS - 1; i++) {
+			callExpectingFailure("stalling" + i);
+		}
+		readBody(get(SOME_URI).body());
+		callExpectingFailure("stallingAgain");
+
+		assertEquals(adapter.getNegotiatedVersion(), Optional.of(HttpClient.Version.HTTP_2));
+	}
+
+	@Test
+	public void testCallsDuringNegotiationUseFallback() throws Exception {
+		startHttp11Server(hangingOnUpgrade(), Duration.ofSeconds(5));
+		CompletableFuture<IiifAdapterResponse> negotiating = adapter
+				.callIiifServerAsync(new IiifParameters(SOME_URI, "GET", Map.of()));
+
+		IiifAdapterResponse response = get("otherId/full/max/0/default.jpg");
+
+		assertEquals(response.status(), 200);
+		assertEquals(adapter.getNegotiatedVersion(), Optional.empty());
+		releaseUpgrades.countDown();
+		assertEquals(negotiating.get(5, TimeUnit.SECONDS).status(), 200);
+		assertEquals(adapter.getNegotiatedVersion(), Optional.of(HttpClient.Version.HTTP_1_1));
+	}
+
+	@Test
+	public void testOtherMethodsAreMadeAfterProbe() throws Exception {
+		startHttp11Server(IMAGE_HANDLER, Duration.ofSeconds(5));
+
+		adapter.callIiifServer(new IiifParameters(SOME_URI, "POST", Map.of()));
+
+		List<Request> requests = http11Server.getRequests();
+		assertEquals(requests.get(0).method(), "HEAD");
+		assertEquals(requests.get(1).method(), "POST");
+		assertNull(requests.get(1).header("Upgrade"));
+		assertEquals(adapter.getNegotiatedVersion(), Optional.of(HttpClient.Version.HTTP_1_1));
+		assertEquals(adapter.getFallbackCalls(), 1);
+	}
+
+	@Test
+	public void testInvalidUriDoesNotStartNegotiation() throws Exception {
+		startH2cServer(IMAGE_HANDLER, 1);
+
+		try {
+			get("some id");
+			fail("It should throw an exception");
+		} catch (BinaryException e) {
+			assertEquals(e.getMessage(),
+					"Error while calling iiifServer using method: GET, and URI: some id");
+		}
+		assertEquals(adapter.getNegotiatedVersion(), Optional.empty());
+		assertEquals(h2cServer.getRequests().size(), 0);
+	}
+}
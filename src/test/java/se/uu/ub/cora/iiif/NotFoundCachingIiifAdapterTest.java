@@ -0,0 +1,147 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.cache.NotFoundCache;
+import se.uu.ub.cora.iiif.spies.IiifAdapterSpy;
+import se.uu.ub.cora.iiif.spies.SettableClock;
+
+public class NotFoundCachingIiifAdapterTest {
+	private IiifAdapterSpy iiifAdapterSpy;
+	private SettableClock clock;
+	private NotFoundCache notFoundCache;
+	private NotFoundCachingIiifAdapter adapter;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		iiifAdapterSpy = new IiifAdapterSpy();
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> IiifAdapterSpy.createResponse(404, "someNotFoundBody"));
+		clock = new SettableClock(Instant.parse("2026-01-01T00:00:00Z"));
+		notFoundCache = new NotFoundCache(100, Duration.ofSeconds(30), clock);
+		adapter = new NotFoundCachingIiifAdapter(iiifAdapterSpy, notFoundCache);
+	}
+
+	private IiifParameters createParameters(String uri, String method) {
+		return new IiifParameters(uri, method, Map.of());
+	}
+
+	private String readBody(IiifAdapterResponse response) throws Exception {
+		return new String(response.body().readAllBytes(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		assertSame(adapter.onlyForTestGetIiifAdapter(), iiifAdapterSpy);
+		assertSame(adapter.onlyForTestGetNotFoundCache(), notFoundCache);
+	}
+
+	@Test
+	public void testFirstNotFoundIsPassedOn() throws Exception {
+		IiifParameters parameters = createParameters("someId/info.json", "GET");
+
+		IiifAdapterResponse response = adapter.callIiifServer(parameters);
+
+		iiifAdapterSpy.MCR.assertParameters("callIiifServer", 0, parameters);
+		iiifAdapterSpy.MCR.assertReturn("callIiifServer", 0, response);
+	}
+
+	@Test
+	public void testNotFoundIsAnsweredFromCacheForAllRequestsForIdentifier() throws Exception {
+		adapter.callIiifServer(createParameters("someId/info.json", "GET"));
+
+		IiifAdapterResponse response = adapter
+				.callIiifServer(createParameters("someId/0,0,512,512/512,/0/default.jpg", "GET"));
+
+		iiifAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", 1);
+		assertEquals(response.status(), 404);
+		assertEquals(response.headers().get("Content-Type"), "text/plain; charset=UTF-8");
+		assertEquals(readBody(response), "Requested identifier could not be found.");
+		assertEquals(adapter.getStatistics().hits(), 1);
+	}
+
+	@Test
+	public void testHeadIsAnsweredWithoutBody() throws Exception {
+		adapter.callIiifServer(createParameters("someId/info.json", "GET"));
+
+		IiifAdapterResponse response = adapter
+				.callIiifServer(createParameters("someId/info.json", "HEAD"));
+
+		assertEquals(response.status(), 404);
+		assertEquals(readBody(response), "");
+	}
+
+	@Test
+	public void testFoundIsNotRemembered() throws Exception {
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> IiifAdapterSpy.createResponse(200, "someBody"));
+
+		adapter.callIiifServer(createParameters("someId/info.json", "GET"));
+		adapter.callIiifServer(createParameters("someId/info.json", "GET"));
+
+		iiifAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", 2);
+	}
+
+	@Test
+	public void testOtherIdentifiersAreCalled() throws Exception {
+		adapter.callIiifServer(createParameters("someId/info.json", "GET"));
+
+		adapter.callIiifServer(createParameters("someOtherId/info.json", "GET"));
+
+		iiifAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", 2);
+	}
+
+	@Test
+	public void testNotFoundIsCalledAgainAfterTimeToLive() throws Exception {
+		adapter.callIiifServer(createParameters("someId/info.json", "GET"));
+
+		clock.advance(Duration.ofSeconds(30));
+		adapter.callIiifServer(createParameters("someId/info.json", "GET"));
+
+		iiifAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", 2);
+	}
+
+	@Test
+	public void testOtherMethodsForgetIdentifier() throws Exception {
+		adapter.callIiifServer(createParameters("someId/info.json", "GET"));
+
+		IiifParameters put = createParameters("someId", "PUT");
+		adapter.callIiifServer(put);
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> IiifAdapterSpy.createResponse(200, "someBody"));
+		IiifAdapterResponse response = adapter
+				.callIiifServer(createParameters("someId/info.json", "GET"));
+
+		iiifAdapterSpy.MCR.assertParameters("callIiifServer", 1, put);
+		assertEquals(response.status(), 200);
+	}
+}
@@ -0,0 +1,442 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapter;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.http.HttpClientPool;
+import se.uu.ub.cora.iiif.http.PoolSettings;
+import se.uu.ub.cora.iiif.peer.PeerRing;
+import se.uu.ub.cora.iiif.peer.PeerServer;
+import se.uu.ub.cora.iiif.peer.PeerSettings;
+import se.uu.ub.cora.iiif.spies.IiifAdapterSpy;
+
+public class PeerIiifAdapterTest {
+	private static final String SELF = "http://node0:8091/";
+	private static final String PEER_1 = "http://node1:8091/";
+	private static final String PEER_2 = "http://node2:8091/";
+	private static final List<String> NODES = List.of(SELF, PEER_1, PEER_2);
+	private static final Duration BYPASS_TIME = Duration.ofSeconds(10);
+	private static final String SECRET = "someSecret";
+	private IiifAdapterSpy iiifAdapter;
+	private IiifAdapterSpy peer1;
+	private IiifAdapterSpy peer2;
+	private PeerSettings settings;
+	private AtomicLong nanoTime;
+	private PeerIiifAdapter adapter;
+	private List<PeerServer> peerServers;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		iiifAdapter = new IiifAdapterSpy();
+		peer1 = new IiifAdapterSpy();
+		peer2 = new IiifAdapterSpy();
+		settings = new PeerSettings(NODES, SELF, Duration.ofMillis(500), BYPASS_TIME, SECRET);
+		nanoTime = new AtomicLong(1000);
+		adapter = new PeerIiifAdapter(iiifAdapter, Map.of(PEER_1, peer1, PEER_2, peer2),
+				settings, null, nanoTime::get);
+		peerServers = new ArrayList<>();
+	}
+
+	@AfterMethod
+	private void afterMethod() {
+		for (PeerServer peerServer : peerServers) {
+			peerServer.close();
+		}
+	}
+
+	private String tileOwnedBy(String node) {
+		PeerRing ring = new PeerRing(NODES);
+		for (int i = 0;; i++) {
+			String uri = "someId/" + i * 256 + ",0,256,256/256,/0/default.jpg";
+			if (ring.ownerOf(uri).equals(node)) {
+				return uri;
+			}
+		}
+	}
+
+	private IiifParameters get(String uri, Map<String, String> headers) {
+		return new IiifParameters(uri, "GET", headers);
+	}
+
+	private IiifParameters getCalledParameters(IiifAdapterSpy spy) {
+		return (IiifParameters) spy.MCR.getValueForMethodNameAndCallNumberAndParameterName(
+				"callIiifServer", 0, "iiifParameters");
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		PeerServer peerServer = createPeerServer(0);
+		adapter = new PeerIiifAdapter(iiifAdapter, Map.of(PEER_1, peer1), settings, peerServer);
+
+		assertSame(adapter.onlyForTestGetIiifAdapter(), iiifAdapter);
+		assertEquals(adapter.onlyForTestGetPeerAdapters(), Map.of(PEER_1, peer1));
+		assertSame(adapter.getSettings(), settings);
+		assertSame(adapter.getPeerServer(), peerServer);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "self must be one of the nodes")
+	public void testSelfMustBeANode() throws Exception {
+		new PeerSettings(List.of(PEER_1, PEER_2), SELF, Duration.ofMillis(500), BYPASS_TIME,
+				SECRET);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "responseTimeout must be positive")
+	public void testResponseTimeoutMustBePositive() throws Exception {
+		new PeerSettings(NODES, SELF, Duration.ZERO, BYPASS_TIME, SECRET);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "bypassTime must not be negative")
+	public void testBypassTimeMustNotBeNegative() throws Exception {
+		new PeerSettings(NODES, SELF, Duration.ofMillis(500), Duration.ofSeconds(-1), SECRET);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "secret must not be blank")
+	public void testSecretMustNotBeBlank() throws Exception {
+		new PeerSettings(NODES, SELF, Duration.ofMillis(500), BYPASS_TIME, " ");
+	}
+
+	@Test
+	public void testSecretIsLeftOutOfToString() throws Exception {
+		assertFalse(settings.toString().contains(SECRET));
+	}
+
+	@Test
+	public void testTileOwnedBySelfGoesToDecoratedAdapter() throws Exception {
+		IiifParameters parameters = get(tileOwnedBy(SELF), Map.of());
+
+		IiifAdapterResponse response = adapter.callIiifServer(parameters);
+
+		iiifAdapter.MCR.assertParameters("callIiifServer", 0, parameters);
+		iiifAdapter.MCR.assertReturn("callIiifServer", 0, response);
+		peer1.MCR.assertMethodNotCalled("callIiifServer");
+		peer2.MCR.assertMethodNotCalled("callIiifServer");
+		assertEquals(adapter.getOwnedCalls(), 1);
+		assertEquals(adapter.getPeerCalls(), 0);
+	}
+
+	@Test
+	public void testTileOwnedByPeerGoesToPeer() throws Exception {
+		String uri = tileOwnedBy(PEER_1);
+
+		IiifAdapterResponse response = adapter.callIiifServer(get(uri,
+				Map.of("Accept", "image/webp", "Range", "bytes=0-9", "Cookie", "someSession")));
+
+		peer1.MCR.assertReturn("callIiifServer", 0, response);
+		IiifParameters peerRequest = getCalledParameters(peer1);
+		assertEquals(peerRequest.uri(), uri);
+		assertEquals(peerRequest.method(), "GET");
+		assertEquals(peerRequest.headersMap(), Map.of("Accept", "image/webp", "Range",
+				"bytes=0-9", PeerServer.PEER_HEADER, SECRET));
+		iiifAdapter.MCR.assertMethodNotCalled("callIiifServer");
+		peer2.MCR.assertMethodNotCalled("callIiifServer");
+		assertEquals(adapter.getOwnedCalls(), 0);
+		assertEquals(adapter.getPeerCalls(), 1);
+	}
+
+	@Test
+	public void testHeadOfTileOwnedByPeerGoesToPeer() throws Exception {
+		adapter.callIiifServer(new IiifParameters(tileOwnedBy(PEER_2), "HEAD", Map.of()));
+
+		assertEquals(getCalledParameters(peer2).method(), "HEAD");
+		iiifAdapter.MCR.assertMethodNotCalled("callIiifServer");
+	}
+
+	@Test
+	public void testOwnerIsChosenFromNormalizedUri() throws Exception {
+		String uri = tileOwnedBy(PEER_1);
+
+		adapter.callIiifServer(get("/" + uri.replace("/", "//"), Map.of()));
+
+		peer1.MCR.assertMethodWasCalled("callIiifServer");
+	}
+
+	@Test
+	public void testInfoJsonGoesToDecoratedAdapter() throws Exception {
+		for (int i = 0; i < 20; i++) {
+			adapter.callIiifServer(get("someId" + i + "/info.json", Map.of()));
+		}
+
+		iiifAdapter.MCR.assertNumberOfCallsToMethod("callIiifServer", 20);
+		peer1.MCR.assertMethodNotCalled("callIiifServer");
+		peer2.MCR.assertMethodNotCalled("callIiifServer");
+	}
+
+	@Test
+	public void testRequestsPeersDoNotServeGoToDecoratedAdapter() throws Exception {
+		adapter.callIiifServer(get(tileOwnedBy(PEER_1) + "?callback=x", Map.of()));
+		adapter.callIiifServer(get("admin/status", Map.of()));
+
+		iiifAdapter.MCR.assertNumberOfCallsToMethod("callIiifServer", 2);
+		peer1.MCR.assertMethodNotCalled("callIiifServer");
+		peer2.MCR.assertMethodNotCalled("callIiifServer");
+	}
+
+	@Test
+	public void testOtherMethodsGoToDecoratedAdapter() throws Exception {
+		IiifParameters parameters = new IiifParameters(tileOwnedBy(PEER_1), "POST", Map.of());
+
+		adapter.callIiifServer(parameters);
+
+		iiifAdapter.MCR.assertParameters("callIiifServer", 0, parameters);
+		peer1.MCR.assertMethodNotCalled("callIiifServer");
+	}
+
+	@Test
+	public void testRequestFromPeerGoesToDecoratedAdapterWithoutPeerHeader() throws Exception {
+		String uri = tileOwnedBy(PEER_1);
+
+		adapter.callIiifServer(
+				get(uri, Map.of("x-cora-iiif-peer", "1", "Range", "bytes=0-9")));
+
+		IiifParameters parameters = getCalledParameters(iiifAdapter);
+		assertEquals(parameters.uri(), uri);
+		assertEquals(parameters.headersMap(), Map.of("Range", "bytes=0-9"));
+		peer1.MCR.assertMethodNotCalled("callIiifServer");
+		assertEquals(adapter.getOwnedCalls(), 0);
+	}
+
+	@Test
+	public void testFailingPeerIsBypassed() throws Exception {
+		peer1.MRV.setAlwaysThrowException("callIiifServer", new RuntimeException("timeout"));
+		IiifParameters parameters = get(tileOwnedBy(PEER_1), Map.of());
+
+		IiifAdapterResponse response = adapter.callIiifServer(parameters);
+
+		iiifAdapter.MCR.assertParameters("callIiifServer", 0, parameters);
+		iiifAdapter.MCR.assertReturn("callIiifServer", 0, response);
+		assertEquals(adapter.getPeerCalls(), 1);
+		assertEquals(adapter.getFailedPeerCalls(), 1);
+
+		callTimes(parameters, PeerIiifAdapter.MAX_CONSECUTIVE_FAILURES - 1);
+		nanoTime.addAndGet(BYPASS_TIME.toNanos() - 1);
+		adapter.callIiifServer(parameters);
+
+		peer1.MCR.assertNumberOfCallsToMethod("callIiifServer", 3);
+		iiifAdapter.MCR.assertNumberOfCallsToMethod("callIiifServer", 4);
+		assertEquals(adapter.getBypassedCalls(), 1);
+
+		nanoTime.incrementAndGet();
+		adapter.callIiifServer(parameters);
+
+		peer1.MCR.assertNumberOfCallsToMethod("callIiifServer", 4);
+		assertEquals(adapter.getPeerCalls(), 4);
+	}
+
+	private void callTimes(IiifParameters parameters, int times) {
+		for (int i = 0; i < times; i++) {
+			adapter.callIiifServer(parameters);
+		}
+	}
+
+	@Test
+	public void testSingleFailureDoesNotBypassPeer() throws Exception {
+		answerInTurn(peer1, true, false);
+		IiifParameters parameters = get(tileOwnedBy(PEER_1), Map.of());
+
+		adapter.callIiifServer(parameters);
+		IiifAdapterResponse response = adapter.callIiifServer(parameters);
+
+		assertEquals(response.status(), 200);
+		peer1.MCR.assertNumberOfCallsToMethod("callIiifServer", 2);
+		assertEquals(adapter.getFailedPeerCalls(), 1);
+		assertEquals(adapter.getBypassedCalls(), 0);
+	}
+
+	private void answerInTurn(IiifAdapterSpy peer, boolean... failures) {
+		AtomicInteger calls = new AtomicInteger();
+		peer.MRV.setDefaultReturnValuesSupplier("callIiifServer", () -> {
+			if (failures[calls.getAndIncrement()]) {
+				throw new RuntimeException("timeout");
+			}
+			return IiifAdapterSpy.createResponse(200, "someBody");
+		});
+	}
+
+	@Test
+	public void testSuccessfulCallResetsFailures() throws Exception {
+		answerInTurn(peer1, true, true, false, true, true, false);
+		IiifParameters parameters = get(tileOwnedBy(PEER_1), Map.of());
+
+		callTimes(parameters, 6);
+
+		peer1.MCR.assertNumberOfCallsToMethod("callIiifServer", 6);
+		assertEquals(adapter.getFailedPeerCalls(), 4);
+		assertEquals(adapter.getBypassedCalls(), 0);
+	}
+
+	@Test
+	public void testOnlyTheFailingPeerIsBypassed() throws Exception {
+		peer1.MRV.setAlwaysThrowException("callIiifServer", new RuntimeException("timeout"));
+		callTimes(get(tileOwnedBy(PEER_1), Map.of()), PeerIiifAdapter.MAX_CONSECUTIVE_FAILURES);
+
+		adapter.callIiifServer(get(tileOwnedBy(PEER_2), Map.of()));
+
+		peer2.MCR.assertNumberOfCallsToMethod("callIiifServer", 1);
+		assertEquals(adapter.getBypassedCalls(), 0);
+	}
+
+	@Test
+	public void testPeerAnsweringUnavailableIsBypassed() throws Exception {
+		AtomicBoolean closed = new AtomicBoolean();
+		peer1.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> new IiifAdapterResponse(503, Map.of(),
+						new ByteArrayInputStream("busy".getBytes(StandardCharsets.UTF_8)) {
+							@Override
+							public void close() {
+								closed.set(true);
+							}
+						}));
+		IiifParameters parameters = get(tileOwnedBy(PEER_1), Map.of());
+
+		IiifAdapterResponse response = adapter.callIiifServer(parameters);
+
+		iiifAdapter.MCR.assertReturn("callIiifServer", 0, response);
+		assertEquals(closed.get(), true);
+		assertEquals(adapter.getFailedPeerCalls(), 1);
+
+		callTimes(parameters, PeerIiifAdapter.MAX_CONSECUTIVE_FAILURES);
+
+		assertEquals(adapter.getBypassedCalls(), 1);
+	}
+
+	@Test
+	public void testPeerAnsweringNotFoundIsNotBypassed() throws Exception {
+		peer1.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> IiifAdapterSpy.createResponse(404, "not found"));
+		IiifParameters parameters = get(tileOwnedBy(PEER_1), Map.of());
+
+		IiifAdapterResponse response = adapter.callIiifServer(parameters);
+
+		assertEquals(response.status(), 404);
+		iiifAdapter.MCR.assertMethodNotCalled("callIiifServer");
+		assertEquals(adapter.getFailedPeerCalls(), 0);
+	}
+
+	@Test
+	public void testMissingPeerAdapterGoesToDecoratedAdapter() throws Exception {
+		adapter = new PeerIiifAdapter(iiifAdapter, Map.of(PEER_1, peer1), settings, null);
+
+		adapter.callIiifServer(get(tileOwnedBy(PEER_2), Map.of()));
+
+		iiifAdapter.MCR.assertMethodWasCalled("callIiifServer");
+		assertEquals(adapter.getOwnedCalls(), 1);
+	}
+
+	@Test
+	public void testClusterOfNodesOnLoopback() throws Exception {
+		List<String> nodes = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			int port = findFreePort();
+			createPeerServer(port);
+			nodes.add("http://127.0.0.1:" + port + "/");
+		}
+		List<IiifAdapterSpy> imageServers = new ArrayList<>();
+		List<PeerIiifAdapter> adapters = new ArrayList<>();
+		HttpClientPool pool = new HttpClientPool(
+				new PoolSettings(4, Duration.ofMillis(500), Duration.ofSeconds(1)));
+		for (int i = 0; i < 3; i++) {
+			IiifAdapterSpy imageServer = new IiifAdapterSpy();
+			PeerSettings nodeSettings = new PeerSettings(nodes, nodes.get(i),
+					Duration.ofSeconds(2), BYPASS_TIME, SECRET);
+			PeerIiifAdapter node = new PeerIiifAdapter(imageServer,
+					createPeerAdapters(nodes, nodes.get(i), pool), nodeSettings,
+					peerServers.get(i));
+			peerServers.get(i).serve(node);
+			imageServers.add(imageServer);
+			adapters.add(node);
+		}
+		String tile = "someId/0,0,256,256/256,/0/default.jpg";
+		int owner = nodes.indexOf(new PeerRing(nodes).ownerOf(tile));
+
+		for (PeerIiifAdapter node : adapters) {
+			IiifAdapterResponse response = node.callIiifServer(get(tile, Map.of()));
+			assertEquals(response.status(), 200);
+			assertEquals(new String(response.body().readAllBytes(), StandardCharsets.UTF_8),
+					"someBody");
+		}
+
+		for (int i = 0; i < 3; i++) {
+			imageServers.get(i).MCR.assertNumberOfCallsToMethod("callIiifServer",
+					i == owner ? 3 : 0);
+		}
+		assertEquals(peerServers.get(owner).getServedRequests(), 2);
+
+		peerServers.get(owner).close();
+		int other = (owner + 1) % 3;
+		IiifAdapterResponse response = adapters.get(other).callIiifServer(get(tile, Map.of()));
+
+		assertEquals(response.status(), 200);
+		imageServers.get(other).MCR.assertNumberOfCallsToMethod("callIiifServer", 1);
+		assertEquals(adapters.get(other).getFailedPeerCalls(), 1);
+	}
+
+	private PeerServer createPeerServer(int port) throws Exception {
+		PeerServer peerServer = new PeerServer(
+				new InetSocketAddress(InetAddress.getLoopbackAddress(), port), SECRET, 3);
+		peerServers.add(peerServer);
+		return peerServer;
+	}
+
+	private int findFreePort() throws IOException {
+		try (ServerSocket serverSocket = new ServerSocket(0)) {
+			return serverSocket.getLocalPort();
+		}
+	}
+
+	private Map<String, IiifAdapter> createPeerAdapters(List<String> nodes, String self,
+			HttpClientPool pool) {
+		Map<String, IiifAdapter> peerAdapters = new HashMap<>();
+		for (String node : nodes) {
+			if (!node.equals(self)) {
+				peerAdapters.put(node,
+						new PooledIiifAdapter(node, pool, Duration.ofSeconds(2)));
+			}
+		}
+		return peerAdapters;
+	}
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.binary.BinaryException;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.http.HttpClientPool;
+import se.uu.ub.cora.iiif.http.PoolSettings;
+import se.uu.ub.cora.iiif.standin.ImageServerStandIn;
+import se.uu.ub.cora.iiif.standin.ImageServerStandIn.Request;
+import se.uu.ub.cora.iiif.standin.ImageServerStandIn.Response;
+
+public class PooledIiifAdapterTest {
+	private static final String SOME_URI = "someId/full/263,/0/default.jpg";
+	private static final long MB = 1024L * 1024;
+	private static final long LARGE_BODY_SIZE = 64 * MB;
+	private static final int STREAMED_PART_SIZE = 64 * 1024;
+	private ImageServerStandIn imageServer;
+	private HttpClientPool httpClientPool;
+	private PooledIiifAdapter adapter;
+	private Map<String, String> headersMap;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		imageServer = ImageServerStandIn.start(request -> Response.withBody(200,
+				Map.of("Content-Type", "image/jpeg"),
+				("image for " + request.path()).getBytes(StandardCharsets.UTF_8)));
+		httpClientPool = new HttpClientPool(
+				new PoolSettings(4, Duration.ofSeconds(5), Duration.ofSeconds(5)));
+		adapter = new PooledIiifAdapter(imageServer.getBaseUrl() + "iiif/", httpClientPool,
+				Duration.ofSeconds(5));
+		headersMap = new LinkedHashMap<>();
+	}
+
+	@AfterMethod
+	private void afterMethod() {
+		imageServer.close();
+	}
+
+	@Test
+	public void testRequestImage_OK() throws Exception {
+		headersMap.put("someHeader", "someValue1, someValue2");
+
+		IiifAdapterResponse response = adapter
+				.callIiifServer(new IiifParameters(SOME_URI, "GET", headersMap));
+
+		assertEquals(response.status(), 200);
+		assertEquals(response.headers().get("content-type"), "image/jpeg");
+		assertEquals(readBody(response.body()), "image for /iiif/" + SOME_URI);
+		Request request = imageServer.getRequests().get(0);
+		assertEquals(request.method(), "GET");
+		assertEquals(request.header("someHeader"), "someValue1, someValue2");
+	}
+
+	private String readBody(InputStream body) throws IOException {
+		try (body) {
+			return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	@Test
+	public void testHeadersManagedByConnectionAreNotForwarded() throws Exception {
+		headersMap.put("Host", "some.public.host");
+		headersMap.put("Connection", "close");
+		headersMap.put("someHeader", "someValue");
+
+		IiifAdapterResponse response = adapter
+				.callIiifServer(new IiifParameters(SOME_URI, "GET", headersMap));
+
+		assertEquals(response.status(), 200);
+		Request request = imageServer.getRequests().get(0);
+		assertEquals(request.header("someHeader"), "someValue");
+		assertTrue(request.header("Host").startsWith("127.0.0.1:"));
+	}
+
+	@Test
+	public void testRequestImage_ResponseStatusNotFound() throws Exception {
+		imageServer.close();
+		imageServer = ImageServerStandIn
+				.start(request -> Response.withBody(404, "upstream not found"));
+		adapter = new PooledIiifAdapter(imageServer.getBaseUrl(), httpClientPool,
+				Duration.ofSeconds(5));
+
+		IiifAdapterResponse response = adapter
+				.callIiifServer(new IiifParameters(SOME_URI, "GET", headersMap));
+
+		assertEquals(response.status(), 404);
+		assertEquals(readBody(response.body()), "Requested identifier could not be found.");
+	}
+
+	@Test
+	public void testConnectionIsKeptAliveBetweenRequests() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			IiifAdapterResponse response = adapter
+					.callIiifServer(new IiifParameters(SOME_URI, "GET", headersMap));
+			readBody(response.body());
+		}
+
+		assertEquals(imageServer.getConnectionsAccepted(), 1);
+		assertEquals(httpClientPool.getMetrics().leasesGranted(), 10);
+		assertEquals(httpClientPool.getMetrics().leased(), 0);
+	}
+
+	@Test
+	public void testNotFoundDoesNotCloseConnection() throws Exception {
+		imageServer.close();
+		imageServer = ImageServerStandIn.start(request -> Response.withBody(404, "not found"));
+		adapter = new PooledIiifAdapter(imageServer.getBaseUrl(), httpClientPool,
+				Duration.ofSeconds(5));
+
+		adapter.callIiifServer(new IiifParameters(SOME_URI, "GET", headersMap));
+		adapter.callIiifServer(new IiifParameters(SOME_URI, "GET", headersMap));
+
+		assertEquals(imageServer.getConnectionsAccepted(), 1);
+		assertEquals(httpClientPool.getMetrics().leased(), 0);
+	}
+
+	@Test
+	public void testRequestImage_UnexpectedException() throws Exception {
+		adapter = new PooledIiifAdapter("http://127.0.0.1:1/", httpClientPool,
+				Duration.ofSeconds(5));
+
+		try {
+			adapter.callIiifServer(new IiifParameters(SOME_URI, "GET", headersMap));
+			fail("It should throw an exception");
+		} catch (Exception e) {
+			assertTrue(e instanceof BinaryException);
+			assertEquals(e.getMessage(),
+					"Error while calling iiifServer using method: GET, and URI: " + SOME_URI);
+			assertEquals(httpClientPool.getMetrics().leased(), 0);
+		}
+	}
+
+	@Test
+	public void testCallIiifServerAsync() throws Exception {
+		CompletableFuture<IiifAdapterResponse> response = adapter
+				.callIiifServerAsync(new IiifParameters(SOME_URI, "GET", headersMap));
+
+		IiifAdapterResponse iiifResponse = response.get(5, TimeUnit.SECONDS);
+		assertEquals(iiifResponse.status(), 200);
+		assertEquals(readBody(iiifResponse.body()), "image for /iiif/" + SOME_URI);
+	}
+
+	@Test
+	public void testConcurrentAsyncCallsFromOneThread() throws Exception {
+		imageServer.close();
+		CountDownLatch allArrived = new CountDownLatch(4);
+		imageServer = ImageServerStandIn.start(request -> {
+			allArrived.countDown();
+			allArrived.await(5, TimeUnit.SECONDS);
+			return Response.withBody(200, "someTile");
+		});
+		adapter = new PooledIiifAdapter(imageServer.getBaseUrl(), httpClientPool,
+				Duration.ofSeconds(5));
+		List<CompletableFuture<IiifAdapterResponse>> responses = new ArrayList<>();
+
+		for (int i = 0; i < 4; i++) {
+			responses.add(adapter
+					.callIiifServerAsync(new IiifParameters(SOME_URI, "GET", headersMap)));
+		}
+
+		for (CompletableFuture<IiifAdapterResponse> response : responses) {
+			assertEquals(readBody(response.get(5, TimeUnit.SECONDS).body()), "someTile");
+		}
+		assertEquals(imageServer.getMaxConcurrentRequests(), 4);
+	}
+
+	@Test
+	public void testAsyncCallFailsWithBinaryException() throws Exception {
+		adapter = new PooledIiifAdapter("http://127.0.0.1:1/", httpClientPool,
+				Duration.ofSeconds(5));
+
+		CompletableFuture<IiifAdapterResponse> response = adapter
+				.callIiifServerAsync(new IiifParameters(SOME_URI, "GET", headersMap));
+
+		try {
+			response.get(5, TimeUnit.SECONDS);
+			fail("It should throw an exception");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof BinaryException);
+			assertEquals(e.getCause().getMessage(),
+					"Error while calling iiifServer using method: GET, and URI: " + SOME_URI);
+		}
+	}
+
+	@Test
+	public void testResponseTimeout() throws Exception {
+		imageServer.close();
+		CountDownLatch releaseResponse = new CountDownLatch(1);
+		imageServer = ImageServerStandIn.start(request -> {
+			releaseResponse.await(5, TimeUnit.SECONDS);
+			return Response.withBody(200, "tooLate");
+		});
+		adapter = new PooledIiifAdapter(imageServer.getBaseUrl(), httpClientPool,
+				Duration.ofMillis(100));
+
+		try {
+			adapter.callIiifServer(new IiifParameters(SOME_URI, "GET", headersMap));
+			fail("It should throw an exception");
+		} catch (BinaryException e) {
+			assertTrue(e.getCause().getCause() instanceof HttpTimeoutException);
+			assertEquals(httpClientPool.getMetrics().leased(), 0);
+		} finally {
+			releaseResponse.countDown();
+		}
+	}
+
+	@Test
+	public void testCancelledAsyncCallReleasesConnection() throws Exception {
+		imageServer.close();
+		CountDownLatch requestArrived = new CountDownLatch(1);
+		CountDownLatch releaseResponse = new CountDownLatch(1);
+		imageServer = ImageServerStandIn.start(request -> {
+			requestArrived.countDown();
+			releaseResponse.await(5, TimeUnit.SECONDS);
+			return Response.withBody(200, "tooLate");
+		});
+		adapter = new PooledIiifAdapter(imageServer.getBaseUrl(), httpClientPool,
+				Duration.ofSeconds(5));
+		CompletableFuture<IiifAdapterResponse> response = adapter
+				.callIiifServerAsync(new IiifParameters(SOME_URI, "GET", headersMap));
+		assertTrue(requestArrived.await(5, TimeUnit.SECONDS));
+
+		response.cancel(true);
+
+		waitUntil(() -> httpClientPool.getMetrics().leased() == 0);
+		releaseResponse.countDown();
+		assertEquals(httpClientPool.getMetrics().leased(), 0);
+	}
+
+	private void waitUntil(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+	}
+
+	@Test
+	public void testBodyIsStreamedBeforeServerHasWrittenIt() throws Exception {
+		imageServer.close();
+		CountDownLatch releaseRest = new CountDownLatch(1);
+		imageServer = ImageServerStandIn.start(request -> new Response(200, Map.of(),
+				2 * STREAMED_PART_SIZE, outputStream -> {
+					outputStream.write(new byte[STREAMED_PART_SIZE]);
+					outputStream.flush();
+					awaitUninterruptibly(releaseRest);
+					outputStream.write(new byte[STREAMED_PART_SIZE]);
+				}));
+		adapter = new PooledIiifAdapter(imageServer.getBaseUrl(), httpClientPool,
+				Duration.ofSeconds(5));
+
+		IiifAdapterResponse response = adapter.callIiifServer(
+				new IiifParameters("someId/full/max/0/default.jpg", "GET", headersMap));
+		try (InputStream body = response.body()) {
+			assertEquals(body.readNBytes(STREAMED_PART_SIZE).length, STREAMED_PART_SIZE);
+			assertEquals(imageServer.getBodyBytesWritten(), STREAMED_PART_SIZE);
+
+			releaseRest.countDown();
+
+			assertEquals(body.transferTo(OutputStream.nullOutputStream()), STREAMED_PART_SIZE);
+		} finally {
+			releaseRest.countDown();
+		}
+	}
+
+	private static void awaitUninterruptibly(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Test
+	public void testSlowClientHoldsBackImageServer() throws Exception {
+		imageServer.close();
+		imageServer = ImageServerStandIn
+				.start(request -> Response.withGeneratedBody(200, LARGE_BODY_SIZE));
+		adapter = new PooledIiifAdapter(imageServer.getBaseUrl(), httpClientPool,
+				Duration.ofSeconds(5));
+		IiifAdapterResponse response = adapter.callIiifServer(
+				new IiifParameters("someId/full/max/0/default.jpg", "GET", headersMap));
+		InputStream body = response.body();
+
+		body.readNBytes(16 * 1024);
+		waitUntilServerStopsWriting();
+
+		assertTrue(imageServer.getBodyBytesWritten() < LARGE_BODY_SIZE / 2,
+				"bytes written by server: " + imageServer.getBodyBytesWritten());
+		body.close();
+	}
+
+	private void waitUntilServerStopsWriting() throws InterruptedException {
+		long written = -1;
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (written != imageServer.getBodyBytesWritten() && System.nanoTime() < deadline) {
+			written = imageServer.getBodyBytesWritten();
+			Thread.sleep(20);
+		}
+	}
+
+	@Test
+	public void testOnlyForTest() throws Exception {
+		assertEquals(adapter.onlyForTestGetIiifServerUrl(), imageServer.getBaseUrl() + "iiif/");
+		assertSame(adapter.onlyForTestGetHttpClientPool(), httpClientPool);
+		assertEquals(adapter.onlyForTestGetResponseTimeout(), Duration.ofSeconds(5));
+	}
+}
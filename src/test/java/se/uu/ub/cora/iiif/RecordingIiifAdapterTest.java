@@ -0,0 +1,186 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.binary.BinaryException;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.recording.CallRecorder;
+import se.uu.ub.cora.iiif.recording.CallRecordingReader;
+import se.uu.ub.cora.iiif.recording.RecordedCall;
+import se.uu.ub.cora.iiif.spies.IiifAdapterSpy;
+import se.uu.ub.cora.logger.LoggerProvider;
+import se.uu.ub.cora.logger.spies.LoggerFactorySpy;
+
+public class RecordingIiifAdapterTest {
+	private static final String TILE_URI = "someId/0,0,512,512/512,/0/default.jpg";
+	private Path recordingFile;
+	private CallRecorder callRecorder;
+	private IiifAdapterSpy iiifAdapterSpy;
+	private RecordingIiifAdapter adapter;
+
+	@BeforeMethod
+	private void beforeMethod() throws Exception {
+		LoggerProvider.setLoggerFactory(new LoggerFactorySpy());
+		recordingFile = Files.createTempFile("calls", ".rec");
+		callRecorder = CallRecorder.open(recordingFile, 1024 * 1024);
+		iiifAdapterSpy = new IiifAdapterSpy();
+		adapter = new RecordingIiifAdapter(iiifAdapterSpy, callRecorder,
+				List.of("Accept", "Range"));
+	}
+
+	@AfterMethod
+	private void afterMethod() throws Exception {
+		callRecorder.close();
+		Files.deleteIfExists(recordingFile);
+	}
+
+	private List<RecordedCall> readRecording() throws IOException {
+		callRecorder.close();
+		List<RecordedCall> calls = new ArrayList<>();
+		try (CallRecordingReader reader = CallRecordingReader.open(recordingFile)) {
+			Optional<RecordedCall> call;
+			while ((call = reader.next()).isPresent()) {
+				calls.add(call.get());
+			}
+		}
+		return calls;
+	}
+
+	private void readBody(InputStream body) throws IOException {
+		try (body) {
+			body.transferTo(OutputStream.nullOutputStream());
+		}
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		assertSame(adapter.onlyForTestGetIiifAdapter(), iiifAdapterSpy);
+		assertSame(adapter.getCallRecorder(), callRecorder);
+		assertEquals(adapter.onlyForTestGetRecordedHeaders(), List.of("Accept", "Range"));
+	}
+
+	@Test
+	public void testCallIsPassedOn() throws Exception {
+		IiifParameters get = new IiifParameters(TILE_URI, "GET", Map.of());
+
+		IiifAdapterResponse response = adapter.callIiifServer(get);
+
+		iiifAdapterSpy.MCR.assertParameters("callIiifServer", 0, get);
+		IiifAdapterResponse spyResponse = (IiifAdapterResponse) iiifAdapterSpy.MCR
+				.getReturnValue("callIiifServer", 0);
+		assertEquals(response.status(), spyResponse.status());
+		assertSame(response.headers(), spyResponse.headers());
+		assertEquals(new String(response.body().readAllBytes()), "someBody");
+	}
+
+	@Test
+	public void testCallIsRecordedWhenBodyIsRead() throws Exception {
+		IiifAdapterResponse response = adapter.callIiifServer(new IiifParameters(TILE_URI, "GET",
+				Map.of("accept", "image/webp", "Cookie", "secret", "Range", "bytes=0-3")));
+		assertEquals(callRecorder.getRecordedCalls(), 0);
+
+		readBody(response.body());
+
+		List<RecordedCall> calls = readRecording();
+		assertEquals(calls.size(), 1);
+		RecordedCall call = calls.get(0);
+		assertEquals(call.method(), "GET");
+		assertEquals(call.uri(), TILE_URI);
+		assertEquals(call.headers(), Map.of("Accept", "image/webp", "Range", "bytes=0-3"));
+		assertEquals(call.status(), 200);
+		assertEquals(call.bodyBytes(), 8);
+		assertTrue(call.durationMicros() >= 0);
+	}
+
+	@Test
+	public void testStatusIsRecorded() throws Exception {
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> IiifAdapterSpy.createResponse(404, "notFound"));
+
+		readBody(adapter.callIiifServer(new IiifParameters(TILE_URI, "HEAD", Map.of())).body());
+
+		RecordedCall call = readRecording().get(0);
+		assertEquals(call.method(), "HEAD");
+		assertEquals(call.status(), 404);
+	}
+
+	@Test
+	public void testResponseWithoutBodyIsRecordedAtOnce() throws Exception {
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> new IiifAdapterResponse(304, Map.of(), null));
+
+		adapter.callIiifServer(new IiifParameters(TILE_URI, "GET", Map.of()));
+
+		RecordedCall call = readRecording().get(0);
+		assertEquals(call.status(), 304);
+		assertEquals(call.bodyBytes(), 0);
+	}
+
+	@Test
+	public void testFailedCallIsRecorded() throws Exception {
+		BinaryException error = BinaryException.withMessage("someError");
+		iiifAdapterSpy.MRV.setAlwaysThrowException("callIiifServer", error);
+
+		try {
+			adapter.callIiifServer(new IiifParameters(TILE_URI, "GET", Map.of()));
+			fail("It should throw an exception");
+		} catch (BinaryException e) {
+			assertSame(e, error);
+		}
+
+		RecordedCall call = readRecording().get(0);
+		assertEquals(call.status(), RecordedCall.FAILED);
+	}
+
+	@Test
+	public void testCallsAreRecordedInOrderTheyFinish() throws Exception {
+		IiifAdapterResponse first = adapter
+				.callIiifServer(new IiifParameters("first", "GET", Map.of()));
+		IiifAdapterResponse second = adapter
+				.callIiifServer(new IiifParameters("second", "GET", Map.of()));
+
+		readBody(second.body());
+		readBody(first.body());
+
+		List<RecordedCall> calls = readRecording();
+		assertEquals(calls.get(0).uri(), "second");
+		assertEquals(calls.get(1).uri(), "first");
+		assertTrue(calls.get(0).startMicros() >= calls.get(1).startMicros());
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.backend.LocalRejectionException;
+import se.uu.ub.cora.iiif.spies.IiifAdapterSpy;
+
+public class RejectionAnsweringIiifAdapterTest {
+	private IiifAdapterSpy iiifAdapterSpy;
+	private RejectionAnsweringIiifAdapter adapter;
+	private IiifParameters getTile;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		iiifAdapterSpy = new IiifAdapterSpy();
+		adapter = new RejectionAnsweringIiifAdapter(iiifAdapterSpy);
+		getTile = new IiifParameters("someId/0,0,512,512/512,/0/default.jpg", "GET", Map.of());
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		assertSame(adapter.onlyForTestGetIiifAdapter(), iiifAdapterSpy);
+	}
+
+	@Test
+	public void testCallIsPassedOn() throws Exception {
+		IiifAdapterResponse response = adapter.callIiifServer(getTile);
+
+		iiifAdapterSpy.MCR.assertParameters("callIiifServer", 0, getTile);
+		iiifAdapterSpy.MCR.assertReturn("callIiifServer", 0, response);
+	}
+
+	@Test
+	public void testRejectionIsAnsweredWithServiceUnavailable() throws Exception {
+		iiifAdapterSpy.MRV.setAlwaysThrowException("callIiifServer",
+				new LocalRejectionException("Too many requests", 7) {
+					private static final long serialVersionUID = 1L;
+				});
+
+		IiifAdapterResponse response = adapter.callIiifServer(getTile);
+
+		assertEquals(response.status(), 503);
+		assertEquals(response.headers().get("Retry-After"), "7");
+		assertEquals(response.headers().get("Content-Type"), "text/plain; charset=UTF-8");
+		assertEquals(new String(response.body().readAllBytes(), StandardCharsets.UTF_8),
+				"Too many requests");
+	}
+}
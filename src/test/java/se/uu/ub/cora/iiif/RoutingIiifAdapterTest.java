@@ -0,0 +1,296 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.binary.BinaryException;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.backend.Backend;
+import se.uu.ub.cora.iiif.backend.HealthSettings;
+import se.uu.ub.cora.iiif.backend.LocalRejectionException;
+import se.uu.ub.cora.iiif.backend.RendezvousSelector;
+import se.uu.ub.cora.iiif.http.HttpClientPool;
+import se.uu.ub.cora.iiif.http.PoolSettings;
+import se.uu.ub.cora.iiif.spies.IiifAdapterSpy;
+import se.uu.ub.cora.iiif.standin.ImageServerStandIn;
+import se.uu.ub.cora.iiif.standin.ImageServerStandIn.Response;
+
+public class RoutingIiifAdapterTest {
+	private HealthSettings healthSettings;
+	private List<IiifAdapterSpy> iiifAdapterSpies;
+	private List<Backend> backends;
+	private RendezvousSelector selector;
+	private RoutingIiifAdapter adapter;
+	private List<ImageServerStandIn> imageServers;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		healthSettings = new HealthSettings(2, Duration.ofSeconds(30), Duration.ZERO,
+				Duration.ofSeconds(1), "");
+		iiifAdapterSpies = List.of(new IiifAdapterSpy(), new IiifAdapterSpy(),
+				new IiifAdapterSpy());
+		backends = new ArrayList<>();
+		for (int i = 0; i < iiifAdapterSpies.size(); i++) {
+			backends.add(new Backend("http://server" + i + "/", iiifAdapterSpies.get(i),
+					healthSettings));
+		}
+		selector = new RendezvousSelector();
+		adapter = new RoutingIiifAdapter(backends, selector);
+		imageServers = new ArrayList<>();
+	}
+
+	@AfterMethod
+	private void afterMethod() {
+		for (ImageServerStandIn imageServer : imageServers) {
+			imageServer.close();
+		}
+	}
+
+	private IiifParameters createParameters(String identifier) {
+		return new IiifParameters(identifier + "/full/max/0/default.jpg", "GET", Map.of());
+	}
+
+	private int indexOfSelectedBackend(String identifier, List<Backend> candidates) {
+		return backends.indexOf(selector.select(identifier, candidates));
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		assertEquals(adapter.getBackends(), backends);
+		assertSame(adapter.onlyForTestGetSelector(), selector);
+	}
+
+	@Test
+	public void testRequestGoesToSelectedBackend() throws Exception {
+		IiifParameters parameters = createParameters("someId");
+		int selected = indexOfSelectedBackend("someId", backends);
+
+		IiifAdapterResponse response = adapter.callIiifServer(parameters);
+
+		iiifAdapterSpies.get(selected).MCR.assertParameters("callIiifServer", 0, parameters);
+		iiifAdapterSpies.get(selected).MCR.assertReturn("callIiifServer", 0, response);
+		assertEquals(backends.get(selected).getCalls(), 1);
+		assertEquals(backends.get(selected).getOutstandingCalls(), 0);
+	}
+
+	@Test
+	public void testUnavailableBackendIsSkipped() throws Exception {
+		int selected = indexOfSelectedBackend("someId", backends);
+		failBackend(selected);
+		List<Backend> others = new ArrayList<>(backends);
+		others.remove(selected);
+		int next = indexOfSelectedBackend("someId", others);
+
+		adapter.callIiifServer(createParameters("someId"));
+
+		iiifAdapterSpies.get(next).MCR.assertNumberOfCallsToMethod("callIiifServer", 1);
+	}
+
+	private void failBackend(int index) {
+		for (int i = 0; i < healthSettings.failureThreshold(); i++) {
+			backends.get(index).callStarted();
+			backends.get(index).callFailed();
+		}
+	}
+
+	@Test
+	public void testAllBackendsUsedWhenNoneIsAvailable() throws Exception {
+		for (int i = 0; i < backends.size(); i++) {
+			failBackend(i);
+		}
+		int selected = indexOfSelectedBackend("someId", backends);
+
+		adapter.callIiifServer(createParameters("someId"));
+
+		iiifAdapterSpies.get(selected).MCR.assertNumberOfCallsToMethod("callIiifServer", 1);
+		assertEquals(adapter.getCallsWithoutAvailableBackend(), 1);
+	}
+
+	@Test
+	public void testOverloadedResponseCountsAsFailure() throws Exception {
+		int selected = indexOfSelectedBackend("someId", backends);
+		iiifAdapterSpies.get(selected).MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> IiifAdapterSpy.createResponse(503, "busy"));
+
+		adapter.callIiifServer(createParameters("someId"));
+		IiifAdapterResponse response = adapter.callIiifServer(createParameters("someId"));
+
+		assertEquals(response.status(), 503);
+		assertEquals(backends.get(selected).getEjections(), 1);
+	}
+
+	@Test
+	public void testFailedCallIsMadeToAnotherBackend() throws Exception {
+		int selected = indexOfSelectedBackend("someId", backends);
+		iiifAdapterSpies.get(selected).MRV.setAlwaysThrowException("callIiifServer",
+				BinaryException.withMessage("someFailure"));
+
+		IiifAdapterResponse response = adapter.callIiifServer(createParameters("someId"));
+
+		assertEquals(response.status(), 200);
+		assertEquals(adapter.getFailovers(), 1);
+		assertEquals(backends.get(selected).getOutstandingCalls(), 0);
+	}
+
+	@Test
+	public void testFailedNonIdempotentCallIsNotRetried() throws Exception {
+		for (IiifAdapterSpy iiifAdapterSpy : iiifAdapterSpies) {
+			iiifAdapterSpy.MRV.setAlwaysThrowException("callIiifServer",
+					BinaryException.withMessage("someFailure"));
+		}
+
+		try {
+			adapter.callIiifServer(
+					new IiifParameters("someId/full/max/0/default.jpg", "POST", Map.of()));
+			fail("It should throw an exception");
+		} catch (BinaryException e) {
+			assertEquals(e.getMessage(), "someFailure");
+		}
+		assertEquals(adapter.getFailovers(), 0);
+	}
+
+	@Test
+	public void testRejectedCallDoesNotCountAsFailure() throws Exception {
+		int selected = indexOfSelectedBackend("someId", backends);
+		iiifAdapterSpies.get(selected).MRV.setAlwaysThrowException("callIiifServer",
+				new LocalRejectionException("someRejection", 1) {
+					private static final long serialVersionUID = 1L;
+				});
+
+		adapter.callIiifServer(createParameters("someId"));
+		adapter.callIiifServer(createParameters("someId"));
+
+		assertEquals(backends.get(selected).getEjections(), 0);
+		assertTrue(backends.get(selected).isAvailable());
+		assertEquals(backends.get(selected).getOutstandingCalls(), 0);
+	}
+
+	@Test
+	public void testRejectedNonIdempotentCallIsMadeToAnotherBackend() throws Exception {
+		int selected = indexOfSelectedBackend("someId", backends);
+		iiifAdapterSpies.get(selected).MRV.setAlwaysThrowException("callIiifServer",
+				new LocalRejectionException("someRejection", 1) {
+					private static final long serialVersionUID = 1L;
+				});
+
+		IiifAdapterResponse response = adapter.callIiifServer(
+				new IiifParameters("someId/full/max/0/default.jpg", "POST", Map.of()));
+
+		assertEquals(response.status(), 200);
+		assertEquals(adapter.getFailovers(), 1);
+	}
+
+	@Test
+	public void testRejectionIsRethrownWithSingleBackend() throws Exception {
+		LocalRejectionException rejection = new LocalRejectionException("someRejection", 1) {
+			private static final long serialVersionUID = 1L;
+		};
+		iiifAdapterSpies.get(0).MRV.setAlwaysThrowException("callIiifServer", rejection);
+		adapter = new RoutingIiifAdapter(List.of(backends.get(0)), selector);
+
+		try {
+			adapter.callIiifServer(createParameters("someId"));
+			fail("It should throw an exception");
+		} catch (LocalRejectionException e) {
+			assertSame(e, rejection);
+		}
+		assertEquals(adapter.getFailovers(), 0);
+		assertEquals(backends.get(0).getEjections(), 0);
+	}
+
+	@Test
+	public void testAgainstSeveralImageServers() throws Exception {
+		HttpClientPool pool = new HttpClientPool(
+				new PoolSettings(4, Duration.ofSeconds(5), Duration.ofSeconds(5)));
+		List<Backend> serverBackends = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			String name = "server" + i;
+			ImageServerStandIn imageServer = ImageServerStandIn
+					.start(request -> Response.withBody(200, name));
+			imageServers.add(imageServer);
+			serverBackends.add(new Backend(imageServer.getBaseUrl(), new PooledIiifAdapter(
+					imageServer.getBaseUrl(), pool, Duration.ofSeconds(5)), healthSettings));
+		}
+		adapter = new RoutingIiifAdapter(serverBackends, selector);
+
+		Set<String> servedBy = new HashSet<>();
+		for (int i = 0; i < 30; i++) {
+			String first = readBody(adapter.callIiifServer(createParameters("image" + i)));
+			String again = readBody(adapter.callIiifServer(createParameters("image" + i)));
+			assertEquals(again, first);
+			servedBy.add(first);
+		}
+		assertEquals(servedBy, Set.of("server0", "server1", "server2"));
+	}
+
+	@Test
+	public void testFailoverWhenImageServerIsDown() throws Exception {
+		HttpClientPool pool = new HttpClientPool(
+				new PoolSettings(4, Duration.ofSeconds(5), Duration.ofSeconds(5)));
+		List<Backend> serverBackends = new ArrayList<>();
+		for (int i = 0; i < 2; i++) {
+			ImageServerStandIn imageServer = ImageServerStandIn
+					.start(request -> Response.withBody(200, "someBody"));
+			imageServers.add(imageServer);
+			serverBackends.add(new Backend(imageServer.getBaseUrl(), new PooledIiifAdapter(
+					imageServer.getBaseUrl(), pool, Duration.ofSeconds(5)), healthSettings));
+		}
+		adapter = new RoutingIiifAdapter(serverBackends, selector);
+		imageServers.get(0).close();
+
+		for (String identifier : findIdentifiersSelecting(serverBackends, 0, 3)) {
+			IiifAdapterResponse response = adapter.callIiifServer(createParameters(identifier));
+			assertEquals(readBody(response), "someBody");
+		}
+		assertEquals(adapter.getFailovers(), 2);
+		assertEquals(serverBackends.get(0).getEjections(), 1);
+		assertEquals(serverBackends.get(1).getCalls(), 3);
+	}
+
+	private List<String> findIdentifiersSelecting(List<Backend> candidates, int index,
+			int count) {
+		List<String> identifiers = new ArrayList<>();
+		for (int i = 0; identifiers.size() < count; i++) {
+			if (selector.select("image" + i, candidates) == candidates.get(index)) {
+				identifiers.add("image" + i);
+			}
+		}
+		return identifiers;
+	}
+
+	private String readBody(IiifAdapterResponse response) throws Exception {
+		return new String(response.body().readAllBytes());
+	}
+}
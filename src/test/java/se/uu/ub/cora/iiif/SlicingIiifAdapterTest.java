@@ -0,0 +1,232 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.cache.MemoryTileStore;
+import se.uu.ub.cora.iiif.spies.IiifAdapterSpy;
+import se.uu.ub.cora.iiif.spies.SettableClock;
+
+public class SlicingIiifAdapterTest {
+	private static final String FULL_URI = "someId/full/max/0/default.jpg";
+	private static final String BODY = "0123456789abcdefghij";
+	private IiifAdapterSpy iiifAdapterSpy;
+	private SlicingIiifAdapter adapter;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		iiifAdapterSpy = new IiifAdapterSpy();
+		returnFullResponse();
+		adapter = new SlicingIiifAdapter(iiifAdapterSpy);
+	}
+
+	private void returnFullResponse() {
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer", () -> {
+			IiifAdapterResponse response = IiifAdapterSpy.createResponse(200, BODY);
+			response.headers().put("Content-Type", "image/jpeg");
+			response.headers().put("Content-Length", String.valueOf(BODY.length()));
+			response.headers().put("ETag", "\"v1\"");
+			return response;
+		});
+	}
+
+	private IiifParameters getWithHeaders(String... namesAndValues) {
+		Map<String, String> headers = new HashMap<>();
+		for (int i = 0; i < namesAndValues.length; i += 2) {
+			headers.put(namesAndValues[i], namesAndValues[i + 1]);
+		}
+		return new IiifParameters(FULL_URI, "GET", headers);
+	}
+
+	private String readBody(InputStream body) throws IOException {
+		return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		assertSame(adapter.onlyForTestGetIiifAdapter(), iiifAdapterSpy);
+	}
+
+	@Test
+	public void testRangeIsPassedOn() throws Exception {
+		IiifParameters get = getWithHeaders("Range", "bytes=5-9", "If-Range", "\"v1\"");
+
+		adapter.callIiifServer(get);
+
+		iiifAdapterSpy.MCR.assertParameters("callIiifServer", 0, get);
+	}
+
+	@Test
+	public void testFullResponseAdvertisesRanges() throws Exception {
+		IiifAdapterResponse response = adapter.callIiifServer(getWithHeaders());
+
+		assertEquals(response.status(), 200);
+		assertEquals(response.headers().get("Accept-Ranges"), "bytes");
+		assertEquals(response.headers().get("Content-Length"), "20");
+		assertEquals(readBody(response.body()), BODY);
+		assertEquals(adapter.getPartialResponses(), 0);
+	}
+
+	@Test
+	public void testHeadAdvertisesRangesButIsNotSliced() throws Exception {
+		IiifAdapterResponse response = adapter.callIiifServer(
+				new IiifParameters(FULL_URI, "HEAD", Map.of("Range", "bytes=5-9")));
+
+		assertEquals(response.status(), 200);
+		assertEquals(response.headers().get("Accept-Ranges"), "bytes");
+	}
+
+	@Test
+	public void testSingleRange() throws Exception {
+		IiifAdapterResponse response = adapter
+				.callIiifServer(getWithHeaders("Range", "bytes=5-9"));
+
+		assertEquals(response.status(), 206);
+		assertEquals(response.headers().get("Content-Range"), "bytes 5-9/20");
+		assertEquals(response.headers().get("Content-Length"), "5");
+		assertEquals(response.headers().get("Content-Type"), "image/jpeg");
+		assertEquals(response.headers().get("ETag"), "\"v1\"");
+		assertEquals(readBody(response.body()), "56789");
+		assertEquals(adapter.getPartialResponses(), 1);
+	}
+
+	@Test
+	public void testResumeFromOffset() throws Exception {
+		IiifAdapterResponse response = adapter
+				.callIiifServer(getWithHeaders("Range", "bytes=15-", "If-Range", "\"v1\""));
+
+		assertEquals(response.status(), 206);
+		assertEquals(response.headers().get("Content-Range"), "bytes 15-19/20");
+		assertEquals(readBody(response.body()), "fghij");
+	}
+
+	@Test
+	public void testChangedRepresentationIsSentInFull() throws Exception {
+		IiifAdapterResponse response = adapter
+				.callIiifServer(getWithHeaders("Range", "bytes=15-", "If-Range", "\"v0\""));
+
+		assertEquals(response.status(), 200);
+		assertEquals(readBody(response.body()), BODY);
+	}
+
+	@Test
+	public void testMultipleRanges() throws Exception {
+		IiifAdapterResponse response = adapter
+				.callIiifServer(getWithHeaders("Range", "bytes=10-11,0-1"));
+
+		assertEquals(response.status(), 206);
+		String contentType = response.headers().get("Content-Type");
+		assertTrue(contentType.startsWith("multipart/byteranges; boundary="));
+		String boundary = contentType.substring(contentType.indexOf('=') + 1);
+		String body = readBody(response.body());
+		assertEquals(body, "--" + boundary + "\r\nContent-Type: image/jpeg\r\n"
+				+ "Content-Range: bytes 0-1/20\r\n\r\n01\r\n--" + boundary
+				+ "\r\nContent-Type: image/jpeg\r\nContent-Range: bytes 10-11/20\r\n\r\nab\r\n--"
+				+ boundary + "--\r\n");
+		assertEquals(response.headers().get("Content-Length"), String.valueOf(body.length()));
+		assertEquals(response.headers().get("Content-Range"), null);
+	}
+
+	@Test
+	public void testUnsatisfiableRange() throws Exception {
+		IiifAdapterResponse response = adapter
+				.callIiifServer(getWithHeaders("Range", "bytes=20-"));
+
+		assertEquals(response.status(), 416);
+		assertEquals(response.headers(), Map.of("Accept-Ranges", "bytes", "Content-Range",
+				"bytes */20", "Content-Length", "0"));
+		assertEquals(response.body().read(), -1);
+		assertEquals(adapter.getUnsatisfiableResponses(), 1);
+	}
+
+	@Test
+	public void testPartialContentFromImageServerIsPassedOn() throws Exception {
+		IiifAdapterResponse partial = IiifAdapterSpy.createResponse(206, "56789");
+		partial.headers().put("Content-Range", "bytes 5-9/20");
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer", () -> partial);
+
+		IiifAdapterResponse response = adapter
+				.callIiifServer(getWithHeaders("Range", "bytes=5-9"));
+
+		assertSame(response, partial);
+		assertEquals(adapter.getPartialResponses(), 0);
+	}
+
+	@Test
+	public void testUnknownLengthIsSentInFull() throws Exception {
+		IiifAdapterResponse full = IiifAdapterSpy.createResponse(200, BODY);
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer", () -> full);
+
+		IiifAdapterResponse response = adapter
+				.callIiifServer(getWithHeaders("Range", "bytes=5-9"));
+
+		assertSame(response, full);
+	}
+
+	@Test
+	public void testOtherMethodsAreNotTouched() throws Exception {
+		IiifAdapterResponse full = IiifAdapterSpy.createResponse(200, BODY);
+		full.headers().put("Content-Length", "20");
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer", () -> full);
+
+		IiifAdapterResponse response = adapter.callIiifServer(
+				new IiifParameters(FULL_URI, "POST", Map.of("Range", "bytes=5-9")));
+
+		assertSame(response, full);
+	}
+
+	@Test
+	public void testRangesAreSlicedFromCachedRepresentation() throws Exception {
+		SettableClock clock = new SettableClock(Instant.parse("2026-01-01T00:00:00Z"));
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> new IiifAdapterResponse(200, Map.of("ETag", "\"v1\""),
+						new ByteArrayInputStream(BODY.getBytes(StandardCharsets.UTF_8))));
+		CachingIiifAdapter cachingAdapter = new CachingIiifAdapter(iiifAdapterSpy,
+				new MemoryTileStore(10_000, Duration.ofMinutes(5), clock), 100,
+				Duration.ofMinutes(1), clock);
+		SlicingIiifAdapter slicingAdapter = new SlicingIiifAdapter(cachingAdapter);
+		slicingAdapter.callIiifServer(getWithHeaders());
+
+		IiifAdapterResponse first = slicingAdapter
+				.callIiifServer(getWithHeaders("Range", "bytes=0-9"));
+		IiifAdapterResponse rest = slicingAdapter
+				.callIiifServer(getWithHeaders("Range", "bytes=10-", "If-Range", "\"v1\""));
+
+		iiifAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", 1);
+		assertEquals(readBody(first.body()) + readBody(rest.body()), BODY);
+		assertEquals(rest.headers().get("Content-Range"), "bytes 10-19/20");
+	}
+}
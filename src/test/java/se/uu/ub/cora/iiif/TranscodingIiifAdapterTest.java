@@ -0,0 +1,548 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.cache.MemoryTileStore;
+import se.uu.ub.cora.iiif.spies.IiifAdapterSpy;
+import se.uu.ub.cora.iiif.spies.ImageTranscoderSpy;
+import se.uu.ub.cora.iiif.spies.SettableClock;
+import se.uu.ub.cora.iiif.transcode.ImageFormat;
+import se.uu.ub.cora.iiif.transcode.TranscodingSettings;
+
+public class TranscodingIiifAdapterTest {
+	private static final String TILE_URI = "someId/0,0,512,512/512,/0/default.jpg";
+	private static final String SOURCE = "someLargerJpegBody";
+	private static final String BROWSER_ACCEPT = "image/avif,image/webp,image/*,*/*;q=0.8";
+	private IiifAdapterSpy iiifAdapterSpy;
+	private ImageTranscoderSpy transcoderSpy;
+	private ExecutorService executor;
+	private MemoryTileStore variantStore;
+	private SettableClock clock;
+	private TranscodingIiifAdapter adapter;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		iiifAdapterSpy = new IiifAdapterSpy();
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> createSourceResponse(200));
+		transcoderSpy = new ImageTranscoderSpy();
+		executor = Executors.newSingleThreadExecutor();
+		clock = new SettableClock(Instant.parse("2026-01-01T00:00:00Z"));
+		variantStore = new MemoryTileStore(1024 * 1024, Duration.ofHours(1), clock);
+		adapter = createAdapter(Set.of(), 1024);
+	}
+
+	@AfterMethod
+	private void afterMethod() {
+		executor.shutdownNow();
+	}
+
+	private TranscodingIiifAdapter createAdapter(Set<ImageFormat> upstreamFormats,
+			int maxSourceBytes) {
+		return new TranscodingIiifAdapter(iiifAdapterSpy, transcoderSpy, executor, variantStore,
+				new TranscodingSettings(upstreamFormats, maxSourceBytes, Duration.ofSeconds(5),
+						Duration.ofSeconds(60)),
+				clock);
+	}
+
+	private IiifAdapterResponse createSourceResponse(int status) {
+		IiifAdapterResponse response = IiifAdapterSpy.createResponse(status, SOURCE);
+		response.headers().put("Content-Type", "image/jpeg");
+		response.headers().put("Content-Length", String.valueOf(SOURCE.length()));
+		response.headers().put("ETag", "\"v1\"");
+		return response;
+	}
+
+	private IiifParameters get(String uri, String... namesAndValues) {
+		Map<String, String> headers = new HashMap<>();
+		for (int i = 0; i < namesAndValues.length; i += 2) {
+			headers.put(namesAndValues[i], namesAndValues[i + 1]);
+		}
+		return new IiifParameters(uri, "GET", headers);
+	}
+
+	private String readBody(InputStream body) throws IOException {
+		return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+	}
+
+	private void assertTranscoded(int callNumber, ImageFormat format) {
+		byte[] source = (byte[]) transcoderSpy.MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("transcode", callNumber,
+						"source");
+		assertEquals(source, SOURCE.getBytes(StandardCharsets.UTF_8));
+		assertEquals(transcoderSpy.MCR.getValueForMethodNameAndCallNumberAndParameterName(
+				"transcode", callNumber, "format"), format);
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		assertSame(adapter.onlyForTestGetIiifAdapter(), iiifAdapterSpy);
+		assertSame(adapter.onlyForTestGetTranscoder(), transcoderSpy);
+		assertSame(adapter.onlyForTestGetExecutor(), executor);
+		assertSame(adapter.onlyForTestGetVariantStore(), variantStore);
+		assertEquals(adapter.onlyForTestGetSettings().maxSourceBytes(), 1024);
+	}
+
+	@Test
+	public void testHeadIsPassedOn() throws Exception {
+		IiifParameters head = new IiifParameters(TILE_URI, "HEAD",
+				Map.of("Accept", BROWSER_ACCEPT));
+
+		IiifAdapterResponse response = adapter.callIiifServer(head);
+
+		iiifAdapterSpy.MCR.assertParameters("callIiifServer", 0, head);
+		iiifAdapterSpy.MCR.assertReturn("callIiifServer", 0, response);
+		transcoderSpy.MCR.assertMethodNotCalled("transcode");
+	}
+
+	@Test
+	public void testInfoJsonIsPassedOn() throws Exception {
+		IiifParameters get = get("someId/info.json", "Accept", BROWSER_ACCEPT);
+
+		IiifAdapterResponse response = adapter.callIiifServer(get);
+
+		iiifAdapterSpy.MCR.assertReturn("callIiifServer", 0, response);
+		transcoderSpy.MCR.assertMethodNotCalled("transcode");
+	}
+
+	@Test
+	public void testImageThatIsNotJpegOrPngIsPassedOn() throws Exception {
+		IiifParameters get = get("someId/full/max/0/default.gif", "Accept", BROWSER_ACCEPT);
+
+		IiifAdapterResponse response = adapter.callIiifServer(get);
+
+		iiifAdapterSpy.MCR.assertReturn("callIiifServer", 0, response);
+	}
+
+	@Test
+	public void testClientNotAcceptingOtherFormatsGetsSourceWithVary() throws Exception {
+		IiifParameters get = get(TILE_URI, "Accept", "image/jpeg,image/*,*/*");
+
+		IiifAdapterResponse response = adapter.callIiifServer(get);
+
+		iiifAdapterSpy.MCR.assertParameters("callIiifServer", 0, get);
+		assertEquals(response.status(), 200);
+		assertEquals(response.headers().get("Content-Type"), "image/jpeg");
+		assertEquals(response.headers().get("Vary"), "Accept");
+		assertEquals(readBody(response.body()), SOURCE);
+		transcoderSpy.MCR.assertMethodNotCalled("transcode");
+	}
+
+	@Test
+	public void testClientWithoutAcceptGetsSourceWithVary() throws Exception {
+		IiifAdapterResponse response = adapter.callIiifServer(get(TILE_URI));
+
+		assertEquals(response.headers().get("Vary"), "Accept");
+		assertEquals(readBody(response.body()), SOURCE);
+	}
+
+	@Test
+	public void testExistingVaryIsKept() throws Exception {
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer", () -> {
+			IiifAdapterResponse response = createSourceResponse(200);
+			response.headers().put("vary", "Origin");
+			return response;
+		});
+
+		IiifAdapterResponse response = adapter.callIiifServer(get(TILE_URI));
+
+		assertEquals(response.headers().get("Vary"), "Origin, Accept");
+		assertFalse(response.headers().containsKey("vary"));
+	}
+
+	@Test
+	public void testTranscodesToPreferredFormat() throws Exception {
+		IiifAdapterResponse response = adapter
+				.callIiifServer(get(TILE_URI, "Accept", BROWSER_ACCEPT));
+
+		assertTranscoded(0, ImageFormat.AVIF);
+		assertEquals(response.status(), 200);
+		assertEquals(response.headers().get("Content-Type"), "image/avif");
+		assertEquals(response.headers().get("Content-Length"), "5");
+		assertEquals(response.headers().get("ETag"), "\"v1.avif\"");
+		assertEquals(response.headers().get("Vary"), "Accept");
+		assertFalse(response.headers().containsKey("Source-Length"));
+		assertEquals(readBody(response.body()), "small");
+		assertEquals(adapter.getTranscodings(), 1);
+		assertEquals(adapter.getBytesSaved(), SOURCE.length() - 5);
+	}
+
+	@Test
+	public void testQualityValuesChooseFormat() throws Exception {
+		adapter.callIiifServer(get(TILE_URI, "Accept", "image/avif;q=0.5,image/webp"));
+
+		assertTranscoded(0, ImageFormat.WEBP);
+	}
+
+	@Test
+	public void testFormatThatCanNotBeEncodedIsNotChosen() throws Exception {
+		transcoderSpy.MRV.setDefaultReturnValuesSupplier("canEncode", () -> false);
+
+		IiifAdapterResponse response = adapter
+				.callIiifServer(get(TILE_URI, "Accept", BROWSER_ACCEPT));
+
+		assertEquals(response.headers().get("Content-Type"), "image/jpeg");
+		transcoderSpy.MCR.assertMethodNotCalled("transcode");
+	}
+
+	@Test
+	public void testSourceIsAskedForWithoutRangeAndValidators() throws Exception {
+		adapter.callIiifServer(get(TILE_URI, "Accept", BROWSER_ACCEPT, "Range", "bytes=0-1",
+				"If-Range", "\"v1.avif\"", "If-None-Match", "\"v0.avif\"", "If-Modified-Since",
+				"Thu, 01 Jan 2026 00:00:00 GMT"));
+
+		IiifParameters sourceRequest = (IiifParameters) iiifAdapterSpy.MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("callIiifServer", 0,
+						"iiifParameters");
+		assertEquals(sourceRequest.uri(), TILE_URI);
+		assertEquals(sourceRequest.headersMap(), Map.of("Accept", BROWSER_ACCEPT));
+	}
+
+	@Test
+	public void testVariantIsAnsweredFromStore() throws Exception {
+		adapter.callIiifServer(get(TILE_URI, "Accept", BROWSER_ACCEPT));
+
+		IiifAdapterResponse response = adapter
+				.callIiifServer(get("/" + TILE_URI, "Accept", "image/avif"));
+
+		iiifAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", 1);
+		transcoderSpy.MCR.assertNumberOfCallsToMethod("transcode", 1);
+		assertEquals(response.headers().get("Content-Type"), "image/avif");
+		assertEquals(readBody(response.body()), "small");
+		assertEquals(adapter.getBytesSaved(), 2 * (SOURCE.length() - 5));
+	}
+
+	@Test
+	public void testStaleVariantIsRevalidatedWithSourceValidators() throws Exception {
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer", () -> {
+			IiifAdapterResponse response = createSourceResponse(200);
+			response.headers().put("Last-Modified", "Thu, 01 Jan 2026 00:00:00 GMT");
+			return response;
+		});
+		adapter.callIiifServer(get(TILE_URI, "Accept", BROWSER_ACCEPT));
+		clock.advance(Duration.ofSeconds(61));
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> IiifAdapterSpy.createResponse(304, ""));
+
+		IiifAdapterResponse response = adapter.callIiifServer(
+				get(TILE_URI, "Accept", BROWSER_ACCEPT, "If-None-Match", "\"other\""));
+
+		IiifParameters revalidation = (IiifParameters) iiifAdapterSpy.MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("callIiifServer", 1,
+						"iiifParameters");
+		assertEquals(revalidation.uri(), TILE_URI);
+		assertEquals(revalidation.headersMap().get("If-None-Match"), "\"v1\"");
+		assertEquals(revalidation.headersMap().get("If-Modified-Since"),
+				"Thu, 01 Jan 2026 00:00:00 GMT");
+		transcoderSpy.MCR.assertNumberOfCallsToMethod("transcode", 1);
+		assertEquals(response.status(), 200);
+		assertEquals(response.headers().get("ETag"), "\"v1.avif\"");
+		assertEquals(response.headers().get("Vary"), "Accept");
+		assertFalse(response.headers().containsKey("Source-ETag"));
+		assertEquals(readBody(response.body()), "small");
+		assertEquals(adapter.getRevalidations(), 1);
+	}
+
+	@Test
+	public void testRenewedVariantIsFreshAgain() throws Exception {
+		adapter.callIiifServer(get(TILE_URI, "Accept", BROWSER_ACCEPT));
+		clock.advance(Duration.ofSeconds(61));
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> IiifAdapterSpy.createResponse(304, ""));
+		adapter.callIiifServer(get(TILE_URI, "Accept", BROWSER_ACCEPT));
+		clock.advance(Duration.ofSeconds(30));
+
+		adapter.callIiifServer(get(TILE_URI, "Accept", BROWSER_ACCEPT));
+
+		iiifAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", 2);
+	}
+
+	@Test
+	public void testChangedSourceIsTranscodedAgain() throws Exception {
+		adapter.callIiifServer(get(TILE_URI, "Accept", BROWSER_ACCEPT));
+		clock.advance(Duration.ofSeconds(61));
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer", () -> {
+			IiifAdapterResponse response = createSourceResponse(200);
+			response.headers().put("ETag", "\"v2\"");
+			return response;
+		});
+
+		IiifAdapterResponse response = adapter
+				.callIiifServer(get(TILE_URI, "Accept", BROWSER_ACCEPT));
+
+		transcoderSpy.MCR.assertNumberOfCallsToMethod("transcode", 2);
+		assertEquals(response.headers().get("ETag"), "\"v2.avif\"");
+		assertEquals(variantStore.get(TILE_URI + "\nVariant: avif").get().headers()
+				.get("Source-ETag"), "\"v2\"");
+	}
+
+	@Test
+	public void testSourceMaxAgeKeepsVariantFresh() throws Exception {
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer", () -> {
+			IiifAdapterResponse response = createSourceResponse(200);
+			response.headers().put("Cache-Control", "max-age=3600");
+			return response;
+		});
+		adapter.callIiifServer(get(TILE_URI, "Accept", BROWSER_ACCEPT));
+		clock.advance(Duration.ofSeconds(600));
+
+		adapter.callIiifServer(get(TILE_URI, "Accept", BROWSER_ACCEPT));
+
+		iiifAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", 1);
+		assertEquals(adapter.getRevalidations(), 0);
+	}
+
+	@Test
+	public void testSourceMarkedNoStoreIsNotKept() throws Exception {
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer", () -> {
+			IiifAdapterResponse response = createSourceResponse(200);
+			response.headers().put("Cache-Control", "no-store");
+			return response;
+		});
+
+		IiifAdapterResponse response = adapter
+				.callIiifServer(get(TILE_URI, "Accept", BROWSER_ACCEPT));
+
+		assertEquals(readBody(response.body()), "small");
+		assertEquals(variantStore.get(TILE_URI + "\nVariant: avif"), Optional.empty());
+	}
+
+	@Test
+	public void testVariantsOfFormatsAreKeptApart() throws Exception {
+		adapter.callIiifServer(get(TILE_URI, "Accept", "image/avif"));
+
+		adapter.callIiifServer(get(TILE_URI, "Accept", "image/webp"));
+
+		transcoderSpy.MCR.assertNumberOfCallsToMethod("transcode", 2);
+		assertTranscoded(1, ImageFormat.WEBP);
+	}
+
+	@Test
+	public void testClientWithVariantGetsNotModified() throws Exception {
+		adapter.callIiifServer(get(TILE_URI, "Accept", BROWSER_ACCEPT));
+
+		IiifAdapterResponse response = adapter.callIiifServer(
+				get(TILE_URI, "Accept", BROWSER_ACCEPT, "If-None-Match", "\"v1.avif\""));
+
+		assertEquals(response.status(), 304);
+		assertEquals(response.headers().get("ETag"), "\"v1.avif\"");
+		assertEquals(response.headers().get("Vary"), "Accept");
+		assertFalse(response.headers().containsKey("Source-Length"));
+	}
+
+	@Test
+	public void testWeakEntityTagStaysWeak() throws Exception {
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer", () -> {
+			IiifAdapterResponse response = createSourceResponse(200);
+			response.headers().put("ETag", "W/\"v1\"");
+			return response;
+		});
+
+		IiifAdapterResponse response = adapter
+				.callIiifServer(get(TILE_URI, "Accept", "image/webp"));
+
+		assertEquals(response.headers().get("ETag"), "W/\"v1.webp\"");
+	}
+
+	@Test
+	public void testVariantThatIsNotSmallerIsKeptAsSource() throws Exception {
+		transcoderSpy.MRV.setDefaultReturnValuesSupplier("transcode",
+				() -> "aVariantLargerThanTheSource".getBytes(StandardCharsets.UTF_8));
+
+		IiifAdapterResponse response = adapter
+				.callIiifServer(get(TILE_URI, "Accept", BROWSER_ACCEPT));
+		adapter.callIiifServer(get(TILE_URI, "Accept", BROWSER_ACCEPT));
+
+		assertEquals(response.headers().get("Content-Type"), "image/jpeg");
+		assertEquals(response.headers().get("ETag"), "\"v1\"");
+		assertEquals(response.headers().get("Vary"), "Accept");
+		assertEquals(readBody(response.body()), SOURCE);
+		transcoderSpy.MCR.assertNumberOfCallsToMethod("transcode", 1);
+		assertEquals(adapter.getBytesSaved(), 0);
+	}
+
+	@Test
+	public void testResponseThatIsNotOkIsPassedOnWithVary() throws Exception {
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> IiifAdapterSpy.createResponse(404, "someNotFound"));
+
+		IiifAdapterResponse response = adapter
+				.callIiifServer(get(TILE_URI, "Accept", BROWSER_ACCEPT));
+
+		assertEquals(response.status(), 404);
+		assertEquals(response.headers().get("Vary"), "Accept");
+		assertEquals(readBody(response.body()), "someNotFound");
+		transcoderSpy.MCR.assertMethodNotCalled("transcode");
+	}
+
+	@Test
+	public void testSourceLargerThanMaxIsSentAsItIs() throws Exception {
+		adapter = createAdapter(Set.of(), 4);
+
+		IiifAdapterResponse response = adapter
+				.callIiifServer(get(TILE_URI, "Accept", BROWSER_ACCEPT));
+
+		assertEquals(response.headers().get("Content-Type"), "image/jpeg");
+		assertEquals(readBody(response.body()), SOURCE);
+		transcoderSpy.MCR.assertMethodNotCalled("transcode");
+		assertEquals(adapter.getSkippedTranscodings(), 1);
+	}
+
+	@Test
+	public void testFailedTranscodingSendsSource() throws Exception {
+		transcoderSpy.throwIOException = true;
+
+		IiifAdapterResponse response = adapter
+				.callIiifServer(get(TILE_URI, "Accept", BROWSER_ACCEPT));
+
+		assertEquals(response.headers().get("Content-Type"), "image/jpeg");
+		assertEquals(readBody(response.body()), SOURCE);
+		assertEquals(adapter.getTranscodings(), 0);
+		assertEquals(adapter.getSkippedTranscodings(), 1);
+	}
+
+	@Test
+	public void testRejectedTranscodingSendsSource() throws Exception {
+		executor.shutdown();
+
+		IiifAdapterResponse response = adapter
+				.callIiifServer(get(TILE_URI, "Accept", BROWSER_ACCEPT));
+
+		assertEquals(readBody(response.body()), SOURCE);
+		transcoderSpy.MCR.assertMethodNotCalled("transcode");
+		assertEquals(adapter.getSkippedTranscodings(), 1);
+	}
+
+	@Test
+	public void testTranscodingNotDoneInTimeIsStoredWhenDone() throws Exception {
+		CountDownLatch transcodingMayFinish = new CountDownLatch(1);
+		transcoderSpy.MRV.setDefaultReturnValuesSupplier("transcode", () -> {
+			awaitQuietly(transcodingMayFinish);
+			return "small".getBytes(StandardCharsets.UTF_8);
+		});
+		adapter = new TranscodingIiifAdapter(iiifAdapterSpy, transcoderSpy, executor,
+				variantStore, new TranscodingSettings(Set.of(), 1024, Duration.ofMillis(20),
+						Duration.ofSeconds(60)),
+				clock);
+
+		IiifAdapterResponse response = adapter
+				.callIiifServer(get(TILE_URI, "Accept", BROWSER_ACCEPT));
+		transcodingMayFinish.countDown();
+		executor.shutdown();
+		executor.awaitTermination(5, TimeUnit.SECONDS);
+		IiifAdapterResponse stored = adapter
+				.callIiifServer(get(TILE_URI, "Accept", BROWSER_ACCEPT));
+
+		assertEquals(readBody(response.body()), SOURCE);
+		assertEquals(readBody(stored.body()), "small");
+		assertEquals(adapter.getSkippedTranscodings(), 1);
+		assertEquals(adapter.getTranscodings(), 1);
+		iiifAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", 1);
+	}
+
+	private void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Test
+	public void testUpstreamFormatIsAskedForFromImageServer() throws Exception {
+		transcoderSpy.MRV.setDefaultReturnValuesSupplier("canEncode", () -> false);
+		adapter = createAdapter(Set.of(ImageFormat.WEBP), 1024);
+
+		IiifAdapterResponse response = adapter
+				.callIiifServer(get(TILE_URI, "Accept", BROWSER_ACCEPT, "Range", "bytes=0-1"));
+
+		iiifAdapterSpy.MCR.assertParameters("callIiifServer", 0,
+				get("someId/0,0,512,512/512,/0/default.webp", "Accept", BROWSER_ACCEPT, "Range",
+						"bytes=0-1"));
+		assertEquals(response.headers().get("Vary"), "Accept");
+		assertEquals(adapter.getUpstreamVariants(), 1);
+		transcoderSpy.MCR.assertMethodNotCalled("transcode");
+	}
+
+	@Test
+	public void testUpstreamFormatIsPreferredOverTranscodingSameFormat() throws Exception {
+		adapter = createAdapter(Set.of(ImageFormat.AVIF), 1024);
+
+		adapter.callIiifServer(get(TILE_URI, "Accept", BROWSER_ACCEPT));
+
+		IiifParameters variantRequest = (IiifParameters) iiifAdapterSpy.MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("callIiifServer", 0,
+						"iiifParameters");
+		assertEquals(variantRequest.uri(), "someId/0,0,512,512/512,/0/default.avif");
+	}
+
+	@Test
+	public void testUpstreamFormatKeepsQuery() throws Exception {
+		adapter = createAdapter(Set.of(ImageFormat.WEBP), 1024);
+
+		adapter.callIiifServer(get("someId/full/max/0/default.png?v=2", "Accept", "image/webp"));
+
+		IiifParameters variantRequest = (IiifParameters) iiifAdapterSpy.MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("callIiifServer", 0,
+						"iiifParameters");
+		assertEquals(variantRequest.uri(), "someId/full/max/0/default.webp?v=2");
+	}
+
+	@Test
+	public void testUpstreamFormatRefusedFallsBackToSource() throws Exception {
+		adapter = createAdapter(Set.of(ImageFormat.WEBP), 1024);
+		int[] calls = { 0 };
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> calls[0]++ == 0 ? IiifAdapterSpy.createResponse(400, "someError")
+						: createSourceResponse(200));
+		IiifParameters get = get(TILE_URI, "Accept", "image/webp");
+
+		IiifAdapterResponse response = adapter.callIiifServer(get);
+
+		iiifAdapterSpy.MCR.assertParameters("callIiifServer", 1, get);
+		assertEquals(response.status(), 200);
+		assertEquals(response.headers().get("Vary"), "Accept");
+		assertEquals(readBody(response.body()), SOURCE);
+		assertEquals(adapter.getUpstreamVariants(), 0);
+	}
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.binary.BinaryException;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.async.AsyncIiifAdapter;
+import se.uu.ub.cora.iiif.async.ThreadPerCallExecutors;
+import se.uu.ub.cora.iiif.spies.IiifAdapterSpy;
+
+public class VirtualThreadIiifAdapterTest {
+	private IiifAdapterSpy iiifAdapterSpy;
+	private ExecutorService executor;
+	private VirtualThreadIiifAdapter adapter;
+	private IiifParameters getTile;
+	private CountDownLatch releaseCalls;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		iiifAdapterSpy = new IiifAdapterSpy();
+		executor = ThreadPerCallExecutors.newThreadPerCallExecutor();
+		adapter = new VirtualThreadIiifAdapter(iiifAdapterSpy, executor, 2,
+				Duration.ofSeconds(5));
+		getTile = new IiifParameters("someId/0,0,512,512/512,/0/default.jpg", "GET", Map.of());
+		releaseCalls = new CountDownLatch(1);
+	}
+
+	@AfterMethod
+	private void afterMethod() {
+		releaseCalls.countDown();
+		executor.shutdownNow();
+	}
+
+	private void blockCallsUntilReleased() {
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer", () -> {
+			await(releaseCalls);
+			return IiifAdapterSpy.createResponse(200, "someBody");
+		});
+	}
+
+	private void await(CountDownLatch latch) {
+		try {
+			latch.await(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void waitUntil(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (!condition.getAsBoolean()) {
+			if (System.nanoTime() > deadline) {
+				fail("Condition was never met");
+			}
+			Thread.sleep(1);
+		}
+	}
+
+	private String readBody(IiifAdapterResponse response) throws Exception {
+		return new String(response.body().readAllBytes(), StandardCharsets.UTF_8);
+	}
+
+	private String readBodyUnchecked(IiifAdapterResponse response) {
+		try {
+			return readBody(response);
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		assertTrue(adapter instanceof AsyncIiifAdapter);
+		assertSame(adapter.onlyForTestGetIiifAdapter(), iiifAdapterSpy);
+		assertSame(adapter.onlyForTestGetExecutor(), executor);
+		assertEquals(adapter.onlyForTestGetMaxConcurrentCalls(), 2);
+		assertEquals(adapter.onlyForTestGetPermitTimeout(), Duration.ofSeconds(5));
+	}
+
+	@Test
+	public void testCallIiifServer() throws Exception {
+		IiifAdapterResponse response = adapter.callIiifServer(getTile);
+
+		iiifAdapterSpy.MCR.assertParameters("callIiifServer", 0, getTile);
+		assertEquals(response.status(), 200);
+		assertEquals(readBody(response), "someBody");
+		assertEquals(adapter.getCallsInProgress(), 0);
+	}
+
+	@Test
+	public void testCallIiifServerRunsOnCallingThread() throws Exception {
+		List<Thread> callingThreads = new ArrayList<>();
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer", () -> {
+			callingThreads.add(Thread.currentThread());
+			return IiifAdapterSpy.createResponse(200, "someBody");
+		});
+
+		IiifAdapterResponse response = adapter.callIiifServer(getTile);
+
+		assertEquals(readBody(response), "someBody");
+		assertSame(callingThreads.get(0), Thread.currentThread());
+	}
+
+	@Test
+	public void testPermitIsHeldUntilBodyIsClosed() throws Exception {
+		IiifAdapterResponse response = adapter.callIiifServer(getTile);
+
+		assertEquals(adapter.getCallsInProgress(), 1);
+		response.body().close();
+		response.body().close();
+		assertEquals(adapter.getCallsInProgress(), 0);
+	}
+
+	@Test
+	public void testCallsWithUnreadBodiesHoldTheirPermits() throws Exception {
+		adapter = new VirtualThreadIiifAdapter(iiifAdapterSpy, executor, 1,
+				Duration.ofMillis(50));
+		IiifAdapterResponse unread = adapter.callIiifServer(getTile);
+
+		try {
+			adapter.callIiifServer(getTile);
+			fail("It should throw an exception");
+		} catch (BinaryException e) {
+			assertTrue(e.getMessage().startsWith("No permit to call iiifServer within 50 ms"));
+		}
+		unread.body().close();
+		assertEquals(readBody(adapter.callIiifServer(getTile)), "someBody");
+	}
+
+	@Test
+	public void testFailureIsThrownFromCallIiifServer() throws Exception {
+		BinaryException failure = BinaryException.withMessage("someFailure");
+		iiifAdapterSpy.MRV.setAlwaysThrowException("callIiifServer", failure);
+
+		try {
+			adapter.callIiifServer(getTile);
+			fail("It should throw an exception");
+		} catch (BinaryException e) {
+			assertSame(e, failure);
+		}
+	}
+
+	@Test
+	public void testInterruptedCallerDoesNotCall() throws Exception {
+		Thread.currentThread().interrupt();
+
+		try {
+			adapter.callIiifServer(getTile);
+			fail("It should throw an exception");
+		} catch (BinaryException e) {
+			assertEquals(e.getMessage(), "Interrupted while waiting for permit to call iiifServer "
+					+ "using method: GET, and URI: someId/0,0,512,512/512,/0/default.jpg");
+		}
+		assertTrue(Thread.interrupted());
+		iiifAdapterSpy.MCR.assertMethodNotCalled("callIiifServer");
+		assertEquals(adapter.getCallsInProgress(), 0);
+	}
+
+	@Test
+	public void testCallIiifServerAsyncRunsOnExecutorThread() throws Exception {
+		List<Thread> callingThreads = new ArrayList<>();
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer", () -> {
+			callingThreads.add(Thread.currentThread());
+			return IiifAdapterSpy.createResponse(200, "someBody");
+		});
+
+		IiifAdapterResponse response = adapter.callIiifServerAsync(getTile).get(10,
+				TimeUnit.SECONDS);
+
+		assertEquals(readBody(response), "someBody");
+		assertNotSame(callingThreads.get(0), Thread.currentThread());
+		assertEquals(adapter.getCallsInProgress(), 0);
+	}
+
+	@Test
+	public void testCallsOverLimitWaitForPermit() throws Exception {
+		blockCallsUntilReleased();
+		List<CompletableFuture<String>> bodies = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			bodies.add(adapter.callIiifServerAsync(getTile).thenApply(this::readBodyUnchecked));
+		}
+
+		waitUntil(() -> adapter.getWaitingCalls() == 1);
+		assertEquals(adapter.getCallsInProgress(), 2);
+		iiifAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", 2);
+		releaseCalls.countDown();
+		for (CompletableFuture<String> body : bodies) {
+			assertEquals(body.get(10, TimeUnit.SECONDS), "someBody");
+		}
+		iiifAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", 3);
+		assertEquals(adapter.getCallsInProgress(), 0);
+	}
+
+	@Test
+	public void testNoPermitWithinTimeout() throws Exception {
+		adapter = new VirtualThreadIiifAdapter(iiifAdapterSpy, executor, 1,
+				Duration.ofMillis(50));
+		blockCallsUntilReleased();
+		adapter.callIiifServerAsync(getTile);
+		waitUntil(() -> adapter.getCallsInProgress() == 1);
+
+		try {
+			adapter.callIiifServer(getTile);
+			fail("It should throw an exception");
+		} catch (BinaryException e) {
+			assertEquals(e.getMessage(), "No permit to call iiifServer within 50 ms, "
+					+ "1 calls in progress using method: GET, "
+					+ "and URI: someId/0,0,512,512/512,/0/default.jpg");
+		}
+		assertEquals(adapter.getPermitTimeouts(), 1);
+		iiifAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", 1);
+	}
+
+	@Test
+	public void testFailureIsPassedOnToFuture() throws Exception {
+		BinaryException failure = BinaryException.withMessage("someFailure");
+		iiifAdapterSpy.MRV.setAlwaysThrowException("callIiifServer", failure);
+
+		try {
+			adapter.callIiifServerAsync(getTile).get(10, TimeUnit.SECONDS);
+			fail("It should throw an exception");
+		} catch (ExecutionException e) {
+			assertSame(e.getCause(), failure);
+		}
+		assertEquals(adapter.getCallsInProgress(), 0);
+	}
+
+	@Test
+	public void testCancelWhileWaitingForPermit() throws Exception {
+		blockCallsUntilReleased();
+		CompletableFuture<IiifAdapterResponse> first = adapter.callIiifServerAsync(getTile);
+		CompletableFuture<IiifAdapterResponse> second = adapter.callIiifServerAsync(getTile);
+		waitUntil(() -> adapter.getCallsInProgress() == 2);
+		CompletableFuture<IiifAdapterResponse> waiting = adapter.callIiifServerAsync(getTile);
+		waitUntil(() -> adapter.getWaitingCalls() == 1);
+
+		waiting.cancel(true);
+
+		waitUntil(() -> adapter.getWaitingCalls() == 0);
+		releaseCalls.countDown();
+		first.get(10, TimeUnit.SECONDS).body().close();
+		second.get(10, TimeUnit.SECONDS).body().close();
+		assertEquals(adapter.getCallsInProgress(), 0);
+		iiifAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", 2);
+	}
+
+	@Test
+	public void testResponseNotWantedReleasesPermit() throws Exception {
+		blockCallsUntilReleased();
+		CompletableFuture<IiifAdapterResponse> response = adapter.callIiifServerAsync(getTile);
+		waitUntil(() -> adapter.getCallsInProgress() == 1);
+
+		response.complete(IiifAdapterSpy.createResponse(200, "otherBody"));
+		releaseCalls.countDown();
+
+		waitUntil(() -> adapter.getCallsInProgress() == 0);
+	}
+
+	@Test
+	public void testRejectedCallFailsFuture() throws Exception {
+		executor.shutdown();
+
+		CompletableFuture<IiifAdapterResponse> response = adapter.callIiifServerAsync(getTile);
+
+		try {
+			response.get(10, TimeUnit.SECONDS);
+			fail("It should throw an exception");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof BinaryException);
+			assertTrue(e.getCause().getMessage().startsWith("Could not start call to iiifServer"));
+		}
+	}
+
+	@Test
+	public void testBlockedCallsDoNotHoldCarrierThreads() throws Exception {
+		int calls = Runtime.getRuntime().availableProcessors() * 4 + 4;
+		adapter = new VirtualThreadIiifAdapter(iiifAdapterSpy, executor, calls,
+				Duration.ofSeconds(5));
+		CountDownLatch allCallsStarted = new CountDownLatch(calls);
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer", () -> {
+			allCallsStarted.countDown();
+			await(allCallsStarted);
+			return IiifAdapterSpy.createResponse(200, "someBody");
+		});
+		List<CompletableFuture<IiifAdapterResponse>> responses = new ArrayList<>();
+
+		for (int i = 0; i < calls; i++) {
+			responses.add(adapter.callIiifServerAsync(getTile));
+		}
+
+		assertTrue(allCallsStarted.await(10, TimeUnit.SECONDS),
+				"Calls were not in progress at the same time, are threads pinned?");
+		for (CompletableFuture<IiifAdapterResponse> response : responses) {
+			assertEquals(readBody(response.get(10, TimeUnit.SECONDS)), "someBody");
+		}
+	}
+}
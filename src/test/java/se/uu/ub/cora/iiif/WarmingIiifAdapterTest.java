@@ -0,0 +1,109 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif;
+
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+import java.util.Map;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.binary.BinaryException;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.spies.CacheWarmerSpy;
+import se.uu.ub.cora.iiif.spies.IiifAdapterSpy;
+
+public class WarmingIiifAdapterTest {
+	private IiifAdapterSpy iiifAdapterSpy;
+	private CacheWarmerSpy cacheWarmerSpy;
+	private WarmingIiifAdapter adapter;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		iiifAdapterSpy = new IiifAdapterSpy();
+		cacheWarmerSpy = new CacheWarmerSpy(iiifAdapterSpy);
+		adapter = new WarmingIiifAdapter(iiifAdapterSpy, cacheWarmerSpy);
+	}
+
+	@AfterMethod
+	private void afterMethod() {
+		cacheWarmerSpy.close();
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		assertSame(adapter.getCacheWarmer(), cacheWarmerSpy);
+		assertSame(adapter.onlyForTestGetIiifAdapter(), iiifAdapterSpy);
+	}
+
+	@Test
+	public void testCallIsPassedOn() throws Exception {
+		IiifParameters iiifParameters = new IiifParameters("someId/full/max/0/default.jpg", "GET",
+				Map.of());
+
+		IiifAdapterResponse response = adapter.callIiifServer(iiifParameters);
+
+		iiifAdapterSpy.MCR.assertParameters("callIiifServer", 0, iiifParameters);
+		iiifAdapterSpy.MCR.assertReturn("callIiifServer", 0, response);
+		cacheWarmerSpy.MCR.assertMethodNotCalled("warmImage");
+	}
+
+	@Test
+	public void testFailedCallDoesNotWarmImage() throws Exception {
+		BinaryException error = BinaryException.withMessage("someError");
+		iiifAdapterSpy.MRV.setAlwaysThrowException("callIiifServer", error);
+
+		try {
+			adapter.callIiifServer(new IiifParameters("someId/info.json", "GET", Map.of()));
+			fail("It should throw an exception");
+		} catch (BinaryException e) {
+			assertSame(e, error);
+		}
+
+		cacheWarmerSpy.MCR.assertMethodNotCalled("warmImage");
+	}
+
+	@Test
+	public void testInfoRequestWarmsImage() throws Exception {
+		adapter.callIiifServer(new IiifParameters("/some/Id/info.json?x=1", "GET", Map.of()));
+
+		cacheWarmerSpy.MCR.assertParameters("warmImage", 0, "some/Id");
+	}
+
+	@Test
+	public void testHeadInfoRequestDoesNotWarmImage() throws Exception {
+		adapter.callIiifServer(new IiifParameters("someId/info.json", "HEAD", Map.of()));
+
+		cacheWarmerSpy.MCR.assertMethodNotCalled("warmImage");
+	}
+
+	@Test
+	public void testFailedInfoRequestDoesNotWarmImage() throws Exception {
+		iiifAdapterSpy.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> IiifAdapterSpy.createResponse(404, "not found"));
+
+		adapter.callIiifServer(new IiifParameters("someId/info.json", "GET", Map.of()));
+
+		cacheWarmerSpy.MCR.assertMethodNotCalled("warmImage");
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.async;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+public class ThreadPerCallExecutorsTest {
+
+	@Test
+	public void testVirtualThreadsAreAvailableFromJava21() throws Exception {
+		assertEquals(ThreadPerCallExecutors.virtualThreadsAreAvailable(),
+				Runtime.version().feature() >= 21);
+	}
+
+	@Test
+	public void testThreadsDoNotKeepTheJvmAlive() throws Exception {
+		ExecutorService executor = ThreadPerCallExecutors.newThreadPerCallExecutor();
+		try {
+			Thread thread = executor.submit(Thread::currentThread).get(10, TimeUnit.SECONDS);
+
+			assertTrue(thread.isDaemon());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
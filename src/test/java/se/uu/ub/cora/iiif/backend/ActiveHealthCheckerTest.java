@@ -0,0 +1,112 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.backend;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.iiif.spies.IiifAdapterSpy;
+import se.uu.ub.cora.iiif.standin.ImageServerStandIn;
+import se.uu.ub.cora.iiif.standin.ImageServerStandIn.Response;
+
+public class ActiveHealthCheckerTest {
+	private ImageServerStandIn healthyServer;
+	private ImageServerStandIn failingServer;
+	private ImageServerStandIn stoppedServer;
+	private HealthSettings healthSettings;
+	private Backend healthy;
+	private Backend failing;
+	private Backend stopped;
+	private ActiveHealthChecker checker;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		healthyServer = ImageServerStandIn.start(request -> Response.withBody(200, "ok"));
+		failingServer = ImageServerStandIn.start(request -> Response.withBody(503, "busy"));
+		stoppedServer = ImageServerStandIn.start(request -> Response.withBody(200, "ok"));
+		stoppedServer.close();
+		healthSettings = new HealthSettings(3, Duration.ofSeconds(30), Duration.ofMillis(20),
+				Duration.ofSeconds(2), "health");
+		healthy = createBackend(healthyServer);
+		failing = createBackend(failingServer);
+		stopped = createBackend(stoppedServer);
+		checker = new ActiveHealthChecker(List.of(healthy, failing, stopped), healthSettings,
+				HttpClient.newHttpClient());
+	}
+
+	private Backend createBackend(ImageServerStandIn server) {
+		return new Backend(server.getBaseUrl(), new IiifAdapterSpy(), healthSettings);
+	}
+
+	@AfterMethod
+	private void afterMethod() {
+		checker.close();
+		healthyServer.close();
+		failingServer.close();
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		assertEquals(checker.onlyForTestGetBackends(), List.of(healthy, failing, stopped));
+	}
+
+	@Test
+	public void testCheckAll() throws Exception {
+		checker.checkAll().get(10, TimeUnit.SECONDS);
+
+		assertTrue(healthy.isPassingHealthChecks());
+		assertFalse(failing.isPassingHealthChecks());
+		assertFalse(stopped.isPassingHealthChecks());
+		assertEquals(healthyServer.getRequests().get(0).path(), "/health");
+	}
+
+	@Test
+	public void testBackendPassesAgainWhenHealthy() throws Exception {
+		healthy.setPassingHealthChecks(false);
+
+		checker.checkAll().get(10, TimeUnit.SECONDS);
+
+		assertTrue(healthy.isPassingHealthChecks());
+	}
+
+	@Test
+	public void testStartChecksRepeatedly() throws Exception {
+		checker.start();
+
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (healthyServer.getRequests().size() < 3) {
+			if (System.nanoTime() > deadline) {
+				fail("Health checks were not repeated");
+			}
+			Thread.sleep(5);
+		}
+		assertFalse(failing.isPassingHealthChecks());
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.backend;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.iiif.spies.IiifAdapterSpy;
+
+public class BackendTest {
+	private AtomicLong nanoTime;
+	private IiifAdapterSpy iiifAdapterSpy;
+	private Backend backend;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		nanoTime = new AtomicLong();
+		iiifAdapterSpy = new IiifAdapterSpy();
+		HealthSettings healthSettings = new HealthSettings(3, Duration.ofSeconds(30),
+				Duration.ZERO, Duration.ofSeconds(1), "");
+		backend = new Backend("someUrl", iiifAdapterSpy, healthSettings, nanoTime::get);
+	}
+
+	private void failCalls(int calls) {
+		for (int i = 0; i < calls; i++) {
+			backend.callStarted();
+			backend.callFailed();
+		}
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		assertEquals(backend.getUrl(), "someUrl");
+		assertSame(backend.getIiifAdapter(), iiifAdapterSpy);
+		assertTrue(backend.isAvailable());
+		assertTrue(backend.isPassingHealthChecks());
+	}
+
+	@Test
+	public void testOutstandingCalls() throws Exception {
+		backend.callStarted();
+		backend.callStarted();
+		assertEquals(backend.getOutstandingCalls(), 2);
+
+		backend.callSucceeded();
+		backend.callFailed();
+
+		assertEquals(backend.getOutstandingCalls(), 0);
+		assertEquals(backend.getCalls(), 2);
+	}
+
+	@Test
+	public void testEjectedAfterFailuresInARow() throws Exception {
+		failCalls(2);
+		assertTrue(backend.isAvailable());
+
+		failCalls(1);
+
+		assertFalse(backend.isAvailable());
+		assertEquals(backend.getEjections(), 1);
+	}
+
+	@Test
+	public void testSuccessResetsFailures() throws Exception {
+		failCalls(2);
+		backend.callStarted();
+		backend.callSucceeded();
+
+		failCalls(2);
+
+		assertTrue(backend.isAvailable());
+	}
+
+	@Test
+	public void testAvailableAgainAfterEjectionTime() throws Exception {
+		failCalls(3);
+
+		nanoTime.addAndGet(Duration.ofSeconds(30).toNanos());
+
+		assertTrue(backend.isAvailable());
+	}
+
+	@Test
+	public void testNotAvailableWhileFailingHealthChecks() throws Exception {
+		backend.setPassingHealthChecks(false);
+		assertFalse(backend.isAvailable());
+
+		backend.setPassingHealthChecks(true);
+
+		assertTrue(backend.isAvailable());
+	}
+}
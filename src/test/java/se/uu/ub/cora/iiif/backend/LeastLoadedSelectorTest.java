@@ -0,0 +1,83 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.backend;
+
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+import java.util.random.RandomGenerator;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.iiif.spies.IiifAdapterSpy;
+
+public class LeastLoadedSelectorTest {
+	private LeastLoadedSelector selector;
+	private Supplier<RandomGenerator> randomSupplier;
+	private Backend first;
+	private Backend second;
+	private Backend third;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		Random random = new Random(42);
+		randomSupplier = () -> random;
+		selector = new LeastLoadedSelector(randomSupplier);
+		HealthSettings healthSettings = new HealthSettings(3, Duration.ofSeconds(30),
+				Duration.ZERO, Duration.ofSeconds(1), "");
+		first = new Backend("http://server1/", new IiifAdapterSpy(), healthSettings);
+		second = new Backend("http://server2/", new IiifAdapterSpy(), healthSettings);
+		third = new Backend("http://server3/", new IiifAdapterSpy(), healthSettings);
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		assertSame(selector.onlyForTestGetRandomSupplier(), randomSupplier);
+	}
+
+	@Test
+	public void testOnlyCandidate() throws Exception {
+		assertSame(selector.select("someId", List.of(first)), first);
+	}
+
+	@Test
+	public void testLeastLoadedOfTwoIsChosen() throws Exception {
+		first.callStarted();
+
+		for (int i = 0; i < 100; i++) {
+			assertSame(selector.select("someId", List.of(first, second)), second);
+		}
+	}
+
+	@Test
+	public void testMostLoadedOfThreeIsNeverChosen() throws Exception {
+		first.callStarted();
+		first.callStarted();
+		second.callStarted();
+
+		for (int i = 0; i < 100; i++) {
+			assertNotSame(selector.select("someId", List.of(first, second, third)), first);
+		}
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.backend;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.iiif.spies.IiifAdapterSpy;
+
+public class RendezvousSelectorTest {
+	private static final int IDENTIFIERS = 3000;
+	private RendezvousSelector selector;
+	private List<Backend> backends;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		selector = new RendezvousSelector();
+		HealthSettings healthSettings = new HealthSettings(3, Duration.ofSeconds(30),
+				Duration.ZERO, Duration.ofSeconds(1), "");
+		backends = List.of(
+				new Backend("http://server1/", new IiifAdapterSpy(), healthSettings),
+				new Backend("http://server2/", new IiifAdapterSpy(), healthSettings),
+				new Backend("http://server3/", new IiifAdapterSpy(), healthSettings));
+	}
+
+	@Test
+	public void testSameIdentifierGoesToSameBackend() throws Exception {
+		Backend first = selector.select("someId", backends);
+
+		assertSame(selector.select("someId", backends), first);
+		assertSame(selector.select("someId", List.of(backends.get(2), backends.get(0),
+				backends.get(1))), first);
+	}
+
+	@Test
+	public void testIdentifiersAreSpreadOverBackends() throws Exception {
+		Map<Backend, Integer> counts = new HashMap<>();
+		for (int i = 0; i < IDENTIFIERS; i++) {
+			counts.merge(selector.select("image" + i, backends), 1, Integer::sum);
+		}
+
+		for (Backend backend : backends) {
+			assertTrue(counts.get(backend) > IDENTIFIERS / 4,
+					backend.getUrl() + " got " + counts.get(backend));
+		}
+	}
+
+	@Test
+	public void testOnlyIdentifiersOfRemovedBackendMove() throws Exception {
+		Backend removed = backends.get(1);
+		List<Backend> remaining = List.of(backends.get(0), backends.get(2));
+
+		for (int i = 0; i < IDENTIFIERS; i++) {
+			Backend before = selector.select("image" + i, backends);
+			Backend after = selector.select("image" + i, remaining);
+			if (before != removed) {
+				assertSame(after, before);
+			}
+		}
+	}
+
+	@Test
+	public void testHashIsStable() throws Exception {
+		assertEquals(RendezvousSelector.hash(""), 0xcbf29ce484222325L);
+		assertEquals(RendezvousSelector.hash("a"), 0xaf63dc4c8601ec8cL);
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.batch;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+
+public class TilePyramidTest {
+
+	private List<String> tileUris(Viewport viewport) {
+		return TilePyramid.tilesFor(viewport).stream().map(IiifParameters::uri).toList();
+	}
+
+	@Test
+	public void testTilesAtFullSize() throws Exception {
+		Viewport viewport = new Viewport("someId", 2000, 1000, 1, 512, 100, 100, 500, 300);
+
+		assertEquals(tileUris(viewport), List.of("someId/0,0,512,512/512,/0/default.jpg",
+				"someId/512,0,512,512/512,/0/default.jpg"));
+	}
+
+	@Test
+	public void testTilesAreGetRequests() throws Exception {
+		Viewport viewport = new Viewport("someId", 2000, 1000, 1, 512, 0, 0, 10, 10);
+
+		IiifParameters tile = TilePyramid.tilesFor(viewport).get(0);
+
+		assertEquals(tile.method(), "GET");
+		assertEquals(tile.headersMap().size(), 0);
+	}
+
+	@Test
+	public void testEdgeTilesAreClippedToImage() throws Exception {
+		Viewport viewport = new Viewport("someId", 2000, 1000, 4, 256, 0, 0, 2000, 1000);
+
+		assertEquals(tileUris(viewport), List.of("someId/0,0,1024,1000/256,/0/default.jpg",
+				"someId/1024,0,976,1000/244,/0/default.jpg"));
+	}
+
+	@Test
+	public void testRegionOutsideImageIsClipped() throws Exception {
+		Viewport viewport = new Viewport("someId", 2000, 1000, 2, 512, 1900, -500, 1000, 600);
+
+		assertEquals(tileUris(viewport), List.of("someId/1024,0,976,1000/488,/0/default.jpg"));
+	}
+
+	@Test
+	public void testNoTilesForRegionOutsideImage() throws Exception {
+		Viewport viewport = new Viewport("someId", 2000, 1000, 1, 512, 2000, 0, 100, 100);
+
+		assertEquals(TilePyramid.tilesFor(viewport), List.of());
+	}
+
+	@Test
+	public void testTilesWithNextZoomLevel() throws Exception {
+		Viewport viewport = new Viewport("someId", 2000, 1000, 2, 512, 0, 0, 1024, 500);
+
+		List<String> uris = TilePyramid.tilesWithNextZoomLevelFor(viewport).stream()
+				.map(IiifParameters::uri).toList();
+
+		assertEquals(uris, List.of("someId/0,0,1024,1000/512,/0/default.jpg",
+				"someId/0,0,512,512/512,/0/default.jpg",
+				"someId/512,0,512,512/512,/0/default.jpg"));
+	}
+
+	@Test
+	public void testTilesWithNextZoomLevelAtFullSize() throws Exception {
+		Viewport viewport = new Viewport("someId", 2000, 1000, 1, 512, 0, 0, 1024, 500);
+
+		assertEquals(TilePyramid.tilesWithNextZoomLevelFor(viewport),
+				TilePyramid.tilesFor(viewport));
+	}
+
+	@Test
+	public void testNextZoomLevel() throws Exception {
+		Viewport viewport = new Viewport("someId", 2000, 1000, 4, 256, 0, 0, 500, 500);
+
+		assertEquals(viewport.nextZoomLevel(),
+				new Viewport("someId", 2000, 1000, 2, 256, 0, 0, 500, 500));
+	}
+
+	@Test
+	public void testNextZoomLevelAtFullSize() throws Exception {
+		Viewport viewport = new Viewport("someId", 2000, 1000, 1, 256, 0, 0, 500, 500);
+
+		assertSame(viewport.nextZoomLevel(), viewport);
+	}
+
+	@Test
+	public void testInvalidScaleFactor() throws Exception {
+		try {
+			new Viewport("someId", 2000, 1000, 0, 256, 0, 0, 500, 500);
+			fail("It should throw an exception");
+		} catch (IllegalArgumentException e) {
+			assertEquals(e.getMessage(), "scaleFactor must be at least 1");
+		}
+	}
+
+	@Test
+	public void testInvalidTileSize() throws Exception {
+		try {
+			new Viewport("someId", 2000, 1000, 1, 0, 0, 0, 500, 500);
+			fail("It should throw an exception");
+		} catch (IllegalArgumentException e) {
+			assertEquals(e.getMessage(), "tileSize must be at least 1");
+		}
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.breaker;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.iiif.breaker.CircuitBreaker.Permit;
+import se.uu.ub.cora.iiif.breaker.CircuitBreaker.State;
+
+public class CircuitBreakerTest {
+	private static final long ONE_SECOND = 1_000_000_000L;
+	private AtomicLong nanoTime;
+	private BreakerSettings settings;
+	private CircuitBreaker breaker;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		nanoTime = new AtomicLong();
+		settings = new BreakerSettings(50, 10, 4, Duration.ofSeconds(30), 2);
+		breaker = new CircuitBreaker(settings, nanoTime::get);
+	}
+
+	private void callTimes(int times, boolean failed) {
+		for (int i = 0; i < times; i++) {
+			breaker.acquire().release(failed);
+		}
+	}
+
+	private void assertRejected(long expectedRetryAfterSeconds) {
+		try {
+			breaker.acquire();
+			fail("It should throw an exception");
+		} catch (CircuitOpenException e) {
+			assertEquals(e.getMessage(), "The image server is failing, calls are stopped");
+			assertEquals(e.getRetryAfterSeconds(), expectedRetryAfterSeconds);
+		}
+	}
+
+	private void openCircuit() {
+		callTimes(4, true);
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		assertEquals(breaker.getSettings(), settings);
+		assertEquals(breaker.getState(), State.CLOSED);
+	}
+
+	@Test
+	public void testSuccessfulCallsKeepCircuitClosed() throws Exception {
+		callTimes(100, false);
+
+		assertEquals(breaker.getState(), State.CLOSED);
+	}
+
+	@Test
+	public void testNotOpenedBeforeMinimumCalls() throws Exception {
+		callTimes(3, true);
+
+		assertEquals(breaker.getState(), State.CLOSED);
+	}
+
+	@Test
+	public void testOpensWhenFailureRateIsReached() throws Exception {
+		callTimes(5, false);
+		callTimes(4, true);
+		assertEquals(breaker.getState(), State.CLOSED);
+
+		callTimes(1, true);
+
+		assertEquals(breaker.getState(), State.OPEN);
+		assertEquals(breaker.getTimesOpened(), 1);
+	}
+
+	@Test
+	public void testOnlyMostRecentCallsCount() throws Exception {
+		callTimes(4, false);
+		callTimes(1, true);
+		callTimes(10, false);
+		callTimes(4, true);
+
+		assertEquals(breaker.getState(), State.CLOSED);
+	}
+
+	@Test
+	public void testOpenCircuitRejectsCalls() throws Exception {
+		openCircuit();
+		nanoTime.addAndGet(10 * ONE_SECOND + 1);
+
+		assertRejected(20);
+		assertEquals(breaker.getRejectedCalls(), 1);
+	}
+
+	@Test
+	public void testHalfOpenAfterOpenDuration() throws Exception {
+		openCircuit();
+
+		nanoTime.addAndGet(30 * ONE_SECOND);
+
+		assertEquals(breaker.getState(), State.HALF_OPEN);
+	}
+
+	@Test
+	public void testHalfOpenLetsOneProbeThroughAtATime() throws Exception {
+		openCircuit();
+		nanoTime.addAndGet(30 * ONE_SECOND);
+
+		Permit probe = breaker.acquire();
+
+		assertRejected(1);
+		probe.release(false);
+		breaker.acquire();
+	}
+
+	@Test
+	public void testClosesWhenProbesSucceed() throws Exception {
+		openCircuit();
+		nanoTime.addAndGet(30 * ONE_SECOND);
+
+		callTimes(1, false);
+		assertEquals(breaker.getState(), State.HALF_OPEN);
+		callTimes(1, false);
+
+		assertEquals(breaker.getState(), State.CLOSED);
+		callTimes(3, true);
+		assertEquals(breaker.getState(), State.CLOSED);
+	}
+
+	@Test
+	public void testOpensAgainWhenProbeFails() throws Exception {
+		openCircuit();
+		nanoTime.addAndGet(30 * ONE_SECOND);
+
+		callTimes(1, false);
+		callTimes(1, true);
+
+		assertEquals(breaker.getState(), State.OPEN);
+		assertEquals(breaker.getTimesOpened(), 2);
+		assertRejected(30);
+	}
+
+	@Test
+	public void testCallFromBeforeOpeningIsNotCountedAsProbe() throws Exception {
+		Permit slowCall = breaker.acquire();
+		openCircuit();
+		nanoTime.addAndGet(30 * ONE_SECOND);
+		Permit probe = breaker.acquire();
+
+		slowCall.release(true);
+
+		assertEquals(breaker.getState(), State.HALF_OPEN);
+		probe.release(false);
+		callTimes(1, false);
+		assertEquals(breaker.getState(), State.CLOSED);
+	}
+}
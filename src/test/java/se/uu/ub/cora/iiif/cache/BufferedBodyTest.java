@@ -0,0 +1,57 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+
+import org.testng.annotations.Test;
+
+public class BufferedBodyTest {
+	private static final byte[] BODY = "someBody".getBytes();
+
+	@Test
+	public void testBodySmallerThanLimit() throws Exception {
+		BufferedBody body = BufferedBody.readUpTo(new ByteArrayInputStream(BODY), 100);
+
+		assertTrue(body.isComplete());
+		assertEquals(body.getBytes(), BODY);
+		assertEquals(body.asInputStream().readAllBytes(), BODY);
+	}
+
+	@Test
+	public void testBodyExactlyLimit() throws Exception {
+		BufferedBody body = BufferedBody.readUpTo(new ByteArrayInputStream(BODY), BODY.length);
+
+		assertTrue(body.isComplete());
+		assertEquals(body.getBytes(), BODY);
+	}
+
+	@Test
+	public void testBodyLargerThanLimitIsStillReadInFull() throws Exception {
+		BufferedBody body = BufferedBody.readUpTo(new ByteArrayInputStream(BODY), 3);
+
+		assertFalse(body.isComplete());
+		assertEquals(body.getBytes(), "som".getBytes());
+		assertEquals(body.asInputStream().readAllBytes(), BODY);
+	}
+}
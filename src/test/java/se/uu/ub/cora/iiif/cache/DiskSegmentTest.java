@@ -0,0 +1,98 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class DiskSegmentTest {
+	private Path path;
+	private DiskSegment segment;
+
+	@BeforeMethod
+	private void beforeMethod() throws IOException {
+		path = Files.createTempFile("diskSegmentTest", ".seg");
+		segment = DiskSegment.open(1, path);
+	}
+
+	@AfterMethod
+	private void afterMethod() throws IOException {
+		segment.closeAndDelete();
+	}
+
+	private int appendBody(int bodyLength, byte value) throws IOException {
+		byte[] body = new byte[bodyLength];
+		Arrays.fill(body, value);
+		ByteBuffer[] encoded = DiskRecordFormat.encode("someKey", Map.of(), ByteBuffer.wrap(body),
+				0);
+		int recordLength = DiskRecordFormat.recordLength(encoded);
+		return segment.append(encoded) + recordLength - bodyLength;
+	}
+
+	@Test
+	public void testReadAfterAppend() throws Exception {
+		int bodyOffset = appendBody(100, (byte) 7);
+
+		ByteBuffer body = segment.read(bodyOffset, 100);
+
+		assertEquals(body.remaining(), 100);
+		assertEquals(body.get(99), 7);
+		assertTrue(body.isDirect());
+	}
+
+	@Test
+	public void testSmallAppendsAreReadWithoutRemapping() throws Exception {
+		segment.read(appendBody(100, (byte) 1), 100);
+		int mappedBytes = segment.onlyForTestGetMappedBytes();
+
+		for (int i = 0; i < 100; i++) {
+			int bodyOffset = appendBody(100, (byte) i);
+			ByteBuffer body = segment.read(bodyOffset, 100);
+			assertEquals(body.get(0), (byte) i);
+			assertTrue(body.isReadOnly());
+			assertFalse(body.isDirect());
+		}
+
+		assertEquals(segment.onlyForTestGetMappedBytes(), mappedBytes);
+	}
+
+	@Test
+	public void testMappingIsExtendedAfterAStep() throws Exception {
+		segment.read(appendBody(100, (byte) 1), 100);
+
+		int bodyOffset = appendBody((int) DiskSegment.REMAP_STEP_BYTES, (byte) 2);
+		ByteBuffer body = segment.read(bodyOffset, (int) DiskSegment.REMAP_STEP_BYTES);
+
+		assertTrue(body.isDirect());
+		assertEquals(body.get(0), 2);
+		assertEquals(segment.onlyForTestGetMappedBytes(), segment.size());
+	}
+}
@@ -0,0 +1,447 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.CachingIiifAdapter;
+import se.uu.ub.cora.iiif.spies.IiifAdapterSpy;
+import se.uu.ub.cora.iiif.spies.SettableClock;
+import se.uu.ub.cora.logger.LoggerProvider;
+import se.uu.ub.cora.logger.spies.LoggerFactorySpy;
+import se.uu.ub.cora.logger.spies.LoggerSpy;
+
+public class DiskTileStoreTest {
+	private LoggerFactorySpy loggerFactory;
+	private Path directory;
+	private SettableClock clock;
+	private DiskTileStore store;
+
+	@BeforeMethod
+	private void beforeMethod() throws Exception {
+		loggerFactory = new LoggerFactorySpy();
+		LoggerProvider.setLoggerFactory(loggerFactory);
+		directory = Files.createTempDirectory("diskTileStoreTest");
+		clock = new SettableClock(Instant.parse("2026-01-01T00:00:00Z"));
+		store = openStore(1_000_000, 10_000);
+	}
+
+	private DiskTileStore openStore(long maxBytes, long maxSegmentBytes) throws Exception {
+		DiskTileStore openedStore = new DiskTileStore(
+				createSettings(maxBytes, maxSegmentBytes), clock);
+		openedStore.onlyForTestAwaitOpen();
+		return openedStore;
+	}
+
+	private DiskTileStoreSettings createSettings(long maxBytes, long maxSegmentBytes) {
+		return new DiskTileStoreSettings(directory, maxBytes, maxSegmentBytes,
+				Duration.ofHours(1), Duration.ofHours(1));
+	}
+
+	@AfterMethod
+	private void afterMethod() throws IOException {
+		store.close();
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+				Files.delete(path);
+			}
+		}
+	}
+
+	private CachedTile createTile(String body) {
+		return new CachedTile(Map.of("Content-Type", "image/jpeg"),
+				ByteBuffer.wrap(body.getBytes(StandardCharsets.UTF_8)), clock.millis());
+	}
+
+	private String readBody(CachedTile tile) throws IOException {
+		return new String(tile.bodyAsInputStream().readAllBytes(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testPutAndGet() throws Exception {
+		store.put("someKey", createTile("someBody"));
+
+		CachedTile tile = store.get("someKey").get();
+
+		assertEquals(readBody(tile), "someBody");
+		assertEquals(tile.headers(), Map.of("Content-Type", "image/jpeg"));
+		assertEquals(tile.storedAtMillis(), clock.millis());
+		assertEquals(store.getStatistics(), new CacheStatistics(1, 0, 0, 1, 8));
+	}
+
+	@Test
+	public void testBodyIsReadFromMappedSegment() throws Exception {
+		store.put("someKey", createTile("someBody"));
+
+		CachedTile tile = store.get("someKey").get();
+
+		assertTrue(tile.body().isDirect());
+		assertTrue(tile.body().isReadOnly());
+	}
+
+	@Test
+	public void testMissing() throws Exception {
+		assertTrue(store.get("someKey").isEmpty());
+		assertEquals(store.getStatistics().misses(), 1);
+	}
+
+	@Test
+	public void testReplace() throws Exception {
+		store.put("someKey", createTile("first"));
+		store.put("someKey", createTile("second"));
+
+		assertEquals(readBody(store.get("someKey").get()), "second");
+		assertEquals(store.getStatistics().entries(), 1);
+	}
+
+	@Test
+	public void testRemove() throws Exception {
+		store.put("someKey", createTile("someBody"));
+
+		store.remove("someKey");
+
+		assertTrue(store.get("someKey").isEmpty());
+	}
+
+	@Test
+	public void testRemoveSurvivesRestart() throws Exception {
+		store.put("someKey", createTile("someBody"));
+		store.put("someOtherKey", createTile("someOtherBody"));
+		store.remove("someKey");
+		store.close();
+
+		store = openStore(1_000_000, 10_000);
+
+		assertTrue(store.get("someKey").isEmpty());
+		assertEquals(readBody(store.get("someOtherKey").get()), "someOtherBody");
+		assertEquals(store.getStatistics().entries(), 1);
+	}
+
+	@Test
+	public void testPutAfterRemoveSurvivesRestart() throws Exception {
+		store.put("someKey", createTile("first"));
+		store.remove("someKey");
+		store.put("someKey", createTile("second"));
+		store.close();
+
+		store = openStore(1_000_000, 10_000);
+
+		assertEquals(readBody(store.get("someKey").get()), "second");
+	}
+
+	@Test
+	public void testRemovingMissingKeyWritesNothing() throws Exception {
+		long sizeBefore = store.onlyForTestGetTotalSegmentBytes();
+
+		store.remove("someKey");
+
+		assertEquals(store.onlyForTestGetTotalSegmentBytes(), sizeBefore);
+	}
+
+	@Test
+	public void testIsAMissUntilOpenedInBackground() throws Exception {
+		store.put("someKey", createTile("someBody"));
+		store.close();
+		CountDownLatch releaseOpening = new CountDownLatch(1);
+		store = openStoreBlockedUntil(releaseOpening);
+
+		assertTrue(store.get("someKey").isEmpty());
+		store.put("someOtherKey", createTile("someOtherBody"));
+		store.compact();
+
+		releaseOpening.countDown();
+		store.onlyForTestAwaitOpen();
+		assertEquals(readBody(store.get("someKey").get()), "someBody");
+		assertTrue(store.get("someOtherKey").isEmpty());
+		assertEquals(store.getStatistics().misses(), 2);
+	}
+
+	private DiskTileStore openStoreBlockedUntil(CountDownLatch releaseOpening) {
+		ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+		executor.submit(() -> releaseOpening.await(10, TimeUnit.SECONDS));
+		return new DiskTileStore(createSettings(1_000_000, 10_000), clock, executor);
+	}
+
+	@Test
+	public void testRemoveWhileOpeningIsAppliedWhenOpened() throws Exception {
+		store.put("someKey", createTile("someBody"));
+		store.close();
+		CountDownLatch releaseOpening = new CountDownLatch(1);
+		store = openStoreBlockedUntil(releaseOpening);
+
+		store.remove("someKey");
+
+		releaseOpening.countDown();
+		store.onlyForTestAwaitOpen();
+		assertTrue(store.get("someKey").isEmpty());
+		store.close();
+		store = openStore(1_000_000, 10_000);
+		assertTrue(store.get("someKey").isEmpty());
+	}
+
+	@Test
+	public void testExpired() throws Exception {
+		store.put("someKey", createTile("someBody"));
+
+		clock.advance(Duration.ofHours(1));
+
+		assertTrue(store.get("someKey").isEmpty());
+		assertEquals(store.getStatistics().entries(), 0);
+	}
+
+	@Test
+	public void testSurvivesRestart() throws Exception {
+		store.put("someKey", createTile("someBody"));
+		store.put("someOtherKey", createTile("someOtherBody"));
+		store.put("someKey", createTile("replacedBody"));
+		store.close();
+
+		store = openStore(1_000_000, 10_000);
+
+		assertEquals(readBody(store.get("someKey").get()), "replacedBody");
+		assertEquals(readBody(store.get("someOtherKey").get()), "someOtherBody");
+		assertEquals(store.getStatistics().entries(), 2);
+	}
+
+	@Test
+	public void testFileNotNamedAsSegmentIsSkipped() throws Exception {
+		store.put("someKey", createTile("someBody"));
+		store.close();
+		Files.writeString(directory.resolve("notASegment.seg"), "someContent");
+
+		store = openStore(1_000_000, 10_000);
+
+		assertEquals(readBody(store.get("someKey").get()), "someBody");
+		LoggerSpy logger = (LoggerSpy) loggerFactory.MCR.getReturnValue("factorForClass", 1);
+		logger.MCR.assertParameters("logWarnUsingMessage", 0, "Skipping notASegment.seg in disk"
+				+ " tile cache in " + directory + ", its name is not a segment number");
+		Files.delete(directory.resolve("notASegment.seg"));
+	}
+
+	@Test
+	public void testFailedReadIsAMiss() throws Exception {
+		store.put("someKey", createTile("someBody"));
+		store.close();
+
+		assertTrue(store.get("someKey").isEmpty());
+
+		assertEquals(store.getStatistics().misses(), 1);
+		LoggerSpy logger = (LoggerSpy) loggerFactory.MCR.getReturnValue("factorForClass", 0);
+		logger.MCR.assertNumberOfCallsToMethod("logWarnUsingMessage", 1);
+		store = openStore(1_000_000, 10_000);
+	}
+
+	@Test
+	public void testFailedWriteIsNotStored() throws Exception {
+		store.close();
+
+		store.put("someKey", createTile("someBody"));
+		store.remove("someKey");
+
+		assertTrue(store.get("someKey").isEmpty());
+		LoggerSpy logger = (LoggerSpy) loggerFactory.MCR.getReturnValue("factorForClass", 0);
+		logger.MCR.assertNumberOfCallsToMethod("logWarnUsingMessage", 1);
+		store = openStore(1_000_000, 10_000);
+	}
+
+	@Test
+	public void testTornAppendIsCutOffOnRestart() throws Exception {
+		store.put("someKey", createTile("someBody"));
+		store.close();
+		Path segment = listSegments().get(0);
+		long validSize = Files.size(segment);
+		writeHalfARecord(segment);
+
+		store = openStore(1_000_000, 10_000);
+
+		assertEquals(readBody(store.get("someKey").get()), "someBody");
+		assertEquals(Files.size(segment), validSize);
+		store.put("someOtherKey", createTile("someOtherBody"));
+		store.close();
+		store = openStore(1_000_000, 10_000);
+		assertEquals(readBody(store.get("someOtherKey").get()), "someOtherBody");
+	}
+
+	private void writeHalfARecord(Path segment) throws IOException {
+		ByteBuffer[] encoded = DiskRecordFormat.encode("tornKey", Map.of(),
+				ByteBuffer.wrap(new byte[100]), 0);
+		byte[] half = new byte[DiskRecordFormat.HEADER_SIZE + 20];
+		ByteBuffer.wrap(half).put(encoded[0]).put(encoded[1]);
+		Files.write(segment, half, StandardOpenOption.APPEND);
+	}
+
+	private List<Path> listSegments() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.sorted().toList();
+		}
+	}
+
+	@Test
+	public void testCorruptRecordIsNotServed() throws Exception {
+		store.put("someKey", createTile("someBody"));
+		store.put("someOtherKey", createTile("someOtherBody"));
+		store.close();
+		flipLastByte(listSegments().get(0));
+
+		store = openStore(1_000_000, 10_000);
+
+		assertEquals(readBody(store.get("someKey").get()), "someBody");
+		assertTrue(store.get("someOtherKey").isEmpty());
+	}
+
+	private void flipLastByte(Path segment) throws IOException {
+		byte[] bytes = Files.readAllBytes(segment);
+		bytes[bytes.length - 1] ^= 0xFF;
+		Files.write(segment, bytes);
+	}
+
+	@Test
+	public void testNewSegmentIsStartedWhenFull() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			store.put("key" + i, createTile("x".repeat(2000)));
+		}
+
+		assertTrue(store.onlyForTestGetNumberOfSegments() > 1);
+		for (int i = 0; i < 10; i++) {
+			assertEquals(readBody(store.get("key" + i).get()), "x".repeat(2000));
+		}
+	}
+
+	@Test
+	public void testTileLargerThanSegmentIsNotStored() throws Exception {
+		store.put("someKey", createTile("x".repeat(10_000)));
+
+		assertTrue(store.get("someKey").isEmpty());
+	}
+
+	@Test
+	public void testOldestSegmentIsDroppedWhenOverCapacity() throws Exception {
+		store.close();
+		store = openStore(20_000, 5_000);
+
+		for (int i = 0; i < 20; i++) {
+			store.put("key" + i, createTile("x".repeat(2000)));
+		}
+
+		assertTrue(store.onlyForTestGetTotalSegmentBytes() <= 20_000);
+		assertTrue(store.get("key0").isEmpty());
+		assertTrue(store.get("key19").isPresent());
+		assertTrue(store.getStatistics().evictions() > 0);
+	}
+
+	@Test
+	public void testCompactionRemovesMostlyReplacedSegments() throws Exception {
+		for (int i = 0; i < 4; i++) {
+			store.put("key" + i, createTile("first" + "x".repeat(2000)));
+		}
+		for (int i = 0; i < 3; i++) {
+			store.put("key" + i, createTile("second" + "x".repeat(2000)));
+		}
+		int segmentsBefore = store.onlyForTestGetNumberOfSegments();
+
+		store.compact();
+
+		assertTrue(store.onlyForTestGetNumberOfSegments() < segmentsBefore);
+		assertEquals(readBody(store.get("key3").get()), "first" + "x".repeat(2000));
+		assertEquals(readBody(store.get("key0").get()), "second" + "x".repeat(2000));
+		store.close();
+		store = openStore(1_000_000, 10_000);
+		assertEquals(readBody(store.get("key3").get()), "first" + "x".repeat(2000));
+		assertEquals(store.getStatistics().entries(), 4);
+	}
+
+	@Test
+	public void testRemovedTileStaysRemovedWhenItsTombstoneIsCompacted() throws Exception {
+		for (int i = 0; i < 5; i++) {
+			store.put("key" + i, createTile("x".repeat(2000)));
+		}
+		store.remove("key0");
+		for (int i = 5; i < 8; i++) {
+			store.put("key" + i, createTile("x".repeat(2000)));
+		}
+		for (int i = 4; i < 8; i++) {
+			store.put("key" + i, createTile("y".repeat(2000)));
+		}
+		int segmentsBefore = store.onlyForTestGetNumberOfSegments();
+
+		store.compact();
+
+		assertEquals(store.onlyForTestGetNumberOfSegments(), segmentsBefore - 1);
+		store.close();
+		store = openStore(1_000_000, 10_000);
+		assertTrue(store.get("key0").isEmpty());
+		assertEquals(readBody(store.get("key1").get()), "x".repeat(2000));
+		assertEquals(readBody(store.get("key7").get()), "y".repeat(2000));
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "maxSegmentBytes can be at most 1 GiB")
+	public void testSegmentsLargerThanOneGibAreRejected() throws Exception {
+		createSettings(1_000_000, 1024L * 1024 * 1024 + 1);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "maxSegmentBytes must be positive")
+	public void testSegmentsOfNoBytesAreRejected() throws Exception {
+		createSettings(1_000_000, 0);
+	}
+
+	@Test
+	public void testUsableAsDecoratorOfIiifAdapter() throws Exception {
+		IiifAdapterSpy iiifAdapterSpy = new IiifAdapterSpy();
+		CachingIiifAdapter adapter = new CachingIiifAdapter(iiifAdapterSpy, store, 1_000,
+				Duration.ofMinutes(1), clock);
+		IiifParameters parameters = new IiifParameters("someId/full/263,/0/default.jpg", "GET",
+				Map.of());
+		adapter.callIiifServer(parameters);
+		store.close();
+		store = openStore(1_000_000, 10_000);
+		adapter = new CachingIiifAdapter(iiifAdapterSpy, store, 1_000,
+				Duration.ofMinutes(1), clock);
+
+		IiifAdapterResponse response = adapter.callIiifServer(parameters);
+
+		iiifAdapterSpy.MCR.assertNumberOfCallsToMethod("callIiifServer", 1);
+		assertEquals(new String(response.body().readAllBytes()), "someBody");
+	}
+}
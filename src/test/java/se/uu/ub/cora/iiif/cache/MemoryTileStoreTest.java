@@ -0,0 +1,152 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.iiif.spies.SettableClock;
+
+public class MemoryTileStoreTest {
+	private SettableClock clock;
+	private MemoryTileStore store;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		clock = new SettableClock(Instant.parse("2026-01-01T00:00:00Z"));
+		store = new MemoryTileStore(1000, Duration.ofMinutes(10), clock);
+	}
+
+	private CachedTile createTile(int size) {
+		return new CachedTile(Map.of(), ByteBuffer.wrap(new byte[size]), clock.millis());
+	}
+
+	@Test
+	public void testGetMissing() throws Exception {
+		assertTrue(store.get("someKey").isEmpty());
+
+		assertEquals(store.getStatistics(), new CacheStatistics(0, 1, 0, 0, 0));
+	}
+
+	@Test
+	public void testPutAndGet() throws Exception {
+		CachedTile tile = createTile(100);
+
+		store.put("someKey", tile);
+
+		assertSame(store.get("someKey").get(), tile);
+		assertEquals(store.getStatistics(), new CacheStatistics(1, 0, 0, 1, 100));
+	}
+
+	@Test
+	public void testReplaceKeepsByteCountCorrect() throws Exception {
+		store.put("someKey", createTile(100));
+		store.put("someKey", createTile(300));
+
+		assertEquals(store.getStatistics().bytes(), 300);
+		assertEquals(store.getStatistics().entries(), 1);
+	}
+
+	@Test
+	public void testTileLargerThanStoreIsNotStored() throws Exception {
+		store.put("someKey", createTile(1001));
+
+		assertTrue(store.get("someKey").isEmpty());
+		assertEquals(store.getStatistics().bytes(), 0);
+	}
+
+	@Test
+	public void testEvictsToStayWithinBudget() throws Exception {
+		for (int i = 0; i < 12; i++) {
+			store.put("key" + i, createTile(100));
+		}
+
+		CacheStatistics statistics = store.getStatistics();
+		assertEquals(statistics.bytes(), 1000);
+		assertEquals(statistics.entries(), 10);
+		assertEquals(statistics.evictions(), 2);
+		assertTrue(store.get("key0").isEmpty());
+		assertTrue(store.get("key1").isEmpty());
+		assertTrue(store.get("key2").isPresent());
+	}
+
+	@Test
+	public void testRequestedAgainIsPromotedToProtected() throws Exception {
+		store.put("someKey", createTile(100));
+		assertFalse(store.onlyForTestIsInProtectedSegment("someKey"));
+
+		store.get("someKey");
+
+		assertTrue(store.onlyForTestIsInProtectedSegment("someKey"));
+	}
+
+	@Test
+	public void testProtectedTilesSurviveScanOfNewTiles() throws Exception {
+		store.put("thumbnail", createTile(100));
+		store.get("thumbnail");
+
+		for (int i = 0; i < 20; i++) {
+			store.put("panningTile" + i, createTile(100));
+		}
+
+		assertTrue(store.get("thumbnail").isPresent());
+	}
+
+	@Test
+	public void testProtectedOverBudgetIsDemotedToProbation() throws Exception {
+		for (int i = 0; i < 9; i++) {
+			store.put("key" + i, createTile(100));
+			store.get("key" + i);
+		}
+
+		assertFalse(store.onlyForTestIsInProtectedSegment("key0"));
+		assertTrue(store.onlyForTestIsInProtectedSegment("key8"));
+		assertEquals(store.getStatistics().bytes(), 900);
+	}
+
+	@Test
+	public void testExpiredTileIsMissAndRemoved() throws Exception {
+		store.put("someKey", createTile(100));
+
+		clock.advance(Duration.ofMinutes(10));
+
+		assertTrue(store.get("someKey").isEmpty());
+		assertEquals(store.getStatistics(), new CacheStatistics(0, 1, 0, 0, 0));
+	}
+
+	@Test
+	public void testRemove() throws Exception {
+		store.put("someKey", createTile(100));
+
+		store.remove("someKey");
+
+		assertTrue(store.get("someKey").isEmpty());
+		assertEquals(store.getStatistics().bytes(), 0);
+	}
+}
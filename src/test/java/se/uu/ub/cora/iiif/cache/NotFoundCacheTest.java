@@ -0,0 +1,91 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.iiif.spies.SettableClock;
+
+public class NotFoundCacheTest {
+	private SettableClock clock;
+	private NotFoundCache cache;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		clock = new SettableClock(Instant.parse("2026-01-01T00:00:00Z"));
+		cache = new NotFoundCache(2, Duration.ofSeconds(30), clock);
+	}
+
+	@Test
+	public void testNotRemembered() throws Exception {
+		assertFalse(cache.isNotFound("someId"));
+
+		assertEquals(cache.getStatistics(), new CacheStatistics(0, 1, 0, 0, 0));
+	}
+
+	@Test
+	public void testRemember() throws Exception {
+		cache.remember("someId");
+
+		assertTrue(cache.isNotFound("someId"));
+		assertEquals(cache.getStatistics(), new CacheStatistics(1, 0, 0, 1, 0));
+	}
+
+	@Test
+	public void testExpires() throws Exception {
+		cache.remember("someId");
+
+		clock.advance(Duration.ofSeconds(30));
+
+		assertFalse(cache.isNotFound("someId"));
+		assertEquals(cache.getStatistics().entries(), 0);
+	}
+
+	@Test
+	public void testForget() throws Exception {
+		cache.remember("someId");
+
+		cache.forget("someId");
+
+		assertFalse(cache.isNotFound("someId"));
+	}
+
+	@Test
+	public void testOldestIsEvictedOverMaxEntries() throws Exception {
+		cache.remember("firstId");
+		cache.remember("secondId");
+		cache.remember("firstId");
+
+		cache.remember("thirdId");
+
+		assertTrue(cache.isNotFound("firstId"));
+		assertFalse(cache.isNotFound("secondId"));
+		assertTrue(cache.isNotFound("thirdId"));
+		assertEquals(cache.getStatistics().evictions(), 1);
+		assertEquals(cache.getStatistics().entries(), 2);
+	}
+}
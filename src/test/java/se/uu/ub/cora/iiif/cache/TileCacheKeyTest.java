@@ -0,0 +1,115 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+
+public class TileCacheKeyTest {
+	private static final String TILE = "someId/0,0,256,256/256,/0/default.jpg";
+
+	@Test
+	public void testKeyIsUri() throws Exception {
+		String key = TileCacheKey
+				.from(new IiifParameters("someId/full/263,/0/default.jpg", "GET", Map.of()));
+
+		assertEquals(key, "someId/full/263,/0/default.jpg");
+	}
+
+	@Test
+	public void testUriIsNormalized() throws Exception {
+		String key = TileCacheKey
+				.from(new IiifParameters("/someId//full/263,/0/default.jpg", "GET", Map.of()));
+
+		assertEquals(key, "someId/full/263,/0/default.jpg");
+	}
+
+	@Test
+	public void testAcceptHeaderIsPartOfKey() throws Exception {
+		String key = TileCacheKey.from(new IiifParameters("someId/info.json", "GET",
+				Map.of("accept", " application/ld+json ", "User-Agent", "someAgent")));
+
+		assertEquals(key, "someId/info.json\nAccept: application/ld+json");
+	}
+
+	@Test
+	public void testAcceptEncodingHeaderIsPartOfKey() throws Exception {
+		String key = TileCacheKey.from(new IiifParameters("someId/info.json", "GET",
+				Map.of("Accept", "application/json", "accept-encoding", "gzip")));
+
+		assertEquals(key, "someId/info.json\nAccept: application/json\nAccept-Encoding: gzip");
+	}
+
+	@Test
+	public void testAcceptOfImageRequestIsReducedToNamedImageFormats() throws Exception {
+		String chrome = TileCacheKey.from(new IiifParameters(TILE, "GET", Map.of("Accept",
+				"image/avif,image/webp,image/apng,image/svg+xml,image/*,*/*;q=0.8")));
+		String otherChrome = TileCacheKey.from(new IiifParameters(TILE, "GET",
+				Map.of("Accept", "image/avif, image/webp, image/*;q=0.9, */*;q=0.8")));
+		String firefox = TileCacheKey.from(new IiifParameters(TILE, "GET",
+				Map.of("Accept", "image/webp;q=0.9,image/avif,*/*;q=0.5")));
+
+		assertEquals(chrome, TILE + "\nAccept: image/webp,image/avif");
+		assertEquals(otherChrome, chrome);
+		assertEquals(firefox, TILE + "\nAccept: image/avif,image/webp");
+	}
+
+	@Test
+	public void testAcceptWithoutNamedImageFormatIsLeftOut() throws Exception {
+		String key = TileCacheKey.from(new IiifParameters(TILE, "GET",
+				Map.of("Accept", "image/*,*/*;q=0.8", "Accept-Encoding", "identity")));
+
+		assertEquals(key, TILE);
+	}
+
+	@Test
+	public void testAcceptEncodingIsReducedToChosenCoding() throws Exception {
+		String key = TileCacheKey.from(new IiifParameters(TILE, "GET",
+				Map.of("Accept-Encoding", "gzip, deflate, br;q=0.5, zstd")));
+
+		assertEquals(key, TILE + "\nAccept-Encoding: gzip");
+	}
+
+	@Test
+	public void testResponseWithoutVaryIsCovered() throws Exception {
+		assertTrue(TileCacheKey.coversVary(Map.of()));
+	}
+
+	@Test
+	public void testVaryOnKeyedHeadersIsCovered() throws Exception {
+		assertTrue(TileCacheKey.coversVary(Map.of("vary", "accept, Accept-Encoding")));
+	}
+
+	@Test
+	public void testVaryOnOtherHeaderIsNotCovered() throws Exception {
+		assertFalse(TileCacheKey.coversVary(Map.of("Vary", "Accept, User-Agent")));
+	}
+
+	@Test
+	public void testVaryOnEverythingIsNotCovered() throws Exception {
+		assertFalse(TileCacheKey.coversVary(Map.of("Vary", "*")));
+	}
+}
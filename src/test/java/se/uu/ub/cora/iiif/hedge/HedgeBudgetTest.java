@@ -0,0 +1,74 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.hedge;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+public class HedgeBudgetTest {
+
+	private void recordRequests(HedgeBudget budget, int requests) {
+		for (int i = 0; i < requests; i++) {
+			budget.recordRequest();
+		}
+	}
+
+	@Test
+	public void testBudgetFollowsRequests() throws Exception {
+		HedgeBudget budget = new HedgeBudget(0.05);
+
+		recordRequests(budget, 19);
+		assertFalse(budget.tryToSpend());
+		recordRequests(budget, 1);
+		assertTrue(budget.tryToSpend());
+		assertFalse(budget.tryToSpend());
+		recordRequests(budget, 20);
+		assertTrue(budget.tryToSpend());
+
+		assertEquals(budget.getRequests(), 40);
+		assertEquals(budget.getHedges(), 2);
+	}
+
+	@Test
+	public void testCalmPeriodSavesUpOnlyALimitedNumberOfHedges() throws Exception {
+		HedgeBudget budget = new HedgeBudget(0.05);
+
+		recordRequests(budget, 100_000);
+
+		for (int i = 0; i < HedgeBudget.MAX_SAVED_HEDGES; i++) {
+			assertTrue(budget.tryToSpend());
+		}
+		assertFalse(budget.tryToSpend());
+		recordRequests(budget, 20);
+		assertTrue(budget.tryToSpend());
+		assertFalse(budget.tryToSpend());
+	}
+
+	@Test
+	public void testNoBudget() throws Exception {
+		HedgeBudget budget = new HedgeBudget(0);
+
+		recordRequests(budget, 1000);
+
+		assertFalse(budget.tryToSpend());
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.hedge;
+
+import static org.testng.Assert.assertEquals;
+
+import org.testng.annotations.Test;
+
+public class LatencyWindowTest {
+
+	@Test
+	public void testUnknownUntilEnoughSamples() throws Exception {
+		LatencyWindow window = new LatencyWindow(1024, 95);
+
+		for (int i = 1; i < LatencyWindow.MIN_SAMPLES; i++) {
+			window.record(i);
+		}
+
+		assertEquals(window.getPercentileNanos(), -1);
+	}
+
+	@Test
+	public void testPercentile() throws Exception {
+		LatencyWindow window = new LatencyWindow(1024, 95);
+
+		for (int i = 96; i > 0; i--) {
+			window.record(i);
+		}
+
+		assertEquals(window.getPercentileNanos(), 92);
+	}
+
+	@Test
+	public void testOnlyMostRecentSamplesCount() throws Exception {
+		LatencyWindow window = new LatencyWindow(32, 50);
+
+		for (int i = 0; i < 32; i++) {
+			window.record(1000);
+		}
+		assertEquals(window.getPercentileNanos(), 1000);
+		for (int i = 0; i < 32; i++) {
+			window.record(10);
+		}
+
+		assertEquals(window.getPercentileNanos(), 10);
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.http;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class ByteRangesTest {
+	private static final String LAST_MODIFIED = "Thu, 01 Jan 2026 10:00:00 GMT";
+	private static final Map<String, String> RESPONSE = Map.of("ETag", "\"v1\"", "Last-Modified",
+			LAST_MODIFIED);
+
+	@DataProvider(name = "ranges")
+	public Object[][] ranges() {
+		return new Object[][] { { "bytes=0-99", List.of(new ByteRange(0, 99)) },
+				{ "bytes=100-", List.of(new ByteRange(100, 999)) },
+				{ "bytes=-100", List.of(new ByteRange(900, 999)) },
+				{ "bytes=-2000", List.of(new ByteRange(0, 999)) },
+				{ "bytes=900-5000", List.of(new ByteRange(900, 999)) },
+				{ "Bytes=5-9", List.of(new ByteRange(5, 9)) },
+				{ "bytes=500-599, 0-9", List.of(new ByteRange(0, 9), new ByteRange(500, 599)) },
+				{ "bytes=0-9,5-19,20-29", List.of(new ByteRange(0, 29)) },
+				{ "bytes=0-9,,1000-1100", List.of(new ByteRange(0, 9)) } };
+	}
+
+	@Test(dataProvider = "ranges")
+	public void testSelect(String range, List<ByteRange> expected) throws Exception {
+		assertEquals(select(Map.of("Range", range), 1000), Optional.of(expected));
+	}
+
+	private Optional<List<ByteRange>> select(Map<String, String> requestHeaders, long length) {
+		return ByteRanges.select(requestHeaders, RESPONSE, length);
+	}
+
+	@DataProvider(name = "ignoredRanges")
+	public Object[][] ignoredRanges() {
+		return new Object[][] { { "items=0-9" }, { "bytes=" }, { "bytes=9-0" }, { "bytes=a-9" },
+				{ "bytes=0-9;" }, { "bytes=5" }, { "bytes=--5" }, { "bytes=+1-9" },
+				{ "bytes=0-99999999999999999999" },
+				{ "bytes=" + "0-0,".repeat(ByteRanges.MAX_RANGES + 1) } };
+	}
+
+	@Test(dataProvider = "ignoredRanges")
+	public void testInvalidRangeIsIgnored(String range) throws Exception {
+		assertTrue(select(Map.of("Range", range), 1000).isEmpty());
+	}
+
+	@Test
+	public void testNoRange() throws Exception {
+		assertTrue(select(Map.of(), 1000).isEmpty());
+	}
+
+	@Test
+	public void testUnknownLengthIgnoresRange() throws Exception {
+		assertTrue(select(Map.of("Range", "bytes=0-9"), -1).isEmpty());
+	}
+
+	@Test
+	public void testHeaderNameIsNotCaseSensitive() throws Exception {
+		assertEquals(select(Map.of("range", "bytes=0-9"), 1000),
+				Optional.of(List.of(new ByteRange(0, 9))));
+	}
+
+	@Test
+	public void testUnsatisfiableRanges() throws Exception {
+		assertEquals(select(Map.of("Range", "bytes=1000-"), 1000), Optional.of(List.of()));
+		assertEquals(select(Map.of("Range", "bytes=-0"), 1000), Optional.of(List.of()));
+		assertEquals(select(Map.of("Range", "bytes=0-9"), 0), Optional.of(List.of()));
+		assertEquals(select(Map.of("Range", "bytes=2000-2999,1000-"), 1000),
+				Optional.of(List.of()));
+	}
+
+	@Test
+	public void testIfRangeMatchingEtag() throws Exception {
+		assertEquals(select(Map.of("Range", "bytes=0-9", "If-Range", "\"v1\""), 1000),
+				Optional.of(List.of(new ByteRange(0, 9))));
+	}
+
+	@Test
+	public void testIfRangeOtherEtagSendsFullRepresentation() throws Exception {
+		assertTrue(select(Map.of("Range", "bytes=0-9", "If-Range", "\"v0\""), 1000).isEmpty());
+	}
+
+	@Test
+	public void testIfRangeWeakEtagNeverMatches() throws Exception {
+		assertTrue(select(Map.of("Range", "bytes=0-9", "If-Range", "W/\"v1\""), 1000).isEmpty());
+		assertTrue(ByteRanges.select(Map.of("Range", "bytes=0-9", "If-Range", "\"v1\""),
+				Map.of("ETag", "W/\"v1\""), 1000).isEmpty());
+	}
+
+	@Test
+	public void testIfRangeMatchingDate() throws Exception {
+		assertEquals(select(Map.of("Range", "bytes=0-9", "If-Range", LAST_MODIFIED), 1000),
+				Optional.of(List.of(new ByteRange(0, 9))));
+	}
+
+	@Test
+	public void testIfRangeOtherDateSendsFullRepresentation() throws Exception {
+		assertTrue(select(Map.of("Range", "bytes=0-9", "If-Range",
+				"Fri, 02 Jan 2026 10:00:00 GMT"), 1000).isEmpty());
+		assertTrue(ByteRanges.select(Map.of("Range", "bytes=0-9", "If-Range", LAST_MODIFIED),
+				Map.of(), 1000).isEmpty());
+	}
+
+	@Test
+	public void testByteRange() throws Exception {
+		ByteRange range = new ByteRange(10, 19);
+
+		assertEquals(range.length(), 10);
+		assertEquals(range.toContentRange(1000), "bytes 10-19/1000");
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "first must be at least 0 and last at least first")
+	public void testByteRangeLastBeforeFirst() throws Exception {
+		new ByteRange(10, 9);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void testByteRangeNegativeFirst() throws Exception {
+		new ByteRange(-1, 9);
+	}
+}
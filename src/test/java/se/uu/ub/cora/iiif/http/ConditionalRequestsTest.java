@@ -0,0 +1,155 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.http;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+public class ConditionalRequestsTest {
+	private static final String LAST_MODIFIED = "Thu, 01 Jan 2026 10:00:00 GMT";
+	private static final Map<String, String> STORED = Map.of("ETag", "\"v1\"", "Last-Modified",
+			LAST_MODIFIED, "Content-Type", "image/jpeg", "Content-Length", "8");
+
+	@Test
+	public void testIfNoneMatch() throws Exception {
+		assertTrue(isNotModified("If-None-Match", "\"v1\""));
+		assertTrue(isNotModified("If-None-Match", "\"v0\", W/\"v1\""));
+		assertTrue(isNotModified("If-None-Match", "*"));
+		assertFalse(isNotModified("If-None-Match", "\"v0\""));
+	}
+
+	private boolean isNotModified(String name, String value) {
+		return ConditionalRequests.isNotModified(Map.of(name, value), STORED);
+	}
+
+	@Test
+	public void testIfNoneMatchWithoutStoredEtag() throws Exception {
+		assertFalse(ConditionalRequests.isNotModified(Map.of("If-None-Match", "*"), Map.of()));
+	}
+
+	@Test
+	public void testIfModifiedSince() throws Exception {
+		assertTrue(isNotModified("If-Modified-Since", LAST_MODIFIED));
+		assertTrue(isNotModified("If-Modified-Since", "Thu, 01 Jan 2026 11:00:00 GMT"));
+		assertFalse(isNotModified("If-Modified-Since", "Thu, 01 Jan 2026 09:00:00 GMT"));
+		assertFalse(isNotModified("If-Modified-Since", "not a date"));
+	}
+
+	@Test
+	public void testIfNoneMatchTakesPrecedenceOverIfModifiedSince() throws Exception {
+		assertFalse(ConditionalRequests.isNotModified(
+				Map.of("If-None-Match", "\"v0\"", "If-Modified-Since", LAST_MODIFIED), STORED));
+	}
+
+	@Test
+	public void testFreshnessLifetime() throws Exception {
+		Duration defaultLifetime = Duration.ofMinutes(10);
+
+		assertEquals(lifetime(Map.of(), defaultLifetime), defaultLifetime);
+		assertEquals(lifetime(Map.of("Cache-Control", "public, max-age=60"), defaultLifetime),
+				Duration.ofSeconds(60));
+		assertEquals(lifetime(Map.of("cache-control", "no-cache"), defaultLifetime),
+				Duration.ZERO);
+		assertEquals(lifetime(Map.of("Cache-Control", "max-age=soon"), defaultLifetime),
+				defaultLifetime);
+	}
+
+	@Test
+	public void testFreshnessLifetimeDirectivesAreCaseInsensitive() throws Exception {
+		Duration defaultLifetime = Duration.ofMinutes(10);
+
+		assertEquals(lifetime(Map.of("Cache-Control", "Public, Max-Age=60"), defaultLifetime),
+				Duration.ofSeconds(60));
+		assertEquals(lifetime(Map.of("Cache-Control", "max-age=60, No-Cache"), defaultLifetime),
+				Duration.ZERO);
+		assertEquals(lifetime(Map.of("Cache-Control", "max-age=\"60\""), defaultLifetime),
+				Duration.ofSeconds(60));
+	}
+
+	@Test
+	public void testSharedMaxAgeIsUsedBeforeMaxAge() throws Exception {
+		Duration defaultLifetime = Duration.ofMinutes(10);
+
+		assertEquals(lifetime(Map.of("Cache-Control", "max-age=60, s-maxage=600"),
+				defaultLifetime), Duration.ofSeconds(600));
+		assertEquals(lifetime(Map.of("Cache-Control", "S-MAXAGE=0, max-age=60"), defaultLifetime),
+				Duration.ZERO);
+	}
+
+	@Test
+	public void testIsMarkedNotToBeStored() throws Exception {
+		assertTrue(ConditionalRequests
+				.isMarkedNotToBeStored(Map.of("cache-control", "private, No-Store")));
+		assertFalse(ConditionalRequests.isMarkedNotToBeStored(Map.of("Cache-Control", "public")));
+		assertFalse(ConditionalRequests.isMarkedNotToBeStored(Map.of()));
+	}
+
+	@Test
+	public void testPrivateIsNotToBeStored() throws Exception {
+		assertTrue(ConditionalRequests
+				.isMarkedNotToBeStored(Map.of("Cache-Control", "Private, max-age=60")));
+		assertTrue(ConditionalRequests.isMarkedNotToBeStored(
+				Map.of("Cache-Control", "private", "ETag", "\"someEtag\"")));
+	}
+
+	@Test
+	public void testNoCacheIsNotToBeStoredWithoutValidator() throws Exception {
+		assertTrue(ConditionalRequests.isMarkedNotToBeStored(Map.of("Cache-Control", "no-cache")));
+		assertFalse(ConditionalRequests.isMarkedNotToBeStored(
+				Map.of("Cache-Control", "no-cache", "ETag", "\"someEtag\"")));
+		assertFalse(ConditionalRequests.isMarkedNotToBeStored(Map.of("Cache-Control", "no-cache",
+				"Last-Modified", "Wed, 01 Jan 2025 00:00:00 GMT")));
+	}
+
+	private Duration lifetime(Map<String, String> headers, Duration defaultLifetime) {
+		return ConditionalRequests.freshnessLifetime(headers, defaultLifetime);
+	}
+
+	@Test
+	public void testCreateRevalidationHeaders() throws Exception {
+		Map<String, String> headers = ConditionalRequests.createRevalidationHeaders(
+				Map.of("Accept", "image/jpeg", "if-none-match", "\"v0\"", "If-Range", "\"v0\""),
+				STORED);
+
+		assertEquals(headers, Map.of("Accept", "image/jpeg", "If-None-Match", "\"v1\"",
+				"If-Modified-Since", LAST_MODIFIED));
+	}
+
+	@Test
+	public void testCreateNotModifiedHeaders() throws Exception {
+		assertEquals(ConditionalRequests.createNotModifiedHeaders(STORED),
+				Map.of("ETag", "\"v1\"", "Last-Modified", LAST_MODIFIED));
+	}
+
+	@Test
+	public void testUpdateStoredHeaders() throws Exception {
+		Map<String, String> updated = ConditionalRequests.updateStoredHeaders(STORED,
+				Map.of("etag", "\"v2\"", "Cache-Control", "max-age=60", "Content-Length", "0"));
+
+		assertEquals(updated, Map.of("ETag", "\"v2\"", "Last-Modified", LAST_MODIFIED,
+				"Content-Type", "image/jpeg", "Content-Length", "8", "Cache-Control",
+				"max-age=60"));
+	}
+}
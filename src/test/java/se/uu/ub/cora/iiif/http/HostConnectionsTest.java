@@ -0,0 +1,108 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.http;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class HostConnectionsTest {
+	private static final Duration LONG = Duration.ofSeconds(10);
+	private HostConnections hostConnections;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		hostConnections = new HostConnections(2);
+	}
+
+	@Test
+	public void testLeaseIsGrantedWhileAvailable() throws Exception {
+		assertTrue(hostConnections.leaseAsync(LONG).isDone());
+		assertTrue(hostConnections.leaseAsync(LONG).isDone());
+
+		assertFalse(hostConnections.leaseAsync(LONG).isDone());
+		assertEquals(hostConnections.leased(), 2);
+		assertEquals(hostConnections.waiting(), 1);
+		assertEquals(hostConnections.leasesWaitedFor(), 1);
+	}
+
+	@Test
+	public void testReleaseHandsLeaseOverInOrder() throws Exception {
+		hostConnections.leaseAsync(LONG);
+		hostConnections.leaseAsync(LONG);
+		CompletableFuture<Void> first = hostConnections.leaseAsync(LONG);
+		CompletableFuture<Void> second = hostConnections.leaseAsync(LONG);
+
+		hostConnections.release();
+
+		assertTrue(first.isDone());
+		assertFalse(second.isDone());
+		assertEquals(hostConnections.leased(), 2);
+		assertEquals(hostConnections.leasesGranted(), 3);
+	}
+
+	@Test
+	public void testReleaseWithoutWaitingMakesLeaseAvailable() throws Exception {
+		hostConnections.leaseAsync(LONG);
+
+		hostConnections.release();
+
+		assertEquals(hostConnections.leased(), 0);
+	}
+
+	@Test
+	public void testWaitingTimesOut() throws Exception {
+		hostConnections.leaseAsync(LONG);
+		hostConnections.leaseAsync(LONG);
+
+		CompletableFuture<Void> lease = hostConnections.leaseAsync(Duration.ofMillis(10));
+
+		try {
+			lease.get(5, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+		assertEquals(hostConnections.leaseTimeouts(), 1);
+		assertEquals(hostConnections.waiting(), 0);
+	}
+
+	@Test
+	public void testCancelledWaiterIsSkipped() throws Exception {
+		hostConnections.leaseAsync(LONG);
+		hostConnections.leaseAsync(LONG);
+		CompletableFuture<Void> cancelled = hostConnections.leaseAsync(LONG);
+		CompletableFuture<Void> next = hostConnections.leaseAsync(LONG);
+
+		cancelled.cancel(false);
+		hostConnections.release();
+
+		assertTrue(next.isDone());
+		assertEquals(hostConnections.leased(), 2);
+		assertEquals(hostConnections.leaseTimeouts(), 0);
+	}
+}
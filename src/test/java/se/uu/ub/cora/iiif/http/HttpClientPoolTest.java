@@ -0,0 +1,234 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.http;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.binary.BinaryException;
+import se.uu.ub.cora.iiif.standin.ImageServerStandIn;
+import se.uu.ub.cora.iiif.standin.ImageServerStandIn.Response;
+
+public class HttpClientPoolTest {
+	private ImageServerStandIn imageServer;
+	private HttpClientPool pool;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		imageServer = ImageServerStandIn.start(request -> {
+			Thread.sleep(50);
+			return Response.withBody(200, "someTile");
+		});
+		pool = new HttpClientPool(
+				new PoolSettings(2, Duration.ofSeconds(5), Duration.ofSeconds(5)));
+	}
+
+	@AfterMethod
+	private void afterMethod() {
+		imageServer.close();
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class)
+	public void testAtLeastOneConnectionPerHost() throws Exception {
+		new PoolSettings(0, Duration.ofSeconds(1), Duration.ofSeconds(1));
+	}
+
+	@Test
+	public void testUsesHttp11() throws Exception {
+		assertEquals(pool.onlyForTestGetHttpClient().version(), HttpClient.Version.HTTP_1_1);
+	}
+
+	@Test
+	public void testConnectionIsLeasedUntilBodyIsRead() throws Exception {
+		HttpResponse<InputStream> response = pool.send(createRequest());
+
+		assertEquals(pool.getMetrics().leased(), 1);
+		response.body().readAllBytes();
+		assertEquals(pool.getMetrics().leased(), 0);
+	}
+
+	@Test
+	public void testConnectionIsReleasedWhenBodyIsClosed() throws Exception {
+		HttpResponse<InputStream> response = pool.send(createRequest());
+
+		response.body().close();
+
+		assertEquals(pool.getMetrics().leased(), 0);
+	}
+
+	private HttpRequest createRequest() {
+		return HttpRequest.newBuilder(URI.create(imageServer.getBaseUrl() + "someTile")).GET()
+				.build();
+	}
+
+	@Test
+	public void testConnectionsPerHostAreLimited() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<byte[]>> results = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			results.add(executor.submit(() -> pool.send(createRequest()).body().readAllBytes()));
+		}
+		for (Future<byte[]> result : results) {
+			assertEquals(new String(result.get()), "someTile");
+		}
+		executor.shutdown();
+
+		assertTrue(imageServer.getMaxConcurrentRequests() <= 2);
+		assertTrue(imageServer.getConnectionsAccepted() <= 2);
+		PoolMetrics metrics = pool.getMetrics();
+		assertEquals(metrics.hosts(), 1);
+		assertEquals(metrics.leasesGranted(), 8);
+		assertTrue(metrics.leasesWaitedFor() > 0);
+		assertEquals(metrics.leaseTimeouts(), 0);
+	}
+
+	@Test
+	public void testLeaseTimesOut() throws Exception {
+		pool = new HttpClientPool(
+				new PoolSettings(1, Duration.ofSeconds(5), Duration.ofMillis(10)));
+		HttpResponse<InputStream> leasedResponse = pool.send(createRequest());
+
+		try {
+			pool.send(createRequest());
+			fail("It should throw an exception");
+		} catch (BinaryException e) {
+			assertEquals(e.getMessage(), "No connection to http://127.0.0.1:"
+					+ imageServer.getPort() + " available within 10 ms");
+		}
+		leasedResponse.body().close();
+		assertEquals(pool.getMetrics().leaseTimeouts(), 1);
+	}
+
+	@Test
+	public void testLeaseIsReleasedWhenCallFails() throws Exception {
+		HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:1/")).GET()
+				.build();
+		try {
+			pool.send(request);
+			fail("It should throw an exception");
+		} catch (BinaryException e) {
+			assertEquals(pool.getMetrics().leased(), 0);
+		}
+	}
+
+	@Test
+	public void testSendAsyncDoesNotHoldCallingThread() throws Exception {
+		List<CompletableFuture<HttpResponse<InputStream>>> responses = new ArrayList<>();
+		for (int i = 0; i < 6; i++) {
+			responses.add(pool.sendAsync(createRequest()));
+		}
+
+		assertEquals(waitingFor(pool), 4);
+		for (CompletableFuture<HttpResponse<InputStream>> response : responses) {
+			assertEquals(new String(response.get(5, TimeUnit.SECONDS).body().readAllBytes()),
+					"someTile");
+		}
+		assertEquals(pool.getMetrics().leased(), 0);
+		assertEquals(pool.getMetrics().leasesGranted(), 6);
+		assertTrue(imageServer.getMaxConcurrentRequests() <= 2);
+	}
+
+	private int waitingFor(HttpClientPool pool) {
+		return pool.onlyForTestGetNumberOfWaitingLeases();
+	}
+
+	@Test
+	public void testSendAsyncLeaseTimesOut() throws Exception {
+		pool = new HttpClientPool(
+				new PoolSettings(1, Duration.ofSeconds(5), Duration.ofMillis(10)));
+		HttpResponse<InputStream> leasedResponse = pool.send(createRequest());
+
+		CompletableFuture<HttpResponse<InputStream>> response = pool.sendAsync(createRequest());
+
+		try {
+			response.get(5, TimeUnit.SECONDS);
+			fail("It should throw an exception");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof BinaryException);
+			assertEquals(e.getCause().getMessage(), "No connection to http://127.0.0.1:"
+					+ imageServer.getPort() + " available within 10 ms");
+		}
+		assertEquals(waitingFor(pool), 0);
+		leasedResponse.body().close();
+		assertEquals(pool.getMetrics().leased(), 0);
+	}
+
+	@Test
+	public void testCancelWhileWaitingForLeaseGivesUpPlaceInQueue() throws Exception {
+		pool = new HttpClientPool(
+				new PoolSettings(1, Duration.ofSeconds(5), Duration.ofSeconds(5)));
+		HttpResponse<InputStream> leasedResponse = pool.send(createRequest());
+		CompletableFuture<HttpResponse<InputStream>> response = pool.sendAsync(createRequest());
+
+		response.cancel(true);
+		leasedResponse.body().close();
+
+		assertEquals(waitingFor(pool), 0);
+		assertEquals(pool.getMetrics().leased(), 0);
+		assertEquals(imageServer.getRequests().size(), 1);
+	}
+
+	@Test
+	public void testCancelDuringExchangeReleasesLease() throws Exception {
+		CompletableFuture<HttpResponse<InputStream>> response = pool.sendAsync(createRequest());
+
+		response.cancel(true);
+
+		waitUntilNoLeases();
+		assertEquals(pool.getMetrics().leased(), 0);
+	}
+
+	private void waitUntilNoLeases() throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (pool.getMetrics().leased() > 0 && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+	}
+
+	@Test
+	public void testDiscardedBodyReleasesLeaseBeforeResponse() throws Exception {
+		HttpResponse<InputStream> response = pool
+				.sendAsync(createRequest(), status -> status == 200).get(5, TimeUnit.SECONDS);
+
+		assertEquals(pool.getMetrics().leased(), 0);
+		assertEquals(response.body().read(), -1);
+		pool.send(createRequest()).body().close();
+		assertEquals(imageServer.getConnectionsAccepted(), 1);
+	}
+}
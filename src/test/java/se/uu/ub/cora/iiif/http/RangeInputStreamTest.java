@@ -0,0 +1,149 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.http;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+
+import org.testng.annotations.Test;
+
+public class RangeInputStreamTest {
+	private static final String BODY = "0123456789abcdefghij";
+
+	private InputStream createBody() {
+		return new ByteArrayInputStream(BODY.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	private String readAll(InputStream inputStream) throws IOException {
+		return new String(inputStream.readAllBytes(), StandardCharsets.US_ASCII);
+	}
+
+	@Test
+	public void testReadsOnlyRange() throws Exception {
+		InputStream range = new RangeInputStream(createBody(), new ByteRange(5, 9));
+
+		assertEquals(readAll(range), "56789");
+		assertEquals(range.read(), -1);
+	}
+
+	@Test
+	public void testReadByByte() throws Exception {
+		InputStream range = new RangeInputStream(createBody(), new ByteRange(18, 19));
+
+		assertEquals(range.read(), 'i');
+		assertEquals(range.read(), 'j');
+		assertEquals(range.read(), -1);
+	}
+
+	@Test
+	public void testBodyIsNotSkippedUntilRead() throws Exception {
+		InputStream body = createBody();
+
+		InputStream range = new RangeInputStream(body, new ByteRange(5, 9));
+
+		assertEquals(body.available(), BODY.length());
+		assertEquals(range.available(), 0);
+		range.read();
+		assertEquals(range.available(), 4);
+	}
+
+	@Test
+	public void testSkipStaysInRange() throws Exception {
+		InputStream range = new RangeInputStream(createBody(), new ByteRange(5, 9));
+
+		assertEquals(range.skip(100), 5);
+		assertEquals(range.read(), -1);
+		assertFalse(range.markSupported());
+	}
+
+	@Test(expectedExceptions = EOFException.class, expectedExceptionsMessageRegExp = ""
+			+ "Body ended before the end of the requested range")
+	public void testBodyEndingInsideRange() throws Exception {
+		readAll(new RangeInputStream(createBody(), new ByteRange(15, 29)));
+	}
+
+	@Test(expectedExceptions = EOFException.class)
+	public void testBodyEndingBeforeRange() throws Exception {
+		new RangeInputStream(createBody(), new ByteRange(25, 29)).read();
+	}
+
+	@Test
+	public void testCloseClosesBody() throws Exception {
+		CloseRecordingInputStream body = new CloseRecordingInputStream(createBody());
+
+		new RangeInputStream(body, new ByteRange(0, 1)).close();
+
+		assertTrue(body.closed);
+	}
+
+	@Test
+	public void testMultipartBody() throws Exception {
+		MultipartRanges multipart = new MultipartRanges("someBoundary",
+				Optional.of("image/jpeg"), BODY.length(),
+				List.of(new ByteRange(0, 1), new ByteRange(10, 12)));
+		CloseRecordingInputStream body = new CloseRecordingInputStream(createBody());
+
+		InputStream multipartBody = multipart.createBody(body);
+
+		String expected = "--someBoundary\r\nContent-Type: image/jpeg\r\n"
+				+ "Content-Range: bytes 0-1/20\r\n\r\n01"
+				+ "\r\n--someBoundary\r\nContent-Type: image/jpeg\r\n"
+				+ "Content-Range: bytes 10-12/20\r\n\r\nabc" + "\r\n--someBoundary--\r\n";
+		assertEquals(readAll(multipartBody), expected);
+		assertEquals(multipart.getContentLength(), expected.length());
+		assertEquals(multipart.getContentType(), "multipart/byteranges; boundary=someBoundary");
+		multipartBody.close();
+		assertTrue(body.closed);
+	}
+
+	@Test
+	public void testMultipartBodyWithoutContentType() throws Exception {
+		MultipartRanges multipart = new MultipartRanges("b", Optional.empty(), BODY.length(),
+				List.of(new ByteRange(0, 0), new ByteRange(19, 19)));
+
+		String expected = "--b\r\nContent-Range: bytes 0-0/20\r\n\r\n0"
+				+ "\r\n--b\r\nContent-Range: bytes 19-19/20\r\n\r\nj\r\n--b--\r\n";
+		assertEquals(readAll(multipart.createBody(createBody())), expected);
+		assertEquals(multipart.getContentLength(), expected.length());
+	}
+
+	private static class CloseRecordingInputStream extends FilterInputStream {
+		boolean closed = false;
+
+		CloseRecordingInputStream(InputStream body) {
+			super(body);
+		}
+
+		@Override
+		public void close() throws IOException {
+			closed = true;
+			super.close();
+		}
+	}
+}
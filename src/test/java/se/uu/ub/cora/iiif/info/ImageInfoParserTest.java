@@ -0,0 +1,205 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.info;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+public class ImageInfoParserTest {
+
+	private static final String VERSION_3_INFO = """
+			{
+			  "@context": "http://iiif.io/api/image/3/context.json",
+			  "id": "https://example.org/iiif/some\\/Id",
+			  "type": "ImageService3",
+			  "protocol": "http://iiif.io/api/image",
+			  "profile": "level1",
+			  "width": 6000,
+			  "height": 4000,
+			  "maxArea": 1.0E8,
+			  "sizes": [ { "width": 150, "height": 100 } ],
+			  "tiles": [ { "width": 512, "height": 256, "scaleFactors": [ 1, 2, 4, 8 ] } ],
+			  "extraFeatures": [ "mirroring" ],
+			  "extraQualities": [ "color", "gray" ],
+			  "rights": null,
+			  "preferredFormats": [ "webp" ],
+			  "partOf": [],
+			  "service": {},
+			  "available": true,
+			  "note": "a \\"quoted\\" note \\u00e5"
+			}
+			""";
+
+	@Test
+	public void testParseVersion3() throws Exception {
+		ImageInfo imageInfo = ImageInfoParser.parse(VERSION_3_INFO);
+
+		assertEquals(imageInfo, new ImageInfo(6000, 4000,
+				List.of(new TileSize(512, 256, List.of(1, 2, 4, 8))),
+				List.of(new ImageSize(150, 100)), "level1", true));
+	}
+
+	@Test
+	public void testParseVersion2TileWithoutHeight() throws Exception {
+		String json = """
+				{"@context":"http://iiif.io/api/image/2/context.json","@id":"someId",
+				"width":300,"height":200,"tiles":[{"width":256,"scaleFactors":[1,2]}],
+				"profile":["http://iiif.io/api/image/2/level2.json",{"qualities":["color"]}]}
+				""";
+
+		ImageInfo imageInfo = ImageInfoParser.parse(json);
+
+		assertEquals(imageInfo.tiles(), List.of(new TileSize(256, 256, List.of(1, 2))));
+		assertEquals(imageInfo.profile(), "http://iiif.io/api/image/2/level2.json");
+		assertTrue(imageInfo.color());
+	}
+
+	@Test
+	public void testNotOfferedInColor() throws Exception {
+		ImageInfo imageInfo = ImageInfoParser.parse("""
+				{"width":300,"height":200,"profile":["level2",{"qualities":["gray"]}],
+				"extraQualities":["bitonal"]}
+				""");
+
+		assertFalse(imageInfo.color());
+		assertEquals(imageInfo.profile(), "level2");
+	}
+
+	@Test
+	public void testProfileNotAString() throws Exception {
+		ImageInfo imageInfo = ImageInfoParser.parse("{\"width\":3,\"height\":2,\"profile\":{}}");
+
+		assertEquals(imageInfo.profile(), "");
+	}
+
+	@Test
+	public void testPositionOfId() throws Exception {
+		String json = "{\"service\":{\"id\":\"inner\"},\"id\" : \"some\\\"Id\",\"width\":3,"
+				+ "\"height\":2}";
+		ImageInfoParser parser = new ImageInfoParser(json);
+
+		parser.readImageInfo();
+
+		assertEquals(json.substring(parser.getIdStart(), parser.getIdEnd()), "some\\\"Id");
+	}
+
+	@Test
+	public void testPositionOfVersion2Id() throws Exception {
+		String json = "{\"@id\":\"someId\",\"width\":3,\"height\":2}";
+		ImageInfoParser parser = new ImageInfoParser(json);
+
+		parser.readImageInfo();
+
+		assertEquals(json.substring(parser.getIdStart(), parser.getIdEnd()), "someId");
+	}
+
+	@Test
+	public void testNoId() throws Exception {
+		ImageInfoParser parser = new ImageInfoParser("{\"width\":3,\"height\":2,\"id\":5}");
+
+		parser.readImageInfo();
+
+		assertEquals(parser.getIdStart(), -1);
+		assertEquals(parser.getIdEnd(), -1);
+	}
+
+	@Test
+	public void testParseWithoutTiles() throws Exception {
+		ImageInfo imageInfo = ImageInfoParser.parse("{\"width\":300,\"height\":200}");
+
+		assertEquals(imageInfo, new ImageInfo(300, 200, List.of()));
+	}
+
+	@Test
+	public void testInvalidScaleFactorsAreSkipped() throws Exception {
+		ImageInfo imageInfo = ImageInfoParser.parse("""
+				{"width":300,"height":200,"tiles":[{"width":256,"scaleFactors":[0,"2",4]}]}
+				""");
+
+		assertEquals(imageInfo.tiles().get(0).scaleFactors(), List.of(4));
+	}
+
+	@Test
+	public void testMissingWidth() throws Exception {
+		assertInvalid("{\"height\":200}", "info.json has no valid width");
+	}
+
+	@Test
+	public void testHeightNotANumber() throws Exception {
+		assertInvalid("{\"width\":300,\"height\":\"200\"}", "info.json has no valid height");
+	}
+
+	@Test
+	public void testNotAnObject() throws Exception {
+		assertInvalid("[1, 2]", "info.json is not a JSON object");
+	}
+
+	@Test
+	public void testNotJson() throws Exception {
+		assertInvalid("<html>", "info.json is not valid JSON, unexpected character at position 0");
+	}
+
+	@Test
+	public void testUnterminatedObject() throws Exception {
+		assertInvalid("{\"width\":300", "info.json is not valid JSON, expected '}' at position 12");
+	}
+
+	@Test
+	public void testUnterminatedString() throws Exception {
+		assertInvalid("{\"width", "info.json is not valid JSON, unterminated string at position 7");
+	}
+
+	@Test
+	public void testContentAfterDocument() throws Exception {
+		assertInvalid("{} {}",
+				"info.json is not valid JSON, unexpected content after the document at position 3");
+	}
+
+	@Test
+	public void testEmptyDocument() throws Exception {
+		assertInvalid(" ", "info.json is not valid JSON, unexpected end of document at position 1");
+	}
+
+	private void assertInvalid(String json, String expectedMessage) {
+		try {
+			ImageInfoParser.parse(json);
+			fail("It should throw an exception");
+		} catch (InvalidImageInfoException e) {
+			assertEquals(e.getMessage(), expectedMessage);
+		}
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "width and height must be at least 1")
+	public void testImageInfoWithoutSize() throws Exception {
+		new ImageInfo(0, 200, List.of());
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "width and height must be at least 1")
+	public void testTileSizeWithoutSize() throws Exception {
+		new TileSize(256, 0, List.of());
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.info;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.iiif.cache.CacheStatistics;
+import se.uu.ub.cora.iiif.spies.SettableClock;
+import se.uu.ub.cora.iiif.uri.SourceImage;
+
+public class InfoCacheTest {
+	private static final String INFO_JSON = "{\"width\":300,\"height\":200}";
+	private static final int BODY_LENGTH = INFO_JSON.length();
+	private SettableClock clock;
+	private InfoCache cache;
+	private InfoDocument document;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		clock = new SettableClock(Instant.parse("2026-01-01T00:00:00Z"));
+		cache = new InfoCache(2, Duration.ofSeconds(30), clock);
+		document = createDocument();
+	}
+
+	private InfoDocument createDocument() {
+		return InfoDocument.from("someId", INFO_JSON.getBytes(StandardCharsets.UTF_8), Map.of(),
+				"");
+	}
+
+	@Test
+	public void testNotStored() throws Exception {
+		assertTrue(cache.get("someId").isEmpty());
+
+		assertEquals(cache.getStatistics(), new CacheStatistics(0, 1, 0, 0, 0));
+	}
+
+	@Test
+	public void testStored() throws Exception {
+		cache.put("someId", document);
+
+		assertSame(cache.get("someId").get(), document);
+		assertEquals(cache.getStatistics(), new CacheStatistics(1, 0, 0, 1, BODY_LENGTH));
+	}
+
+	@Test
+	public void testExpires() throws Exception {
+		cache.put("someId", document);
+		clock.advance(Duration.ofSeconds(29));
+		assertTrue(cache.get("someId").isPresent());
+
+		clock.advance(Duration.ofSeconds(1));
+
+		assertTrue(cache.get("someId").isEmpty());
+		assertEquals(cache.getStatistics(), new CacheStatistics(1, 1, 0, 0, 0));
+	}
+
+	@Test
+	public void testReplacing() throws Exception {
+		cache.put("someId", document);
+		InfoDocument newDocument = createDocument();
+
+		cache.put("someId", newDocument);
+
+		assertSame(cache.get("someId").get(), newDocument);
+		assertEquals(cache.getStatistics().bytes(), BODY_LENGTH);
+	}
+
+	@Test
+	public void testStoredLongestAgoIsEvicted() throws Exception {
+		cache.put("id1", document);
+		cache.put("id2", document);
+		cache.put("id3", document);
+
+		assertTrue(cache.get("id1").isEmpty());
+		assertTrue(cache.get("id2").isPresent());
+		assertTrue(cache.get("id3").isPresent());
+		assertEquals(cache.getStatistics(), new CacheStatistics(2, 1, 1, 2, 2L * BODY_LENGTH));
+	}
+
+	@Test
+	public void testInvalidate() throws Exception {
+		cache.put("someId", document);
+
+		cache.invalidate("someId");
+
+		assertTrue(cache.get("someId").isEmpty());
+		assertEquals(cache.getStatistics().bytes(), 0);
+	}
+
+	@Test
+	public void testLookup() throws Exception {
+		cache.put("someId", document);
+
+		assertEquals(cache.lookup("someId"), Optional.of(new SourceImage(300, 200, false)));
+		assertEquals(cache.lookup("otherId"), Optional.empty());
+		assertEquals(cache.getStatistics(), new CacheStatistics(0, 0, 0, 1, BODY_LENGTH));
+	}
+
+	@Test
+	public void testLookupExpired() throws Exception {
+		cache.put("someId", document);
+		clock.advance(Duration.ofSeconds(30));
+
+		assertEquals(cache.lookup("someId"), Optional.empty());
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.info;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.iiif.uri.SourceImage;
+
+public class InfoDocumentTest {
+	private static final String INFO_JSON = "{\"id\":\"http://internal:8080/iiif/someId\","
+			+ "\"service\":[{\"id\":\"http://internal:8080/auth\"}],\"width\":300,\"height\":200,"
+			+ "\"extraQualities\":[\"color\"]}";
+	private static final Map<String, String> HEADERS = Map.of("Content-Type",
+			"application/ld+json");
+
+	private String readBody(IiifAdapterResponse response) throws Exception {
+		return new String(response.body().readAllBytes(), StandardCharsets.UTF_8);
+	}
+
+	private byte[] bytes(String json) {
+		return json.getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testKeepsDocumentWithoutPublicBaseUrl() throws Exception {
+		InfoDocument document = InfoDocument.from("someId", bytes(INFO_JSON), HEADERS, "");
+
+		IiifAdapterResponse response = document.createResponse();
+
+		assertEquals(response.status(), 200);
+		assertEquals(response.headers(), HEADERS);
+		assertEquals(readBody(response), INFO_JSON);
+		assertEquals(document.getImageInfo(), new ImageInfo(300, 200, List.of(), List.of(), "",
+				true));
+	}
+
+	@Test
+	public void testRewritesIdToPublicBaseUrl() throws Exception {
+		InfoDocument document = InfoDocument.from("some/Id", bytes(INFO_JSON), HEADERS,
+				"https://example.org/iiif/");
+
+		String body = readBody(document.createResponse());
+
+		assertEquals(body, INFO_JSON.replace("http://internal:8080/iiif/someId",
+				"https://example.org/iiif/some/Id"));
+		assertEquals(document.getBodyLength(), bytes(body).length);
+	}
+
+	@Test
+	public void testRewritesVersion2Id() throws Exception {
+		String json = "{\"@context\":\"http://iiif.io/api/image/2/context.json\",\"@id\" : "
+				+ "\"http://internal/someId\",\"width\":3,\"height\":2}";
+
+		InfoDocument document = InfoDocument.from("someId", bytes(json), HEADERS,
+				"https://example.org/");
+
+		assertEquals(readBody(document.createResponse()),
+				json.replace("http://internal/someId", "https://example.org/someId"));
+	}
+
+	@Test
+	public void testRewrittenIdIsEscaped() throws Exception {
+		InfoDocument document = InfoDocument.from("some\"Id\\", bytes(INFO_JSON), HEADERS,
+				"https://example.org/");
+
+		String body = readBody(document.createResponse());
+
+		assertEquals(body, INFO_JSON.replace("http://internal:8080/iiif/someId",
+				"https://example.org/some\\\"Id\\\\"));
+		ImageInfoParser.parse(body);
+	}
+
+	@Test
+	public void testDocumentWithoutIdIsKept() throws Exception {
+		String json = "{\"width\":3,\"height\":2}";
+
+		InfoDocument document = InfoDocument.from("someId", bytes(json), HEADERS,
+				"https://example.org/");
+
+		assertEquals(readBody(document.createResponse()), json);
+	}
+
+	@Test
+	public void testContentLengthFollowsRewrittenBody() throws Exception {
+		Map<String, String> headers = new LinkedHashMap<>();
+		headers.put("content-length", String.valueOf(INFO_JSON.length()));
+		headers.put("ETag", "\"someTag\"");
+
+		InfoDocument document = InfoDocument.from("someId", bytes(INFO_JSON), headers,
+				"https://example.org/");
+
+		assertEquals(document.getHeaders(), Map.of("ETag", "\"someTag\"", "Content-Length",
+				String.valueOf(document.getBodyLength())));
+	}
+
+	@Test
+	public void testEachResponseHasItsOwnBodyAndHeaders() throws Exception {
+		InfoDocument document = InfoDocument.from("someId", bytes(INFO_JSON), HEADERS, "");
+
+		IiifAdapterResponse first = document.createResponse();
+		IiifAdapterResponse second = document.createResponse();
+		first.headers().put("someHeader", "someValue");
+
+		assertNotSame(first.body(), second.body());
+		assertEquals(readBody(first), INFO_JSON);
+		assertEquals(readBody(second), INFO_JSON);
+		assertEquals(second.headers(), HEADERS);
+	}
+
+	@Test
+	public void testToSourceImage() throws Exception {
+		InfoDocument document = InfoDocument.from("someId", bytes(INFO_JSON), HEADERS, "");
+
+		assertEquals(document.toSourceImage(), new SourceImage(300, 200, true));
+	}
+
+	@Test
+	public void testInvalidDocument() throws Exception {
+		try {
+			InfoDocument.from("someId", bytes("<html>"), HEADERS, "");
+			fail("It should throw an exception");
+		} catch (InvalidImageInfoException e) {
+			assertEquals(e.getMessage(),
+					"info.json is not valid JSON, unexpected character at position 0");
+		}
+	}
+}
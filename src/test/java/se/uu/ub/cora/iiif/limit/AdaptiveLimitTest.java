@@ -0,0 +1,127 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.limit;
+
+import static org.testng.Assert.assertEquals;
+import static se.uu.ub.cora.iiif.limit.RequestPriority.HIGH;
+import static se.uu.ub.cora.iiif.limit.RequestPriority.LOW;
+import static se.uu.ub.cora.iiif.limit.RequestPriority.NORMAL;
+
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class AdaptiveLimitTest {
+	private AdaptiveLimit limit;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		limit = new AdaptiveLimit(10, 2, 20);
+	}
+
+	@Test
+	public void testInitialLimitIsKeptWithinBounds() throws Exception {
+		assertEquals(new AdaptiveLimit(1, 2, 20).getLimit(), 2);
+		assertEquals(new AdaptiveLimit(30, 2, 20).getLimit(), 20);
+	}
+
+	@Test
+	public void testIncreasesWhenHalfInUse() throws Exception {
+		limit.onSample(NORMAL, 100, 5, false);
+
+		assertEquals(limit.getLimit(), 11);
+	}
+
+	@Test
+	public void testDoesNotIncreaseWhenLittleInUse() throws Exception {
+		limit.onSample(NORMAL, 100, 4, false);
+
+		assertEquals(limit.getLimit(), 10);
+	}
+
+	@Test
+	public void testDecreasesWhenOverloaded() throws Exception {
+		limit.onSample(NORMAL, 100, 10, true);
+
+		assertEquals(limit.getLimit(), 9);
+	}
+
+	@Test
+	public void testDecreasesWhenSlowerThanAverage() throws Exception {
+		limit.onSample(NORMAL, 100, 0, false);
+
+		limit.onSample(NORMAL, 201, 10, false);
+
+		assertEquals(limit.getLimit(), 9);
+	}
+
+	@Test
+	public void testStaysWithinBounds() throws Exception {
+		for (int i = 0; i < 50; i++) {
+			limit.onSample(NORMAL, 100, 20, false);
+		}
+		assertEquals(limit.getLimit(), 20);
+		for (int i = 0; i < 50; i++) {
+			limit.onSample(NORMAL, 100, 20, true);
+		}
+		assertEquals(limit.getLimit(), 2);
+	}
+
+	@Test
+	public void testAverageLatency() throws Exception {
+		limit.onSample(NORMAL, 1000, 0, false);
+		assertEquals(limit.getAverageLatencyNanos(), 1000);
+
+		limit.onSample(NORMAL, 2000, 0, false);
+
+		assertEquals(limit.getAverageLatencyNanos(), 1050);
+	}
+
+	@Test
+	public void testSlowIsJudgedAgainstAverageOfSamePriority() throws Exception {
+		limit.onSample(HIGH, 100, 0, false);
+		limit.onSample(LOW, 1000, 0, false);
+
+		limit.onSample(LOW, 1500, 0, false);
+		assertEquals(limit.getLimit(), 10);
+
+		limit.onSample(HIGH, 201, 0, false);
+		assertEquals(limit.getLimit(), 9);
+	}
+
+	@Test
+	public void testAverageLatencyPerPriority() throws Exception {
+		limit.onSample(HIGH, 100, 0, false);
+		limit.onSample(LOW, 1000, 0, false);
+
+		assertEquals(limit.getAverageLatencyNanos(HIGH), 100);
+		assertEquals(limit.getAverageLatencyNanos(LOW), 1000);
+		assertEquals(limit.getAverageLatencyNanos(NORMAL), 0);
+	}
+
+	@Test
+	public void testOverloadedSamplesAreLeftOutOfAverages() throws Exception {
+		limit.onSample(NORMAL, 1000, 0, false);
+
+		limit.onSample(NORMAL, 1, 0, true);
+
+		assertEquals(limit.getAverageLatencyNanos(), 1000);
+		assertEquals(limit.getAverageLatencyNanos(NORMAL), 1000);
+	}
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.limit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.iiif.limit.ConcurrencyLimiter.Permit;
+
+public class ConcurrencyLimiterTest {
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+	private AtomicLong nanoTime;
+	private LimitSettings settings;
+	private ConcurrencyLimiter limiter;
+	private ExecutorService executor;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		nanoTime = new AtomicLong();
+		settings = new LimitSettings(1, 1, 1, 2, Duration.ofSeconds(10));
+		limiter = new ConcurrencyLimiter(settings, nanoTime::get);
+		executor = Executors.newCachedThreadPool();
+	}
+
+	@AfterMethod
+	private void afterMethod() {
+		executor.shutdownNow();
+	}
+
+	private Future<Permit> acquireInBackground(RequestPriority priority, int expectedQueued)
+			throws InterruptedException {
+		Future<Permit> permit = executor.submit(() -> limiter.acquire(priority));
+		waitUntilQueuedIs(expectedQueued);
+		return permit;
+	}
+
+	private void waitUntilQueuedIs(int expected) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (limiter.getMetrics().queued() != expected) {
+			if (System.nanoTime() > deadline) {
+				fail("Queue never reached " + expected);
+			}
+			Thread.sleep(1);
+		}
+	}
+
+	private LimitExceededException getFailure(Future<Permit> permit) throws Exception {
+		try {
+			permit.get(10, TimeUnit.SECONDS);
+			fail("It should throw an exception");
+			return null;
+		} catch (ExecutionException e) {
+			return (LimitExceededException) e.getCause();
+		}
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		assertSame(limiter.getSettings(), settings);
+		assertEquals(limiter.getMetrics(), new LimiterMetrics(1, 0, 0, 0, 0, 0, 0, 0));
+	}
+
+	@Test
+	public void testAcquireWithinLimit() throws Exception {
+		limiter.acquire(RequestPriority.NORMAL);
+
+		LimiterMetrics metrics = limiter.getMetrics();
+		assertEquals(metrics.inFlight(), 1);
+		assertEquals(metrics.accepted(), 1);
+	}
+
+	@Test
+	public void testReleaseFeedsLatency() throws Exception {
+		Permit permit = limiter.acquire(RequestPriority.NORMAL);
+		nanoTime.addAndGet(2_000_000);
+
+		permit.release(false);
+
+		LimiterMetrics metrics = limiter.getMetrics();
+		assertEquals(metrics.inFlight(), 0);
+		assertEquals(metrics.averageLatencyMicros(), 2000);
+	}
+
+	@Test
+	public void testWaitersAreLetThroughInPriorityOrder() throws Exception {
+		settings = new LimitSettings(1, 1, 1, 10, Duration.ofSeconds(10));
+		limiter = new ConcurrencyLimiter(settings, nanoTime::get);
+		Permit first = limiter.acquire(RequestPriority.NORMAL);
+		List<RequestPriority> order = new CopyOnWriteArrayList<>();
+		acquireAndRecord(RequestPriority.LOW, order, 1);
+		acquireAndRecord(RequestPriority.NORMAL, order, 2);
+		acquireAndRecord(RequestPriority.HIGH, order, 3);
+
+		first.release(false);
+
+		waitUntilQueuedIs(0);
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (order.size() < 3 && System.nanoTime() < deadline) {
+			Thread.sleep(1);
+		}
+		assertEquals(order,
+				List.of(RequestPriority.HIGH, RequestPriority.NORMAL, RequestPriority.LOW));
+	}
+
+	private void acquireAndRecord(RequestPriority priority, List<RequestPriority> order,
+			int expectedQueued) throws InterruptedException {
+		executor.submit(() -> {
+			Permit permit = limiter.acquire(priority);
+			order.add(priority);
+			permit.release(false);
+		});
+		waitUntilQueuedIs(expectedQueued);
+	}
+
+	@Test
+	public void testRejectedWhenQueueIsFull() throws Exception {
+		limiter.acquire(RequestPriority.NORMAL);
+		acquireInBackground(RequestPriority.NORMAL, 1);
+		acquireInBackground(RequestPriority.NORMAL, 2);
+
+		try {
+			limiter.acquire(RequestPriority.NORMAL);
+			fail("It should throw an exception");
+		} catch (LimitExceededException e) {
+			assertEquals(e.getMessage(), "Too many requests waiting for the image server");
+			assertEquals(e.getRetryAfterSeconds(), 1);
+		}
+		assertEquals(limiter.getMetrics().rejected(), 1);
+		assertEquals(limiter.getMetrics().queued(), 2);
+	}
+
+	@Test
+	public void testLowerPriorityWaiterIsShedWhenQueueIsFull() throws Exception {
+		limiter.acquire(RequestPriority.NORMAL);
+		acquireInBackground(RequestPriority.LOW, 1);
+		Future<Permit> newestLow = acquireInBackground(RequestPriority.LOW, 2);
+
+		Future<Permit> high = executor.submit(() -> limiter.acquire(RequestPriority.HIGH));
+
+		LimitExceededException e = getFailure(newestLow);
+		assertEquals(e.getMessage(), "Request shed for requests of higher priority");
+		waitUntilQueuedIs(2);
+		assertEquals(limiter.getMetrics().shed(), 1);
+		assertTrue(!high.isDone());
+	}
+
+	@Test
+	public void testQueueTimeout() throws Exception {
+		settings = new LimitSettings(1, 1, 1, 2, Duration.ofMillis(50));
+		limiter = new ConcurrencyLimiter(settings, nanoTime::get);
+		limiter.acquire(RequestPriority.NORMAL);
+
+		try {
+			limiter.acquire(RequestPriority.NORMAL);
+			fail("It should throw an exception");
+		} catch (LimitExceededException e) {
+			assertEquals(e.getMessage(), "Waited too long for the image server");
+		}
+		assertEquals(limiter.getMetrics().queueTimeouts(), 1);
+		assertEquals(limiter.getMetrics().queued(), 0);
+	}
+
+	@Test
+	public void testRetryAfterFollowsLatencyAndQueue() throws Exception {
+		Permit permit = limiter.acquire(RequestPriority.NORMAL);
+		nanoTime.addAndGet(2 * SECOND);
+		permit.release(false);
+		limiter.acquire(RequestPriority.NORMAL);
+		acquireInBackground(RequestPriority.NORMAL, 1);
+		acquireInBackground(RequestPriority.NORMAL, 2);
+
+		try {
+			limiter.acquire(RequestPriority.NORMAL);
+			fail("It should throw an exception");
+		} catch (LimitExceededException e) {
+			assertEquals(e.getRetryAfterSeconds(), 6);
+		}
+	}
+
+	@Test
+	public void testLimitAdaptsToOverload() throws Exception {
+		settings = new LimitSettings(10, 2, 20, 2, Duration.ofSeconds(10));
+		limiter = new ConcurrencyLimiter(settings, nanoTime::get);
+
+		limiter.acquire(RequestPriority.NORMAL).release(true);
+
+		assertEquals(limiter.getMetrics().limit(), 9);
+	}
+}
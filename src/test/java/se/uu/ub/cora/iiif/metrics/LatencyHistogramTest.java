@@ -0,0 +1,103 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.metrics;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class LatencyHistogramTest {
+	private LatencyHistogram histogram;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		histogram = new LatencyHistogram();
+	}
+
+	@Test
+	public void testEmpty() throws Exception {
+		assertEquals(histogram.getCount(), 0);
+		assertEquals(histogram.getTotalMicros(), 0);
+		assertEquals(histogram.getMaxMicros(), 0);
+		assertEquals(histogram.getValueAtPercentile(99), 0);
+	}
+
+	@Test
+	public void testSmallValuesAreExact() throws Exception {
+		for (long value = 0; value < 32; value++) {
+			assertEquals(LatencyHistogram.bucketIndex(value), value);
+			assertEquals(LatencyHistogram.highestValueInBucket((int) value), value);
+		}
+	}
+
+	@Test
+	public void testBucketsCoverValuesWithinPrecision() throws Exception {
+		for (long value = 32; value < LatencyHistogram.MAX_VALUE; value = value * 3 / 2 + 7) {
+			long highest = LatencyHistogram
+					.highestValueInBucket(LatencyHistogram.bucketIndex(value));
+
+			assertTrue(highest >= value);
+			assertTrue(highest - value <= value / 32, "value " + value + " highest " + highest);
+		}
+	}
+
+	@Test
+	public void testBucketsFollowEachOther() throws Exception {
+		int index = LatencyHistogram.bucketIndex(1000);
+
+		long highest = LatencyHistogram.highestValueInBucket(index);
+
+		assertEquals(LatencyHistogram.bucketIndex(highest + 1), index + 1);
+	}
+
+	@Test
+	public void testRecord() throws Exception {
+		histogram.record(10);
+		histogram.record(20);
+		histogram.record(3000);
+
+		assertEquals(histogram.getCount(), 3);
+		assertEquals(histogram.getTotalMicros(), 3030);
+		assertEquals(histogram.getMaxMicros(), 3000);
+	}
+
+	@Test
+	public void testPercentiles() throws Exception {
+		for (int value = 1; value <= 1000; value++) {
+			histogram.record(value);
+		}
+
+		assertEquals(histogram.getValueAtPercentile(0), 1);
+		assertEquals(histogram.getValueAtPercentile(50), 503);
+		assertEquals(histogram.getValueAtPercentile(99), 991);
+		assertEquals(histogram.getValueAtPercentile(100), 1000);
+	}
+
+	@Test
+	public void testValuesOutsideRangeAreClamped() throws Exception {
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE);
+
+		assertEquals(histogram.getValueAtPercentile(50), 0);
+		assertEquals(histogram.getMaxMicros(), LatencyHistogram.MAX_VALUE);
+		assertEquals(histogram.getValueAtPercentile(100), LatencyHistogram.MAX_VALUE);
+	}
+}
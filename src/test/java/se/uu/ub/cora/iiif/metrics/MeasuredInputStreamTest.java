@@ -0,0 +1,91 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.metrics;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class MeasuredInputStreamTest {
+	private List<Long> reported;
+	private MeasuredInputStream stream;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		reported = new ArrayList<>();
+		stream = new MeasuredInputStream(new ByteArrayInputStream(new byte[100]), reported::add);
+	}
+
+	@Test
+	public void testReportedAtEndOfBody() throws Exception {
+		stream.read();
+		stream.read(new byte[10]);
+		stream.skip(9);
+		assertEquals(reported, List.of());
+
+		stream.readAllBytes();
+
+		assertEquals(reported, List.of(100L));
+	}
+
+	@Test
+	public void testReportedOnceWhenClosedAfterEnd() throws Exception {
+		stream.readAllBytes();
+		stream.read();
+
+		stream.close();
+
+		assertEquals(reported, List.of(100L));
+	}
+
+	@Test
+	public void testReportedWhenClosedBeforeEnd() throws Exception {
+		stream.read(new byte[40]);
+
+		stream.close();
+
+		assertEquals(reported, List.of(40L));
+	}
+
+	@Test
+	public void testMarkIsNotSupported() throws Exception {
+		assertFalse(stream.markSupported());
+	}
+
+	@Test
+	public void testSubclassIsItsOwnListener() throws Exception {
+		MeasuredInputStream subclassed = new MeasuredInputStream(
+				new ByteArrayInputStream(new byte[100])) {
+			@Override
+			protected void bodyDone(long bytesRead) {
+				reported.add(bytesRead);
+			}
+		};
+
+		subclassed.readAllBytes();
+
+		assertEquals(reported, List.of(100L));
+	}
+}
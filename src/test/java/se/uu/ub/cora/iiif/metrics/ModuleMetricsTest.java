@@ -0,0 +1,78 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.metrics;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ModuleMetricsTest {
+	private ModuleMetrics metrics;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		metrics = new ModuleMetrics();
+	}
+
+	@Test
+	public void testEmpty() throws Exception {
+		assertEquals(metrics.getNames(), List.of());
+		assertEquals(metrics.readAll(), Map.of());
+		assertTrue(metrics.read("someName").isEmpty());
+	}
+
+	@Test
+	public void testReadingIsTakenWhenRead() throws Exception {
+		AtomicLong value = new AtomicLong(1);
+		metrics.register("someName", value::get);
+
+		assertEquals(metrics.read("someName"), Optional.of(1L));
+		value.set(2);
+		assertEquals(metrics.read("someName"), Optional.of(2L));
+	}
+
+	@Test
+	public void testNamesAreInAlphabeticalOrder() throws Exception {
+		metrics.register("transcoding.bytesSaved", () -> 3);
+		metrics.register("coalescing.calls", () -> 1);
+		metrics.register("limiter[someUrl].limit", () -> 2);
+
+		assertEquals(metrics.getNames(), List.of("coalescing.calls", "limiter[someUrl].limit",
+				"transcoding.bytesSaved"));
+		assertEquals(List.copyOf(metrics.readAll().entrySet()),
+				List.of(Map.entry("coalescing.calls", 1L), Map.entry("limiter[someUrl].limit", 2L),
+						Map.entry("transcoding.bytesSaved", 3L)));
+	}
+
+	@Test
+	public void testNameRegisteredAgainIsReadFromLastReading() throws Exception {
+		metrics.register("someName", () -> 1);
+		metrics.register("someName", () -> 2);
+
+		assertEquals(metrics.read("someName"), Optional.of(2L));
+		assertEquals(metrics.getNames(), List.of("someName"));
+	}
+}
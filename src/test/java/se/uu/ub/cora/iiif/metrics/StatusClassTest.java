@@ -0,0 +1,42 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.metrics;
+
+import static org.testng.Assert.assertEquals;
+
+import org.testng.annotations.Test;
+
+public class StatusClassTest {
+
+	@Test
+	public void testOf() throws Exception {
+		assertEquals(StatusClass.of(100), StatusClass.INFORMATIONAL);
+		assertEquals(StatusClass.of(200), StatusClass.SUCCESSFUL);
+		assertEquals(StatusClass.of(304), StatusClass.REDIRECTION);
+		assertEquals(StatusClass.of(404), StatusClass.CLIENT_ERROR);
+		assertEquals(StatusClass.of(599), StatusClass.SERVER_ERROR);
+	}
+
+	@Test
+	public void testInvalidStatusIsServerError() throws Exception {
+		assertEquals(StatusClass.of(99), StatusClass.SERVER_ERROR);
+		assertEquals(StatusClass.of(600), StatusClass.SERVER_ERROR);
+		assertEquals(StatusClass.of(-1), StatusClass.SERVER_ERROR);
+	}
+}
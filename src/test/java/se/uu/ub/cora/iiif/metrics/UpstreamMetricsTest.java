@@ -0,0 +1,65 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.metrics;
+
+import static org.testng.Assert.assertEquals;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.iiif.uri.IiifRequestType;
+
+public class UpstreamMetricsTest {
+	private UpstreamMetrics metrics;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		metrics = new UpstreamMetrics();
+	}
+
+	@Test
+	public void testRecordResponse() throws Exception {
+		metrics.recordResponse(IiifRequestType.TILE, 200, 2_000_000);
+		metrics.recordResponse(IiifRequestType.TILE, 503, 4_000_000);
+
+		assertEquals(metrics.getTimeToHeaders(IiifRequestType.TILE).getCount(), 2);
+		assertEquals(metrics.getTimeToHeaders(IiifRequestType.TILE).getTotalMicros(), 6000);
+		assertEquals(metrics.getResponses(IiifRequestType.TILE, StatusClass.SUCCESSFUL), 1);
+		assertEquals(metrics.getResponses(IiifRequestType.TILE, StatusClass.SERVER_ERROR), 1);
+		assertEquals(metrics.getTimeToHeaders(IiifRequestType.INFO).getCount(), 0);
+	}
+
+	@Test
+	public void testRecordBody() throws Exception {
+		metrics.recordBody(IiifRequestType.FULL_IMAGE, 1000, 9_000_000);
+		metrics.recordBody(IiifRequestType.FULL_IMAGE, 500, 1_000_000);
+
+		assertEquals(metrics.getBytes(IiifRequestType.FULL_IMAGE), 1500);
+		assertEquals(metrics.getTimeToLastByte(IiifRequestType.FULL_IMAGE).getMaxMicros(), 9000);
+		assertEquals(metrics.getBytes(IiifRequestType.THUMBNAIL), 0);
+	}
+
+	@Test
+	public void testRecordFailure() throws Exception {
+		metrics.recordFailure(IiifRequestType.INFO);
+
+		assertEquals(metrics.getFailures(IiifRequestType.INFO), 1);
+		assertEquals(metrics.getFailures(IiifRequestType.OTHER), 0);
+	}
+}
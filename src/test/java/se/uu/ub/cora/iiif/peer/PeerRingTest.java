@@ -0,0 +1,108 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.peer;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+public class PeerRingTest {
+	private static final List<String> NODES = List.of("http://node0:8091/",
+			"http://node1:8091/", "http://node2:8091/");
+	private static final int KEYS = 10_000;
+
+	private String createKey(int i) {
+		return "image" + i / 100 + "/" + i % 100 * 256 + ",0,256,256/256,/0/default.jpg";
+	}
+
+	@Test
+	public void testGetNodes() throws Exception {
+		List<String> nodes = new ArrayList<>(NODES);
+		PeerRing ring = new PeerRing(nodes);
+		nodes.clear();
+
+		assertEquals(ring.getNodes(), NODES);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "nodes must not be empty")
+	public void testNoNodes() throws Exception {
+		new PeerRing(List.of());
+	}
+
+	@Test
+	public void testOneNodeOwnsEverything() throws Exception {
+		PeerRing ring = new PeerRing(List.of("http://node0:8091/"));
+
+		for (int i = 0; i < 100; i++) {
+			assertEquals(ring.ownerOf(createKey(i)), "http://node0:8091/");
+		}
+	}
+
+	@Test
+	public void testSameOwnerOnEveryNode() throws Exception {
+		PeerRing ring = new PeerRing(NODES);
+		PeerRing ringInOtherOrder = new PeerRing(List.of(NODES.get(2), NODES.get(0),
+				NODES.get(1)));
+
+		for (int i = 0; i < KEYS; i++) {
+			assertEquals(ring.ownerOf(createKey(i)), ringInOtherOrder.ownerOf(createKey(i)));
+		}
+	}
+
+	@Test
+	public void testTilesAreSpreadOverTheNodes() throws Exception {
+		PeerRing ring = new PeerRing(NODES);
+		Map<String, Integer> owned = new HashMap<>();
+
+		for (int i = 0; i < KEYS; i++) {
+			owned.merge(ring.ownerOf(createKey(i)), 1, Integer::sum);
+		}
+
+		assertEquals(owned.keySet(), Map.of(NODES.get(0), 0, NODES.get(1), 0, NODES.get(2), 0)
+				.keySet());
+		for (int count : owned.values()) {
+			assertTrue(count > KEYS / 5 && count < KEYS / 2, "owned " + count);
+		}
+	}
+
+	@Test
+	public void testRemovingANodeOnlyMovesItsTiles() throws Exception {
+		PeerRing ring = new PeerRing(NODES);
+		PeerRing ringWithoutNode1 = new PeerRing(List.of(NODES.get(0), NODES.get(2)));
+
+		int moved = 0;
+		for (int i = 0; i < KEYS; i++) {
+			String owner = ring.ownerOf(createKey(i));
+			String newOwner = ringWithoutNode1.ownerOf(createKey(i));
+			if (owner.equals(NODES.get(1))) {
+				moved++;
+			} else {
+				assertEquals(newOwner, owner);
+			}
+		}
+		assertTrue(moved > 0);
+	}
+}
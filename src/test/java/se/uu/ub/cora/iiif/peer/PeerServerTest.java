@@ -0,0 +1,284 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.peer;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.spies.IiifAdapterSpy;
+
+public class PeerServerTest {
+	private static final String TILE = "someId/0,0,256,256/256,/0/default.jpg";
+	private static final String SECRET = "someSecret";
+	private IiifAdapterSpy iiifAdapter;
+	private PeerServer peerServer;
+	private HttpClient httpClient;
+
+	@BeforeMethod
+	private void beforeMethod() throws Exception {
+		iiifAdapter = new IiifAdapterSpy();
+		peerServer = new PeerServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+				SECRET, 3);
+		httpClient = HttpClient.newHttpClient();
+	}
+
+	@AfterMethod
+	private void afterMethod() {
+		peerServer.close();
+	}
+
+	private HttpResponse<String> send(String method, String uri, String... headers)
+			throws Exception {
+		return sendWithSecret(SECRET, method, uri, headers);
+	}
+
+	private HttpResponse<String> sendWithSecret(String secret, String method, String uri,
+			String... headers) throws Exception {
+		HttpRequest.Builder request = HttpRequest
+				.newBuilder(URI.create("http://127.0.0.1:" + peerServer.getPort() + "/" + uri))
+				.method(method, BodyPublishers.noBody());
+		if (secret != null) {
+			request.header(PeerServer.PEER_HEADER, secret);
+		}
+		if (headers.length > 0) {
+			request.headers(headers);
+		}
+		return httpClient.send(request.build(), BodyHandlers.ofString());
+	}
+
+	private IiifParameters getCalledParameters() {
+		return (IiifParameters) iiifAdapter.MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("callIiifServer", 0,
+						"iiifParameters");
+	}
+
+	@Test
+	public void testServe() throws Exception {
+		peerServer.serve(iiifAdapter);
+
+		assertSame(peerServer.onlyForTestGetIiifAdapter(), iiifAdapter);
+		assertEquals(peerServer.getAddress().getAddress(), InetAddress.getLoopbackAddress());
+	}
+
+	@Test(expectedExceptions = ConnectException.class)
+	public void testNotListeningUntilServing() throws Exception {
+		int port = findFreePort();
+		peerServer.close();
+		peerServer = new PeerServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+				SECRET, 3);
+
+		httpClient.send(HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/" + TILE))
+				.header(PeerServer.PEER_HEADER, SECRET).build(), BodyHandlers.ofString());
+	}
+
+	private int findFreePort() throws IOException {
+		try (ServerSocket serverSocket = new ServerSocket(0)) {
+			return serverSocket.getLocalPort();
+		}
+	}
+
+	@Test(expectedExceptions = UnknownHostException.class, expectedExceptionsMessageRegExp = ""
+			+ "doesNotExist.invalid")
+	public void testServeOnUnresolvedHost() throws Exception {
+		peerServer.close();
+		peerServer = new PeerServer(InetSocketAddress.createUnresolved("doesNotExist.invalid", 0),
+				SECRET, 3);
+
+		peerServer.serve(iiifAdapter);
+	}
+
+	@Test
+	public void testRequestWithoutSecretIsForbidden() throws Exception {
+		peerServer.serve(iiifAdapter);
+
+		HttpResponse<String> response = sendWithSecret(null, "GET", TILE);
+
+		assertEquals(response.statusCode(), 403);
+		iiifAdapter.MCR.assertMethodNotCalled("callIiifServer");
+		assertEquals(peerServer.getRejectedRequests(), 1);
+	}
+
+	@Test
+	public void testRequestWithWrongSecretIsForbidden() throws Exception {
+		peerServer.serve(iiifAdapter);
+
+		HttpResponse<String> response = sendWithSecret("someOtherSecret", "GET", TILE);
+
+		assertEquals(response.statusCode(), 403);
+		iiifAdapter.MCR.assertMethodNotCalled("callIiifServer");
+	}
+
+	@Test
+	public void testGetIsAnsweredThroughTheAdapter() throws Exception {
+		iiifAdapter.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> new IiifAdapterResponse(200,
+						Map.of("Content-Type", "image/jpeg", "Content-Length", "8", "ETag",
+								"\"someEtag\""),
+						new ByteArrayInputStream("someBody".getBytes(StandardCharsets.UTF_8))));
+		peerServer.serve(iiifAdapter);
+
+		HttpResponse<String> response = send("GET", TILE);
+
+		assertEquals(response.statusCode(), 200);
+		assertEquals(response.body(), "someBody");
+		assertEquals(response.headers().firstValue("Content-Type").get(), "image/jpeg");
+		assertEquals(response.headers().firstValue("ETag").get(), "\"someEtag\"");
+		IiifParameters parameters = getCalledParameters();
+		assertEquals(parameters.uri(), TILE);
+		assertEquals(parameters.method(), "GET");
+		assertEquals(parameters.headersMap(), Map.of(PeerServer.PEER_HEADER, "1"));
+		assertEquals(peerServer.getServedRequests(), 1);
+	}
+
+	@Test
+	public void testBodyOfUnknownLength() throws Exception {
+		peerServer.serve(iiifAdapter);
+
+		HttpResponse<String> response = send("GET", TILE);
+
+		assertEquals(response.statusCode(), 200);
+		assertEquals(response.body(), "someBody");
+	}
+
+	@Test
+	public void testOnlyValidImageRequestsArePassedOn() throws Exception {
+		peerServer.serve(iiifAdapter);
+
+		assertEquals(send("GET", "someId/info.json").statusCode(), 400);
+		assertEquals(send("GET", TILE + "?callback=x").statusCode(), 400);
+		assertEquals(send("GET", "admin/status").statusCode(), 400);
+		assertEquals(send("GET", "someId/0,0,0,256/256,/0/default.jpg").statusCode(), 400);
+		assertEquals(send("GET", "someId/full/max/0/default.jpg").statusCode(), 200);
+
+		iiifAdapter.MCR.assertNumberOfCallsToMethod("callIiifServer", 1);
+		assertEquals(getCalledParameters().uri(), "someId/full/max/0/default.jpg");
+		assertEquals(peerServer.getRejectedRequests(), 4);
+	}
+
+	@Test
+	public void testIsServable() throws Exception {
+		assertTrue(PeerServer.isServable(TILE));
+		assertTrue(PeerServer.isServable("someId/full/max/0/default.jpg"));
+		assertFalse(PeerServer.isServable("someId/info.json"));
+		assertFalse(PeerServer.isServable(TILE + "?callback=x"));
+		assertFalse(PeerServer.isServable("admin/status"));
+	}
+
+	@Test
+	public void testOnlyForwardedHeadersArePassedOn() throws Exception {
+		peerServer.serve(iiifAdapter);
+
+		send("GET", TILE, "Accept", "image/webp", "Range", "bytes=0-9", "If-None-Match",
+				"\"someEtag\"", "Cookie", "someSession");
+
+		assertEquals(getCalledParameters().headersMap(),
+				Map.of("Accept", "image/webp", "Range", "bytes=0-9", "If-None-Match",
+						"\"someEtag\"", PeerServer.PEER_HEADER, "1"));
+	}
+
+	@Test
+	public void testHeadHasNoBody() throws Exception {
+		peerServer.serve(iiifAdapter);
+
+		HttpResponse<String> response = send("HEAD", TILE);
+
+		assertEquals(response.statusCode(), 200);
+		assertEquals(response.body(), "");
+		assertEquals(getCalledParameters().method(), "HEAD");
+	}
+
+	@Test
+	public void testNotModifiedHasNoBody() throws Exception {
+		iiifAdapter.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> IiifAdapterSpy.createResponse(304, ""));
+		peerServer.serve(iiifAdapter);
+
+		HttpResponse<String> response = send("GET", TILE, "If-None-Match", "\"someEtag\"");
+
+		assertEquals(response.statusCode(), 304);
+		assertEquals(response.body(), "");
+	}
+
+	@Test
+	public void testStatusOfAdapterIsPassedOn() throws Exception {
+		iiifAdapter.MRV.setDefaultReturnValuesSupplier("callIiifServer",
+				() -> IiifAdapterSpy.createResponse(404, "not found"));
+		peerServer.serve(iiifAdapter);
+
+		HttpResponse<String> response = send("GET", TILE);
+
+		assertEquals(response.statusCode(), 404);
+		assertEquals(response.body(), "not found");
+	}
+
+	@Test
+	public void testOtherMethodsAreNotAllowed() throws Exception {
+		peerServer.serve(iiifAdapter);
+
+		HttpResponse<String> response = send("POST", TILE);
+
+		assertEquals(response.statusCode(), 405);
+		iiifAdapter.MCR.assertMethodNotCalled("callIiifServer");
+	}
+
+	@Test
+	public void testFailingAdapterIsAnsweredWithBadGateway() throws Exception {
+		iiifAdapter.MRV.setAlwaysThrowException("callIiifServer",
+				new RuntimeException("someError"));
+		peerServer.serve(iiifAdapter);
+
+		HttpResponse<String> response = send("GET", TILE);
+
+		assertEquals(response.statusCode(), 502);
+		assertEquals(peerServer.getFailedRequests(), 1);
+		assertEquals(peerServer.getServedRequests(), 0);
+	}
+
+	@Test(expectedExceptions = ConnectException.class)
+	public void testClose() throws Exception {
+		peerServer.serve(iiifAdapter);
+		peerServer.close();
+
+		send("GET", TILE);
+	}
+}
@@ -0,0 +1,445 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.recording;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.iiif.spies.SettableClock;
+import se.uu.ub.cora.logger.LoggerProvider;
+import se.uu.ub.cora.logger.spies.LoggerFactorySpy;
+import se.uu.ub.cora.logger.spies.LoggerSpy;
+
+public class CallRecorderTest {
+	private static final Instant START = Instant.parse("2026-10-01T10:00:00Z");
+	private LoggerFactorySpy loggerFactory;
+	private SettableClock clock;
+	private long[] nanoTime;
+	private ScheduledExecutorService flusher;
+	private ByteArrayOutputStream out;
+	private CallRecorder recorder;
+
+	@BeforeMethod
+	private void beforeMethod() throws Exception {
+		loggerFactory = new LoggerFactorySpy();
+		LoggerProvider.setLoggerFactory(loggerFactory);
+		clock = new SettableClock(START);
+		nanoTime = new long[] { 5_000 };
+		flusher = Executors.newSingleThreadScheduledExecutor();
+		out = new ByteArrayOutputStream();
+		recorder = createRecorder(out, 1024 * 1024);
+	}
+
+	@AfterMethod
+	private void afterMethod() {
+		flusher.shutdownNow();
+	}
+
+	private CallRecorder createRecorder(OutputStream output, long maxBytes) throws IOException {
+		return new CallRecorder("someRecording", output, maxBytes, CallRecorder.QUEUE_CAPACITY,
+				clock, () -> nanoTime[0], flusher);
+	}
+
+	private RecordedCall createCall(long startMicros, String uri) {
+		return new RecordedCall(startMicros, "GET", uri, Map.of("Accept", "image/webp"), 200,
+				1234, 5000);
+	}
+
+	private List<RecordedCall> readAll(byte[] recording) throws IOException {
+		List<RecordedCall> calls = new ArrayList<>();
+		try (CallRecordingReader reader = new CallRecordingReader(
+				new ByteArrayInputStream(recording))) {
+			Optional<RecordedCall> call;
+			while ((call = reader.next()).isPresent()) {
+				calls.add(call.get());
+			}
+		}
+		return calls;
+	}
+
+	@Test
+	public void testMicrosSinceStart() throws Exception {
+		nanoTime[0] += TimeUnit.MILLISECONDS.toNanos(3);
+
+		assertEquals(recorder.microsSinceStart(), 3000);
+	}
+
+	@Test
+	public void testEmptyRecording() throws Exception {
+		recorder.close();
+
+		try (CallRecordingReader reader = new CallRecordingReader(
+				new ByteArrayInputStream(out.toByteArray()))) {
+			assertEquals(reader.getStartEpochMillis(), START.toEpochMilli());
+			assertTrue(reader.next().isEmpty());
+		}
+	}
+
+	@Test
+	public void testCallsAreReadBack() throws Exception {
+		RecordedCall first = new RecordedCall(10, "GET", "id1/info.json",
+				Map.of("Accept", "application/json"), 200, 812, 1500);
+		RecordedCall second = new RecordedCall(2_000_000, "HEAD", "/id2/full/max/0/default.jpg",
+				Map.of(), 404, 0, 70);
+		RecordedCall failed = new RecordedCall(2_000_100, "GET", "id3/full/max/0/default.jpg",
+				Map.of("Range", "bytes=0-99", "If-None-Match", "\"v1\""), RecordedCall.FAILED,
+				0, 30_000_000);
+
+		recorder.record(first);
+		recorder.record(second);
+		recorder.record(failed);
+		recorder.close();
+
+		assertEquals(readAll(out.toByteArray()), List.of(first, second, failed));
+		assertEquals(recorder.getRecordedCalls(), 3);
+		assertEquals(recorder.getDroppedCalls(), 0);
+	}
+
+	@Test
+	public void testCallsFinishedOutOfOrderKeepTheirStart() throws Exception {
+		recorder.record(createCall(500, "slow"));
+		recorder.record(createCall(100, "fast"));
+		recorder.close();
+
+		List<RecordedCall> calls = readAll(out.toByteArray());
+
+		assertEquals(calls.get(0).startMicros(), 500);
+		assertEquals(calls.get(1).startMicros(), 100);
+	}
+
+	@Test
+	public void testRepeatedStringsAreWrittenOnce() throws Exception {
+		recorder.record(createCall(0, "a"));
+		recorder.writeQueuedCalls();
+		int sizeOfFirst = out.size();
+		recorder.record(createCall(1, "b"));
+		recorder.close();
+
+		int sizeOfSecond = out.size() - sizeOfFirst;
+		assertEquals(sizeOfSecond, 13);
+		assertEquals(readAll(out.toByteArray()).get(1), createCall(1, "b"));
+	}
+
+	@Test
+	public void testHeaderIsFlushedAtStart() throws Exception {
+		CountingOutputStream counting = new CountingOutputStream();
+		recorder = createRecorder(counting, 1024 * 1024);
+
+		assertEquals(counting.flushes, 1);
+	}
+
+	@Test
+	public void testFlushOnlyFlushesWhenCallsAreRecorded() throws Exception {
+		CountingOutputStream counting = new CountingOutputStream();
+		recorder = createRecorder(counting, 1024 * 1024);
+
+		recorder.record(createCall(0, "a"));
+		recorder.record(createCall(1, "b"));
+		assertEquals(counting.flushes, 1);
+		recorder.flush();
+		assertEquals(counting.flushes, 2);
+		recorder.flush();
+
+		assertEquals(counting.flushes, 2);
+	}
+
+	@Test
+	public void testRecordingIsFlushedWithoutFurtherCalls() throws Exception {
+		CountingOutputStream counting = new CountingOutputStream();
+		recorder = createRecorder(counting, 1024 * 1024);
+
+		recorder.record(createCall(0, "a"));
+
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (counting.flushes < 2 && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(counting.flushes, 2);
+	}
+
+	@Test
+	public void testFailedFlushStopsRecording() throws Exception {
+		CountingOutputStream failing = new CountingOutputStream();
+		recorder = createRecorder(failing, 1024 * 1024);
+		recorder.record(createCall(0, "a"));
+		recorder.writeQueuedCalls();
+		failing.fail = true;
+
+		recorder.flush();
+		recorder.record(createCall(1, "b"));
+
+		assertEquals(recorder.getRecordedCalls(), 1);
+		assertEquals(recorder.getDroppedCalls(), 1);
+		LoggerSpy logger = (LoggerSpy) loggerFactory.MCR.getReturnValue("factorForClass", 1);
+		logger.MCR.assertParameters("logErrorUsingMessage", 0,
+				"Recording calls to someRecording failed, recording stopped: disk full");
+	}
+
+	@Test
+	public void testCloseStopsFlushing() throws Exception {
+		recorder.close();
+
+		assertTrue(flusher.isShutdown());
+	}
+
+	private static class CountingOutputStream extends OutputStream {
+		volatile int flushes = 0;
+		boolean fail = false;
+
+		@Override
+		public void write(int b) throws IOException {
+			if (fail) {
+				throw new IOException("disk full");
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (fail) {
+				throw new IOException("disk full");
+			}
+			flushes++;
+		}
+	}
+
+	@Test
+	public void testCallsAreDroppedWhenRecordingIsFull() throws Exception {
+		out = new ByteArrayOutputStream();
+		recorder = createRecorder(out, 60);
+
+		recorder.record(createCall(0, "first"));
+		recorder.record(createCall(1, "second"));
+		recorder.record(createCall(2, "third"));
+		recorder.close();
+
+		assertEquals(readAll(out.toByteArray()).size(), 2);
+		assertEquals(recorder.getRecordedCalls(), 2);
+		assertEquals(recorder.getDroppedCalls(), 1);
+	}
+
+	@Test
+	public void testFailedWriteStopsRecording() throws Exception {
+		CountingOutputStream failing = new CountingOutputStream();
+		recorder = createRecorder(failing, 1024 * 1024);
+		failing.fail = true;
+
+		recorder.record(createCall(0, "a"));
+		recorder.record(createCall(1, "b"));
+		recorder.writeQueuedCalls();
+
+		assertEquals(recorder.getRecordedCalls(), 0);
+		assertEquals(recorder.getDroppedCalls(), 2);
+		LoggerSpy logger = (LoggerSpy) loggerFactory.MCR.getReturnValue("factorForClass", 1);
+		logger.MCR.assertParameters("logErrorUsingMessage", 0,
+				"Recording calls to someRecording failed, recording stopped: disk full");
+		logger.MCR.assertNumberOfCallsToMethod("logErrorUsingMessage", 1);
+	}
+
+	@Test
+	public void testRecordOnlyQueuesTheCall() throws Exception {
+		CountingOutputStream counting = new CountingOutputStream();
+		recorder = createRecorder(counting, 1024 * 1024);
+		counting.fail = true;
+
+		recorder.record(createCall(0, "a"));
+
+		assertEquals(recorder.getRecordedCalls(), 0);
+		assertEquals(recorder.getDroppedCalls(), 0);
+		LoggerSpy logger = (LoggerSpy) loggerFactory.MCR.getReturnValue("factorForClass", 1);
+		logger.MCR.assertMethodNotCalled("logErrorUsingMessage");
+	}
+
+	@Test
+	public void testQueuedCallsAreWrittenByTheFlusher() throws Exception {
+		recorder.record(createCall(0, "a"));
+
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (recorder.getRecordedCalls() < 1 && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(recorder.getRecordedCalls(), 1);
+	}
+
+	@Test
+	public void testCallsAreDroppedWhenQueueIsFull() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		flusher.execute(() -> awaitUninterruptibly(release));
+		out = new ByteArrayOutputStream();
+		recorder = new CallRecorder("someRecording", out, 1024 * 1024, 2, clock,
+				() -> nanoTime[0], flusher);
+
+		recorder.record(createCall(0, "a"));
+		recorder.record(createCall(1, "b"));
+		recorder.record(createCall(2, "c"));
+		release.countDown();
+		recorder.close();
+
+		assertEquals(readAll(out.toByteArray()), List.of(createCall(0, "a"), createCall(1, "b")));
+		assertEquals(recorder.getRecordedCalls(), 2);
+		assertEquals(recorder.getDroppedCalls(), 1);
+	}
+
+	private void awaitUninterruptibly(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Test
+	public void testCallsAfterCloseAreDropped() throws Exception {
+		recorder.close();
+
+		recorder.record(createCall(0, "a"));
+
+		assertEquals(recorder.getDroppedCalls(), 1);
+	}
+
+	@Test
+	public void testRecordingCutShortEndsAtLastWholeCall() throws Exception {
+		recorder.record(createCall(0, "a"));
+		recorder.record(createCall(1, "someLongerUri"));
+		recorder.close();
+		byte[] recording = out.toByteArray();
+
+		byte[] cutShort = Arrays.copyOf(recording, recording.length - 3);
+
+		assertEquals(readAll(cutShort), List.of(createCall(0, "a")));
+	}
+
+	@Test(expectedExceptions = IOException.class, expectedExceptionsMessageRegExp = ""
+			+ "Not a call recording")
+	public void testReadingSomethingElse() throws Exception {
+		new CallRecordingReader(new ByteArrayInputStream("a\nb\n".getBytes()));
+	}
+
+	@Test(expectedExceptions = IOException.class, expectedExceptionsMessageRegExp = ""
+			+ "Call recording version 2 is not supported")
+	public void testReadingUnknownVersion() throws Exception {
+		recorder.close();
+		byte[] recording = out.toByteArray();
+		recording[4] = 2;
+
+		new CallRecordingReader(new ByteArrayInputStream(recording));
+	}
+
+	@Test(expectedExceptions = IOException.class, expectedExceptionsMessageRegExp = ""
+			+ "Call recording refers to string 7 not yet defined")
+	public void testReadingUndefinedString() throws Exception {
+		recorder.close();
+		ByteArrayOutputStream recording = new ByteArrayOutputStream();
+		recording.write(out.toByteArray());
+		recording.write(new byte[] { 0, 7 });
+
+		readAll(recording.toByteArray());
+	}
+
+	@Test
+	public void testOpenFile() throws Exception {
+		Path file = Files.createTempFile("calls", ".rec");
+		try {
+			CallRecorder fileRecorder = CallRecorder.open(file, 1024);
+			fileRecorder.record(createCall(0, "a"));
+			fileRecorder.close();
+
+			assertTrue(CallRecordingReader.isRecording(file));
+			try (CallRecordingReader reader = CallRecordingReader.open(file)) {
+				assertEquals(reader.next().get().uri(), "a");
+				assertTrue(reader.next().isEmpty());
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testOpenMovesPreviousRecordingAside() throws Exception {
+		Path file = Files.createTempFile("calls", ".rec");
+		Path previousFile = CallRecorder.previousRecordingOf(file);
+		try {
+			CallRecorder firstRecorder = CallRecorder.open(file, 1024);
+			firstRecorder.record(createCall(0, "a"));
+			firstRecorder.close();
+
+			CallRecorder secondRecorder = CallRecorder.open(file, 1024);
+			secondRecorder.record(createCall(0, "b"));
+			secondRecorder.close();
+
+			assertEquals(previousFile.getFileName().toString(), file.getFileName() + ".1");
+			assertEquals(readAll(Files.readAllBytes(previousFile)), List.of(createCall(0, "a")));
+			assertEquals(readAll(Files.readAllBytes(file)), List.of(createCall(0, "b")));
+		} finally {
+			Files.delete(file);
+			Files.deleteIfExists(previousFile);
+		}
+	}
+
+	@Test
+	public void testOpenOverEmptyFileKeepsNothingAside() throws Exception {
+		Path file = Files.createTempFile("calls", ".rec");
+		try {
+			CallRecorder.open(file, 1024).close();
+
+			assertFalse(Files.exists(CallRecorder.previousRecordingOf(file)));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testTextFileIsNotARecording() throws Exception {
+		Path file = Files.createTempFile("accessLog", ".log");
+		try {
+			Files.writeString(file, "a\n");
+
+			assertFalse(CallRecordingReader.isRecording(file));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "startMicros, status, bodyBytes and durationMicros must not be negative")
+	public void testNegativeDurationIsNotAllowed() throws Exception {
+		new RecordedCall(0, "GET", "a", Map.of(), 200, 0, -1);
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.spies;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import se.uu.ub.cora.iiif.transcode.ImageFormat;
+import se.uu.ub.cora.iiif.transcode.ImageTranscoder;
+import se.uu.ub.cora.testutils.mcr.MethodCallRecorder;
+import se.uu.ub.cora.testutils.mrv.MethodReturnValues;
+
+public class ImageTranscoderSpy implements ImageTranscoder {
+	public MethodCallRecorder MCR = new MethodCallRecorder();
+	public MethodReturnValues MRV = new MethodReturnValues();
+	public boolean throwIOException = false;
+
+	public ImageTranscoderSpy() {
+		MCR.useMRV(MRV);
+		MRV.setDefaultReturnValuesSupplier("canEncode", () -> true);
+		MRV.setDefaultReturnValuesSupplier("transcode",
+				() -> "small".getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public boolean canEncode(ImageFormat format) {
+		return (boolean) MCR.addCallAndReturnFromMRV("format", format);
+	}
+
+	@Override
+	public byte[] transcode(byte[] source, ImageFormat format) throws IOException {
+		byte[] transcoded = (byte[]) MCR.addCallAndReturnFromMRV("source", source, "format",
+				format);
+		if (throwIOException) {
+			throw new IOException("some decoding error");
+		}
+		return transcoded;
+	}
+}
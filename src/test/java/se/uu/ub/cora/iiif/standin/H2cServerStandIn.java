@@ -0,0 +1,374 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.standin;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import se.uu.ub.cora.iiif.standin.ImageServerStandIn.Handler;
+import se.uu.ub.cora.iiif.standin.ImageServerStandIn.Request;
+import se.uu.ub.cora.iiif.standin.ImageServerStandIn.Response;
+
+/**
+ * H2cServerStandIn is a minimal HTTP/2 server without TLS on the loopback interface, standing in
+ * for an image server that accepts the h2c upgrade. A connection starts with a HTTP/1.1 request
+ * asking to upgrade, which is answered over HTTP/2 as stream 1, and later requests on the
+ * connection are HTTP/2 streams, served concurrently.
+ * <p>
+ * Only what the HttpClient of the JDK sends is understood. Flow control is not implemented, so
+ * response bodies must fit in the initial window of 64 KiB. Requests that do not ask to upgrade
+ * are answered with 505.
+ */
+public class H2cServerStandIn implements AutoCloseable {
+	private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n"
+			.getBytes(StandardCharsets.ISO_8859_1);
+	private static final int MAX_FRAME_SIZE = 16_384;
+	private static final int DATA = 0x0;
+	private static final int HEADERS = 0x1;
+	private static final int SETTINGS = 0x4;
+	private static final int PING = 0x6;
+	private static final int GOAWAY = 0x7;
+	private static final int CONTINUATION = 0x9;
+	private static final int END_STREAM = 0x1;
+	private static final int ACK = 0x1;
+	private static final int END_HEADERS = 0x4;
+	private static final int PADDED = 0x8;
+	private static final int PRIORITY = 0x20;
+	private final ServerSocket serverSocket;
+	private final Handler handler;
+	private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "h2c-server-stand-in");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+	private final List<Request> requests = Collections.synchronizedList(new ArrayList<>());
+	private final AtomicInteger connectionsAccepted = new AtomicInteger();
+	private final AtomicInteger concurrentStreams = new AtomicInteger();
+	private final AtomicInteger maxConcurrentStreams = new AtomicInteger();
+	private volatile boolean running = true;
+
+	public static H2cServerStandIn start(Handler handler) {
+		try {
+			return new H2cServerStandIn(handler);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private H2cServerStandIn(Handler handler) throws IOException {
+		this.handler = handler;
+		serverSocket = new ServerSocket(0, 200, InetAddress.getLoopbackAddress());
+		Thread acceptThread = new Thread(this::acceptConnections, "h2c-server-stand-in-accept");
+		acceptThread.setDaemon(true);
+		acceptThread.start();
+	}
+
+	private void acceptConnections() {
+		while (running) {
+			try {
+				Socket socket = serverSocket.accept();
+				connectionsAccepted.incrementAndGet();
+				openSockets.add(socket);
+				executor.execute(() -> serveConnection(socket));
+			} catch (IOException e) {
+				// server socket closed
+			}
+		}
+	}
+
+	private void serveConnection(Socket socket) {
+		try (socket) {
+			InputStream in = new BufferedInputStream(socket.getInputStream());
+			OutputStream out = socket.getOutputStream();
+			Request upgradeRequest = readUpgradeRequest(in);
+			if (!"h2c".equalsIgnoreCase(upgradeRequest.header("Upgrade"))) {
+				out.write("HTTP/1.1 505 HTTP Version Not Supported\r\nContent-Length: 0\r\n\r\n"
+						.getBytes(StandardCharsets.ISO_8859_1));
+				return;
+			}
+			new Connection(out).serve(in, upgradeRequest);
+		} catch (Exception e) {
+			// connection closed by client
+		} finally {
+			openSockets.remove(socket);
+		}
+	}
+
+	private Request readUpgradeRequest(InputStream in) throws IOException {
+		String[] requestLine = readLine(in).split(" ");
+		Map<String, String> headers = new LinkedHashMap<>();
+		String line = readLine(in);
+		while (!line.isEmpty()) {
+			int colon = line.indexOf(':');
+			headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT),
+					line.substring(colon + 1).trim());
+			line = readLine(in);
+		}
+		return new Request(requestLine[0], requestLine[1], headers);
+	}
+
+	private String readLine(InputStream in) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int read = in.read();
+		while (read != -1 && read != '\n') {
+			if (read != '\r') {
+				line.write(read);
+			}
+			read = in.read();
+		}
+		return line.toString(StandardCharsets.ISO_8859_1);
+	}
+
+	private final class Connection {
+		private final OutputStream out;
+		private final ReentrantLock writeLock = new ReentrantLock();
+		private final HpackDecoder hpackDecoder = new HpackDecoder();
+
+		Connection(OutputStream out) {
+			this.out = out;
+		}
+
+		void serve(InputStream in, Request upgradeRequest) throws IOException {
+			String switching = "HTTP/1.1 101 Switching Protocols\r\nConnection: Upgrade\r\n"
+					+ "Upgrade: h2c\r\n\r\n";
+			out.write(switching.getBytes(StandardCharsets.ISO_8859_1));
+			writeFrame(SETTINGS, 0, 0, new byte[0]);
+			if (!Arrays.equals(in.readNBytes(PREFACE.length), PREFACE)) {
+				return;
+			}
+			serveStream(1, upgradeRequest);
+			readFrames(in);
+		}
+
+		private void readFrames(InputStream in) throws IOException {
+			while (running) {
+				Frame frame = readFrame(in);
+				if (frame == null || frame.type() == GOAWAY) {
+					return;
+				}
+				handleFrame(in, frame);
+			}
+		}
+
+		private void handleFrame(InputStream in, Frame frame) throws IOException {
+			if (frame.type() == HEADERS) {
+				byte[] headerBlock = readHeaderBlock(in, frame);
+				serveStream(frame.streamId(), toRequest(hpackDecoder.decode(headerBlock)));
+			} else if (frame.type() == SETTINGS && (frame.flags() & ACK) == 0) {
+				writeFrame(SETTINGS, ACK, 0, new byte[0]);
+			} else if (frame.type() == PING && (frame.flags() & ACK) == 0) {
+				writeFrame(PING, ACK, 0, frame.payload());
+			}
+		}
+
+		private byte[] readHeaderBlock(InputStream in, Frame frame) throws IOException {
+			ByteArrayOutputStream headerBlock = new ByteArrayOutputStream();
+			headerBlock.write(fragmentOf(frame));
+			int flags = frame.flags();
+			while ((flags & END_HEADERS) == 0) {
+				Frame continuation = readFrame(in);
+				if (continuation == null || continuation.type() != CONTINUATION) {
+					throw new IOException("Header block not continued");
+				}
+				headerBlock.write(continuation.payload());
+				flags = continuation.flags();
+			}
+			return headerBlock.toByteArray();
+		}
+
+		private byte[] fragmentOf(Frame frame) {
+			byte[] payload = frame.payload();
+			int start = 0;
+			int end = payload.length;
+			if ((frame.flags() & PADDED) != 0) {
+				start = 1;
+				end -= payload[0] & 0xFF;
+			}
+			if ((frame.flags() & PRIORITY) != 0) {
+				start += 5;
+			}
+			return Arrays.copyOfRange(payload, start, end);
+		}
+
+		private Request toRequest(Map<String, String> headers) {
+			String method = headers.remove(":method");
+			String path = headers.remove(":path");
+			headers.keySet().removeIf(name -> name.startsWith(":"));
+			return new Request(method, path, headers);
+		}
+
+		private void serveStream(int streamId, Request request) {
+			requests.add(request);
+			executor.execute(() -> {
+				int concurrent = concurrentStreams.incrementAndGet();
+				maxConcurrentStreams.accumulateAndGet(concurrent, Math::max);
+				try {
+					writeResponse(streamId, request, handler.handle(request));
+				} catch (Exception e) {
+					// stream reset by client or connection closed
+				} finally {
+					concurrentStreams.decrementAndGet();
+				}
+			});
+		}
+
+		private void writeResponse(int streamId, Request request, Response response)
+				throws IOException {
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			boolean hasBody = !"HEAD".equals(request.method()) && response.status() != 304
+					&& response.status() != 204;
+			if (hasBody) {
+				response.bodyWriter().writeTo(body);
+			}
+			ByteArrayOutputStream headerBlock = new ByteArrayOutputStream();
+			writeHeader(headerBlock, ":status", String.valueOf(response.status()));
+			for (Entry<String, String> header : response.headers().entrySet()) {
+				writeHeader(headerBlock, header.getKey().toLowerCase(Locale.ROOT),
+						header.getValue());
+			}
+			writeHeader(headerBlock, "content-length",
+					String.valueOf(hasBody ? body.size() : response.bodyLength()));
+			boolean endsWithHeaders = body.size() == 0;
+			writeFrame(HEADERS, END_HEADERS | (endsWithHeaders ? END_STREAM : 0), streamId,
+					headerBlock.toByteArray());
+			if (!endsWithHeaders) {
+				writeData(streamId, body.toByteArray());
+			}
+		}
+
+		private void writeData(int streamId, byte[] body) throws IOException {
+			for (int start = 0; start < body.length; start += MAX_FRAME_SIZE) {
+				int end = Math.min(body.length, start + MAX_FRAME_SIZE);
+				writeFrame(DATA, end == body.length ? END_STREAM : 0, streamId,
+						Arrays.copyOfRange(body, start, end));
+			}
+		}
+
+		private void writeFrame(int type, int flags, int streamId, byte[] payload)
+				throws IOException {
+			byte[] header = { (byte) (payload.length >>> 16), (byte) (payload.length >>> 8),
+					(byte) payload.length, (byte) type, (byte) flags, (byte) (streamId >>> 24),
+					(byte) (streamId >>> 16), (byte) (streamId >>> 8), (byte) streamId };
+			writeLock.lock();
+			try {
+				out.write(header);
+				out.write(payload);
+				out.flush();
+			} finally {
+				writeLock.unlock();
+			}
+		}
+	}
+
+	private record Frame(int type, int flags, int streamId, byte[] payload) {
+	}
+
+	private static Frame readFrame(InputStream in) throws IOException {
+		byte[] header = in.readNBytes(9);
+		if (header.length < 9) {
+			return null;
+		}
+		int length = (header[0] & 0xFF) << 16 | (header[1] & 0xFF) << 8 | header[2] & 0xFF;
+		int streamId = (header[5] & 0x7F) << 24 | (header[6] & 0xFF) << 16
+				| (header[7] & 0xFF) << 8 | header[8] & 0xFF;
+		return new Frame(header[3] & 0xFF, header[4] & 0xFF, streamId, in.readNBytes(length));
+	}
+
+	private static void writeHeader(ByteArrayOutputStream headerBlock, String name,
+			String value) {
+		headerBlock.write(0);
+		writeString(headerBlock, name);
+		writeString(headerBlock, value);
+	}
+
+	private static void writeString(ByteArrayOutputStream headerBlock, String text) {
+		byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+		int length = bytes.length;
+		if (length < 127) {
+			headerBlock.write(length);
+		} else {
+			headerBlock.write(127);
+			length -= 127;
+			while (length >= 128) {
+				headerBlock.write(length & 0x7F | 0x80);
+				length >>>= 7;
+			}
+			headerBlock.write(length);
+		}
+		headerBlock.writeBytes(bytes);
+	}
+
+	public String getBaseUrl() {
+		return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/";
+	}
+
+	public int getConnectionsAccepted() {
+		return connectionsAccepted.get();
+	}
+
+	public int getMaxConcurrentStreams() {
+		return maxConcurrentStreams.get();
+	}
+
+	public List<Request> getRequests() {
+		synchronized (requests) {
+			return new ArrayList<>(requests);
+		}
+	}
+
+	@Override
+	public void close() {
+		running = false;
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			// already closed
+		}
+		for (Socket socket : openSockets) {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// already closed
+			}
+		}
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.standin;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ImageServerStandIn is a minimal HTTP/1.1 server on the loopback interface, standing in for the
+ * image server in tests. It keeps connections alive and records what it is asked for.
+ */
+public class ImageServerStandIn implements AutoCloseable {
+	private final ServerSocket serverSocket;
+	private final Handler handler;
+	private final ExecutorService connectionExecutor = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "image-server-stand-in");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+	private final List<Request> requests = Collections.synchronizedList(new ArrayList<>());
+	private final AtomicInteger connectionsAccepted = new AtomicInteger();
+	private final AtomicInteger concurrentRequests = new AtomicInteger();
+	private final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+	private final AtomicLong bodyBytesWritten = new AtomicLong();
+	private volatile boolean running = true;
+
+	public record Request(String method, String path, Map<String, String> headers) {
+		public String header(String name) {
+			return headers.get(name.toLowerCase(Locale.ROOT));
+		}
+	}
+
+	public interface BodyWriter {
+		void writeTo(OutputStream outputStream) throws IOException;
+	}
+
+	public record Response(int status, Map<String, String> headers, long bodyLength,
+			BodyWriter bodyWriter) {
+
+		public static Response withBody(int status, String body) {
+			return withBody(status, Map.of(), body.getBytes(StandardCharsets.UTF_8));
+		}
+
+		public static Response withBody(int status, Map<String, String> headers, byte[] body) {
+			return new Response(status, headers, body.length,
+					outputStream -> outputStream.write(body));
+		}
+
+		public static Response withGeneratedBody(int status, long bodyLength) {
+			return new Response(status, Map.of("Content-Type", "image/jpeg"), bodyLength,
+					outputStream -> writeGeneratedBytes(outputStream, bodyLength));
+		}
+
+		private static void writeGeneratedBytes(OutputStream outputStream, long bodyLength)
+				throws IOException {
+			byte[] chunk = new byte[64 * 1024];
+			long remaining = bodyLength;
+			while (remaining > 0) {
+				int length = (int) Math.min(chunk.length, remaining);
+				outputStream.write(chunk, 0, length);
+				remaining -= length;
+			}
+		}
+	}
+
+	public interface Handler {
+		Response handle(Request request) throws Exception;
+	}
+
+	public static ImageServerStandIn start(Handler handler) {
+		try {
+			return new ImageServerStandIn(handler);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private ImageServerStandIn(Handler handler) throws IOException {
+		this.handler = handler;
+		serverSocket = new ServerSocket(0, 200, InetAddress.getLoopbackAddress());
+		Thread acceptThread = new Thread(this::acceptConnections, "image-server-stand-in-accept");
+		acceptThread.setDaemon(true);
+		acceptThread.start();
+	}
+
+	private void acceptConnections() {
+		while (running) {
+			try {
+				Socket socket = serverSocket.accept();
+				connectionsAccepted.incrementAndGet();
+				openSockets.add(socket);
+				connectionExecutor.execute(() -> serveConnection(socket));
+			} catch (IOException e) {
+				// server socket closed
+			}
+		}
+	}
+
+	private void serveConnection(Socket socket) {
+		try (socket) {
+			InputStream in = new BufferedInputStream(socket.getInputStream());
+			OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+			boolean keepAlive = true;
+			while (running && keepAlive) {
+				Request request = readRequest(in);
+				if (request == null) {
+					return;
+				}
+				keepAlive = !"close".equalsIgnoreCase(request.header("Connection"));
+				handleRequest(request, out);
+			}
+		} catch (Exception e) {
+			// connection closed by client
+		} finally {
+			openSockets.remove(socket);
+		}
+	}
+
+	private Request readRequest(InputStream in) throws IOException {
+		String requestLine = readLine(in);
+		if (requestLine == null || requestLine.isEmpty()) {
+			return null;
+		}
+		String[] parts = requestLine.split(" ");
+		Map<String, String> headers = readHeaders(in);
+		skipRequestBody(in, headers);
+		return new Request(parts[0], parts[1], headers);
+	}
+
+	private Map<String, String> readHeaders(InputStream in) throws IOException {
+		Map<String, String> headers = new LinkedHashMap<>();
+		String line = readLine(in);
+		while (line != null && !line.isEmpty()) {
+			int colon = line.indexOf(':');
+			headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT),
+					line.substring(colon + 1).trim());
+			line = readLine(in);
+		}
+		return headers;
+	}
+
+	private void skipRequestBody(InputStream in, Map<String, String> headers)
+			throws IOException {
+		String contentLength = headers.get("content-length");
+		if (contentLength != null) {
+			in.skipNBytes(Long.parseLong(contentLength));
+		}
+	}
+
+	private String readLine(InputStream in) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int read = in.read();
+		if (read == -1) {
+			return null;
+		}
+		while (read != -1 && read != '\n') {
+			if (read != '\r') {
+				line.write(read);
+			}
+			read = in.read();
+		}
+		return line.toString(StandardCharsets.ISO_8859_1);
+	}
+
+	private void handleRequest(Request request, OutputStream out) throws Exception {
+		requests.add(request);
+		int concurrent = concurrentRequests.incrementAndGet();
+		maxConcurrentRequests.accumulateAndGet(concurrent, Math::max);
+		try {
+			Response response = handler.handle(request);
+			writeResponse(request, response, out);
+		} finally {
+			concurrentRequests.decrementAndGet();
+		}
+	}
+
+	private void writeResponse(Request request, Response response, OutputStream out)
+			throws IOException {
+		StringBuilder head = new StringBuilder();
+		head.append("HTTP/1.1 ").append(response.status()).append(" StandIn\r\n");
+		for (Entry<String, String> header : response.headers().entrySet()) {
+			head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+		}
+		boolean hasBody = hasBody(request, response);
+		head.append("Content-Length: ").append(hasBody ? response.bodyLength() : 0)
+				.append("\r\n\r\n");
+		out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+		if (hasBody) {
+			response.bodyWriter().writeTo(new CountingOutputStream(out));
+		}
+		out.flush();
+	}
+
+	private boolean hasBody(Request request, Response response) {
+		return !"HEAD".equals(request.method()) && response.status() != 304
+				&& response.status() != 204;
+	}
+
+	private class CountingOutputStream extends FilterOutputStream {
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			out.write(bytes, offset, length);
+			bodyBytesWritten.addAndGet(length);
+		}
+
+		@Override
+		public void write(int oneByte) throws IOException {
+			out.write(oneByte);
+			bodyBytesWritten.incrementAndGet();
+		}
+
+		@Override
+		public void close() {
+			// the connection is kept alive
+		}
+	}
+
+	public String getBaseUrl() {
+		return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/";
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	public int getConnectionsAccepted() {
+		return connectionsAccepted.get();
+	}
+
+	public int getMaxConcurrentRequests() {
+		return maxConcurrentRequests.get();
+	}
+
+	public long getBodyBytesWritten() {
+		return bodyBytesWritten.get();
+	}
+
+	public List<Request> getRequests() {
+		synchronized (requests) {
+			return new ArrayList<>(requests);
+		}
+	}
+
+	@Override
+	public void close() {
+		running = false;
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			// already closed
+		}
+		for (Socket socket : openSockets) {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// already closed
+			}
+		}
+		connectionExecutor.shutdownNow();
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.transcode;
+
+import static org.testng.Assert.assertEquals;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class AcceptHeaderTest {
+
+	@DataProvider(name = "accepts")
+	public Object[][] accepts() {
+		return new Object[][] { { "image/webp", 1.0 }, { "image/avif,image/webp,*/*;q=0.8", 1.0 },
+				{ "image/webp;q=0.5", 0.5 }, { "image/webp; q=0.3 , image/png", 0.3 },
+				{ "IMAGE/WEBP;Q=0.7", 0.7 }, { "image/webp;level=1", 1.0 },
+				{ "image/webp;q=0", 0.0 }, { "image/webp;q=2", 0.0 },
+				{ "image/webp;q=x", 0.0 }, { "image/*", 0.0 }, { "*/*", 0.0 },
+				{ "image/webpx", 0.0 }, { "", 0.0 } };
+	}
+
+	@Test(dataProvider = "accepts")
+	public void testQualityOfWebp(String accept, double expected) throws Exception {
+		assertEquals(AcceptHeader.qualityOf(accept, "image/webp"), expected);
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.transcode;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ImageIoTranscoderTest {
+	private ImageIoTranscoder transcoder;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		transcoder = new ImageIoTranscoder();
+	}
+
+	private byte[] createPng() throws IOException {
+		BufferedImage image = new BufferedImage(64, 32, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = image.createGraphics();
+		graphics.setColor(Color.BLUE);
+		graphics.fillRect(0, 0, 64, 32);
+		graphics.dispose();
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", png);
+		return png.toByteArray();
+	}
+
+	@Test
+	public void testJdkWritersCanEncode() throws Exception {
+		assertTrue(transcoder.canEncode(ImageFormat.JPEG));
+		assertTrue(transcoder.canEncode(ImageFormat.PNG));
+	}
+
+	@Test
+	public void testTranscode() throws Exception {
+		byte[] jpeg = transcoder.transcode(createPng(), ImageFormat.JPEG);
+
+		assertEquals(jpeg[0], (byte) 0xFF);
+		assertEquals(jpeg[1], (byte) 0xD8);
+		BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(jpeg));
+		assertEquals(decoded.getWidth(), 64);
+		assertEquals(decoded.getHeight(), 32);
+	}
+
+	@Test(expectedExceptions = IOException.class, expectedExceptionsMessageRegExp = ""
+			+ "Source is not an image that can be decoded")
+	public void testSourceThatIsNotAnImage() throws Exception {
+		transcoder.transcode(new byte[] { 1, 2, 3 }, ImageFormat.JPEG);
+	}
+
+	@Test
+	public void testFormatWithoutWriterIsNotEncoded() throws Exception {
+		for (ImageFormat format : ImageFormat.values()) {
+			if (!transcoder.canEncode(format)) {
+				assertThrowsNoWriterFound(format);
+			}
+		}
+	}
+
+	private void assertThrowsNoWriterFound(ImageFormat format) throws Exception {
+		try {
+			transcoder.transcode(createPng(), format);
+		} catch (IOException e) {
+			assertEquals(e.getMessage(), "No image writer found for " + format.mediaType());
+			return;
+		}
+		throw new AssertionError("transcode did not fail for " + format);
+	}
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.uri;
+
+import static org.testng.Assert.assertEquals;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class IiifIdentifiersTest {
+
+	@DataProvider(name = "uris")
+	public Object[][] uris() {
+		return new Object[][] { { "someId/full/max/0/default.jpg", "someId" },
+				{ "/someId/full/max/0/default.jpg", "someId" },
+				{ "some/prefixed/id/0,0,512,512/512,/0/default.jpg", "some/prefixed/id" },
+				{ "someId/info.json", "someId" }, { "someId/info.json?x=y", "someId" },
+				{ "someId", "someId" }, { "someId/full/max/0", "someId/full/max/0" } };
+	}
+
+	@Test(dataProvider = "uris")
+	public void testFromUri(String uri, String expected) throws Exception {
+		assertEquals(IiifIdentifiers.fromUri(uri), expected);
+	}
+}
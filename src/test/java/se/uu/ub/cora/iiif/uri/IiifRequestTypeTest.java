@@ -0,0 +1,66 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.uri;
+
+import static org.testng.Assert.assertEquals;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class IiifRequestTypeTest {
+
+	@DataProvider(name = "requests")
+	public Object[][] requests() {
+		return new Object[][] { { "someId/info.json", IiifRequestType.INFO },
+				{ "iiif/someId/info.json?callback=x", IiifRequestType.INFO },
+				{ "someId/full/200,/0/default.jpg", IiifRequestType.THUMBNAIL },
+				{ "someId/full/,150/0/default.jpg", IiifRequestType.THUMBNAIL },
+				{ "someId/full/!400,400/0/default.jpg", IiifRequestType.THUMBNAIL },
+				{ "someId/square/^100,100/0/default.jpg", IiifRequestType.THUMBNAIL },
+				{ "someId/0,0,4096,4096/256,/0/default.jpg", IiifRequestType.THUMBNAIL },
+				{ "someId/0,0,1024,1024/512,512/0/default.jpg", IiifRequestType.TILE },
+				{ "someId/pct:0,0,50,50/max/0/default.jpg", IiifRequestType.TILE },
+				{ "someId/full/max/0/default.jpg", IiifRequestType.FULL_IMAGE },
+				{ "someId/full/full/0/default.jpg", IiifRequestType.FULL_IMAGE },
+				{ "someId/full/pct:10/0/default.jpg", IiifRequestType.FULL_IMAGE },
+				{ "someId/full/401,/0/default.jpg", IiifRequestType.FULL_IMAGE },
+				{ "someId/full/x,/0/default.jpg", IiifRequestType.FULL_IMAGE },
+				{ "someId/full/,/0/default.jpg", IiifRequestType.FULL_IMAGE },
+				{ "prefix/someId/full/max/0/default.jpg", IiifRequestType.FULL_IMAGE },
+				{ "someId/full/200,/0/default.jpg/", IiifRequestType.THUMBNAIL },
+				{ "someId/full/200,/0/default.jpg?a=b/c/d/e", IiifRequestType.THUMBNAIL },
+				{ "/full/max/0/default.jpg", IiifRequestType.FULL_IMAGE },
+				{ "someId/fulll/max/0/default.jpg", IiifRequestType.TILE },
+				{ "someId/full/^!/0/default.jpg", IiifRequestType.FULL_IMAGE },
+				{ "someId", IiifRequestType.OTHER },
+				{ "", IiifRequestType.OTHER },
+				{ "someId/info.json/", IiifRequestType.OTHER },
+				{ "full/max/0/default.jpg", IiifRequestType.OTHER } };
+	}
+
+	@Test(dataProvider = "requests")
+	public void testClassify(String uri, IiifRequestType expected) throws Exception {
+		assertEquals(IiifRequestType.classify(uri, 400), expected);
+	}
+
+	@Test(dataProvider = "requests")
+	public void testIsInfo(String uri, IiifRequestType expected) throws Exception {
+		assertEquals(IiifRequestType.isInfo(uri), expected == IiifRequestType.INFO);
+	}
+}
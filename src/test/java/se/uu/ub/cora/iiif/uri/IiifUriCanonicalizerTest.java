@@ -0,0 +1,211 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.uri;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+import java.util.Map;
+import java.util.Optional;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class IiifUriCanonicalizerTest {
+	private static final SourceImageLookup KNOWN_IMAGES = identifier -> Optional.ofNullable(
+			Map.of("someId", new SourceImage(4000, 3000, true), "squareId",
+					new SourceImage(1000, 1000, false)).get(identifier));
+	private IiifUriCanonicalizer version3 = new IiifUriCanonicalizer(3, SourceImageLookup.NONE);
+	private IiifUriCanonicalizer version2 = new IiifUriCanonicalizer(2, SourceImageLookup.NONE);
+	private IiifUriCanonicalizer version3Known = new IiifUriCanonicalizer(3, KNOWN_IMAGES);
+	private IiifUriCanonicalizer version2Known = new IiifUriCanonicalizer(2, KNOWN_IMAGES);
+
+	@Test
+	public void testCanonicalUriIsReturnedAsIs() throws Exception {
+		String uri = "someId/full/max/0/default.jpg";
+
+		assertSame(version3.canonicalize(uri), uri);
+	}
+
+	@Test
+	public void testNonImageRequestsAreNotRewritten() throws Exception {
+		assertEquals(version3.canonicalize("/someId//info.json"), "/someId//info.json");
+		assertEquals(version3.canonicalize("someId"), "someId");
+		assertEquals(version3.canonicalize("someId/full/full/0/default.jpg?x=1"),
+				"someId/full/full/0/default.jpg?x=1");
+	}
+
+	@DataProvider
+	public Object[][] syntaxOnly() {
+		return new Object[][] {
+				{ "someId/full/full/0/default.jpg", "someId/full/max/0/default.jpg" },
+				{ "/someId//full/max/0.0/default.jpg", "/someId//full/max/0/default.jpg" },
+				{ "someId/full/max/360/default.jpg", "someId/full/max/0/default.jpg" },
+				{ "someId/full/max/!090.50/gray.png", "someId/full/max/!90.5/gray.png" },
+				{ "someId/0010,020,0256,256/256,/0/default.jpg",
+						"someId/10,20,256,256/256,/0/default.jpg" },
+				{ "someId/pct:0,0,100,100/max/0/default.jpg", "someId/full/max/0/default.jpg" },
+				{ "someId/pct:10.0,020,50.50,50/max/0/default.jpg",
+						"someId/pct:10,20,50.5,50/max/0/default.jpg" },
+				{ "someId/full/pct:050.0/0/default.jpg", "someId/full/pct:50/0/default.jpg" },
+				{ "someId/full/^pct:150/0/default.jpg", "someId/full/^pct:150/0/default.jpg" },
+				{ "someId/full/!0512,512/0/default.jpg", "someId/full/!512,512/0/default.jpg" },
+				{ "someId/full/,0300/0/default.jpg", "someId/full/,300/0/default.jpg" },
+				{ "someId/full/max/0/color.jpg", "someId/full/max/0/color.jpg" } };
+	}
+
+	@Test(dataProvider = "syntaxOnly")
+	public void testCanonicalizeFromSyntax(String uri, String canonical) throws Exception {
+		assertEquals(version3.canonicalize(uri), canonical);
+	}
+
+	@DataProvider
+	public Object[][] knownImage() {
+		return new Object[][] {
+				{ "someId/0,0,4000,3000/max/0/default.jpg", "someId/full/max/0/default.jpg" },
+				{ "someId/0,0,9000,9000/max/0/default.jpg", "someId/full/max/0/default.jpg" },
+				{ "someId/full/4000,/0/default.jpg", "someId/full/max/0/default.jpg" },
+				{ "someId/full/4000,3000/0/default.jpg", "someId/full/max/0/default.jpg" },
+				{ "someId/full/!4000,4000/0/default.jpg", "someId/full/max/0/default.jpg" },
+				{ "someId/full/!800,800/0/default.jpg", "someId/full/800,600/0/default.jpg" },
+				{ "someId/full/!10000,10000/0/default.jpg", "someId/full/max/0/default.jpg" },
+				{ "someId/full/^!8000,8000/0/default.jpg", "someId/full/^8000,6000/0/default.jpg" },
+				{ "someId/full/^400,/0/default.jpg", "someId/full/400,300/0/default.jpg" },
+				{ "someId/full/,300/0/default.jpg", "someId/full/400,300/0/default.jpg" },
+				{ "someId/full/pct:10/0/default.jpg", "someId/full/400,300/0/default.jpg" },
+				{ "someId/3000,2000,2000,2000/512,/0/default.jpg",
+						"someId/3000,2000,1000,1000/512,512/0/default.jpg" },
+				{ "someId/pct:10,20,50.5,50/max/0/default.jpg",
+						"someId/400,600,2020,1500/max/0/default.jpg" },
+				{ "someId/pct:0,0,25,25/max/0/default.jpg",
+						"someId/0,0,1000,750/max/0/default.jpg" },
+				{ "someId/pct:50,50,50,50/512,/0/default.jpg",
+						"someId/2000,1500,2000,1500/512,384/0/default.jpg" },
+				{ "someId/pct:75,0,50,100/max/0/default.jpg",
+						"someId/3000,0,1000,3000/max/0/default.jpg" },
+				{ "someId/pct:0,0,100.0,100/max/0/default.jpg", "someId/full/max/0/default.jpg" },
+				{ "unknownId/pct:0,0,25,25/max/0/default.jpg",
+						"unknownId/pct:0,0,25,25/max/0/default.jpg" },
+				{ "someId/full/max/0/color.jpg", "someId/full/max/0/default.jpg" },
+				{ "/someId//full/4000,/0/default.jpg", "/someId//full/max/0/default.jpg" },
+				{ "squareId/square/max/0/color.jpg", "squareId/full/max/0/color.jpg" },
+				{ "someId/square/300,/0/default.jpg", "someId/square/300,300/0/default.jpg" },
+				{ "unknownId/full/4000,/0/default.jpg", "unknownId/full/4000,/0/default.jpg" } };
+	}
+
+	@Test(dataProvider = "knownImage")
+	public void testCanonicalizeKnownImage(String uri, String canonical) throws Exception {
+		assertEquals(version3Known.canonicalize(uri), canonical);
+	}
+
+	@DataProvider
+	public Object[][] version2KnownImage() {
+		return new Object[][] {
+				{ "someId/full/max/0/default.jpg", "someId/full/full/0/default.jpg" },
+				{ "someId/full/4000,/0/default.jpg", "someId/full/full/0/default.jpg" },
+				{ "someId/full/,300/0/default.jpg", "someId/full/400,/0/default.jpg" },
+				{ "someId/full/400,300/0/default.jpg", "someId/full/400,/0/default.jpg" },
+				{ "someId/full/400,400/0/default.jpg", "someId/full/400,400/0/default.jpg" },
+				{ "someId/full/!8000,8000/0/default.jpg", "someId/full/8000,/0/default.jpg" } };
+	}
+
+	@Test(dataProvider = "version2KnownImage")
+	public void testCanonicalizeKnownImageVersion2(String uri, String canonical)
+			throws Exception {
+		assertEquals(version2Known.canonicalize(uri), canonical);
+	}
+
+	@Test
+	public void testVersion2WithoutKnownImage() throws Exception {
+		assertEquals(version2.canonicalize("someId/full/max/0.0/default.jpg"),
+				"someId/full/full/0/default.jpg");
+	}
+
+	@DataProvider
+	public Object[][] invalid() {
+		return new Object[][] { { "someId/somewhere/max/0/default.jpg" },
+				{ "someId/0,0,256/max/0/default.jpg" },
+				{ "someId/0,0,256,256,1/max/0/default.jpg" },
+				{ "someId/0,0,0,256/max/0/default.jpg" },
+				{ "someId/pct:0,0,0,5/max/0/default.jpg" },
+				{ "someId/-1,0,256,256/max/0/default.jpg" }, { "someId/full/big/0/default.jpg" },
+				{ "someId/full/0,/0/default.jpg" }, { "someId/full/,/0/default.jpg" },
+				{ "someId/full/pct:0/0/default.jpg" }, { "someId/full/pct:101/0/default.jpg" },
+				{ "someId/full/!256/0/default.jpg" }, { "someId/full/max/361/default.jpg" },
+				{ "someId/full/max/1./default.jpg" }, { "someId/full/max/left/default.jpg" },
+				{ "someId/full/max/0/default" }, { "someId/full/max/0/Default.jpg" },
+				{ "someId/full/max/0/default." }, { "someId/full/99999999999,/0/default.jpg" } };
+	}
+
+	@Test(dataProvider = "invalid")
+	public void testInvalidSyntaxIsRejected(String uri) throws Exception {
+		try {
+			version3.canonicalize(uri);
+			fail("Expected " + uri + " to be rejected");
+		} catch (InvalidIiifUriException e) {
+			assertEquals(e.getStackTrace().length, 0);
+		}
+	}
+
+	@Test
+	public void testRegionOutsideKnownImageIsRejected() throws Exception {
+		assertRejected(version3Known, "someId/4000,0,10,10/max/0/default.jpg",
+				"Region is outside the image: 4000,0");
+	}
+
+	@Test
+	public void testPercentRegionOutsideKnownImageIsRejected() throws Exception {
+		assertRejected(version3Known, "someId/pct:100,0,10,10/max/0/default.jpg",
+				"Region is outside the image: 4000,0");
+	}
+
+	@Test
+	public void testUpscalingWithoutCaretIsRejectedInVersion3() throws Exception {
+		assertRejected(version3Known, "someId/full/8000,/0/default.jpg",
+				"Size larger than the region must start with ^: 8000,6000");
+	}
+
+	@Test
+	public void testCaretIsRejectedInVersion2() throws Exception {
+		assertRejected(version2, "someId/full/^max/0/default.jpg",
+				"Upscaling with ^ is not part of IIIF Image API 2: ^max");
+	}
+
+	private void assertRejected(IiifUriCanonicalizer canonicalizer, String uri, String message) {
+		try {
+			canonicalizer.canonicalize(uri);
+			fail("Expected " + uri + " to be rejected");
+		} catch (InvalidIiifUriException e) {
+			assertEquals(e.getMessage(), message);
+		}
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "IIIF Image API version must be 2 or 3, was: 1")
+	public void testUnsupportedApiVersion() throws Exception {
+		new IiifUriCanonicalizer(1, SourceImageLookup.NONE);
+	}
+
+	@Test
+	public void testOnlyForTest() throws Exception {
+		assertEquals(version3Known.onlyForTestGetApiVersion(), 3);
+		assertSame(version3Known.onlyForTestGetSourceImageLookup(), KNOWN_IMAGES);
+	}
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.warm;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.binary.BinaryException;
+import se.uu.ub.cora.binary.iiif.IiifAdapterResponse;
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.limit.RequestPriority;
+
+public class CacheWarmerTest {
+	private static final long ONE_MILLISECOND = 1_000_000L;
+	private static final String INFO_JSON = """
+			{"width":2000,"height":1000,"tiles":[{"width":512,"scaleFactors":[1,2,4,8]}]}
+			""";
+	private AtomicLong nanoTime;
+	private List<Long> sleeps;
+	private Runnable onSleep;
+	private List<String> calledUris;
+	private List<IiifParameters> calls;
+	private LiveCalls liveCalls;
+	private List<TrackedBody> bodies;
+	private Function<String, IiifAdapterResponse> responder;
+	private ScheduledExecutorService scheduler;
+	private WarmupSettings settings;
+	private CacheWarmer warmer;
+
+	private static final class TrackedBody extends ByteArrayInputStream {
+		private boolean closed = false;
+
+		private TrackedBody(String body) {
+			super(body.getBytes(StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+
+	@BeforeMethod
+	private void beforeMethod() {
+		nanoTime = new AtomicLong();
+		sleeps = new CopyOnWriteArrayList<>();
+		onSleep = () -> {
+		};
+		calledUris = new CopyOnWriteArrayList<>();
+		calls = new CopyOnWriteArrayList<>();
+		liveCalls = new LiveCalls();
+		bodies = new CopyOnWriteArrayList<>();
+		responder = uri -> createResponse(200, uri.endsWith("info.json") ? INFO_JSON : "tile");
+		scheduler = Executors.newSingleThreadScheduledExecutor();
+		settings = new WarmupSettings(2, 400, 10, 2);
+		warmer = new CacheWarmer(this::callIiifServer, settings, liveCalls, scheduler,
+				nanoTime::get, this::sleep);
+	}
+
+	@AfterMethod
+	private void afterMethod() {
+		scheduler.shutdownNow();
+	}
+
+	private IiifAdapterResponse callIiifServer(IiifParameters iiifParameters) {
+		calledUris.add(iiifParameters.uri());
+		calls.add(iiifParameters);
+		return responder.apply(iiifParameters.uri());
+	}
+
+	private IiifAdapterResponse createResponse(int status, String body) {
+		TrackedBody trackedBody = new TrackedBody(body);
+		bodies.add(trackedBody);
+		return new IiifAdapterResponse(status, new HashMap<>(), trackedBody);
+	}
+
+	private void sleep(long nanos) {
+		sleeps.add(nanos);
+		nanoTime.addAndGet(nanos);
+		onSleep.run();
+	}
+
+	private void awaitWarmup() throws InterruptedException {
+		scheduler.shutdown();
+		assertTrue(scheduler.awaitTermination(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		try (CacheWarmer cacheWarmer = new CacheWarmer(this::callIiifServer, settings,
+				liveCalls)) {
+			assertEquals(cacheWarmer.getSettings(), settings);
+			assertSame(cacheWarmer.getLiveCalls(), liveCalls);
+		}
+	}
+
+	@Test
+	public void testWarmImage() throws Exception {
+		boolean scheduled = warmer.warmImage("someId");
+		awaitWarmup();
+
+		assertTrue(scheduled);
+		assertEquals(calledUris, List.of("someId/info.json", "someId/full/400,/0/default.jpg",
+				"someId/0,0,2000,1000/250,/0/default.jpg",
+				"someId/0,0,2000,1000/500,/0/default.jpg"));
+		assertEquals(warmer.getImagesWarmed(), 1);
+		assertEquals(warmer.getWarmupCalls(), 4);
+		assertEquals(warmer.getFailedWarmups(), 0);
+	}
+
+	@Test
+	public void testWarmupRequestsAreMarkedWithLowPriority() throws Exception {
+		warmer.warmImage("someId");
+		awaitWarmup();
+
+		assertEquals(calls.size(), 4);
+		for (IiifParameters call : calls) {
+			assertEquals(call.headersMap(), Map.of(RequestPriority.HEADER, "LOW"));
+		}
+	}
+
+	@Test
+	public void testImageIsWarmedOnce() throws Exception {
+		warmer.warmImage("someId");
+		boolean scheduledAgain = warmer.warmImage("someId");
+		awaitWarmup();
+
+		assertFalse(scheduledAgain);
+		assertEquals(calledUris.size(), 4);
+		assertEquals(warmer.getImagesWarmed(), 1);
+	}
+
+	@Test
+	public void testBodiesAreReadAndClosed() throws Exception {
+		warmer.warmImage("someId");
+		awaitWarmup();
+
+		assertEquals(bodies.size(), 4);
+		for (TrackedBody body : bodies) {
+			assertTrue(body.closed);
+			assertEquals(body.available(), 0);
+		}
+	}
+
+	@Test
+	public void testCallsAreThrottledToRate() throws Exception {
+		warmer.warmImage("someId");
+		awaitWarmup();
+
+		long interval = 100 * ONE_MILLISECOND;
+		assertEquals(sleeps, List.of(interval, interval, interval));
+	}
+
+	@Test
+	public void testNoWaitWhenCallsAreSlowerThanRate() throws Exception {
+		responder = uri -> {
+			nanoTime.addAndGet(200 * ONE_MILLISECOND);
+			return createResponse(200, uri.endsWith("info.json") ? INFO_JSON : "tile");
+		};
+
+		warmer.warmImage("someId");
+		awaitWarmup();
+
+		assertEquals(sleeps, List.of());
+	}
+
+	@Test
+	public void testPausesWhileLiveCallsAreInProgress() throws Exception {
+		liveCalls.started();
+		liveCalls.started();
+		onSleep = () -> {
+			if (liveCalls.inProgress() == 2) {
+				liveCalls.finished();
+			}
+		};
+
+		warmer.warmImage("someId");
+		awaitWarmup();
+
+		assertEquals(warmer.getPauses(), 1);
+		assertEquals(sleeps.get(0).longValue(), 100 * ONE_MILLISECOND);
+		assertEquals(liveCalls.inProgress(), 1);
+		assertEquals(calledUris.size(), 4);
+	}
+
+	@Test
+	public void testImagesBeyondMaxPendingAreSkippedUntilThereIsRoom() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		responder = uri -> {
+			awaitQuietly(release);
+			return createResponse(404, "not found");
+		};
+		for (int i = 0; i < CacheWarmer.MAX_PENDING_IMAGES; i++) {
+			assertTrue(warmer.warmImage("someId" + i));
+		}
+
+		boolean scheduledWhenFull = warmer.warmImage("oneTooMany");
+		release.countDown();
+		awaitNoPendingImages();
+		boolean scheduledLater = warmer.warmImage("oneTooMany");
+		awaitWarmup();
+
+		assertFalse(scheduledWhenFull);
+		assertTrue(scheduledLater);
+		assertEquals(warmer.getSkippedImages(), 1);
+		assertEquals(calledUris.size(), CacheWarmer.MAX_PENDING_IMAGES + 1);
+		assertEquals(calledUris.get(CacheWarmer.MAX_PENDING_IMAGES), "oneTooMany/info.json");
+	}
+
+	private void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void awaitNoPendingImages() throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (warmer.onlyForTestGetPendingImages() > 0 && System.nanoTime() < deadline) {
+			Thread.sleep(1);
+		}
+	}
+
+	@Test
+	public void testInfoNotFound() throws Exception {
+		responder = uri -> createResponse(404, "not found");
+
+		warmer.warmImage("someId");
+		awaitWarmup();
+
+		assertEquals(calledUris, List.of("someId/info.json"));
+		assertEquals(warmer.getImagesWarmed(), 0);
+		assertEquals(warmer.getFailedWarmups(), 1);
+		assertTrue(bodies.get(0).closed);
+	}
+
+	@Test
+	public void testInfoNotValid() throws Exception {
+		responder = uri -> createResponse(200, "<html>");
+
+		warmer.warmImage("someId");
+		awaitWarmup();
+
+		assertEquals(calledUris.size(), 1);
+		assertEquals(warmer.getFailedWarmups(), 1);
+	}
+
+	@Test
+	public void testFailingCallsDoNotStopWarmup() throws Exception {
+		responder = uri -> {
+			if (uri.endsWith("info.json")) {
+				return createResponse(200, INFO_JSON);
+			}
+			if (uri.contains("/full/")) {
+				throw BinaryException.withMessage("someError");
+			}
+			return createResponse(503, "busy");
+		};
+
+		warmer.warmImage("someId");
+		awaitWarmup();
+
+		assertEquals(calledUris.size(), 4);
+		assertEquals(warmer.getFailedWarmups(), 3);
+		assertEquals(warmer.getImagesWarmed(), 1);
+	}
+
+	@Test
+	public void testWarmFromAccessLog() throws Exception {
+		Path accessLog = Files.createTempFile("accessLog", ".log");
+		try {
+			Files.writeString(accessLog, "/a/info.json\n/b/info.json\n/b/info.json\n/c/info.json\n"
+					+ "/c/info.json\n/c/info.json\n");
+
+			warmer.warmFromAccessLog(accessLog, 2, Duration.ZERO);
+			awaitWarmup();
+
+			assertEquals(calledUris, List.of("c/info.json", "b/info.json"));
+			assertEquals(warmer.getWarmupCalls(), 2);
+		} finally {
+			Files.delete(accessLog);
+		}
+	}
+
+	@Test
+	public void testWarmFromMissingAccessLog() throws Exception {
+		warmer.warmFromAccessLog(Path.of("/doesNotExist/accessLog.log"), 2, Duration.ZERO);
+		awaitWarmup();
+
+		assertEquals(calledUris, List.of());
+		assertEquals(warmer.getFailedWarmups(), 1);
+	}
+
+	@Test
+	public void testCloseStopsWarmupNotStarted() throws Exception {
+		warmer.warmFromAccessLog(Path.of("someAccessLog.log"), 2, Duration.ofHours(1));
+
+		warmer.close();
+
+		assertTrue(scheduler.isShutdown());
+		assertTrue(scheduler.awaitTermination(5, TimeUnit.SECONDS));
+		assertEquals(warmer.getFailedWarmups(), 0);
+	}
+}
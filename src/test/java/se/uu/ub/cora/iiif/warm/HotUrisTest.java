@@ -0,0 +1,159 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.warm;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.iiif.recording.CallRecorder;
+import se.uu.ub.cora.iiif.recording.RecordedCall;
+import se.uu.ub.cora.logger.LoggerProvider;
+import se.uu.ub.cora.logger.spies.LoggerFactorySpy;
+
+public class HotUrisTest {
+
+	private List<String> readHottest(String log, int maxUris) throws Exception {
+		return HotUris.readHottest(new BufferedReader(new StringReader(log)), maxUris);
+	}
+
+	@Test
+	public void testMostRequestedFirst() throws Exception {
+		String log = """
+				id1/info.json
+				id2/info.json
+				id2/info.json
+				id3/info.json
+				id2/info.json
+				id3/info.json
+				""";
+
+		assertEquals(readHottest(log, 10), List.of("id2/info.json", "id3/info.json",
+				"id1/info.json"));
+	}
+
+	@Test
+	public void testEquallyRequestedInOrderOfFirstRequest() throws Exception {
+		assertEquals(readHottest("b\na\nc\nc\na\nb\n", 10), List.of("b", "a", "c"));
+	}
+
+	@Test
+	public void testLimitedToMaxUris() throws Exception {
+		assertEquals(readHottest("a\nb\nb\nc\nc\nc\n", 2), List.of("c", "b"));
+	}
+
+	@Test
+	public void testEmptyLinesAndCommentsSkipped() throws Exception {
+		assertEquals(readHottest("# recorded 2026-10-01\n\n   \n/a  \n", 10), List.of("a"));
+	}
+
+	@Test
+	public void testUriIsFirstWordOnLine() throws Exception {
+		assertEquals(readHottest("/a 200 1234\na\n", 10), List.of("a"));
+	}
+
+	@Test
+	public void testCommonLogFormat() throws Exception {
+		String log = """
+				127.0.0.1 - - [01/Oct/2026:10:00:00 +0200] "GET /id1/full/max/0/default.jpg \
+				HTTP/1.1" 200 2326
+				127.0.0.1 - - [01/Oct/2026:10:00:01 +0200] "HEAD /id2/info.json HTTP/1.1" 200 0
+				127.0.0.1 - - [01/Oct/2026:10:00:02 +0200] "GET /id3/info.json?x=1" 200 12
+				127.0.0.1 - - [01/Oct/2026:10:00:03 +0200] "GET /id1/full/max/0/default.jpg \
+				HTTP/1.1" 304 0
+				""";
+
+		assertEquals(readHottest(log, 10),
+				List.of("id1/full/max/0/default.jpg", "id3/info.json?x=1"));
+	}
+
+	@Test
+	public void testReadFromFile() throws Exception {
+		Path accessLog = Files.createTempFile("accessLog", ".log");
+		try {
+			Files.writeString(accessLog, "a\nb\nb\n");
+
+			assertEquals(HotUris.readHottest(accessLog, 10), List.of("b", "a"));
+		} finally {
+			Files.delete(accessLog);
+		}
+	}
+
+	@Test
+	public void testReadFromCallRecording() throws Exception {
+		LoggerProvider.setLoggerFactory(new LoggerFactorySpy());
+		Path recording = Files.createTempFile("calls", ".rec");
+		try {
+			CallRecorder callRecorder = CallRecorder.open(recording, 1024);
+			callRecorder.record(createCall("GET", "/a"));
+			callRecorder.record(createCall("GET", "b"));
+			callRecorder.record(createCall("HEAD", "a"));
+			callRecorder.record(createCall("GET", "b"));
+			callRecorder.close();
+
+			assertEquals(HotUris.readHottest(recording, 10), List.of("b", "a"));
+		} finally {
+			Files.delete(recording);
+		}
+	}
+
+	@Test
+	public void testReadFromCallRecordingAndPreviousRecording() throws Exception {
+		LoggerProvider.setLoggerFactory(new LoggerFactorySpy());
+		Path recording = Files.createTempFile("calls", ".rec");
+		try {
+			CallRecorder beforeRestart = CallRecorder.open(recording, 1024);
+			beforeRestart.record(createCall("GET", "a"));
+			beforeRestart.record(createCall("GET", "a"));
+			beforeRestart.close();
+			CallRecorder afterRestart = CallRecorder.open(recording, 1024);
+			afterRestart.record(createCall("GET", "b"));
+			afterRestart.close();
+
+			assertEquals(HotUris.readHottest(recording, 10), List.of("a", "b"));
+		} finally {
+			Files.delete(recording);
+			Files.deleteIfExists(CallRecorder.previousRecordingOf(recording));
+		}
+	}
+
+	private RecordedCall createCall(String method, String uri) {
+		return new RecordedCall(0, method, uri, Map.of(), 200, 10, 100);
+	}
+
+	@Test
+	public void testMissingFile() throws Exception {
+		try {
+			HotUris.readHottest(Path.of("/doesNotExist/accessLog.log"), 10);
+			fail("It should throw an exception");
+		} catch (UncheckedIOException e) {
+			assertTrue(e.getMessage().contains("accessLog.log"));
+		}
+	}
+}
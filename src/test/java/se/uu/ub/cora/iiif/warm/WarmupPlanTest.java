@@ -0,0 +1,117 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.iiif.warm;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.binary.iiif.IiifParameters;
+import se.uu.ub.cora.iiif.info.ImageInfo;
+import se.uu.ub.cora.iiif.info.TileSize;
+
+public class WarmupPlanTest {
+	private static final ImageInfo IMAGE_INFO = new ImageInfo(2000, 1000,
+			List.of(new TileSize(512, 512, List.of(1, 2, 4, 8))));
+
+	private List<String> uris(List<IiifParameters> requests) {
+		return requests.stream().map(IiifParameters::uri).toList();
+	}
+
+	@Test
+	public void testThumbnailAndTopZoomLevels() throws Exception {
+		List<IiifParameters> requests = WarmupPlan.requestsFor("someId", IMAGE_INFO,
+				new WarmupSettings(2, 400, 5, 4));
+
+		assertEquals(uris(requests), List.of("someId/full/400,/0/default.jpg",
+				"someId/0,0,2000,1000/250,/0/default.jpg",
+				"someId/0,0,2000,1000/500,/0/default.jpg"));
+	}
+
+	@Test
+	public void testRequestsAreGetWithoutHeaders() throws Exception {
+		List<IiifParameters> requests = WarmupPlan.requestsFor("someId", IMAGE_INFO,
+				new WarmupSettings(1, 400, 5, 4));
+
+		for (IiifParameters request : requests) {
+			assertEquals(request.method(), "GET");
+			assertEquals(request.headersMap(), Map.of());
+		}
+	}
+
+	@Test
+	public void testLevelsAreWarmedFromTheTop() throws Exception {
+		List<IiifParameters> requests = WarmupPlan.requestsFor("someId", IMAGE_INFO,
+				new WarmupSettings(3, 0, 5, 4));
+
+		assertEquals(uris(requests), List.of("someId/0,0,2000,1000/250,/0/default.jpg",
+				"someId/0,0,2000,1000/500,/0/default.jpg",
+				"someId/0,0,1024,1000/512,/0/default.jpg",
+				"someId/1024,0,976,1000/488,/0/default.jpg"));
+	}
+
+	@Test
+	public void testScaleFactorsInAnyOrder() throws Exception {
+		ImageInfo imageInfo = new ImageInfo(2000, 1000,
+				List.of(new TileSize(512, 512, List.of(4, 1, 8, 8, 2))));
+
+		List<IiifParameters> requests = WarmupPlan.requestsFor("someId", imageInfo,
+				new WarmupSettings(2, 0, 5, 4));
+
+		assertEquals(uris(requests), List.of("someId/0,0,2000,1000/250,/0/default.jpg",
+				"someId/0,0,2000,1000/500,/0/default.jpg"));
+	}
+
+	@Test
+	public void testMoreLevelsThanTheImageHas() throws Exception {
+		List<IiifParameters> requests = WarmupPlan.requestsFor("someId", IMAGE_INFO,
+				new WarmupSettings(10, 0, 5, 4));
+
+		assertEquals(requests.size(), 1 + 1 + 2 + 8);
+	}
+
+	@Test
+	public void testImageWithoutTilesGetsOnlyThumbnail() throws Exception {
+		List<IiifParameters> requests = WarmupPlan.requestsFor("someId",
+				new ImageInfo(2000, 1000, List.of()), new WarmupSettings(2, 150, 5, 4));
+
+		assertEquals(uris(requests), List.of("someId/full/150,/0/default.jpg"));
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "zoomLevels and thumbnailSize must not be negative")
+	public void testNegativeZoomLevels() throws Exception {
+		new WarmupSettings(-1, 0, 5, 4);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "requestsPerSecond must be more than 0")
+	public void testZeroRate() throws Exception {
+		new WarmupSettings(1, 0, 0, 4);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "pauseAtLiveCalls must be at least 1")
+	public void testZeroPauseAtLiveCalls() throws Exception {
+		new WarmupSettings(1, 0, 5, 0);
+	}
+}